@@ -288,6 +288,7 @@ CTX.INPUT['executors'] = """
  deleteexecutor.cpp
  executorfactory.cpp
  executorutil.cpp
+ hashjoinexecutor.cpp
  indexcountexecutor.cpp
  indexscanexecutor.cpp
  insertexecutor.cpp
@@ -331,6 +332,7 @@ CTX.INPUT['plannodes'] = """
  abstractscannode.cpp
  aggregatenode.cpp
  deletenode.cpp
+ hashjoinnode.cpp
  indexscannode.cpp
  indexcountnode.cpp
  tablecountnode.cpp
@@ -395,6 +397,7 @@ CTX.INPUT['storage'] = """
  tabletuplefilter.cpp
  temptable.cpp
  TempTableLimits.cpp
+ TempTableSpillFile.cpp
  TupleBlock.cpp
  TupleStreamBase.cpp
 """
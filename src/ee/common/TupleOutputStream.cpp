@@ -17,6 +17,7 @@
 
 #include "TupleOutputStream.h"
 #include "tabletuple.h"
+#include <cassert>
 #include <limits>
 
 namespace voltdb {
@@ -25,6 +26,7 @@ TupleOutputStream::TupleOutputStream(void *data, std::size_t length) :
     ReferenceSerializeOutput(data, length),
     m_rowCount(0),
     m_rowCountPosition(0),
+    m_blockIdPosition(0),
     m_totalBytesSerialized(0)
 {
 }
@@ -42,6 +44,29 @@ std::size_t TupleOutputStream::startRows(int32_t partitionId)
     return m_rowCountPosition;
 }
 
+std::size_t TupleOutputStream::startBlockRows(int32_t partitionId)
+{
+    writeInt(partitionId);
+    m_blockIdPosition = reserveBytes(8);
+    m_rowCount = 0;
+    m_rowCountPosition = reserveBytes(4);
+    m_totalBytesSerialized = 0;
+    return m_rowCountPosition;
+}
+
+void TupleOutputStream::setBlockId(int64_t blockId)
+{
+    assert(m_blockIdPosition != 0);
+    writeLongAt(m_blockIdPosition, blockId);
+}
+
+void TupleOutputStream::writeManifestEntry(int64_t entry)
+{
+    writeLong(entry);
+    m_rowCount++;
+    m_totalBytesSerialized += sizeof(int64_t);
+}
+
 std::size_t TupleOutputStream::writeRow(const TableTuple &tuple)
 {
     const std::size_t startPos = position();
@@ -49,6 +49,22 @@ public:
      */
     std::size_t startRows(int32_t partitionId);
 
+    /**
+     * Write the header of a block chunk of an incremental snapshot, and save
+     * space for the block id and the row count.
+     */
+    std::size_t startBlockRows(int32_t partitionId);
+
+    /**
+     * Fill in the block id of a chunk started with startBlockRows().
+     */
+    void setBlockId(int64_t blockId);
+
+    /**
+     * Write an entry of an incremental snapshot block manifest, counted as a row.
+     */
+    void writeManifestEntry(int64_t entry);
+
     /**
      * Write a tuple and return the number of bytes written.
      */
@@ -82,6 +98,7 @@ private:
 
     int32_t     m_rowCount;
     std::size_t m_rowCountPosition;
+    std::size_t m_blockIdPosition;
     /** Keep track of bytes written for throttling to yield control. */
     std::size_t m_totalBytesSerialized;
 };
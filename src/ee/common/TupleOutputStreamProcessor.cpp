@@ -65,7 +65,8 @@ void TupleOutputStreamProcessor::open(PersistentTable &table,
                                       std::size_t maxTupleLength,
                                       int32_t partitionId,
                                       StreamPredicateList &predicates,
-                                      std::vector<bool> &predicateDeletes)
+                                      std::vector<bool> &predicateDeletes,
+                                      bool blockChunks)
 {
     m_table = &table;
     m_maxTupleLength = maxTupleLength;
@@ -77,8 +78,33 @@ void TupleOutputStreamProcessor::open(PersistentTable &table,
     m_predicates = &predicates;
     m_predicateDeletes = &predicateDeletes;
     for (TupleOutputStreamProcessor::iterator iter = begin(); iter != end(); ++iter) {
-        iter->startRows(partitionId);
+        if (blockChunks) {
+            iter->startBlockRows(partitionId);
+        }
+        else {
+            iter->startRows(partitionId);
+        }
+    }
+}
+
+void TupleOutputStreamProcessor::setBlockId(int64_t blockId)
+{
+    for (TupleOutputStreamProcessor::iterator iter = begin(); iter != end(); ++iter) {
+        iter->setBlockId(blockId);
+    }
+}
+
+/**
+ * Manifest entries go to every stream, predicates only apply to rows.
+ */
+bool TupleOutputStreamProcessor::writeManifestEntry(int64_t entry)
+{
+    bool yield = false;
+    for (TupleOutputStreamProcessor::iterator iter = begin(); iter != end(); ++iter) {
+        iter->writeManifestEntry(entry);
+        yield = yield || !iter->canFit(sizeof(int64_t));
     }
+    return yield;
 }
 
 /** Stop serializing. */
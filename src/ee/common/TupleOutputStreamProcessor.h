@@ -50,7 +50,20 @@ public:
               std::size_t maxTupleLength,
               int32_t partitionId,
               StreamPredicateList &predicates,
-              std::vector<bool> &predicateDeletes);
+              std::vector<bool> &predicateDeletes,
+              bool blockChunks = false);
+
+    /**
+     * Set the block id of block chunks. The streams must have been opened
+     * with blockChunks set.
+     */
+    void setBlockId(int64_t blockId);
+
+    /**
+     * Write a block manifest entry to all the output streams.
+     * Returns true when the caller should yield.
+     */
+    bool writeManifestEntry(int64_t entry);
 
     /** Stop serializing. */
     void close();
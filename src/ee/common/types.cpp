@@ -220,6 +220,12 @@ std::string tableStreamTypeToString(TableStreamType type) {
       case TABLE_STREAM_ELASTIC_INDEX_CLEAR: {
           return "TABLE_STREAM_ELASTIC_INDEX_CLEAR";
       }
+      case TABLE_STREAM_SNAPSHOT_DELTA: {
+          return "TABLE_STREAM_SNAPSHOT_DELTA";
+      }
+      case TABLE_STREAM_SNAPSHOT_DELTA_BASE: {
+          return "TABLE_STREAM_SNAPSHOT_DELTA_BASE";
+      }
       case TABLE_STREAM_RECOVERY: {
           return "TABLE_STREAM_RECOVERY";
       }
@@ -406,6 +412,9 @@ string planNodeToString(PlanNodeType type)
     case PLAN_NODE_TYPE_NESTLOOPINDEX: {
         return "NESTLOOPINDEX";
     }
+    case PLAN_NODE_TYPE_HASHJOIN: {
+        return "HASHJOIN";
+    }
     case PLAN_NODE_TYPE_UPDATE: {
         return "UPDATE";
     }
@@ -480,6 +489,8 @@ PlanNodeType stringToPlanNode(string str )
         return PLAN_NODE_TYPE_NESTLOOP;
     } else if (str == "NESTLOOPINDEX") {
         return PLAN_NODE_TYPE_NESTLOOPINDEX;
+    } else if (str == "HASHJOIN") {
+        return PLAN_NODE_TYPE_HASHJOIN;
     } else if (str == "UPDATE") {
         return PLAN_NODE_TYPE_UPDATE;
     } else if (str == "INSERT") {
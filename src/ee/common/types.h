@@ -191,6 +191,7 @@ enum PlanNodeType {
     //
     PLAN_NODE_TYPE_NESTLOOP         = 20,
     PLAN_NODE_TYPE_NESTLOOPINDEX    = 21,
+    PLAN_NODE_TYPE_HASHJOIN         = 22,
 
     //
     // Operator Nodes
@@ -401,6 +402,15 @@ enum TableStreamType {
     // was used for TABLE_STREAM_ELASTIC_INDEX_READ.
     TABLE_STREAM_ELASTIC_INDEX_CLEAR,
 
+    // Incremental snapshot. Only streams the tuple blocks modified since the
+    // previous delta snapshot of the table, one block per chunk, preceded by
+    // a manifest of all the blocks live at activation time.
+    TABLE_STREAM_SNAPSHOT_DELTA,
+
+    // Same format as TABLE_STREAM_SNAPSHOT_DELTA, but streams every block.
+    // Starts a new chain of incremental snapshots.
+    TABLE_STREAM_SNAPSHOT_DELTA_BASE,
+
     // Table stream types that don't use predicates.
     // Add new non-predicate types below TABLE_STREAM_RECOVERY so
     // that tableStreamTypeHasPredicates() doesn't have to change.
@@ -422,14 +432,26 @@ enum TableStreamSerializationError {
 inline bool tableStreamTypeHasPredicates(TableStreamType streamType) {
     return streamType == TABLE_STREAM_SNAPSHOT
         || streamType == TABLE_STREAM_ELASTIC_INDEX
-        || streamType == TABLE_STREAM_ELASTIC_INDEX_READ;
+        || streamType == TABLE_STREAM_ELASTIC_INDEX_READ
+        || streamType == TABLE_STREAM_SNAPSHOT_DELTA
+        || streamType == TABLE_STREAM_SNAPSHOT_DELTA_BASE;
 }
 
 /**
  * Return true if the table stream type is performing a snapshot.
  */
 inline bool tableStreamTypeIsSnapshot(TableStreamType streamType) {
-    return streamType == TABLE_STREAM_SNAPSHOT;
+    return streamType == TABLE_STREAM_SNAPSHOT
+        || streamType == TABLE_STREAM_SNAPSHOT_DELTA
+        || streamType == TABLE_STREAM_SNAPSHOT_DELTA_BASE;
+}
+
+/**
+ * Return true if the table stream type is an incremental (block delta) snapshot.
+ */
+inline bool tableStreamTypeIsSnapshotDelta(TableStreamType streamType) {
+    return streamType == TABLE_STREAM_SNAPSHOT_DELTA
+        || streamType == TABLE_STREAM_SNAPSHOT_DELTA_BASE;
 }
 
 /**
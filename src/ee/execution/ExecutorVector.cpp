@@ -106,6 +106,7 @@ boost::shared_ptr<ExecutorVector> ExecutorVector::fromJsonPlan(VoltDBEngine* eng
     boost::shared_ptr<ExecutorVector> ev(new ExecutorVector(fragId,
                                                             tempTableLogLimit,
                                                             tempTableMemoryLimit,
+                                                            engine->tempTableSpillFile(),
                                                             pnf));
     ev->init(engine);
     return ev;
@@ -121,9 +121,10 @@ private:
     ExecutorVector(int64_t fragmentId,
                    int64_t logThreshold,
                    int64_t memoryLimit,
+                   TempTableSpillFile* spillFile,
                    PlanNodeFragment* fragment)
         : m_fragId(fragmentId)
-        , m_limits(memoryLimit, logThreshold)
+        , m_limits(memoryLimit, logThreshold, spillFile)
         , m_fragment(fragment)
     { }
 
@@ -88,6 +88,7 @@
 #include "storage/streamedtable.h"
 #include "storage/TableCatalogDelegate.hpp"
 #include "storage/tablefactory.h"
+#include "storage/TempTableSpillFile.h"
 
 #include "org_voltdb_jni_ExecutionEngine.h" // to use static values
 
@@ -584,6 +585,16 @@ void VoltDBEngine::serializeException(const SerializableEEException& e) {
 // -------------------------------------------------
 // RESULT FUNCTIONS
 // -------------------------------------------------
+void VoltDBEngine::setTempTableSpillDirectory(const std::string& directory) {
+    if (directory.empty()) {
+        m_tempTableSpillFile.reset();
+        return;
+    }
+    std::ostringstream path;
+    path << directory << "/temptable_spill_" << m_siteId << ".bin";
+    m_tempTableSpillFile.reset(new TempTableSpillFile(path.str()));
+}
+
 void VoltDBEngine::send(Table* dependency) {
     VOLT_DEBUG("Sending Dependency from C++");
     m_resultOutput.writeInt(-1); // legacy placeholder for old output id
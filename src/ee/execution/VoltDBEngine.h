@@ -95,6 +95,7 @@ class StreamedTable;
 class Table;
 class TableCatalogDelegate;
 class TempTableLimits;
+class TempTableSpillFile;
 class Topend;
 class TheHashinator;
 
@@ -489,6 +490,15 @@ class __attribute__((visibility("default"))) VoltDBEngine {
             return (m_tempTableMemoryLimit * 3) / 4;
         }
 
+        /**
+         * Let temp tables of plans loaded from now on spill to a scratch file
+         * in the given directory instead of failing at the temp table memory
+         * limit. An empty directory turns spilling off again.
+         */
+        void setTempTableSpillDirectory(const std::string& directory);
+
+        TempTableSpillFile* tempTableSpillFile() const { return m_tempTableSpillFile.get(); }
+
         int32_t getPartitionId() const { return m_partitionId; }
 
     protected:
@@ -563,6 +573,9 @@ class __attribute__((visibility("default"))) VoltDBEngine {
 
         int64_t m_tempTableMemoryLimit;
 
+        // This site's scratch file for temp table blocks, NULL unless spilling is enabled.
+        boost::scoped_ptr<TempTableSpillFile> m_tempTableSpillFile;
+
         /*
          * Catalog delegates hashed by path.
          */
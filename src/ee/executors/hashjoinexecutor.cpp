@@ -0,0 +1,232 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB Inc. are licensed under the following
+ * terms and conditions:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+#include "hashjoinexecutor.h"
+
+#include "common/debuglog.h"
+#include "common/common.h"
+#include "common/tabletuple.h"
+#include "executors/aggregateexecutor.h"
+#include "executors/executorutil.h"
+#include "execution/ProgressMonitorProxy.h"
+#include "expressions/abstractexpression.h"
+#include "storage/table.h"
+#include "storage/temptable.h"
+#include "storage/tableiterator.h"
+#include "structures/CompactingHashTable.h"
+#include "plannodes/hashjoinnode.h"
+#include "plannodes/limitnode.h"
+
+#include <vector>
+
+#include "boost/foreach.hpp"
+
+using namespace std;
+using namespace voltdb;
+
+// Inner tuple addresses filed under the hash of their key values.
+// Different keys may share a hash, the join predicate sorts them out.
+typedef CompactingHashTable<size_t, char*> HashJoinTableType;
+
+bool HashJoinExecutor::p_init(AbstractPlanNode* abstractNode,
+                              TempTableLimits* limits)
+{
+    VOLT_TRACE("init HashJoin Executor");
+    assert(limits);
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(m_abstractNode);
+    assert(node);
+
+    // Init parent first
+    if (!AbstractJoinExecutor::p_init(abstractNode, limits)) {
+        return false;
+    }
+    // The planner only picks hash joins for inner and left joins
+    assert(m_joinType == JOIN_TYPE_INNER || m_joinType == JOIN_TYPE_LEFT);
+    assert(node->getOuterHashExpressions().size() > 0);
+
+    // NULL tuples for left joins
+    p_init_null_tuples(node->getInputTable(), node->getInputTable(1));
+
+    return true;
+}
+
+bool HashJoinExecutor::hashKey(const std::vector<AbstractExpression*>& keyExprs,
+                               const std::vector<bool>& nullsMatch,
+                               const TableTuple* outer, const TableTuple* inner, size_t& hash)
+{
+    hash = 0;
+    for (int i = 0; i < keyExprs.size(); i++) {
+        NValue value = keyExprs[i]->eval(outer, inner);
+        if (value.isNull() && ! nullsMatch[i]) {
+            return false;
+        }
+        value.hashCombine(hash);
+    }
+    return true;
+}
+
+bool HashJoinExecutor::p_execute(const NValueArray &params) {
+    VOLT_DEBUG("executing HashJoin...");
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(m_abstractNode);
+    assert(node);
+    assert(node->getInputTableCount() == 2);
+
+    // output table must be a temp table
+    assert(m_tmpOutputTable);
+
+    Table* outer_table = node->getInputTable();
+    assert(outer_table);
+
+    Table* inner_table = node->getInputTable(1);
+    assert(inner_table);
+
+    VOLT_TRACE ("input table left:\n %s", outer_table->debug().c_str());
+    VOLT_TRACE ("input table right:\n %s", inner_table->debug().c_str());
+
+    AbstractExpression *preJoinPredicate = node->getPreJoinPredicate();
+    AbstractExpression *joinPredicate = node->getJoinPredicate();
+    AbstractExpression *wherePredicate = node->getWherePredicate();
+    const std::vector<AbstractExpression*>& outerKeys = node->getOuterHashExpressions();
+    const std::vector<AbstractExpression*>& innerKeys = node->getInnerHashExpressions();
+    std::vector<bool> nullsMatch(outerKeys.size(), false);
+    BOOST_FOREACH(int keyIndex, node->getNullMatchingKeys()) {
+        nullsMatch[keyIndex] = true;
+    }
+
+    LimitPlanNode* limit_node = dynamic_cast<LimitPlanNode*>(node->getInlinePlanNode(PLAN_NODE_TYPE_LIMIT));
+    int limit = CountingPostfilter::NO_LIMIT;
+    int offset = CountingPostfilter::NO_OFFSET;
+    if (limit_node) {
+        limit_node->getLimitAndOffsetByReference(params, limit, offset);
+    }
+
+    int outer_cols = outer_table->columnCount();
+    int inner_cols = inner_table->columnCount();
+    TableTuple outer_tuple(outer_table->schema());
+    TableTuple inner_tuple(inner_table->schema());
+    const TableTuple& null_inner_tuple = m_null_inner_tuple.tuple();
+
+    ProgressMonitorProxy pmp(m_engine->getExecutorContext(), this);
+
+    //
+    // Build: file every inner tuple with a matchable key under the hash of its key.
+    // The inner table must stay intact until the probe is done, so don't delete as we go.
+    //
+    HashJoinTableType hashTable(false);
+    size_t hash;
+    TableIterator iterator1 = inner_table->iterator();
+    while (iterator1.next(inner_tuple)) {
+        pmp.countdownProgress();
+        if (hashKey(innerKeys, nullsMatch, NULL, &inner_tuple, hash)) {
+            hashTable.insert(hash, inner_tuple.address());
+        }
+    }
+    VOLT_TRACE("hash join built %d inner tuples", (int) hashTable.size());
+
+    // Init the postfilter
+    CountingPostfilter postfilter(m_tmpOutputTable, wherePredicate, limit, offset);
+
+    TableTuple join_tuple;
+    if (m_aggExec != NULL) {
+        VOLT_TRACE("Init inline aggregate...");
+        const TupleSchema * aggInputSchema = node->getTupleSchemaPreAgg();
+        join_tuple = m_aggExec->p_execute_init(params, &pmp, aggInputSchema, m_tmpOutputTable, &postfilter);
+    } else {
+        join_tuple = m_tmpOutputTable->tempTuple();
+    }
+
+    //
+    // Probe: stream the outer table and visit the inner tuples with the same hash.
+    //
+    TableIterator iterator0 = outer_table->iteratorDeletingAsWeGo();
+    while (postfilter.isUnderLimit() && iterator0.next(outer_tuple)) {
+        pmp.countdownProgress();
+
+        join_tuple.setNValues(0, outer_tuple, 0, outer_cols);
+
+        // did this loop body find at least one match for this tuple?
+        bool outerMatch = false;
+        // For outer joins if outer tuple fails pre-join predicate
+        // (join expression based on the outer table only)
+        // it can't match any of inner tuples
+        if ((preJoinPredicate == NULL || preJoinPredicate->eval(&outer_tuple, NULL).isTrue()) &&
+                hashKey(outerKeys, nullsMatch, &outer_tuple, NULL, hash)) {
+            HashJoinTableType::iterator it = hashTable.find(hash);
+            for (; postfilter.isUnderLimit() && !it.isEnd(); it.moveNext()) {
+                inner_tuple.move(it.value());
+                if (joinPredicate == NULL || joinPredicate->eval(&outer_tuple, &inner_tuple).isTrue()) {
+                    outerMatch = true;
+                    // Filter the joined tuple
+                    if (postfilter.eval(&outer_tuple, &inner_tuple)) {
+                        // Matched! Complete the joined tuple with the inner column values.
+                        join_tuple.setNValues(outer_cols, inner_tuple, 0, inner_cols);
+                        outputTuple(postfilter, join_tuple, pmp);
+                    }
+                }
+            }
+        }
+
+        //
+        // Left Outer Join
+        //
+        if (m_joinType == JOIN_TYPE_LEFT && !outerMatch && postfilter.isUnderLimit()) {
+            // Still needs to pass the filter
+            if (postfilter.eval(&outer_tuple, &null_inner_tuple)) {
+                join_tuple.setNValues(outer_cols, null_inner_tuple, 0, inner_cols);
+                outputTuple(postfilter, join_tuple, pmp);
+            }
+        }
+    }
+
+    if (m_aggExec != NULL) {
+        m_aggExec->p_execute_finish();
+    }
+
+    cleanupInputTempTable(inner_table);
+    cleanupInputTempTable(outer_table);
+
+    return (true);
+}
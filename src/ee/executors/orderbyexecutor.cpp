@@ -55,6 +55,11 @@
 #include "storage/temptable.h"
 #include "storage/tableiterator.h"
 #include "storage/tablefactory.h"
+#include "storage/TempTableLimits.h"
+
+#include <boost/foreach.hpp>
+#include <boost/scoped_ptr.hpp>
+#include <boost/shared_ptr.hpp>
 
 #include <algorithm>
 #include <vector>
@@ -62,6 +67,35 @@
 using namespace voltdb;
 using namespace std;
 
+namespace {
+
+// The next tuple of one sorted run while the runs are being merged.
+struct RunHead {
+    RunHead(const TableTuple& tuple, size_t run) : m_tuple(tuple), m_run(run) { }
+    TableTuple m_tuple;
+    size_t m_run;
+};
+
+// Orders the run heads so that std::pop_heap yields the first tuple in sort order.
+struct RunHeadComparer {
+    RunHeadComparer(const AbstractExecutor::TupleComparer& comp) : m_comp(comp) { }
+    bool operator()(const RunHead& a, const RunHead& b) const {
+        return m_comp(b.m_tuple, a.m_tuple);
+    }
+    const AbstractExecutor::TupleComparer& m_comp;
+};
+
+// deleteAllTempTuples keeps the first block of a temp table (and its share of
+// the limits) for reuse. Scratch tables are dropped instead, so return it all.
+void dropScratchTable(TempTable* table, TempTableLimits* limits) {
+    table->deleteAllTempTuples();
+    if (limits) {
+        limits->reduceAllocated(static_cast<int>(table->allocatedTupleMemory()));
+    }
+}
+
+} // namespace
+
 bool
 OrderByExecutor::p_init(AbstractPlanNode* abstract_node,
                         TempTableLimits* limits)
@@ -70,6 +104,7 @@ OrderByExecutor::p_init(AbstractPlanNode* abstract_node,
 
     OrderByPlanNode* node = dynamic_cast<OrderByPlanNode*>(abstract_node);
     assert(node);
+    m_limits = limits;
 
     if (!node->isInline()) {
         assert(node->getInputTableCount() == 1);
@@ -133,7 +168,12 @@ OrderByExecutor::p_execute(const NValueArray &params)
     // or to fetch the vector of tuples from the input.  If limit < 0 we
     // need to do the loop below, though.  The only case where we can skip
     // is if limit == 0.
-    if (limit != 0) {
+    TempTable* spilled_input = dynamic_cast<TempTable*>(input_table);
+    if (limit != 0 && spilled_input != NULL && spilled_input->spilledBlockCount() > 0) {
+        // Reading the whole input back in would cross the memory limit again.
+        ProgressMonitorProxy pmp(m_engine->getExecutorContext(), this);
+        externalSort(spilled_input, output_table, limit, offset, pmp);
+    } else if (limit != 0) {
         vector<TableTuple> xs;
         ProgressMonitorProxy pmp(m_engine->getExecutorContext(), this);
         while (iterator.next(tuple))
@@ -187,5 +227,107 @@ OrderByExecutor::p_execute(const NValueArray &params)
     return true;
 }
 
+void
+OrderByExecutor::externalSort(TempTable* input_table, TempTable* output_table,
+                              int limit, int offset, ProgressMonitorProxy& pmp)
+{
+    OrderByPlanNode* node = static_cast<OrderByPlanNode*>(m_abstractNode);
+    AbstractExecutor::TupleComparer comp(node->getSortExpressions(), node->getSortDirections());
+
+    // Each run is sorted in memory, so keep it to a quarter of the limit:
+    // the run being read plus the sorted copy leave room for everyone else.
+    int64_t runTuples = (m_limits->getMemoryLimit() / 4) / input_table->getTupleLength();
+    if (runTuples < input_table->getTuplesPerBlock()) {
+        runTuples = input_table->getTuplesPerBlock();
+    }
+    // With a limit, no tuple past limit + offset in a run can make it to the output.
+    int64_t keep = -1;
+    if (limit >= 0) {
+        keep = limit + std::max(offset, 0);
+    }
+
+    boost::scoped_ptr<TempTable> chunk(TableFactory::buildCopiedTempTable(input_table->name(),
+                                                                          input_table, m_limits));
+    vector<boost::shared_ptr<TempTable> > runs;
+    vector<TableTuple> xs;
+    TableIterator iterator = input_table->iteratorDeletingAsWeGo();
+    TableTuple tuple(input_table->schema());
+    bool more = true;
+    while (more) {
+        while ((more = iterator.next(tuple))) {
+            pmp.countdownProgress();
+            chunk->insertTempTuple(tuple);
+            if (chunk->tempTableTupleCount() >= runTuples) {
+                break;
+            }
+        }
+        if (chunk->isTempTableEmpty()) {
+            break;
+        }
+
+        xs.clear();
+        TableIterator chunkIterator = chunk->iterator();
+        TableTuple chunkTuple(chunk->schema());
+        while (chunkIterator.next(chunkTuple)) {
+            xs.push_back(chunkTuple);
+        }
+        if (keep >= 0 && keep < static_cast<int64_t>(xs.size())) {
+            partial_sort(xs.begin(), xs.begin() + keep, xs.end(), comp);
+            xs.resize(keep);
+        } else {
+            sort(xs.begin(), xs.end(), comp);
+        }
+
+        boost::shared_ptr<TempTable> run(TableFactory::buildCopiedTempTable(input_table->name(),
+                                                                            input_table, m_limits));
+        BOOST_FOREACH(TableTuple& sorted, xs) {
+            run->insertTempTuple(sorted);
+        }
+        // Nobody points into a finished run until the merge.
+        run->spillFullBlocks();
+        runs.push_back(run);
+        chunk->deleteAllTempTuples();
+    }
+    dropScratchTable(chunk.get(), m_limits);
+    VOLT_DEBUG("OrderBy sorted %d runs of spilled input", (int)runs.size());
+
+    // Merge the runs, reading each one block at a time.
+    vector<TableIterator> runIterators;
+    vector<RunHead> heads;
+    RunHeadComparer headComp(comp);
+    for (size_t ii = 0; ii < runs.size(); ++ii) {
+        runIterators.push_back(runs[ii]->iteratorDeletingAsWeGo());
+        TableTuple head(runs[ii]->schema());
+        if (runIterators[ii].next(head)) {
+            heads.push_back(RunHead(head, ii));
+        }
+    }
+    make_heap(heads.begin(), heads.end(), headComp);
+
+    int tuple_ctr = 0;
+    int tuple_skipped = 0;
+    while (!heads.empty() && ((limit < 0) || (tuple_ctr < limit))) {
+        pop_heap(heads.begin(), heads.end(), headComp);
+        RunHead& next = heads.back();
+        if (tuple_skipped < offset) {
+            tuple_skipped++;
+        } else {
+            output_table->insertTempTuple(next.m_tuple);
+            pmp.countdownProgress();
+            tuple_ctr += 1;
+        }
+        // Advancing may free the block the tuple was in, so only do it once the tuple was copied.
+        if (runIterators[next.m_run].next(next.m_tuple)) {
+            push_heap(heads.begin(), heads.end(), headComp);
+        } else {
+            heads.pop_back();
+        }
+    }
+
+    BOOST_FOREACH(boost::shared_ptr<TempTable>& run, runs) {
+        dropScratchTable(run.get(), m_limits);
+    }
+}
+
 OrderByExecutor::~OrderByExecutor() {
 }
@@ -55,6 +55,8 @@ namespace voltdb {
     class UndoLog;
     class ReadWriteSet;
     class LimitPlanNode;
+    class ProgressMonitorProxy;
+    class TempTable;
 
     /**
      *
@@ -62,7 +64,7 @@ namespace voltdb {
     class OrderByExecutor : public AbstractExecutor {
     public:
         OrderByExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node)
-            : AbstractExecutor(engine, abstract_node), limit_node(NULL)
+            : AbstractExecutor(engine, abstract_node), limit_node(NULL), m_limits(NULL)
             { }
         ~OrderByExecutor();
 
@@ -72,7 +74,15 @@ namespace voltdb {
         bool p_execute(const NValueArray &params);
 
     private:
+        /**
+         * Sort an input that was partly spilled to disk: cut it into sorted
+         * runs that are spilled in turn, then merge the runs into the output.
+         */
+        void externalSort(TempTable* input_table, TempTable* output_table,
+                          int limit, int offset, ProgressMonitorProxy& pmp);
+
         LimitPlanNode *limit_node;
+        TempTableLimits* m_limits;
     };
 
 }
@@ -29,6 +29,10 @@
 
 namespace voltdb {
 
+static bool compareBlockIds(const std::pair<int64_t, char*> &a, const std::pair<int64_t, char*> &b) {
+    return a.first < b.first;
+}
+
 /**
  * Constructor.
  */
@@ -50,7 +54,10 @@ CopyOnWriteContext::CopyOnWriteContext(
              m_serializationBatches(0),
              m_inserts(0),
              m_deletes(0),
-             m_updates(0)
+             m_updates(0),
+             m_delta(false),
+             m_manifestPosition(0),
+             m_backedUpPosition(0)
 {
 }
 
@@ -68,7 +75,7 @@ TableStreamerContext::ActivationReturnCode
 CopyOnWriteContext::handleActivation(TableStreamType streamType)
 {
     // Only support snapshot streams.
-    if (streamType != TABLE_STREAM_SNAPSHOT) {
+    if (!tableStreamTypeIsSnapshot(streamType)) {
         return ACTIVATION_UNSUPPORTED;
     }
 
@@ -78,6 +85,16 @@ CopyOnWriteContext::handleActivation(TableStreamType streamType)
         return ACTIVATION_FAILED;
     }
 
+    if (tableStreamTypeIsSnapshotDelta(streamType)) {
+        m_delta = true;
+        TBMap dumpedBlocks;
+        m_totalTuples = m_surgeon.activateDeltaSnapshot(streamType == TABLE_STREAM_SNAPSHOT_DELTA_BASE,
+                                                        dumpedBlocks, m_manifest);
+        m_tuplesRemaining = m_totalTuples;
+        m_iterator.reset(new CopyOnWriteIterator(&getTable(), &m_surgeon, dumpedBlocks));
+        return ACTIVATION_SUCCEEDED;
+    }
+
     m_surgeon.activateSnapshot();
 
     m_iterator.reset(new CopyOnWriteIterator(&getTable(), &m_surgeon));
@@ -85,6 +102,76 @@ CopyOnWriteContext::handleActivation(TableStreamType streamType)
     return ACTIVATION_SUCCEEDED;
 }
 
+/*
+ * Write the block manifest of an incremental snapshot, in as many chunks as
+ * it takes. The chunks have a block id of -1 and one long per row.
+ */
+int64_t CopyOnWriteContext::streamManifest(TupleOutputStreamProcessor &outputStreams,
+                                           std::vector<int> &retPositions) {
+    outputStreams.open(getTable(),
+                       getMaxTupleLength(),
+                       getPartitionId(),
+                       getPredicates(),
+                       getPredicateDeleteFlags(),
+                       true);
+    outputStreams.setBlockId(-1);
+    bool yield = false;
+    while (!yield && m_manifestPosition < m_manifest.size()) {
+        yield = outputStreams.writeManifestEntry(m_manifest[m_manifestPosition++]);
+    }
+    outputStreams.close();
+    for (size_t i = 0; i < outputStreams.size(); i++) {
+        retPositions.push_back((int)outputStreams.at(i).position());
+    }
+
+    m_serializationBatches++;
+
+    if (m_tuplesRemaining < 0) {
+        return std::numeric_limits<int64_t>::max();
+    }
+    // Nothing changed, the stream is done once the manifest is out.
+    if (m_tuplesRemaining == 0 && m_manifestPosition < m_manifest.size()) {
+        return 1;
+    }
+    return m_tuplesRemaining;
+}
+
+/*
+ * Get the next tuple of an incremental snapshot, first from the dumped blocks
+ * and then from the tuples backed up from them. Returns false without
+ * consuming the tuple when it belongs to a different block than the rows
+ * already in the chunk, which then has to be closed.
+ */
+bool CopyOnWriteContext::nextBlockTuple(TableTuple &tuple, int64_t &chunkBlockId, bool &hasMore) {
+    int64_t blockId;
+    if (!m_finishedTableScan) {
+        CopyOnWriteIterator *iter = static_cast<CopyOnWriteIterator*>(m_iterator.get());
+        hasMore = iter->next(tuple);
+        if (!hasMore) {
+            return true;
+        }
+        blockId = iter->currentBlockId();
+        if (chunkBlockId != -1 && blockId != chunkBlockId) {
+            iter->unread();
+            return false;
+        }
+    }
+    else {
+        hasMore = m_backedUpPosition < m_backedUpBlockTuples.size();
+        if (!hasMore) {
+            return true;
+        }
+        blockId = m_backedUpBlockTuples[m_backedUpPosition].first;
+        if (chunkBlockId != -1 && blockId != chunkBlockId) {
+            return false;
+        }
+        tuple.move(m_backedUpBlockTuples[m_backedUpPosition].second);
+        m_backedUpPosition++;
+    }
+    chunkBlockId = blockId;
+    return true;
+}
+
 /*
  * Serialize to multiple output streams.
  * Return remaining tuple count, 0 if done, or TABLE_STREAM_SERIALIZATION_ERROR on error.
@@ -102,11 +189,19 @@ int64_t CopyOnWriteContext::handleStreamMore(TupleOutputStreamProcessor &outputS
     if (outputStreams.empty()) {
         throwFatalException("serializeMore() expects at least one output stream.");
     }
+
+    // Incremental snapshots lead with the block manifest.
+    if (m_delta && m_manifestPosition < m_manifest.size()) {
+        return streamManifest(outputStreams, retPositions);
+    }
+
     outputStreams.open(getTable(),
                        getMaxTupleLength(),
                        getPartitionId(),
                        getPredicates(),
-                       getPredicateDeleteFlags());
+                       getPredicateDeleteFlags(),
+                       m_delta);
+    int64_t chunkBlockId = -1;
 
     //=== Tuple processing loop
 
@@ -119,7 +214,14 @@ int64_t CopyOnWriteContext::handleStreamMore(TupleOutputStreamProcessor &outputS
     while (!yield) {
 
         // Next tuple?
-        bool hasMore = m_iterator->next(tuple);
+        bool hasMore;
+        if (!m_delta) {
+            hasMore = m_iterator->next(tuple);
+        }
+        else if (!nextBlockTuple(tuple, chunkBlockId, hasMore)) {
+            // The tuple starts the chunk of the next block.
+            break;
+        }
         if (hasMore) {
 
             // -1 is used as a sentinel value to disable counting for tests.
@@ -167,6 +269,18 @@ int64_t CopyOnWriteContext::handleStreamMore(TupleOutputStreamProcessor &outputS
             m_finishedTableScan = true;
             // Note that m_iterator no longer points to (or should reference) the CopyOnWriteIterator
             m_iterator.reset(m_backedUpTuples->makeIterator());
+            if (m_delta) {
+                // Group the backed up tuples by block. The temp table is
+                // not modified anymore, so the tuple addresses are stable.
+                m_backedUpBlockTuples.reserve(m_backedUpBlockIds.size());
+                TableTuple backedUp(table.schema());
+                for (size_t i = 0; m_iterator->next(backedUp); i++) {
+                    assert(i < m_backedUpBlockIds.size());
+                    m_backedUpBlockTuples.push_back(std::make_pair(m_backedUpBlockIds[i], backedUp.address()));
+                }
+                std::stable_sort(m_backedUpBlockTuples.begin(), m_backedUpBlockTuples.end(),
+                                 compareBlockIds);
+            }
         } else {
             /*
              * No more tuples in the temp table and had previously finished the
@@ -254,7 +368,7 @@ int64_t CopyOnWriteContext::handleStreamMore(TupleOutputStreamProcessor &outputS
              * is still hanging around. So we need to call it again to return
              * the block here.
              */
-            if (hasMore) {
+            if (hasMore && !(m_delta && m_finishedTableScan)) {
                 hasMore = m_iterator->next(tuple);
                 if (hasMore) {
                     assert(false);
@@ -266,6 +380,9 @@ int64_t CopyOnWriteContext::handleStreamMore(TupleOutputStreamProcessor &outputS
     // end tuple processing while loop
 
     // Need to close the output streams and insert row counts.
+    if (m_delta) {
+        outputStreams.setBlockId(chunkBlockId);
+    }
     outputStreams.close();
     // If more was streamed copy current positions for return.
     // Can this copy be avoided?
@@ -341,6 +458,9 @@ void CopyOnWriteContext::markTupleDirty(TableTuple tuple, bool newTuple) {
         else {
             m_updates++;
             m_backedUpTuples->insertTempTupleDeepCopy(tuple, &m_pool);
+            if (m_delta) {
+                m_backedUpBlockIds.push_back(iter->blockIdForTuple(tuple.address()));
+            }
         }
     } else {
         tuple.setDirtyFalse();
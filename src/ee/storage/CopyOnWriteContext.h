@@ -126,8 +126,35 @@ private:
     int64_t m_deletes;
     int64_t m_updates;
 
+    /**
+     * True for incremental snapshots, which write a block manifest and then
+     * one block per chunk.
+     */
+    bool m_delta;
+
+    /**
+     * Block ids of the incremental snapshot manifest, complemented for the
+     * blocks that are not dumped, and how many were written so far.
+     */
+    std::vector<int64_t> m_manifest;
+    size_t m_manifestPosition;
+
+    /**
+     * Block id of each backed up tuple, in backup order. Once the table scan
+     * is done the backed up tuples are sorted by block so that they can be
+     * streamed in one chunk per block.
+     */
+    std::vector<int64_t> m_backedUpBlockIds;
+    std::vector<std::pair<int64_t, char*> > m_backedUpBlockTuples;
+    size_t m_backedUpPosition;
+
     void checkRemainingTuples(const std::string &label);
 
+    int64_t streamManifest(TupleOutputStreamProcessor &outputStreams,
+                           std::vector<int> &retPositions);
+
+    bool nextBlockTuple(TableTuple &tuple, int64_t &chunkBlockId, bool &hasMore);
+
 };
 
 }
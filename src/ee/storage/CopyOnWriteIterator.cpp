@@ -31,7 +31,31 @@ CopyOnWriteIterator::CopyOnWriteIterator(
         m_tableEmpty(false),
         m_skippedDirtyRows(0),
         m_skippedInactiveRows(0) {
+    init();
+}
 
+CopyOnWriteIterator::CopyOnWriteIterator(
+        PersistentTable *table,
+        PersistentTableSurgeon *surgeon,
+        const TBMap &blocks) :
+        m_table(table), m_surgeon(surgeon), m_blocks(blocks),
+        m_blockIterator(m_blocks.begin()), m_end(m_blocks.end()),
+        m_tupleLength(table->getTupleLength()),
+        m_location(NULL),
+        m_blockOffset(0),
+        m_currentBlock(NULL),
+        m_tableEmpty(false),
+        m_skippedDirtyRows(0),
+        m_skippedInactiveRows(0) {
+    if (m_blocks.empty()) {
+        // Nothing changed since the previous incremental snapshot.
+        m_tableEmpty = true;
+        return;
+    }
+    init();
+}
+
+void CopyOnWriteIterator::init() {
     if ((m_blocks.size() == 1) && m_blockIterator.data()->isEmpty()) {
         // Empty persistent table - no tuples in table and table only
         // has empty tuple storage block associated with it. So no need
@@ -95,6 +119,14 @@ bool CopyOnWriteIterator::needToDirtyTuple(char *tupleAddress) {
     }
 }
 
+int64_t CopyOnWriteIterator::blockIdForTuple(char *tupleAddress) {
+    TBPtr block = PersistentTable::findBlock(tupleAddress, m_blocks, m_table->getTableAllocationSize());
+    if (block.get() == NULL) {
+        return -1;
+    }
+    return block->blockId();
+}
+
 /**
  * Iterate through the table blocks until all the active tuples have been found. Skip dirty tuples
  * and mark them as clean so that they can be copied during the next snapshot.
@@ -35,10 +35,43 @@ public:
         PersistentTable *table,
         PersistentTableSurgeon *surgeon);
 
+    /**
+     * Iterate over the given subset of the table's blocks, which must already
+     * be pending snapshot. Used by incremental snapshots.
+     */
+    CopyOnWriteIterator(
+        PersistentTable *table,
+        PersistentTableSurgeon *surgeon,
+        const TBMap &blocks);
+
     bool needToDirtyTuple(char *tupleAddress);
 
+    /**
+     * Id of the snapshotted block containing the tuple, or -1 if the tuple is
+     * not in one of the blocks being iterated.
+     */
+    int64_t blockIdForTuple(char *tupleAddress);
+
     bool next(TableTuple &out);
 
+    /**
+     * Push back the tuple returned by the last call to next(), so that the
+     * following call returns it again. Only valid right after next()
+     * returned true.
+     */
+    void unread() {
+        assert(m_blockOffset > 0);
+        m_location -= m_tupleLength;
+        m_blockOffset--;
+    }
+
+    /**
+     * Id of the block the last tuple returned by next() came from.
+     */
+    int64_t currentBlockId() const {
+        return m_currentBlock->blockId();
+    }
+
     void notifyBlockWasCompactedAway(TBPtr block) {
         if (m_blockIterator != m_end) {
             TBPtr nextBlock = m_blockIterator.data();
@@ -76,6 +109,8 @@ public:
     int64_t countRemaining() const;
 
 private:
+    void init();
+
     /**
      * Table being iterated over
      */
@@ -97,6 +97,8 @@ bool TableStreamer::activateStream(PersistentTableSurgeon &surgeon,
             boost::shared_ptr<TableStreamerContext> context;
             switch (streamType) {
                 case TABLE_STREAM_SNAPSHOT:
+                case TABLE_STREAM_SNAPSHOT_DELTA:
+                case TABLE_STREAM_SNAPSHOT_DELTA_BASE:
                     // Constructor can throw exception when it parses the predicates.
                     context.reset(
                         new CopyOnWriteContext(m_table, surgeon, m_partitionId,
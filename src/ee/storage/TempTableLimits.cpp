@@ -16,6 +16,7 @@
  */
 
 #include "TempTableLimits.h"
+#include "TempTableSpillFile.h"
 
 #include "common/SQLException.h"
 #include "logging/LogManager.h"
@@ -32,6 +33,21 @@ void TempTableLimits::reduceAllocated(int bytes)
     }
 }
 
+void TempTableLimits::spilledToDisk(int bytes)
+{
+    reduceAllocated(bytes);
+    if (m_spillLogLatch) {
+        return;
+    }
+
+    m_spillLogLatch = true;
+    int limit_mb = static_cast<int>(m_memoryLimit / (1024 * 1024));
+    char msg[1024];
+    snprintf(msg, sizeof(msg), "More than %d MB of temp table memory used while executing SQL."
+             " Spilling temp table data to %s.", limit_mb, m_spillFile->path().c_str());
+    LogManager::getThreadLogger(LOGGERID_SQL)->log(LOGLEVEL_INFO, msg);
+}
+
 void TempTableLimits::increaseAllocated(int bytes)
 {
     m_currMemoryInBytes += bytes;
@@ -18,22 +18,31 @@
 #ifndef _EE_STORAGE_TEMPTABLELIMITS_H_
 #define _EE_STORAGE_TEMPTABLELIMITS_H_
 
+#include <cstddef>
 #include <stdint.h>
 
 namespace voltdb {
 
+class TempTableSpillFile;
+
 /**
  * Track the amount of memory used by temp tables in a plan fragment's executors.
  * Log or throw exceptions based on thresholds.
+ * When given a spill file, temp tables that would cross the memory limit move
+ * their full blocks to disk instead, and the exception is only thrown if that
+ * does not free enough memory.
  */
 class TempTableLimits {
 public:
-    TempTableLimits(int64_t memoryLimit = 1024 * 1024 * 100, int64_t logThreshold = -1)
+    TempTableLimits(int64_t memoryLimit = 1024 * 1024 * 100, int64_t logThreshold = -1,
+                    TempTableSpillFile* spillFile = NULL)
         : m_currMemoryInBytes(0)
         , m_peakMemoryInBytes(0)
         , m_logThreshold(logThreshold)
         , m_memoryLimit(memoryLimit)
         , m_logLatch(false)
+        , m_spillFile(spillFile)
+        , m_spillLogLatch(false)
     { }
 
     /**
@@ -44,6 +53,24 @@ public:
     void increaseAllocated(int bytes);
     void reduceAllocated(int bytes);
 
+    /**
+     * Return true if allocating the given number of bytes would cross the
+     * memory limit and temp tables may spill to disk to make room.
+     */
+    bool shouldSpill(int bytes) const {
+        return m_spillFile != NULL && m_memoryLimit > 0 && m_currMemoryInBytes + bytes > m_memoryLimit;
+    }
+
+    /**
+     * Track blocks moved out of memory into the spill file.
+     * Log once at INFO level to the SQL instance the first time this happens.
+     */
+    void spilledToDisk(int bytes);
+
+    TempTableSpillFile* getSpillFile() const { return m_spillFile; }
+
+    int64_t getMemoryLimit() const { return m_memoryLimit; }
+
     int64_t getAllocated() const { return m_currMemoryInBytes; }
     int64_t getPeakMemoryInBytes() const { return m_peakMemoryInBytes; }
     void resetPeakMemory() { m_peakMemoryInBytes = m_currMemoryInBytes; }
@@ -63,6 +90,10 @@ private:
     /// True if we have already generated a log message for
     /// exceeding the log threshold and not yet dropped below it.
     bool m_logLatch;
+    /// The site's scratch file for temp table blocks, or NULL if spilling is disabled.
+    TempTableSpillFile* m_spillFile;
+    /// True if we have already generated a log message for spilling to disk.
+    bool m_spillLogLatch;
 };
 
 } // namespace voltdb
@@ -0,0 +1,123 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include "TempTableSpillFile.h"
+
+#include "common/SQLException.h"
+#include "common/debuglog.h"
+
+#include <cassert>
+#include <cerrno>
+#include <cstdio>
+#include <cstring>
+#include <fcntl.h>
+#include <unistd.h>
+
+namespace voltdb {
+
+TempTableSpillFile::TempTableSpillFile(const std::string& path)
+    : m_path(path)
+    , m_fd(-1)
+    , m_end(0)
+    , m_liveBytes(0)
+{ }
+
+TempTableSpillFile::~TempTableSpillFile()
+{
+    if (m_fd >= 0) {
+        ::close(m_fd);
+        ::unlink(m_path.c_str());
+    }
+}
+
+void TempTableSpillFile::open()
+{
+    // Left over from a previous process using the same site id, if anything.
+    m_fd = ::open(m_path.c_str(), O_RDWR | O_CREAT | O_TRUNC, 0600);
+    if (m_fd < 0) {
+        throwIOError("create");
+    }
+    VOLT_DEBUG("Opened temp table spill file %s", m_path.c_str());
+}
+
+int64_t TempTableSpillFile::write(const char* data, int32_t length)
+{
+    if (m_fd < 0) {
+        open();
+    }
+    int64_t offset = m_end;
+    int32_t written = 0;
+    while (written < length) {
+        ssize_t rc = ::pwrite(m_fd, data + written, length - written, offset + written);
+        if (rc < 0) {
+            if (errno == EINTR) {
+                continue;
+            }
+            throwIOError("write");
+        }
+        written += static_cast<int32_t>(rc);
+    }
+    m_end += length;
+    m_liveBytes += length;
+    return offset;
+}
+
+void TempTableSpillFile::read(int64_t offset, char* data, int32_t length)
+{
+    assert(m_fd >= 0);
+    assert(offset + length <= m_end);
+    int32_t done = 0;
+    while (done < length) {
+        ssize_t rc = ::pread(m_fd, data + done, length - done, offset + done);
+        if (rc < 0) {
+            if (errno == EINTR) {
+                continue;
+            }
+            throwIOError("read");
+        }
+        if (rc == 0) {
+            errno = EIO;
+            throwIOError("read");
+        }
+        done += static_cast<int32_t>(rc);
+    }
+}
+
+void TempTableSpillFile::release(int32_t length)
+{
+    m_liveBytes -= length;
+    assert(m_liveBytes >= 0);
+    if (m_liveBytes == 0 && m_end > 0) {
+        // Nothing left that anyone will read back, start over at the front
+        // and hand the disk space back.
+        m_end = 0;
+        if (::ftruncate(m_fd, 0) != 0) {
+            VOLT_WARN("Unable to truncate temp table spill file %s: %s", m_path.c_str(), strerror(errno));
+        }
+    }
+}
+
+void TempTableSpillFile::throwIOError(const char* operation)
+{
+    char msg[1024];
+    snprintf(msg, sizeof(msg),
+             "Unable to %s temp table spill file %s while executing SQL: %s.  Aborting.",
+             operation, m_path.c_str(), strerror(errno));
+    throw SQLException(SQLException::volt_temp_table_memory_overflow, msg);
+}
+
+} // namespace voltdb
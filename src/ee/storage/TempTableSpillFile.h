@@ -0,0 +1,72 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef _EE_STORAGE_TEMPTABLESPILLFILE_H_
+#define _EE_STORAGE_TEMPTABLESPILLFILE_H_
+
+#include <stdint.h>
+#include <string>
+
+namespace voltdb {
+
+/**
+ * Per-site scratch file that holds temp table blocks which were pushed out
+ * of memory to stay under the fragment's temp table memory limit.
+ *
+ * Blocks are appended and read back by offset. A site runs one fragment at
+ * a time and every temp table releases its spilled blocks when it is
+ * cleared or destroyed, so instead of tracking free space the file is
+ * simply truncated whenever nothing spilled is left in it.
+ */
+class TempTableSpillFile {
+public:
+    explicit TempTableSpillFile(const std::string& path);
+    ~TempTableSpillFile();
+
+    /**
+     * Append a block of data to the file.
+     * Throw a SQLException if the file can't be written.
+     * @return the offset to read the block back from
+     */
+    int64_t write(const char* data, int32_t length);
+
+    /** Read back a block written at the given offset. */
+    void read(int64_t offset, char* data, int32_t length);
+
+    /** Mark a block as no longer needed. */
+    void release(int32_t length);
+
+    const std::string& path() const { return m_path; }
+
+    int64_t getSpilledBytes() const { return m_liveBytes; }
+
+private:
+    void open();
+    void throwIOError(const char* operation);
+
+    const std::string m_path;
+    /// File descriptor, -1 until the first block is spilled.
+    int m_fd;
+    /// Where the next block will be written.
+    int64_t m_end;
+    /// Bytes of the file still referenced by temp tables.
+    int64_t m_liveBytes;
+};
+
+} // namespace voltdb
+
+#endif // _EE_STORAGE_TEMPTABLESPILLFILE_H_
@@ -168,6 +168,7 @@ public:
             m_nextFreeTuple++;
         }
         m_activeTuples++;
+        m_modified = true;
         int newBucketIndex = calculateBucketIndex();
         if (newBucketIndex == m_bucketIndex) {
             // tuple block is not too full for its current bucket
@@ -192,6 +193,7 @@ public:
     inline int freeTuple(char *tupleStorage) {
         m_lastCompactionOffset = 0;
         m_activeTuples--;
+        m_modified = true;
         //Find the offset
         uint32_t offset = static_cast<uint32_t>(tupleStorage - m_storage);
         m_freeList.push_back(offset);
@@ -214,6 +216,17 @@ public:
         m_freeList.clear();
     }
 
+    /**
+     * Mark the first tupleCount tuples as in use, for a block whose storage
+     * was filled in wholesale, as when a temp table block is read back from disk.
+     */
+    inline void setUsedTuples(uint32_t tupleCount) {
+        assert(tupleCount <= m_tuplesPerBlock);
+        reset();
+        m_activeTuples = tupleCount;
+        m_nextFreeTuple = tupleCount;
+    }
+
     inline uint32_t unusedTupleBoundry() {
         return m_nextFreeTuple;
     }
@@ -235,6 +248,34 @@ public:
     inline TBBucketPtr currentBucket() {
         return m_bucket;
     }
+
+    /**
+     * Identifier of the block within its table, stable for the life of the
+     * block. Incremental snapshots use it to name the blocks they contain.
+     */
+    inline int64_t blockId() const {
+        return m_blockId;
+    }
+
+    inline void setBlockId(int64_t blockId) {
+        m_blockId = blockId;
+    }
+
+    /**
+     * Whether any tuple in the block was inserted, updated, deleted or moved
+     * since the flag was last cleared by an incremental snapshot.
+     */
+    inline bool isModified() const {
+        return m_modified;
+    }
+
+    inline void markModified() {
+        m_modified = true;
+    }
+
+    inline void clearModified() {
+        m_modified = false;
+    }
 private:
     char*   m_storage;
     uint32_t m_references;
@@ -255,6 +296,9 @@ private:
 
     TBBucketPtr m_bucket;
     int m_bucketIndex;
+
+    int64_t m_blockId;
+    bool m_modified;
 };
 
 /**
@@ -135,7 +135,9 @@ PersistentTable::PersistentTable(int partitionColumn, char const* signature, boo
     m_pkeyIndex(NULL),
     m_mvHandler(NULL),
     m_deltaTable(NULL),
-    m_deltaTableActive(false)
+    m_deltaTableActive(false),
+    m_nextBlockId(0),
+    m_blockTrackingEnabled(false)
 {
     // this happens here because m_data might not be initialized above
     m_iter.reset(m_data.begin());
@@ -679,6 +681,11 @@ void PersistentTable::swapTableState(PersistentTable* otherTable) {
 
     std::swap(m_name, otherTable->m_name);
 
+    // The blocks now answer to the other table's name, so they can't be
+    // described relative to the previous incremental snapshot of that name.
+    m_blockTrackingEnabled = false;
+    otherTable->m_blockTrackingEnabled = false;
+
     if (m_tableStreamer &&
             m_tableStreamer->hasStreamType(TABLE_STREAM_ELASTIC_INDEX)) {
         // There is Elastic Index work going on and
@@ -994,6 +1001,15 @@ void PersistentTable::updateTupleWithSpecificIndexes(TableTuple& targetTupleToUp
         m_tableStreamer->notifyTupleUpdate(targetTupleToUpdate);
     }
 
+    // Inserts and deletes mark their block through the block's free list
+    // operations, updates in place have to look the block up.
+    if (m_blockTrackingEnabled) {
+        TBPtr block = findBlock(targetTupleToUpdate.address(), m_data, m_tableAllocationSize);
+        if (block != NULL) {
+            block->markModified();
+        }
+    }
+
     /**
      * Remove the current tuple from any indexes.
      */
@@ -1999,6 +2015,50 @@ void PersistentTableSurgeon::activateSnapshot() {
     }
 }
 
+/**
+ * Activate an incremental snapshot. Every block live at this point is listed
+ * in the manifest, by id when the block is dumped by this snapshot and by its
+ * complement when the block is unchanged since the previous incremental
+ * snapshot and its content has to be found in an earlier snapshot of the
+ * chain. Only the dumped blocks become pending snapshot, and they are returned
+ * in dumpedBlocks for the CopyOnWriteIterator. The modified flags of all the
+ * blocks are cleared. Returns the number of tuples in the dumped blocks.
+ */
+int64_t PersistentTableSurgeon::activateDeltaSnapshot(bool dumpAllBlocks, TBMap& dumpedBlocks,
+                                                      std::vector<int64_t>& manifest) {
+    // Without tracking, the modified flags don't cover updates.
+    dumpAllBlocks = dumpAllBlocks || !m_table.m_blockTrackingEnabled;
+    m_table.m_blockTrackingEnabled = true;
+
+    int64_t tupleCount = 0;
+    manifest.reserve(m_table.m_data.size());
+    for (TBMapI blockIterator = m_table.m_data.begin(); blockIterator != m_table.m_data.end(); blockIterator++) {
+        TBPtr block = blockIterator.data();
+        // A clean empty block has no rows to find in an earlier snapshot.
+        if (!dumpAllBlocks && !block->isModified() && !block->isEmpty()) {
+            manifest.push_back(~block->blockId());
+            continue;
+        }
+        block->clearModified();
+        manifest.push_back(block->blockId());
+        // Empty blocks are dumped with no rows, and like the single empty
+        // block of an empty table need not be pending snapshot.
+        if (block->isEmpty()) {
+            continue;
+        }
+        dumpedBlocks.insert(block->address(), block);
+        tupleCount += block->activeTuples();
+
+        m_table.m_blocksNotPendingSnapshot.erase(block);
+        m_table.m_blocksPendingSnapshot.insert(block);
+        int bucketIndex = block->calculateBucketIndex();
+        if (bucketIndex != NO_NEW_BUCKET_INDEX) {
+            block->swapToBucket(m_table.m_blocksPendingSnapshotLoad[bucketIndex]);
+        }
+    }
+    return tupleCount;
+}
+
 std::pair<TableIndex const*, uint32_t> PersistentTable::getUniqueIndexForDR() {
     // In active-active we always send full tuple instead of just index tuple.
     bool isActiveActive = ExecutorContext::getExecutorContext()->getEngine()->getIsActiveActiveDREnabled();
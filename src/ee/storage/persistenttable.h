@@ -143,6 +143,7 @@ public:
     boost::shared_ptr<ElasticIndexTupleRangeIterator>
             getIndexTupleRangeIterator(ElasticIndexHashRange const& range);
     void activateSnapshot();
+    int64_t activateDeltaSnapshot(bool dumpAllBlocks, TBMap& dumpedBlocks, std::vector<int64_t>& manifest);
     void printIndex(std::ostream& os, int32_t limit) const;
     ElasticHash generateTupleHash(TableTuple& tuple) const;
 
@@ -796,6 +797,14 @@ private:
     PersistentTable* m_deltaTable;
 
     bool m_deltaTableActive;
+
+    // Identifier handed to the next tuple block allocated for this table.
+    int64_t m_nextBlockId;
+
+    // Set once an incremental snapshot has cleared the modified flags of the
+    // blocks. Until then, updates don't bother to look up and mark the block
+    // of the updated tuple, and the next incremental snapshot dumps all blocks.
+    bool m_blockTrackingEnabled;
 };
 
 inline PersistentTableSurgeon::PersistentTableSurgeon(PersistentTable& table) :
@@ -1069,6 +1078,7 @@ inline TBPtr PersistentTable::findBlock(char* tuple, TBMap& blocks, int blockSiz
 
 inline TBPtr PersistentTable::allocateNextBlock() {
     TBPtr block(new TupleBlock(this, m_blocksNotPendingSnapshotLoad[0]));
+    block->setBlockId(m_nextBlockId++);
     m_data.insert(block->address(), block);
     m_blocksNotPendingSnapshot.insert(block);
     return block;
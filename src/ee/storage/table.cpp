@@ -347,6 +347,8 @@ void Table::serializeTo(SerializeOutput &serialOutput) {
     serialOutput.writeInt(static_cast<int32_t>(m_tupleCount));
     int64_t written_count = 0;
     TableIterator titer = iterator();
+    // Tuples are copied out right away, so spilled temp table blocks can stay on disk.
+    titer.setTempTableStreaming(true);
     TableTuple tuple(m_schema);
     while (titer.next(tuple)) {
         tuple.serializeTo(serialOutput);
@@ -367,6 +369,8 @@ void Table::serializeToWithoutTotalSize(SerializeOutput &serialOutput) {
     serialOutput.writeInt(static_cast<int32_t>(m_tupleCount));
     int64_t written_count = 0;
     TableIterator titer = iterator();
+    // Tuples are copied out right away, so spilled temp table blocks can stay on disk.
+    titer.setTempTableStreaming(true);
     TableTuple tuple(m_schema);
     while (titer.next(tuple)) {
         tuple.serializeTo(serialOutput);
@@ -89,6 +89,15 @@ public:
         m_tempTableDeleteAsGo = flag;
     }
 
+    /**
+     * Read blocks that a temp table spilled to disk into a scratch block
+     * that only lives until the iterator moves on, instead of bringing them
+     * back into the table. Only for callers that don't hold on to tuples.
+     */
+    void setTempTableStreaming(bool flag) {
+        m_tempTableStreaming = flag;
+    }
+
     bool operator ==(const TableIterator &other) const {
         return m_table == other.m_table && m_location == other.m_location;
     }
@@ -135,6 +144,7 @@ protected:
     std::vector<TBPtr>::iterator m_tempBlockIterator;
     bool m_tempTableIterator;
     bool m_tempTableDeleteAsGo;
+    bool m_tempTableStreaming;
 };
 
 inline TableIterator::TableIterator(Table *parent, std::vector<TBPtr>::iterator start)
@@ -147,7 +157,8 @@ inline TableIterator::TableIterator(Table *parent, std::vector<TBPtr>::iterator
       m_tuplesPerBlock(parent->m_tuplesPerBlock), m_currentBlock(NULL),
       m_tempBlockIterator(start),
       m_tempTableIterator(true),
-      m_tempTableDeleteAsGo(false)
+      m_tempTableDeleteAsGo(false),
+      m_tempTableStreaming(false)
     {
     }
 
@@ -164,7 +175,8 @@ inline TableIterator::TableIterator(Table *parent, TBMapI start)
       m_tuplesPerBlock(parent->m_tuplesPerBlock),
       m_currentBlock(NULL),
       m_tempTableIterator(false),
-      m_tempTableDeleteAsGo(false)
+      m_tempTableDeleteAsGo(false),
+      m_tempTableStreaming(false)
     {
     }
 
@@ -179,7 +191,8 @@ inline TableIterator::TableIterator(Table *parent)
       m_tuplesPerBlock(1),
       m_currentBlock(NULL),
       m_tempTableIterator(true),
-      m_tempTableDeleteAsGo(false)
+      m_tempTableDeleteAsGo(false),
+      m_tempTableStreaming(false)
     {
     }
 
@@ -196,6 +209,7 @@ inline void TableIterator::reset(std::vector<TBPtr>::iterator start) {
     m_currentBlock = NULL;
     m_tempTableIterator = true;
     m_tempTableDeleteAsGo = false;
+    m_tempTableStreaming = false;
 }
 
 inline void TableIterator::reset(TBMapI start) {
@@ -210,6 +224,7 @@ inline void TableIterator::reset(TBMapI start) {
     m_currentBlock = NULL;
     m_tempTableIterator = false;
     m_tempTableDeleteAsGo = false;
+    m_tempTableStreaming = false;
 }
 
 inline bool TableIterator::hasNext() {
@@ -276,6 +291,10 @@ inline bool TableIterator::tempNext(TableTuple &out) {
             }
 
             m_currentBlock = *m_tempBlockIterator;
+            if (m_currentBlock == NULL) {
+                // the block was spilled to disk to stay under the temp table memory limit
+                m_currentBlock = m_table->loadSpilledBlock(m_tempBlockIterator, m_tempTableStreaming);
+            }
             m_dataPtr = m_currentBlock->address();
             m_blockOffset = 0;
             m_tempBlockIterator++;
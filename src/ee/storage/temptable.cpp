@@ -45,21 +45,28 @@
 
 #include "temptable.h"
 #include "common/debuglog.h"
+#include "common/FatalException.hpp"
+#include "storage/TempTableSpillFile.h"
 
 #define TABLE_BLOCKSIZE 131072
 
 namespace voltdb {
 
+const int64_t TempTable::NOT_SPILLED;
+
 TempTable::TempTable()
   : Table(TABLE_BLOCKSIZE),
     m_iter(this),
-    m_limits(NULL)
+    m_limits(NULL),
+    m_spilledBlockCount(0)
 {
     // this happens here because m_data might not be initialized above
     m_iter.reset(m_data.begin());
 }
 
-TempTable::~TempTable() {}
+TempTable::~TempTable() {
+    releaseSpilledBlocks();
+}
 
 // ------------------------------------------------------------------
 // OPERATIONS
@@ -88,6 +95,77 @@ bool TempTable::insertTuple(TableTuple &source) {
     return true;
 }
 
+void TempTable::spillFullBlocks() {
+    // The first block is kept, deleteAllTempTuples reuses it.
+    spillFullBlocks(1);
+}
+
+void TempTable::spillFullBlocks(size_t firstBlock) {
+    TempTableSpillFile* spillFile = m_limits ? m_limits->getSpillFile() : NULL;
+    if (spillFile == NULL) {
+        return;
+    }
+    const int32_t length = static_cast<int32_t>(m_tupleLength * m_tuplesPerBlock);
+    m_spillOffsets.resize(m_data.size(), NOT_SPILLED);
+    for (size_t ii = firstBlock; ii < m_data.size(); ++ii) {
+        TBPtr& block = m_data[ii];
+        if (block == NULL || block->hasFreeTuples()) {
+            continue;
+        }
+        m_spillOffsets[ii] = spillFile->write(block->address(), length);
+        block = NULL;
+        ++m_spilledBlockCount;
+        m_limits->spilledToDisk(m_tableAllocationSize);
+    }
+}
+
+TBPtr TempTable::loadSpilledBlock(std::vector<TBPtr>::iterator blockIterator, bool transient) {
+    size_t index = blockIterator - m_data.begin();
+    if (index >= m_spillOffsets.size() || m_spillOffsets[index] == NOT_SPILLED) {
+        throwFatalException("Temp table block %d was neither in memory nor spilled to disk", (int)index);
+    }
+    TempTableSpillFile* spillFile = m_limits->getSpillFile();
+    const int32_t length = static_cast<int32_t>(m_tupleLength * m_tuplesPerBlock);
+    TBPtr block(new TupleBlock(this, TBBucketPtr()));
+    spillFile->read(m_spillOffsets[index], block->address(), length);
+    // Only full blocks are spilled.
+    block->setUsedTuples(m_tuplesPerBlock);
+    if (transient) {
+        // A scratch copy for the caller, the table keeps it on disk.
+        return block;
+    }
+
+    // Make room the way allocateNextBlock does. The scan may hold on to tuples
+    // of the blocks it has passed, but not yet of the ones after this block.
+    if (m_limits->shouldSpill(m_tableAllocationSize)) {
+        spillFullBlocks(index + 1);
+    }
+
+    // Callers may hold on to tuples of this block from now on, so it stays in memory.
+    spillFile->release(length);
+    m_spillOffsets[index] = NOT_SPILLED;
+    --m_spilledBlockCount;
+    *blockIterator = block;
+    // Count it once it belongs to the table, so that clearing the table
+    // gives it back even when this throws.
+    m_limits->increaseAllocated(m_tableAllocationSize);
+    return block;
+}
+
+void TempTable::releaseSpilledBlocks() {
+    if (m_spilledBlockCount > 0) {
+        TempTableSpillFile* spillFile = m_limits->getSpillFile();
+        const int32_t length = static_cast<int32_t>(m_tupleLength * m_tuplesPerBlock);
+        for (size_t ii = 0; ii < m_spillOffsets.size(); ++ii) {
+            if (m_spillOffsets[ii] != NOT_SPILLED) {
+                spillFile->release(length);
+            }
+        }
+        m_spilledBlockCount = 0;
+    }
+    m_spillOffsets.clear();
+}
+
 std::string TempTable::tableType() const { return "TempTable"; }
 
 voltdb::TableStats* TempTable::getTableStats() { return NULL; }
@@ -97,6 +175,10 @@ std::vector<uint64_t> TempTable::getBlockAddresses() const
     std::vector<uint64_t> blockAddresses;
     blockAddresses.reserve(m_data.size());
     for (std::vector<TBPtr>::const_iterator iter = m_data.begin(); iter != m_data.end(); ++iter) {
+        // skip blocks that were spilled to disk or freed as they were scanned
+        if (*iter == NULL) {
+            continue;
+        }
         blockAddresses.push_back((uint64_t) (*iter)->address());
     }
     return blockAddresses;
@@ -67,6 +67,11 @@ class TableStats;
  * in TempTable to make it faster, use deleteAllTuples instead.  As
  * there is no deleteTuple, there is no freelist; TempTable does a
  * efficient thing for iterating and deleteAllTuples.
+ *
+ * If its TempTableLimits have a spill file, a temp table that is about
+ * to cross the memory limit writes its full blocks to that file and
+ * leaves their slots empty. Iterators read spilled blocks back in as
+ * they reach them.
  */
 class TempTable : public Table {
     friend class TableFactory;
@@ -127,6 +132,15 @@ class TempTable : public Table {
 
     int64_t tempTableTupleCount() const { return m_tupleCount; }
 
+    /**
+     * Move all full blocks except the first one to the spill file, if
+     * spilling is enabled. Blocks being pointed into must not be spilled,
+     * so only call this when no one holds on to tuples of this table.
+     */
+    void spillFullBlocks();
+
+    size_t spilledBlockCount() const { return m_spilledBlockCount; }
+
     // ------------------------------------------------------------------
     // INDEXES
     // ------------------------------------------------------------------
@@ -154,9 +168,13 @@ class TempTable : public Table {
     void nextFreeTuple(TableTuple *tuple);
 
     void freeLastScanedBlock(std::vector<TBPtr>::iterator nextBlockIterator);
+    void spillFullBlocks(size_t firstBlock);
+    TBPtr loadSpilledBlock(std::vector<TBPtr>::iterator blockIterator, bool transient);
+    void releaseSpilledBlocks();
     std::vector<TBPtr>::iterator getDataEndBlockIterator();
 
     virtual void onSetColumns() {
+        releaseSpilledBlocks();
         m_data.clear();
     };
 
@@ -168,6 +186,12 @@ class TempTable : public Table {
 
     // ptr to global integer tracking temp table memory allocated per frag
     TempTableLimits* m_limits;
+
+    // Where each block of m_data was written in the spill file, or
+    // NOT_SPILLED. Only grown once the table first spills.
+    std::vector<int64_t> m_spillOffsets;
+    size_t m_spilledBlockCount;
+    static const int64_t NOT_SPILLED = -1;
 };
 
 inline void TempTable::insertTempTupleDeepCopy(const TableTuple &source, Pool *pool) {
@@ -212,6 +236,9 @@ inline void TempTable::deleteAllTempTuples() {
     }
 
     m_tupleCount = 0;
+    if (m_spilledBlockCount > 0) {
+        releaseSpilledBlocks();
+    }
     int remaining = m_data.size();
     for (; remaining > 1; --remaining) {
         TBPtr blockPtr = m_data.back();
@@ -230,6 +257,11 @@ inline void TempTable::deleteAllTempTuples() {
 }
 
 inline TBPtr TempTable::allocateNextBlock() {
+    if (m_limits && m_limits->shouldSpill(m_tableAllocationSize)) {
+        // Only the table being filled spills, since nobody reads from it yet.
+        spillFullBlocks();
+    }
+
     TBPtr block(new TupleBlock(this, TBBucketPtr()));
     m_data.push_back(block);
 
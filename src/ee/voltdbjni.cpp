@@ -943,6 +943,33 @@ SHAREDLIB_JNIEXPORT jboolean JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeS
     return false;
 }
 
+/**
+ * Set the directory temp tables may spill to when they cross the temp table
+ * memory limit. An empty directory disables spilling.
+ * @returns 0 on success.
+ */
+SHAREDLIB_JNIEXPORT jint JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeSetTempTableSpillDirectory
+(JNIEnv *env, jobject obj, jlong engine_ptr, jbyteArray directory)
+{
+    VOLT_DEBUG("nativeSetTempTableSpillDirectory in C++ called");
+    VoltDBEngine *engine = castToEngine(engine_ptr);
+    if (engine == NULL) {
+        return org_voltdb_jni_ExecutionEngine_ERRORCODE_ERROR;
+    }
+    Topend *topend = static_cast<JNITopend*>(engine->getTopend())->updateJNIEnv(env);
+    try {
+        updateJNILogProxy(engine); //JNIEnv pointer can change between calls, must be updated
+        jbyte *dirChars = env->GetByteArrayElements(directory, NULL);
+        std::string dirString(reinterpret_cast<char*>(dirChars), env->GetArrayLength(directory));
+        env->ReleaseByteArrayElements(directory, dirChars, JNI_ABORT);
+        engine->setTempTableSpillDirectory(dirString);
+        return org_voltdb_jni_ExecutionEngine_ERRORCODE_SUCCESS;
+    } catch (const FatalException &e) {
+        topend->crashVoltDB(e);
+    }
+    return org_voltdb_jni_ExecutionEngine_ERRORCODE_ERROR;
+}
+
 /*
  * Class:     org_voltdb_jni_ExecutionEngine
  * Method:    nativeActivateTableStream
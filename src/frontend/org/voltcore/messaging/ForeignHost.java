@@ -23,7 +23,12 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -71,6 +76,66 @@ public class ForeignHost {
     private AtomicBoolean m_linkCutForTest = new AtomicBoolean(false);
 
     public static final int POISON_PILL = -1;
+    // Sent in place of the destination count by a frame that holds several messages
+    public static final int MESSAGE_BATCH = -2;
+
+    // Coalesce messages queued for this host while the network thread is busy into one frame
+    private static final boolean BATCHING_ENABLED = !Boolean.getBoolean("DISABLE_FH_BATCHING");
+    // A batch stops growing at this many bytes, a larger message is still sent on its own
+    private static final int MAX_BATCH_BYTES = Integer.getInteger("FH_BATCH_MAX_BYTES", 16 * 1024);
+
+    /** A message waiting for the network thread to pick it up into a batch */
+    private static final class PendingMessage {
+        final long m_destinations[];
+        final VoltMessage m_message;
+        final long m_queuedNanos;
+        int m_frameSize;
+
+        PendingMessage(long destinations[], VoltMessage message) {
+            m_destinations = destinations;
+            m_message = message;
+            m_queuedNanos = System.nanoTime();
+        }
+
+        int getFrameSize() {
+            m_frameSize = 8            /* source hsid */
+                        + 4            /* destinationCount */
+                        + 8 * m_destinations.length  /* destination list */
+                        + m_message.getSerializedSize();
+            return m_frameSize;
+        }
+
+        /**
+         * Messages check that they fill the buffer they flatten into,
+         * so each one gets a slice of its own frame size
+         */
+        void serialize(ByteBuffer buf) throws IOException {
+            final ByteBuffer frame = buf.slice();
+            frame.limit(m_frameSize);
+            frame.putLong(m_message.m_sourceHSId);
+            frame.putInt(m_destinations.length);
+            for (int ii = 0; ii < m_destinations.length; ii++) {
+                frame.putLong(m_destinations[ii]);
+            }
+            m_message.flattenToBuffer(frame.slice());
+            buf.position(buf.position() + m_frameSize);
+        }
+    }
+
+    private final ConcurrentLinkedQueue<PendingMessage> m_pendingMessages =
+            new ConcurrentLinkedQueue<PendingMessage>();
+    // true while a batch is queued in the network and will pick up newly pending messages
+    private final AtomicBoolean m_batchScheduled = new AtomicBoolean(false);
+
+    // Batching statistics, only touched by the network thread
+    private long m_framesWritten = 0;
+    private long m_messagesWritten = 0;
+    private long m_totalBatchDelayNanos = 0;
+    private long m_maxBatchSize = 0;
+    private long m_maxBatchDelayNanos = 0;
+    private long m_lastFramesWritten = 0;
+    private long m_lastMessagesWritten = 0;
+    private long m_lastTotalBatchDelayNanos = 0;
 
     public static final int CRASH_ALL = 0;
     public static final int CRASH_ME = 1;
@@ -225,42 +290,11 @@ public class ForeignHost {
 
         // if this link is "gone silent" for partition tests, just drop the message on the floor
         if (!m_linkCutForTest.get()) {
-            m_network.enqueue(
-                    new DeferredSerialization() {
-                        @Override
-                        public final void serialize(final ByteBuffer buf) throws IOException {
-                            buf.putInt(buf.capacity() - 4);
-                            buf.putLong(message.m_sourceHSId);
-                            buf.putInt(destinations.length);
-                            for (int ii = 0; ii < destinations.length; ii++) {
-                                buf.putLong(destinations[ii]);
-                            }
-                            message.flattenToBuffer(buf);
-                            buf.flip();
-                        }
-
-                        @Override
-                        public final void cancel() {
-                        /*
-                         * Can this be removed?
-                         */
-                        }
-
-                        @Override
-                        public String toString() {
-                            return message.getClass().getName();
-                        }
-
-                        @Override
-                        public int getSerializedSize() {
-                            final int len = 4            /* length prefix */
-                                    + 8            /* source hsid */
-                                    + 4            /* destinationCount */
-                                    + 8 * destinations.length  /* destination list */
-                                    + message.getSerializedSize();
-                            return len;
-                        }
-                    });
+            m_pendingMessages.offer(new PendingMessage(destinations, message));
+            // Only wake up the network thread if no batch is on its way already
+            if (!BATCHING_ENABLED || m_batchScheduled.compareAndSet(false, true)) {
+                m_network.enqueue(new MessageBatch());
+            }
         }
 
         long current_time = EstTime.currentTimeMillis();
@@ -294,6 +328,131 @@ public class ForeignHost {
         }
     }
 
+    /**
+     * Takes the messages pending for this host when the network thread gets to it, so
+     * everything sent while the network thread was busy goes out in one frame. A single
+     * message is framed as before, several are wrapped in a {@link #MESSAGE_BATCH} frame:
+     * length, source hsid placeholder, MESSAGE_BATCH, message count, then each message
+     * with its own length prefix.
+     */
+    private class MessageBatch implements DeferredSerialization {
+        private final ArrayList<PendingMessage> m_messages = new ArrayList<PendingMessage>();
+        private int m_size;
+
+        // Called on the network thread right before serialize()
+        @Override
+        public int getSerializedSize() {
+            if (BATCHING_ENABLED) {
+                // Let the next send schedule a new batch before taking what is pending,
+                // so nothing is left behind without a batch to carry it
+                m_batchScheduled.set(false);
+            }
+            int bytes = 0;
+            PendingMessage pending;
+            while ((pending = m_pendingMessages.peek()) != null) {
+                final int frameSize = pending.getFrameSize();
+                if (!m_messages.isEmpty() && bytes + 4 + frameSize > MAX_BATCH_BYTES) {
+                    break;
+                }
+                m_pendingMessages.poll();
+                m_messages.add(pending);
+                bytes += 4 + frameSize;
+                if (!BATCHING_ENABLED) {
+                    break;
+                }
+            }
+            if (BATCHING_ENABLED && !m_pendingMessages.isEmpty() && m_batchScheduled.compareAndSet(false, true)) {
+                // The batch filled up, the rest goes in the next one
+                m_network.enqueue(new MessageBatch());
+            }
+            if (m_messages.isEmpty()) {
+                // A previous batch took the messages
+                m_size = EMPTY_MESSAGE_LENGTH;
+            }
+            else if (m_messages.size() == 1) {
+                m_size = bytes;
+            }
+            else {
+                m_size = 4 + 8 + 4 + 4 + bytes;
+            }
+            return m_size;
+        }
+
+        @Override
+        public void serialize(ByteBuffer buf) throws IOException {
+            buf.putInt(m_size - 4);
+            if (m_messages.size() == 1) {
+                m_messages.get(0).serialize(buf);
+            }
+            else {
+                buf.putLong(-1);
+                buf.putInt(MESSAGE_BATCH);
+                buf.putInt(m_messages.size());
+                for (PendingMessage pending : m_messages) {
+                    buf.putInt(pending.m_frameSize);
+                    pending.serialize(buf);
+                }
+            }
+            buf.flip();
+
+            final long now = System.nanoTime();
+            m_framesWritten++;
+            m_messagesWritten += m_messages.size();
+            m_maxBatchSize = Math.max(m_maxBatchSize, m_messages.size());
+            for (PendingMessage pending : m_messages) {
+                final long delay = now - pending.m_queuedNanos;
+                m_totalBatchDelayNanos += delay;
+                m_maxBatchDelayNanos = Math.max(m_maxBatchDelayNanos, delay);
+            }
+        }
+
+        @Override
+        public void cancel() {}
+
+        @Override
+        public String toString() {
+            return m_messages.size() == 1 ?
+                    m_messages.get(0).m_message.getClass().getName() :
+                    "Batch of " + m_messages.size() + " messages";
+        }
+    }
+
+    /**
+     * Get the frames and messages written to this host, the largest batch, and the total and
+     * largest time messages waited to be serialized, since the beginning or the last interval.
+     * Computed on the network thread.
+     */
+    Future<long[]> getBatchStats(final boolean interval) {
+        FutureTask<long[]> task = new FutureTask<long[]>(new Callable<long[]>() {
+            @Override
+            public long[] call() {
+                long[] stats = new long[] {
+                        m_framesWritten,
+                        m_messagesWritten,
+                        m_maxBatchSize,
+                        m_totalBatchDelayNanos,
+                        m_maxBatchDelayNanos };
+                if (interval) {
+                    stats[0] -= m_lastFramesWritten;
+                    stats[1] -= m_lastMessagesWritten;
+                    stats[3] -= m_lastTotalBatchDelayNanos;
+                    m_lastFramesWritten = m_framesWritten;
+                    m_lastMessagesWritten = m_messagesWritten;
+                    m_lastTotalBatchDelayNanos = m_totalBatchDelayNanos;
+                    m_maxBatchSize = 0;
+                    m_maxBatchDelayNanos = 0;
+                }
+                return stats;
+            }
+        });
+        m_network.queueTask(task);
+        return task;
+    }
+
+    int getHostId() {
+        return m_hostId;
+    }
+
     String hostnameAndIPAndPort() {
         return m_network.getHostnameAndIPAndPort();
     }
@@ -378,6 +537,18 @@ public class ForeignHost {
             return;
         }
 
+        if (destCount == MESSAGE_BATCH) {
+            final int messageCount = in.getInt();
+            for (int i = 0; i < messageCount; i++) {
+                final int length = in.getInt();
+                final ByteBuffer frame = in.slice();
+                frame.limit(length);
+                in.position(in.position() + length);
+                handleRead(frame, c);
+            }
+            return;
+        }
+
         recvDests = new long[destCount];
         for (int i = 0; i < destCount; i++) {
             recvDests[i] = in.getLong();
@@ -43,6 +43,7 @@ import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -1679,6 +1680,30 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         return m_network.getIOStats(interval, picoNetworks);
     }
 
+    /**
+     * Get the message batching statistics of each connection to a foreign host,
+     * see {@link ForeignHost#getBatchStats(boolean)}.
+     */
+    public Map<Long, Pair<String, long[]>>
+        getMessageBatchStats(final boolean interval) throws InterruptedException, ExecutionException {
+        final ImmutableMultimap<Integer, ForeignHost> fhosts = m_foreignHosts;
+        List<Pair<ForeignHost, Future<long[]>>> statTasks = new ArrayList<Pair<ForeignHost, Future<long[]>>>();
+        for (ForeignHost fh : fhosts.values()) {
+            statTasks.add(Pair.of(fh, fh.getBatchStats(interval)));
+        }
+
+        Map<Long, Pair<String, long[]>> retval = new HashMap<Long, Pair<String, long[]>>();
+        for (Pair<ForeignHost, Future<long[]>> statTask : statTasks) {
+            ForeignHost fh = statTask.getFirst();
+            long[] stats = statTask.getSecond().get();
+            long[] row = new long[stats.length + 1];
+            row[0] = fh.getHostId();
+            System.arraycopy(stats, 0, row, 1, stats.length);
+            retval.put(fh.m_network.connectionId(), Pair.of(fh.hostname(), row));
+        }
+        return retval;
+    }
+
     /**
      * Cut the network connection between two hostids immediately
      * Useful for simulating network partitions
@@ -24,6 +24,9 @@ import java.security.NoSuchAlgorithmException;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
@@ -42,22 +45,36 @@ import io.netty_voltpatches.buffer.PooledByteBufAllocator;
 
 public enum CipherExecutor {
 
-    SERVER(getWishedThreadCount()),
-    CLIENT(2);
+    SERVER(getWishedThreadCount(isServerBatched()), isServerBatched()),
+    CLIENT(2, false);
 
     public final static int FRAME_SHIFT = 14; // 16384 (max TLS fragment)
     public final static int FRAME_SIZE = 1 << FRAME_SHIFT;
 
+    // batched mode: each encrypt or decrypt task handles up to BATCH_FRAMES queued TLS records
+    public final static int BATCH_FRAMES = Math.max(1, Integer.getInteger("TLS_CIPHER_BATCH_FRAMES", 16));
+
     volatile ListeningExecutorService m_es;
     AtomicBoolean m_active = new AtomicBoolean(false);
     final int m_threadCount;
+    final boolean m_batched;
 
-    private CipherExecutor(int nthreads) {
+    private CipherExecutor(int nthreads, boolean batched) {
         m_threadCount = nthreads;
+        m_batched = batched;
         m_es = CoreUtils.LISTENINGSAMETHREADEXECUTOR;
     }
 
-    private static final int getWishedThreadCount() {
+    /*
+     * TLS_BATCHED_CIPHER applies to the server side only, client connections keep
+     * their small fixed pool and hand off one record per task. Read here rather than
+     * in a static field, which is not yet assigned when the constants are built.
+     */
+    private static boolean isServerBatched() {
+        return Boolean.getBoolean("TLS_BATCHED_CIPHER");
+    }
+
+    private static final int getWishedThreadCount(boolean batched) {
         Runtime rt = null;
         try {
             rt = Runtime.getRuntime();
@@ -65,7 +82,23 @@ public enum CipherExecutor {
             rt = null;
         }
         int coreCount = rt != null ? rt.availableProcessors() : 2;
-        return Math.max(2, coreCount/2);
+        return batched ? Math.max(2, coreCount) : Math.max(2, coreCount/2);
+    }
+
+    /**
+     * @return true if cipher work runs on a work stealing pool sized to the cores and
+     * each encrypt or decrypt task handles several queued TLS records
+     */
+    public boolean isBatched() {
+        return m_batched;
+    }
+
+    /**
+     * @return the number of queued TLS records an encrypt or decrypt task handles before
+     * it resubmits itself
+     */
+    public int batchFrames() {
+        return m_batched ? BATCH_FRAMES : 1;
     }
 
     /**
@@ -102,10 +135,25 @@ public enum CipherExecutor {
 
     public void startup() {
         if (m_active.compareAndSet(false, true)) synchronized(this) {
-            ThreadFactory thrdfct = CoreUtils.getThreadFactory(
-                    name () + " SSL cipher service", CoreUtils.MEDIUM_STACK_SIZE);
-            m_es = MoreExecutors.listeningDecorator(
-                    Executors.newFixedThreadPool(m_threadCount, thrdfct));
+            if (m_batched) {
+                // Every port serializes its own cipher tasks, idle threads steal
+                // the tasks of busy ports instead of waiting on a shared queue
+                m_es = MoreExecutors.listeningDecorator(
+                        new ForkJoinPool(m_threadCount, new ForkJoinWorkerThreadFactory() {
+                            @Override
+                            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                                ForkJoinWorkerThread t =
+                                        ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                                t.setName(name() + " SSL cipher service - " + t.getPoolIndex());
+                                return t;
+                            }
+                        }, null, true));
+            } else {
+                ThreadFactory thrdfct = CoreUtils.getThreadFactory(
+                        name () + " SSL cipher service", CoreUtils.MEDIUM_STACK_SIZE);
+                m_es = MoreExecutors.listeningDecorator(
+                        Executors.newFixedThreadPool(m_threadCount, thrdfct));
+            }
         }
     }
 
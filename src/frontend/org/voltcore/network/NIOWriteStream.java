@@ -22,8 +22,11 @@ import java.nio.ByteBuffer;
 import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SelectionKey;
 import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
 
 import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.DeferredSerialization;
 import org.voltcore.utils.EstTime;
 
@@ -65,6 +68,12 @@ public class NIOWriteStream extends NIOWriteStreamBase implements WriteStream {
 
     protected final int m_maxQueuedWritesBeforeBackpressure = 100;
 
+    /**
+     * Most buffers handed to the channel in one gathering write
+     */
+    private static final int MAX_GATHERED_BUFFERS = 16;
+    private final ByteBuffer m_gatheredBuffers[] = new ByteBuffer[MAX_GATHERED_BUFFERS];
+
     private final Runnable m_offBackPressureCallback;
     private final Runnable m_onBackPressureCallback;
 
@@ -340,6 +349,12 @@ public class NIOWriteStream extends NIOWriteStreamBase implements WriteStream {
                     buffer = m_currentWriteBuffer.b();
                 }
 
+                if (m_queuedBuffers.peek() instanceof PayloadContainer) {
+                    rc = gatherTo(channel, buffer);
+                    bytesWritten += rc;
+                    continue;
+                }
+
                 rc = channel.write(buffer);
 
                 //Discard the buffer back to a pool if no data remains
@@ -376,4 +391,47 @@ public class NIOWriteStream extends NIOWriteStreamBase implements WriteStream {
         }
         return bytesWritten;
     }
+
+    /**
+     * Write the current buffer and the buffers queued behind it with a single gathering
+     * write. Used when the next buffer is a detached payload, so a response header and
+     * the direct buffers holding its results go out in one system call. Buffers that were
+     * written out are discarded and the first one with data left becomes the current buffer.
+     */
+    private long gatherTo(final GatheringByteChannel channel, final ByteBuffer current) throws IOException {
+        int count = 0;
+        m_gatheredBuffers[count++] = current;
+        final Iterator<BBContainer> iter = m_queuedBuffers.iterator();
+        while (count < MAX_GATHERED_BUFFERS && iter.hasNext()) {
+            // Queued buffers are flipped when they become current, write from a flipped view
+            final ByteBuffer queued = iter.next().b().duplicate();
+            queued.flip();
+            m_gatheredBuffers[count++] = queued;
+        }
+
+        final long rc = channel.write(m_gatheredBuffers, 0, count);
+
+        if (!current.hasRemaining()) {
+            m_currentWriteBuffer.discard();
+            m_currentWriteBuffer = null;
+            m_messagesWritten++;
+            for (int i = 1; i < count; i++) {
+                final BBContainer written = m_queuedBuffers.poll();
+                if (m_gatheredBuffers[i].hasRemaining()) {
+                    final ByteBuffer buffer = written.b();
+                    buffer.flip();
+                    buffer.position(m_gatheredBuffers[i].position());
+                    m_currentWriteBuffer = written;
+                    break;
+                }
+                written.discard();
+                m_messagesWritten++;
+            }
+        }
+        if (m_gatheredBuffers[count - 1].hasRemaining() && !m_hadBackPressure) {
+            backpressureStarted();
+        }
+        Arrays.fill(m_gatheredBuffers, 0, count, null);
+        return rc;
+    }
 }
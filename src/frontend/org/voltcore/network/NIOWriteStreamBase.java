@@ -28,6 +28,7 @@ import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.DeferredSerialization;
+import org.voltcore.utils.DirectDeferredSerialization;
 import org.voltcore.utils.RateLimitedLogger;
 
 /**
@@ -48,6 +49,24 @@ public abstract class NIOWriteStreamBase {
      */
     protected final ArrayDeque<BBContainer> m_queuedBuffers = new ArrayDeque<BBContainer>();
 
+    /**
+     * A buffer detached from a {@link DirectDeferredSerialization} and queued as it is
+     */
+    protected static final class PayloadContainer extends BBContainer {
+        private final BBContainer m_payload;
+
+        PayloadContainer(BBContainer payload) {
+            super(payload.b());
+            m_payload = payload;
+        }
+
+        @Override
+        public void discard() {
+            checkDoubleFree();
+            m_payload.discard();
+        }
+    }
+
     protected long m_bytesWritten = 0;
     protected long m_messagesWritten = 0;
 
@@ -107,57 +126,97 @@ public abstract class NIOWriteStreamBase {
             processedWrites++;
             final int serializedSize = ds.getSerializedSize();
             if (serializedSize == DeferredSerialization.EMPTY_MESSAGE_LENGTH) continue;
-            BBContainer outCont = m_queuedBuffers.peekLast();
-            ByteBuffer outbuf = null;
-            if (outCont == null || !outCont.b().hasRemaining()) {
-                outCont = pool.acquire();
-                outCont.b().clear();
-                m_queuedBuffers.offer(outCont);
+            BBContainer payload[] = null;
+            if (ds instanceof DirectDeferredSerialization) {
+                payload = ((DirectDeferredSerialization)ds).detachPayload();
+            }
+            if (payload == null) {
+                bytesQueued += serializeToQueuedBuffers(pool, ds, serializedSize, false);
+                continue;
             }
 
-            outbuf = outCont.b();
-
-            if (outbuf.remaining() >= serializedSize) {
-                // Fast path, serialize to direct buffer creating no garbage
-                final int oldLimit = outbuf.limit();
-                outbuf.limit(outbuf.position() + serializedSize);
-                final ByteBuffer slice = outbuf.slice();
-                ds.serialize(slice);
-                checkSloppySerialization(slice, ds);
-                slice.position(0);
-                bytesQueued += slice.remaining();
-                outbuf.position(outbuf.limit());
-                outbuf.limit(oldLimit);
-            } else {
-                // Slow path serialize to heap, and then put in buffers
-                ByteBuffer buf = ByteBuffer.allocate(serializedSize);
-                ds.serialize(buf);
-                checkSloppySerialization(buf, ds);
-                buf.position(0);
-                bytesQueued += buf.remaining();
-                // Copy data allocated in heap buffer to direct buffer
-                while (buf.hasRemaining()) {
-                    if (!outbuf.hasRemaining()) {
-                        outCont = pool.acquire();
-                        outbuf = outCont.b();
-                        outbuf.clear();
-                        m_queuedBuffers.offer(outCont);
-                    }
-                    if (outbuf.remaining() >= buf.remaining()) {
-                        outbuf.put(buf);
-                    } else {
-                        final int oldLimit = buf.limit();
-                        buf.limit(buf.position() + outbuf.remaining());
-                        outbuf.put(buf);
-                        buf.limit(oldLimit);
-                    }
-                }
+            // Serialize the header into pool memory and queue the payload buffers
+            // behind it as they are, marked full so nothing gets appended to them.
+            int payloadSize = 0;
+            for (BBContainer cont : payload) {
+                payloadSize += cont.b().limit();
+            }
+            bytesQueued += serializeToQueuedBuffers(pool, ds, serializedSize - payloadSize, true);
+            for (BBContainer cont : payload) {
+                final ByteBuffer b = cont.b();
+                b.position(b.limit());
+                bytesQueued += b.limit();
+                m_queuedBuffers.offer(new PayloadContainer(cont));
             }
         }
         updateQueued(bytesQueued, true);
         return processedWrites;
     }
 
+    /**
+     * Serialize a message, or just its header, onto the tail of the queued buffers.
+     * @return number of bytes queued
+     */
+    private int serializeToQueuedBuffers(final NetworkDBBPool pool, final DeferredSerialization ds,
+            final int serializedSize, final boolean headerOnly) throws IOException {
+        BBContainer outCont = m_queuedBuffers.peekLast();
+        ByteBuffer outbuf = null;
+        if (outCont == null || !outCont.b().hasRemaining()) {
+            outCont = pool.acquire();
+            outCont.b().clear();
+            m_queuedBuffers.offer(outCont);
+        }
+
+        outbuf = outCont.b();
+
+        if (outbuf.remaining() >= serializedSize) {
+            // Fast path, serialize to direct buffer creating no garbage
+            final int oldLimit = outbuf.limit();
+            outbuf.limit(outbuf.position() + serializedSize);
+            final ByteBuffer slice = outbuf.slice();
+            serialize(ds, slice, headerOnly);
+            checkSloppySerialization(slice, ds);
+            slice.position(0);
+            final int bytesQueued = slice.remaining();
+            outbuf.position(outbuf.limit());
+            outbuf.limit(oldLimit);
+            return bytesQueued;
+        } else {
+            // Slow path serialize to heap, and then put in buffers
+            ByteBuffer buf = ByteBuffer.allocate(serializedSize);
+            serialize(ds, buf, headerOnly);
+            checkSloppySerialization(buf, ds);
+            buf.position(0);
+            final int bytesQueued = buf.remaining();
+            // Copy data allocated in heap buffer to direct buffer
+            while (buf.hasRemaining()) {
+                if (!outbuf.hasRemaining()) {
+                    outCont = pool.acquire();
+                    outbuf = outCont.b();
+                    outbuf.clear();
+                    m_queuedBuffers.offer(outCont);
+                }
+                if (outbuf.remaining() >= buf.remaining()) {
+                    outbuf.put(buf);
+                } else {
+                    final int oldLimit = buf.limit();
+                    buf.limit(buf.position() + outbuf.remaining());
+                    outbuf.put(buf);
+                    buf.limit(oldLimit);
+                }
+            }
+            return bytesQueued;
+        }
+    }
+
+    private static void serialize(DeferredSerialization ds, ByteBuffer buf, boolean headerOnly) throws IOException {
+        if (headerOnly) {
+            ((DirectDeferredSerialization)ds).serializeHeader(buf);
+        } else {
+            ds.serialize(buf);
+        }
+    }
+
     private static final boolean ASSERT_ON;
     static {
         boolean assertOn = false;
@@ -491,7 +491,8 @@ public class PicoNetwork implements Runnable, Connection, IOStatsIntf
 
     @Override
     public void queueTask(Runnable r) {
-        throw new UnsupportedOperationException();
+        m_tasks.offer(r);
+        m_selector.wakeup();
     }
 
     @Override
@@ -439,52 +439,67 @@ public class TLSNIOWriteStream extends NIOWriteStream {
 
         @Override
         public void run() {
-            EncryptFrame frame = m_q.peek();
-            if (frame == null) return;
-
-            ByteBuffer src = frame.frame.nioBuffer();
-            ByteBuf encr = m_ce.allocator().ioBuffer(packetBufferSize()).writerIndex(packetBufferSize());
-            ByteBuffer dest = encr.nioBuffer();
-
+            boolean signal = false;
             try {
-                m_encrypter.tlswrap(src, dest);
-            } catch (TLSException e) {
-                m_inFlight.release();
-                encr.release();
-                m_exceptions.offer(new ExecutionException("failed to encrypt frame", e));
-                networkLog.error("failed to encrypt frame", e);
-                m_port.enableWriteSelection();
-                return;
-            }
-            assert !src.hasRemaining() : "encryption wrap did not consume the whole source buffer";
-            int delta = dest.limit() - frame.frame.readableBytes();
-            encr.writerIndex(dest.limit());
-
-            if (!m_isShutdown) {
-                m_encrypted.offer(frame.encrypted(delta, encr));
-                /*
-                 * All interactions with write stream must be protected
-                 * with a lock to ensure that interests ops are consistent with
-                 * the state of writes queued to the stream. This prevent
-                 * lost queued writes where the write is queued
-                 * but the write interest op is not set.
-                 */
-                if (frame.isLast()) {
-                    m_port.enableWriteSelection();
-                }
-            } else {
-                encr.release();
-                return;
-            }
-            synchronized(this) {
-                m_q.poll();
-                if (frame.isLast()) {
-                    frame.bb.release();
+                // In batched mode keep encrypting queued frames instead of resubmitting
+                // after each one, and signal the port once for the whole batch
+                for (int batch = 1; ; ++batch) {
+                    EncryptFrame frame = m_q.peek();
+                    if (frame == null) return;
+
+                    ByteBuffer src = frame.frame.nioBuffer();
+                    ByteBuf encr = m_ce.allocator().ioBuffer(packetBufferSize()).writerIndex(packetBufferSize());
+                    ByteBuffer dest = encr.nioBuffer();
+
+                    try {
+                        m_encrypter.tlswrap(src, dest);
+                    } catch (TLSException e) {
+                        m_inFlight.release();
+                        encr.release();
+                        m_exceptions.offer(new ExecutionException("failed to encrypt frame", e));
+                        networkLog.error("failed to encrypt frame", e);
+                        signal = true;
+                        return;
+                    }
+                    assert !src.hasRemaining() : "encryption wrap did not consume the whole source buffer";
+                    int delta = dest.limit() - frame.frame.readableBytes();
+                    encr.writerIndex(dest.limit());
+
+                    if (!m_isShutdown) {
+                        m_encrypted.offer(frame.encrypted(delta, encr));
+                        /*
+                         * All interactions with write stream must be protected
+                         * with a lock to ensure that interests ops are consistent with
+                         * the state of writes queued to the stream. This prevent
+                         * lost queued writes where the write is queued
+                         * but the write interest op is not set.
+                         */
+                        if (frame.isLast()) {
+                            signal = true;
+                        }
+                    } else {
+                        encr.release();
+                        return;
+                    }
+                    synchronized(this) {
+                        m_q.poll();
+                        if (frame.isLast()) {
+                            frame.bb.release();
+                        }
+                        m_inFlight.release();
+                        coalesceEncryptFrames();
+                        if (m_q.peek() == null || m_isShutdown) {
+                            return;
+                        }
+                        if (batch >= m_ce.batchFrames()) {
+                            submitSelf();
+                            return;
+                        }
+                    }
                 }
-                m_inFlight.release();
-                coalesceEncryptFrames();
-                if (m_q.peek() != null && !m_isShutdown) {
-                    submitSelf();
+            } finally {
+                if (signal) {
+                    m_port.enableWriteSelection();
                 }
             }
         }
@@ -506,7 +521,7 @@ public class TLSNIOWriteStream extends NIOWriteStream {
         }
         @Override
         public void run() {
-            if (!m_isShutdown) return;
+            if (m_isShutdown) return;
             try {
                 m_fut.get();
             } catch (InterruptedException notPossible) {
@@ -51,6 +51,8 @@ public class TLSVoltPort extends VoltPort  {
     private final FlexibleSemaphore m_inFlight = new FlexibleSemaphore(1);
     private final CipherExecutor m_ce;
     private final DecryptionGateway m_dcryptgw;
+    // 32 KB, or as many records as a batched decrypt task handles
+    private final int m_maxRead;
 
     public TLSVoltPort(VoltNetwork network, InputHandler handler,
             InetSocketAddress remoteAddress, NetworkDBBPool pool,
@@ -60,6 +62,7 @@ public class TLSVoltPort extends VoltPort  {
         m_sslEngine = sslEngine;
         m_decrypter = new SSLBufferDecrypter(sslEngine);
         m_dcryptgw = new DecryptionGateway();
+        m_maxRead = CipherExecutor.FRAME_SIZE * Math.max(2, cipherExecutor.batchFrames());
     }
 
     /**
@@ -148,14 +151,13 @@ public class TLSVoltPort extends VoltPort  {
         ((TLSNIOWriteStream)m_writeStream).waitForPendingEncrypts();
     }
 
-    private final static int MAX_READ = CipherExecutor.FRAME_SIZE << 1; //32 KB
     private final static int NOT_AVAILABLE = -1;
 
     private int m_needed = NOT_AVAILABLE;
 
     private final int getMaxRead() {
         return m_handler.getMaxRead() == 0 ? 0 // in back pressure
-                : m_needed == NOT_AVAILABLE ? MAX_READ :
+                : m_needed == NOT_AVAILABLE ? m_maxRead :
                     readStream().dataAvailable() > m_needed ? 0 : m_needed - readStream().dataAvailable();
     }
 
@@ -341,7 +343,7 @@ public class TLSVoltPort extends VoltPort  {
                         "max of " + MAX_MESSAGE_LENGTH + ". Break up the work into smaller chunks (2 megabytes is reasonable) " +
                         "and send as multiple messages or stored procedure invocations");
             }
-            assert msgLength > 1 : "invalid negative or zero message length header value";
+            assert msgLength > 0 : "invalid negative or zero message length header value";
             return ioe;
         }
 
@@ -354,88 +356,104 @@ public class TLSVoltPort extends VoltPort  {
 
         @Override
         public void run() {
-            final NIOReadStream.Slice slice = m_q.peek();
-            if (slice == null) return;
-
-            ByteBuf src = slice.bb;
+            boolean signal = false;
+            try {
+                // In batched mode keep decrypting queued records instead of resubmitting
+                // after each one, and signal the port once for the whole batch
+                for (int batch = 1; ; ++batch) {
+                    final NIOReadStream.Slice slice = m_q.peek();
+                    if (slice == null) return;
+
+                    ByteBuf src = slice.bb;
+
+                    if (isDead()) synchronized(this) {
+                        slice.markConsumed().discard();
+                        m_q.poll();
+                        releaseDecryptedBuffer();
+                        return;
+                    }
 
-            if (isDead()) synchronized(this) {
-                slice.markConsumed().discard();
-                m_q.poll();
-                releaseDecryptedBuffer();
-                return;
-            }
+                    ByteBuffer [] slicebbarr = slice.bb.nioBuffers();
+                    // if frame overlaps two buffers then copy it to the overlap buffer
+                    // and use that instead for the unwrap src buffer
+                    if (slicebbarr.length > 1) {
+                        src = Unpooled.wrappedBuffer(m_overlap).clear();
+                        slice.bb.readBytes(src, slice.bb.readableBytes());
+                        slicebbarr[0] = src.nioBuffer();
+                    }
 
-            ByteBuffer [] slicebbarr = slice.bb.nioBuffers();
-            // if frame overlaps two buffers then copy it to the overlap buffer
-            // and use that instead for the unwrap src buffer
-            if (slicebbarr.length > 1) {
-                src = Unpooled.wrappedBuffer(m_overlap).clear();
-                slice.bb.readBytes(src, slice.bb.readableBytes());
-                slicebbarr[0] = src.nioBuffer();
-            }
+                    final int appBuffSz = applicationBufferSize();
+                    ByteBuf dest = m_ce.allocator().buffer(appBuffSz).writerIndex(appBuffSz);
+                    ByteBuffer destjbb = dest.nioBuffer();
+                    int decryptedBytes = 0;
+                    try {
+                        decryptedBytes = m_decrypter.tlsunwrap(slicebbarr[0], destjbb);
+                    } catch (TLSException e) {
+                        m_inFlight.release(); dest.release();
+                        m_exceptions.offer(new ExecutionException("fragment decrypt task failed", e));
+                        networkLog.error("fragment decrypt task failed", e);
+                        enableWriteSelection();
+                        return;
+                    }
+                    assert !slicebbarr[0].hasRemaining() : "decrypter did not wholly consume the source buffer";
+
+                    // src buffer is wholly consumed
+                    if (!isDead()) {
+                        if (decryptedBytes > 0) {
+                            dest.writerIndex(destjbb.limit());
+                            m_msgbb.addComponent(true, dest);
+                        } else {
+                            // the TLS frame was consumed by the call to engines unwrap but it
+                            // did not yield any content
+                            dest.release();
+                        }
 
-            final int appBuffSz = applicationBufferSize();
-            ByteBuf dest = m_ce.allocator().buffer(appBuffSz).writerIndex(appBuffSz);
-            ByteBuffer destjbb = dest.nioBuffer();
-            int decryptedBytes = 0;
-            try {
-                decryptedBytes = m_decrypter.tlsunwrap(slicebbarr[0], destjbb);
-            } catch (TLSException e) {
-                m_inFlight.release(); dest.release();
-                m_exceptions.offer(new ExecutionException("fragment decrypt task failed", e));
-                networkLog.error("fragment decrypt task failed", e);
-                enableWriteSelection();
-                return;
-            }
-            assert !slicebbarr[0].hasRemaining() : "decrypter did not wholly consume the source buffer";
-
-            // src buffer is wholly consumed
-            if (!isDead()) {
-                if (decryptedBytes > 0) {
-                    dest.writerIndex(destjbb.limit());
-                    m_msgbb.addComponent(true, dest);
-                } else {
-                    // the TLS frame was consumed by the call to engines unwrap but it
-                    // did not yield any content
-                    dest.release();
-                }
+                        int read = 0;
+                        while (m_msgbb.readableBytes() >= getNeededBytes()) {
+                            if (m_needed == NOT_AVAILABLE) {
+                                m_needed = m_msgbb.readInt();
+                                IOException ioe = validateMessageLength(m_needed);
+                                if (ioe != null) {
+                                    m_inFlight.release(); m_msgbb.release();
+                                    m_exceptions.offer(new ExecutionException("failed message length check", ioe));
+                                    networkLog.error("failed message length check", ioe);
+                                    enableWriteSelection();
+                                }
+                                continue;
+                            }
+                            ByteBuffer bb = ByteBuffer.allocate(m_needed);
+                            m_msgbb.readBytes(bb);
+                            bb.flip();
+                            m_decrypted.offer(bb);
 
-                int read = 0;
-                while (m_msgbb.readableBytes() >= getNeededBytes()) {
-                    if (m_needed == NOT_AVAILABLE) {
-                        m_needed = m_msgbb.readInt();
-                        IOException ioe = validateMessageLength(m_needed);
-                        if (ioe != null) {
-                            m_inFlight.release(); m_msgbb.release();
-                            m_exceptions.offer(new ExecutionException("failed message length check", ioe));
-                            networkLog.error("failed message length check", ioe);
-                            enableWriteSelection();
+                            ++read;
+                            m_needed = NOT_AVAILABLE;
+                        }
+                        if (read > 0) {
+                            m_msgbb.discardReadComponents();
+                            signal = true;
+                        }
+                    } else { // it isDead()
+                        dest.release();
+                        releaseDecryptedBuffer();
+                    }
+                    synchronized(this) {
+                        m_q.poll();
+                        slice.markConsumed().discard();
+                        m_inFlight.release();
+                        if (m_q.peek() == null) {
+                            return;
+                        }
+                        if (batch >= m_ce.batchFrames()) {
+                            submitSelf();
+                            return;
                         }
-                        continue;
                     }
-                    ByteBuffer bb = ByteBuffer.allocate(m_needed);
-                    m_msgbb.readBytes(bb);
-                    m_decrypted.offer((ByteBuffer)bb.flip());
-
-                    ++read;
-                    m_needed = NOT_AVAILABLE;
                 }
-                if (read > 0) {
-                    m_msgbb.discardReadComponents();
+            } finally {
+                if (signal) {
                     enableWriteSelection();
                 }
-            } else { // it isDead()
-                dest.release();
-                releaseDecryptedBuffer();
-            }
-            synchronized(this) {
-                m_q.poll();
-                slice.markConsumed().discard();
-                m_inFlight.release();
-                if (m_q.peek() != null) {
-                    submitSelf();
-                }
             }
         }
 
@@ -0,0 +1,121 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltcore.utils;
+
+/**
+ * A thread safe map from primitive longs to objects, made of a fixed number of
+ * {@link LongObjectHashMap} stripes each guarded by its own lock. Handles are
+ * handed out sequentially, so consecutive handles land on different stripes
+ * and threads adding and completing work rarely contend for the same lock.
+ * Null values are not allowed.
+ */
+public class ConcurrentLongObjectHashMap<V> {
+
+    private static final int STRIPES = 16;
+
+    private final LongObjectHashMap<V>[] m_stripes;
+
+    public ConcurrentLongObjectHashMap() {
+        this(STRIPES * 16);
+    }
+
+    /**
+     * @param expectedSize the number of entries the map can hold before it grows
+     */
+    public ConcurrentLongObjectHashMap(int expectedSize) {
+        // generic arrays can't be created, the stripes only ever hold V
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        final LongObjectHashMap<V>[] stripes = new LongObjectHashMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new LongObjectHashMap<V>(expectedSize / STRIPES);
+        }
+        m_stripes = stripes;
+    }
+
+    private LongObjectHashMap<V> stripe(long key) {
+        return m_stripes[(int) (key ^ (key >>> 32)) & (STRIPES - 1)];
+    }
+
+    public V get(long key) {
+        final LongObjectHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the previous value for the key, or null
+     */
+    public V put(long key, V value) {
+        final LongObjectHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.put(key, value);
+        }
+    }
+
+    /**
+     * @return the removed value, or null if the key was not present. Only one
+     * of several threads racing to remove the same key gets the value.
+     */
+    public V remove(long key) {
+        final LongObjectHashMap<V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.remove(key);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (LongObjectHashMap<V> stripe : m_stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the keys in the map, in no particular order. Each stripe is copied
+     * atomically, but not the map as a whole.
+     */
+    public long[] keys() {
+        long[][] stripeKeys = new long[STRIPES][];
+        int count = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            synchronized (m_stripes[i]) {
+                stripeKeys[i] = m_stripes[i].keys();
+            }
+            count += stripeKeys[i].length;
+        }
+        long[] keys = new long[count];
+        int k = 0;
+        for (long[] s : stripeKeys) {
+            System.arraycopy(s, 0, keys, k, s.length);
+            k += s.length;
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,44 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltcore.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.voltcore.utils.DBBPool.BBContainer;
+
+/**
+ * A deferred serialization whose bulk already sits in direct buffers. A write stream
+ * that can queue those buffers as they are only serializes the header into its own
+ * memory. Everything else still goes through {@link #serialize(ByteBuffer)}.
+ */
+public interface DirectDeferredSerialization extends DeferredSerialization {
+    /**
+     * Hand over the direct buffers that make up the tail of the message, each holding
+     * its data between position 0 and its limit. The caller owns the containers from
+     * then on and discards them once written. Only called after {@link #getSerializedSize()}.
+     * @return the payload, or null if the whole message has to be serialized
+     */
+    BBContainer[] detachPayload();
+
+    /**
+     * Serialize the part of the message that precedes the detached payload. The buffer
+     * is sized to {@link #getSerializedSize()} minus the payload.
+     */
+    void serializeHeader(ByteBuffer buf) throws IOException;
+}
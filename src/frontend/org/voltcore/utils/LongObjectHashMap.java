@@ -0,0 +1,190 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltcore.utils;
+
+import java.util.Arrays;
+
+/**
+ * A map from primitive longs to objects, for tracking in-flight work by handle.
+ *
+ * Keys and values live in two parallel arrays and collisions are resolved by
+ * linear probing, so neither a put nor a remove allocates (short of growing
+ * the table) and a lookup touches one or two adjacent slots instead of
+ * chasing an entry and a boxed key. Removal shifts the following entries
+ * back rather than leaving tombstones, so a table with constant churn never
+ * degrades. Null values are not allowed, an empty value slot marks an empty
+ * entry.
+ *
+ * Not thread safe, see {@link ConcurrentLongObjectHashMap}.
+ */
+public class LongObjectHashMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] m_keys;
+    private Object[] m_values;
+    private int m_size = 0;
+    private int m_mask;
+    private int m_shift;
+    private int m_resizeAt;
+
+    public LongObjectHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the number of entries the map can hold before it grows
+     */
+    public LongObjectHashMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 2 / 3 < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        m_keys = new long[capacity];
+        m_values = new Object[capacity];
+        m_mask = capacity - 1;
+        m_shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        m_resizeAt = capacity * 2 / 3;
+    }
+
+    /**
+     * Fibonacci hashing, the top bits of the product are well mixed even
+     * for sequential keys such as handles.
+     */
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> m_shift);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        for (int i = slot(key); ; i = (i + 1) & m_mask) {
+            Object value = m_values[i];
+            if (value == null || m_keys[i] == key) {
+                return (V) value;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the previous value for the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        int i = slot(key);
+        for (; m_values[i] != null; i = (i + 1) & m_mask) {
+            if (m_keys[i] == key) {
+                V previous = (V) m_values[i];
+                m_values[i] = value;
+                return previous;
+            }
+        }
+        m_keys[i] = key;
+        m_values[i] = value;
+        if (++m_size > m_resizeAt) {
+            rehash(m_keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * @return the removed value, or null if the key was not present
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = slot(key);
+        for (; m_values[i] != null; i = (i + 1) & m_mask) {
+            if (m_keys[i] == key) {
+                V previous = (V) m_values[i];
+                shiftBack(i);
+                m_size--;
+                return previous;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Close the gap left at the given slot by moving back every following
+     * entry of the probe run whose home slot is at or before the gap.
+     */
+    private void shiftBack(int gap) {
+        for (int i = (gap + 1) & m_mask; m_values[i] != null; i = (i + 1) & m_mask) {
+            int home = slot(m_keys[i]);
+            if (((i - home) & m_mask) >= ((i - gap) & m_mask)) {
+                m_keys[gap] = m_keys[i];
+                m_values[gap] = m_values[i];
+                gap = i;
+            }
+        }
+        m_values[gap] = null;
+    }
+
+    private void rehash(int capacity) {
+        long[] keys = m_keys;
+        Object[] values = m_values;
+        allocate(capacity);
+        for (int j = 0; j < keys.length; j++) {
+            if (values[j] != null) {
+                int i = slot(keys[j]);
+                while (m_values[i] != null) {
+                    i = (i + 1) & m_mask;
+                }
+                m_keys[i] = keys[j];
+                m_values[i] = values[j];
+            }
+        }
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(m_values, null);
+        m_size = 0;
+    }
+
+    /**
+     * @return a copy of the keys currently in the map, in no particular order
+     */
+    public long[] keys() {
+        long[] keys = new long[m_size];
+        int k = 0;
+        for (int i = 0; i < m_values.length; i++) {
+            if (m_values[i] != null) {
+                keys[k++] = m_keys[i];
+            }
+        }
+        return keys;
+    }
+}
@@ -38,6 +38,7 @@ import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.SnapshotSchedule;
 import org.voltdb.catalog.Table;
 import org.voltdb.compiler.PlannerTool;
+import org.voltdb.compiler.TableStatistics;
 import org.voltdb.compiler.deploymentfile.DeploymentType;
 import org.voltdb.settings.ClusterSettings;
 import org.voltdb.settings.DbSettings;
@@ -89,6 +90,10 @@ public class CatalogContext {
      */
     public final PlannerTool m_ptool;
 
+    // Statistics from @AnalyzeTable used to plan ad hoc queries.
+    // Shared by all catalog versions, so that statistics stored during an update aren't lost.
+    private PlannerStatistics m_plannerStatistics = new PlannerStatistics();
+
     // PRIVATE
     private final InMemoryJarfile m_jarfile;
 
@@ -168,6 +173,7 @@ public class CatalogContext {
         this.catalog = catalog;
         cluster = catalog.getClusters().get("cluster");
         database = cluster.getDatabases().get("database");
+        m_plannerStatistics.setDatabase(database);
         procedures = database.getProcedures();
         tables = database.getTables();
         authSystem = new AuthSystem(database, cluster.getSecurityenabled());
@@ -246,6 +252,43 @@ public class CatalogContext {
         return m_dbSettings.getNodeSetting();
     }
 
+    public TableStatistics getTableStatistics() {
+        return m_plannerStatistics.m_statistics;
+    }
+
+    /**
+     * Replace the planner statistics with the ones stored in ZooKeeper at the given
+     * version. Statistics older than the ones already in use are ignored.
+     *
+     * @return true if the statistics were installed
+     */
+    public boolean setTableStatistics(int version, TableStatistics statistics) {
+        return m_plannerStatistics.set(version, statistics);
+    }
+
+    /**
+     * The statistics of the latest catalog version, trimmed to its tables.
+     */
+    private static class PlannerStatistics {
+        private volatile TableStatistics m_statistics = TableStatistics.EMPTY;
+        private int m_version = -1;
+        private Database m_database = null;
+
+        synchronized boolean set(int version, TableStatistics statistics) {
+            if (version <= m_version) {
+                return false;
+            }
+            m_version = version;
+            m_statistics = m_database == null ? statistics : statistics.retainTables(m_database);
+            return true;
+        }
+
+        synchronized void setDatabase(Database database) {
+            m_database = database;
+            m_statistics = m_statistics.retainTables(database);
+        }
+    }
+
     public CatalogContext update(
             long txnId,
             long uniqueId,
@@ -290,6 +333,8 @@ public class CatalogContext {
                     hasSchemaChange,
                     m_defaultProcs,
                     m_ptool);
+        retval.m_plannerStatistics = m_plannerStatistics;
+        m_plannerStatistics.setDatabase(retval.database);
         return retval;
     }
 
@@ -68,7 +68,9 @@ import org.voltcore.network.VoltPort;
 import org.voltcore.network.VoltProtocolHandler;
 import org.voltcore.network.WriteStream;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.DeferredSerialization;
+import org.voltcore.utils.DirectDeferredSerialization;
 import org.voltcore.utils.EstTime;
 import org.voltcore.utils.Pair;
 import org.voltcore.utils.RateLimitedLogger;
@@ -914,13 +916,15 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
 
     /**
      * Runs on the network thread to prepare client response. If a transaction needs to be
-     * restarted, it will get restarted here.
+     * restarted, it will get restarted here. Results held in direct buffers are handed to
+     * the write stream as they are, or released once copied.
      */
-    public class ClientResponseWork implements DeferredSerialization {
+    public class ClientResponseWork implements DirectDeferredSerialization {
         private final ClientInterfaceHandleManager cihm;
         private final InitiateResponseMessage response;
         private final Procedure catProc;
         private ClientResponseImpl clientResponse;
+        private int serializedSize = 0;
 
         private ClientResponseWork(InitiateResponseMessage response,
                                    ClientInterfaceHandleManager cihm,
@@ -937,10 +941,48 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         {
             buf.putInt(buf.capacity() - 4);
             clientResponse.flattenToBuffer(buf);
+            releaseDirectResults();
+        }
+
+        @Override
+        public void serializeHeader(ByteBuffer buf) throws IOException
+        {
+            buf.putInt(serializedSize - 4);
+            clientResponse.flattenHeaderToBuffer(buf);
+        }
+
+        @Override
+        public BBContainer[] detachPayload() {
+            final ByteBuffer[] buffers = clientResponse.takeDirectResults();
+            if (buffers == null) {
+                return null;
+            }
+            final BBContainer[] payload = new BBContainer[buffers.length];
+            for (int i = 0; i < buffers.length; i++) {
+                final ByteBuffer buf = buffers[i];
+                payload[i] = new BBContainer(buf) {
+                    @Override
+                    public void discard() {
+                        checkDoubleFree();
+                        ResultBufferPool.release(buf);
+                    }
+                };
+            }
+            return payload;
         }
 
         @Override
         public void cancel() {
+            releaseDirectResults();
+        }
+
+        private void releaseDirectResults() {
+            if (clientResponse != null) {
+                final ByteBuffer[] buffers = clientResponse.takeDirectResults();
+                if (buffers != null) {
+                    ResultBufferPool.release(buffers);
+                }
+            }
         }
 
         @Override
@@ -959,6 +1001,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 clientData = cihm.findHandle(response.getClientInterfaceHandle());
             }
             if (clientData == null) {
+                releaseDirectResults();
                 return DeferredSerialization.EMPTY_MESSAGE_LENGTH;
             }
 
@@ -966,6 +1009,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             if (restartTransaction(clientData.m_messageSize, clientData.m_creationTimeNanos)) {
                 // If the transaction is successfully restarted, don't send a response to the
                 // client yet.
+                releaseDirectResults();
                 return DeferredSerialization.EMPTY_MESSAGE_LENGTH;
             }
 
@@ -994,7 +1038,12 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             clientResponse.setClusterRoundtrip((int)TimeUnit.NANOSECONDS.toMillis(delta));
             clientResponse.setHash(null); // not part of wire protocol
 
-            return clientResponse.getSerializedSize() + 4;
+            if (clientData.m_cacheLookup != null) {
+                clientData.m_cacheLookup.complete(clientResponse);
+            }
+
+            serializedSize = clientResponse.getSerializedSize() + 4;
+            return serializedSize;
         }
 
         @Override
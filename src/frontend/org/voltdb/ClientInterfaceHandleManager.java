@@ -21,13 +21,12 @@ import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.network.Connection;
+import org.voltcore.utils.LongObjectHashMap;
 import org.voltdb.iv2.MpInitiator;
 
 import com.google_voltpatches.common.collect.ImmutableMap;
@@ -65,7 +64,7 @@ public class ClientInterfaceHandleManager
 
     private HandleGenerator m_shortCircuitHG = new HandleGenerator(SHORT_CIRCUIT_PART_ID);
 
-    private final Map<Long, Iv2InFlight> m_shortCircuitReads = new HashMap<Long, Iv2InFlight>();
+    private final LongObjectHashMap<Iv2InFlight> m_shortCircuitReads = new LongObjectHashMap<Iv2InFlight>();
 
     private static class HandleGenerator
     {
@@ -109,8 +108,11 @@ public class ClientInterfaceHandleManager
         final long m_creationTimeNanos;
         final String m_procName;
         final long m_initiatorHSId;
+        // set when the response should be offered to the procedure result cache
+        final ProcedureResultCache.Lookup m_cacheLookup;
         Iv2InFlight(long ciHandle, long clientHandle,
-                int messageSize, long creationTimeNanos, String procName, long initiatorHSId)
+                int messageSize, long creationTimeNanos, String procName, long initiatorHSId,
+                ProcedureResultCache.Lookup cacheLookup)
         {
             m_ciHandle = ciHandle;
             m_clientHandle = clientHandle;
@@ -118,6 +120,7 @@ public class ClientInterfaceHandleManager
             m_creationTimeNanos = creationTimeNanos;
             m_procName = procName;
             m_initiatorHSId = initiatorHSId;
+            m_cacheLookup = cacheLookup;
         }
     }
 
@@ -154,9 +157,10 @@ public class ClientInterfaceHandleManager
             @Override
             synchronized long getHandle(boolean isSinglePartition, int partitionId,
                     long clientHandle, int messageSize, long creationTimeNanos, String procName, long initiatorHSId,
-                    boolean readOnly, boolean isShortCircuitRead) {
+                    boolean readOnly, boolean isShortCircuitRead, ProcedureResultCache.Lookup cacheLookup) {
                 return super.getHandle(isSinglePartition, partitionId,
-                        clientHandle, messageSize, creationTimeNanos, procName, initiatorHSId, readOnly, isShortCircuitRead);
+                        clientHandle, messageSize, creationTimeNanos, procName, initiatorHSId, readOnly, isShortCircuitRead,
+                        cacheLookup);
             }
             @Override
             synchronized Iv2InFlight findHandle(long ciHandle) {
@@ -206,6 +210,26 @@ public class ClientInterfaceHandleManager
             long initiatorHSId,
             boolean readOnly,
             boolean isShortCircuitRead)
+    {
+        return getHandle(isSinglePartition, partitionId, clientHandle, messageSize, creationTimeNanos,
+                procName, initiatorHSId, readOnly, isShortCircuitRead, null);
+    }
+
+    /**
+     * As above, also keeping the procedure result cache lookup that the
+     * response of the transaction should complete, if any.
+     */
+    long getHandle(
+            boolean isSinglePartition,
+            int partitionId,
+            long clientHandle,
+            int messageSize,
+            long creationTimeNanos,
+            String procName,
+            long initiatorHSId,
+            boolean readOnly,
+            boolean isShortCircuitRead,
+            ProcedureResultCache.Lookup cacheLookup)
     {
         assert(!shouldCheckThreadIdAssertion() || m_expectedThreadId == Thread.currentThread().getId());
         if (!isSinglePartition) {
@@ -224,7 +248,8 @@ public class ClientInterfaceHandleManager
         long ciHandle =
                 isShortCircuitRead ? m_shortCircuitHG.getNextHandle() : partitionStuff.m_generator.getNextHandle();
         Iv2InFlight inFlight =
-                new Iv2InFlight(ciHandle, clientHandle, messageSize, creationTimeNanos, procName, initiatorHSId);
+                new Iv2InFlight(ciHandle, clientHandle, messageSize, creationTimeNanos, procName, initiatorHSId,
+                        cacheLookup);
 
         if (isShortCircuitRead) {
             /*
@@ -414,7 +439,8 @@ public class ClientInterfaceHandleManager
                 m_acg.reduceBackpressure(inflight.m_messageSize);
             }
         }
-        for (Iv2InFlight inflight : m_shortCircuitReads.values()) {
+        for (long ciHandle : m_shortCircuitReads.keys()) {
+            Iv2InFlight inflight = m_shortCircuitReads.get(ciHandle);
             m_outstandingTxns--;
             m_acg.reduceBackpressure(inflight.m_messageSize);
         }
@@ -447,14 +473,11 @@ public class ClientInterfaceHandleManager
          * MP short circuit reads can be remote, which necessitate repair
          */
         if (partitionId == MpInitiator.MP_INIT_PID) {
-            Iterator<Map.Entry<Long, Iv2InFlight>> itr =
-                    m_shortCircuitReads.entrySet().iterator();
-            while (itr.hasNext()) {
-                Map.Entry<Long, Iv2InFlight> e = itr.next();
-                Iv2InFlight entry = e.getValue();
+            for (long ciHandle : m_shortCircuitReads.keys()) {
+                Iv2InFlight entry = m_shortCircuitReads.get(ciHandle);
 
                 if (entry.m_initiatorHSId != initiatorHSId) {
-                    itr.remove();
+                    m_shortCircuitReads.remove(ciHandle);
                     retval.add(entry);
                     m_outstandingTxns--;
                     m_acg.reduceBackpressure(entry.m_messageSize);
@@ -45,6 +45,10 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
     private VoltTable[] results = new VoltTable[0];
     private Integer m_hash = null;
 
+    // Server side only: direct buffers holding the serialized result tables, in order,
+    // when the results were kept out of the heap to be written to the connection as they are.
+    private ByteBuffer[] m_directResults = null;
+
     private int clusterRoundTripTime = 0;
     private int clientRoundTripTime = 0;
     private long clientRoundTripTimeNanos = 0;
@@ -144,6 +148,22 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         return m_hash;
     }
 
+    public void setDirectResults(ByteBuffer[] buffers) {
+        assert(buffers == null || buffers.length == results.length);
+        m_directResults = buffers;
+    }
+
+    /**
+     * Take over the direct buffers backing the result tables. The tables must not be
+     * read once the buffers are released.
+     * @return the buffers, or null if the results are not held in direct buffers
+     */
+    public ByteBuffer[] takeDirectResults() {
+        ByteBuffer[] buffers = m_directResults;
+        m_directResults = null;
+        return buffers;
+    }
+
     public void initFromBuffer(ByteBuffer buf) throws IOException {
         buf.get();//Skip version byte
         clientHandle = buf.getLong();
@@ -217,6 +237,20 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
      * @return buf to allow call chaining.
      */
     public ByteBuffer flattenToBuffer(ByteBuffer buf) {
+        flattenHeaderToBuffer(buf);
+        for (VoltTable vt : results)
+        {
+            vt.flattenToBuffer(buf);
+        }
+        return buf;
+    }
+
+    /**
+     * Serialize everything that precedes the result tables, which takes
+     * {@link #getSerializedSize()} less the serialized size of the tables.
+     * @return buf to allow call chaining.
+     */
+    public ByteBuffer flattenHeaderToBuffer(ByteBuffer buf) {
         assert setProperly;
         buf.put((byte)0); //version
         buf.putLong(clientHandle);
@@ -246,10 +280,6 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
             buf.putInt(m_hash.intValue());
         }
         buf.putShort((short) results.length);
-        for (VoltTable vt : results)
-        {
-            vt.flattenToBuffer(buf);
-        }
         return buf;
     }
 
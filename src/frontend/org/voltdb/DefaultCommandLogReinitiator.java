@@ -17,17 +17,67 @@
 
 package org.voltdb;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.InstanceId;
+import org.voltdb.client.ClientResponse;
 import org.voltdb.dtxn.TransactionCreator;
+import org.voltdb.iv2.MpInitiator;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
 
 /**
  * The default command log reinitiator for community edition VoltDB.
+ *
+ * Without a log directory there is nothing to replay. Given the directory of
+ * a {@link FileCommandLog}, it replays the segments found there in log order.
+ * Single partition transactions go straight to their partition, and every
+ * partition that logged a multi-partition transaction gets a sentinel at that
+ * position so the MPI can sequence it. Transactions already contained in the
+ * restored snapshot are skipped. Replay is only supported for single node
+ * clusters, where one log holds the transaction order of every partition.
  */
 public class DefaultCommandLogReinitiator implements CommandLogReinitiator
 {
+    private static final VoltLogger LOG = new VoltLogger("LOGGING");
+
+    // replayed transactions waiting for a response
+    private static final int MAX_OUTSTANDING_TXNS = 5000;
+
     private Callback m_callback;
+    private final File m_logDir;
+    private final int m_hostCount;
+    private final List<File> m_segments;
+
+    private TransactionCreator m_initiator;
+    private final SimpleClientResponseAdapter m_adapter =
+            new SimpleClientResponseAdapter(ClientInterface.CL_REPLAY_BASE_CID, "CommandLogReplayAdapter");
+    private RestoreAgent.SnapshotInfo m_snapshotInfo;
+    private boolean m_isMpiNode = true;
+    private volatile boolean m_hasReplayedTxns = false;
+
+    public DefaultCommandLogReinitiator() {
+        this(null, 1);
+    }
+
+    /**
+     * @param logDir the command log directory, or null if there is no log
+     * @param hostCount the number of hosts in the cluster
+     */
+    public DefaultCommandLogReinitiator(String logDir, int hostCount) {
+        m_logDir = logDir == null ? null : new File(logDir);
+        m_hostCount = hostCount;
+        m_segments = m_logDir == null ? Collections.<File>emptyList()
+                                      : FileCommandLog.segmentFiles(m_logDir);
+    }
 
     @Override
     public void setCallback(Callback callback) {
@@ -39,16 +89,95 @@ public class DefaultCommandLogReinitiator implements CommandLogReinitiator
         new Thread(new Runnable() {
             @Override
             public void run() {
+                if (!m_segments.isEmpty() && m_initiator != null) {
+                    try {
+                        replayLog();
+                    } catch (Exception e) {
+                        VoltDB.crashGlobalVoltDB("Failed to replay the command log in " + m_logDir, true, e);
+                    }
+                }
                 if (m_callback != null) {
                     m_callback.onReplayCompletion();
                 }
             }
-        }).start();
+        }, "Command log replay").start();
+    }
+
+    private void replayLog() throws IOException, InterruptedException {
+        final Semaphore permits = new Semaphore(MAX_OUTSTANDING_TXNS);
+        final AtomicLong failures = new AtomicLong(0);
+        final SimpleClientResponseAdapter.Callback callback = new SimpleClientResponseAdapter.Callback() {
+            @Override
+            public void handleResponse(ClientResponse response) {
+                if (response.getStatus() != ClientResponse.SUCCESS &&
+                    response.getStatus() != ClientResponse.USER_ABORT) {
+                    if (failures.incrementAndGet() == 1) {
+                        LOG.warn("Replayed transaction failed: " + response.getStatusString());
+                    }
+                }
+                permits.release();
+            }
+        };
+
+        long replayed = 0;
+        final Set<Long> initiatedMps = new HashSet<Long>();
+        for (File segment : m_segments) {
+            for (FileCommandLog.LogEntry entry : FileCommandLog.readSegment(segment)) {
+                if (!entry.isInvocation() || entry.message.isReadOnly()) {
+                    continue;
+                }
+                final Iv2InitiateTaskMessage msg = entry.message;
+                if (isInSnapshot(msg, entry.partitionId)) {
+                    continue;
+                }
+                final StoredProcedureInvocation invocation = msg.getStoredProcedureInvocation();
+                if (msg.isSinglePartition()) {
+                    permits.acquire();
+                    invocation.setClientHandle(m_adapter.registerCallback(callback));
+                    m_initiator.createTransaction(m_adapter.connectionId(), msg.getTxnId(), msg.getUniqueId(),
+                            invocation, false, true, false, entry.partitionId,
+                            msg.getSerializedSize(), System.nanoTime());
+                    replayed++;
+                } else {
+                    // Each partition that logged it marks where the MP goes in its own sequence.
+                    m_initiator.sendSentinel(msg.getUniqueId(), entry.partitionId);
+                    if (m_isMpiNode && initiatedMps.add(msg.getTxnId())) {
+                        permits.acquire();
+                        invocation.setClientHandle(m_adapter.registerCallback(callback));
+                        m_initiator.createTransaction(m_adapter.connectionId(), msg.getTxnId(), msg.getUniqueId(),
+                                invocation, false, false, false, MpInitiator.MP_INIT_PID,
+                                msg.getSerializedSize(), System.nanoTime());
+                        replayed++;
+                    }
+                }
+            }
+        }
+
+        // Let the partitions run whatever is still waiting on a sentinel, then
+        // wait for everything to finish.
+        m_initiator.sendEOLMessage(MpInitiator.MP_INIT_PID);
+        permits.acquire(MAX_OUTSTANDING_TXNS);
+        permits.release(MAX_OUTSTANDING_TXNS);
+
+        m_hasReplayedTxns = replayed > 0;
+        LOG.info("Replayed " + replayed + " transactions from " + m_segments.size() +
+                 " command log segments" + (failures.get() > 0 ? ", " + failures.get() + " failed" : ""));
+    }
+
+    private boolean isInSnapshot(Iv2InitiateTaskMessage msg, int partitionId) {
+        if (m_snapshotInfo == null) {
+            return false;
+        }
+        if (!msg.isSinglePartition()) {
+            return msg.getTxnId() <= m_snapshotInfo.txnId;
+        }
+        Long snapshotTxnId = m_snapshotInfo.partitionToTxnId.get(partitionId);
+        return snapshotTxnId != null && msg.getTxnId() <= snapshotTxnId;
     }
 
     @Override
     public boolean hasReplayedSegments() {
-        return false;
+        return !m_segments.isEmpty();
     }
 
     @Override
@@ -58,15 +187,19 @@ public class DefaultCommandLogReinitiator implements CommandLogReinitiator
 
     @Override
     public Map<Integer, Long> getMaxLastSeenTxnByPartition() {
+        // Replay skips whatever the restored snapshot already has, so any
+        // snapshot will do and there is no overlap to check.
         return null;
     }
 
     @Override
     public void setSnapshotTxnId(RestoreAgent.SnapshotInfo info) {
+        m_snapshotInfo = info;
     }
 
     @Override
     public void returnAllSegments() {
+        // The command log deletes the segments when it is initialized.
     }
 
     @Override
@@ -77,16 +210,25 @@ public class DefaultCommandLogReinitiator implements CommandLogReinitiator
 
     @Override
     public boolean hasReplayedTxns() {
-        return false;
+        return m_hasReplayedTxns;
     }
 
     @Override
     public void generateReplayPlan(long snapshotTimeStamp, long snapshotTxnId,
             int newPartitionCount, boolean isMpiNode) {
+        m_isMpiNode = isMpiNode;
+        if (!m_segments.isEmpty() && m_hostCount > 1) {
+            VoltDB.crashGlobalVoltDB("Replaying the command log in " + m_logDir +
+                                     " is only supported on single node clusters", false, null);
+        }
     }
 
     @Override
     public void setInitiator(TransactionCreator initiator) {
+        m_initiator = initiator;
+        if (!m_segments.isEmpty()) {
+            m_initiator.bindAdapter(m_adapter);
+        }
     }
 
     @Override
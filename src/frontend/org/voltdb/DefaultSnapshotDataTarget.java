@@ -45,6 +45,7 @@ import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.messaging.FastSerializer;
+import org.voltdb.sysprocs.saverestore.ColumnarChunkCodec;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
 import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.PosixAdvise;
@@ -100,6 +101,19 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
     @SuppressWarnings("unused")
     private final String m_tableName;
 
+    /*
+     * Column types of the table if chunks are written in the columnar format
+     * of version 3 files, null for the row format
+     */
+    private final VoltType m_columnTypes[];
+
+    /*
+     * True for incremental snapshots. Chunks carry the id of the tuple block they
+     * were read from after the partition id, and a block id of -1 marks the chunks
+     * of the block manifest.
+     */
+    private final boolean m_blockChunks;
+
     private final AtomicInteger m_outstandingWriteTasks = new AtomicInteger(0);
     private final ReentrantLock m_outstandingWriteTasksLock = new ReentrantLock();
     private final Condition m_noMoreOutstandingWriteTasksCondition =
@@ -109,6 +123,17 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
     static final ListeningScheduledExecutorService m_syncService = MoreExecutors.listeningDecorator(
             Executors.newSingleThreadScheduledExecutor(CoreUtils.getThreadFactory("Snapshot sync service")));
 
+    /*
+     * Write new snapshot files in the version 3 format, with column-major chunks that
+     * compress better and can be decoded on several threads during restore.
+     * Older versions can't restore these files.
+     */
+    public static final boolean SNAPSHOT_COLUMNAR_FORMAT = Boolean.getBoolean("SNAPSHOT_COLUMNAR_FORMAT");
+    private static final int COLUMNAR_ENCODED_LEN =
+            SnapshotSiteProcessor.m_snapshotBufferLength + ColumnarChunkCodec.MAX_ENCODING_OVERHEAD;
+    private static final int COLUMNAR_COMPRESSED_LEN =
+            CompressionService.maxCompressedLength(COLUMNAR_ENCODED_LEN) + 16;
+
     public static final int SNAPSHOT_SYNC_FREQUENCY = Integer.getInteger("SNAPSHOT_SYNC_FREQUENCY", 500);
     public static final int SNAPSHOT_FADVISE_BYTES = Integer.getInteger("SNAPSHOT_FADVISE_BYTES", 1024 * 1024 * 2);
     public static final int SNAPSHOT_RATELIMIT_MEGABYTES;
@@ -163,7 +188,44 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                 schemaTable,
                 txnId,
                 timestamp,
-                new int[] { 0, 0, 0, 2 });
+                new int[] { 0, 0, 0, SNAPSHOT_COLUMNAR_FORMAT ? 3 : 2 },
+                false,
+                null);
+    }
+
+    /**
+     * Create a target for an incremental snapshot, whose chunks are tuple blocks
+     * of the table preceded by a block manifest.
+     * @param previousNonce nonce of the snapshot this one is a delta of, or null if
+     * this snapshot contains all the blocks
+     */
+    public DefaultSnapshotDataTarget(
+            final File file,
+            final int hostId,
+            final String clusterName,
+            final String databaseName,
+            final String tableName,
+            final int numPartitions,
+            final List<Integer> partitionIds,
+            final VoltTable schemaTable,
+            final long txnId,
+            final long timestamp,
+            final String previousNonce) throws IOException {
+        this(
+                file,
+                hostId,
+                clusterName,
+                databaseName,
+                tableName,
+                numPartitions,
+                false,
+                partitionIds,
+                schemaTable,
+                txnId,
+                timestamp,
+                new int[] { 0, 0, 0, SNAPSHOT_COLUMNAR_FORMAT ? 3 : 2 },
+                true,
+                previousNonce);
     }
 
     public DefaultSnapshotDataTarget(
@@ -178,7 +240,9 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             final VoltTable schemaTable,
             final long txnId,
             final long timestamp,
-            int version[]
+            int version[],
+            final boolean blockChunks,
+            final String previousNonce
             ) throws IOException {
         String hostname = CoreUtils.getHostnameOrAddress();
         m_file = file;
@@ -186,6 +250,8 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         m_fos = new FileOutputStream(file);
         m_channel = m_fos.getChannel();
         m_needsFinalClose = !isReplicated;
+        m_columnTypes = version[3] >= 3 ? ColumnarChunkCodec.getColumnTypes(schemaTable) : null;
+        m_blockChunks = blockChunks;
         final FastSerializer fs = new FastSerializer();
         fs.writeInt(0);//CRC
         fs.writeInt(0);//Header length placeholder
@@ -221,6 +287,12 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
                 stringer.keySymbolValuePair("numPartitions", numPartitions);
             }
+            if (blockChunks) {
+                stringer.keySymbolValuePair("blockIds", true);
+                if (previousNonce != null) {
+                    stringer.keySymbolValuePair("previousNonce", previousNonce);
+                }
+            }
             stringer.endObject();
             String jsonString = stringer.toString();
             JSONObject jsonObj = new JSONObject(jsonString);
@@ -434,18 +506,25 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
         Future<BBContainer> compressionTask = null;
         if (prependLength) {
-            BBContainer cont =
-                    DBBPool.allocateDirectAndPool(SnapshotSiteProcessor.m_snapshotBufferCompressedLen);
+            BBContainer cont = DBBPool.allocateDirectAndPool(m_columnTypes == null ?
+                    SnapshotSiteProcessor.m_snapshotBufferCompressedLen : COLUMNAR_COMPRESSED_LEN);
             //Skip 4-bytes so the partition ID is not compressed
             //That way if we detect a corruption we know what partition is bad
-            tupleData.position(tupleData.position() + 4);
+            //Block chunks also leave the 8-byte block id uncompressed
+            final boolean isManifest = m_blockChunks && tupleData.getLong(tupleData.position() + 4) == -1;
+            tupleData.position(tupleData.position() + (m_blockChunks ? 12 : 4));
             /*
              * Leave 12 bytes, it's going to be a 4-byte length prefix, a 4-byte partition id,
              * and a 4-byte CRC32C of just the header bytes, in addition to the compressed payload CRC
-             * that is 16 bytes, but 4 of those are done by CompressionService
+             * that is 16 bytes, but 4 of those are done by CompressionService.
+             * Block chunks have the block id between the partition id and the header CRC.
              */
-            cont.b().position(12);
-            compressionTask = CompressionService.compressAndCRC32cBufferAsync(tupleData, cont);
+            cont.b().position(chunkHeaderLength());
+            if (m_columnTypes == null || isManifest) {
+                compressionTask = CompressionService.compressAndCRC32cBufferAsync(tupleData, cont);
+            } else {
+                compressionTask = encodeAndCompressAsync(tupleData, cont);
+            }
         }
         final Future<BBContainer> compressionTaskFinal = compressionTask;
 
@@ -474,18 +553,22 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                             final ByteBuffer payloadBuffer = payloadContainer.b();
                             payloadBuffer.position(0);
 
-                            ByteBuffer lengthPrefix = ByteBuffer.allocate(12);
+                            final int headerLength = chunkHeaderLength();
+                            ByteBuffer lengthPrefix = ByteBuffer.allocate(headerLength);
                             m_bytesAllowedBeforeSync.acquire(payloadBuffer.remaining());
                             //Length prefix does not include 4 header items, just compressd payload
                             //that follows
-                            lengthPrefix.putInt(payloadBuffer.remaining() - 16);//length prefix
+                            lengthPrefix.putInt(payloadBuffer.remaining() - (headerLength + 4));//length prefix
                             lengthPrefix.putInt(tupleData.getInt(0)); // partitionId
+                            if (m_blockChunks) {
+                                lengthPrefix.putLong(tupleData.getLong(4)); // blockId
+                            }
 
                             /*
                              * Checksum the header and put it in the payload buffer
                              */
                             PureJavaCrc32C crc = new PureJavaCrc32C();
-                            crc.update(lengthPrefix.array(), 0, 8);
+                            crc.update(lengthPrefix.array(), 0, headerLength - 4);
                             lengthPrefix.putInt((int)crc.getValue());
                             lengthPrefix.flip();
                             payloadBuffer.put(lengthPrefix);
@@ -534,6 +617,32 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         return writeTask;
     }
 
+    /*
+     * Transpose the rows into columns on the compression service before compressing them
+     */
+    /*
+     * Bytes in front of the payload CRC of a chunk written to the file
+     */
+    private int chunkHeaderLength() {
+        return m_blockChunks ? 20 : 12;
+    }
+
+    private Future<BBContainer> encodeAndCompressAsync(final ByteBuffer tupleData, final BBContainer outBufferC) {
+        return CompressionService.submitCompressionTask(new Callable<BBContainer>() {
+            @Override
+            public BBContainer call() throws Exception {
+                final BBContainer encoded = DBBPool.allocateDirectAndPool(COLUMNAR_ENCODED_LEN);
+                try {
+                    ColumnarChunkCodec.encode(m_columnTypes, tupleData, encoded.b());
+                    encoded.b().flip();
+                    return CompressionService.compressAndCRC32cBuffer(encoded.b(), outBufferC);
+                } finally {
+                    encoded.discard();
+                }
+            }
+        });
+    }
+
     @Override
     public ListenableFuture<?> write(final Callable<BBContainer> tupleData, int tableId) {
         return write(tupleData, true);
@@ -0,0 +1,879 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.apache.zookeeper_voltpatches.CreateMode;
+import org.apache.zookeeper_voltpatches.KeeperException;
+import org.apache.zookeeper_voltpatches.ZooDefs.Ids;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.iv2.TransactionTask;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.messaging.VoltDbMessageFactory;
+
+import com.google_voltpatches.common.util.concurrent.Futures;
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.SettableFuture;
+
+/**
+ * A command log that writes initiate task messages to preallocated segment
+ * files in the command log directory.
+ *
+ * Schedulers hand their transactions to {@link #log}, which only queues them.
+ * A dedicated writer thread collects everything that arrives within the batch
+ * window (the fsync interval of the deployment, or up to the max number of
+ * transactions), writes the whole batch and fsyncs it once. Only then are the
+ * durability listeners told about the transactions of the batch, on the writer
+ * thread, which is the only thread that touches them. In synchronous mode the
+ * transactions are not offered for execution until that happens; in async
+ * mode they run right away and {@link #log} returns a backpressure future
+ * that is only left pending while too many bytes are waiting to be written.
+ *
+ * Segments are deleted once a truncation snapshot covers them. Whatever is
+ * left in the directory at startup is replayed by
+ * {@link DefaultCommandLogReinitiator}.
+ */
+public class FileCommandLog implements CommandLog, SnapshotCompletionInterest {
+    private static final VoltLogger LOG = new VoltLogger("LOGGING");
+
+    /**
+     * Use this command log when command logging is enabled in the deployment
+     * and there is no other implementation available.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("FILE_COMMAND_LOG");
+
+    static final int DEFAULT_SEGMENT_SIZE = Integer.getInteger("COMMAND_LOG_SEGMENT_SIZE_MB", 64) * 1024 * 1024;
+    // async logging backpressures once this many bytes are waiting for the writer
+    static final long MAX_OUTSTANDING_BYTES = Long.getLong("COMMAND_LOG_MAX_OUTSTANDING_BYTES", 32L * 1024 * 1024);
+
+    static final String SEGMENT_PREFIX = "cmdlog_";
+    static final String SEGMENT_SUFFIX = ".log";
+    static final long SEGMENT_MAGIC = 0x566f6c74434c6f67L;
+    static final int SEGMENT_VERSION = 1;
+    // magic, version, segment id
+    static final int SEGMENT_HEADER_SIZE = 8 + 4 + 8;
+    // payload length, CRC32 of the payload
+    static final int ENTRY_HEADER_SIZE = 4 + 4;
+
+    // entry types, the first byte of the payload
+    static final byte ENTRY_INVOCATION = 1;
+    static final byte ENTRY_FAULT = 2;
+    // queued work that is not written to the log
+    private static final byte INITIALIZE_DURABLE_ID = 3;
+    private static final byte ROLL_FOR_TRUNCATION = 4;
+    private static final byte SHUTDOWN = 5;
+
+    private static final ListenableFuture<Object> COMPLETED = Futures.immediateFuture(null);
+
+    private static final FilenameFilter SEGMENT_FILTER = new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+            return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+        }
+    };
+
+    private static class Entry {
+        final byte m_type;
+        final long m_enqueuedNanos = System.nanoTime();
+        int m_partitionId;
+        long m_spHandle;
+        Iv2InitiateTaskMessage m_message;
+        int[] m_involvedPartitions;
+        DurabilityListener m_listener;
+        TransactionTask m_task;
+        long m_uniqueId;
+        long m_writerHSId;
+        long[] m_survivors;
+        int m_size;
+        SettableFuture<?> m_future;
+
+        Entry(byte type) {
+            m_type = type;
+        }
+    }
+
+    private static class Segment {
+        final long m_id;
+        final File m_file;
+        final RandomAccessFile m_raf;
+        final FileChannel m_channel;
+        final long m_size;
+        long m_position = SEGMENT_HEADER_SIZE;
+
+        Segment(long id, File file, RandomAccessFile raf, long size) {
+            m_id = id;
+            m_file = file;
+            m_raf = raf;
+            m_channel = raf.getChannel();
+            m_size = size;
+        }
+
+        long remaining() {
+            return m_size - m_position;
+        }
+
+        void close() throws IOException {
+            m_channel.force(false);
+            m_raf.close();
+        }
+    }
+
+    private final boolean m_synchronous;
+    private final int m_fsyncInterval;
+    private final long m_batchWindowNanos;
+    private final int m_maxTxns;
+    private final File m_logDir;
+    private final int m_segmentSize;
+
+    private final LinkedBlockingQueue<Entry> m_queue = new LinkedBlockingQueue<Entry>();
+    private volatile boolean m_initialized = false;
+    // Writers of m_initialized hold the write lock; checking it and queuing an entry
+    // happen together under the read lock, so nothing is queued after SHUTDOWN and an
+    // entry is never dropped because initialization finished in between.
+    private final ReentrantReadWriteLock m_stateLock = new ReentrantReadWriteLock();
+    // Whether the last log() call on this site thread left the task for the caller to offer
+    private final ThreadLocal<Boolean> m_callerOffersTask = new ThreadLocal<Boolean>();
+    private Thread m_writer;
+    private long m_logSizeBytes = Long.MAX_VALUE;
+
+    // Allocates segments ahead of the writer and talks to ZooKeeper for it.
+    private final ExecutorService m_es;
+    private Future<Segment> m_nextSegment;
+    private long m_nextSegmentId = 0;
+
+    // writer thread state
+    private Segment m_segment;
+    private ByteBuffer m_buffer = ByteBuffer.allocateDirect(1024 * 1024);
+    private final CRC32 m_crc = new CRC32();
+    private final IdentityHashMap<DurabilityListener, Boolean> m_touched =
+            new IdentityHashMap<DurabilityListener, Boolean>();
+    private long m_bytesSinceTruncation = 0;
+
+    // closed segments still waiting for a truncation snapshot, by segment id
+    private final ConcurrentSkipListMap<Long, File> m_closedSegments = new ConcurrentSkipListMap<Long, File>();
+    // the last segment id covered by each truncation snapshot that was requested
+    private final ConcurrentLinkedQueue<Long> m_truncationMarks = new ConcurrentLinkedQueue<Long>();
+    private volatile boolean m_truncationRequested = false;
+
+    private final AtomicLong m_outstandingBytes = new AtomicLong(0);
+    private final AtomicLong m_outstandingTxns = new AtomicLong(0);
+
+    /**
+     * Same arguments as the command log implementation loaded in Inits.
+     * @param synchronous wait for transactions to be durable before running them
+     * @param fsyncInterval the batch window in milliseconds
+     * @param maxTxns the most transactions written in one batch
+     */
+    public FileCommandLog(boolean synchronous, int fsyncInterval, int maxTxns,
+                          String logPath, String snapshotPath) {
+        this(synchronous, fsyncInterval, TimeUnit.MILLISECONDS.toNanos(fsyncInterval), maxTxns,
+             new File(logPath), DEFAULT_SEGMENT_SIZE);
+        File snapshotDir = new File(snapshotPath);
+        if (!snapshotDir.exists() && !snapshotDir.mkdirs()) {
+            VoltDB.crashLocalVoltDB("Unable to create command log snapshot directory " + snapshotDir, false, null);
+        }
+    }
+
+    FileCommandLog(boolean synchronous, int fsyncInterval, long batchWindowNanos, int maxTxns,
+                   File logDir, int segmentSize) {
+        m_synchronous = synchronous;
+        m_fsyncInterval = fsyncInterval;
+        m_batchWindowNanos = batchWindowNanos;
+        m_maxTxns = Math.max(1, maxTxns);
+        m_logDir = logDir;
+        m_segmentSize = segmentSize;
+        if (!m_logDir.exists() && !m_logDir.mkdirs()) {
+            VoltDB.crashLocalVoltDB("Unable to create command log directory " + m_logDir, false, null);
+        }
+        m_es = CoreUtils.getSingleThreadExecutor("Command log segment allocator");
+    }
+
+    @Override
+    public void init(int logSize, long txnId, int partitionCount, String coreBinding,
+                     Map<Integer, Long> perPartitionTxnId) {
+        initialize(logSize);
+    }
+
+    @Override
+    public void initForRejoin(int logSize, long txnId, int partitionCount, boolean isRejoin,
+                              String coreBinding, Map<Integer, Long> perPartitionTxnId) {
+        initialize(logSize);
+    }
+
+    private void initialize(int logSizeMB) {
+        m_stateLock.writeLock().lock();
+        try {
+            initializeLocked(logSizeMB);
+        } finally {
+            m_stateLock.writeLock().unlock();
+        }
+    }
+
+    private void initializeLocked(int logSizeMB) {
+        if (m_initialized) {
+            return;
+        }
+        if (logSizeMB > 0) {
+            m_logSizeBytes = logSizeMB * 1024L * 1024L;
+        }
+        // Whatever was in the directory has been replayed, and the truncation
+        // snapshot taken at the end of the restore (or the rejoin) covers it.
+        for (File file : segmentFiles(m_logDir)) {
+            if (!file.delete()) {
+                LOG.warn("Unable to delete command log segment " + file);
+            }
+        }
+        SnapshotCompletionMonitor monitor = VoltDB.instance().getSnapshotCompletionMonitor();
+        if (monitor != null) {
+            monitor.addInterest(this);
+        }
+        m_nextSegment = allocateSegment(m_nextSegmentId++, m_segmentSize);
+        m_writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, "Command log writer");
+        m_writer.setDaemon(true);
+        m_writer.start();
+        m_initialized = true;
+        LOG.info("Command logging to " + m_logDir + (m_synchronous ? " synchronously" : " asynchronously") +
+                 " with a batch window of " + TimeUnit.NANOSECONDS.toMicros(m_batchWindowNanos) + " us");
+    }
+
+    @Override
+    public boolean needsInitialization() {
+        return !m_initialized;
+    }
+
+    @Override
+    public ListenableFuture<Object> log(Iv2InitiateTaskMessage message, long spHandle,
+            int[] involvedPartitions, DurabilityListener listener, TransactionTask durabilityHandle) {
+        m_stateLock.readLock().lock();
+        try {
+            final boolean logged = m_initialized;
+            if (m_synchronous) {
+                // canOfferTask() answers for this call, whatever init does in the meantime
+                m_callerOffersTask.set(!logged);
+            }
+            if (!logged) {
+                // Work done before the log is initialized is part of the restore,
+                // which ends with a truncation snapshot anyway.
+                return null;
+            }
+            return queueInvocation(message, spHandle, involvedPartitions, listener, durabilityHandle);
+        } finally {
+            m_stateLock.readLock().unlock();
+        }
+    }
+
+    private ListenableFuture<Object> queueInvocation(Iv2InitiateTaskMessage message, long spHandle,
+            int[] involvedPartitions, DurabilityListener listener, TransactionTask durabilityHandle) {
+        Entry entry = new Entry(ENTRY_INVOCATION);
+        entry.m_partitionId = listener.getPartitionId();
+        entry.m_spHandle = spHandle;
+        entry.m_message = message;
+        entry.m_involvedPartitions = involvedPartitions;
+        entry.m_listener = listener;
+        entry.m_task = durabilityHandle;
+        entry.m_size = message == null ? 0 : message.getSerializedSize();
+        m_outstandingTxns.incrementAndGet();
+        final long outstanding = m_outstandingBytes.addAndGet(entry.m_size);
+
+        if (m_synchronous) {
+            m_queue.offer(entry);
+            return null;
+        }
+        if (outstanding > MAX_OUTSTANDING_BYTES) {
+            SettableFuture<Object> future = SettableFuture.create();
+            entry.m_future = future;
+            m_queue.offer(entry);
+            return future;
+        }
+        m_queue.offer(entry);
+        return COMPLETED;
+    }
+
+    @Override
+    public SettableFuture<Boolean> logIv2Fault(long writerHSId, Set<Long> survivorHSId,
+            int partitionId, long spHandle) {
+        SettableFuture<Boolean> written = SettableFuture.create();
+        m_stateLock.readLock().lock();
+        try {
+            if (!m_initialized) {
+                written.set(false);
+                return written;
+            }
+            Entry entry = new Entry(ENTRY_FAULT);
+            entry.m_partitionId = partitionId;
+            entry.m_spHandle = spHandle;
+            entry.m_writerHSId = writerHSId;
+            entry.m_survivors = new long[survivorHSId.size()];
+            int i = 0;
+            for (long hsId : survivorHSId) {
+                entry.m_survivors[i++] = hsId;
+            }
+            entry.m_future = written;
+            m_queue.offer(entry);
+            return written;
+        } finally {
+            m_stateLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void initializeLastDurableUniqueId(DurabilityListener listener, long uniqueId) {
+        m_stateLock.readLock().lock();
+        try {
+            if (!m_initialized) {
+                listener.initializeLastDurableUniqueId(uniqueId);
+                return;
+            }
+            Entry entry = new Entry(INITIALIZE_DURABLE_ID);
+            entry.m_listener = listener;
+            entry.m_uniqueId = uniqueId;
+            m_queue.offer(entry);
+        } finally {
+            m_stateLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void shutdown() throws InterruptedException {
+        m_stateLock.writeLock().lock();
+        try {
+            if (!m_initialized) {
+                m_es.shutdown();
+                return;
+            }
+            m_initialized = false;
+            m_queue.offer(new Entry(SHUTDOWN));
+        } finally {
+            m_stateLock.writeLock().unlock();
+        }
+        m_writer.join();
+        SnapshotCompletionMonitor monitor = VoltDB.instance().getSnapshotCompletionMonitor();
+        if (monitor != null) {
+            monitor.removeInterest(this);
+        }
+        m_es.shutdown();
+        m_es.awaitTermination(60, TimeUnit.SECONDS);
+        try {
+            // The segment allocated ahead is not part of the log.
+            Segment next = m_nextSegment.get();
+            next.m_raf.close();
+            next.m_file.delete();
+        } catch (ExecutionException | IOException e) {
+            LOG.warn("Unable to remove the preallocated command log segment", e);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public boolean isSynchronous() {
+        return m_synchronous;
+    }
+
+    @Override
+    public boolean canOfferTask() {
+        // Always asked by the site thread right after its log() call
+        if (!m_synchronous) {
+            return true;
+        }
+        final Boolean callerOffersTask = m_callerOffersTask.get();
+        return callerOffersTask == null ? !m_initialized : callerOffersTask;
+    }
+
+    @Override
+    public void registerDurabilityListener(DurabilityListener durabilityListener) {
+        // Listeners come with each logged transaction, nothing to track up front.
+    }
+
+    @Override
+    public void requestTruncationSnapshot(boolean queueIfPending) {
+        m_stateLock.readLock().lock();
+        try {
+            if (!m_initialized || (m_truncationRequested && !queueIfPending)) {
+                return;
+            }
+            m_truncationRequested = true;
+            m_queue.offer(new Entry(ROLL_FOR_TRUNCATION));
+        } finally {
+            m_stateLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public CountDownLatch snapshotCompleted(SnapshotCompletionEvent event) {
+        if (event.truncationSnapshot && event.didSucceed) {
+            final Long mark = m_truncationMarks.poll();
+            if (mark != null) {
+                m_es.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        deleteSegmentsUpTo(mark);
+                    }
+                });
+            }
+            m_truncationRequested = !m_truncationMarks.isEmpty();
+        }
+        return new CountDownLatch(0);
+    }
+
+    @Override
+    public void populateCommandLogStats(Map<String, Integer> columnNameToIndex, Object[] rowValues) {
+        final int inUse = m_closedSegments.size() + (m_initialized ? 1 : 0);
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.OUTSTANDING_BYTES.name())] = m_outstandingBytes.get();
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.OUTSTANDING_TXNS.name())] = m_outstandingTxns.get();
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.IN_USE_SEGMENT_COUNT.name())] = inUse;
+        // plus the one allocated ahead of the writer
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.SEGMENT_COUNT.name())] = inUse + (m_initialized ? 1 : 0);
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.FSYNC_INTERVAL.name())] = m_fsyncInterval;
+    }
+
+    private void runWriter() {
+        final ArrayList<Entry> batch = new ArrayList<Entry>();
+        try {
+            boolean shutdown = false;
+            while (!shutdown) {
+                batch.add(m_queue.take());
+                m_queue.drainTo(batch, m_maxTxns - batch.size());
+                // Group commit: wait for more work until the window of the
+                // oldest entry closes, unless the batch is already full.
+                final long deadline = batch.get(0).m_enqueuedNanos + m_batchWindowNanos;
+                while (batch.size() < m_maxTxns && batch.get(batch.size() - 1).m_type != SHUTDOWN) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Entry next = m_queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    m_queue.drainTo(batch, m_maxTxns - batch.size());
+                }
+                shutdown = writeBatch(batch);
+                batch.clear();
+            }
+            if (m_segment != null) {
+                m_segment.close();
+                m_segment = null;
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Command log writer was interrupted");
+        } catch (Throwable t) {
+            VoltDB.crashLocalVoltDB("Unable to write to the command log in " + m_logDir, true, t);
+        }
+    }
+
+    /**
+     * Write out a batch, fsync it and notify the durability listeners.
+     * @return true if the batch ends with a shutdown request
+     */
+    @SuppressWarnings("unchecked")
+    private boolean writeBatch(List<Entry> batch) throws IOException, InterruptedException {
+        boolean shutdown = false;
+        boolean roll = false;
+        long bytes = 0;
+        long txns = 0;
+        for (Entry entry : batch) {
+            switch (entry.m_type) {
+            case ENTRY_INVOCATION:
+                if (entry.m_message != null) {
+                    append(entry);
+                }
+                entry.m_listener.addTransaction(entry.m_task);
+                m_touched.put(entry.m_listener, Boolean.TRUE);
+                bytes += entry.m_size;
+                txns++;
+                break;
+            case ENTRY_FAULT:
+                append(entry);
+                break;
+            case INITIALIZE_DURABLE_ID:
+                entry.m_listener.initializeLastDurableUniqueId(entry.m_uniqueId);
+                m_touched.put(entry.m_listener, Boolean.TRUE);
+                break;
+            case ROLL_FOR_TRUNCATION:
+                roll = true;
+                break;
+            case SHUTDOWN:
+                shutdown = true;
+                break;
+            }
+        }
+        flush();
+        if (m_segment != null) {
+            m_segment.m_channel.force(false);
+        }
+
+        for (DurabilityListener listener : m_touched.keySet()) {
+            listener.processDurabilityChecks(listener.startNewTaskList(listener.getNumberOfTasks()));
+        }
+        m_touched.clear();
+        for (Entry entry : batch) {
+            if (entry.m_future != null) {
+                if (entry.m_type == ENTRY_FAULT) {
+                    ((SettableFuture<Boolean>) entry.m_future).set(true);
+                } else {
+                    entry.m_future.set(null);
+                }
+            }
+        }
+        m_outstandingBytes.addAndGet(-bytes);
+        m_outstandingTxns.addAndGet(-txns);
+
+        if (!roll && m_bytesSinceTruncation > m_logSizeBytes && !m_truncationRequested) {
+            LOG.info("Command log reached its configured size, requesting a truncation snapshot");
+            m_truncationRequested = true;
+            roll = true;
+        }
+        if (roll && !shutdown) {
+            rollForTruncation();
+        }
+        return shutdown;
+    }
+
+    private void append(Entry entry) throws IOException, InterruptedException {
+        int payloadSize = 1 + 4 + 8;
+        if (entry.m_type == ENTRY_INVOCATION) {
+            payloadSize += 4 + (entry.m_involvedPartitions == null ? 0 : 4 * entry.m_involvedPartitions.length);
+            payloadSize += entry.m_size;
+        } else {
+            payloadSize += 8 + 4 + 8 * entry.m_survivors.length;
+        }
+        final int entrySize = ENTRY_HEADER_SIZE + payloadSize;
+
+        if (m_segment == null || m_segment.remaining() < m_buffer.position() + entrySize) {
+            flush();
+            nextSegment(entrySize);
+        }
+        if (m_buffer.remaining() < entrySize) {
+            flush();
+            if (m_buffer.capacity() < entrySize) {
+                m_buffer = ByteBuffer.allocateDirect(entrySize);
+            }
+        }
+
+        final int start = m_buffer.position();
+        m_buffer.position(start + ENTRY_HEADER_SIZE);
+        m_buffer.put(entry.m_type);
+        m_buffer.putInt(entry.m_partitionId);
+        m_buffer.putLong(entry.m_spHandle);
+        if (entry.m_type == ENTRY_INVOCATION) {
+            if (entry.m_involvedPartitions == null) {
+                m_buffer.putInt(-1);
+            } else {
+                m_buffer.putInt(entry.m_involvedPartitions.length);
+                for (int partition : entry.m_involvedPartitions) {
+                    m_buffer.putInt(partition);
+                }
+            }
+            // The message wants a buffer of exactly its size.
+            ByteBuffer messageBuffer = m_buffer.duplicate();
+            messageBuffer.limit(m_buffer.position() + entry.m_size);
+            entry.m_message.flattenToBuffer(messageBuffer.slice());
+            m_buffer.position(m_buffer.position() + entry.m_size);
+        } else {
+            m_buffer.putLong(entry.m_writerHSId);
+            m_buffer.putInt(entry.m_survivors.length);
+            for (long hsId : entry.m_survivors) {
+                m_buffer.putLong(hsId);
+            }
+        }
+
+        ByteBuffer payload = m_buffer.duplicate();
+        payload.position(start + ENTRY_HEADER_SIZE);
+        payload.limit(start + entrySize);
+        m_crc.reset();
+        m_crc.update(payload);
+        m_buffer.putInt(start, payloadSize);
+        m_buffer.putInt(start + 4, (int) m_crc.getValue());
+        m_bytesSinceTruncation += entrySize;
+    }
+
+    private void flush() throws IOException {
+        if (m_buffer.position() == 0) {
+            return;
+        }
+        m_buffer.flip();
+        while (m_buffer.hasRemaining()) {
+            m_segment.m_position += m_segment.m_channel.write(m_buffer, m_segment.m_position);
+        }
+        m_buffer.clear();
+    }
+
+    private void nextSegment(int minSize) throws IOException, InterruptedException {
+        if (m_segment != null) {
+            m_segment.close();
+            m_closedSegments.put(m_segment.m_id, m_segment.m_file);
+        }
+        Segment next;
+        try {
+            next = m_nextSegment.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to allocate a command log segment", e.getCause());
+        }
+        if (next.remaining() < minSize) {
+            // An entry larger than a segment gets a segment of its own.
+            next.m_raf.close();
+            next.m_file.delete();
+            next = createSegment(next.m_id, SEGMENT_HEADER_SIZE + minSize);
+        }
+        m_segment = next;
+        m_nextSegment = allocateSegment(m_nextSegmentId++, m_segmentSize);
+    }
+
+    private void rollForTruncation() throws IOException {
+        // Everything logged so far is in segments up to the current one, and the
+        // snapshot requested next will contain all of it.
+        long mark;
+        if (m_segment != null) {
+            m_segment.close();
+            m_closedSegments.put(m_segment.m_id, m_segment.m_file);
+            mark = m_segment.m_id;
+            m_segment = null;
+        } else {
+            mark = m_closedSegments.isEmpty() ? -1 : m_closedSegments.lastKey();
+        }
+        m_truncationMarks.offer(mark);
+        m_bytesSinceTruncation = 0;
+        m_es.execute(new Runnable() {
+            @Override
+            public void run() {
+                requestTruncationSnapshotInZK();
+            }
+        });
+    }
+
+    private void requestTruncationSnapshotInZK() {
+        try {
+            VoltDB.instance().getHostMessenger().getZK().create(VoltZK.request_truncation_snapshot_node, null,
+                    Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT_SEQUENTIAL);
+        } catch (KeeperException.NodeExistsException e) {
+            LOG.info("A truncation snapshot request is already in progress");
+        } catch (Exception e) {
+            LOG.error("Unable to request a truncation snapshot, the command log will keep growing", e);
+        }
+    }
+
+    private void deleteSegmentsUpTo(long mark) {
+        for (Map.Entry<Long, File> e : m_closedSegments.headMap(mark, true).entrySet()) {
+            if (!e.getValue().delete()) {
+                LOG.warn("Unable to delete command log segment " + e.getValue());
+            }
+            m_closedSegments.remove(e.getKey());
+        }
+    }
+
+    private Future<Segment> allocateSegment(final long id, final long size) {
+        return m_es.submit(new Callable<Segment>() {
+            @Override
+            public Segment call() throws IOException {
+                return createSegment(id, size);
+            }
+        });
+    }
+
+    /**
+     * Create a segment file filled with zeroes, so that writing to it never
+     * has to update the file size and the fsyncs stay cheap.
+     */
+    private Segment createSegment(long id, long size) throws IOException {
+        File file = new File(m_logDir, String.format("%s%016d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer zeroes = ByteBuffer.allocateDirect(1024 * 1024);
+            long position = 0;
+            while (position < size) {
+                zeroes.clear();
+                zeroes.limit((int) Math.min(zeroes.capacity(), size - position));
+                position += channel.write(zeroes, position);
+            }
+            ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+            header.putLong(SEGMENT_MAGIC);
+            header.putInt(SEGMENT_VERSION);
+            header.putLong(id);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        return new Segment(id, file, raf, size);
+    }
+
+    /**
+     * @return the segment files in the directory, oldest first
+     */
+    public static List<File> segmentFiles(File logDir) {
+        File[] files = logDir.listFiles(SEGMENT_FILTER);
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        // Segment ids are zero padded, so name order is log order.
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * An entry read back from a segment.
+     */
+    public static class LogEntry {
+        public final byte type;
+        /** The partition of the site that logged the entry */
+        public final int partitionId;
+        public final long spHandle;
+        /** Null for single partition transactions */
+        public final int[] involvedPartitions;
+        /** The transaction, for invocation entries */
+        public final Iv2InitiateTaskMessage message;
+        /** The fault log writer and the survivors it saw, for fault entries */
+        public final long writerHSId;
+        public final Set<Long> survivors;
+
+        LogEntry(byte type, int partitionId, long spHandle, int[] involvedPartitions,
+                 Iv2InitiateTaskMessage message, long writerHSId, Set<Long> survivors) {
+            this.type = type;
+            this.partitionId = partitionId;
+            this.spHandle = spHandle;
+            this.involvedPartitions = involvedPartitions;
+            this.message = message;
+            this.writerHSId = writerHSId;
+            this.survivors = survivors;
+        }
+
+        public boolean isInvocation() {
+            return type == ENTRY_INVOCATION;
+        }
+    }
+
+    /**
+     * Read all entries of a segment. Reading stops at the end of the written
+     * part of the segment, or at the first entry that was torn by a crash.
+     */
+    public static List<LogEntry> readSegment(File file) throws IOException {
+        List<LogEntry> entries = new ArrayList<LogEntry>();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            final long magic = buf.remaining() < SEGMENT_HEADER_SIZE ? 0 : buf.getLong();
+            if (magic == 0) {
+                // allocated, but the header never made it to disk
+                return entries;
+            }
+            if (magic != SEGMENT_MAGIC) {
+                throw new IOException("Not a command log segment: " + file);
+            }
+            int version = buf.getInt();
+            if (version != SEGMENT_VERSION) {
+                throw new IOException("Unsupported command log segment version " + version + ": " + file);
+            }
+            buf.getLong();
+
+            final VoltDbMessageFactory factory = new VoltDbMessageFactory();
+            final CRC32 crc = new CRC32();
+            while (buf.remaining() >= ENTRY_HEADER_SIZE) {
+                final int length = buf.getInt();
+                final int checksum = buf.getInt();
+                if (length <= 0) {
+                    // the preallocated, never written part of the segment
+                    break;
+                }
+                if (length > buf.remaining()) {
+                    LOG.warn("Command log segment " + file + " ends in a partially written entry");
+                    break;
+                }
+                ByteBuffer payload = buf.slice();
+                payload.limit(length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    LOG.warn("Command log segment " + file + " ends in a corrupt entry");
+                    break;
+                }
+                buf.position(buf.position() + length);
+
+                final byte type = payload.get();
+                final int partitionId = payload.getInt();
+                final long spHandle = payload.getLong();
+                if (type == ENTRY_INVOCATION) {
+                    int[] involved = null;
+                    int count = payload.getInt();
+                    if (count >= 0) {
+                        involved = new int[count];
+                        for (int i = 0; i < count; i++) {
+                            involved[i] = payload.getInt();
+                        }
+                    }
+                    Iv2InitiateTaskMessage message =
+                            (Iv2InitiateTaskMessage) factory.createMessageFromBuffer(payload, -1);
+                    entries.add(new LogEntry(type, partitionId, spHandle, involved, message, -1, null));
+                } else if (type == ENTRY_FAULT) {
+                    long writerHSId = payload.getLong();
+                    int count = payload.getInt();
+                    Set<Long> survivors = new HashSet<Long>();
+                    for (int i = 0; i < count; i++) {
+                        survivors.add(payload.getLong());
+                    }
+                    entries.add(new LogEntry(type, partitionId, spHandle, null, null, writerHSId, survivors));
+                } else {
+                    throw new IOException("Unknown command log entry type " + type + " in " + file);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+        return entries;
+    }
+}
@@ -22,6 +22,7 @@ import org.voltdb.importer.AbstractImporter;
 import org.voltdb.importer.ImporterServerAdapter;
 import org.voltdb.importer.ImporterStatsCollector;
 
+import java.util.List;
 import java.util.function.Function;
 
 /**
@@ -48,6 +49,12 @@ public class ImporterServerAdapterImpl implements ImporterServerAdapter {
                 .callProcedure(importer, backPressurePredicate, m_statsCollector, procCallback, proc, fieldList);
     }
 
+    @Override
+    public boolean callProcedureBatch(AbstractImporter importer, Function<Integer, Boolean> backPressurePredicate, ProcedureCallback procCallback, String proc, List<Object[]> rows) {
+        return getInternalConnectionHandler()
+                .callProcedureBatch(importer, backPressurePredicate, m_statsCollector, procCallback, proc, rows);
+    }
+
     private InternalConnectionHandler getInternalConnectionHandler() {
         return VoltDB.instance().getClientInterface().getInternalConnectionHandler();
     }
@@ -495,6 +495,13 @@ public class Inits {
                         VoltDB.crashLocalVoltDB("Unable to instantiate command log", true, e);
                     }
                 }
+                else if (FileCommandLog.ENABLED) {
+                    m_rvdb.m_commandLog = new FileCommandLog(logConfig.getSynchronous(),
+                                                             logConfig.getFsyncinterval(),
+                                                             logConfig.getMaxtxns(),
+                                                             VoltDB.instance().getCommandLogPath(),
+                                                             VoltDB.instance().getCommandLogSnapshotPath());
+                }
             }
         }
     }
@@ -17,18 +17,25 @@
 
 package org.voltdb;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
 import org.voltdb.AuthSystem.AuthUser;
+import org.voltdb.catalog.Column;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Table;
 import org.voltdb.client.BatchTimeoutOverrideType;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcedureCallback;
+import org.voltdb.iv2.MpInitiator;
+import org.voltdb.utils.CatalogUtil;
 import org.voltdb.utils.MiscUtils;
 
 import com.google_voltpatches.common.collect.ImmutableMap;
@@ -47,6 +54,7 @@ public class InternalConnectionHandler {
     private final AtomicLong m_failedCount = new AtomicLong();
     private final AtomicLong m_submitSuccessCount = new AtomicLong();
     private volatile Map<Integer, InternalClientResponseAdapter> m_adapters = ImmutableMap.of();
+    private static final InvocationDefaultProcPermissionPolicy s_defaultProcPolicy = new InvocationDefaultProcPermissionPolicy();
 
     // Synchronized in case multiple partitions are added concurrently.
     public synchronized void addAdapter(int pid, InternalClientResponseAdapter adapter)
@@ -195,4 +203,325 @@ public class InternalConnectionHandler {
         m_submitSuccessCount.incrementAndGet();
         return true;
     }
+
+    /**
+     * Execute a procedure for a group of rows with a single callback for the whole group.
+     * Rows for the default insert or upsert procedure of a persistent table are grouped by
+     * partition and loaded with one @LoadSinglepartitionTable (or @LoadMultipartitionTable)
+     * transaction per partition, as long as the importer user may call that default procedure.
+     * If a load transaction fails, its rows are retried one at a time so that only the
+     * offending rows fail. Rows for any other procedure, and rows that can't be converted
+     * to the table schema, are executed individually.
+     *
+     * The callback is invoked once after every row has completed, with the first failed
+     * response if any row failed (server unavailable takes precedence), or else with a
+     * successful response. The stats collector is told about every row.
+     *
+     * @return false if the procedure does not exist, in which case the callback is never invoked.
+     */
+    public boolean callProcedureBatch(InternalConnectionContext caller,
+                                      Function<Integer, Boolean> backPressurePredicate,
+                                      InternalConnectionStatsCollector statsCollector,
+                                      ProcedureCallback procCallback, String proc, List<Object[]> rows) {
+        final CatalogContext context = getCatalogContext();
+        Procedure catProc = InvocationDispatcher.getProcedureFromName(proc, context);
+        if (catProc == null) {
+            String fmt = "Cannot invoke procedure %s from streaming interface %s. Procedure not found.";
+            m_logger.rateLimitedLog(SUPPRESS_INTERVAL, Level.ERROR, null, fmt, proc, caller);
+            m_failedCount.incrementAndGet();
+            return false;
+        }
+
+        // One extra count held while the rows are being queued, so that the callback
+        // can't fire before the last row has been handed off.
+        final BatchCallback batchCallback = new BatchCallback(caller, statsCollector, procCallback, proc, rows.size() + 1);
+        final AuthUser user = context.authSystem.getImporterUser();
+        final Table table = mayBulkLoad(user, catProc) ? getBulkLoadTable(context, catProc) : null;
+        if (table == null) {
+            for (Object[] row : rows) {
+                callProcedureForBatch(caller, backPressurePredicate, batchCallback, proc, row);
+            }
+            batchCallback.complete(1, null);
+            return true;
+        }
+
+        final Column[] columns = CatalogUtil.getSortedCatalogItems(table.getColumns(), "index").toArray(new Column[0]);
+        final VoltTable.ColumnInfo[] columnInfo = new VoltTable.ColumnInfo[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            columnInfo[i] = new VoltTable.ColumnInfo(columns[i].getTypeName(), VoltType.get((byte) columns[i].getType()));
+        }
+        final int partitionColumn = table.getIsreplicated() ? -1 : table.getPartitioncolumn().getIndex();
+        final List<Object[]> unloadable = new ArrayList<Object[]>();
+        final Map<Integer, PartitionLoad> loads = groupByPartition(columnInfo, partitionColumn, rows, unloadable);
+        for (Object[] row : unloadable) {
+            // Let the procedure itself report why the row can't be inserted
+            callProcedureForBatch(caller, backPressurePredicate, batchCallback, proc, row);
+        }
+
+        final byte upsert = (byte) (catProc.getTypeName().toLowerCase().endsWith(".upsert") ? 1 : 0);
+        for (Map.Entry<Integer, PartitionLoad> e : loads.entrySet()) {
+            loadPartition(caller, backPressurePredicate, batchCallback, user, proc, table.getTypeName(), upsert, e.getKey(), e.getValue());
+        }
+        batchCallback.complete(1, null);
+        return true;
+    }
+
+    /**
+     * The load sysprocs are accepted from the importer user in place of the default
+     * procedure the rows were sent to, so the user must be allowed to call that procedure.
+     */
+    static boolean mayBulkLoad(AuthUser user, Procedure catProc) {
+        if (!user.isAuthEnabled()) {
+            return true;
+        }
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+        invocation.setProcName(catProc.getTypeName());
+        return s_defaultProcPolicy.shouldAccept(user, invocation, catProc) == InvocationPermissionPolicy.PolicyResult.ALLOW;
+    }
+
+    /**
+     * @return the target table if the procedure is the default insert or upsert
+     * procedure of a table that can be bulk loaded, null otherwise.
+     */
+    private static Table getBulkLoadTable(CatalogContext context, Procedure catProc) {
+        if (!catProc.getDefaultproc()) {
+            return null;
+        }
+        String name = catProc.getTypeName().toLowerCase();
+        if (!name.endsWith(".insert") && !name.endsWith(".upsert")) {
+            return null;
+        }
+        Table table = catProc.getPartitiontable();
+        if (table == null || table.getMaterializer() != null || CatalogUtil.isTableExportOnly(context.database, table)) {
+            return null;
+        }
+        return table;
+    }
+
+    /**
+     * Convert the rows to the table schema and group them by the partition they hash to,
+     * replicated tables (partitionColumn -1) use the MP initiator partition. Rows with the
+     * wrong number of columns, values that can't be converted or a null partitioning value
+     * are added to {@code unloadable} instead, in their original order.
+     */
+    static Map<Integer, PartitionLoad> groupByPartition(VoltTable.ColumnInfo[] columnInfo, int partitionColumn,
+                                                        List<Object[]> rows, List<Object[]> unloadable) {
+        final Map<Integer, PartitionLoad> loads = new HashMap<Integer, PartitionLoad>();
+        for (Object[] row : rows) {
+            PartitionLoad load = null;
+            if (row.length == columnInfo.length) {
+                try {
+                    Object[] converted = new Object[row.length];
+                    for (int i = 0; i < row.length; i++) {
+                        converted[i] = ParameterConverter.tryToMakeCompatible(columnInfo[i].type.classFromType(), row[i]);
+                    }
+                    int partition = MpInitiator.MP_INIT_PID;
+                    Object partitionValue = null;
+                    if (partitionColumn >= 0) {
+                        partitionValue = converted[partitionColumn];
+                        if (partitionValue == null || VoltType.isVoltNullValue(partitionValue)) {
+                            throw new VoltTypeException("Null partitioning value");
+                        }
+                        partition = TheHashinator.getPartitionForParameter(columnInfo[partitionColumn].type, partitionValue);
+                    }
+                    load = loads.get(partition);
+                    if (load == null) {
+                        load = new PartitionLoad(new VoltTable(columnInfo), partitionValue);
+                        loads.put(partition, load);
+                    }
+                    load.m_table.addRow(converted);
+                    load.m_rows.add(row);
+                } catch (Exception e) {
+                    load = null;
+                }
+            }
+            if (load == null) {
+                unloadable.add(row);
+            }
+        }
+        return loads;
+    }
+
+    private void loadPartition(final InternalConnectionContext caller,
+                               Function<Integer, Boolean> backPressurePredicate,
+                               final BatchCallback batchCallback,
+                               AuthUser user,
+                               final String proc,
+                               String tableName,
+                               byte upsert,
+                               int partition,
+                               final PartitionLoad load) {
+        final boolean isMP = (partition == MpInitiator.MP_INIT_PID);
+        final String loadProc = isMP ? "@LoadMultipartitionTable" : "@LoadSinglepartitionTable";
+        final Procedure catProc = InvocationDispatcher.getProcedureFromName(loadProc, getCatalogContext());
+
+        StoredProcedureInvocation task = new StoredProcedureInvocation();
+        task.setProcName(loadProc);
+        if (isMP) {
+            task.setParams(tableName, upsert, load.m_table);
+        } else {
+            task.setParams(VoltType.valueToBytes(load.m_partitionValue), tableName, upsert, load.m_table);
+        }
+        try {
+            task = MiscUtils.roundTripForCL(task);
+        } catch (Exception e) {
+            String fmt = "Cannot load rows for procedure %s from streaming interface %s. failed to create task.";
+            m_logger.rateLimitedLog(SUPPRESS_INTERVAL, Level.ERROR, e, fmt, proc, caller);
+            retryRows(caller, batchCallback, proc, load.m_rows);
+            return;
+        }
+
+        final InternalClientResponseAdapter adapter = m_adapters.get(partition);
+        InternalAdapterTaskAttributes kattrs = new InternalAdapterTaskAttributes(caller, adapter.connectionId());
+        ProcedureCallback loadCallback = loadCallback(caller, batchCallback, proc, load.m_rows);
+        if (!adapter.createTransaction(kattrs, loadProc, catProc, loadCallback, null, task, user, partition, false, backPressurePredicate)) {
+            m_failedCount.incrementAndGet();
+            batchCallback.complete(load.m_rows.size(), new ClientResponseImpl(ClientResponse.GRACEFUL_FAILURE,
+                    new VoltTable[0], "Failed to queue " + loadProc + " for procedure " + proc));
+            return;
+        }
+        m_submitSuccessCount.incrementAndGet();
+    }
+
+    /**
+     * Completes the rows of a load transaction, or retries them one at a time
+     * if the load was rejected.
+     */
+    ProcedureCallback loadCallback(final InternalConnectionContext caller, final BatchCallback batchCallback,
+                                   final String proc, final List<Object[]> rows) {
+        return new ProcedureCallback() {
+            @Override
+            public void clientCallback(ClientResponse response) throws Exception {
+                switch (response.getStatus()) {
+                case ClientResponse.RESPONSE_UNKNOWN:
+                    // the adapter resubmits the transaction
+                    batchCallback.retried(rows.size());
+                    return;
+                case ClientResponse.SUCCESS:
+                case ClientResponse.SERVER_UNAVAILABLE:
+                    batchCallback.complete(rows.size(), response);
+                    return;
+                default:
+                    // some row was rejected, find out which
+                    retryRows(caller, batchCallback, proc, rows);
+                }
+            }
+        };
+    }
+
+    // Retries run on the response path, so they never wait on back pressure
+    void retryRows(InternalConnectionContext caller, BatchCallback batchCallback, String proc, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            callProcedureForBatch(caller, null, batchCallback, proc, row);
+        }
+    }
+
+    void callProcedureForBatch(InternalConnectionContext caller,
+                               Function<Integer, Boolean> backPressurePredicate,
+                               final BatchCallback batchCallback, String proc, Object[] row) {
+        ProcedureCallback rowCallback = new ProcedureCallback() {
+            @Override
+            public void clientCallback(ClientResponse response) throws Exception {
+                if (response.getStatus() == ClientResponse.RESPONSE_UNKNOWN) {
+                    batchCallback.retried(1);
+                } else {
+                    batchCallback.complete(1, response);
+                }
+            }
+        };
+        if (!callProcedure(caller, backPressurePredicate, null, rowCallback, proc, row)) {
+            batchCallback.complete(1, new ClientResponseImpl(ClientResponse.GRACEFUL_FAILURE,
+                    new VoltTable[0], "Failed to queue procedure " + proc));
+        }
+    }
+
+    static class PartitionLoad {
+        final VoltTable m_table;
+        final Object m_partitionValue;
+        final List<Object[]> m_rows = new ArrayList<Object[]>();
+
+        PartitionLoad(VoltTable table, Object partitionValue) {
+            m_table = table;
+            m_partitionValue = partitionValue;
+        }
+    }
+
+    /**
+     * Counts down the rows of a batch, reporting each row to the stats collector as it
+     * completes, and invokes the caller's callback once all of them are done.
+     */
+    static class BatchCallback {
+        private final InternalConnectionContext m_caller;
+        private final InternalConnectionStatsCollector m_statsCollector;
+        private final ProcedureCallback m_cb;
+        private final String m_procName;
+        private final AtomicInteger m_remaining;
+        private ClientResponse m_response = null;
+
+        BatchCallback(InternalConnectionContext caller, InternalConnectionStatsCollector statsCollector,
+                ProcedureCallback cb, String procName, int count) {
+            m_caller = caller;
+            m_statsCollector = statsCollector;
+            m_cb = cb;
+            m_procName = procName;
+            m_remaining = new AtomicInteger(count);
+        }
+
+        // any failure over success, server unavailable over any other failure
+        private static boolean hasPrecedence(byte status, byte current) {
+            if (current == ClientResponse.SUCCESS) {
+                return status != ClientResponse.SUCCESS;
+            }
+            return status == ClientResponse.SERVER_UNAVAILABLE && current != ClientResponse.SERVER_UNAVAILABLE;
+        }
+
+        private void report(int rows, ClientResponse response) {
+            if (m_statsCollector != null) {
+                for (int i = 0; i < rows; i++) {
+                    m_statsCollector.reportCompletion(m_caller.getName(), m_procName, response);
+                }
+            }
+        }
+
+        /**
+         * The rows were resubmitted after their transaction's outcome was lost,
+         * they are still outstanding.
+         */
+        void retried(int rows) {
+            report(rows, new ClientResponseImpl(ClientResponse.RESPONSE_UNKNOWN, new VoltTable[0], null));
+        }
+
+        /**
+         * Rows completed with the given response, a null response releases a count that
+         * doesn't stand for a row.
+         */
+        void complete(int rows, ClientResponse response) {
+            if (response != null) {
+                synchronized (this) {
+                    if (m_response == null || hasPrecedence(response.getStatus(), m_response.getStatus())) {
+                        m_response = response;
+                    }
+                }
+                report(rows, response);
+            }
+            if (m_remaining.addAndGet(-rows) != 0) {
+                return;
+            }
+            ClientResponse result;
+            synchronized (this) {
+                result = m_response;
+            }
+            if (result == null) {
+                // an empty batch
+                result = new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[0], null);
+            }
+            if (m_cb != null) {
+                try {
+                    m_cb.clientCallback(result);
+                } catch (Exception e) {
+                    m_logger.error("Failed to process batch response for procedure " + m_procName, e);
+                }
+            }
+        }
+    }
 }
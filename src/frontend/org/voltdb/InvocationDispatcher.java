@@ -73,6 +73,7 @@ import org.voltdb.common.Permission;
 import org.voltdb.compiler.AdHocPlannedStatement;
 import org.voltdb.compiler.AdHocPlannedStmtBatch;
 import org.voltdb.compiler.AdHocPlannerWork;
+import org.voltdb.compiler.AsyncCompilerAgent;
 import org.voltdb.compiler.AsyncCompilerResult;
 import org.voltdb.compiler.AsyncCompilerWork.AsyncCompilerWorkCompletionHandler;
 import org.voltdb.compiler.CatalogChangeResult;
@@ -144,6 +145,9 @@ public final class InvocationDispatcher {
 
     private final NTProcedureService m_NTProcedureService;
 
+    // responses of the procedures named in PROCEDURE_RESULT_CACHE, null when nothing is cached
+    private final ProcedureResultCache m_resultCache;
+
     private final boolean m_isConfiguredForNonVoltDBBackend;
 
     InternalConnectionHandler m_internalConnectionHandler;
@@ -259,6 +263,13 @@ public final class InvocationDispatcher {
         m_NTProcedureService = new NTProcedureService(m_internalConnectionHandler, m_mailbox);
         // this kicks off the initial NT procedures being loaded
         notifyNTProcedureServiceOfCatalogUpdate();
+
+        m_resultCache = ProcedureResultCache.ENABLED ? new ProcedureResultCache() : null;
+        final StatsAgent statsAgent = VoltDB.instance().getStatsAgent();
+        // In mock test environments there may be no stats agent.
+        if (m_resultCache != null && statsAgent != null) {
+            statsAgent.registerStatsSource(StatsSelector.RESULTCACHE, 0, m_resultCache.getStatsSource());
+        }
     }
 
     /**
@@ -411,8 +422,7 @@ public final class InvocationDispatcher {
                 return new ClientResponseImpl(ClientResponseImpl.SUCCESS, new VoltTable[0], "", task.clientHandle);
             }
             else if ("@AdHoc".equals(procName)) {
-                dispatchAdHoc(task, handler, ccxn, ExplainMode.NONE, user);
-                return null;
+                return dispatchAdHoc(task, handler, ccxn, ExplainMode.NONE, user);
             }
             else if ("@GetPartitionKeys".equals(procName)) {
                 return dispatchGetPartitionKeys(task);
@@ -436,8 +446,7 @@ public final class InvocationDispatcher {
                 return dispatchStopNode(task);
             }
             else if ("@Explain".equals(procName)) {
-                dispatchAdHoc(task, handler, ccxn, ExplainMode.EXPLAIN_ADHOC, user);
-                return null;
+                return dispatchAdHoc(task, handler, ccxn, ExplainMode.EXPLAIN_ADHOC, user);
             }
             else if ("@ExplainProc".equals(procName)) {
                 return dispatchExplainProcedure(task, handler, ccxn, user);
@@ -453,8 +462,7 @@ public final class InvocationDispatcher {
                 return dispatchLoadSinglepartitionTable(catProc, task, handler, ccxn);
             }
             else if ("@SwapTables".equals(procName)) {
-                dispatchSwapTables(task, handler, ccxn, user);
-                return null;
+                return dispatchSwapTables(task, handler, ccxn, user);
             }
             else if ("@ExecuteTask".equals(procName)) {
                 // ExecuteTask is an internal procedure, not for public use.
@@ -539,14 +547,28 @@ public final class InvocationDispatcher {
             // unable to hash to a site, return an error
             return getMispartitionedErrorResponse(task, catProc, e);
         }
+
+        // answer repeated reads of unchanged replicated tables without running a transaction
+        ProcedureResultCache.Lookup cacheLookup = null;
+        if (m_resultCache != null && catProc.getReadonly() && catProc.getSinglepartition()) {
+            cacheLookup = m_resultCache.lookup(catalogContext.database, catProc, task);
+            if (cacheLookup != null && cacheLookup.getCachedResponse() != null) {
+                return cacheLookup.getCachedResponse();
+            }
+        }
+
         boolean success = createTransaction(handler.connectionId(),
+                        Iv2InitiateTaskMessage.UNUSED_MP_TXNID,
+                        0, //unused timestammp
                         task,
                         catProc.getReadonly(),
                         catProc.getSinglepartition(),
                         catProc.getEverysite(),
                         partition,
                         task.getSerializedSize(),
-                        nowNanos);
+                        nowNanos,
+                        false,  // is for replay.
+                        cacheLookup);
         if (!success) {
             // when VoltDB.crash... is called, we close off the client interface
             // and it might not be possible to create new transactions.
@@ -840,8 +862,7 @@ public final class InvocationDispatcher {
                 proc = m_catalogContext.get().m_defaultProcs.checkForDefaultProcedure(procName);
                 if (proc != null) {
                     String sql = m_catalogContext.get().m_defaultProcs.sqlForDefaultProc(proc);
-                    dispatchAdHocCommon(task, handler, ccxn, ExplainMode.EXPLAIN_DEFAULT_PROC, sql, new Object[0], null, user);
-                    return null;
+                    return dispatchAdHocCommon(task, handler, ccxn, ExplainMode.EXPLAIN_DEFAULT_PROC, sql, new Object[0], null, user);
                 }
 
                 return unexpectedFailureResponse("Procedure "+procName+" not in catalog", task.clientHandle);
@@ -933,7 +954,7 @@ public final class InvocationDispatcher {
         return null;
     }
 
-    private final void dispatchAdHoc(StoredProcedureInvocation task, InvocationClientHandler handler,
+    private final ClientResponseImpl dispatchAdHoc(StoredProcedureInvocation task, InvocationClientHandler handler,
             Connection ccxn, ExplainMode explainMode, AuthSystem.AuthUser user) {
         ParameterSet params = task.getParams();
         Object[] paramArray = params.toArray();
@@ -942,10 +963,10 @@ public final class InvocationDispatcher {
         if (params.size() > 1) {
             userParams = Arrays.copyOfRange(paramArray, 1, paramArray.length);
         }
-        dispatchAdHocCommon(task, handler, ccxn, explainMode, sql, userParams, null, user);
+        return dispatchAdHocCommon(task, handler, ccxn, explainMode, sql, userParams, null, user);
     }
 
-    private void dispatchSwapTables(StoredProcedureInvocation task,
+    private ClientResponseImpl dispatchSwapTables(StoredProcedureInvocation task,
             InvocationClientHandler handler,
             Connection ccxn, AuthSystem.AuthUser user) {
         ParameterSet params = task.getParams();
@@ -954,7 +975,7 @@ public final class InvocationDispatcher {
         String otherTable = (String) paramArray[1];
         String sql = "@SwapTables " + theTable + " " + otherTable;
         Object[] userParams = null;
-        dispatchAdHocCommon(task, handler, ccxn, ExplainMode.NONE, sql,
+        return dispatchAdHocCommon(task, handler, ccxn, ExplainMode.NONE, sql,
                 userParams, null, user);
     }
 
@@ -1016,8 +1037,7 @@ public final class InvocationDispatcher {
             userParams = Arrays.copyOfRange(paramArray, 2, paramArray.length);
         }
         ExplainMode explainMode = isExplain ? ExplainMode.EXPLAIN_ADHOC : ExplainMode.NONE;
-        dispatchAdHocCommon(task, handler, ccxn, explainMode, sql, userParams, userPartitionKey, user);
-        return null;
+        return dispatchAdHocCommon(task, handler, ccxn, explainMode, sql, userParams, userPartitionKey, user);
     }
 
     /**
@@ -1476,9 +1496,15 @@ public final class InvocationDispatcher {
         }
     };
 
-    private final void dispatchAdHocCommon(StoredProcedureInvocation task,
+    private final ClientResponseImpl dispatchAdHocCommon(StoredProcedureInvocation task,
             InvocationClientHandler handler, Connection ccxn, ExplainMode explainMode,
             String sql, Object[] userParams, Object[] userPartitionKey, AuthSystem.AuthUser user) {
+        // Push back right away rather than queue work the planners can't take
+        final AsyncCompilerAgent compilerAgent = VoltDB.instance().getAsyncCompilerAgent();
+        if (compilerAgent != null && compilerAgent.isPlannerQueueFull()) {
+            return gracefulFailureResponse(AsyncCompilerAgent.PLANNER_QUEUE_FULL_MSG, task.clientHandle);
+        }
+
         final VoltTrace.TraceEventBatch traceLog = VoltTrace.log(VoltTrace.Category.CI);
         if (traceLog != null) {
             traceLog.add(() -> VoltTrace.beginAsync("planadhoc", task.getClientHandle(),
@@ -1503,6 +1529,7 @@ public final class InvocationDispatcher {
         LocalObjectMessage work = new LocalObjectMessage( ahpw );
 
         m_mailbox.send(m_plannerSiteId, work);
+        return null;
     }
 
     /*
@@ -1903,6 +1930,24 @@ public final class InvocationDispatcher {
             final int messageSize,
             long nowNanos,
             final boolean isForReplay)
+    {
+        return createTransaction(connectionId, txnId, uniqueId, invocation, isReadOnly, isSinglePartition,
+                isEveryPartition, partition, messageSize, nowNanos, isForReplay, null);
+    }
+
+    private boolean createTransaction(
+            final long connectionId,
+            final long txnId,
+            final long uniqueId,
+            final StoredProcedureInvocation invocation,
+            final boolean isReadOnly,
+            final boolean isSinglePartition,
+            final boolean isEveryPartition,
+            final int partition,
+            final int messageSize,
+            long nowNanos,
+            final boolean isForReplay,
+            final ProcedureResultCache.Lookup cacheLookup)
     {
         assert(!isSinglePartition || (partition >= 0));
         final ClientInterfaceHandleManager cihm = m_cihm.get(connectionId);
@@ -1945,7 +1990,8 @@ public final class InvocationDispatcher {
         }
 
         long handle = cihm.getHandle(isSinglePartition, partition, invocation.getClientHandle(),
-                messageSize, nowNanos, invocation.getProcName(), initiatorHSId, isReadOnly, isShortCircuitRead);
+                messageSize, nowNanos, invocation.getProcName(), initiatorHSId, isReadOnly, isShortCircuitRead,
+                cacheLookup);
 
         Iv2InitiateTaskMessage workRequest =
             new Iv2InitiateTaskMessage(m_siteId,
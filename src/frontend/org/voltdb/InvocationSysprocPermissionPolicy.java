@@ -49,6 +49,9 @@ public class InvocationSysprocPermissionPolicy extends InvocationPermissionPolic
         //Since AdHoc perms are diff we only check sysprocs other than AdHoc
         if (proc.getSystemproc() && !invocation.getProcName().startsWith("@AdHoc")) {
             if (!user.hasPermission(Permission.ADMIN) && !proc.getReadonly()) {
+                if (isImporterBulkLoad(user, invocation)) {
+                    return PolicyResult.ALLOW;
+                }
                 return PolicyResult.DENY;
             }
             return PolicyResult.ALLOW;
@@ -56,6 +59,19 @@ public class InvocationSysprocPermissionPolicy extends InvocationPermissionPolic
         return PolicyResult.NOT_APPLICABLE;
     }
 
+    /**
+     * The importer loads rows sent to a table's default insert or upsert procedure in bulk.
+     * InternalConnectionHandler only does that when the importer user may call the default
+     * procedure, which takes the default procedure permission rather than admin.
+     */
+    private static boolean isImporterBulkLoad(AuthUser user, StoredProcedureInvocation invocation) {
+        if (!(user instanceof AuthSystem.InternalImporterUser) || !user.hasPermission(Permission.DEFAULTPROC)) {
+            return false;
+        }
+        String procName = invocation.getProcName();
+        return "@LoadSinglepartitionTable".equals(procName) || "@LoadMultipartitionTable".equals(procName);
+    }
+
     @Override
     public ClientResponseImpl getErrorResponse(AuthUser user, StoredProcedureInvocation invocation, Procedure procedure) {
         authLog.l7dlog(Level.INFO,
@@ -0,0 +1,98 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.voltcore.utils.Pair;
+import org.voltdb.VoltTable.ColumnInfo;
+
+/**
+ * How messages to other hosts are coalesced into frames, one row per connection to a foreign host.
+ * Wait times are in nanoseconds, from sending a message to serializing it into the network.
+ */
+public class MessageBatchStats extends StatsSource {
+    private Map<Long, Pair<String, long[]>> m_batchStats =
+        new HashMap<Long, Pair<String, long[]>>();
+
+    public MessageBatchStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("CONNECTION_ID", VoltType.BIGINT));
+        columns.add(new ColumnInfo("REMOTE_HOST_ID", VoltType.INTEGER));
+        columns.add(new ColumnInfo("REMOTE_HOSTNAME", VoltType.STRING));
+        columns.add(new ColumnInfo("FRAMES_WRITTEN", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MESSAGES_WRITTEN", VoltType.BIGINT));
+        columns.add(new ColumnInfo("AVG_BATCH_SIZE", VoltType.FLOAT));
+        columns.add(new ColumnInfo("MAX_BATCH_SIZE", VoltType.BIGINT));
+        columns.add(new ColumnInfo("AVG_WAIT_TIME", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX_WAIT_TIME", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        final Pair<String, long[]> info = m_batchStats.get(rowKey);
+        final long[] counters = info.getSecond();
+        final long frames = counters[1];
+        final long messages = counters[2];
+
+        rowValues[columnNameToIndex.get("CONNECTION_ID")] = rowKey;
+        rowValues[columnNameToIndex.get("REMOTE_HOST_ID")] = (int) counters[0];
+        rowValues[columnNameToIndex.get("REMOTE_HOSTNAME")] = info.getFirst();
+        rowValues[columnNameToIndex.get("FRAMES_WRITTEN")] = frames;
+        rowValues[columnNameToIndex.get("MESSAGES_WRITTEN")] = messages;
+        rowValues[columnNameToIndex.get("AVG_BATCH_SIZE")] = frames == 0 ? 0.0 : (double) messages / frames;
+        rowValues[columnNameToIndex.get("MAX_BATCH_SIZE")] = counters[3];
+        rowValues[columnNameToIndex.get("AVG_WAIT_TIME")] = messages == 0 ? 0L : counters[4] / messages;
+        rowValues[columnNameToIndex.get("MAX_WAIT_TIME")] = counters[5];
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        try {
+            m_batchStats = VoltDB.instance().getHostMessenger().getMessageBatchStats(interval);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        final Iterator<Long> i = m_batchStats.keySet().iterator();
+        return new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                return i.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return i.next();
+            }
+
+            @Override
+            public void remove() {
+                i.remove();
+            }
+        };
+    }
+}
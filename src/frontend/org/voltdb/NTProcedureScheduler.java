@@ -0,0 +1,262 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram_voltpatches.AbstractHistogram;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.dtxn.LatencyStats;
+
+/**
+ * Admission control for NT procedure invocations coming from clients.
+ *
+ * Invocations are grouped by a key, the procedure name or the user name.
+ * Each key may have at most {@code maxRunning} invocations running at a time,
+ * counted from the start of run() until the response is sent, so this includes
+ * the time an invocation spends waiting on asynchronous sub-calls. Further
+ * invocations wait in a bounded FIFO queue of their key and start as slots of
+ * that key free up, so a burst of one slow procedure only holds back its own
+ * calls. Invocations that find their queue, or all queues together, full are
+ * rejected so the caller can report it right away.
+ *
+ * Invocations started by other NT procedures are not scheduled here, holding
+ * them back could deadlock their parent.
+ */
+class NTProcedureScheduler {
+
+    private final Executor m_executor;
+    private final int m_maxRunning;
+    private final int m_maxQueuedPerKey;
+    private final int m_maxQueued;
+
+    private final Map<String, KeyState> m_keys = new HashMap<>();
+    // running invocations by procedure runner id
+    private final Map<Long, KeyState> m_running = new HashMap<>();
+    // waiting invocations across all keys
+    private int m_queued = 0;
+
+    private final SchedulerStats m_stats = new SchedulerStats();
+
+    private static class Invocation {
+        final long m_id;
+        final Runnable m_work;
+        // answers the caller if the executor turns the work away after it waited
+        final Runnable m_onRejected;
+        final long m_submitTime = System.nanoTime();
+
+        Invocation(long id, Runnable work, Runnable onRejected) {
+            m_id = id;
+            m_work = work;
+            m_onRejected = onRejected;
+        }
+    }
+
+    private static class KeyState {
+        final String m_key;
+        final ArrayDeque<Invocation> m_queue = new ArrayDeque<>();
+        int m_running = 0;
+        long m_admitted = 0;
+        long m_rejected = 0;
+        // time from submission to the start of run(), in microseconds
+        final AbstractHistogram m_waitTimes = LatencyStats.constructHistogram(false);
+
+        KeyState(String key) {
+            m_key = key;
+        }
+    }
+
+    NTProcedureScheduler(Executor executor, int maxRunning, int maxQueuedPerKey, int maxQueued) {
+        if (maxRunning < 1) {
+            throw new IllegalArgumentException("Must allow > 0 running invocations per key");
+        }
+        m_executor = executor;
+        m_maxRunning = maxRunning;
+        m_maxQueuedPerKey = maxQueuedPerKey;
+        m_maxQueued = maxQueued;
+    }
+
+    StatsSource getStatsSource() {
+        return m_stats;
+    }
+
+    /**
+     * Run the work on the executor now if its key has a free slot, or queue it.
+     * If the executor rejects the work right away the RejectedExecutionException
+     * is thrown to the caller, if it rejects the work once it is taken from the
+     * queue onRejected is run instead.
+     * @return false if the queues are full and the work was rejected
+     */
+    synchronized boolean submit(String key, long id, Runnable work, Runnable onRejected) {
+        KeyState state = m_keys.get(key);
+        if (state == null) {
+            state = new KeyState(key);
+            m_keys.put(key, state);
+        }
+
+        Invocation invocation = new Invocation(id, work, onRejected);
+        if (state.m_running < m_maxRunning) {
+            start(state, invocation);
+            return true;
+        }
+        if (state.m_queue.size() >= m_maxQueuedPerKey || m_queued >= m_maxQueued) {
+            state.m_rejected++;
+            return false;
+        }
+        state.m_queue.add(invocation);
+        m_queued++;
+        return true;
+    }
+
+    /**
+     * Free the slot of a finished invocation and start the next one waiting
+     * on the same key. Ids that were not scheduled here are ignored.
+     */
+    void finished(long id) {
+        List<Invocation> rejected = null;
+        synchronized (this) {
+            KeyState state = m_running.remove(id);
+            if (state == null) {
+                return;
+            }
+            state.m_running--;
+            // an invocation the executor turns away leaves the slot free for the one behind it
+            Invocation next;
+            while (state.m_running < m_maxRunning && (next = state.m_queue.poll()) != null) {
+                m_queued--;
+                try {
+                    start(state, next);
+                }
+                catch (RejectedExecutionException e) {
+                    state.m_rejected++;
+                    if (rejected == null) {
+                        rejected = new ArrayList<>();
+                    }
+                    rejected.add(next);
+                }
+            }
+        }
+        // answer the callers outside the lock, they deliver to the mailbox
+        if (rejected != null) {
+            for (Invocation invocation : rejected) {
+                invocation.m_onRejected.run();
+            }
+        }
+    }
+
+    private void start(final KeyState state, final Invocation invocation) {
+        state.m_running++;
+        state.m_admitted++;
+        m_running.put(invocation.m_id, state);
+        try {
+            m_executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    recordWait(state, System.nanoTime() - invocation.m_submitTime);
+                    invocation.m_work.run();
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            state.m_running--;
+            state.m_admitted--;
+            m_running.remove(invocation.m_id);
+            throw e;
+        }
+    }
+
+    private synchronized void recordWait(KeyState state, long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        state.m_waitTimes.recordValue(Math.min(micros, state.m_waitTimes.getHighestTrackableValue()));
+    }
+
+    /**
+     * One row per procedure (or user) with its running and waiting
+     * invocations, rejections and queue wait time percentiles in microseconds.
+     */
+    class SchedulerStats extends StatsSource {
+
+        SchedulerStats() {
+            super(false);
+        }
+
+        @Override
+        protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+            super.populateColumnSchema(columns);
+            columns.add(new ColumnInfo("NAME", VoltType.STRING));
+            columns.add(new ColumnInfo("RUNNING", VoltType.INTEGER));
+            columns.add(new ColumnInfo("MAX_RUNNING", VoltType.INTEGER));
+            columns.add(new ColumnInfo("QUEUED", VoltType.INTEGER));
+            columns.add(new ColumnInfo("ADMITTED", VoltType.BIGINT));
+            columns.add(new ColumnInfo("REJECTED", VoltType.BIGINT));
+            columns.add(new ColumnInfo("WAIT_P50", VoltType.BIGINT));
+            columns.add(new ColumnInfo("WAIT_P99", VoltType.BIGINT));
+            columns.add(new ColumnInfo("WAIT_MAX", VoltType.BIGINT));
+        }
+
+        @Override
+        protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+            super.updateStatsRow(rowKey, rowValues);
+            synchronized (NTProcedureScheduler.this) {
+                KeyState state = m_keys.get(rowKey);
+                rowValues[columnNameToIndex.get("NAME")] = state.m_key;
+                rowValues[columnNameToIndex.get("RUNNING")] = state.m_running;
+                rowValues[columnNameToIndex.get("MAX_RUNNING")] = m_maxRunning;
+                rowValues[columnNameToIndex.get("QUEUED")] = state.m_queue.size();
+                rowValues[columnNameToIndex.get("ADMITTED")] = state.m_admitted;
+                rowValues[columnNameToIndex.get("REJECTED")] = state.m_rejected;
+                rowValues[columnNameToIndex.get("WAIT_P50")] = state.m_waitTimes.getValueAtPercentile(50.0);
+                rowValues[columnNameToIndex.get("WAIT_P99")] = state.m_waitTimes.getValueAtPercentile(99.0);
+                rowValues[columnNameToIndex.get("WAIT_MAX")] = state.m_waitTimes.getMaxValue();
+            }
+        }
+
+        @Override
+        protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+            final Iterator<String> i;
+            synchronized (NTProcedureScheduler.this) {
+                // keys are never removed, so a snapshot of them stays valid
+                i = new ArrayList<String>(m_keys.keySet()).iterator();
+            }
+            return new Iterator<Object>() {
+                @Override
+                public boolean hasNext() {
+                    return i.hasNext();
+                }
+
+                @Override
+                public Object next() {
+                    return i.next();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
@@ -24,10 +24,10 @@ import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -52,7 +52,7 @@ import com.google_voltpatches.common.util.concurrent.ThreadFactoryBuilder;
  * It maintains a the current set of procedures and sysprocs loaded and updates
  * this set on catalog change.
  *
- * It has a queue and two executor services to execute non-transactional work. See
+ * It has a scheduler and two executor services to execute non-transactional work. See
  * comments below for how this works. It should work ok with backpressure,
  * authentication, statistics and other transactional procedure features.
  *
@@ -107,19 +107,34 @@ public class NTProcedureService {
     final static String NTPROC_THREADPOOL_NAMEPREFIX = "NTPServiceThread-";
     final static String NTPROC_THREADPOOL_PRIORITY_SUFFIX = "Priority-";
 
+    // threads running the initial run() method of nt procs started by clients
+    static final int NTPROC_THREADS = Math.max(1, Integer.getInteger("NTPROC_THREADS", 20));
+    // invocations of one procedure (or of one user) that may be running at once
+    static final int NTPROC_MAX_RUNNING = Math.max(1, Integer.getInteger("NTPROC_MAX_RUNNING", 16));
+    // invocations of one procedure (or user) that may wait for a slot before new ones are rejected
+    static final int NTPROC_MAX_QUEUED = Math.max(0, Integer.getInteger("NTPROC_MAX_QUEUED", 1000));
+    // invocations that may wait across all procedures
+    static final int NTPROC_MAX_QUEUED_TOTAL = Math.max(0, Integer.getInteger("NTPROC_MAX_QUEUED_TOTAL", 10000));
+    // apply the limits per user instead of per procedure
+    static final boolean NTPROC_SCHEDULE_BY_USER = Boolean.getBoolean("NTPROC_SCHEDULE_BY_USER");
+
     // runs the initial run() method of nt procs
     // (doesn't run nt procs if started by other nt procs)
-    // from 1 to 20 threads in parallel, with an unbounded queue
-    private final ExecutorService m_primaryExecutorService = new ThreadPoolExecutor(
-            1,
-            20,
+    // up to NTPROC_THREADS in parallel; the scheduler below bounds what gets queued here
+    private final ThreadPoolExecutor m_primaryExecutorService = new ThreadPoolExecutor(
+            NTPROC_THREADS,
+            NTPROC_THREADS,
             60,
             TimeUnit.SECONDS,
-            new ArrayBlockingQueue<Runnable>(10000),
+            new LinkedBlockingQueue<Runnable>(),
             new ThreadFactoryBuilder()
                 .setNameFormat(NTPROC_THREADPOOL_NAMEPREFIX + "%d")
                 .build());
 
+    // per procedure concurrency limits and bounded queues in front of the primary executor
+    private final NTProcedureScheduler m_scheduler = new NTProcedureScheduler(
+            m_primaryExecutorService, NTPROC_MAX_RUNNING, NTPROC_MAX_QUEUED, NTPROC_MAX_QUEUED_TOTAL);
+
     // runs any follow-up work from nt procs' run() method,
     // including other nt procs, or other callbacks.
     // This one has no unbounded queue, but will create an unbounded number of threads
@@ -222,8 +237,15 @@ public class NTProcedureService {
         assert(ich != null);
         m_ich = ich;
         m_mailbox = mailbox;
+        m_primaryExecutorService.allowCoreThreadTimeOut(true);
 
         m_sysProcs = loadSystemProcedures();
+
+        final StatsAgent statsAgent = VoltDB.instance().getStatsAgent();
+        // In mock test environments there may be no stats agent.
+        if (statsAgent != null) {
+            statsAgent.registerStatsSource(StatsSelector.NTSCHEDULER, 0, m_scheduler.getStatsSource());
+        }
     }
 
     /**
@@ -396,41 +418,76 @@ public class NTProcedureService {
             }
         };
 
+        // the scheduler runs this if the exec service turns the invocation away
+        // after it waited in the queue, by then submit has long returned
+        Runnable rejectedRunnable = new Runnable() {
+            @Override
+            public void run() {
+                m_outstanding.remove(runner.m_id);
+                respondNotSubmitted(ciHandle, ccxn, clientHandle, procName);
+            }
+        };
+
         try {
             // pick the executor service based on priority
-            // - new (from user) txns get regular one
+            // - new (from user) txns go through the scheduler
             // - sub tasks and sub procs generated by nt procs get
             //   immediate exec service (priority)
             if (ntPriority) {
                 m_priorityExecutorService.submit(invocationRunnable);
             }
             else {
-                m_primaryExecutorService.submit(invocationRunnable);
+                String key = (NTPROC_SCHEDULE_BY_USER && user != null) ? user.m_name : procName;
+                if (!m_scheduler.submit(key, runner.m_id, invocationRunnable, rejectedRunnable)) {
+                    m_outstanding.remove(runner.m_id);
+
+                    // Too many calls already waiting, turn this one away now rather
+                    // than let it queue up and add to everyone's latency.
+                    // must be done as IRM to CI mailbox for backpressure accounting
+                    ClientResponseImpl response = new ClientResponseImpl(ClientResponseImpl.SERVER_UNAVAILABLE,
+                                                                         new VoltTable[0],
+                                                                         "Too many pending invocations of NT procedure " + procName +
+                                                                         ", the request was rejected. It is safe to retry it later.",
+                                                                         clientHandle);
+                    InitiateResponseMessage irm = InitiateResponseMessage.messageForNTProcResponse(ciHandle,
+                                                                                                   ccxn.connectionId(),
+                                                                                                   response);
+                    m_mailbox.deliver(irm);
+                }
             }
         }
         catch (RejectedExecutionException e) {
             handleNTProcEnd(runner);
 
             // I really don't expect this to happen... but it's here.
-            // must be done as IRM to CI mailbox for backpressure accounting
-            ClientResponseImpl response = new ClientResponseImpl(ClientResponseImpl.UNEXPECTED_FAILURE,
-                                                                 new VoltTable[0],
-                                                                 "Could not submit NT procedure " + procName + " to exec service for .",
-                                                                 clientHandle);
-            InitiateResponseMessage irm = InitiateResponseMessage.messageForNTProcResponse(ciHandle,
-                                                                                           ccxn.connectionId(),
-                                                                                           response);
-            m_mailbox.deliver(irm);
+            respondNotSubmitted(ciHandle, ccxn, clientHandle, procName);
             return;
         }
     }
 
+    /**
+     * Tell the caller its NT procedure was turned away by the exec service.
+     * Must be done as IRM to CI mailbox for backpressure accounting.
+     */
+    private void respondNotSubmitted(long ciHandle, Connection ccxn, long clientHandle, String procName) {
+        ClientResponseImpl response = new ClientResponseImpl(ClientResponseImpl.UNEXPECTED_FAILURE,
+                                                             new VoltTable[0],
+                                                             "Could not submit NT procedure " + procName + " to exec service for .",
+                                                             clientHandle);
+        InitiateResponseMessage irm = InitiateResponseMessage.messageForNTProcResponse(ciHandle,
+                                                                                       ccxn.connectionId(),
+                                                                                       response);
+        m_mailbox.deliver(irm);
+    }
+
     /**
      * This absolutely must be called when a proc is done, so the set of
      * outstanding NT procs doesn't leak.
      */
     void handleNTProcEnd(ProcedureRunnerNT runner) {
         m_outstanding.remove(runner.m_id);
+        // start the next invocation waiting for this slot, if any
+        m_scheduler.finished(runner.m_id);
     }
 
     /**
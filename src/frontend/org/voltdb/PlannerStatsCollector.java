@@ -96,9 +96,10 @@ public class PlannerStatsCollector extends StatsSource {
     long m_lastCacheMisses = 0;
 
     /**
-     * Time of last planning start
+     * Time of last planning start. The planner collector is shared by all the
+     * ad hoc planner threads, so each thread times its own planning.
      */
-    Long m_currentStartTime = null;
+    final ThreadLocal<Long> m_currentStartTime = new ThreadLocal<Long>();
 
     /**
      * Total amount of planning time
@@ -168,7 +169,7 @@ public class PlannerStatsCollector extends StatsSource {
     /**
      * Used to update EE cache stats without changing tracked time
      */
-    public void updateEECacheStats(long eeCacheSize, long hits, long misses, int partitionId) {
+    public synchronized void updateEECacheStats(long eeCacheSize, long hits, long misses, int partitionId) {
         m_cache1Level = eeCacheSize;
         m_cache1Hits += hits;
         m_cacheMisses += misses;
@@ -180,9 +181,9 @@ public class PlannerStatsCollector extends StatsSource {
     /**
      * Called before doing planning. Starts timer.
      */
-    public void startStatsCollection() {
+    public synchronized void startStatsCollection() {
         if (getInvocations() % m_collectionFrequency == 0) {
-            m_currentStartTime = System.nanoTime();
+            m_currentStartTime.set(System.nanoTime());
         }
     }
 
@@ -194,9 +195,10 @@ public class PlannerStatsCollector extends StatsSource {
      * @param cacheUse     where the planned statement came from
      * @param partitionId  partition id
      */
-    public void endStatsCollection(long cache1Size, long cache2Size, CacheUse cacheUse, long partitionId) {
-        if (m_currentStartTime != null) {
-            long delta = System.nanoTime() - m_currentStartTime;
+    public synchronized void endStatsCollection(long cache1Size, long cache2Size, CacheUse cacheUse, long partitionId) {
+        Long startTime = m_currentStartTime.get();
+        if (startTime != null) {
+            long delta = System.nanoTime() - startTime;
             if (delta < 0) {
                 if (Math.abs(delta) > 1000000000) {
                     log.info("Planner statistics recorded a negative planning time larger than one second: " +
@@ -210,7 +212,7 @@ public class PlannerStatsCollector extends StatsSource {
                 m_lastMinPlanningTime = Math.min(delta, m_lastMinPlanningTime);
                 m_lastMaxPlanningTime = Math.max(delta, m_lastMaxPlanningTime);
             }
-            m_currentStartTime = null;
+            m_currentStartTime.remove();
         }
 
         m_cache1Level = cache1Size;
@@ -0,0 +1,586 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.MaterializedViewHandlerInfo;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.catalog.Table;
+import org.voltdb.catalog.TableRef;
+import org.voltdb.client.ClientResponse;
+
+/**
+ * Host wide cache of the responses of read-only single partition procedures,
+ * keyed on the procedure name and the serialized parameters. A hit is answered
+ * by the {@link InvocationDispatcher} on the network thread, without creating
+ * a transaction.
+ *
+ * Only procedures named in the PROCEDURE_RESULT_CACHE property are cached, and
+ * only if every table they read (views included) is replicated. Replicated
+ * tables are only written by multi partition transactions, whose fragments run
+ * on every site of every host, so this host sees every write that could change
+ * a cached response. Writes to partitioned tables happen on the partition's
+ * replicas only and could not be tracked here.
+ *
+ * Invalidation is lazy. Each table has a version counter, bumped by the sites
+ * when a multi partition write fragment on it starts and again when the
+ * transaction completes. An entry remembers the versions of the tables it
+ * read as they were when the invocation was dispatched, and is dropped by the
+ * first lookup that finds any of them changed. Writes whose tables aren't
+ * known up front (sysprocs, ad hoc SQL) bump a global epoch that every entry
+ * depends on.
+ *
+ * Memory is bounded by the serialized size of the cached responses. The
+ * entries are spread over a few access ordered maps, each evicting its least
+ * recently used entries when it outgrows its share of the bound.
+ */
+public class ProcedureResultCache {
+
+    private static final VoltLogger hostLog = new VoltLogger("HOST");
+
+    // comma separated names of the procedures whose results may be cached, nothing is cached by default
+    static final String CACHED_PROCEDURES = System.getProperty("PROCEDURE_RESULT_CACHE", "");
+    // memory taken by the cached responses on this host, in megabytes
+    static final int MAX_SIZE_MB = Integer.getInteger("PROCEDURE_RESULT_CACHE_SIZE_MB", 64);
+
+    public static final boolean ENABLED = !CACHED_PROCEDURES.trim().isEmpty();
+
+    static final int SEGMENT_COUNT = 16;
+
+    // bumped by writes to unknown tables, every entry depends on it
+    private static final AtomicLong s_epoch = new AtomicLong(0);
+    private static final AtomicLong[] ALL_TABLES = new AtomicLong[] { s_epoch };
+    private static final ConcurrentHashMap<String, AtomicLong> s_tableVersions =
+            new ConcurrentHashMap<String, AtomicLong>();
+
+    /** Version counters of the tables written by each procedure of one catalog. */
+    private static final class WriteSets {
+        final Database m_database;
+        final ConcurrentHashMap<String, AtomicLong[]> m_procedures = new ConcurrentHashMap<String, AtomicLong[]>();
+
+        WriteSets(Database database) {
+            m_database = database;
+        }
+    }
+
+    private static volatile WriteSets s_writeSets = new WriteSets(null);
+
+    /** Version counters of the tables read by each cacheable procedure of one catalog. */
+    private static final class ReadSets {
+        final Database m_database;
+        final Map<String, AtomicLong[]> m_procedures;
+
+        ReadSets(Database database, Map<String, AtomicLong[]> procedures) {
+            m_database = database;
+            m_procedures = procedures;
+        }
+    }
+
+    private static final class Key {
+        final String m_procName;
+        final byte[] m_params;
+        final int m_hash;
+
+        Key(String procName, byte[] params) {
+            m_procName = procName;
+            m_params = params;
+            m_hash = 31 * procName.hashCode() + Arrays.hashCode(params);
+        }
+
+        @Override
+        public int hashCode() {
+            return m_hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return m_hash == other.m_hash &&
+                    m_procName.equals(other.m_procName) &&
+                    Arrays.equals(m_params, other.m_params);
+        }
+    }
+
+    private static final class Entry {
+        final byte[] m_response;
+        final long[] m_versions;
+
+        Entry(byte[] response, long[] versions) {
+            m_response = response;
+            m_versions = versions;
+        }
+    }
+
+    /** Access ordered map guarded by its own monitor. */
+    private static final class Segment extends LinkedHashMap<Key, Entry> {
+        private static final long serialVersionUID = 1L;
+        long m_sizeBytes = 0;
+
+        Segment() {
+            super(16, 0.75f, true);
+        }
+    }
+
+    /**
+     * The outcome of a lookup. Holds the cached response on a hit, otherwise
+     * what is needed to cache the response once the transaction returns it.
+     */
+    public final class Lookup {
+        final Key m_key;
+        final AtomicLong[] m_dependencies;
+        final long[] m_versions;
+        final ClientResponseImpl m_cachedResponse;
+
+        private Lookup(Key key, AtomicLong[] dependencies, long[] versions, ClientResponseImpl cachedResponse) {
+            m_key = key;
+            m_dependencies = dependencies;
+            m_versions = versions;
+            m_cachedResponse = cachedResponse;
+        }
+
+        public ClientResponseImpl getCachedResponse() {
+            return m_cachedResponse;
+        }
+
+        /**
+         * Cache the response of the transaction this lookup missed for,
+         * unless it failed or the tables it read changed in the meantime.
+         * The response must not have been serialized to the client yet.
+         */
+        public void complete(ClientResponseImpl response) {
+            if (response.getStatus() != ClientResponse.SUCCESS || !isCurrent(m_dependencies, m_versions)) {
+                return;
+            }
+            ByteBuffer buf = ByteBuffer.allocate(response.getSerializedSize());
+            response.flattenToBuffer(buf);
+            put(m_key, new Entry(buf.array(), m_versions));
+        }
+    }
+
+    private final String m_procedureNames;
+    private final Segment[] m_segments;
+    private final long m_maxSizeBytes;
+    private final long m_maxSegmentBytes;
+
+    private final AtomicInteger m_entries = new AtomicInteger(0);
+    private final AtomicLong m_sizeBytes = new AtomicLong(0);
+
+    private final LongAdder m_hits = new LongAdder();
+    private final LongAdder m_misses = new LongAdder();
+    private final LongAdder m_insertions = new LongAdder();
+    private final LongAdder m_evictions = new LongAdder();
+    private final LongAdder m_invalidations = new LongAdder();
+
+    private volatile ReadSets m_readSets = new ReadSets(null, Collections.<String, AtomicLong[]>emptyMap());
+
+    private final ResultCacheStats m_stats = new ResultCacheStats();
+
+    public ProcedureResultCache() {
+        this(CACHED_PROCEDURES, MAX_SIZE_MB * 1024L * 1024L);
+    }
+
+    ProcedureResultCache(String procedureNames, long maxSizeBytes) {
+        m_procedureNames = procedureNames;
+        m_maxSizeBytes = maxSizeBytes;
+        m_maxSegmentBytes = Math.max(1, maxSizeBytes / SEGMENT_COUNT);
+        m_segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            m_segments[i] = new Segment();
+        }
+    }
+
+    public StatsSource getStatsSource() {
+        return m_stats;
+    }
+
+    /**
+     * Look up the response to an invocation.
+     * @return null if the procedure isn't cached at all, otherwise a lookup
+     * holding either the cached response or what's needed to cache the
+     * response once the transaction returns it
+     */
+    public Lookup lookup(Database database, Procedure catProc, StoredProcedureInvocation task) {
+        if (task.getAllPartition()) {
+            return null;
+        }
+        final AtomicLong[] dependencies = getReadSets(database).m_procedures.get(catProc.getTypeName());
+        if (dependencies == null) {
+            return null;
+        }
+        // capture the versions before the transaction can run
+        final long[] versions = new long[dependencies.length];
+        for (int i = 0; i < dependencies.length; i++) {
+            versions[i] = dependencies[i].get();
+        }
+
+        final Key key = new Key(catProc.getTypeName(), serializeParams(task));
+        final Segment segment = segmentFor(key);
+        byte[] cached = null;
+        synchronized (segment) {
+            Entry entry = segment.get(key);
+            if (entry != null) {
+                if (Arrays.equals(entry.m_versions, versions)) {
+                    cached = entry.m_response;
+                }
+                else {
+                    remove(segment, key, entry);
+                    m_invalidations.increment();
+                }
+            }
+        }
+        if (cached == null) {
+            m_misses.increment();
+            return new Lookup(key, dependencies, versions, null);
+        }
+
+        m_hits.increment();
+        // the result tables are read only views of the cached bytes, shared by all hits
+        ClientResponseImpl response = new ClientResponseImpl();
+        try {
+            response.initFromBuffer(ByteBuffer.wrap(cached));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read a cached procedure response", e);
+        }
+        response.setClientHandle(task.getClientHandle());
+        response.setClusterRoundtrip(0);
+        return new Lookup(key, dependencies, versions, response);
+    }
+
+    private void put(Key key, Entry entry) {
+        final Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Entry previous = segment.put(key, entry);
+            if (previous != null) {
+                segment.m_sizeBytes -= previous.m_response.length;
+                m_sizeBytes.addAndGet(-previous.m_response.length);
+            }
+            else {
+                m_entries.incrementAndGet();
+            }
+            segment.m_sizeBytes += entry.m_response.length;
+            m_sizeBytes.addAndGet(entry.m_response.length);
+            m_insertions.increment();
+
+            // evict from the cold end, but never the entry just inserted
+            Iterator<Map.Entry<Key, Entry>> iter = segment.entrySet().iterator();
+            while (segment.m_sizeBytes > m_maxSegmentBytes && segment.size() > 1) {
+                Map.Entry<Key, Entry> eldest = iter.next();
+                iter.remove();
+                segment.m_sizeBytes -= eldest.getValue().m_response.length;
+                m_sizeBytes.addAndGet(-eldest.getValue().m_response.length);
+                m_entries.decrementAndGet();
+                m_evictions.increment();
+            }
+        }
+    }
+
+    private void remove(Segment segment, Key key, Entry entry) {
+        segment.remove(key);
+        segment.m_sizeBytes -= entry.m_response.length;
+        m_sizeBytes.addAndGet(-entry.m_response.length);
+        m_entries.decrementAndGet();
+    }
+
+    void clear() {
+        for (Segment segment : m_segments) {
+            synchronized (segment) {
+                m_entries.addAndGet(-segment.size());
+                m_sizeBytes.addAndGet(-segment.m_sizeBytes);
+                segment.clear();
+                segment.m_sizeBytes = 0;
+            }
+        }
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.m_hash;
+        h ^= (h >>> 16);
+        return m_segments[(h * 0x9E3779B9) >>> 28];
+    }
+
+    /**
+     * Work out which procedures of a new catalog can be cached, and drop
+     * everything cached against the previous one.
+     */
+    private ReadSets getReadSets(Database database) {
+        ReadSets readSets = m_readSets;
+        if (readSets.m_database == database) {
+            return readSets;
+        }
+        synchronized (this) {
+            readSets = m_readSets;
+            if (readSets.m_database != database) {
+                readSets = new ReadSets(database, computeReadSets(database, m_procedureNames));
+                // responses of transactions still running against the old catalog are not kept either
+                s_epoch.incrementAndGet();
+                clear();
+                m_readSets = readSets;
+            }
+        }
+        return readSets;
+    }
+
+    private static Map<String, AtomicLong[]> computeReadSets(Database database, String procedureNames) {
+        Map<String, AtomicLong[]> procedures = new HashMap<String, AtomicLong[]>();
+        for (String name : procedureNames.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            Procedure proc = database.getProcedures().get(name);
+            if (proc == null) {
+                hostLog.warn("Procedure " + name + " named in PROCEDURE_RESULT_CACHE was not found, " +
+                        "its results will not be cached.");
+                continue;
+            }
+            if (proc.getSystemproc() || !proc.getTransactional() ||
+                    !proc.getReadonly() || !proc.getSinglepartition()) {
+                hostLog.warn("Procedure " + name + " is not a read-only single partition procedure, " +
+                        "its results will not be cached.");
+                continue;
+            }
+            Set<String> tables = new TreeSet<String>();
+            String partitionedTable = null;
+            for (Statement stmt : proc.getStatements()) {
+                for (String tableName : stmt.getTablesread().split(",")) {
+                    if (tableName.isEmpty()) {
+                        continue;
+                    }
+                    Table table = database.getTables().get(tableName);
+                    if (table == null || !addReadTable(table, tables)) {
+                        partitionedTable = tableName;
+                    }
+                }
+            }
+            if (partitionedTable != null) {
+                hostLog.warn("Procedure " + name + " reads table " + partitionedTable +
+                        " which is not replicated, its results will not be cached.");
+                continue;
+            }
+            AtomicLong[] dependencies = new AtomicLong[tables.size() + 1];
+            int i = 0;
+            dependencies[i++] = s_epoch;
+            for (String tableName : tables) {
+                dependencies[i++] = tableVersion(tableName);
+            }
+            procedures.put(proc.getTypeName(), dependencies);
+        }
+        return procedures;
+    }
+
+    /**
+     * Add a table and, if it is a view, the tables it is computed from.
+     * @return false if any of them is partitioned
+     */
+    private static boolean addReadTable(Table table, Set<String> tables) {
+        if (!table.getIsreplicated()) {
+            return false;
+        }
+        if (!tables.add(table.getTypeName())) {
+            return true;
+        }
+        Table source = table.getMaterializer();
+        if (source != null && !addReadTable(source, tables)) {
+            return false;
+        }
+        for (MaterializedViewHandlerInfo info : table.getMvhandlerinfo()) {
+            for (TableRef ref : info.getSourcetables()) {
+                if (!addReadTable(ref.getTable(), tables)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static AtomicLong tableVersion(String tableName) {
+        return s_tableVersions.computeIfAbsent(tableName.toUpperCase(), k -> new AtomicLong(0));
+    }
+
+    private static boolean isCurrent(AtomicLong[] dependencies, long[] versions) {
+        for (int i = 0; i < dependencies.length; i++) {
+            if (dependencies[i].get() != versions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] serializeParams(StoredProcedureInvocation task) {
+        ByteBuffer serialized = task.getSerializedParams();
+        if (serialized != null) {
+            byte[] params = new byte[serialized.remaining()];
+            serialized.get(params);
+            return params;
+        }
+        ParameterSet params = task.getParams();
+        ByteBuffer buf = ByteBuffer.allocate(params.getSerializedSize());
+        try {
+            params.flattenToBuffer(buf);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to serialize procedure parameters", e);
+        }
+        return buf.array();
+    }
+
+    int size() {
+        return m_entries.get();
+    }
+
+    long sizeBytes() {
+        return m_sizeBytes.get();
+    }
+
+    long hits() {
+        return m_hits.sum();
+    }
+
+    long misses() {
+        return m_misses.sum();
+    }
+
+    long evictions() {
+        return m_evictions.sum();
+    }
+
+    long invalidations() {
+        return m_invalidations.sum();
+    }
+
+    /**
+     * Called by a site when it starts running a write fragment of a multi
+     * partition transaction, and again when that transaction completes,
+     * to invalidate the cached responses that read the tables it writes.
+     * @param procName the procedure of the transaction, null if unknown
+     */
+    public static void recordWrite(String procName) {
+        CatalogContext context = VoltDB.instance().getCatalogContext();
+        recordWrite(context == null ? null : context.database, procName);
+    }
+
+    static void recordWrite(Database database, String procName) {
+        for (AtomicLong version : getWriteSet(database, procName)) {
+            version.incrementAndGet();
+        }
+    }
+
+    private static AtomicLong[] getWriteSet(Database database, String procName) {
+        if (database == null || procName == null) {
+            return ALL_TABLES;
+        }
+        WriteSets writeSets = s_writeSets;
+        if (writeSets.m_database != database) {
+            writeSets = new WriteSets(database);
+            s_writeSets = writeSets;
+        }
+        AtomicLong[] versions = writeSets.m_procedures.get(procName);
+        if (versions == null) {
+            versions = computeWriteSet(database, procName);
+            writeSets.m_procedures.put(procName, versions);
+        }
+        return versions;
+    }
+
+    private static AtomicLong[] computeWriteSet(Database database, String procName) {
+        Procedure proc = database.getProcedures().get(procName);
+        if (proc == null || proc.getSystemproc()) {
+            return ALL_TABLES;
+        }
+        Set<String> tables = new TreeSet<String>();
+        for (Statement stmt : proc.getStatements()) {
+            for (String tableName : stmt.getTablesupdated().split(",")) {
+                if (!tableName.isEmpty()) {
+                    tables.add(tableName);
+                }
+            }
+        }
+        if (tables.isEmpty()) {
+            // writes through SQL that isn't part of the catalog
+            return ALL_TABLES;
+        }
+        AtomicLong[] versions = new AtomicLong[tables.size()];
+        int i = 0;
+        for (String tableName : tables) {
+            versions[i++] = tableVersion(tableName);
+        }
+        return versions;
+    }
+
+    /**
+     * A single row with the size and the hit, miss and invalidation counts of the cache.
+     */
+    class ResultCacheStats extends StatsSource {
+
+        ResultCacheStats() {
+            super(false);
+        }
+
+        @Override
+        protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+            super.populateColumnSchema(columns);
+            columns.add(new ColumnInfo("ENTRIES", VoltType.INTEGER));
+            columns.add(new ColumnInfo("SIZE_BYTES", VoltType.BIGINT));
+            columns.add(new ColumnInfo("MAX_SIZE_BYTES", VoltType.BIGINT));
+            columns.add(new ColumnInfo("HITS", VoltType.BIGINT));
+            columns.add(new ColumnInfo("MISSES", VoltType.BIGINT));
+            columns.add(new ColumnInfo("INSERTIONS", VoltType.BIGINT));
+            columns.add(new ColumnInfo("EVICTIONS", VoltType.BIGINT));
+            columns.add(new ColumnInfo("INVALIDATIONS", VoltType.BIGINT));
+        }
+
+        @Override
+        protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+            super.updateStatsRow(rowKey, rowValues);
+            rowValues[columnNameToIndex.get("ENTRIES")] = size();
+            rowValues[columnNameToIndex.get("SIZE_BYTES")] = sizeBytes();
+            rowValues[columnNameToIndex.get("MAX_SIZE_BYTES")] = m_maxSizeBytes;
+            rowValues[columnNameToIndex.get("HITS")] = hits();
+            rowValues[columnNameToIndex.get("MISSES")] = misses();
+            rowValues[columnNameToIndex.get("INSERTIONS")] = m_insertions.sum();
+            rowValues[columnNameToIndex.get("EVICTIONS")] = evictions();
+            rowValues[columnNameToIndex.get("INVALIDATIONS")] = invalidations();
+        }
+
+        @Override
+        protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+            return Collections.<Object>singletonList(0).iterator();
+        }
+    }
+}
@@ -116,6 +116,8 @@ public class ProcedureRunner {
     // cached txnid-seeded RNG so all calls to getSeededRandomNumberGenerator() for
     // a given call don't re-seed and generate the same number over and over
     private Random m_cachedRNG = null;
+    // pooled buffers backing the results when they were kept in direct memory
+    private ByteBuffer[] m_directResults = null;
 
     // hooks into other parts of voltdb
     //
@@ -394,7 +396,7 @@ public class ProcedureRunner {
                     }
                     try {
                         Object rawResult = m_procMethod.invoke(m_procedure, paramList);
-                        results = ParameterConverter.getResultsFromRawResults(m_procedureName, rawResult);
+                        results = getResultsFromRawResults(rawResult);
                     }
                     catch (IllegalAccessException e) {
                         // If reflection fails, invoke the same error handling that other exceptions do
@@ -446,7 +448,8 @@ public class ProcedureRunner {
                     else {
                         m_batch.add(m_cachedSingleStmt);
                         results = voltExecuteSQL(true);
-                        results = convertTablesToHeapBuffers(results);
+                        VoltTable[] directResults = convertTablesToDirectBuffers(results);
+                        results = directResults != null ? directResults : convertTablesToHeapBuffers(results);
                     }
                 }
                 catch (SerializableException ex) {
@@ -480,6 +483,8 @@ public class ProcedureRunner {
                         m_appStatusString,
                         results,
                         m_statusString);
+                retval.setDirectResults(m_directResults);
+                m_directResults = null;
             }
 
             int hash = (int) m_inputCRC.getValue();
@@ -500,6 +505,11 @@ public class ProcedureRunner {
             m_appStatusCode = ClientResponse.UNINITIALIZED_APP_STATUS_CODE;
             m_appStatusString = null;
             m_cachedRNG = null;
+            if (m_directResults != null) {
+                // the results didn't make it into the response
+                ResultBufferPool.release(m_directResults);
+                m_directResults = null;
+            }
             m_cachedSingleStmt.params = null;
             m_cachedSingleStmt.expectation = null;
             m_seenFinalBatch = false;
@@ -1338,6 +1348,49 @@ public class ProcedureRunner {
                "VOLTDB ERROR: " + msg);
    }
 
+   /**
+    * Convert the value returned by a java procedure into result tables, keeping
+    * them in direct memory when {@link #convertTablesToDirectBuffers} allows it.
+    */
+   private VoltTable[] getResultsFromRawResults(Object rawResult) throws InvocationTargetException {
+       VoltTable[] directResults = null;
+       if (rawResult instanceof VoltTable) {
+           directResults = convertTablesToDirectBuffers(new VoltTable[] { (VoltTable) rawResult });
+       }
+       else if (rawResult instanceof VoltTable[]) {
+           directResults = convertTablesToDirectBuffers((VoltTable[]) rawResult);
+       }
+       if (directResults != null) {
+           return directResults;
+       }
+       return ParameterConverter.getResultsFromRawResults(m_procedureName, rawResult);
+   }
+
+   /**
+    * Copy large results of a read-only single partition procedure out of the EE into
+    * pooled direct buffers, which the client interface writes to the connection as
+    * they are. Only done when that client interface is on this host, responses going
+    * elsewhere are serialized by the messaging layer anyway.
+    * @return the copied tables, or null if the results go to the heap as usual
+    */
+   private VoltTable[] convertTablesToDirectBuffers(VoltTable[] results) {
+       if (!ResultBufferPool.ENABLED || !m_isSinglePartition || !m_isReadOnly ||
+               isSystemProcedure() || m_txnState == null || m_txnState.isForReplay()) {
+           return null;
+       }
+       final long initiatorHSId = m_txnState.getNotice().getInitiatorHSId();
+       if (CoreUtils.getHostIdFromHSId(initiatorHSId) !=
+               CoreUtils.getHostIdFromHSId(m_site.getCorrespondingSiteId())) {
+           return null;
+       }
+       final ByteBuffer[] buffers = new ByteBuffer[results.length];
+       final VoltTable[] copies = ResultBufferPool.copyToPooledBuffers(results, buffers);
+       if (copies != null) {
+           m_directResults = buffers;
+       }
+       return copies;
+   }
+
    final private VoltTable[] convertTablesToHeapBuffers(VoltTable[] results) {
        for (VoltTable table : results) {
            // Make sure this table does not use an ee cache buffer
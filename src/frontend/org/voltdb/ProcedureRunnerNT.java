@@ -22,10 +22,12 @@ import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.messaging.HostMessenger;
@@ -317,14 +319,16 @@ public class ProcedureRunnerNT {
                 Object rawResult = m_procMethod.invoke(m_procedure, paramList);
                 if (rawResult instanceof CompletableFuture<?>) {
                     final CompletableFuture<?> fut = (CompletableFuture<?>) rawResult;
-                    fut.thenRun(new Runnable() {
+                    // whenComplete rather than thenRun, a future completed exceptionally
+                    // must still answer the caller and free the slot of this invocation
+                    fut.whenComplete(new BiConsumer<Object, Throwable>() {
                         @Override
-                        public void run() {
+                        public void accept(Object result, Throwable failure) {
                             Object rawResult = null;
                             ClientResponseImpl response = null;
                             try {
                                 rawResult = fut.get();
-                            } catch (InterruptedException | ExecutionException e) {
+                            } catch (InterruptedException | ExecutionException | CancellationException e) {
                                 // this is a bad place to be, but it's hard to know if it's crash bad...
                                 rawResult = new ClientResponseImpl(ClientResponseImpl.UNEXPECTED_FAILURE,
                                         new VoltTable[0],
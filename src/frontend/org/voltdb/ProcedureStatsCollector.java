@@ -66,6 +66,8 @@ public class ProcedureStatsCollector extends SiteStatsSource {
     private final StatsData m_procStatsData;
     private final boolean m_isTransactional;
     private final boolean m_isUAC;
+    // Serializes the writers of NT procedures, which can finish on any thread
+    private final Object m_ntWriterLock = new Object();
 
     public ProcedureStatsCollector(long siteId,
                                    int partitionId,
@@ -132,17 +134,23 @@ public class ProcedureStatsCollector extends SiteStatsSource {
      * Called after a procedure is finished executing. Compares the start and end time and calculates
      * the statistics.
      *
-     * Synchronized because it modifies internal state and (for NT procs) can be called from multiple
-     * threads. For transactional procs the lock should be uncontended.,
+     * Transactional procs are only ever finished by their site thread, which is the single writer of
+     * these statistics and never waits for a stats poll. NT procs can be finished from multiple threads,
+     * so their writers take turns on a private lock, still without blocking on the stats source.
      */
-    public final synchronized void endProcedure(boolean aborted, boolean failed, SingleCallStatsToken statsToken) {
-        if (aborted) {
-            m_procStatsData.m_abortCount++;
+    public final void endProcedure(boolean aborted, boolean failed, SingleCallStatsToken statsToken) {
+        if (m_isTransactional) {
+            recordProcedure(aborted, failed, statsToken);
         }
-        if (failed) {
-            m_procStatsData.m_failureCount++;
+        else {
+            synchronized (m_ntWriterLock) {
+                recordProcedure(aborted, failed, statsToken);
+            }
         }
-        m_procStatsData.m_invocations++;
+    }
+
+    private void recordProcedure(boolean aborted, boolean failed, SingleCallStatsToken statsToken) {
+        m_procStatsData.recordInvocation(aborted, failed);
 
         // this means additional stats were not recorded
         if (!statsToken.samplingProcedure()) {
@@ -161,25 +169,7 @@ public class ProcedureStatsCollector extends SiteStatsSource {
             return;
         }
 
-        m_procStatsData.m_timedInvocations++;
-        // sampled timings
-        m_procStatsData.m_totalTimedExecutionTime += duration;
-        m_procStatsData.m_minExecutionTime = Math.min(duration, m_procStatsData.m_minExecutionTime);
-        m_procStatsData.m_maxExecutionTime = Math.max(duration, m_procStatsData.m_maxExecutionTime);
-        m_procStatsData.m_incrMinExecutionTime = Math.min(duration, m_procStatsData.m_incrMinExecutionTime);
-        m_procStatsData.m_incrMaxExecutionTime = Math.max(duration, m_procStatsData.m_incrMaxExecutionTime);
-
-        m_procStatsData.m_totalResultSize += statsToken.resultSize;
-        m_procStatsData.m_minResultSize = Math.min(statsToken.resultSize, m_procStatsData.m_minResultSize);
-        m_procStatsData.m_maxResultSize = Math.max(statsToken.resultSize, m_procStatsData.m_maxResultSize);
-        m_procStatsData.m_incrMinResultSize = Math.min(statsToken.resultSize, m_procStatsData.m_incrMinResultSize);
-        m_procStatsData.m_incrMaxResultSize = Math.max(statsToken.resultSize, m_procStatsData.m_incrMaxResultSize);
-
-        m_procStatsData.m_totalParameterSetSize += statsToken.parameterSetSize;
-        m_procStatsData.m_minParameterSetSize = Math.min(statsToken.parameterSetSize, m_procStatsData.m_minParameterSetSize);
-        m_procStatsData.m_maxParameterSetSize = Math.max(statsToken.parameterSetSize, m_procStatsData.m_maxParameterSetSize);
-        m_procStatsData.m_incrMinParameterSetSize = Math.min(statsToken.parameterSetSize, m_procStatsData.m_incrMinParameterSetSize);
-        m_procStatsData.m_incrMaxParameterSetSize = Math.max(statsToken.parameterSetSize, m_procStatsData.m_incrMaxParameterSetSize);
+        m_procStatsData.recordSample(duration, statsToken.resultSize, statsToken.parameterSetSize);
 
         // stop here if no statements
         if (statsToken.stmtStats == null) {
@@ -210,13 +200,31 @@ public class ProcedureStatsCollector extends SiteStatsSource {
      * This function will be called after a statement finish running.
      * It updates the data structures to maintain the statistics.
      */
-    public final synchronized void endFragment(String stmtName,
-                                               boolean isCoordinatorTask,
-                                               boolean failed,
-                                               boolean sampledStmt,
-                                               long duration,
-                                               int resultSize,
-                                               int parameterSetSize)
+    public final void endFragment(String stmtName,
+                                  boolean isCoordinatorTask,
+                                  boolean failed,
+                                  boolean sampledStmt,
+                                  long duration,
+                                  int resultSize,
+                                  int parameterSetSize)
+    {
+        if (m_isTransactional) {
+            recordFragment(stmtName, isCoordinatorTask, failed, sampledStmt, duration, resultSize, parameterSetSize);
+        }
+        else {
+            synchronized (m_ntWriterLock) {
+                recordFragment(stmtName, isCoordinatorTask, failed, sampledStmt, duration, resultSize, parameterSetSize);
+            }
+        }
+    }
+
+    private void recordFragment(String stmtName,
+                                boolean isCoordinatorTask,
+                                boolean failed,
+                                boolean sampledStmt,
+                                long duration,
+                                int resultSize,
+                                int parameterSetSize)
     {
         if (stmtName == null) {
             return;
@@ -227,10 +235,7 @@ public class ProcedureStatsCollector extends SiteStatsSource {
         }
         StatsData dataToUpdate = isCoordinatorTask ? stmtStats.m_coordinatorTask : stmtStats.m_workerTask;
         // m_failureCount and m_invocations need to be updated even if the current invocation is not sampled.
-        if (failed) {
-            dataToUpdate.m_failureCount++;
-        }
-        dataToUpdate.m_invocations++;
+        dataToUpdate.recordInvocation(false, failed);
 
         // If the current invocation is not sampled, we can stop now.
         // Notice that this function can be called by a FragmentTask from a multi-partition procedure.
@@ -249,26 +254,7 @@ public class ProcedureStatsCollector extends SiteStatsSource {
             return;
         }
 
-        dataToUpdate.m_timedInvocations++;
-        // sampled timings
-        dataToUpdate.m_totalTimedExecutionTime += duration;
-        dataToUpdate.m_minExecutionTime = Math.min(duration, dataToUpdate.m_minExecutionTime);
-        dataToUpdate.m_maxExecutionTime = Math.max(duration, dataToUpdate.m_maxExecutionTime);
-        dataToUpdate.m_incrMinExecutionTime = Math.min(duration, dataToUpdate.m_incrMinExecutionTime);
-        dataToUpdate.m_incrMaxExecutionTime = Math.max(duration, dataToUpdate.m_incrMaxExecutionTime);
-
-        // sampled size statistics
-        dataToUpdate.m_totalResultSize += resultSize;
-        dataToUpdate.m_minResultSize = Math.min(resultSize, dataToUpdate.m_minResultSize);
-        dataToUpdate.m_maxResultSize = Math.max(resultSize, dataToUpdate.m_maxResultSize);
-        dataToUpdate.m_incrMinResultSize = Math.min(resultSize, dataToUpdate.m_incrMinResultSize);
-        dataToUpdate.m_incrMaxResultSize = Math.max(resultSize, dataToUpdate.m_incrMaxResultSize);
-
-        dataToUpdate.m_totalParameterSetSize += parameterSetSize;
-        dataToUpdate.m_minParameterSetSize = Math.min(parameterSetSize, dataToUpdate.m_minParameterSetSize);
-        dataToUpdate.m_maxParameterSetSize = Math.max(parameterSetSize, dataToUpdate.m_maxParameterSetSize);
-        dataToUpdate.m_incrMinParameterSetSize = Math.min(parameterSetSize, dataToUpdate.m_incrMinParameterSetSize);
-        dataToUpdate.m_incrMaxParameterSetSize = Math.max(parameterSetSize, dataToUpdate.m_incrMaxParameterSetSize);
+        dataToUpdate.recordSample(duration, resultSize, parameterSetSize);
     }
 
     /**
@@ -287,36 +273,22 @@ public class ProcedureStatsCollector extends SiteStatsSource {
         assert(currRow != null);
         rowValues[columnNameToIndex.get("STATEMENT")] = currRow.m_stmtName;
 
-        long invocations = currRow.getInvocations();
-        long timedInvocations = currRow.getTimedInvocations();
-        long totalTimedExecutionTime = currRow.getTotalTimedExecutionTime();
-        long minExecutionTime = currRow.getMinExecutionTime();
-        long maxExecutionTime = currRow.getMaxExecutionTime();
-        long abortCount = currRow.getAbortCount();
-        long failureCount = currRow.getFailureCount();
-        int minResultSize = currRow.getMinResultSize();
-        int maxResultSize = currRow.getMaxResultSize();
-        long totalResultSize = currRow.getTotalResultSize();
-        int minParameterSetSize = currRow.getMinParameterSetSize();
-        int maxParameterSetSize = currRow.getMaxParameterSetSize();
-        long totalParameterSetSize = currRow.getTotalParameterSetSize();
+        long invocations = currRow.getInvocations(m_incremental);
+        long timedInvocations = currRow.getTimedInvocations(m_incremental);
+        long totalTimedExecutionTime = currRow.getTotalTimedExecutionTime(m_incremental);
+        long minExecutionTime = currRow.getMinExecutionTime(m_incremental);
+        long maxExecutionTime = currRow.getMaxExecutionTime(m_incremental);
+        long abortCount = currRow.getAbortCount(m_incremental);
+        long failureCount = currRow.getFailureCount(m_incremental);
+        int minResultSize = currRow.getMinResultSize(m_incremental);
+        int maxResultSize = currRow.getMaxResultSize(m_incremental);
+        long totalResultSize = currRow.getTotalResultSize(m_incremental);
+        int minParameterSetSize = currRow.getMinParameterSetSize(m_incremental);
+        int maxParameterSetSize = currRow.getMaxParameterSetSize(m_incremental);
+        long totalParameterSetSize = currRow.getTotalParameterSetSize(m_incremental);
 
         if (m_incremental) {
-            abortCount -= currRow.getLastAbortCountAndReset();
-            failureCount -= currRow.getLastFailureCountAndReset();
-            totalTimedExecutionTime -= currRow.getLastTotalTimedExecutionTimeAndReset();
-            totalResultSize -= currRow.getLastTotalResultSizeAndReset();
-            totalParameterSetSize -= currRow.getLastTotalParameterSetSizeAndReset();
-            minExecutionTime = currRow.getIncrementalMinExecutionTimeAndReset();
-            maxExecutionTime = currRow.getIncrementalMaxExecutionTimeAndReset();
-            minResultSize = currRow.getIncrementalMinResultSizeAndReset();
-            maxResultSize = currRow.getIncrementalMaxResultSizeAndReset();
-            minParameterSetSize = currRow.getIncrementalMinParameterSetSizeAndReset();
-            maxParameterSetSize = currRow.getIncrementalMaxParameterSetSizeAndReset();
-            // Notice that invocation numbers must be updated in the end.
-            // Other numbers depend on them for correct behavior.
-            invocations -= currRow.getLastInvocationsAndReset();
-            timedInvocations -= currRow.getLastTimedInvocationsAndReset();
+            currRow.endInterval();
         }
 
         rowValues[columnNameToIndex.get("INVOCATIONS")] = invocations;
@@ -373,6 +345,10 @@ public class ProcedureStatsCollector extends SiteStatsSource {
     @Override
     protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
         m_incremental = interval;
+        // Take over whatever the writers recorded since the last poll
+        for (StatementStats stmtStats : m_stmtStatsMap.values()) {
+            stmtStats.collect();
+        }
         return new Iterator<Object>() {
             Iterator<Entry<String, StatementStats>> iter = m_stmtStatsMap.entrySet().iterator();
             StatementStats nextToReturn = null;
@@ -387,17 +363,9 @@ public class ProcedureStatsCollector extends SiteStatsSource {
                 // Find the next element to return.
                 do {
                     nextToReturn = iter.next().getValue();
-                    if (m_incremental) {
-                        if (nextToReturn.getTimedInvocations() - nextToReturn.getLastTimedInvocations() == 0) {
-                            nextToReturn = null;
-                            continue;
-                        }
-                    }
-                    else {
-                        if (nextToReturn.getTimedInvocations() == 0) {
-                            nextToReturn = null;
-                            continue;
-                        }
+                    if (nextToReturn.getTimedInvocations(m_incremental) == 0) {
+                        nextToReturn = null;
+                        continue;
                     }
                 } while (nextToReturn == null && iter.hasNext());
                 return nextToReturn != null;
@@ -148,6 +148,7 @@ import org.voltdb.probe.MeshProber;
 import org.voltdb.processtools.ShellTools;
 import org.voltdb.rejoin.Iv2RejoinCoordinator;
 import org.voltdb.rejoin.JoinCoordinator;
+import org.voltdb.rejoin.StreamSnapshotStats;
 import org.voltdb.settings.ClusterSettings;
 import org.voltdb.settings.ClusterSettingsRef;
 import org.voltdb.settings.DbSettings;
@@ -238,6 +239,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
 
     private AsyncCompilerAgent m_asyncCompilerAgent = null;
 
+    @Override
     public AsyncCompilerAgent getAsyncCompilerAgent() { return m_asyncCompilerAgent; }
     private PartitionCountStats m_partitionCountStats = null;
     private IOStats m_ioStats = null;
@@ -1253,6 +1255,10 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
             m_ioStats = new IOStats();
             getStatsAgent().registerStatsSource(StatsSelector.IOSTATS,
                     0, m_ioStats);
+            getStatsAgent().registerStatsSource(StatsSelector.MESSAGEBATCH,
+                    0, new MessageBatchStats());
+            getStatsAgent().registerStatsSource(StatsSelector.REJOIN,
+                    0, new StreamSnapshotStats());
             m_memoryStats = new MemoryStats();
             getStatsAgent().registerStatsSource(StatsSelector.MEMORY,
                     0, m_memoryStats);
@@ -2086,6 +2092,16 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
         if (em != null) { em.setupMaintenaceTasks(); }
 
         GCInspector.instance.start(m_periodicPriorityWorkThread, m_gcStats);
+
+        // plan like the rest of the cluster, then refresh the statistics on the service leader
+        TableStatisticsMonitor.loadStoredStatistics(m_messenger.getZK(), m_catalogContext);
+        if (TableStatisticsMonitor.ANALYZE_INTERVAL_SECONDS > 0) {
+            TableStatisticsMonitor analyzer = new TableStatisticsMonitor();
+            m_globalServiceElector.registerService(analyzer);
+            m_periodicWorks.add(scheduleWork(analyzer,
+                    TableStatisticsMonitor.ANALYZE_INTERVAL_SECONDS,
+                    TableStatisticsMonitor.ANALYZE_INTERVAL_SECONDS, TimeUnit.SECONDS));
+        }
     }
 
     private void startHealthMonitor() {
@@ -3721,7 +3737,8 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
         try {
             final ZooKeeper zk = m_messenger.getZK();
             boolean logRecoveryCompleted = false;
-            if (getCommandLog().getClass().getName().equals("org.voltdb.CommandLogImpl")) {
+            if (getCommandLog().getClass().getName().equals("org.voltdb.CommandLogImpl") ||
+                getCommandLog() instanceof FileCommandLog) {
                 String requestNode = zk.create(VoltZK.request_truncation_snapshot_node, null,
                         Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT_SEQUENTIAL);
                 if (m_rejoinTruncationReqId == null) {
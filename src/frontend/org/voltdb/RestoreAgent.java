@@ -23,7 +23,9 @@ import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -485,7 +487,7 @@ SnapshotCompletionInterest, Promotable
         m_action = action;
         m_hostMessenger = hostMessenger;
         m_zk = hostMessenger.getZK();
-        m_clEnabled = VoltDB.instance().getConfig().m_isEnterprise ? clEnabled : false;
+        m_clEnabled = (VoltDB.instance().getConfig().m_isEnterprise || FileCommandLog.ENABLED) ? clEnabled : false;
         m_clPath = clPath;
         m_clSnapshotPath = clSnapshotPath;
         m_snapshotPath = snapshotPath;
@@ -516,6 +518,9 @@ SnapshotCompletionInterest, Promotable
                                                                     m_clPath,
                                                                     m_liveHosts);
             }
+            else if (m_clEnabled && startAction.doesRecover()) {
+                m_replayAgent = new DefaultCommandLogReinitiator(m_clPath, m_liveHosts.size());
+            }
         } catch (Exception e) {
             VoltDB.crashGlobalVoltDB("Unable to instantiate command log reinitiator",
                                      true, e);
@@ -646,6 +651,9 @@ SnapshotCompletionInterest, Promotable
         final Long maxLastSeenTxn = m_replayAgent.getMaxLastSeenTxn();
         Set<SnapshotInfo> snapshotInfos = new HashSet<SnapshotInfo>();
         for (Snapshot e : snapshots.values()) {
+            if (!checkIncrementalChainIsComplete(e, snapshots, m_snapshotErrLogStr)) {
+                continue;
+            }
             SnapshotInfo info = checkSnapshotIsComplete(e.getTxnId(), e);
             // if the cluster instance IDs in the snapshot and command log don't match, just move along
             if (m_replayAgent.getInstanceId() != null && info != null &&
@@ -743,6 +751,51 @@ SnapshotCompletionInterest, Promotable
         return infoWithMinHostId;
     }
 
+    /**
+     * Tables of an incremental snapshot can only be restored if the snapshots their
+     * files build on are all present and completed.
+     */
+    static boolean checkIncrementalChainIsComplete(Snapshot s, Map<String, Snapshot> snapshots,
+                                                   StringBuilder errLog)
+    {
+        for (Map.Entry<String, TableFiles> e : s.m_tableFiles.entrySet()) {
+            Set<String> visited = new HashSet<String>();
+            Deque<String> previous = new ArrayDeque<String>();
+            previous.addAll(nonNullNonces(e.getValue().m_previousNonces));
+            while (!previous.isEmpty()) {
+                String nonce = previous.poll();
+                if (!visited.add(nonce)) {
+                    continue;
+                }
+                Snapshot prev = snapshots.get(nonce);
+                TableFiles prevFiles = prev == null ? null : prev.m_tableFiles.get(e.getKey());
+                if (prevFiles == null || prevFiles.m_completed.stream().anyMatch(b->!b)) {
+                    errLog.append("\nRejected snapshot ")
+                          .append(s.getNonce())
+                          .append(" because table ")
+                          .append(e.getKey())
+                          .append(" is incremental and snapshot ")
+                          .append(nonce)
+                          .append(" it builds on is missing or was not completed.");
+                    return false;
+                }
+                previous.addAll(nonNullNonces(prevFiles.m_previousNonces));
+            }
+        }
+        return true;
+    }
+
+    private static Set<String> nonNullNonces(List<String> nonces)
+    {
+        Set<String> result = new HashSet<String>();
+        for (String nonce : nonces) {
+            if (nonce != null) {
+                result.add(nonce);
+            }
+        }
+        return result;
+    }
+
     private SnapshotInfo checkSnapshotIsComplete(Long key, Snapshot s)
     {
         int partitionCount = -1;
@@ -1377,7 +1430,7 @@ SnapshotCompletionInterest, Promotable
          * they can be set individually
          */
         Map<String, SnapshotPathType> paths = new HashMap<String, SnapshotPathType>();
-        if (VoltDB.instance().getConfig().m_isEnterprise) {
+        if (VoltDB.instance().getConfig().m_isEnterprise || FileCommandLog.ENABLED) {
             if (m_clSnapshotPath != null) {
                 paths.put(m_clSnapshotPath, SnapshotPathType.SNAP_CL);
             }
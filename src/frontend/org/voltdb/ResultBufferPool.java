@@ -0,0 +1,128 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Direct buffers for procedure results that the client interface writes to the
+ * connection as they are, instead of copying them to the heap when they leave the
+ * EE and again into the network pool when the response is serialized.
+ *
+ * Each buffer holds one table the way it goes on the wire, a length followed by
+ * the table. Buffers are bucketed by power of 2 sizes and kept for reuse up to a
+ * total. A buffer that is never released is simply left to the garbage collector.
+ */
+public class ResultBufferPool {
+
+    // leave large results of read-only single partition procedures in direct memory
+    public static final boolean ENABLED = Boolean.getBoolean("DIRECT_RESULTS");
+    // results smaller than this fit a network buffer and aren't worth it
+    public static final int MIN_SIZE = Integer.getInteger("DIRECT_RESULTS_MIN_SIZE", 1024 * 32);
+    // released buffers kept for reuse, in megabytes
+    public static final long MAX_POOLED_BYTES = Long.getLong("DIRECT_RESULTS_POOL_MB", 64) * 1024 * 1024;
+
+    private static final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<ByteBuffer>> s_buckets =
+            new ConcurrentHashMap<Integer, ConcurrentLinkedQueue<ByteBuffer>>();
+    private static final AtomicLong s_pooledBytes = new AtomicLong(0);
+
+    private static int bucketSize(int size) {
+        final int bucket = Integer.highestOneBit(size - 1) << 1;
+        return bucket < size ? size : bucket;
+    }
+
+    /**
+     * @return a buffer with its limit set to the requested size
+     */
+    static ByteBuffer acquire(int size) {
+        final int bucket = bucketSize(size);
+        ByteBuffer buf = null;
+        ConcurrentLinkedQueue<ByteBuffer> pooled = s_buckets.get(bucket);
+        if (pooled != null) {
+            buf = pooled.poll();
+        }
+        if (buf == null) {
+            buf = ByteBuffer.allocateDirect(bucket);
+        } else {
+            s_pooledBytes.addAndGet(-buf.capacity());
+        }
+        buf.clear();
+        buf.limit(size);
+        return buf;
+    }
+
+    public static void release(ByteBuffer buf) {
+        if (s_pooledBytes.addAndGet(buf.capacity()) > MAX_POOLED_BYTES) {
+            s_pooledBytes.addAndGet(-buf.capacity());
+            return;
+        }
+        ConcurrentLinkedQueue<ByteBuffer> pooled = s_buckets.get(buf.capacity());
+        if (pooled == null) {
+            pooled = new ConcurrentLinkedQueue<ByteBuffer>();
+            ConcurrentLinkedQueue<ByteBuffer> existing = s_buckets.putIfAbsent(buf.capacity(), pooled);
+            if (existing != null) {
+                pooled = existing;
+            }
+        }
+        pooled.offer(buf);
+    }
+
+    public static void release(ByteBuffer[] bufs) {
+        for (ByteBuffer buf : bufs) {
+            release(buf);
+        }
+    }
+
+    /**
+     * Copy tables that live in EE memory into pooled buffers, if all of them do and
+     * together they are at least {@link #MIN_SIZE} bytes.
+     * @param buffers receives the buffer backing each copied table
+     * @return the copied tables, or null if the tables were left alone
+     */
+    static VoltTable[] copyToPooledBuffers(VoltTable[] tables, ByteBuffer[] buffers) {
+        assert(tables.length == buffers.length);
+        long size = 0;
+        for (VoltTable table : tables) {
+            if (table == null || !table.m_buffer.isDirect()) {
+                return null;
+            }
+            size += table.getSerializedSize();
+        }
+        if (size < MIN_SIZE) {
+            return null;
+        }
+
+        final VoltTable[] copies = new VoltTable[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            final ByteBuffer data = PrivateVoltTableFactory.getTableDataReference(tables[i]);
+            final ByteBuffer buf = acquire(data.remaining() + 4);
+            buf.putInt(data.remaining());
+            buf.put(data);
+            buf.flip();
+
+            final ByteBuffer backing = buf.duplicate();
+            backing.position(4);
+            copies[i] = PrivateVoltTableFactory.createVoltTableFromBuffer(backing.slice(), true);
+            buffers[i] = buf;
+        }
+        return copies;
+    }
+}
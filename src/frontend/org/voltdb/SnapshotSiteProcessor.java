@@ -391,8 +391,13 @@ public class SnapshotSiteProcessor {
         // Table doesn't implement hashCode(), so use the table ID as key
         for (Map.Entry<Integer, byte[]> tablePredicates : makeTablesAndPredicatesToSnapshot(tasks).entrySet()) {
             int tableId = tablePredicates.getKey();
-            TableStreamer streamer =
-                    new TableStreamer(tableId, format.getStreamType(), m_snapshotTableTasks.get(tableId));
+            // All the tasks of a table come from the same plan and agree on the stream type
+            List<SnapshotTableTask> tableTasks = m_snapshotTableTasks.get(tableId);
+            TableStreamType streamType = tableTasks.get(0).m_streamType;
+            if (streamType == null) {
+                streamType = format.getStreamType();
+            }
+            TableStreamer streamer = new TableStreamer(tableId, streamType, tableTasks);
             if (!streamer.activate(context, tablePredicates.getValue())) {
                 VoltDB.crashLocalVoltDB("Failed to activate snapshot stream on table " +
                                         CatalogUtil.getTableNameFromId(context.getDatabase(), tableId), false, null);
@@ -19,6 +19,9 @@ package org.voltdb;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import org.HdrHistogram_voltpatches.WriterReaderPhaser;
 
 /**
  * Record statistics for each statement in the stored procedure.
@@ -48,205 +51,110 @@ public final class StatementStats {
         if (m_coordinatorTask == null) {
             return false;
         }
-        if (incremental) {
-            return m_coordinatorTask.m_timedInvocations - m_coordinatorTask.m_lastTimedInvocations > 0;
+        return m_coordinatorTask.samples(incremental).m_timedInvocations > 0;
+    }
+
+    /**
+     * Pick up everything recorded since the last call. Called by the stats
+     * thread before reading any of the values below.
+     */
+    public void collect() {
+        m_workerTask.collect();
+        if (m_coordinatorTask != null) {
+            m_coordinatorTask.collect();
+        }
+    }
+
+    /**
+     * Start a new interval for incremental polls, after the values of the
+     * current one have been read.
+     */
+    public void endInterval() {
+        m_workerTask.endInterval();
+        if (m_coordinatorTask != null) {
+            m_coordinatorTask.endInterval();
         }
-        return m_coordinatorTask.m_timedInvocations > 0;
     }
 
     // Below is a bunch of access functions to help merging the numbers from the coordinator task and the worker task.
+    // Each one returns either the value since the beginning, or since the last endInterval() if incremental.
     // ===============================================================================================================
 
     // m_coordinatorTask may have fewer m_invocations than m_workerTask because m_workerTask
     // failures can prevent m_coordinatorTask from further execution.
     // So m_workerTask.m_invocations is accurate for the m_invocations number of the whole statement.
-    // Same for the m_lastInvocations.
     // However, this does not mean the invocation counts for the coordinator task is useless.
     // We need to use them when calculating the min/max times and sizes. See below.
-    public long getInvocations() {
-        return m_workerTask.m_invocations;
-    }
-
-    public long getLastInvocationsAndReset() {
-        long retval = m_workerTask.m_lastInvocations;
-        m_workerTask.m_lastInvocations = m_workerTask.m_invocations;
-        if (m_coordinatorTask != null) {
-            m_coordinatorTask.m_lastInvocations = m_coordinatorTask.m_invocations;
-        }
-        return retval;
-    }
-
-    public long getTimedInvocations() {
-        return m_workerTask.m_timedInvocations;
-    }
-
-    public long getLastTimedInvocations() {
-        return m_workerTask.m_lastTimedInvocations;
+    public long getInvocations(boolean incremental) {
+        return m_workerTask.getInvocations(incremental);
     }
 
-    public long getLastTimedInvocationsAndReset() {
-        long retval = m_workerTask.m_lastTimedInvocations;
-        m_workerTask.m_lastTimedInvocations = m_workerTask.m_timedInvocations;
-        if (m_coordinatorTask != null) {
-            m_coordinatorTask.m_lastTimedInvocations = m_coordinatorTask.m_timedInvocations;
-        }
-        return retval;
+    public long getTimedInvocations(boolean incremental) {
+        return m_workerTask.samples(incremental).m_timedInvocations;
     }
 
-    public long getTotalTimedExecutionTime() {
-        return m_workerTask.m_totalTimedExecutionTime +
-                (m_coordinatorTask == null ? 0 : m_coordinatorTask.m_totalTimedExecutionTime);
-    }
-
-    public long getLastTotalTimedExecutionTimeAndReset() {
-        long retval = m_workerTask.m_lastTotalTimedExecutionTime;
-        m_workerTask.m_lastTotalTimedExecutionTime = m_workerTask.m_totalTimedExecutionTime;
+    public long getTotalTimedExecutionTime(boolean incremental) {
+        long retval = m_workerTask.samples(incremental).m_totalTimedExecutionTime;
         if (m_coordinatorTask != null) {
-            retval += m_coordinatorTask.m_lastTotalTimedExecutionTime;
-            m_coordinatorTask.m_lastTotalTimedExecutionTime = m_coordinatorTask.m_totalTimedExecutionTime;
+            retval += m_coordinatorTask.samples(incremental).m_totalTimedExecutionTime;
         }
         return retval;
     }
 
     // Notice that does min(worker + coord) == min(worker) + min(coord)?
     // The answer is NO. This is an approximation.
-    public long getMinExecutionTime() {
-        if (isCoordinatorStatsUsable(false)) {
-            return m_workerTask.m_minExecutionTime + m_coordinatorTask.m_minExecutionTime;
+    public long getMinExecutionTime(boolean incremental) {
+        if (isCoordinatorStatsUsable(incremental)) {
+            return m_workerTask.samples(incremental).m_minExecutionTime +
+                    m_coordinatorTask.samples(incremental).m_minExecutionTime;
         }
-        return m_workerTask.m_minExecutionTime;
+        return m_workerTask.samples(incremental).m_minExecutionTime;
     }
 
-    public long getIncrementalMinExecutionTimeAndReset() {
-        long retval = m_workerTask.m_incrMinExecutionTime;
-        if (isCoordinatorStatsUsable(true)) {
-            retval += m_coordinatorTask.m_incrMinExecutionTime;
-            m_coordinatorTask.m_incrMinExecutionTime = Long.MAX_VALUE;
+    public long getMaxExecutionTime(boolean incremental) {
+        if (isCoordinatorStatsUsable(incremental)) {
+            return m_workerTask.samples(incremental).m_maxExecutionTime +
+                    m_coordinatorTask.samples(incremental).m_maxExecutionTime;
         }
-        m_workerTask.m_incrMinExecutionTime = Long.MAX_VALUE;
-        return retval;
+        return m_workerTask.samples(incremental).m_maxExecutionTime;
     }
 
-    public long getMaxExecutionTime() {
-        if (isCoordinatorStatsUsable(false)) {
-            return m_workerTask.m_maxExecutionTime + m_coordinatorTask.m_maxExecutionTime;
-        }
-        return m_workerTask.m_maxExecutionTime;
-    }
-
-    public long getIncrementalMaxExecutionTimeAndReset() {
-        long retval = m_workerTask.m_incrMaxExecutionTime;
-        if (isCoordinatorStatsUsable(true)) {
-            retval += m_coordinatorTask.m_incrMaxExecutionTime;
-            m_coordinatorTask.m_incrMaxExecutionTime = Long.MIN_VALUE;
-        }
-        m_workerTask.m_incrMaxExecutionTime = Long.MIN_VALUE;
-        return retval;
-    }
-
-    public long getAbortCount() {
-        return m_workerTask.m_abortCount;
-    }
-
-    public long getLastAbortCountAndReset() {
+    public long getAbortCount(boolean incremental) {
         // Only the whole procedure can abort and the procedure stats does not have a coordinator task.
-        long retval = m_workerTask.m_lastAbortCount;
-        m_workerTask.m_lastAbortCount = m_workerTask.m_abortCount;
-        return retval;
-    }
-
-    public long getFailureCount() {
-        return m_workerTask.m_failureCount +
-                (m_coordinatorTask == null ? 0 : m_coordinatorTask.m_failureCount);
+        return m_workerTask.getAbortCount(incremental);
     }
 
-    public long getLastFailureCountAndReset() {
-        long retval = m_workerTask.m_lastFailureCount;
-        m_workerTask.m_lastFailureCount = m_workerTask.m_failureCount;
+    public long getFailureCount(boolean incremental) {
+        long retval = m_workerTask.getFailureCount(incremental);
         if (m_coordinatorTask != null) {
-            retval += m_coordinatorTask.m_lastFailureCount;
-            m_coordinatorTask.m_lastFailureCount = m_coordinatorTask.m_failureCount;
+            retval += m_coordinatorTask.getFailureCount(incremental);
         }
         return retval;
     }
 
-    public int getMinResultSize() {
-        return m_workerTask.m_minResultSize;
-    }
-
     // The result size should be taken from the final output, coming from the coordinator task.
-    public int getIncrementalMinResultSizeAndReset() {
-        int retval = m_workerTask.m_incrMinResultSize;
-        m_workerTask.m_incrMinResultSize = Integer.MAX_VALUE;
-        if (isCoordinatorStatsUsable(true)) {
-            m_coordinatorTask.m_incrMinResultSize = Integer.MAX_VALUE;
-        }
-        return retval;
-    }
-
-    public int getMaxResultSize() {
-        return m_workerTask.m_maxResultSize;
-    }
-
-    public int getIncrementalMaxResultSizeAndReset() {
-        int retval = m_workerTask.m_incrMaxResultSize;
-        m_workerTask.m_incrMaxResultSize = Integer.MIN_VALUE;
-        if (isCoordinatorStatsUsable(true)) {
-            m_coordinatorTask.m_incrMaxResultSize = Integer.MIN_VALUE;
-        }
-        return retval;
-    }
-
-    public long getTotalResultSize() {
-        return m_workerTask.m_totalResultSize;
-    }
-
-    public long getLastTotalResultSizeAndReset() {
-        long retval = m_workerTask.m_lastTotalResultSize;
-        m_workerTask.m_lastTotalResultSize = m_workerTask.m_totalResultSize;
-        if (isCoordinatorStatsUsable(true)) {
-            m_coordinatorTask.m_lastTotalResultSize = m_coordinatorTask.m_totalResultSize;
-        }
-        return retval;
+    public int getMinResultSize(boolean incremental) {
+        return m_workerTask.samples(incremental).m_minResultSize;
     }
 
-    public int getMinParameterSetSize() {
-        return m_workerTask.m_minParameterSetSize;
+    public int getMaxResultSize(boolean incremental) {
+        return m_workerTask.samples(incremental).m_maxResultSize;
     }
 
-    public int getIncrementalMinParameterSetSizeAndReset() {
-        int retval = m_workerTask.m_incrMinParameterSetSize;
-        m_workerTask.m_incrMinResultSize = Integer.MAX_VALUE;
-        if (m_coordinatorTask != null) {
-            m_coordinatorTask.m_incrMinResultSize = Integer.MAX_VALUE;
-        }
-        return retval;
+    public long getTotalResultSize(boolean incremental) {
+        return m_workerTask.samples(incremental).m_totalResultSize;
     }
 
-    public int getMaxParameterSetSize() {
-        return m_workerTask.m_maxParameterSetSize;
-    }
-
-    public int getIncrementalMaxParameterSetSizeAndReset() {
-        int retval = m_workerTask.m_incrMaxParameterSetSize;
-        m_workerTask.m_incrMaxResultSize = Integer.MIN_VALUE;
-        if (m_coordinatorTask != null) {
-            m_coordinatorTask.m_incrMaxResultSize = Integer.MIN_VALUE;
-        }
-        return retval;
+    public int getMinParameterSetSize(boolean incremental) {
+        return m_workerTask.samples(incremental).m_minParameterSetSize;
     }
 
-    public long getTotalParameterSetSize() {
-        return m_workerTask.m_totalParameterSetSize;
+    public int getMaxParameterSetSize(boolean incremental) {
+        return m_workerTask.samples(incremental).m_maxParameterSetSize;
     }
 
-    public long getLastTotalParameterSetSizeAndReset() {
-        long retval = m_workerTask.m_lastTotalParameterSetSize;
-        m_workerTask.m_lastTotalParameterSetSize = m_workerTask.m_totalParameterSetSize;
-        if (m_coordinatorTask != null) {
-            m_coordinatorTask.m_lastTotalParameterSetSize = m_coordinatorTask.m_totalParameterSetSize;
-        }
-        return retval;
+    public long getTotalParameterSetSize(boolean incremental) {
+        return m_workerTask.samples(incremental).m_totalParameterSetSize;
     }
 
     /**
@@ -254,7 +162,7 @@ public final class StatementStats {
      * It collects stats information during the procedure run without needing
      * to touch the actual stats source.
      * When the procedure is done (commit/abort/whatever), this token is given
-     * to the ProcedureStatsCollector in a single (thread-safe) call.
+     * to the ProcedureStatsCollector in a single call.
      *
      */
     public static final class SingleCallStatsToken {
@@ -363,83 +271,200 @@ public final class StatementStats {
         }
     }
 
+    /**
+     * Statistics of the worker or the coordinator task of a statement, or of the whole procedure.
+     *
+     * There is a single writer, the site thread running the procedure (the stats collector
+     * serializes the writers of NT procedures), and the stats thread reads without ever
+     * blocking it. Counters bumped on every invocation are drained by the reader with a
+     * single getAndSet, so an invocation is counted in exactly one interval. Sampled measurements are recorded into an interval that the reader swaps for an
+     * empty one using a WriterReaderPhaser, the way HdrHistogram's recorders hand over
+     * interval histograms, and then folds into the totals.
+     */
     static final class StatsData {
-        /**
-         * Number of times this procedure has been invoked.
-         */
-        long m_invocations = 0;
-        long m_lastInvocations = 0;
+        private static final AtomicLongFieldUpdater<StatsData> INVOCATIONS =
+                AtomicLongFieldUpdater.newUpdater(StatsData.class, "m_invocations");
+        private static final AtomicLongFieldUpdater<StatsData> ABORTS =
+                AtomicLongFieldUpdater.newUpdater(StatsData.class, "m_abortCount");
+        private static final AtomicLongFieldUpdater<StatsData> FAILURES =
+                AtomicLongFieldUpdater.newUpdater(StatsData.class, "m_failureCount");
 
         /**
-         * Number of timed invocations
+         * Number of times this procedure or statement has been invoked since the last collect()
          */
-        long m_timedInvocations = 0;
-        long m_lastTimedInvocations = 0;
+        private volatile long m_invocations = 0;
 
         /**
-         * Total amount of timed execution time
+         * Count of the number of aborts (user initiated or DB initiated) since the last collect()
          */
-        long m_totalTimedExecutionTime = 0;
-        long m_lastTotalTimedExecutionTime = 0;
+        private volatile long m_abortCount = 0;
 
         /**
-         * Shortest amount of time this procedure has executed in
+         * Count of the number of errors that occurred during execution since the last collect()
          */
-        long m_minExecutionTime = Long.MAX_VALUE;
-        long m_incrMinExecutionTime = Long.MAX_VALUE;
+        private volatile long m_failureCount = 0;
+
+        private final WriterReaderPhaser m_phaser = new WriterReaderPhaser();
+        private volatile Samples m_activeSamples = new Samples();
+
+        // Only touched by the reader, under the stats source monitor
+        private Samples m_inactiveSamples = new Samples();
+        private final Samples m_totalSamples = new Samples();
+        private final Samples m_intervalSamples = new Samples();
+        private long m_totalInvocations = 0;
+        private long m_totalAbortCount = 0;
+        private long m_totalFailureCount = 0;
+        private long m_intervalInvocations = 0;
+        private long m_intervalAbortCount = 0;
+        private long m_intervalFailureCount = 0;
+
+        void recordInvocation(boolean aborted, boolean failed) {
+            if (aborted) {
+                ABORTS.incrementAndGet(this);
+            }
+            if (failed) {
+                FAILURES.incrementAndGet(this);
+            }
+            INVOCATIONS.incrementAndGet(this);
+        }
 
-        /**
-         * Longest amount of time this procedure has executed in
-         */
-        long m_maxExecutionTime = Long.MIN_VALUE;
-        long m_incrMaxExecutionTime = Long.MIN_VALUE;
+        void recordSample(long duration, int resultSize, int parameterSetSize) {
+            final long criticalValue = m_phaser.writerCriticalSectionEnter();
+            try {
+                m_activeSamples.add(duration, resultSize, parameterSetSize);
+            } finally {
+                m_phaser.writerCriticalSectionExit(criticalValue);
+            }
+        }
 
-        /**
-         * Count of the number of aborts (user initiated or DB initiated)
-         */
-        long m_abortCount = 0;
-        long m_lastAbortCount = 0;
+        void collect() {
+            m_phaser.readerLock();
+            try {
+                m_inactiveSamples.reset();
+                final Samples recorded = m_activeSamples;
+                m_activeSamples = m_inactiveSamples;
+                // wait for a writer that may still be adding to the old samples
+                m_phaser.flipPhase();
+                m_inactiveSamples = recorded;
+            } finally {
+                m_phaser.readerUnlock();
+            }
+            m_totalSamples.merge(m_inactiveSamples);
+            m_intervalSamples.merge(m_inactiveSamples);
+
+            final long invocations = INVOCATIONS.getAndSet(this, 0);
+            m_totalInvocations += invocations;
+            m_intervalInvocations += invocations;
+            final long aborts = ABORTS.getAndSet(this, 0);
+            m_totalAbortCount += aborts;
+            m_intervalAbortCount += aborts;
+            final long failures = FAILURES.getAndSet(this, 0);
+            m_totalFailureCount += failures;
+            m_intervalFailureCount += failures;
+        }
 
-        /**
-         * Count of the number of errors that occurred during procedure execution
-         */
-        long m_failureCount = 0;
-        long m_lastFailureCount = 0;
+        void endInterval() {
+            m_intervalSamples.reset();
+            m_intervalInvocations = 0;
+            m_intervalAbortCount = 0;
+            m_intervalFailureCount = 0;
+        }
 
-        /**
-         * Smallest result size
-         */
-        int m_minResultSize = Integer.MAX_VALUE;
-        int m_incrMinResultSize = Integer.MAX_VALUE;
+        Samples samples(boolean incremental) {
+            return incremental ? m_intervalSamples : m_totalSamples;
+        }
+
+        long getInvocations(boolean incremental) {
+            return incremental ? m_intervalInvocations : m_totalInvocations;
+        }
+
+        long getAbortCount(boolean incremental) {
+            return incremental ? m_intervalAbortCount : m_totalAbortCount;
+        }
+
+        long getFailureCount(boolean incremental) {
+            return incremental ? m_intervalFailureCount : m_totalFailureCount;
+        }
+    }
 
+    /**
+     * Timings and sizes of sampled invocations.
+     */
+    static final class Samples {
         /**
-         * Largest result size
+         * Number of timed invocations
          */
-        int m_maxResultSize = Integer.MIN_VALUE;
-        int m_incrMaxResultSize = Integer.MIN_VALUE;
+        long m_timedInvocations;
 
         /**
-         * Total result size for calculating averages
+         * Total amount of timed execution time
          */
-        long m_totalResultSize = 0;
-        long m_lastTotalResultSize = 0;
+        long m_totalTimedExecutionTime;
 
         /**
-         * Smallest parameter set size
+         * Shortest and longest amount of time this procedure has executed in
          */
-        int m_minParameterSetSize = Integer.MAX_VALUE;
-        int m_incrMinParameterSetSize = Integer.MAX_VALUE;
+        long m_minExecutionTime;
+        long m_maxExecutionTime;
 
         /**
-         * Largest parameter set size
+         * Result sizes, the total is for calculating averages
          */
-        int m_maxParameterSetSize = Integer.MIN_VALUE;
-        int m_incrMaxParameterSetSize = Integer.MIN_VALUE;
+        int m_minResultSize;
+        int m_maxResultSize;
+        long m_totalResultSize;
 
         /**
-         * Total parameter set size for calculating averages
+         * Parameter set sizes, the total is for calculating averages
          */
-        long m_totalParameterSetSize = 0;
-        long m_lastTotalParameterSetSize = 0;
+        int m_minParameterSetSize;
+        int m_maxParameterSetSize;
+        long m_totalParameterSetSize;
+
+        Samples() {
+            reset();
+        }
+
+        void reset() {
+            m_timedInvocations = 0;
+            m_totalTimedExecutionTime = 0;
+            m_minExecutionTime = Long.MAX_VALUE;
+            m_maxExecutionTime = Long.MIN_VALUE;
+            m_minResultSize = Integer.MAX_VALUE;
+            m_maxResultSize = Integer.MIN_VALUE;
+            m_totalResultSize = 0;
+            m_minParameterSetSize = Integer.MAX_VALUE;
+            m_maxParameterSetSize = Integer.MIN_VALUE;
+            m_totalParameterSetSize = 0;
+        }
+
+        void add(long duration, int resultSize, int parameterSetSize) {
+            m_timedInvocations++;
+            m_totalTimedExecutionTime += duration;
+            m_minExecutionTime = Math.min(duration, m_minExecutionTime);
+            m_maxExecutionTime = Math.max(duration, m_maxExecutionTime);
+            m_totalResultSize += resultSize;
+            m_minResultSize = Math.min(resultSize, m_minResultSize);
+            m_maxResultSize = Math.max(resultSize, m_maxResultSize);
+            m_totalParameterSetSize += parameterSetSize;
+            m_minParameterSetSize = Math.min(parameterSetSize, m_minParameterSetSize);
+            m_maxParameterSetSize = Math.max(parameterSetSize, m_maxParameterSetSize);
+        }
+
+        void merge(Samples other) {
+            if (other.m_timedInvocations == 0) {
+                return;
+            }
+            m_timedInvocations += other.m_timedInvocations;
+            m_totalTimedExecutionTime += other.m_totalTimedExecutionTime;
+            m_minExecutionTime = Math.min(other.m_minExecutionTime, m_minExecutionTime);
+            m_maxExecutionTime = Math.max(other.m_maxExecutionTime, m_maxExecutionTime);
+            m_totalResultSize += other.m_totalResultSize;
+            m_minResultSize = Math.min(other.m_minResultSize, m_minResultSize);
+            m_maxResultSize = Math.max(other.m_maxResultSize, m_maxResultSize);
+            m_totalParameterSetSize += other.m_totalParameterSetSize;
+            m_minParameterSetSize = Math.min(other.m_minParameterSetSize, m_minParameterSetSize);
+            m_maxParameterSetSize = Math.max(other.m_maxParameterSetSize, m_maxParameterSetSize);
+        }
     }
 }
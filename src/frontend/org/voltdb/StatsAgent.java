@@ -507,6 +507,16 @@ public class StatsAgent extends OpsAgent
         case IOSTATS:
             stats = collectStats(StatsSelector.IOSTATS, interval);
             break;
+        case MESSAGEBATCH:
+            stats = collectStats(StatsSelector.MESSAGEBATCH, interval);
+            break;
+        case NTSCHEDULER:
+            stats = collectStats(StatsSelector.NTSCHEDULER, interval);
+            break;
+        case REJOIN:
+        case JOIN: // synonym of REJOIN
+            stats = collectStats(StatsSelector.REJOIN, interval);
+            break;
         case INITIATOR:
             stats = collectStats(StatsSelector.INITIATOR, interval);
             break;
@@ -529,6 +539,15 @@ public class StatsAgent extends OpsAgent
         case PLANNER:
             stats = collectStats(StatsSelector.PLANNER, interval);
             break;
+        case ADHOCPLANNER:
+            stats = collectStats(StatsSelector.ADHOCPLANNER, interval);
+            break;
+        case PLANNERCACHE:
+            stats = collectStats(StatsSelector.PLANNERCACHE, interval);
+            break;
+        case RESULTCACHE:
+            stats = collectStats(StatsSelector.RESULTCACHE, interval);
+            break;
         case LIVECLIENTS:
             stats = collectStats(StatsSelector.LIVECLIENTS, interval);
             break;
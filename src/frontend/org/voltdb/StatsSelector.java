@@ -26,15 +26,20 @@ public enum StatsSelector {
     LATENCY_HISTOGRAM,
     PARTITIONCOUNT,
     IOSTATS,
+    MESSAGEBATCH,     // how messages to each foreign host are coalesced into frames
     MEMORY,           // info about node's memory usage
     LIVECLIENTS,      // info about the currently connected clients
     PLANNER,          // info about planner and EE performance and cache usage
+    ADHOCPLANNER,     // queue depth and timings of the ad hoc planner workers
+    PLANNERCACHE,     // entries, hits, misses and evictions of the ad hoc plan caches
+    RESULTCACHE,      // entries, hits, misses and invalidations of the procedure result cache
     MANAGEMENT,       // Returns pretty much everything
     PROCEDUREPROFILE, // performs an aggregation of the procedure statistics
     SNAPSHOTSTATUS,
     PROCEDUREINPUT,
     PROCEDUREOUTPUT,
     PROCEDUREDETAIL,  // provides more granular statistics for procedure calls at a per-statement level.
+    NTSCHEDULER,      // running, queued and rejected NT procedure invocations and their queue wait times
 
     /*
      * DRPRODUCERPARTITION and DRPRODUCERNODE are internal names
@@ -53,6 +58,8 @@ public enum StatsSelector {
 
     TOPO,           // return leader and site info for iv2
     REBALANCE,      // return elastic rebalance progress
+    REJOIN,         // return progress of the stream snapshots sent to rejoining and joining nodes
+    JOIN,           // synonym of REJOIN
     KSAFETY,        // return ksafety coverage information
     CPU,            // return CPU Stats
     GC,             // return GC Stats
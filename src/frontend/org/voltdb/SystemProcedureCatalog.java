@@ -191,6 +191,9 @@ public class SystemProcedureCatalog {
         builder.put("@CheckUpgradePlanNT",      new Config("org.voltdb.sysprocs.CheckUpgradePlanNT",       true,  false, false, 0,    VoltType.INVALID,   true,  false, true,  true,      false,  false,            false ));
         builder.put("@PrerequisitesCheckNT",    new Config("org.voltdb.sysprocs.CheckUpgradePlanNT$PrerequisitesCheckNT",
                                                                                                            false, false, false, 0,    VoltType.INVALID,   true,  false, true,  true,      false,  false,            false ));
+        builder.put("@AnalyzeTable",            new Config("org.voltdb.sysprocs.AnalyzeTable",             true,  false, false, 0,    VoltType.INVALID,   false, false, true,  true,      false,  false,            false ));
+        builder.put("@StorePlannerStatisticsNT",new Config("org.voltdb.sysprocs.AnalyzeTable$StorePlannerStatisticsNT",
+                                                                                                           false, false, false, 0,    VoltType.INVALID,   false, false, true,  true,      false,  false,            false ));
         listing = builder.build();
     }
 }
@@ -0,0 +1,115 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.zookeeper_voltpatches.KeeperException;
+import org.apache.zookeeper_voltpatches.ZooKeeper;
+import org.apache.zookeeper_voltpatches.data.Stat;
+import org.json_voltpatches.JSONException;
+import org.voltcore.logging.VoltLogger;
+import org.voltdb.client.BatchTimeoutOverrideType;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+import org.voltdb.compiler.TableStatistics;
+
+/**
+ * Periodically refreshes the planner statistics by calling @AnalyzeTable for all
+ * tables. Every host schedules it, but only the leader of the service runs it, the
+ * procedure itself distributes the statistics to all hosts. A host that starts
+ * or rejoins picks up the last statistics from ZooKeeper.
+ */
+public class TableStatisticsMonitor implements Runnable, Promotable
+{
+    private static final VoltLogger m_logger = new VoltLogger("HOST");
+
+    // seconds between two analyze runs, 0 disables the periodic analyze
+    public static final int ANALYZE_INTERVAL_SECONDS = Integer.getInteger("ANALYZE_INTERVAL_SECONDS", 0);
+
+    private volatile boolean m_isLeader = false;
+    // the previous run has not completed yet, e.g. a slow scan of a large table
+    private final AtomicBoolean m_running = new AtomicBoolean(false);
+
+    /**
+     * @return the statistics last stored by @AnalyzeTable, empty if there are none
+     */
+    public static TableStatistics readStoredStatistics(ZooKeeper zk, Stat stat)
+            throws KeeperException, InterruptedException {
+        byte[] data = zk.getData(VoltZK.planner_statistics, false, stat);
+        if (data == null || data.length == 0) {
+            return TableStatistics.EMPTY;
+        }
+        try {
+            return TableStatistics.fromVoltTable(VoltTable.fromJSONString(new String(data, StandardCharsets.UTF_8)));
+        } catch (JSONException | IOException e) {
+            m_logger.warn("Ignoring unreadable planner statistics: " + e.getMessage());
+            return TableStatistics.EMPTY;
+        }
+    }
+
+    /**
+     * Plan with the statistics analyzed before this host started.
+     */
+    public static void loadStoredStatistics(ZooKeeper zk, CatalogContext context) {
+        try {
+            Stat stat = new Stat();
+            TableStatistics statistics = readStoredStatistics(zk, stat);
+            if (!statistics.isEmpty()) {
+                context.setTableStatistics(stat.getVersion(), statistics);
+            }
+        } catch (KeeperException | InterruptedException e) {
+            m_logger.warn("Unable to read the planner statistics, planning without them: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void acceptPromotion()
+    {
+        m_isLeader = true;
+    }
+
+    @Override
+    public void run()
+    {
+        if (!m_isLeader || VoltDB.instance().getMode() != OperationMode.RUNNING) {
+            return;
+        }
+        if (!m_running.compareAndSet(false, true)) {
+            return;
+        }
+
+        ProcedureCallback cb = new ProcedureCallback() {
+            @Override
+            public void clientCallback(ClientResponse response) {
+                m_running.set(false);
+                if (response.getStatus() != ClientResponse.SUCCESS) {
+                    m_logger.warn("Unable to analyze tables for the planner: " + response.getStatusString());
+                }
+            }
+        };
+        InternalConnectionHandler handler = VoltDB.instance().getClientInterface().getInternalConnectionHandler();
+        if (!handler.callProcedure(VoltDB.instance().getCatalogContext().authSystem.getInternalAdminUser(), true,
+                BatchTimeoutOverrideType.NO_TIMEOUT, cb, "@AnalyzeTable", "")) {
+            m_running.set(false);
+            m_logger.warn("Unable to analyze tables for the planner: failed to invoke @AnalyzeTable");
+        }
+    }
+}
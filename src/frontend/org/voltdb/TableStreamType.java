@@ -43,6 +43,16 @@ public enum TableStreamType {
      * Activation clears the index and the referenced tuples.
      */
     ELASTIC_INDEX_CLEAR,
+    /*
+     * An incremental snapshot stream. Same copy on write mechanism as SNAPSHOT, but
+     * only the tuple blocks modified since the previous incremental snapshot of the
+     * table are streamed, one block per chunk, after a manifest of all the blocks.
+     */
+    SNAPSHOT_DELTA,
+    /*
+     * An incremental snapshot stream that includes every block, the start of a chain.
+     */
+    SNAPSHOT_DELTA_BASE,
     /*
      * A stream of tuple data that can be used to retrieve the latest state of a table
      * that is actively being modified. The stream starts by transporting all the tuple data
@@ -25,6 +25,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.voltcore.messaging.HostMessenger;
 import org.voltcore.utils.Pair;
+import org.voltdb.compiler.AsyncCompilerAgent;
 import org.voltdb.compiler.deploymentfile.DeploymentType;
 import org.voltdb.compiler.deploymentfile.PathsType;
 import org.voltdb.dtxn.SiteTracker;
@@ -119,6 +120,7 @@ public interface VoltDBInterface
     public String getEELibraryVersionString();
     public HostMessenger getHostMessenger();
     public ClientInterface getClientInterface();
+    public AsyncCompilerAgent getAsyncCompilerAgent();
     public OpsAgent getOpsAgent(OpsSelector selector);
     // Keep this method to centralize the cast to StatsAgent for
     // existing code
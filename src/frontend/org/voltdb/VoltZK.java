@@ -125,6 +125,9 @@ public class VoltZK {
     // Shutdown save snapshot guard
     public static final String shutdown_save_guard = "/db/shutdown_save_guard";
 
+    // Planner statistics gathered by @AnalyzeTable, as a JSON VoltTable
+    public static final String planner_statistics = "/db/planner_statistics";
+
     // Persistent nodes (mostly directories) to create on startup
     public static final String[] ZK_HIERARCHY = {
             root,
@@ -142,7 +145,8 @@ public class VoltZK {
             settings_base,
             cluster_settings,
             catalogUpdateBlockers,
-            request_truncation_snapshot
+            request_truncation_snapshot,
+            planner_statistics
     };
 
     /**
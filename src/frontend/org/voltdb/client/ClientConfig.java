@@ -67,6 +67,7 @@ public class ClientConfig {
     boolean m_sendReadsToReplicasBytDefaultIfCAEnabled = false;
     SslConfig m_sslConfig;
     boolean m_topologyChangeAware = false;
+    boolean m_batchRequests = false;
     boolean m_enableSSL = false;
     String m_sslPropsFile = null;
 
@@ -363,6 +364,18 @@ public class ClientConfig {
         m_topologyChangeAware = enabled;
     }
 
+    /**
+     * <p>Route invocations to connections without a client wide lock, and coalesce the invocations
+     * queued for each connection into a single network write. This helps clients that submit
+     * asynchronous invocations from many threads at high rates. Callbacks are invoked the same way
+     * as without batching.</p>
+     * <p>Defaults to false.</p>
+     * @param on Enable or disable request batching.
+     */
+    public void setRequestBatching(boolean on) {
+        m_batchRequests = on;
+    }
+
     /**
      * <p>By default, reads are sent to the leader replica for each partition. This
      * is usually optimal for the default read consistency value, SAFE. If you are
@@ -34,6 +34,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
@@ -62,7 +63,9 @@ import org.voltcore.network.QueueMonitor;
 import org.voltcore.network.VoltNetworkPool;
 import org.voltcore.network.VoltNetworkPool.IOStatsIntf;
 import org.voltcore.network.VoltProtocolHandler;
+import org.voltcore.utils.ConcurrentLongObjectHashMap;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DeferredSerialization;
 import org.voltcore.utils.Pair;
 import org.voltcore.utils.ssl.SSLConfiguration;
 import org.voltdb.ClientResponseImpl;
@@ -110,7 +113,7 @@ class Distributer {
     private final SSLContext m_sslContext;
 
     // Temporary until a distribution/affinity algorithm is written
-    private int m_nextConnection = 0;
+    private final AtomicInteger m_nextConnection = new AtomicInteger(0);
 
     private final boolean m_useMultipleThreads;
     private final boolean m_useClientAffinity;
@@ -148,8 +151,8 @@ class Distributer {
     private final long m_procedureCallTimeoutNanos;
     private static final long MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS = 30 * 60 * 1000; // 30 minutes
     private final long m_connectionResponseTimeoutNanos;
-    private final Map<Integer, ClientAffinityStats> m_clientAffinityStats =
-        new HashMap<>();
+    private final ConcurrentMap<Integer, ClientAffinityStats> m_clientAffinityStats =
+        new ConcurrentHashMap<>();
 
     public final RateLimiter m_rateLimiter = new RateLimiter();
 
@@ -157,6 +160,44 @@ class Distributer {
     private AtomicBoolean m_createConnectionUponTopoChangeInProgress = new AtomicBoolean(false);
     private boolean m_topologyChangeAware;
 
+    // Route invocations without the distributer lock and coalesce them into one write per connection
+    private boolean m_batchRequests = false;
+    // A batched write stops growing at this many bytes
+    static final int MAX_BATCHED_WRITE_BYTES = Integer.getInteger("CLIENT_MAX_BATCHED_WRITE_BYTES", 16 * 1024);
+
+    /**
+     * The connections and the client affinity routing state, replaced as a whole under the
+     * distributer lock whenever any of it changes so invocations can be routed from a
+     * consistent copy without holding the lock.
+     */
+    private static final class Routing {
+        final NodeConnection[] connections;
+        final HashinatorLite hashinator;
+        final Map<Integer, NodeConnection> partitionMasters;
+        final Map<Integer, NodeConnection[]> partitionReplicas;
+
+        Routing(NodeConnection[] connections,
+                HashinatorLite hashinator,
+                Map<Integer, NodeConnection> partitionMasters,
+                Map<Integer, NodeConnection[]> partitionReplicas) {
+            this.connections = connections;
+            this.hashinator = hashinator;
+            this.partitionMasters = partitionMasters;
+            this.partitionReplicas = partitionReplicas;
+        }
+    }
+
+    private volatile Routing m_routing = new Routing(new NodeConnection[0], null,
+            Collections.<Integer, NodeConnection>emptyMap(), Collections.<Integer, NodeConnection[]>emptyMap());
+
+    // Must be called holding the distributer lock after changing any of the routing state
+    private void updateRouting() {
+        m_routing = new Routing(m_connections.toArray(new NodeConnection[0]),
+                m_hashinator,
+                new HashMap<>(m_partitionMasters),
+                new HashMap<>(m_partitionReplicas));
+    }
+
     //private final Timer m_timer;
     private final ScheduledExecutorService m_ex =
         Executors.newSingleThreadScheduledExecutor(
@@ -346,9 +387,12 @@ class Distributer {
                     }
 
                     // for each outstanding procedure
-                    for (final Map.Entry<Long, CallbackBookeeping> e : c.m_callbacks.entrySet()) {
-                        final long handle = e.getKey();
-                        final CallbackBookeeping cb = e.getValue();
+                    for (final long handle : c.m_callbacks.keys()) {
+                        final CallbackBookeeping cb = c.m_callbacks.get(handle);
+                        if (cb == null) {
+                            // completed since the keys were copied
+                            continue;
+                        }
 
                         // if the timeout is expired, call the callback and remove the
                         // bookeeping data
@@ -407,11 +451,17 @@ class Distributer {
 
     class NodeConnection extends VoltProtocolHandler implements org.voltcore.network.QueueMonitor {
         private final AtomicInteger m_callbacksToInvoke = new AtomicInteger(0);
-        private final ConcurrentMap<Long, CallbackBookeeping> m_callbacks = new ConcurrentHashMap<>();
+        private final ConcurrentLongObjectHashMap<CallbackBookeeping> m_callbacks =
+                new ConcurrentLongObjectHashMap<CallbackBookeeping>();
         private final NonBlockingHashMap<String, ClientStats> m_stats = new NonBlockingHashMap<>();
         private Connection m_connection;
         private volatile boolean m_isConnected = true;
 
+        // Serialized invocations waiting for the next batched write, if requests are batched
+        private final ConcurrentLinkedQueue<ByteBuffer> m_pendingWrites = new ConcurrentLinkedQueue<>();
+        // true while a batched write is queued and will pick up newly pending invocations
+        private final AtomicBoolean m_writeScheduled = new AtomicBoolean(false);
+
         volatile long m_lastResponseTimeNanos = System.nanoTime();
         boolean m_outstandingPing = false;
         ClientStatusListenerExt.DisconnectCause m_closeCause = DisconnectCause.CONNECTION_CLOSED;
@@ -500,7 +550,69 @@ class Distributer {
                 m_rateLimiter.transactionResponseReceived(nowNanos, -1, ignoreBackpressure);
                 return;
             } else {
+                write(c);
+            }
+        }
+
+        /*
+         * Without batching every invocation is queued in the write stream on its own. With batching
+         * only the first invocation since the last write queues a BatchedWrite, the others are
+         * picked up by it when the network thread serializes it.
+         */
+        private void write(ByteBuffer c) {
+            if (!m_batchRequests) {
                 m_connection.writeStream().enqueue(c);
+                return;
+            }
+            m_pendingWrites.offer(c);
+            if (m_writeScheduled.compareAndSet(false, true)) {
+                m_connection.writeStream().enqueue(new BatchedWrite());
+            }
+        }
+
+        /**
+         * Copies the invocations pending for this connection into a single write.
+         * The server reads them as the usual stream of length prefixed invocations.
+         */
+        private class BatchedWrite implements DeferredSerialization {
+            private final ArrayList<ByteBuffer> m_writes = new ArrayList<>();
+
+            // Called on the network thread right before serialize()
+            @Override
+            public int getSerializedSize() {
+                // Let the next invocation schedule a new write before taking what is pending,
+                // so nothing is left behind without a write to carry it
+                m_writeScheduled.set(false);
+                int bytes = 0;
+                ByteBuffer pending;
+                while ((pending = m_pendingWrites.peek()) != null) {
+                    if (!m_writes.isEmpty() && bytes + pending.remaining() > MAX_BATCHED_WRITE_BYTES) {
+                        break;
+                    }
+                    m_pendingWrites.poll();
+                    m_writes.add(pending);
+                    bytes += pending.remaining();
+                }
+                if (!m_pendingWrites.isEmpty() && m_writeScheduled.compareAndSet(false, true)) {
+                    // The write filled up, the rest goes in the next one
+                    m_connection.writeStream().enqueue(new BatchedWrite());
+                }
+                return m_writes.isEmpty() ? EMPTY_MESSAGE_LENGTH : bytes;
+            }
+
+            @Override
+            public void serialize(ByteBuffer outbuf) throws IOException {
+                for (ByteBuffer buf : m_writes) {
+                    outbuf.put(buf);
+                }
+            }
+
+            @Override
+            public void cancel() {}
+
+            @Override
+            public String toString() {
+                return "Batch of " + m_writes.size() + " invocations";
             }
         }
 
@@ -786,6 +898,7 @@ class Distributer {
                 }
 
                 m_connections.remove(this);
+                updateRouting();
                 //Notify listeners that a connection has been lost
                 for (ClientStatusListenerExt s : m_listeners) {
                     s.connectionLost(
@@ -828,12 +941,12 @@ class Distributer {
                         ClientResponse.CONNECTION_LOST, new VoltTable[0],
                         "Connection to database host (" + m_connection.getHostnameAndIPAndPort() +
                 ") was lost before a response was received");
-            for (Map.Entry<Long, CallbackBookeeping> e : m_callbacks.entrySet()) {
+            for (long handle : m_callbacks.keys()) {
                 //Check for race with other threads
-                if (m_callbacks.remove(e.getKey()) == null) {
+                final CallbackBookeeping callBk = m_callbacks.remove(handle);
+                if (callBk == null) {
                     continue;
                 }
-                final CallbackBookeeping callBk = e.getValue();
                 try {
                     callBk.callback.clientCallback(r);
                 }
@@ -1036,6 +1149,7 @@ class Distributer {
             m_buildString = (String)socketChannelAndInstanceIdAndBuildString[2];
 
             m_connections.add(cxn);
+            updateRouting();
         }
 
         if (m_useClientAffinity) {
@@ -1132,85 +1246,141 @@ class Distributer {
         assert(invocation != null);
         assert(cb != null);
 
+        NodeConnection cxn;
+        if (m_batchRequests) {
+            // Route from the current copy of the routing state, only take the lock to tell
+            // the listeners about backpressure
+            cxn = route(invocation, ignoreBackpressure, m_routing);
+            if (cxn == null) {
+                synchronized (this) {
+                    for (ClientStatusListenerExt s : m_listeners) {
+                        s.backpressure(true);
+                    }
+                }
+            }
+        }
+        else {
+            /*
+             * Synchronization is necessary to ensure that m_connections is not modified
+             * as well as to ensure that backpressure is reported correctly
+             */
+            synchronized (this) {
+                cxn = route(invocation, ignoreBackpressure, m_routing);
+                if (cxn == null) {
+                    for (ClientStatusListenerExt s : m_listeners) {
+                        s.backpressure(true);
+                    }
+                }
+            }
+        }
+
+        /*
+         * Do the heavy weight serialization outside the synchronized block.
+         * createWork synchronizes on an individual connection which allows for more concurrency
+         */
+        if (cxn != null) {
+            ByteBuffer buf = null;
+            try {
+                buf = serializeSPI(invocation);
+            } catch (Exception e) {
+                Throwables.throwIfUnchecked(e);
+                throw new RuntimeException(e);
+            }
+            cxn.createWork(nowNanos, invocation.getHandle(), invocation.getProcName(), buf, cb, ignoreBackpressure, timeoutNanos);
+        }
+        if (m_topologyChangeAware) {
+            createConnectionsUponTopologyChange();
+        }
+        return cxn != null;
+    }
+
+    /**
+     * Pick the connection to send an invocation to: the partition master or a replica if client
+     * affinity knows the partition, else the next connection without backpressure.
+     * @return the connection, or null if all candidate connections have backpressure
+     * @throws NoConnectionsException
+     */
+    private NodeConnection route(ProcedureInvocation invocation, boolean ignoreBackpressure, Routing routing)
+            throws NoConnectionsException {
         NodeConnection cxn = null;
         boolean backpressure = true;
 
+        final int totalConnections = routing.connections.length;
+
+        if (totalConnections == 0) {
+            throw new NoConnectionsException("No connections.");
+        }
+
         /*
-         * Synchronization is necessary to ensure that m_connections is not modified
-         * as well as to ensure that backpressure is reported correctly
+         * Check if the master for the partition is known. No back pressure check to ensure correct
+         * routing, but backpressure will be managed anyways. This is where we guess partition based on client
+         * affinity and known topology (hashinator initialized).
          */
-        synchronized (this) {
-            final int totalConnections = m_connections.size();
-
-            if (totalConnections == 0) {
-                throw new NoConnectionsException("No connections.");
+        if (m_useClientAffinity && (routing.hashinator != null)) {
+            final ImmutableSortedMap<String, Procedure> procedures = m_procedureInfo.get();
+            Procedure procedureInfo = null;
+            if (procedures != null) {
+                procedureInfo = procedures.get(invocation.getProcName());
             }
-
-            /*
-             * Check if the master for the partition is known. No back pressure check to ensure correct
-             * routing, but backpressure will be managed anyways. This is where we guess partition based on client
-             * affinity and known topology (hashinator initialized).
-             */
-            if (m_useClientAffinity && (m_hashinator != null)) {
-                final ImmutableSortedMap<String, Procedure> procedures = m_procedureInfo.get();
-                Procedure procedureInfo = null;
-                if (procedures != null) {
-                    procedureInfo = procedures.get(invocation.getProcName());
+            Integer hashedPartition = -1;
+
+            if (procedureInfo != null) {
+                hashedPartition = Constants.MP_INIT_PID;
+                if (( ! procedureInfo.multiPart) &&
+                    // User may have passed too few parameters to allow dispatching.
+                    // Avoid an indexing error here to fall through to the proper ProcCallException.
+                        (procedureInfo.partitionParameter < invocation.getPassedParamCount())) {
+                    hashedPartition = routing.hashinator.getHashedPartitionForParameter(
+                            procedureInfo.partitionParameterType,
+                            invocation.getPartitionParamValue(procedureInfo.partitionParameter));
                 }
-                Integer hashedPartition = -1;
-
-                if (procedureInfo != null) {
-                    hashedPartition = Constants.MP_INIT_PID;
-                    if (( ! procedureInfo.multiPart) &&
-                        // User may have passed too few parameters to allow dispatching.
-                        // Avoid an indexing error here to fall through to the proper ProcCallException.
-                            (procedureInfo.partitionParameter < invocation.getPassedParamCount())) {
-                        hashedPartition = m_hashinator.getHashedPartitionForParameter(
-                                procedureInfo.partitionParameterType,
-                                invocation.getPartitionParamValue(procedureInfo.partitionParameter));
-                    }
-                    /*
-                     * If the procedure is read only and single part and the user wants it, load balance across replicas
-                     * This is probably slower for SAFE consistency.
-                     */
-                    if (!procedureInfo.multiPart && procedureInfo.readOnly && m_sendReadsToReplicasBytDefaultIfCAEnabled) {
-                        NodeConnection partitionReplicas[] = m_partitionReplicas.get(hashedPartition);
-                        if (partitionReplicas != null && partitionReplicas.length > 0) {
-                            cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
-                            if (cxn.hadBackPressure()) {
-                                //See if there is one without backpressure, make sure it's still connected
-                                for (NodeConnection nc : partitionReplicas) {
-                                    if (!nc.hadBackPressure() && nc.m_isConnected) {
-                                        cxn = nc;
-                                        break;
-                                    }
+                /*
+                 * If the procedure is read only and single part and the user wants it, load balance across replicas
+                 * This is probably slower for SAFE consistency.
+                 */
+                if (!procedureInfo.multiPart && procedureInfo.readOnly && m_sendReadsToReplicasBytDefaultIfCAEnabled) {
+                    NodeConnection partitionReplicas[] = routing.partitionReplicas.get(hashedPartition);
+                    if (partitionReplicas != null && partitionReplicas.length > 0) {
+                        cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
+                        if (cxn.hadBackPressure()) {
+                            //See if there is one without backpressure, make sure it's still connected
+                            for (NodeConnection nc : partitionReplicas) {
+                                if (!nc.hadBackPressure() && nc.m_isConnected) {
+                                    cxn = nc;
+                                    break;
                                 }
                             }
-                            if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                                backpressure = false;
-                            }
                         }
-                    } else {
-                        /*
-                         * For writes or SAFE reads, this is the best way to go
-                         */
-                        cxn = m_partitionMasters.get(hashedPartition);
-                        if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
+                        if (!cxn.hadBackPressure() || ignoreBackpressure) {
                             backpressure = false;
                         }
                     }
+                } else {
+                    /*
+                     * For writes or SAFE reads, this is the best way to go
+                     */
+                    cxn = routing.partitionMasters.get(hashedPartition);
+                    if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
+                        backpressure = false;
+                    }
                 }
-                if (cxn != null && !cxn.m_isConnected) {
-                    // Would be nice to log something here
-                    // Client affinity picked a connection that was actually disconnected.  Reset to null
-                    // and let the round-robin choice pick a connection
-                    cxn = null;
-                }
-                ClientAffinityStats stats = m_clientAffinityStats.get(hashedPartition);
-                if (stats == null) {
-                    stats = new ClientAffinityStats(hashedPartition, 0, 0, 0, 0);
-                    m_clientAffinityStats.put(hashedPartition, stats);
+            }
+            if (cxn != null && !cxn.m_isConnected) {
+                // Would be nice to log something here
+                // Client affinity picked a connection that was actually disconnected.  Reset to null
+                // and let the round-robin choice pick a connection
+                cxn = null;
+            }
+            ClientAffinityStats stats = m_clientAffinityStats.get(hashedPartition);
+            if (stats == null) {
+                stats = new ClientAffinityStats(hashedPartition, 0, 0, 0, 0);
+                ClientAffinityStats existing = m_clientAffinityStats.putIfAbsent(hashedPartition, stats);
+                if (existing != null) {
+                    stats = existing;
                 }
+            }
+            // Batched requests update the stats without holding the distributer lock
+            synchronized (stats) {
                 if (cxn != null) {
                     if (procedureInfo != null && procedureInfo.readOnly) {
                         stats.addAffinityRead();
@@ -1230,42 +1400,19 @@ class Distributer {
                     }
                 }
             }
-            if (cxn == null) {
-                for (int i=0; i < totalConnections; ++i) {
-                    cxn = m_connections.get(Math.abs(++m_nextConnection % totalConnections));
-                    if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                        // serialize and queue the invocation
-                        backpressure = false;
-                        break;
-                    }
-                }
-            }
-
-            if (backpressure) {
-                cxn = null;
-                for (ClientStatusListenerExt s : m_listeners) {
-                    s.backpressure(true);
+        }
+        if (cxn == null) {
+            for (int i=0; i < totalConnections; ++i) {
+                cxn = routing.connections[Math.abs(m_nextConnection.incrementAndGet() % totalConnections)];
+                if (!cxn.hadBackPressure() || ignoreBackpressure) {
+                    // serialize and queue the invocation
+                    backpressure = false;
+                    break;
                 }
             }
         }
 
-        /*
-         * Do the heavy weight serialization outside the synchronized block.
-         * createWork synchronizes on an individual connection which allows for more concurrency
-         */
-        if (cxn != null) {
-            ByteBuffer buf = null;
-            try {
-                buf = serializeSPI(invocation);
-            } catch (Exception e) {
-                Throwables.propagate(e);
-            }
-            cxn.createWork(nowNanos, invocation.getHandle(), invocation.getProcName(), buf, cb, ignoreBackpressure, timeoutNanos);
-        }
-        if (m_topologyChangeAware) {
-            createConnectionsUponTopologyChange();
-        }
-        return !backpressure;
+        return backpressure ? null : cxn;
     }
 
     /**
@@ -1368,9 +1515,9 @@ class Distributer {
     Map<Integer, ClientAffinityStats> getAffinityStatsSnapshot()
     {
         Map<Integer, ClientAffinityStats> retval = new HashMap<>();
-        // these get modified under this lock in queue()
-        synchronized(this) {
-            for (Entry<Integer, ClientAffinityStats> e : m_clientAffinityStats.entrySet()) {
+        // these get modified under their own lock in route()
+        for (Entry<Integer, ClientAffinityStats> e : m_clientAffinityStats.entrySet()) {
+            synchronized (e.getValue()) {
                 retval.put(e.getKey(), (ClientAffinityStats)e.getValue().clone());
             }
         }
@@ -1413,54 +1560,60 @@ class Distributer {
     }
 
     private void updateAffinityTopology(VoltTable tables[]) {
-        //First table contains the description of partition ids master/slave relationships
-        VoltTable vt = tables[0];
-
-        //In future let TOPO return cooked bytes when cooked and we use correct recipe
-        boolean cooked = false;
-        if (tables.length == 1) {
-            //Just in case the new client connects to the old version of Volt that only returns 1 topology table
-            // We're going to get the MPI back in this table, so subtract it out from the number of partitions.
-            int numPartitions = vt.getRowCount() - 1;
-            m_hashinator = new HashinatorLite(numPartitions); // legacy only
-        } else {
-            //Second table contains the hash function
-            boolean advanced = tables[1].advanceRow();
-            if (!advanced) {
-                System.err.println("Topology description received from Volt was incomplete " +
-                                   "performance will be lower because transactions can't be routed at this client");
-                return;
-            }
-            m_hashinator = new HashinatorLite(
-                    HashinatorLiteType.valueOf(tables[1].getString("HASHTYPE")),
-                    tables[1].getVarbinary("HASHCONFIG"),
-                    cooked);
-        }
-        m_partitionMasters.clear();
-        m_partitionReplicas.clear();
-        // The MPI's partition ID is 16383 (MpInitiator.MP_INIT_PID), so we shouldn't inadvertently
-        // hash to it.  Go ahead and include it in the maps, we can use it at some point to
-        // route MP transactions directly to the MPI node.
         Set<Integer> unconnected = new HashSet<Integer>();
-        while (vt.advanceRow()) {
-            Integer partition = (int)vt.getLong("Partition");
-
-            ArrayList<NodeConnection> connections = new ArrayList<>();
-            for (String site : vt.getString("Sites").split(",")) {
-                site = site.trim();
-                Integer hostId = Integer.valueOf(site.split(":")[0]);
-                if (m_hostIdToConnection.containsKey(hostId)) {
-                    connections.add(m_hostIdToConnection.get(hostId));
-                } else {
-                    unconnected.add(hostId);
-               }
+        // Publish whatever hashinator and partition maps this leaves behind on every path,
+        // including the early return and a malformed topology table
+        try {
+            //First table contains the description of partition ids master/slave relationships
+            VoltTable vt = tables[0];
+
+            //In future let TOPO return cooked bytes when cooked and we use correct recipe
+            boolean cooked = false;
+            if (tables.length == 1) {
+                //Just in case the new client connects to the old version of Volt that only returns 1 topology table
+                // We're going to get the MPI back in this table, so subtract it out from the number of partitions.
+                int numPartitions = vt.getRowCount() - 1;
+                m_hashinator = new HashinatorLite(numPartitions); // legacy only
+            } else {
+                //Second table contains the hash function
+                boolean advanced = tables[1].advanceRow();
+                if (!advanced) {
+                    System.err.println("Topology description received from Volt was incomplete " +
+                                       "performance will be lower because transactions can't be routed at this client");
+                    return;
+                }
+                m_hashinator = new HashinatorLite(
+                        HashinatorLiteType.valueOf(tables[1].getString("HASHTYPE")),
+                        tables[1].getVarbinary("HASHCONFIG"),
+                        cooked);
             }
-            m_partitionReplicas.put(partition, connections.toArray(new NodeConnection[0]));
+            m_partitionMasters.clear();
+            m_partitionReplicas.clear();
+            // The MPI's partition ID is 16383 (MpInitiator.MP_INIT_PID), so we shouldn't inadvertently
+            // hash to it.  Go ahead and include it in the maps, we can use it at some point to
+            // route MP transactions directly to the MPI node.
+            while (vt.advanceRow()) {
+                Integer partition = (int)vt.getLong("Partition");
+
+                ArrayList<NodeConnection> connections = new ArrayList<>();
+                for (String site : vt.getString("Sites").split(",")) {
+                    site = site.trim();
+                    Integer hostId = Integer.valueOf(site.split(":")[0]);
+                    if (m_hostIdToConnection.containsKey(hostId)) {
+                        connections.add(m_hostIdToConnection.get(hostId));
+                    } else {
+                        unconnected.add(hostId);
+                   }
+                }
+                m_partitionReplicas.put(partition, connections.toArray(new NodeConnection[0]));
 
-            Integer leaderHostId = Integer.valueOf(vt.getString("Leader").split(":")[0]);
-            if (m_hostIdToConnection.containsKey(leaderHostId)) {
-                m_partitionMasters.put(partition, m_hostIdToConnection.get(leaderHostId));
+                Integer leaderHostId = Integer.valueOf(vt.getString("Leader").split(":")[0]);
+                if (m_hostIdToConnection.containsKey(leaderHostId)) {
+                    m_partitionMasters.put(partition, m_hostIdToConnection.get(leaderHostId));
+                }
             }
+        } finally {
+            updateRouting();
         }
         if (m_topologyChangeAware) {
             m_unconnectedHosts.set(ImmutableSet.copyOf(unconnected));
@@ -1602,6 +1755,10 @@ class Distributer {
         m_topologyChangeAware = topoAware;
     }
 
+    void setBatchRequests(boolean batchRequests) {
+        m_batchRequests = batchRequests;
+    }
+
     void createConnectionsUponTopologyChange() {
 
         if(!m_topologyChangeAware || m_createConnectionUponTopoChangeInProgress.get()) {
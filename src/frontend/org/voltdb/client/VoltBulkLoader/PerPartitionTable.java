@@ -20,12 +20,12 @@ package org.voltdb.client.VoltBulkLoader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import org.voltcore.logging.VoltLogger;
@@ -35,33 +35,38 @@ import org.voltdb.ParameterConverter;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 import org.voltdb.VoltTypeException;
-import org.voltdb.client.ClientImpl;
+import org.voltdb.client.Client;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcedureCallback;
 
 /**
  * Partition specific table potentially shared by multiple VoltBulkLoader instances,
  * provided that they are all inserting to the same table.
+ *
+ * Rows are converted on the inserting thread and appended straight to the open batch
+ * table. The thread that fills a batch sends it, so batches of the same partition are
+ * built and sent by many threads at once, with up to {@link #MAX_BATCHES_IN_FLIGHT}
+ * batches waiting for a response. Sent batch tables are reused for later batches.
  */
 public class PerPartitionTable {
     private static final VoltLogger loaderLog = new VoltLogger("LOADER");
 
+    // number of batches of a partition sent to the database and not yet acknowledged
+    static final int MAX_BATCHES_IN_FLIGHT = Integer.getInteger("BULKLOADER_BATCHES_IN_FLIGHT", 8);
+
     // Client we are tied to
-    final ClientImpl m_clientImpl;
+    final Client m_client;
     //The index in loader tables and the PartitionProcessor number
     final int m_partitionId;
     final boolean m_isMP;
-    //Queue for processing pending rows for this table
-    LinkedBlockingQueue<VoltBulkLoaderRow> m_partitionRowQueue;
 
+    // Runs flushes and the row by row re-insert of failed batches
     final ExecutorService m_es;
 
     //Zero based index of the partitioned column in the table
     final int m_partitionedColumnIndex;
     //Partitioned column type
     final VoltType m_partitionColumnType;
-    //Table used to build up requests to the PartitionProcessor
-    VoltTable table;
     //Column information
     final VoltTable.ColumnInfo m_columnInfo[];
     //Column types
@@ -75,6 +80,35 @@ public class PerPartitionTable {
     // Upsert Mode Flag
     final byte m_upsert;
 
+    // Batch being filled, guarded by m_batchLock
+    private final Object m_batchLock = new Object();
+    private Batch m_openBatch;
+    // Tables of sent batches, their buffers are already grown to the batch size
+    private final ConcurrentLinkedQueue<VoltTable> m_freeTables = new ConcurrentLinkedQueue<VoltTable>();
+    private final Semaphore m_batchesInFlight = new Semaphore(MAX_BATCHES_IN_FLIGHT);
+
+    // Rows of one request, kept for reporting failures
+    private class Batch {
+        final VoltTable m_table;
+        final List<VoltBulkLoaderRow> m_rows;
+        // partitioning value of the first row, the batch goes to its partition
+        Object m_partitionValue;
+
+        Batch() {
+            VoltTable table = m_freeTables.poll();
+            m_table = (table == null) ? new VoltTable(m_columnInfo) : table;
+            m_rows = new ArrayList<VoltBulkLoaderRow>(m_minBatchTriggerSize);
+        }
+
+        void add(VoltBulkLoaderRow row, Object[] values) {
+            if (m_rows.isEmpty() && !m_isMP) {
+                m_partitionValue = values[m_partitionedColumnIndex];
+            }
+            m_table.addRow(values);
+            m_rows.add(row);
+        }
+    }
+
     // Callback for batch submissions to the Client. A failed request submits the entire
     // batch of rows to m_failedQueue for row by row processing on m_failureProcessor.
     class PartitionProcedureCallback implements ProcedureCallback {
@@ -87,6 +121,7 @@ public class PerPartitionTable {
         // Called by Client to inform us of the status of the bulk insert.
         @Override
         public void clientCallback(ClientResponse response) throws InterruptedException {
+            m_batchesInFlight.release();
             if (response.getStatus() != ClientResponse.SUCCESS) {
                 // Queue up all rows for individual processing by originating BulkLoader's FailureProcessor.
                 m_es.execute(new Runnable() {
@@ -101,28 +136,49 @@ public class PerPartitionTable {
                 });
             }
             else {
-                m_batchRowList.get(0).m_loader.m_loaderCompletedCnt.addAndGet(m_batchRowList.size());
-                m_batchRowList.get(0).m_loader.m_outstandingRowCount.addAndGet(-1 * m_batchRowList.size());
+                // Loaders sharing this table may have rows in the same batch
+                VoltBulkLoader loader = null;
+                int count = 0;
+                for (VoltBulkLoaderRow row : m_batchRowList) {
+                    if (row.m_loader != loader) {
+                        if (loader != null) {
+                            loader.rowsCompleted(count);
+                        }
+                        loader = row.m_loader;
+                        count = 0;
+                    }
+                    count++;
+                }
+                if (loader != null) {
+                    loader.rowsCompleted(count);
+                }
             }
         }
     }
 
-    PerPartitionTable(ClientImpl clientImpl, String tableName, int partitionId, boolean isMP,
+    PerPartitionTable(Client client, String tableName, int partitionId, boolean isMP,
             VoltBulkLoader firstLoader, int minBatchTriggerSize) {
-        m_clientImpl = clientImpl;
+        this(client, tableName, partitionId, isMP, firstLoader.m_procName, firstLoader.m_upsert,
+             firstLoader.m_colInfo, firstLoader.m_columnTypes, firstLoader.m_partitionedColumnIndex,
+             firstLoader.m_partitionColumnType, minBatchTriggerSize);
+    }
+
+    PerPartitionTable(Client client, String tableName, int partitionId, boolean isMP,
+            String procName, boolean upsert, VoltTable.ColumnInfo[] columnInfo, VoltType[] columnTypes,
+            int partitionedColumnIndex, VoltType partitionColumnType, int minBatchTriggerSize) {
+        m_client = client;
         m_partitionId = partitionId;
         m_isMP = isMP;
-        m_procName = firstLoader.m_procName;
-        m_upsert = (byte) (firstLoader.m_upsert ? 1:0);
-        m_partitionRowQueue = new LinkedBlockingQueue<VoltBulkLoaderRow>(minBatchTriggerSize*5);
+        m_procName = procName;
+        m_upsert = (byte) (upsert ? 1:0);
         m_minBatchTriggerSize = minBatchTriggerSize;
-        m_columnInfo = firstLoader.m_colInfo;
-        m_partitionedColumnIndex = firstLoader.m_partitionedColumnIndex;
-        m_columnTypes = firstLoader.m_columnTypes;
-        m_partitionColumnType = firstLoader.m_partitionColumnType;
+        m_columnInfo = columnInfo;
+        m_partitionedColumnIndex = partitionedColumnIndex;
+        m_columnTypes = columnTypes;
+        m_partitionColumnType = partitionColumnType;
         m_tableName = tableName;
 
-        table = new VoltTable(m_columnInfo);
+        m_openBatch = new Batch();
 
         m_es = CoreUtils.getSingleThreadExecutor(tableName + "-" + partitionId);
     }
@@ -138,25 +194,35 @@ public class PerPartitionTable {
         }
      }
 
+    private Object[] convertRow(Object[] rowData) throws VoltTypeException {
+        Object row_args[] = new Object[rowData.length];
+        for (int i = 0; i < row_args.length; i++) {
+            final VoltType type = m_columnTypes[i];
+            row_args[i] = ParameterConverter.tryToMakeCompatible(type.classFromType(), rowData[i]);
+        }
+        return row_args;
+    }
+
     /**
-     * Synchronized so that when the a single batch is filled up, we only queue one task to
-     * drain the queue. The task will drain the queue until it doesn't contain a single batch.
+     * Convert the row on the calling thread and append it to the open batch. Once the
+     * batch is full it is swapped for a new one and sent by the calling thread, which
+     * waits if too many batches of this partition are waiting for a response.
+     *
+     * @throws VoltTypeException if a value does not convert to its column type
+     * @throws IllegalArgumentException if a string is not a valid value of its column type
      */
-    synchronized void insertRowInTable(final VoltBulkLoaderRow nextRow) throws InterruptedException {
-        m_partitionRowQueue.put(nextRow);
-        if (m_partitionRowQueue.size() == m_minBatchTriggerSize) {
-            m_es.execute(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        while (m_partitionRowQueue.size() >= m_minBatchTriggerSize) {
-                            loadTable(buildTable(), table);
-                        }
-                    } catch (Exception e) {
-                        loaderLog.error("Failed to load batch", e);
-                    }
-                }
-            });
+    void insertRowInTable(final VoltBulkLoaderRow nextRow) throws InterruptedException {
+        Object[] values = convertRow(nextRow.m_rowData);
+        Batch full = null;
+        synchronized (m_batchLock) {
+            m_openBatch.add(nextRow, values);
+            if (m_openBatch.m_rows.size() >= m_minBatchTriggerSize) {
+                full = m_openBatch;
+                m_openBatch = new Batch();
+            }
+        }
+        if (full != null) {
+            sendBatch(full);
         }
     }
 
@@ -169,7 +235,15 @@ public class PerPartitionTable {
         return m_es.submit(new Callable<Boolean>() {
             @Override
             public Boolean call() throws Exception {
-                loadTable(buildTable(), table);
+                Batch partial;
+                synchronized (m_batchLock) {
+                    if (m_openBatch.m_rows.isEmpty()) {
+                        return true;
+                    }
+                    partial = m_openBatch;
+                    m_openBatch = new Batch();
+                }
+                sendBatch(partial);
                 return true;
             }
         });
@@ -190,76 +264,75 @@ public class PerPartitionTable {
         for (final VoltBulkLoaderRow row : rows) {
             // No need to check error here if a correctedLine has come here it was
             // previously successful.
+            Object row_args[];
             try {
-                Object row_args[] = new Object[row.m_rowData.length];
-                for (int i = 0; i < row_args.length; i++) {
-                    final VoltType type = m_columnTypes[i];
-                    row_args[i] = ParameterConverter.tryToMakeCompatible(type.classFromType(),
-                            row.m_rowData[i]);
-                }
-                tmpTable.addRow(row_args);
+                row_args = convertRow(row.m_rowData);
             } catch (VoltTypeException ex) {
-                // Should never happened because the bulk conversion in PerPartitionProcessor
+                // Should never happened because the conversion on insert
                 // should have caught this
                 continue;
             }
+            tmpTable.addRow(row_args);
 
             ProcedureCallback callback = new ProcedureCallback() {
                 @Override
                 public void clientCallback(ClientResponse response) throws Exception {
-                    row.m_loader.m_loaderCompletedCnt.incrementAndGet();
-                    row.m_loader.m_outstandingRowCount.decrementAndGet();
-
                     //one insert at a time callback
                     if (response.getStatus() != ClientResponse.SUCCESS) {
-                        row.m_loader.m_notificationCallBack.failureCallback(row.m_rowHandle, row.m_rowData, response);
+                        row.m_loader.rowFailed(row, response);
+                    }
+                    else {
+                        row.m_loader.rowsCompleted(1);
                     }
                 }
             };
 
-            loadTable(callback, tmpTable);
-        }
-    }
-
-    private PartitionProcedureCallback buildTable() {
-        ArrayList<VoltBulkLoaderRow> buf = new ArrayList<VoltBulkLoaderRow>(m_minBatchTriggerSize);
-        m_partitionRowQueue.drainTo(buf, m_minBatchTriggerSize);
-        ListIterator<VoltBulkLoaderRow> it = buf.listIterator();
-        while (it.hasNext()) {
-            VoltBulkLoaderRow currRow = it.next();
-            VoltBulkLoader loader = currRow.m_loader;
-            Object row_args[];
-            row_args = new Object[currRow.m_rowData.length];
             try {
-                for (int i = 0; i < row_args.length; i++) {
-                    final VoltType type = m_columnTypes[i];
-                    row_args[i] = ParameterConverter.tryToMakeCompatible(type.classFromType(),
-                            currRow.m_rowData[i]);
-                }
-            } catch (VoltTypeException e) {
-                loader.generateError(currRow.m_rowHandle, currRow.m_rowData, e.getMessage());
-                loader.m_outstandingRowCount.decrementAndGet();
-                it.remove();
-                continue;
+                loadTable(callback, tmpTable, m_isMP ? null : row_args[m_partitionedColumnIndex]);
+            }
+            catch (Exception e) {
+                // Not sent, fail this row and go on with the rest
+                loaderLog.error("Failed to re-insert row", e);
+                row.m_loader.rowFailed(row, sendFailure(e));
             }
-            table.addRow(row_args);
+            tmpTable.clearRowData();
         }
+    }
 
-        return new PartitionProcedureCallback(buf);
+    private static ClientResponse sendFailure(Exception e) {
+        return new ClientResponseImpl(ClientResponse.UNEXPECTED_FAILURE, new VoltTable[0],
+                "Failed to send rows to the database: " + e.getMessage());
     }
 
-    private void loadTable(ProcedureCallback callback, VoltTable toSend) throws Exception {
-        if (toSend.getRowCount() <= 0) {
-            return;
+    private void sendBatch(Batch batch) throws InterruptedException {
+        m_batchesInFlight.acquire();
+        try {
+            loadTable(new PartitionProcedureCallback(batch.m_rows), batch.m_table, batch.m_partitionValue);
+        }
+        catch (Exception e) {
+            loaderLog.error("Failed to load batch", e);
+            // The request was never queued, so no response will release the permit
+            // or account for the rows
+            m_batchesInFlight.release();
+            final ClientResponse response = sendFailure(e);
+            for (VoltBulkLoaderRow row : batch.m_rows) {
+                row.m_loader.rowFailed(row, response);
+            }
         }
+        finally {
+            // the invocation is serialized once it is queued, the table can take the next batch
+            batch.m_table.clearRowData();
+            m_freeTables.offer(batch.m_table);
+        }
+    }
 
+    private void loadTable(ProcedureCallback callback, VoltTable toSend, Object partitionValue) throws Exception {
         try {
             if (m_isMP) {
-                m_clientImpl.callProcedure(callback, m_procName, m_tableName, m_upsert, toSend);
+                m_client.callProcedure(callback, m_procName, m_tableName, m_upsert, toSend);
             } else {
-                Object rpartitionParam = VoltType.valueToBytes(toSend.fetchRow(0).get(
-                        m_partitionedColumnIndex, m_partitionColumnType));
-                m_clientImpl.callProcedure(callback, m_procName, rpartitionParam, m_tableName, m_upsert, toSend);
+                Object rpartitionParam = VoltType.valueToBytes(partitionValue);
+                m_client.callProcedure(callback, m_procName, rpartitionParam, m_tableName, m_upsert, toSend);
             }
         } catch (IOException e) {
             final ClientResponse r = new ClientResponseImpl(
@@ -267,6 +340,5 @@ public class PerPartitionTable {
                     "Connection to database was lost");
             callback.clientCallback(r);
         }
-        toSend.clearRowData();
     }
 }
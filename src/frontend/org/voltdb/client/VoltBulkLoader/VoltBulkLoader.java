@@ -45,10 +45,11 @@ import com.google_voltpatches.common.collect.ImmutableSortedMap;
  * VoltBulkLoader to operate concurrently on the same table or different tables
  * as long as they share the same Client instance.
  *
- * All instances of VoltBulkLoader using a common Client share a pool of threads
- * dedicated to feeding individual partitions. There is also a thread dedicated
- * to processing multi-partition tables. Finally, each instance of
- * VoltBulkLoader has a thread, dedicated to processing failed bulk inserts. If
+ * All instances of VoltBulkLoader using a common Client share the per partition
+ * batches of a table. Rows are converted and appended to the batch of their
+ * partition by the thread calling insertRow, and the thread that fills a batch
+ * sends it, so adding inserting threads adds loading throughput. Each partition
+ * has a thread dedicated to flushes and to processing failed bulk inserts. If
  * multiple threads are inserting rows into the same VoltBulkLoader instance and
  * batch inserts are relatively frequent, using multiple VoltBulkLoaders should
  * improve performance characteristics particularly if one thread is injecting
@@ -295,6 +296,18 @@ public class VoltBulkLoader {
         m_loaderCompletedCnt.incrementAndGet();
     }
 
+    // Called once the database has committed count of the rows this loader handed off
+    void rowsCompleted(int count) {
+        m_loaderCompletedCnt.addAndGet(count);
+        m_outstandingRowCount.addAndGet(-1 * count);
+    }
+
+    // Called once a row this loader handed off has definitively failed
+    void rowFailed(VoltBulkLoaderRow row, ClientResponse response) {
+        rowsCompleted(1);
+        m_notificationCallBack.failureCallback(row.m_rowHandle, row.m_rowData, response);
+    }
+
     /**
      *  <p>Add new row to VoltBulkLoader table.</p>
      *
@@ -326,20 +339,25 @@ public class VoltBulkLoader {
             return;
         }
         VoltBulkLoaderRow newRow = new VoltBulkLoaderRow(this, rowHandle, fieldList);
-        if (m_isMP) {
-            m_partitionTable[m_firstPartitionTable].insertRowInTable(newRow);
-        }
-        else {
-            try {
+        // Count the row before handing it off, its batch may complete before insertRowInTable returns
+        m_outstandingRowCount.incrementAndGet();
+        try {
+            if (m_isMP) {
+                m_partitionTable[m_firstPartitionTable].insertRowInTable(newRow);
+            }
+            else {
                 partitionId = (int)m_clientImpl.getPartitionForParameter(
                         m_partitionColumnType.getValue(), fieldList[m_partitionedColumnIndex]);
                 m_partitionTable[partitionId].insertRowInTable(newRow);
-            } catch (VoltTypeException e) {
-                generateError(rowHandle, fieldList, e.getMessage());
-                return;
             }
+        } catch (VoltTypeException e) {
+            m_outstandingRowCount.decrementAndGet();
+            generateError(rowHandle, fieldList, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            // e.g. a NumberFormatException from a malformed decimal string
+            m_outstandingRowCount.decrementAndGet();
+            generateError(rowHandle, fieldList, "Unable to convert the row: " + e);
         }
-        m_outstandingRowCount.incrementAndGet();
     }
 
     /**
@@ -19,12 +19,16 @@ package org.voltdb.compiler;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
 import org.voltdb.common.Constants;
 import org.voltdb.planner.BoundPlan;
 import org.voltdb.utils.Encoder;
@@ -43,6 +47,9 @@ import com.google_voltpatches.common.cache.CacheBuilder;
  * statement mapped to core parameterized plans. These parameterized
  * plans need parameter values and sql literals in order to be
  * actually used.
+ *
+ * Both levels are read concurrently by the ad hoc planner workers
+ * without locking, see {@link ConcurrentPlanCache}.
  */
 public class AdHocCompilerCache implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -55,8 +62,18 @@ public class AdHocCompilerCache implements Serializable {
     private static Cache<String, AdHocCompilerCache> m_catalogHashMatch =
             CacheBuilder.newBuilder().weakValues().build();
 
+    // the cache most recently handed out, reported by the PLANNERCACHE statistics
+    private static volatile AdHocCompilerCache m_currentCache = null;
+
+    private static final AdHocCompilerCacheStats m_stats = new AdHocCompilerCacheStats();
+
     public static void clearHashCache() {
         m_catalogHashMatch.invalidateAll();
+        m_currentCache = null;
+    }
+
+    public static StatsSource getStatsSource() {
+        return m_stats;
     }
 
     /**
@@ -70,6 +87,7 @@ public class AdHocCompilerCache implements Serializable {
             cache = new AdHocCompilerCache();
             m_catalogHashMatch.put(hashString, cache);
         }
+        m_currentCache = cache;
         return cache;
     }
 
@@ -79,26 +97,19 @@ public class AdHocCompilerCache implements Serializable {
 
     // cache sizes determined at construction time
     final int MAX_LITERAL_ENTRIES;
-    // max cache size for parameterized plans
+    // max cache size for literal plans
     final long MAX_LITERAL_MEM  = Long.getLong("ADHOC_COMPILER_CACHE_MAX_LITERAL_MEM_BYTES", 32*1024*1024);
     final int MAX_CORE_ENTRIES;
+    // max cache size for parameterized plans
+    final long MAX_CORE_MEM  = Long.getLong("ADHOC_COMPILER_CACHE_MAX_CORE_MEM_BYTES", 32*1024*1024);
 
     /** cache of literals to full plans */
-    final Map<String, AdHocPlannedStatement> m_literalCache;
+    final ConcurrentPlanCache<AdHocPlannedStatement> m_literalCache;
     /** cache of parameterized plan descriptions to one or more core parameterized plans,
      *  each plan optionally has its own requirements for which parameters need to be bound
-     *  to what values to enable its specialized (expression-indexed) plan. */
-    final Map<String, List<BoundPlan> > m_coreCache;
-
-    // placeholder stats used during development that may/may not survive
-    long m_literalHits = 0;
-    long m_literalQueries = 0;
-    long m_literalInsertions = 0;
-    long m_literalEvictions = 0;
-    long m_planHits = 0;
-    long m_planQueries = 0;
-    long m_planInsertions = 0;
-    long m_planEvictions = 0;
+     *  to what values to enable its specialized (expression-indexed) plan.
+     *  The lists are never modified once cached, adding a variant replaces the list. */
+    final ConcurrentPlanCache<List<BoundPlan>> m_coreCache;
 
     /** {@see this#startPeriodicStatsPrinting() } */
     Timer m_statsTimer = null;
@@ -114,129 +125,57 @@ public class AdHocCompilerCache implements Serializable {
      * Constructor with specific cache sizes is only called directly for testing.
      *
      * @param maxLiteralEntries cache size for literals
-     * @param maxLiteralMem cache memory for literals
+     * @param maxCoreEntries cache size for parameterized plans
      */
     AdHocCompilerCache(int maxLiteralEntries, int maxCoreEntries) {
         MAX_LITERAL_ENTRIES = maxLiteralEntries;
         MAX_CORE_ENTRIES = maxCoreEntries;
 
-        // an LRU cache map
-        m_literalCache = new AdHocStatementCache(MAX_LITERAL_ENTRIES, MAX_LITERAL_MEM);
-
-        // an LRU cache map
-        m_coreCache = new LinkedHashMap<String, List<BoundPlan> >(MAX_CORE_ENTRIES * 2, .75f, true) {
-            private static final long serialVersionUID = 1L;
-
-            // This method is called just after a new entry has been added
-            @Override
-            public boolean removeEldestEntry(Map.Entry<String, List<BoundPlan> > eldest) {
-                if (size() > MAX_CORE_ENTRIES) {
-                    ++m_planEvictions;
-                    return true;
-                }
-                return false;
-            }
-
-        };
-    }
-
-    // define a LinkedHashMap based LRU cache bounds by both entry number and entry value on-heap size
-    // without changing Map.Entry, only works for value of type AdHocPlannedStatement
-    // only extend put, remove,clear and removeEldestEntry methods to account weight
-    public class AdHocStatementCache extends LinkedHashMap<String, AdHocPlannedStatement>{
-       private static final long serialVersionUID = 2988383448026641836L;
-        private final int maxEntries;
-        private final long maxMemory; // in bytes
-        private long currentMemory;   // in bytes
-
-        public AdHocStatementCache() {
-            // default max entry of 1000
-            // default max value size of 32MB
-            this(1000, 32 * 1024 * 1024);
-        }
-
-        public AdHocStatementCache(final int maxEntries) {
-            this(maxEntries, 32 * 1024 * 1024);
-        }
-
-        public AdHocStatementCache(final int maxEntries, final long maxMemory) {
-            // set accessOrder to true for LRU
-            super(maxEntries * 2, .75f, true);
-            this.maxEntries = maxEntries;
-            this.maxMemory = maxMemory;
-            this.currentMemory = 0;
-        }
-
-        // This method is called just after a new entry has been added
-        @Override
-        public boolean removeEldestEntry(final Map.Entry<String, AdHocPlannedStatement> eldest) {
-            if ((size() > maxEntries) || (this.currentMemory > this.maxMemory))  {
-                ++m_literalEvictions;
-                this.currentMemory -= eldest.getValue().getSerializedSize();
-                return true;
-            }
-            return false;
-        }
-
-        @Override
-        public AdHocPlannedStatement put(String key, AdHocPlannedStatement value) {
-            this.currentMemory += value.getSerializedSize();
-            return super.put(key,value);
-        }
-
-        @Override
-        public AdHocPlannedStatement remove(Object key) {
-            AdHocPlannedStatement value = super.remove(key);
-            if (value != null) {
-                this.currentMemory -= value.getSerializedSize();
-            }
-            return value;
-        }
-
-        @Override
-        public void clear() {
-            super.clear();
-            this.currentMemory = 0;
-        }
+        m_literalCache = new ConcurrentPlanCache<AdHocPlannedStatement>(MAX_LITERAL_ENTRIES, MAX_LITERAL_MEM,
+                new ConcurrentPlanCache.Weigher<AdHocPlannedStatement>() {
+                    @Override
+                    public int weigh(AdHocPlannedStatement value) {
+                        return value.getSerializedSize();
+                    }
+                });
+
+        m_coreCache = new ConcurrentPlanCache<List<BoundPlan>>(MAX_CORE_ENTRIES, MAX_CORE_MEM,
+                new ConcurrentPlanCache.Weigher<List<BoundPlan>>() {
+                    @Override
+                    public int weigh(List<BoundPlan> value) {
+                        int size = 0;
+                        for (BoundPlan boundPlan : value) {
+                            size += boundPlan.m_core.getSerializedSize();
+                        }
+                        return size;
+                    }
+                });
     }
 
     /**
      * Stats printing method used during development.
      * Probably shouldn't live past real stats integration.
      */
-    synchronized void printStats() {
+    void printStats() {
+        long literalQueries = m_literalCache.hits() + m_literalCache.misses();
+        long planQueries = m_coreCache.hits() + m_coreCache.misses();
         String line1 = String.format("CACHE STATS - Literals: Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_literalHits, m_literalQueries, (m_literalHits * 100.0) / m_literalQueries,
-                m_literalInsertions, m_literalEvictions);
+                m_literalCache.hits(), literalQueries, (m_literalCache.hits() * 100.0) / literalQueries,
+                m_literalCache.insertions(), m_literalCache.evictions());
         String line2 = String.format("CACHE STATS - Plans:    Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_planHits, m_planQueries, (m_planHits * 100.0) /m_planQueries,
-                m_planInsertions, m_planEvictions);
+                m_coreCache.hits(), planQueries, (m_coreCache.hits() * 100.0) / planQueries,
+                m_coreCache.insertions(), m_coreCache.evictions());
 
         System.out.print(line1 + line2);
         System.out.flush();
-
-        // reset these
-        m_literalHits = 0;
-        m_literalQueries = 0;
-        m_literalInsertions = 0;
-        m_literalEvictions = 0;
-        m_planHits = 0;
-        m_planQueries = 0;
-        m_planInsertions = 0;
-        m_planEvictions = 0;
     }
 
     /**
      * @param sql SQL literal
      * @return full, ready-to-go plan
      */
-    public synchronized AdHocPlannedStatement getWithSQL(String sql) {
-        ++m_literalQueries;
-        AdHocPlannedStatement retval = m_literalCache.get(sql);
-        if (retval != null) {
-            ++m_literalHits;
-        }
-        return retval;
+    public AdHocPlannedStatement getWithSQL(String sql) {
+        return m_literalCache.get(sql);
     }
 
     /**
@@ -244,13 +183,8 @@ public class AdHocCompilerCache implements Serializable {
      * SQL statement
      * @return A CorePlan that needs parameter values to run.
      */
-    public synchronized List<BoundPlan> getWithParsedToken(String parsedToken) {
-        ++m_planQueries;
-        List<BoundPlan> retval = m_coreCache.get(parsedToken);
-        if (retval != null) {
-            ++m_planHits;
-        }
-        return retval;
+    public List<BoundPlan> getWithParsedToken(String parsedToken) {
+        return m_coreCache.get(parsedToken);
     }
 
     /**
@@ -271,7 +205,7 @@ public class AdHocCompilerCache implements Serializable {
      * @param hasUserQuestionMarkParameters is user provided parameterized query
      * @param hasAutoParameterizedException is the auto parameterized query has parameter exception
      */
-    public synchronized void put(String sql,
+    public void put(String sql,
                                  String parsedToken,
                                  AdHocPlannedStatement planIn,
                                  String[] extractedLiterals,
@@ -293,21 +227,24 @@ public class AdHocCompilerCache implements Serializable {
 
         // deal with L2 cache
         if (! hasAutoParameterizedException) {
-            BoundPlan matched = null;
             BoundPlan unmatched = new BoundPlan(planIn.core, planIn.parameterBindings(extractedLiterals));
             // deal with the parameterized plan cache first
-            List<BoundPlan> boundVariants = m_coreCache.get(parsedToken);
-            if (boundVariants == null) {
-                boundVariants = new ArrayList<BoundPlan>();
-                m_coreCache.put(parsedToken, boundVariants);
-                // Note that there is an edge case in which more than one plan is getting counted as one
-                // "plan insertion". This only happens when two different plans arose from the same parameterized
-                // query (token) because one invocation used the correct constants to trigger an expression index and
-                // another invocation did not.  These are not counted separately (which would have to happen below
-                // after each call to boundVariants.add) because they are not evicted separately.
-                // It seems saner to use consistent units when counting insertions vs. evictions.
-                ++m_planInsertions;
-            } else {
+            while (true) {
+                List<BoundPlan> boundVariants = m_coreCache.peek(parsedToken);
+                if (boundVariants == null) {
+                    // Note that there is an edge case in which more than one plan is getting counted as one
+                    // "plan insertion". This only happens when two different plans arose from the same parameterized
+                    // query (token) because one invocation used the correct constants to trigger an expression index and
+                    // another invocation did not.  These are not counted separately (which would have to happen below
+                    // when a variant is added) because they are not evicted separately.
+                    // It seems saner to use consistent units when counting insertions vs. evictions.
+                    if (m_coreCache.putIfAbsent(parsedToken, Collections.singletonList(unmatched)) == null) {
+                        break;
+                    }
+                    // lost a race with another planner, look again
+                    continue;
+                }
+                BoundPlan matched = null;
                 for (BoundPlan boundPlan : boundVariants) {
                     if (boundPlan.equals(unmatched)) {
                         matched = boundPlan;
@@ -321,29 +258,37 @@ public class AdHocCompilerCache implements Serializable {
                         plan = new AdHocPlannedStatement(planIn, matched.m_core);
                         plan.setBoundConstants(matched.m_constants);
                     }
+                    break;
+                }
+                // Cached lists are shared with readers, so add the variant to a copy.
+                List<BoundPlan> newVariants = new ArrayList<BoundPlan>(boundVariants.size() + 1);
+                newVariants.addAll(boundVariants);
+                newVariants.add(unmatched);
+                if (m_coreCache.replace(parsedToken, boundVariants, Collections.unmodifiableList(newVariants))) {
+                    break;
                 }
-            }
-            if (matched == null) {
-                // Don't count insertions (of possibly repeated tokens) here
-                //  -- see the comment above where only UNIQUE token insertions are being counted, instead.
-                boundVariants.add(unmatched);
             }
         }
 
         // then deal with the L1 cache
         if (! hasUserQuestionMarkParameters) {
-            AdHocPlannedStatement cachedPlan = m_literalCache.get(sql);
-            if (cachedPlan == null) {
-                //* enable to debug */ System.out.println("DEBUG: Caching literal '" + sql + "'");
-                m_literalCache.put(sql, plan);
-                ++m_literalInsertions;
-            }
-            else {
+            //* enable to debug */ System.out.println("DEBUG: Caching literal '" + sql + "'");
+            AdHocPlannedStatement cachedPlan = m_literalCache.putIfAbsent(sql, plan);
+            if (cachedPlan != null) {
                 assert(cachedPlan.equals(plan));
             }
         }
     }
 
+    /**
+     * Drop all cached plans, e.g. when new table statistics may change
+     * the best plan for a statement.
+     */
+    public void clear() {
+        m_literalCache.clear();
+        m_coreCache.clear();
+    }
+
     /**
      * Start a timer that prints cache stats to the console every 5s.
      * Used for development until we get better stats integration.
@@ -375,4 +320,56 @@ public class AdHocCompilerCache implements Serializable {
     public int getCoreCacheSize() {
         return m_coreCache.size();
     }
+
+    /**
+     * Hit, miss and eviction counters of the current cache, one row for the
+     * literal level and one for the parameterized (core) level.
+     */
+    static class AdHocCompilerCacheStats extends StatsSource {
+
+        static final String LITERAL = "LITERAL";
+        static final String CORE = "CORE";
+
+        AdHocCompilerCacheStats() {
+            super(false);
+        }
+
+        @Override
+        protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+            super.populateColumnSchema(columns);
+            columns.add(new ColumnInfo("CACHE_LEVEL", VoltType.STRING));
+            columns.add(new ColumnInfo("ENTRIES", VoltType.INTEGER));
+            columns.add(new ColumnInfo("MAX_ENTRIES", VoltType.INTEGER));
+            columns.add(new ColumnInfo("SIZE_BYTES", VoltType.BIGINT));
+            columns.add(new ColumnInfo("MAX_SIZE_BYTES", VoltType.BIGINT));
+            columns.add(new ColumnInfo("HITS", VoltType.BIGINT));
+            columns.add(new ColumnInfo("MISSES", VoltType.BIGINT));
+            columns.add(new ColumnInfo("INSERTIONS", VoltType.BIGINT));
+            columns.add(new ColumnInfo("EVICTIONS", VoltType.BIGINT));
+        }
+
+        @Override
+        protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+            super.updateStatsRow(rowKey, rowValues);
+            AdHocCompilerCache current = m_currentCache;
+            ConcurrentPlanCache<?> cache = null;
+            if (current != null) {
+                cache = LITERAL.equals(rowKey) ? current.m_literalCache : current.m_coreCache;
+            }
+            rowValues[columnNameToIndex.get("CACHE_LEVEL")] = rowKey;
+            rowValues[columnNameToIndex.get("ENTRIES")] = cache == null ? 0 : cache.size();
+            rowValues[columnNameToIndex.get("MAX_ENTRIES")] = cache == null ? 0 : cache.maxEntries();
+            rowValues[columnNameToIndex.get("SIZE_BYTES")] = cache == null ? 0L : cache.weight();
+            rowValues[columnNameToIndex.get("MAX_SIZE_BYTES")] = cache == null ? 0L : cache.maxWeight();
+            rowValues[columnNameToIndex.get("HITS")] = cache == null ? 0L : cache.hits();
+            rowValues[columnNameToIndex.get("MISSES")] = cache == null ? 0L : cache.misses();
+            rowValues[columnNameToIndex.get("INSERTIONS")] = cache == null ? 0L : cache.insertions();
+            rowValues[columnNameToIndex.get("EVICTIONS")] = cache == null ? 0L : cache.evictions();
+        }
+
+        @Override
+        protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+            return Arrays.<Object>asList(LITERAL, CORE).iterator();
+        }
+    }
 }
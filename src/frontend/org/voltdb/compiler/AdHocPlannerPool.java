@@ -0,0 +1,274 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.CatalogContext;
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.Database;
+
+/**
+ * A fixed set of ad hoc planner workers. Each worker owns a thread and its
+ * own {@link PlannerTool}, and with it a private HSQL session, so statements
+ * can be planned on several cores at once. All the work of a connection goes
+ * to the same worker, so a client's statements are still planned (and their
+ * transactions created) in the order it sent them. Work is rejected once the
+ * pool as a whole has more than {@code maxQueueDepth} requests waiting.
+ */
+public class AdHocPlannerPool {
+
+    // number of planner workers, a quarter of the cores (1..8) unless configured
+    public static final int DEFAULT_POOL_SIZE =
+            Math.max(1, Math.min(8, CoreUtils.availableProcessors() / 4));
+    public static final int POOL_SIZE =
+            Math.max(1, Integer.getInteger("ADHOC_PLANNER_THREADS", DEFAULT_POOL_SIZE));
+
+    private final PlannerWorker[] m_workers;
+    private final int m_maxQueueDepth;
+
+    // queued plus running requests across all workers
+    private final AtomicInteger m_outstanding = new AtomicInteger(0);
+
+    private final PlannerPoolStats m_stats = new PlannerPoolStats();
+
+    // the worker owning the current thread, null off the pool threads
+    private static final ThreadLocal<PlannerWorker> s_currentWorker = new ThreadLocal<PlannerWorker>();
+
+    public AdHocPlannerPool(String name, int poolSize, int maxQueueDepth) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Must specify > 0 planner workers");
+        }
+        m_maxQueueDepth = maxQueueDepth;
+        m_workers = new PlannerWorker[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            m_workers[i] = new PlannerWorker(i, poolSize > 1 ? name + " - " + i : name);
+        }
+    }
+
+    public int getPoolSize() {
+        return m_workers.length;
+    }
+
+    /**
+     * @return number of requests accepted by the pool that have not yet
+     * started planning
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (PlannerWorker worker : m_workers) {
+            depth += worker.m_queued.get();
+        }
+        return depth;
+    }
+
+    /**
+     * @return true if new work would currently be rejected
+     */
+    public boolean isFull() {
+        return m_outstanding.get() >= m_maxQueueDepth + m_workers.length;
+    }
+
+    public StatsSource getStatsSource() {
+        return m_stats;
+    }
+
+    /**
+     * Queue a planning task on the worker owning the given connection.
+     * @return false if the pool is saturated and the task was not queued
+     */
+    public boolean submit(long connectionId, final Runnable task) {
+        PlannerWorker worker = m_workers[(int) Math.floorMod(connectionId, (long) m_workers.length)];
+        // Every worker can be busy with one request on top of the shared queue depth.
+        if (m_outstanding.incrementAndGet() > m_maxQueueDepth + m_workers.length) {
+            m_outstanding.decrementAndGet();
+            worker.m_rejected.incrementAndGet();
+            return false;
+        }
+        worker.execute(task);
+        return true;
+    }
+
+    /**
+     * Finish planning what's in the queues and stop the workers.
+     */
+    public void shutdown() throws InterruptedException {
+        for (PlannerWorker worker : m_workers) {
+            worker.m_es.shutdown();
+        }
+        for (PlannerWorker worker : m_workers) {
+            worker.m_es.awaitTermination(120, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Get the planner tool to use for the given catalog on the current thread.
+     * The first worker, and any thread outside of the pool, shares the planner
+     * tool owned by the catalog context. The other workers load their own copy
+     * of the schema the first time they plan against a catalog version.
+     */
+    static PlannerTool getPlannerTool(CatalogContext context) {
+        PlannerWorker worker = s_currentWorker.get();
+        if (worker == null || worker.m_id == 0) {
+            return context.m_ptool;
+        }
+        return worker.getPlannerTool(context);
+    }
+
+    private class PlannerWorker {
+        final int m_id;
+        final ExecutorService m_es;
+
+        // requests waiting for this worker, and those plus the one being planned
+        final AtomicInteger m_queued = new AtomicInteger(0);
+        final AtomicInteger m_outstanding = new AtomicInteger(0);
+        final AtomicLong m_invocations = new AtomicLong(0);
+        final AtomicLong m_rejected = new AtomicLong(0);
+        final AtomicLong m_totalWaitNanos = new AtomicLong(0);
+        final AtomicLong m_totalPlanNanos = new AtomicLong(0);
+        volatile long m_maxPlanNanos = 0;
+
+        // Private planner tool, only touched from this worker's thread. It is
+        // rebuilt when the shared planner tool of the catalog context changes,
+        // which happens on every schema change.
+        PlannerTool m_ptool = null;
+        WeakReference<PlannerTool> m_sharedTool = new WeakReference<PlannerTool>(null);
+        byte[] m_catalogHash = null;
+        Database m_database = null;
+
+        PlannerWorker(int id, String threadName) {
+            m_id = id;
+            m_es = CoreUtils.getSingleThreadExecutor(threadName);
+        }
+
+        void execute(final Runnable task) {
+            final long queuedAt = System.nanoTime();
+            m_queued.incrementAndGet();
+            m_outstanding.incrementAndGet();
+            m_es.execute(new Runnable() {
+                @Override
+                public void run() {
+                    m_queued.decrementAndGet();
+                    s_currentWorker.set(PlannerWorker.this);
+                    final long startedAt = System.nanoTime();
+                    try {
+                        task.run();
+                    }
+                    finally {
+                        final long delta = System.nanoTime() - startedAt;
+                        m_totalWaitNanos.addAndGet(startedAt - queuedAt);
+                        m_totalPlanNanos.addAndGet(delta);
+                        if (delta > m_maxPlanNanos) {
+                            m_maxPlanNanos = delta;
+                        }
+                        m_invocations.incrementAndGet();
+                        m_outstanding.decrementAndGet();
+                        AdHocPlannerPool.this.m_outstanding.decrementAndGet();
+                    }
+                }
+            });
+        }
+
+        PlannerTool getPlannerTool(CatalogContext context) {
+            if (m_sharedTool.get() != context.m_ptool) {
+                // New schema: load a private copy of the catalog into a fresh HSQL session
+                m_database = context.catalog.deepCopy().getClusters().get("cluster").getDatabases().get("database");
+                m_catalogHash = context.getCatalogHash();
+                m_ptool = new PlannerTool(m_database, m_catalogHash);
+                m_sharedTool = new WeakReference<PlannerTool>(context.m_ptool);
+            }
+            else if (!Arrays.equals(m_catalogHash, context.getCatalogHash())) {
+                m_catalogHash = context.getCatalogHash();
+                m_ptool = m_ptool.updateWhenNoSchemaChange(m_database, m_catalogHash);
+            }
+            return m_ptool;
+        }
+    }
+
+    /**
+     * One row per planner worker with its queue depth, throughput and timings.
+     */
+    class PlannerPoolStats extends StatsSource {
+
+        PlannerPoolStats() {
+            super(false);
+        }
+
+        @Override
+        protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+            super.populateColumnSchema(columns);
+            columns.add(new ColumnInfo("WORKER_ID", VoltType.INTEGER));
+            columns.add(new ColumnInfo("QUEUE_DEPTH", VoltType.INTEGER));
+            columns.add(new ColumnInfo("MAX_QUEUE_DEPTH", VoltType.INTEGER));
+            columns.add(new ColumnInfo("INVOCATIONS", VoltType.BIGINT));
+            columns.add(new ColumnInfo("REJECTIONS", VoltType.BIGINT));
+            columns.add(new ColumnInfo("AVG_WAIT_TIME", VoltType.BIGINT));
+            columns.add(new ColumnInfo("AVG_PLAN_TIME", VoltType.BIGINT));
+            columns.add(new ColumnInfo("MAX_PLAN_TIME", VoltType.BIGINT));
+        }
+
+        @Override
+        protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+            super.updateStatsRow(rowKey, rowValues);
+            PlannerWorker worker = m_workers[(Integer) rowKey];
+            long invocations = worker.m_invocations.get();
+            rowValues[columnNameToIndex.get("WORKER_ID")] = worker.m_id;
+            rowValues[columnNameToIndex.get("QUEUE_DEPTH")] = worker.m_queued.get();
+            rowValues[columnNameToIndex.get("MAX_QUEUE_DEPTH")] = m_maxQueueDepth;
+            rowValues[columnNameToIndex.get("INVOCATIONS")] = invocations;
+            rowValues[columnNameToIndex.get("REJECTIONS")] = worker.m_rejected.get();
+            rowValues[columnNameToIndex.get("AVG_WAIT_TIME")] =
+                    invocations == 0 ? 0L : worker.m_totalWaitNanos.get() / invocations;
+            rowValues[columnNameToIndex.get("AVG_PLAN_TIME")] =
+                    invocations == 0 ? 0L : worker.m_totalPlanNanos.get() / invocations;
+            rowValues[columnNameToIndex.get("MAX_PLAN_TIME")] = worker.m_maxPlanNanos;
+        }
+
+        @Override
+        protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+            return new Iterator<Object>() {
+                int m_next = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return m_next < m_workers.length;
+                }
+
+                @Override
+                public Object next() {
+                    return m_next++;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
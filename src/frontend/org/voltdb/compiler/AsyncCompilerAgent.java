@@ -36,6 +36,8 @@ import org.voltcore.utils.CoreUtils;
 import org.voltdb.CatalogContext;
 import org.voltdb.ClientInterface.ExplainMode;
 import org.voltdb.OperationMode;
+import org.voltdb.StatsAgent;
+import org.voltdb.StatsSelector;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltType;
 import org.voltdb.client.ClientResponse;
@@ -55,6 +57,8 @@ public class AsyncCompilerAgent {
     // if more than this amount of work is queued, reject new work
     static public final int MAX_QUEUE_DEPTH = 250;
 
+    static public final String PLANNER_QUEUE_FULL_MSG = "Ad Hoc Planner task queue is full. Try again.";
+
     // accept work via this mailbox
     Mailbox m_mailbox;
 
@@ -66,10 +70,14 @@ public class AsyncCompilerAgent {
     // of Europe, Scandinavia, and the sub-continent.
     final AsyncCompilerAgentHelper m_helper;
 
-    // do work in this executor service
+    // do catalog change work in this executor service
     final ListeningExecutorService m_es =
         CoreUtils.getBoundedSingleThreadExecutor("Ad Hoc Planner", MAX_QUEUE_DEPTH);
 
+    // plan ad hoc statements on this pool of workers, each with its own planner
+    final AdHocPlannerPool m_plannerPool =
+        new AdHocPlannerPool("Ad Hoc Planner", AdHocPlannerPool.POOL_SIZE, MAX_QUEUE_DEPTH);
+
     // Enable debug hooks when the "asynccompilerdebug" sys prop is set to "true" or "yes".
     private final static MiscUtils.BooleanSystemProperty DEBUG_MODE =
             new MiscUtils.BooleanSystemProperty("asynccompilerdebug");
@@ -82,12 +90,27 @@ public class AsyncCompilerAgent {
     // intended for integration test use. finish planning what's in
     // the queue and terminate the TPE.
     public void shutdown() throws InterruptedException {
+        if (m_plannerPool != null) {
+            m_plannerPool.shutdown();
+        }
         if (m_es != null) {
             m_es.shutdown();
             m_es.awaitTermination(120, TimeUnit.SECONDS);
         }
     }
 
+    public int getPlannerPoolSize() {
+        return m_plannerPool.getPoolSize();
+    }
+
+    /**
+     * @return true if the planner pool has no room for more ad hoc work,
+     * used by the client interface to push back before queuing any more.
+     */
+    public boolean isPlannerQueueFull() {
+        return m_plannerPool.isFull();
+    }
+
     public void createMailbox(final HostMessenger hostMessenger, final long hsId) {
         m_mailbox = new LocalMailbox(hostMessenger) {
 
@@ -99,21 +122,37 @@ public class AsyncCompilerAgent {
 
             @Override
             public void deliver(final VoltMessage message) {
+                final Runnable task = new Runnable() {
+                    @Override
+                    public void run() {
+                        handleMailboxMessage(message);
+                    }
+                };
+                final LocalObjectMessage wrapper = (LocalObjectMessage)message;
+                // Ad hoc statements are planned on the worker of their connection,
+                // catalog changes are serialized.
+                if (wrapper.payload instanceof AdHocPlannerWork) {
+                    if (!m_plannerPool.submit(((AdHocPlannerWork) wrapper.payload).connectionId, task)) {
+                        generateErrorResult(PLANNER_QUEUE_FULL_MSG, (AsyncCompilerWork)(wrapper.payload));
+                    }
+                    return;
+                }
                 try {
-                    m_es.submit(new Runnable() {
-                        @Override
-                        public void run() {
-                            handleMailboxMessage(message);
-                        }
-                    });
+                    m_es.submit(task);
                 } catch (RejectedExecutionException rejected) {
-                    final LocalObjectMessage wrapper = (LocalObjectMessage)message;
                     AsyncCompilerWork work = (AsyncCompilerWork)(wrapper.payload);
-                    generateErrorResult("Ad Hoc Planner task queue is full. Try again.", work);
+                    generateErrorResult(PLANNER_QUEUE_FULL_MSG, work);
                 }
             }
         };
         hostMessenger.createMailbox(hsId, m_mailbox);
+
+        final StatsAgent statsAgent = VoltDB.instance().getStatsAgent();
+        // In mock test environments there may be no stats agent.
+        if (statsAgent != null) {
+            statsAgent.registerStatsSource(StatsSelector.ADHOCPLANNER, 0, m_plannerPool.getStatsSource());
+            statsAgent.registerStatsSource(StatsSelector.PLANNERCACHE, 0, AdHocCompilerCache.getStatsSource());
+        }
     }
 
     void generateErrorResult(String errorMsg, AsyncCompilerWork work) {
@@ -279,6 +318,8 @@ public class AsyncCompilerAgent {
                 w.completionHandler.onCompletion(errResult);
                 return;
             }
+            // Prepared right here on the connection's planner worker, so that the
+            // connection's later statements wait for it, one catalog change at a time.
             final CatalogChangeWork ccw = new CatalogChangeWork(w);
             dispatchCatalogChangeWork(ccw);
         }
@@ -324,17 +365,24 @@ public class AsyncCompilerAgent {
     }
 
     public void compileAdHocPlanForProcedure(final AdHocPlannerWork apw) {
-        m_es.submit(new Runnable() {
+        boolean queued = m_plannerPool.submit(apw.connectionId, new Runnable() {
             @Override
             public void run(){
                 apw.completionHandler.onCompletion(compileAdHocPlan(apw));
             }
         });
+        if (!queued) {
+            generateErrorResult(PLANNER_QUEUE_FULL_MSG, apw);
+        }
     }
 
     private void dispatchCatalogChangeWork(CatalogChangeWork work)
     {
-        final CatalogChangeResult ccr = m_helper.prepareApplicationCatalogDiff(work);
+        final CatalogChangeResult ccr;
+        // ad hoc DDL from the planner workers and @UAC from the catalog change thread
+        synchronized (m_helper) {
+            ccr = m_helper.prepareApplicationCatalogDiff(work);
+        }
         if (ccr.errorMsg != null) {
             hostLog.info("A request to update the database catalog and/or deployment settings has been rejected. More info returned to client.");
         }
@@ -360,7 +408,7 @@ public class AsyncCompilerAgent {
             context = VoltDB.instance().getCatalogContext();
         }
 
-        final PlannerTool ptool = context.m_ptool;
+        final PlannerTool ptool = AdHocPlannerPool.getPlannerTool(context);
 
         List<String> errorMsgs = new ArrayList<>();
         List<AdHocPlannedStatement> stmts = new ArrayList<>();
@@ -391,7 +439,8 @@ public class AsyncCompilerAgent {
             }
             try {
                 AdHocPlannedStatement result = ptool.planSql(sqlStatement, partitioning,
-                        work.explainMode != ExplainMode.NONE, work.userParamSet);
+                        work.explainMode != ExplainMode.NONE, work.userParamSet,
+                        context.getTableStatistics());
                 // The planning tool may have optimized for the single partition case
                 // and generated a partition parameter.
                 if (inferSP) {
@@ -464,7 +513,7 @@ public class AsyncCompilerAgent {
             context = VoltDB.instance().getCatalogContext();
         }
 
-        final PlannerTool ptool = context.m_ptool;
+        final PlannerTool ptool = AdHocPlannerPool.getPlannerTool(context);
 
         List<String> errorMsgs = new ArrayList<>();
         List<AdHocPlannedStatement> stmts = new ArrayList<>();
@@ -475,7 +524,7 @@ public class AsyncCompilerAgent {
         StatementPartitioning partitioning = StatementPartitioning.forceMP();
         try {
             AdHocPlannedStatement result = ptool.planSql(sqlStatement, partitioning,
-                    false, work.userParamSet);
+                    false, work.userParamSet, context.getTableStatistics());
             stmts.add(result);
         }
         catch (Exception ex) {
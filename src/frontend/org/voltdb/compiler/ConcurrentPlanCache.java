@@ -0,0 +1,271 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A string keyed cache bounded by both entry count and total value weight
+ * (serialized plan bytes), built for many concurrent readers.
+ *
+ * Keys are spread over a fixed number of {@link ConcurrentHashMap} shards.
+ * A lookup is a map read plus a store of the access time into the entry,
+ * so hits never take a lock or reorder a list. Eviction is sampled LRU:
+ * whenever an insert pushes the cache over either bound, a shard is picked
+ * at random, a few of its entries are sampled from a random part of its
+ * table and the least recently used of them is removed, until the cache
+ * fits again. Only writers pay for eviction, and its cost does not grow
+ * with the size of the cache.
+ */
+class ConcurrentPlanCache<V> {
+
+    /** Computes the weight (in bytes) that a value counts against the memory bound. */
+    interface Weigher<V> {
+        int weigh(V value);
+    }
+
+    static final int SHARD_COUNT = 16;
+    // entries looked at to pick one to evict
+    static final int EVICTION_SAMPLES = 8;
+
+    private static final class Node<V> {
+        final V m_value;
+        final int m_weight;
+        volatile long m_lastAccess;
+
+        Node(V value, int weight) {
+            m_value = value;
+            m_weight = weight;
+            m_lastAccess = System.nanoTime();
+        }
+    }
+
+    private final List<ConcurrentHashMap<String, Node<V>>> m_shards;
+    private final Weigher<V> m_weigher;
+    private final int m_maxEntries;
+    private final long m_maxWeight;
+
+    private final AtomicInteger m_entries = new AtomicInteger(0);
+    private final AtomicLong m_weight = new AtomicLong(0);
+
+    private final LongAdder m_hits = new LongAdder();
+    private final LongAdder m_misses = new LongAdder();
+    private final LongAdder m_insertions = new LongAdder();
+    private final LongAdder m_evictions = new LongAdder();
+
+    ConcurrentPlanCache(int maxEntries, long maxWeight, Weigher<V> weigher) {
+        m_maxEntries = maxEntries;
+        m_maxWeight = maxWeight;
+        m_weigher = weigher;
+        m_shards = new ArrayList<ConcurrentHashMap<String, Node<V>>>(SHARD_COUNT);
+        int initialCapacity = Math.max(16, (maxEntries / SHARD_COUNT) * 2);
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            m_shards.add(new ConcurrentHashMap<String, Node<V>>(initialCapacity));
+        }
+    }
+
+    private ConcurrentHashMap<String, Node<V>> shardFor(String key) {
+        int h = key.hashCode();
+        // spread the high bits so shards don't line up with the map's own buckets
+        h ^= (h >>> 16);
+        return m_shards.get((h * 0x9E3779B9) >>> 28);
+    }
+
+    /**
+     * @return the cached value, or null. Counts a hit or a miss.
+     */
+    V get(String key) {
+        Node<V> node = shardFor(key).get(key);
+        if (node == null) {
+            m_misses.increment();
+            return null;
+        }
+        node.m_lastAccess = System.nanoTime();
+        m_hits.increment();
+        return node.m_value;
+    }
+
+    /**
+     * Look up without touching the statistics or the access time.
+     */
+    V peek(String key) {
+        Node<V> node = shardFor(key).get(key);
+        return node == null ? null : node.m_value;
+    }
+
+    /**
+     * Insert a value unless the key is already present.
+     * @return the value already in the cache, or null if the new value was inserted
+     */
+    V putIfAbsent(String key, V value) {
+        Node<V> node = new Node<V>(value, m_weigher.weigh(value));
+        Node<V> existing = shardFor(key).putIfAbsent(key, node);
+        if (existing != null) {
+            return existing.m_value;
+        }
+        m_insertions.increment();
+        m_entries.incrementAndGet();
+        m_weight.addAndGet(node.m_weight);
+        evictIfNeeded(node);
+        return null;
+    }
+
+    /**
+     * Atomically replace the value for a key if it is still mapped to {@code expected}.
+     * The entry keeps its place in the cache, only its weight is re-measured.
+     * @return true if the value was replaced
+     */
+    boolean replace(String key, V expected, V value) {
+        ConcurrentHashMap<String, Node<V>> shard = shardFor(key);
+        Node<V> current = shard.get(key);
+        if (current == null || current.m_value != expected) {
+            return false;
+        }
+        Node<V> node = new Node<V>(value, m_weigher.weigh(value));
+        if (!shard.replace(key, current, node)) {
+            return false;
+        }
+        m_weight.addAndGet(node.m_weight - current.m_weight);
+        evictIfNeeded(node);
+        return true;
+    }
+
+    void clear() {
+        for (ConcurrentHashMap<String, Node<V>> shard : m_shards) {
+            for (Map.Entry<String, Node<V>> e : shard.entrySet()) {
+                if (shard.remove(e.getKey(), e.getValue())) {
+                    m_entries.decrementAndGet();
+                    m_weight.addAndGet(-e.getValue().m_weight);
+                }
+            }
+        }
+    }
+
+    private void evictIfNeeded(Node<V> inserted) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (m_entries.get() > m_maxEntries || m_weight.get() > m_maxWeight) {
+            // Walk the shards from a random starting point and evict the
+            // coldest sampled entry of the first non-empty one. Don't evict
+            // the entry being inserted unless it is all that's left.
+            int start = random.nextInt(SHARD_COUNT);
+            boolean evicted = false;
+            for (int i = 0; i < SHARD_COUNT && !evicted; i++) {
+                evicted = evictOldest(m_shards.get((start + i) & (SHARD_COUNT - 1)), inserted, random);
+            }
+            if (!evicted) {
+                // Nothing but the new entry is left; a single oversized
+                // value may still be cached on its own.
+                return;
+            }
+        }
+    }
+
+    private boolean evictOldest(ConcurrentHashMap<String, Node<V>> shard, Node<V> inserted,
+                                ThreadLocalRandom random) {
+        // Halving the shard's spliterator down a random path leaves a random
+        // slice of its table holding about EVICTION_SAMPLES entries. The halves
+        // passed over on the way are kept, nearest first, to top the sample up
+        // from the neighbouring part of the table when the slice holds too few.
+        Spliterator<Map.Entry<String, Node<V>>> slice = shard.entrySet().spliterator();
+        ArrayDeque<Spliterator<Map.Entry<String, Node<V>>>> passedOver =
+                new ArrayDeque<Spliterator<Map.Entry<String, Node<V>>>>();
+        for (long n = shard.size(); n > EVICTION_SAMPLES; n >>>= 1) {
+            Spliterator<Map.Entry<String, Node<V>>> half = slice.trySplit();
+            if (half == null) {
+                break;
+            }
+            if (random.nextBoolean()) {
+                passedOver.push(slice);
+                slice = half;
+            }
+            else {
+                passedOver.push(half);
+            }
+        }
+        Iterator<Map.Entry<String, Node<V>>> entries = Spliterators.iterator(slice);
+        Map.Entry<String, Node<V>> oldest = null;
+        for (int i = 0; i < EVICTION_SAMPLES; i++) {
+            while (!entries.hasNext() && !passedOver.isEmpty()) {
+                entries = Spliterators.iterator(passedOver.pop());
+            }
+            if (!entries.hasNext()) {
+                break;
+            }
+            Map.Entry<String, Node<V>> e = entries.next();
+            if (e.getValue() == inserted) {
+                continue;
+            }
+            if (oldest == null || e.getValue().m_lastAccess < oldest.getValue().m_lastAccess) {
+                oldest = e;
+            }
+        }
+        if (oldest == null) {
+            return false;
+        }
+        if (shard.remove(oldest.getKey(), oldest.getValue())) {
+            m_evictions.increment();
+            m_entries.decrementAndGet();
+            m_weight.addAndGet(-oldest.getValue().m_weight);
+        }
+        // A concurrent writer may have beaten us to it, which frees space just as well.
+        return true;
+    }
+
+    int size() {
+        return m_entries.get();
+    }
+
+    long weight() {
+        return m_weight.get();
+    }
+
+    int maxEntries() {
+        return m_maxEntries;
+    }
+
+    long maxWeight() {
+        return m_maxWeight;
+    }
+
+    long hits() {
+        return m_hits.sum();
+    }
+
+    long misses() {
+        return m_misses.sum();
+    }
+
+    long insertions() {
+        return m_insertions.sum();
+    }
+
+    long evictions() {
+        return m_evictions.sum();
+    }
+}
@@ -30,10 +30,37 @@ public class DatabaseEstimates {
 
     HashMap<String, TableEstimates> tables = new HashMap<String, TableEstimates>();
 
+    // statistics gathered by @AnalyzeTable, empty if never analyzed
+    private final TableStatistics m_statistics;
+
+    public DatabaseEstimates() {
+        this(TableStatistics.EMPTY);
+    }
+
+    public DatabaseEstimates(TableStatistics statistics) {
+        m_statistics = statistics;
+    }
+
     public TableEstimates getEstimatesForTable(String tableName) {
-        if (tables.containsKey(tableName) == false)
-            tables.put(tableName, new TableEstimates());
+        if (tables.containsKey(tableName) == false) {
+            TableEstimates estimates = new TableEstimates();
+            TableStatistics.Table stats = m_statistics.getTable(tableName);
+            if (stats != null) {
+                // the analyzed row count replaces the default guesses
+                estimates.maxTuples = Math.max(1, stats.getRowCount());
+                estimates.minTuples = estimates.maxTuples;
+            }
+            tables.put(tableName, estimates);
+        }
 
         return tables.get(tableName);
     }
+
+    public boolean hasStatistics() {
+        return ! m_statistics.isEmpty();
+    }
+
+    public TableStatistics getStatistics() {
+        return m_statistics;
+    }
 }
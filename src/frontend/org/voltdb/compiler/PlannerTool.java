@@ -30,6 +30,7 @@ import org.voltdb.StatsSelector;
 import org.voltdb.VoltDB;
 import org.voltdb.catalog.Database;
 import org.voltdb.common.Constants;
+import org.voltdb.planner.AbstractCostModel;
 import org.voltdb.planner.BoundPlan;
 import org.voltdb.planner.CompiledPlan;
 import org.voltdb.planner.CorePlan;
@@ -57,6 +58,9 @@ public class PlannerTool {
 
     private static final int AD_HOC_JOINED_TABLE_LIMIT = 5;
 
+    // parse simple single table ad hoc statements without going through HSQL
+    private static final boolean USE_NATIVE_PARSER = !Boolean.getBoolean("DISABLE_NATIVE_ADHOC_PARSER");
+
     public PlannerTool(final Database database, byte[] catalogHash)
     {
         assert(database != null);
@@ -110,7 +114,7 @@ public class PlannerTool {
 
     public AdHocPlannedStatement planSqlForTest(String sqlIn) {
         StatementPartitioning infer = StatementPartitioning.inferPartitioning();
-        return planSql(sqlIn, infer, false, null);
+        return planSql(sqlIn, infer, false, null, TableStatistics.EMPTY);
     }
 
     private void logException(Exception e, String fmtLabel) {
@@ -156,7 +160,7 @@ public class PlannerTool {
     }
 
     synchronized AdHocPlannedStatement planSql(String sqlIn, StatementPartitioning partitioning,
-            boolean isExplainMode, final Object[] userParams) {
+            boolean isExplainMode, final Object[] userParams, TableStatistics statistics) {
 
         CacheUse cacheUse = CacheUse.FAIL;
         if (m_plannerStats != null) {
@@ -197,12 +201,13 @@ public class PlannerTool {
             // PLAN THE STMT
             //////////////////////
 
-            TrivialCostModel costModel = new TrivialCostModel();
-            DatabaseEstimates estimates = new DatabaseEstimates();
+            DatabaseEstimates estimates = new DatabaseEstimates(statistics);
+            AbstractCostModel costModel = AbstractCostModel.forEstimates(estimates);
             QueryPlanner planner = new QueryPlanner(
                     sql, "PlannerTool", "PlannerToolProc", m_database,
                     partitioning, m_hsql, estimates, !VoltCompiler.DEBUG_MODE,
                     AD_HOC_JOINED_TABLE_LIMIT, costModel, null, null, DeterminismMode.FASTER);
+            planner.setUseNativeParser(USE_NATIVE_PARSER);
 
             CompiledPlan plan = null;
             String[] extractedLiterals = null;
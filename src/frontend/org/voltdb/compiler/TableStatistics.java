@@ -0,0 +1,198 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.Database;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Row counts and number of distinct values per column gathered from the data
+ * by {@code @AnalyzeTable}, for the planner to cost plans with. All numbers
+ * are per partition, which is where the fragments of a plan run.
+ *
+ * Instances are immutable, an analyze run produces a new instance that is
+ * merged over the previous one and swapped into the catalog context.
+ */
+public class TableStatistics {
+
+    public static final TableStatistics EMPTY =
+            new TableStatistics(Collections.<String, Table>emptyMap());
+
+    /** Statistics of one table. Column names are upper case as in the catalog. */
+    public static class Table {
+        private final String m_name;
+        private final long m_rowCount;
+        private final Map<String, Long> m_distinctValues;
+        private final long m_analyzedAt;
+
+        public Table(String name, long rowCount, Map<String, Long> distinctValues, long analyzedAt) {
+            m_name = name;
+            m_rowCount = rowCount;
+            m_distinctValues = Collections.unmodifiableMap(new HashMap<String, Long>(distinctValues));
+            m_analyzedAt = analyzedAt;
+        }
+
+        public String getName() {
+            return m_name;
+        }
+
+        public long getRowCount() {
+            return m_rowCount;
+        }
+
+        /**
+         * @return the number of distinct values of the column in a partition,
+         * or -1 if it was not collected
+         */
+        public long getDistinctValues(String columnName) {
+            Long ndv = m_distinctValues.get(columnName);
+            return ndv == null ? -1 : ndv;
+        }
+
+        public Map<String, Long> getDistinctValues() {
+            return m_distinctValues;
+        }
+
+        /** @return wall clock time in milliseconds of the analyze run */
+        public long getAnalyzedAt() {
+            return m_analyzedAt;
+        }
+    }
+
+    private final Map<String, Table> m_tables;
+
+    private TableStatistics(Map<String, Table> tables) {
+        m_tables = tables;
+    }
+
+    public static TableStatistics of(Iterable<Table> tables) {
+        Map<String, Table> map = new HashMap<>();
+        for (Table table : tables) {
+            map.put(table.getName(), table);
+        }
+        return new TableStatistics(Collections.unmodifiableMap(map));
+    }
+
+    /**
+     * @return the statistics of the table, or null if it was never analyzed
+     */
+    public Table getTable(String tableName) {
+        return m_tables.get(tableName);
+    }
+
+    public boolean isEmpty() {
+        return m_tables.isEmpty();
+    }
+
+    public int getTableCount() {
+        return m_tables.size();
+    }
+
+    /**
+     * @return statistics with the tables of {@code newer} replacing the ones
+     * of this instance
+     */
+    public TableStatistics merge(TableStatistics newer) {
+        if (newer.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return newer;
+        }
+        Map<String, Table> map = new HashMap<>(m_tables);
+        map.putAll(newer.m_tables);
+        return new TableStatistics(Collections.unmodifiableMap(map));
+    }
+
+    /**
+     * Drop the tables that are no longer in the schema. Statistics of tables
+     * that were altered are kept, the row count is still a better guess than
+     * the planner's defaults until the next analyze.
+     */
+    public TableStatistics retainTables(Database database) {
+        if (isEmpty()) {
+            return this;
+        }
+        Map<String, Table> map = new HashMap<>();
+        for (Table table : m_tables.values()) {
+            if (database.getTables().get(table.getName()) != null) {
+                map.put(table.getName(), table);
+            }
+        }
+        if (map.size() == m_tables.size()) {
+            return this;
+        }
+        return new TableStatistics(Collections.unmodifiableMap(map));
+    }
+
+    /**
+     * One row per table with a null COLUMN_NAME, followed by one row per
+     * column with a known number of distinct values.
+     */
+    public VoltTable toVoltTable() {
+        VoltTable vt = new VoltTable(
+                new ColumnInfo("TABLE_NAME", VoltType.STRING),
+                new ColumnInfo("COLUMN_NAME", VoltType.STRING),
+                new ColumnInfo("ROW_COUNT", VoltType.BIGINT),
+                new ColumnInfo("DISTINCT_VALUES", VoltType.BIGINT),
+                new ColumnInfo("ANALYZED_AT", VoltType.TIMESTAMP));
+        for (Table table : m_tables.values()) {
+            TimestampType analyzedAt = new TimestampType(table.getAnalyzedAt() * 1000);
+            vt.addRow(table.getName(), null, table.getRowCount(), null, analyzedAt);
+            for (Map.Entry<String, Long> e : table.getDistinctValues().entrySet()) {
+                vt.addRow(table.getName(), e.getKey(), table.getRowCount(), e.getValue(), analyzedAt);
+            }
+        }
+        return vt;
+    }
+
+    public static TableStatistics fromVoltTable(VoltTable vt) {
+        Map<String, Long> rowCounts = new HashMap<>();
+        Map<String, Long> analyzedAt = new HashMap<>();
+        Map<String, Map<String, Long>> distinctValues = new HashMap<>();
+        vt.resetRowPosition();
+        while (vt.advanceRow()) {
+            String tableName = vt.getString("TABLE_NAME");
+            rowCounts.put(tableName, vt.getLong("ROW_COUNT"));
+            analyzedAt.put(tableName, vt.getTimestampAsLong("ANALYZED_AT") / 1000);
+            Map<String, Long> columns = distinctValues.get(tableName);
+            if (columns == null) {
+                columns = new HashMap<>();
+                distinctValues.put(tableName, columns);
+            }
+            String columnName = vt.getString("COLUMN_NAME");
+            if (columnName != null) {
+                columns.put(columnName, vt.getLong("DISTINCT_VALUES"));
+            }
+        }
+        Map<String, Table> tables = new HashMap<>();
+        for (Map.Entry<String, Long> e : rowCounts.entrySet()) {
+            String tableName = e.getKey();
+            tables.put(tableName, new Table(tableName, e.getValue(),
+                    distinctValues.get(tableName), analyzedAt.get(tableName)));
+        }
+        return new TableStatistics(Collections.unmodifiableMap(tables));
+    }
+}
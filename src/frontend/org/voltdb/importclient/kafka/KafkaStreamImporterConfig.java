@@ -64,13 +64,14 @@ public class KafkaStreamImporterConfig implements ImporterConfig
     private final String m_procedure;
     private final int m_partition;
     private HostAndPort m_partitionLeader;
-    private final FormatterBuilder m_formatterBuilder;
+    private final FormatterBuilder<?> m_formatterBuilder;
     private final KafkaImporterCommitPolicy m_commitPolicy;
     private final long m_triggerValue;
+    private final int m_batchSize;
 
     private KafkaStreamImporterConfig(URI uri, List<HostAndPort> brokers, String topic, int partition, HostAndPort partitionLeader,
             String groupId, int fetchSize, int soTimeout, String procedure, String commitPolicy,
-            FormatterBuilder formatterBuilder)
+            FormatterBuilder<?> formatterBuilder, int batchSize)
     {
         m_uri = uri;
         m_brokers = brokers;
@@ -86,6 +87,7 @@ public class KafkaStreamImporterConfig implements ImporterConfig
         m_triggerValue = KafkaImporterCommitPolicy.fromStringTriggerValue(commitPolicy, m_commitPolicy);
 
         m_formatterBuilder = formatterBuilder;
+        m_batchSize = batchSize;
     }
 
 
@@ -155,7 +157,15 @@ public class KafkaStreamImporterConfig implements ImporterConfig
         return m_triggerValue;
     }
 
-    public static Map<URI, ImporterConfig> createConfigEntries(Properties props,  FormatterBuilder formatterBuilder)
+    /**
+     * Number of messages submitted together as one procedure batch. A value greater
+     * than one switches the importer to pipelined fetching and parallel formatting.
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    public static Map<URI, ImporterConfig> createConfigEntries(Properties props,  FormatterBuilder<?> formatterBuilder)
     {
         String brokers = props.getProperty("brokers", "").trim();
         if (brokers.isEmpty()) {
@@ -196,6 +206,10 @@ public class KafkaStreamImporterConfig implements ImporterConfig
             throw new IllegalArgumentException("Missing topic(s).");
         }
         String commitPolicy = props.getProperty("commit.policy", "none");
+        int batchSize = Integer.parseInt(props.getProperty("batch.size", "1").trim());
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch.size must be greater than 0");
+        }
         Map<URI, ImporterConfig> configs = new HashMap<>();
         for (String topic : ttopicList) {
             if (topic.length() > topicMaxNameLength) {
@@ -206,7 +220,7 @@ public class KafkaStreamImporterConfig implements ImporterConfig
                 throw new IllegalArgumentException("topic name " + topic + " is illegal, contains a character other than ASCII alphanumerics, '_' and '-'");
             }
             try {
-                configs.putAll(getConfigsForPartitions(key, hapList, topic, groupId, procedure, soTimeout, fetchSize, commitPolicy, formatterBuilder));
+                configs.putAll(getConfigsForPartitions(key, hapList, topic, groupId, procedure, soTimeout, fetchSize, commitPolicy, formatterBuilder, batchSize));
             } catch(Exception e) {
                 m_logger.warn(String.format("Error trying to get partition information for topic [%s] on host [%s]", topic, hapList.get(0).getHost()), e);
             }
@@ -230,7 +244,8 @@ public class KafkaStreamImporterConfig implements ImporterConfig
     }
 
     private static Map<URI, KafkaStreamImporterConfig> getConfigsForPartitions(String key, List<HostAndPort> brokerList,
-            final String topic, String groupId, String procedure, int soTimeout, int fetchSize, String commitPolicy, FormatterBuilder formatterBuilder)
+            final String topic, String groupId, String procedure, int soTimeout, int fetchSize, String commitPolicy, FormatterBuilder<?> formatterBuilder,
+            int batchSize)
     {
         SimpleConsumer consumer = null;
         Map<URI, KafkaStreamImporterConfig> configs = new HashMap<>();
@@ -274,7 +289,7 @@ public class KafkaStreamImporterConfig implements ImporterConfig
                         }
                         KafkaStreamImporterConfig config = new KafkaStreamImporterConfig(uri, brokerList, topic,
                                 part.partitionId(), new HostAndPort(leader.host(), leader.port()),
-                                groupId, fetchSize, soTimeout, procedure, commitPolicy, formatterBuilder);
+                                groupId, fetchSize, soTimeout, procedure, commitPolicy, formatterBuilder, batchSize);
                         configs.put(uri, config);
                     }
                 }
@@ -397,7 +412,7 @@ public class KafkaStreamImporterConfig implements ImporterConfig
     }
 
     @Override
-    public FormatterBuilder getFormatterBuilder()
+    public FormatterBuilder<?> getFormatterBuilder()
     {
         return m_formatterBuilder;
     }
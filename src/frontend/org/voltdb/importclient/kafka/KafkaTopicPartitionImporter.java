@@ -22,14 +22,23 @@ import static java.util.Collections.singletonMap;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.LongBinaryOperator;
 
 import org.voltcore.logging.Level;
+import org.voltcore.utils.CoreUtils;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcedureCallback;
 import org.voltdb.importclient.kafka.KafkaStreamImporterConfig.HostAndPort;
@@ -72,6 +81,11 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
     private final static PartitionOffsetRequestInfo EARLIEST_OFFSET =
             new PartitionOffsetRequestInfo(kafka.api.OffsetRequest.EarliestTime(), 1);
 
+    // number of threads, shared by all partition importers running with batch.size > 1, that format messages
+    private final static int FORMATTER_THREADS =
+            Integer.getInteger("KAFKA_IMPORT_FORMATTER_THREADS", Math.max(1, CoreUtils.availableProcessors() / 2));
+    private final static ExecutorService s_formatterPool = createFormatterPool();
+
     private final int m_waitSleepMs = 1;
     private final AtomicBoolean m_dead = new AtomicBoolean(false);
     //Start with invalid so consumer will fetch it.
@@ -89,6 +103,14 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
     boolean noTransaction = false;
     //Counters for commit policies.
     private long m_lastCommitTime = 0;
+    //Formatters are not thread safe, each formatter pool thread gets its own.
+    private final ThreadLocal<Formatter> m_poolFormatter = new ThreadLocal<Formatter>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected Formatter initialValue() {
+            return m_config.getFormatterBuilder().create();
+        }
+    };
 
     public KafkaTopicPartitionImporter(KafkaStreamImporterConfig config)
     {
@@ -371,6 +393,20 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
                 );
     }
 
+    private static ExecutorService createFormatterPool() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(FORMATTER_THREADS, FORMATTER_THREADS,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                CoreUtils.getThreadFactory("Kafka Import Formatter"));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private FetchRequest buildFetchRequest(long offset) {
+        return m_fetchRequestBuilder.addFetch(m_topicAndPartition.topic(),
+                m_topicAndPartition.partition(), offset, m_config.getFetchSize())
+                .build();
+    }
+
     @Override
     protected void accept() {
         info(null, "Starting partition fetcher for " + m_topicAndPartition);
@@ -378,6 +414,21 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
         AtomicLong cbcnt = new AtomicLong(0);
         @SuppressWarnings("unchecked")
         Formatter formatter = m_config.getFormatterBuilder().create();
+        final int batchSize = m_config.getBatchSize();
+        //With batching the next fetch goes out while the current one is formatted and submitted.
+        final Prefetcher<FetchResponse> prefetcher = (batchSize > 1) ? new Prefetcher<FetchResponse>(getTaskThreadName() + " - Prefetch") {
+            @Override
+            Callable<FetchResponse> request(long offset) {
+                final FetchRequest req = buildFetchRequest(offset);
+                final SimpleConsumer consumer = m_consumer;
+                return new Callable<FetchResponse>() {
+                    @Override
+                    public FetchResponse call() throws Exception {
+                        return consumer.fetch(req);
+                    }
+                };
+            }
+        } : null;
         try {
             //Start with the starting leader.
             resetLeader();
@@ -411,12 +462,13 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
                 }
                 long currentFetchCount = 0;
                 //Build fetch request of we have a valid offset and not too many are pending.
-                FetchRequest req = m_fetchRequestBuilder.addFetch(m_topicAndPartition.topic(),
-                                m_topicAndPartition.partition(), m_currentOffset.get(), m_config.getFetchSize())
-                                .build();
                 FetchResponse fetchResponse = null;
                 try {
-                    fetchResponse = m_consumer.fetch(req);
+                    if (prefetcher != null) {
+                        fetchResponse = prefetcher.fetch(m_currentOffset.get());
+                    } else {
+                        fetchResponse = m_consumer.fetch(buildFetchRequest(m_currentOffset.get()));
+                    }
                     if (fetchResponse == null) {
                         sleepCounter = backoffSleep(sleepCounter);
                         continue;
@@ -449,6 +501,8 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
                     continue;
                 }
                 sleepCounter = 1;
+                //Pipelined messages are collected and formatted on the formatter pool.
+                List<MessageAndOffset> messages = (prefetcher != null) ? new ArrayList<MessageAndOffset>() : null;
                 for (MessageAndOffset messageAndOffset : fetchResponse.messageSet(m_topicAndPartition.topic(), m_topicAndPartition.partition())) {
                     //You may be catchin up so dont sleep.
                     currentFetchCount++;
@@ -458,6 +512,10 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
                     if (currentOffset < m_currentOffset.get()) {
                         continue;
                     }
+                    if (messages != null) {
+                        messages.add(messageAndOffset);
+                        continue;
+                    }
                     ByteBuffer payload = messageAndOffset.message().payload();
                     Object params[] = null;
                     try {
@@ -482,6 +540,10 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
                         break;
                     }
                 }
+                if (messages != null && !messages.isEmpty()) {
+                    prefetcher.prefetch(messages.get(messages.size() - 1).nextOffset());
+                    submitCount += submitBatches(messages, batchSize, cbcnt);
+                }
                 if (!shouldRun()) {
                     break;
                 }
@@ -500,6 +562,9 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
         } catch (Exception ex) {
             error(ex, "Failed to start topic partition fetcher for " + m_topicAndPartition);
         } finally {
+            if (prefetcher != null) {
+                prefetcher.shutdown();
+            }
             //Dont care about return as it wil force a commit.
             commitOffset();
             KafkaStreamImporterConfig.closeConsumer(m_consumer);
@@ -517,6 +582,148 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
 
     }
 
+    /**
+     * Format the messages of a fetch on the formatter pool, in groups of {@code batchSize},
+     * and submit each group as one procedure batch in offset order.
+     * @return number of messages submitted
+     */
+    long submitBatches(List<MessageAndOffset> messages, int batchSize, AtomicLong cbcnt) throws Exception {
+        List<Future<Object[][]>> formatted = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i += batchSize) {
+            final List<MessageAndOffset> chunk = messages.subList(i, Math.min(messages.size(), i + batchSize));
+            formatted.add(s_formatterPool.submit(new Callable<Object[][]>() {
+                @Override
+                public Object[][] call() throws Exception {
+                    return format(chunk);
+                }
+            }));
+        }
+
+        long submitted = 0;
+        for (int i = 0; i < formatted.size(); i++) {
+            List<MessageAndOffset> chunk = messages.subList(i * batchSize, Math.min(messages.size(), (i + 1) * batchSize));
+            Object[][] params;
+            try {
+                params = formatted.get(i).get();
+            } catch (ExecutionException e) {
+                cancel(formatted, i + 1);
+                Throwable cause = e.getCause();
+                throw (cause instanceof Exception) ? (Exception) cause : e;
+            }
+
+            List<Object[]> rows = new ArrayList<>(chunk.size());
+            long[] nextOffsets = new long[chunk.size()];
+            long firstOffset = -1;
+            for (int j = 0; j < chunk.size(); j++) {
+                MessageAndOffset messageAndOffset = chunk.get(j);
+                m_gapTracker.submit(messageAndOffset.nextOffset());
+                if (params[j] == null) {
+                    //Could not be formatted, nothing to wait for.
+                    m_gapTracker.commit(messageAndOffset.nextOffset());
+                    continue;
+                }
+                if (firstOffset == -1) {
+                    firstOffset = messageAndOffset.offset();
+                }
+                nextOffsets[rows.size()] = messageAndOffset.nextOffset();
+                rows.add(params[j]);
+            }
+            if (!rows.isEmpty()) {
+                TopicPartitionBatchCallback cb = new TopicPartitionBatchCallback(firstOffset,
+                        Arrays.copyOf(nextOffsets, rows.size()), cbcnt, m_gapTracker, m_dead, m_pauseOffset);
+                if (!noTransaction && !callProcedureBatch(m_config.getProcedure(), rows, cb)) {
+                    if (isDebugEnabled()) {
+                        debug(null, "Failed to process batch of " + rows.size() + " invocations possibly bad data");
+                    }
+                    for (int j = 0; j < rows.size(); j++) {
+                        m_gapTracker.commit(nextOffsets[j]);
+                    }
+                }
+            }
+            submitted += chunk.size();
+            m_currentOffset.set(chunk.get(chunk.size() - 1).nextOffset());
+            if (!shouldRun()) {
+                cancel(formatted, i + 1);
+                break;
+            }
+        }
+        return submitted;
+    }
+
+    // Runs on the formatter pool. Messages that fail to format are left as null.
+    @SuppressWarnings("unchecked")
+    private Object[][] format(List<MessageAndOffset> chunk) {
+        Formatter formatter = m_poolFormatter.get();
+        Object[][] params = new Object[chunk.size()][];
+        for (int i = 0; i < chunk.size(); i++) {
+            ByteBuffer payload = chunk.get(i).message().payload();
+            try {
+                params[i] = formatter.transform(payload);
+            } catch (FormatException e) {
+                rateLimitedLog(Level.WARN, e, "Failed to tranform data at offset %d", chunk.get(i).offset());
+            }
+        }
+        return params;
+    }
+
+    private static void cancel(List<Future<Object[][]>> futures, int from) {
+        for (int i = from; i < futures.size(); i++) {
+            futures.get(i).cancel(false);
+        }
+    }
+
+    /**
+     * Issues the fetch for the next offset on a separate thread, so that the response
+     * is on its way while the current one is processed.
+     */
+    abstract static class Prefetcher<R> {
+        private final ExecutorService m_es;
+        private Future<R> m_pending = null;
+        private long m_pendingOffset = -1;
+
+        Prefetcher(String threadName) {
+            m_es = CoreUtils.getSingleThreadExecutor(threadName);
+        }
+
+        /**
+         * @return the fetch for an offset, bound to the consumer in use when it is created
+         */
+        abstract Callable<R> request(long offset);
+
+        void prefetch(long offset) {
+            m_pendingOffset = offset;
+            m_pending = m_es.submit(request(offset));
+        }
+
+        /**
+         * Return the prefetched response if it was for this offset, otherwise fetch now.
+         * An outstanding prefetch is always waited for first so that it is done with
+         * the consumer before the consumer can be replaced.
+         */
+        R fetch(long offset) throws Exception {
+            Future<R> pending = m_pending;
+            m_pending = null;
+            if (pending != null) {
+                try {
+                    R response = pending.get();
+                    if (m_pendingOffset == offset) {
+                        return response;
+                    }
+                } catch (ExecutionException e) {
+                    if (m_pendingOffset == offset) {
+                        Throwable cause = e.getCause();
+                        throw (cause instanceof Exception) ? (Exception) cause : e;
+                    }
+                }
+            }
+            return request(offset).call();
+        }
+
+        void shutdown() {
+            m_es.shutdownNow();
+        }
+    }
+
     //Based on commit policy
     public boolean shouldCommit() {
         switch(m_config.getCommitPolicy()) {
@@ -741,4 +948,43 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
             }
         }
     }
+
+    final static class TopicPartitionBatchCallback implements ProcedureCallback
+    {
+        private final long m_offset;
+        private final long[] m_nextoffsets;
+        private final AtomicLong m_cbcnt;
+        private final CommitTracker m_tracker;
+        private final AtomicBoolean m_dontCommit;
+        private final AtomicLong m_pauseOffset;
+
+        public TopicPartitionBatchCallback(
+                final long firstoffset,
+                final long[] nextoffsets,
+                final AtomicLong cbcnt,
+                final CommitTracker tracker,
+                final AtomicBoolean dontCommit,
+                final AtomicLong pauseOffset) {
+            m_offset = firstoffset;
+            m_nextoffsets = nextoffsets;
+            m_cbcnt = cbcnt;
+            m_tracker = tracker;
+            m_dontCommit = dontCommit;
+            m_pauseOffset = pauseOffset;
+        }
+
+        @Override
+        public void clientCallback(ClientResponse response) throws Exception {
+
+            m_cbcnt.addAndGet(m_nextoffsets.length);
+            if (!m_dontCommit.get() && response.getStatus() != ClientResponse.SERVER_UNAVAILABLE) {
+                for (long nextoffset : m_nextoffsets) {
+                    m_tracker.commit(nextoffset);
+                }
+            }
+            if (response.getStatus() == ClientResponse.SERVER_UNAVAILABLE) {
+                m_pauseOffset.compareAndSet(-1, m_offset);
+            }
+        }
+    }
 }
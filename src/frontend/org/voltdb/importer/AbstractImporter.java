@@ -18,6 +18,7 @@
 package org.voltdb.importer;
 
 import java.net.URI;
+import java.util.List;
 import java.util.function.Function;
 
 import org.voltcore.logging.Level;
@@ -114,6 +115,42 @@ public abstract class AbstractImporter
         }
     }
 
+    /**
+     * This should be used by importer implementations to execute a stored procedure for a group of rows
+     * at once. The rows of a default insert or upsert procedure are loaded with one transaction per
+     * partition, the rows of other procedures are executed one after the other. The callback is
+     * invoked once, after every row has been processed.
+     *
+     * @param procedure name of the procedure to execute
+     * @param rows parameters of each procedure execution
+     * @param callback the callback that will receive the first failed response, or a successful one
+     * @return returns true if the rows were queued for execution; false otherwise
+     */
+    protected final boolean callProcedureBatch(String procedure, List<Object[]> rows, ProcedureCallback callback)
+    {
+        try {
+            // Every row is queued before the first one can complete
+            for (int i = 0; i < rows.size(); i++) {
+                m_importServerAdapter.reportQueued(getName(), procedure);
+            }
+            boolean result = m_importServerAdapter.callProcedureBatch(this,
+                                                                      m_backPressurePredicate,
+                                                                      callback, procedure, rows);
+            if (!result) {
+                for (int i = 0; i < rows.size(); i++) {
+                    m_importServerAdapter.reportFailure(getName(), procedure, true);
+                }
+            }
+            return result;
+        } catch (Exception ex) {
+            rateLimitedLog(Level.ERROR, ex, "%s: Error trying to import", getName());
+            for (int i = 0; i < rows.size(); i++) {
+                m_importServerAdapter.reportFailure(getName(), procedure, true);
+            }
+            return false;
+        }
+    }
+
     /**
      * Called to stop the importer from processing more data.
      */
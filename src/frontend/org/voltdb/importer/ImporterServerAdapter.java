@@ -19,6 +19,7 @@ package org.voltdb.importer;
 
 import org.voltdb.client.ProcedureCallback;
 
+import java.util.List;
 import java.util.function.Function;
 
 
@@ -49,6 +50,21 @@ public interface ImporterServerAdapter {
      */
     public boolean callProcedure(AbstractImporter importer, Function<Integer, Boolean> backPressurePredicate, ProcedureCallback callback, String proc, Object... fieldList);
 
+    /**
+     * This is used by importers to execute a procedure for many rows as one request. Rows for the
+     * default insert or upsert procedure of a table are loaded with one transaction per partition,
+     * rows for any other procedure are executed one at a time.
+     *
+     * @param importer the calling importer instance
+     * @param backPressurePredicate see {@link #callProcedure}
+     * @param callback the callback object that is called once, after all rows have been processed,
+     * with the first failed response if any row failed
+     * @param proc the name of the procedure that is to be executed
+     * @param rows the parameters for each execution of the procedure
+     * @return returns true if the rows were queued; false otherwise.
+     */
+    public boolean callProcedureBatch(AbstractImporter importer, Function<Integer, Boolean> backPressurePredicate, ProcedureCallback callback, String proc, List<Object[]> rows);
+
     /**
      * This should be used by importers to report failure while trying to execute a procedure.
      *
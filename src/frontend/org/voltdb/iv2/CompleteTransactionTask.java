@@ -20,7 +20,9 @@ package org.voltdb.iv2;
 import java.io.IOException;
 
 import org.voltcore.messaging.Mailbox;
+import org.voltcore.messaging.TransactionInfoBaseMessage;
 import org.voltdb.PartitionDRGateway;
+import org.voltdb.ProcedureResultCache;
 import org.voltdb.SiteProcedureConnection;
 import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.dtxn.TransactionState;
@@ -66,6 +68,18 @@ public class CompleteTransactionTask extends TransactionTask
                     m_txnState.getBeginUndoToken(),
                     m_txnState.m_spHandle,
                     m_txnState.getUndoLog());
+            if (ProcedureResultCache.ENABLED) {
+                // results read while the writes were in flight on other sites are stale now
+                TransactionInfoBaseMessage notice = m_txnState.getNotice();
+                String procName = null;
+                if (notice instanceof FragmentTaskMessage) {
+                    procName = ((FragmentTaskMessage) notice).getProcedureName();
+                }
+                else if (notice instanceof Iv2InitiateTaskMessage) {
+                    procName = ((Iv2InitiateTaskMessage) notice).getStoredProcedureName();
+                }
+                ProcedureResultCache.recordWrite(procName);
+            }
         }
         if (!m_completeMsg.isRestart()) {
             doCommonSPICompleteActions();
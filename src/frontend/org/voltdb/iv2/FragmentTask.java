@@ -27,6 +27,7 @@ import org.voltcore.messaging.Mailbox;
 import org.voltcore.utils.CoreUtils;
 import org.voltdb.DependencyPair;
 import org.voltdb.ParameterSet;
+import org.voltdb.ProcedureResultCache;
 import org.voltdb.ProcedureRunner;
 import org.voltdb.SiteProcedureConnection;
 import org.voltdb.VoltTable;
@@ -141,6 +142,9 @@ public class FragmentTask extends TransactionTask
             if (m_txnState.getBeginUndoToken() == Site.kInvalidUndoToken) {
                 m_txnState.setBeginUndoToken(siteConnection.getLatestUndoToken());
             }
+            if (ProcedureResultCache.ENABLED) {
+                ProcedureResultCache.recordWrite(procName);
+            }
         }
 
         int originalTimeout = siteConnection.getBatchTimeout();
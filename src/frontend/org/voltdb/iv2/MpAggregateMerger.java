@@ -0,0 +1,392 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.json_voltpatches.JSONArray;
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.jni.Sha1Wrapper;
+import org.voltdb.messaging.FragmentTaskMessage;
+import org.voltdb.planner.ActivePlanRepository;
+import org.voltdb.plannodes.AggregatePlanNode;
+import org.voltdb.types.ExpressionType;
+
+/**
+ * Merges the partial groups the partitions send back for a coordinating
+ * aggregate that the planner marked for a parallel merge, before the
+ * coordinator fragment is handed to the buddy site. The rows are first
+ * hashed on their group keys into one shard per merge thread, one
+ * partition result at a time, and then each shard folds its rows into
+ * one row per group. The coordinator's hash aggregate then sees every
+ * group once instead of once per partition.
+ *
+ * The merge is an optimization only: if a plan can't be found or a sum
+ * would overflow, the partition results are passed on untouched and the
+ * EE aggregates (and reports) them as before.
+ */
+final class MpAggregateMerger {
+    private static final VoltLogger tmLog = new VoltLogger("TM");
+
+    // set to turn off merging partial groups on the MPI
+    static final boolean DISABLED = Boolean.getBoolean("DISABLE_MP_PARALLEL_MERGE");
+    // number of partial rows each merge thread must get for merging to be worth it,
+    // the coordinator's own serial aggregate handles anything smaller
+    static final int MIN_ROWS_PER_THREAD = Integer.getInteger("MP_PARALLEL_MERGE_MIN_ROWS_PER_THREAD", 10000);
+    // number of merge threads, and of shards the groups are hashed into
+    static final int THREADS = Math.max(1, Integer.getInteger("MP_PARALLEL_MERGE_THREADS",
+            Math.max(1, Math.min(8, CoreUtils.availableProcessors() / 2))));
+
+    private static final int MAX_CACHED_SPECS = 4096;
+
+    /**
+     * Where the group keys and aggregates are in the partial rows,
+     * as written by the planner with the marked aggregate node.
+     */
+    static final class MergeSpec {
+        final int[] m_groupByColumns;
+        final int[] m_aggregateColumns;
+        final ExpressionType[] m_aggregateTypes;
+
+        MergeSpec(int[] groupByColumns, int[] aggregateColumns, ExpressionType[] aggregateTypes) {
+            m_groupByColumns = groupByColumns;
+            m_aggregateColumns = aggregateColumns;
+            m_aggregateTypes = aggregateTypes;
+        }
+    }
+
+    private static final MergeSpec NO_MERGE = new MergeSpec(null, null, null);
+
+    // Merge spec of each coordinator plan seen so far, NO_MERGE for those without one
+    private static final Map<Sha1Wrapper, MergeSpec> s_specs = new ConcurrentHashMap<>();
+
+    private static class ExecutorHolder {
+        static final ExecutorService s_executor =
+                CoreUtils.getListeningExecutorService("MP Aggregate Merge", THREADS);
+    }
+
+    private MpAggregateMerger() {}
+
+    /**
+     * Replace the partition results feeding each fragment of the coordinator
+     * task with merged ones, where the fragment's plan asks for it and the
+     * results are large enough.
+     */
+    static void mergeInputs(FragmentTaskMessage task, Map<Integer, List<VoltTable>> inputs) {
+        if (DISABLED || THREADS < 2) {
+            return;
+        }
+        for (int i = 0; i < task.getFragmentCount(); i++) {
+            List<Integer> depIds = task.getInputDepIds(i);
+            if (depIds == null || depIds.size() != 1) {
+                continue;
+            }
+            List<VoltTable> tables = inputs.get(depIds.get(0));
+            if (tables == null || tables.size() < 2) {
+                continue;
+            }
+            MergeSpec spec = getMergeSpec(task.getPlanHash(i), task.getFragmentPlan(i));
+            if (spec == NO_MERGE) {
+                continue;
+            }
+            List<VoltTable> merged = merge(spec, tables, THREADS, MIN_ROWS_PER_THREAD,
+                    ExecutorHolder.s_executor);
+            if (merged != null) {
+                inputs.put(depIds.get(0), merged);
+            }
+        }
+    }
+
+    private static MergeSpec getMergeSpec(byte[] planHash, byte[] plan) {
+        Sha1Wrapper key = new Sha1Wrapper(planHash);
+        MergeSpec spec = s_specs.get(key);
+        if (spec != null) {
+            return spec;
+        }
+        if (plan == null) {
+            plan = ActivePlanRepository.planForPlanHash(planHash);
+            if (plan == null) {
+                // not loaded here, try again next time
+                return NO_MERGE;
+            }
+        }
+        try {
+            spec = parseMergeSpec(new JSONObject(new String(plan, "UTF-8")));
+        }
+        catch (Exception e) {
+            tmLog.warn("Unable to read the parallel merge spec of a coordinator fragment", e);
+            spec = null;
+        }
+        if (spec == null) {
+            spec = NO_MERGE;
+        }
+        // Ad hoc plans come and go, don't let their specs pile up
+        if (s_specs.size() >= MAX_CACHED_SPECS) {
+            s_specs.clear();
+        }
+        s_specs.put(key, spec);
+        return spec;
+    }
+
+    /**
+     * Find the plan node marked for a parallel merge in a fragment plan.
+     * @return its merge spec, or null if there is no such node
+     */
+    static MergeSpec parseMergeSpec(JSONObject plan) throws JSONException {
+        if (plan.has("PLAN_NODES")) {
+            return parseMergeSpec(plan.getJSONArray("PLAN_NODES"));
+        }
+        if (plan.has("PLAN_NODES_LISTS")) {
+            JSONArray lists = plan.getJSONArray("PLAN_NODES_LISTS");
+            for (int i = 0; i < lists.length(); i++) {
+                MergeSpec spec = parseMergeSpec(lists.getJSONObject(i).getJSONArray("PLAN_NODES"));
+                if (spec != null) {
+                    return spec;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static MergeSpec parseMergeSpec(JSONArray nodes) throws JSONException {
+        for (int i = 0; i < nodes.length(); i++) {
+            JSONObject node = nodes.getJSONObject(i);
+            if (node.isNull(AggregatePlanNode.Members.PARALLEL_MERGE.name())) {
+                continue;
+            }
+            JSONObject merge = node.getJSONObject(AggregatePlanNode.Members.PARALLEL_MERGE.name());
+            JSONArray groupBy = merge.getJSONArray(AggregatePlanNode.Members.MERGE_GROUPBY_COLUMNS.name());
+            JSONArray aggColumns = merge.getJSONArray(AggregatePlanNode.Members.MERGE_AGGREGATE_COLUMNS.name());
+            JSONArray aggs = node.getJSONArray(AggregatePlanNode.Members.AGGREGATE_COLUMNS.name());
+            if (aggs.length() != aggColumns.length()) {
+                return null;
+            }
+            int[] groupByColumns = new int[groupBy.length()];
+            for (int ii = 0; ii < groupByColumns.length; ii++) {
+                groupByColumns[ii] = groupBy.getInt(ii);
+            }
+            int[] aggregateColumns = new int[aggColumns.length()];
+            ExpressionType[] aggregateTypes = new ExpressionType[aggColumns.length()];
+            for (int ii = 0; ii < aggregateColumns.length; ii++) {
+                aggregateColumns[ii] = aggColumns.getInt(ii);
+                aggregateTypes[ii] = ExpressionType.get(
+                        aggs.getJSONObject(ii).getString(AggregatePlanNode.Members.AGGREGATE_TYPE.name()));
+            }
+            return new MergeSpec(groupByColumns, aggregateColumns, aggregateTypes);
+        }
+        return null;
+    }
+
+    /**
+     * Merge the partial groups of several partition results into one table
+     * per shard, each holding a disjoint set of groups. There are as many
+     * shards as threads that get at least {@code minRowsPerThread} rows each.
+     * @return the merged tables, or null if the rows could not be merged or
+     * are too few to need more than one thread
+     */
+    static List<VoltTable> merge(final MergeSpec spec, List<VoltTable> tables,
+            int threads, int minRowsPerThread, ExecutorService es) {
+        long rows = 0;
+        for (VoltTable table : tables) {
+            rows += table.getRowCount();
+        }
+        // Below this, hashing every row into a boxed copy and two rounds
+        // through the executor cost more than the serial aggregate saves.
+        final int shardCount = (int) Math.min(threads, rows / Math.max(1, minRowsPerThread));
+        if (shardCount < 2) {
+            return null;
+        }
+        final VoltTable.ColumnInfo[] schema = tables.get(0).getTableSchema();
+
+        // Phase 1: read each partition result and bucket its rows by the hash of their key
+        List<Callable<List<List<Object[]>>>> bucketTasks = new ArrayList<>(tables.size());
+        for (final VoltTable table : tables) {
+            bucketTasks.add(new Callable<List<List<Object[]>>>() {
+                @Override
+                public List<List<Object[]>> call() {
+                    return bucket(spec, table, shardCount);
+                }
+            });
+        }
+        final List<List<List<Object[]>>> buckets = invokeAll(es, bucketTasks);
+        if (buckets == null) {
+            return null;
+        }
+
+        // Phase 2: fold the rows of each shard into one row per group
+        List<Callable<VoltTable>> mergeTasks = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            final int shard = i;
+            mergeTasks.add(new Callable<VoltTable>() {
+                @Override
+                public VoltTable call() {
+                    return mergeShard(spec, schema, buckets, shard);
+                }
+            });
+        }
+        return invokeAll(es, mergeTasks);
+    }
+
+    private static <T> List<T> invokeAll(ExecutorService es, List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> f : es.invokeAll(tasks)) {
+                results.add(f.get());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException e) {
+            if ( ! (e.getCause() instanceof ArithmeticException)) {
+                tmLog.warn("Unable to merge partial aggregates in parallel", e.getCause());
+            }
+            return null;
+        }
+        return results;
+    }
+
+    /** Group key of a partial row, compared by value, varbinary content included. */
+    private static final class GroupKey {
+        final Object[] m_values;
+        final int m_hash;
+
+        GroupKey(Object[] values) {
+            m_values = values;
+            m_hash = Arrays.deepHashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return m_hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof GroupKey && Arrays.deepEquals(m_values, ((GroupKey) o).m_values);
+        }
+    }
+
+    /**
+     * Read the rows of one partition result, each followed by its group key,
+     * into one bucket per shard.
+     */
+    private static List<List<Object[]>> bucket(MergeSpec spec, VoltTable table, int shardCount) {
+        List<List<Object[]>> buckets = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            buckets.add(new ArrayList<Object[]>(table.getRowCount() / shardCount + 1));
+        }
+        final int columnCount = table.getColumnCount();
+        final VoltType[] types = new VoltType[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            types[c] = table.getColumnType(c);
+        }
+        table.resetRowPosition();
+        while (table.advanceRow()) {
+            Object[] row = new Object[columnCount + 1];
+            for (int c = 0; c < columnCount; c++) {
+                Object value = table.get(c, types[c]);
+                row[c] = table.wasNull() ? null : value;
+            }
+            Object[] keyValues = new Object[spec.m_groupByColumns.length];
+            for (int k = 0; k < keyValues.length; k++) {
+                keyValues[k] = row[spec.m_groupByColumns[k]];
+            }
+            GroupKey key = new GroupKey(keyValues);
+            row[columnCount] = key;
+            int h = key.hashCode();
+            h ^= (h >>> 16);
+            buckets.get((h & 0x7fffffff) % shardCount).add(row);
+        }
+        return buckets;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static VoltTable mergeShard(MergeSpec spec, VoltTable.ColumnInfo[] schema,
+            List<List<List<Object[]>>> buckets, int shard) {
+        final int columnCount = schema.length;
+        Map<GroupKey, Object[]> groups = new LinkedHashMap<>();
+        for (List<List<Object[]>> tableBuckets : buckets) {
+            for (Object[] row : tableBuckets.get(shard)) {
+                GroupKey key = (GroupKey) row[columnCount];
+                Object[] group = groups.get(key);
+                if (group == null) {
+                    groups.put(key, row);
+                    continue;
+                }
+                for (int a = 0; a < spec.m_aggregateColumns.length; a++) {
+                    final int c = spec.m_aggregateColumns[a];
+                    Object value = row[c];
+                    if (value == null) {
+                        continue;
+                    }
+                    if (group[c] == null) {
+                        group[c] = value;
+                        continue;
+                    }
+                    switch (spec.m_aggregateTypes[a]) {
+                    case AGGREGATE_SUM:
+                        long sum = Math.addExact((Long) group[c], (Long) value);
+                        if (sum == VoltType.NULL_BIGINT) {
+                            // the EE reports this as an overflow, let it do so
+                            throw new ArithmeticException("BIGINT overflow");
+                        }
+                        group[c] = sum;
+                        break;
+                    case AGGREGATE_MIN:
+                        if (((Comparable) value).compareTo(group[c]) < 0) {
+                            group[c] = value;
+                        }
+                        break;
+                    case AGGREGATE_MAX:
+                        if (((Comparable) value).compareTo(group[c]) > 0) {
+                            group[c] = value;
+                        }
+                        break;
+                    default:
+                        throw new IllegalStateException("Unexpected aggregate in a parallel merge: " +
+                                spec.m_aggregateTypes[a]);
+                    }
+                }
+            }
+        }
+
+        VoltTable merged = new VoltTable(schema);
+        Object[] values = new Object[columnCount];
+        for (Object[] group : groups.values()) {
+            System.arraycopy(group, 0, values, 0, columnCount);
+            merged.addRow(values);
+        }
+        return merged;
+    }
+}
@@ -274,6 +274,7 @@ public class MpTransactionState extends TransactionState
         // if we created a bogus fragment to distribute to serialize restart and borrow tasks,
         // don't include the empty dependencies we got back in the borrow fragment.
         if (!usedNullFragment) {
+            MpAggregateMerger.mergeInputs(m_localWork, m_remoteDepTables);
             borrowmsg.addInputDepMap(m_remoteDepTables);
         }
         if (traceLog != null) {
@@ -780,6 +780,10 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                             hashinatorConfig,
                             m_hasMPDRGateway);
             }
+            final String spillDirectory = System.getProperty("TEMP_TABLE_SPILL_DIR");
+            if (spillDirectory != null) {
+                eeTemp.setTempTableSpillDirectory(spillDirectory);
+            }
             eeTemp.loadCatalog(m_startupConfig.m_timestamp, m_startupConfig.m_serializedCatalog);
             eeTemp.setBatchTimeout(m_context.cluster.getDeployment().get("deployment").
                             getSystemsettings().get("systemsettings").getQuerytimeout());
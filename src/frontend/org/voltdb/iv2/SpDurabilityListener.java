@@ -196,6 +196,11 @@ public class SpDurabilityListener implements DurabilityListener {
         }
     }
 
+    @Override
+    public int getPartitionId() {
+        return m_spScheduler.m_partitionId;
+    }
+
     @Override
     public void addTransaction(TransactionTask pendingTask) {
         m_currentCompletionChecks.addTask(pendingTask);
@@ -28,6 +28,7 @@ import org.voltcore.messaging.Mailbox;
 import org.voltcore.utils.CoreUtils;
 import org.voltdb.DependencyPair;
 import org.voltdb.ParameterSet;
+import org.voltdb.ProcedureResultCache;
 import org.voltdb.SiteProcedureConnection;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltProcedure.VoltAbortException;
@@ -124,6 +125,10 @@ public class SysprocFragmentTask extends TransactionTask
             if (m_txnState.getBeginUndoToken() == Site.kInvalidUndoToken) {
                 m_txnState.setBeginUndoToken(siteConnection.getLatestUndoToken());
             }
+            if (ProcedureResultCache.ENABLED) {
+                // tables written by sysprocs aren't known, invalidate all cached results
+                ProcedureResultCache.recordWrite(null);
+            }
         }
 
         // HACK HACK HACK
@@ -45,10 +45,13 @@ public class JDBC4Connection implements java.sql.Connection, IVoltDBConnection
     public static final String COMMIT_THROW_EXCEPTION = "jdbc.committhrowexception";
     public static final String ROLLBACK_THROW_EXCEPTION = "jdbc.rollbackthrowexception";
     public static final String QUERYTIMEOUT_UNIT = "jdbc.querytimeout.unit";
+    // Number of executeBatch statements kept in flight at once, 0 runs them one at a time
+    public static final String BATCH_PIPELINE_WINDOW = "jdbc.batch.pipelinewindow";
 
     protected final JDBC4ClientConnection NativeConnection;
     protected final String User;
     protected TimeUnit queryTimeOutUnit = TimeUnit.SECONDS;
+    protected int batchPipelineWindow = 0;
     private boolean isClosed = false;
     private Properties props;
     private boolean autoCommit = true;
@@ -61,6 +64,12 @@ public class JDBC4Connection implements java.sql.Connection, IVoltDBConnection
         if (this.props.getProperty(JDBC4Connection.QUERYTIMEOUT_UNIT, "Seconds").equalsIgnoreCase("milliseconds")) {
             this.queryTimeOutUnit = TimeUnit.MILLISECONDS;
         }
+        try {
+            this.batchPipelineWindow = Math.max(0, Integer.parseInt(this.props.getProperty(BATCH_PIPELINE_WINDOW, "0").trim()));
+        }
+        catch (NumberFormatException e) {
+            this.batchPipelineWindow = 0;
+        }
     }
 
     private void checkClosed() throws SQLException
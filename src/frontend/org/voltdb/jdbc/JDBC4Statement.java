@@ -29,12 +29,15 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcCallException;
+import org.voltdb.client.ProcedureCallback;
 import org.voltdb.parser.JDBCParser;
 import org.voltdb.parser.SQLLexer;
 import org.voltdb.parser.JDBCParser.ParsedCall;
@@ -126,24 +129,7 @@ public class JDBC4Statement implements java.sql.Statement
             {
                 ClientResponse response = e.getClientResponse();
                 if (response != null) {
-                    // Map response status to specific JDBC exception, mostly GENERAL_ERROR except
-                    // for connection problems.
-                    switch (response.getStatus()) {
-                    case ClientResponse.CONNECTION_LOST:
-                        throw SQLError.get(e, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", e.getMessage());
-                    case ClientResponse.CONNECTION_TIMEOUT:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", e.getMessage());
-                    case ClientResponse.SERVER_UNAVAILABLE:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", e.getMessage());
-                    case ClientResponse.USER_ABORT:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "USER_ABORT", e.getMessage());
-                    case ClientResponse.UNEXPECTED_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", e.getMessage());
-                    case ClientResponse.GRACEFUL_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", e.getMessage());
-                    default:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), e.getMessage());
-                    }
+                    throw getResponseException(response, e, e.getMessage());
                 } else {
                     throw SQLError.get(e, SQLError.GENERAL_ERROR, e.getMessage());
                 }
@@ -154,6 +140,48 @@ public class JDBC4Statement implements java.sql.Statement
             }
         }
 
+        /**
+         * Submit the statement without waiting for the response.
+         * @return false if the connection could not queue the request
+         */
+        protected boolean executeAsync(JDBC4ClientConnection connection, ProcedureCallback callback,
+                long timeout, TimeUnit queryTimeOutUnit) throws SQLException {
+            try
+            {
+                if (this.type == TYPE_EXEC) {
+                    return connection.executeAsyncWithTimeout(callback, this.sql[0], timeout, queryTimeOutUnit, this.parameters);
+                } else {
+                    return connection.executeAsyncWithTimeout(callback, "@AdHoc", timeout, queryTimeOutUnit, this.sql[0]);
+                }
+            }
+            catch(IOException e)
+            {
+                throw SQLError.get(e, SQLError.CONNECTION_FAILURE, e.getMessage());
+            }
+        }
+
+        // Map response status to specific JDBC exception, mostly GENERAL_ERROR except
+        // for connection problems.
+        static SQLException getResponseException(ClientResponse response, Exception cause, String message)
+        {
+            switch (response.getStatus()) {
+            case ClientResponse.CONNECTION_LOST:
+                return SQLError.get(cause, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", message);
+            case ClientResponse.CONNECTION_TIMEOUT:
+                return SQLError.get(cause, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", message);
+            case ClientResponse.SERVER_UNAVAILABLE:
+                return SQLError.get(cause, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", message);
+            case ClientResponse.USER_ABORT:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, "USER_ABORT", message);
+            case ClientResponse.UNEXPECTED_FAILURE:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", message);
+            case ClientResponse.GRACEFUL_FAILURE:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", message);
+            default:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), message);
+            }
+        }
+
         public static boolean isUpdateResult(VoltTable table)
         {
             return ((table.getColumnName(0).length() == 0 || table.getColumnName(0).equals("modified_tuples"))&& table.getRowCount() == 1 && table.getColumnCount() == 1 && table.getColumnType(0) == VoltType.BIGINT);
@@ -176,9 +204,7 @@ public class JDBC4Statement implements java.sql.Statement
             {
                 Object[] paramsOut = new Object[params.length+1];
                 paramsOut[0] = this.sql[0];
-                for (int i = 0; i < params.length; ++i) {
-                    paramsOut[i+1] = params[i];
-                }
+                System.arraycopy(params, 0, paramsOut, 1, params.length);
                 return new VoltSQL(new String[] {"@AdHoc"}, this.parameterCount, TYPE_EXEC, this.type, paramsOut);
             }
         }
@@ -421,6 +447,10 @@ public class JDBC4Statement implements java.sql.Statement
             return new int[0];
         }
 
+        if (sourceConnection.batchPipelineWindow > 0) {
+            return executeBatchPipelined(sourceConnection.batchPipelineWindow);
+        }
+
         int[] updateCounts = new int[batch.size()];
         // keep a running total of update counts
         int runningUpdateCount = 0;
@@ -453,6 +483,102 @@ public class JDBC4Statement implements java.sql.Statement
         return updateCounts;
     }
 
+    /**
+     * Submit the whole batch asynchronously, keeping at most {@code window}
+     * statements in flight, and collect the update counts in batch order.
+     * Once a statement fails no more statements are submitted, but the ones
+     * already in flight are waited for, so the counts in a
+     * {@link BatchUpdateException} cover every statement that was sent,
+     * with {@code EXECUTE_FAILED} for the ones that failed.
+     *
+     * Statements in flight are not ordered against each other. A server
+     * plans one connection's ad hoc statements in the order they arrive and
+     * a partition runs them in that order, but with several servers in the
+     * URL the statements are spread over their connections. A batch whose
+     * statements depend on each other should keep the default window of 0.
+     */
+    private int[] executeBatchPipelined(int window) throws SQLException
+    {
+        final int count = batch.size();
+        final ClientResponse[] responses = new ClientResponse[count];
+        final Semaphore inFlight = new Semaphore(window);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+
+        int submitted = 0;
+        SQLException submitError = null;
+        try {
+            while (submitted < count && !failed.get()) {
+                inFlight.acquire();
+                final int index = submitted++;
+                boolean queued = false;
+                try {
+                    queued = batch.get(index).executeAsync(
+                            sourceConnection.NativeConnection,
+                            new ProcedureCallback() {
+                                @Override
+                                public void clientCallback(ClientResponse response) {
+                                    responses[index] = response;
+                                    if (response.getStatus() != ClientResponse.SUCCESS) {
+                                        failed.set(true);
+                                    }
+                                    inFlight.release();
+                                }
+                            },
+                            this.m_timeout,
+                            sourceConnection.queryTimeOutUnit);
+                    if (!queued) {
+                        submitError = SQLError.get(SQLError.CONNECTION_CLOSED);
+                    }
+                }
+                catch (SQLException x) {
+                    submitError = x;
+                }
+                if (!queued) {
+                    inFlight.release();
+                    break;
+                }
+            }
+            // Wait for everything that was sent
+            inFlight.acquire(window);
+        }
+        catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw SQLError.get(x, SQLError.GENERAL_ERROR, x.getMessage());
+        }
+        finally {
+            clearBatch();
+        }
+
+        int[] updateCounts = new int[submitted];
+        int runningUpdateCount = 0;
+        SQLException firstError = null;
+        for (int i = 0; i < submitted; i++) {
+            ClientResponse response = responses[i];
+            if (response == null) {
+                // the statement that could not be queued
+                updateCounts[i] = EXECUTE_FAILED;
+                if (firstError == null) {
+                    firstError = submitError;
+                }
+            }
+            else if (response.getStatus() != ClientResponse.SUCCESS) {
+                updateCounts[i] = EXECUTE_FAILED;
+                if (firstError == null) {
+                    firstError = VoltSQL.getResponseException(response, null, response.getStatusString());
+                }
+            }
+            else {
+                updateCounts[i] = (int) response.getResults()[0].fetchRow(0).getLong(0);
+                runningUpdateCount += updateCounts[i];
+            }
+        }
+        if (firstError != null) {
+            throw new BatchUpdateException(updateCounts, firstError);
+        }
+        setCurrentResult(null, runningUpdateCount);
+        return updateCounts;
+    }
+
     protected ResultSet executeQuery(VoltSQL query) throws SQLException
     {
         setCurrentResult(query.execute(this.sourceConnection.NativeConnection, this.m_timeout, this.sourceConnection.queryTimeOutUnit), -1);
@@ -757,6 +757,13 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
      */
     public abstract void toggleProfiler(int toggle);
 
+    /**
+     * Let temp tables that cross the temp table memory limit spill their
+     * blocks to a scratch file in the given directory instead of failing
+     * the query. An empty directory turns spilling off.
+     */
+    public abstract void setTempTableSpillDirectory(String directory);
+
     /**
      * Release all undo actions up to and including the specified undo token
      * @param undoToken The undo token.
@@ -1012,6 +1019,13 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
      */
     protected native int nativeToggleProfiler(long pointer, int mode);
 
+    /**
+     * Set the directory temp tables spill to.
+     * @param directory UTF-8 path, empty to disable spilling.
+     * @return 0 on success.
+     */
+    protected native int nativeSetTempTableSpillDirectory(long pointer, byte directory[]);
+
     /**
      * Use the EE's hashinator to compute the partition to which the
      * value provided in the input parameter buffer maps.  This is
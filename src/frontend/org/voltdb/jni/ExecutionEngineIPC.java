@@ -1075,6 +1075,11 @@ public class ExecutionEngineIPC extends ExecutionEngine {
     public void toggleProfiler(final int toggle) {
     }
 
+    @Override
+    public void setTempTableSpillDirectory(final String directory) {
+        // The IPC EE keeps failing queries at the temp table limit.
+    }
+
 
     @Override
     public byte[] loadTable(final int tableId, final VoltTable table, final long txnId,
@@ -555,6 +555,12 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         nativeToggleProfiler(pointer, toggle);
     }
 
+    @Override
+    public void setTempTableSpillDirectory(final String directory) {
+        final int errorCode = nativeSetTempTableSpillDirectory(pointer, getStringBytes(directory));
+        checkErrorCode(errorCode);
+    }
+
     @Override
     public boolean releaseUndoToken(final long undoToken) {
         return nativeReleaseUndoToken(pointer, undoToken);
@@ -170,6 +170,10 @@ public class MockExecutionEngine extends ExecutionEngine {
     public void toggleProfiler(final int toggle) {
     }
 
+    @Override
+    public void setTempTableSpillDirectory(final String directory) {
+    }
+
     @Override
     public boolean undoUndoToken(final long undoToken) {
         return false;
@@ -17,6 +17,9 @@
 
 package org.voltdb.planner;
 
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.plannodes.AbstractPlanNode;
+
 /**
  * Abstract base class for the code that computes plan cost given
  * a set of statistics for a plan.
@@ -32,4 +35,27 @@ public abstract class AbstractCostModel {
      * @return The computed cost of the plan.
      */
     public abstract double getPlanCost(PlanStatistics stats);
+
+    /**
+     * Computes the cost of a plan. Cost models that look at the plan itself
+     * rather than at the work summed up per level override this.
+     *
+     * @param plan The root of the plan graph.
+     * @param stats The statistics describing the work for the plan.
+     * @return The computed cost of the plan.
+     */
+    public double getPlanCost(AbstractPlanNode plan, PlanStatistics stats) {
+        return getPlanCost(stats);
+    }
+
+    /**
+     * @return the cost model for planning with the given estimates, the
+     * statistics based one if any table has been analyzed.
+     */
+    public static AbstractCostModel forEstimates(DatabaseEstimates estimates) {
+        if (estimates.hasStatistics()) {
+            return new StatisticsCostModel(estimates);
+        }
+        return new TrivialCostModel();
+    }
 }
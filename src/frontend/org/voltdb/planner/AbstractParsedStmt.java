@@ -72,10 +72,9 @@ public abstract class AbstractParsedStmt {
 
     protected String m_contentDeterminismMessage = null;
 
-     // Internal statement counter
-    public static int NEXT_STMT_ID = 0;
-    // Internal parameter counter
-    public static int NEXT_PARAMETER_ID = 0;
+    // Internal statement and parameter counters, { next stmt id, next parameter id }.
+    // They are kept per thread so that several planner threads can parse concurrently.
+    private static final ThreadLocal<int[]> NEXT_IDS = ThreadLocal.withInitial(() -> new int[2]);
     // The unique id to identify the statement
     public int m_stmtId;
 
@@ -188,7 +187,7 @@ public abstract class AbstractParsedStmt {
             throw new RuntimeException("Unexpected Element: " + stmtTypeElement.name);
         }
         // Set the unique id
-        retval.m_stmtId = NEXT_STMT_ID++;
+        retval.m_stmtId = nextStmtId();
         return retval;
     }
 
@@ -222,14 +221,29 @@ public abstract class AbstractParsedStmt {
             Database db, String joinOrder) {
 
         // reset the statement counters
-        NEXT_STMT_ID = 0;
-        NEXT_PARAMETER_ID = 0;
+        int[] nextIds = NEXT_IDS.get();
+        nextIds[0] = 0;
+        nextIds[1] = 0;
         AbstractParsedStmt retval = getParsedStmt(stmtTypeElement, paramValues, db);
 
         parse(retval, sql, stmtTypeElement, joinOrder);
         return retval;
     }
 
+    /**
+     * @return the next unused statement id for the statement being parsed
+     */
+    public static int nextStmtId() {
+        return NEXT_IDS.get()[0]++;
+    }
+
+    /**
+     * @return the next unused parameter id for the statement being parsed
+     */
+    public static int nextParameterId() {
+        return NEXT_IDS.get()[1]++;
+    }
+
     /**
      *
      * @param stmtElement
@@ -551,7 +565,7 @@ public abstract class AbstractParsedStmt {
         }
 
         // This is a TVE from the correlated expression
-        int paramIdx = NEXT_PARAMETER_ID++;
+        int paramIdx = nextParameterId();
         ParameterValueExpression pve = new ParameterValueExpression(paramIdx, resolvedExpr);
         m_parameterTveMap.put(paramIdx, resolvedExpr);
         return pve;
@@ -1107,14 +1121,14 @@ public abstract class AbstractParsedStmt {
     protected AbstractExpression replaceExpressionsWithPve(AbstractExpression expr) {
         assert(expr != null);
         if (expr instanceof TupleValueExpression) {
-            int paramIdx = NEXT_PARAMETER_ID++;
+            int paramIdx = nextParameterId();
             ParameterValueExpression pve = new ParameterValueExpression(paramIdx, expr);
             m_parameterTveMap.put(paramIdx, expr);
             return pve;
         }
 
         if (expr instanceof AggregateExpression) {
-            int paramIdx = NEXT_PARAMETER_ID++;
+            int paramIdx = nextParameterId();
             ParameterValueExpression pve = new ParameterValueExpression(paramIdx, expr);
             // Disallow aggregation of parent columns in a subquery.
             // except the case HAVING AGG(T1.C1) IN (SELECT T2.C2 ...)
@@ -1454,8 +1468,9 @@ public abstract class AbstractParsedStmt {
                 m_paramsByIndex.put(index, pve);
             }
         }
-        if (max_parameter_id >= NEXT_PARAMETER_ID) {
-            NEXT_PARAMETER_ID = (int)max_parameter_id + 1;
+        int[] nextIds = NEXT_IDS.get();
+        if (max_parameter_id >= nextIds[1]) {
+            nextIds[1] = (int)max_parameter_id + 1;
         }
     }
 
@@ -239,6 +239,17 @@ public abstract class ActivePlanRepository {
         return frag.plan;
     }
 
+    /**
+     * Get the full JSON plan for a plan hash, or null if the plan isn't loaded.
+     */
+    public static byte[] planForPlanHash(byte[] planHash) {
+        Sha1Wrapper key = new Sha1Wrapper(planHash);
+        synchronized (FragInfo.class) {
+            FragInfo frag = m_plansByHash.get(key);
+            return frag == null ? null : frag.plan;
+        }
+    }
+
     @Deprecated
     public static void addFragmentForTest(long fragmentId, byte[] plan, String stmtText) {
         Sha1Wrapper key = new Sha1Wrapper(new byte[20]);
@@ -0,0 +1,850 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.planner;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.hsqldb_voltpatches.VoltXMLElement;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.Column;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Table;
+import org.voltdb.types.VoltDecimalHelper;
+
+/**
+ * A small hand written parser for the single table statements that make up
+ * most ad hoc traffic: SELECT with a conjunction of simple predicates,
+ * ORDER BY and LIMIT/OFFSET, single row INSERT ... VALUES, UPDATE and
+ * DELETE. It produces the same VoltXML that HSQL would produce for these
+ * statements, so everything downstream (parameterization, the plan cache
+ * and the planner proper) is unchanged.
+ *
+ * Anything outside of that subset, or anything that HSQL would reject,
+ * makes {@link #parse} return null and the caller falls back to HSQL,
+ * which remains the authority on syntax and error messages.
+ */
+final class NativeSqlParser {
+
+    private static final class UnsupportedStatement extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        UnsupportedStatement() {
+            super(null, null, false, false);
+        }
+    }
+
+    // Thrown to unwind the parser; it carries no state, so one instance will do.
+    private static final UnsupportedStatement UNSUPPORTED = new UnsupportedStatement();
+
+    private enum TokenType { IDENTIFIER, NUMBER, STRING, SYMBOL, PARAM, END }
+
+    private final String m_sql;
+    private final Database m_db;
+
+    // current token
+    private int m_pos = 0;
+    private TokenType m_tokenType;
+    private String m_token;
+
+    private int m_nextId = 1;
+    private final List<VoltXMLElement> m_parameters = new ArrayList<VoltXMLElement>();
+
+    private NativeSqlParser(String sql, Database db) {
+        m_sql = sql;
+        m_db = db;
+    }
+
+    /**
+     * @return the VoltXML for the statement, or null if it has to be parsed by HSQL
+     */
+    static VoltXMLElement parse(String sql, Database db) {
+        NativeSqlParser parser = new NativeSqlParser(sql, db);
+        try {
+            parser.advance();
+            return parser.parseStatement();
+        }
+        catch (UnsupportedStatement e) {
+            return null;
+        }
+    }
+
+    private VoltXMLElement parseStatement() {
+        if (m_tokenType != TokenType.IDENTIFIER) {
+            throw UNSUPPORTED;
+        }
+        VoltXMLElement stmt;
+        if (m_token.equals("SELECT")) {
+            stmt = parseSelect();
+        }
+        else if (m_token.equals("INSERT")) {
+            stmt = parseInsert();
+        }
+        else if (m_token.equals("UPDATE")) {
+            stmt = parseUpdate();
+        }
+        else if (m_token.equals("DELETE")) {
+            stmt = parseDelete();
+        }
+        else {
+            throw UNSUPPORTED;
+        }
+        acceptSymbol(";");
+        if (m_tokenType != TokenType.END) {
+            throw UNSUPPORTED;
+        }
+        return stmt;
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    // Statements
+    ////////////////////////////////////////////////////////////////////////
+
+    private VoltXMLElement parseSelect() {
+        advance();
+        // Columns are resolved once the table is known.
+        List<String[]> selectRefs = null;
+        if (!acceptSymbol("*")) {
+            selectRefs = new ArrayList<String[]>();
+            do {
+                selectRefs.add(parseColumnName());
+            } while (acceptSymbol(","));
+        }
+        expectKeyword("FROM");
+        Table table = parseTable(false);
+
+        VoltXMLElement columns = new VoltXMLElement("columns");
+        List<VoltXMLElement> selected = new ArrayList<VoltXMLElement>();
+        if (selectRefs == null) {
+            for (Column column : columnsInOrder(table)) {
+                selected.add(columnRef(table, column));
+            }
+        }
+        else {
+            Set<String> names = new HashSet<String>();
+            for (String[] ref : selectRefs) {
+                Column column = resolveColumn(table, ref);
+                if (!names.add(column.getTypeName())) {
+                    throw UNSUPPORTED;
+                }
+                selected.add(columnRef(table, column));
+            }
+        }
+        columns.children.addAll(selected);
+
+        VoltXMLElement scan = tableScan(table);
+        if (acceptKeyword("WHERE")) {
+            addJoinCond(scan, parseCondition(table));
+        }
+        VoltXMLElement tableScans = new VoltXMLElement("tablescans");
+        tableScans.children.add(scan);
+
+        VoltXMLElement orderColumns = null;
+        if (acceptKeyword("ORDER")) {
+            expectKeyword("BY");
+            orderColumns = new VoltXMLElement("ordercolumns");
+            do {
+                Column column = resolveColumn(table, parseColumnName());
+                VoltXMLElement ref = null;
+                for (VoltXMLElement sel : selected) {
+                    if (sel.attributes.get("column").equals(column.getTypeName())) {
+                        ref = sel.duplicate();
+                        break;
+                    }
+                }
+                if (ref == null) {
+                    ref = columnRef(table, column);
+                }
+                VoltXMLElement orderBy = new VoltXMLElement("orderby");
+                orderBy.attributes.put("id", nextId());
+                if (acceptKeyword("DESC")) {
+                    orderBy.attributes.put("desc", "true");
+                }
+                else {
+                    acceptKeyword("ASC");
+                }
+                orderBy.children.add(ref);
+                orderColumns.children.add(orderBy);
+            } while (acceptSymbol(","));
+        }
+
+        VoltXMLElement select = new VoltXMLElement("select");
+        if (acceptKeyword("LIMIT")) {
+            VoltXMLElement limit = parseLimitOrOffset("limit");
+            VoltXMLElement offset = acceptKeyword("OFFSET") ?
+                    parseLimitOrOffset("offset") : new VoltXMLElement("offset");
+            select.children.add(offset);
+            select.children.add(limit);
+        }
+        select.children.add(columns);
+        select.children.add(parameters());
+        select.children.add(tableScans);
+        if (orderColumns != null) {
+            select.children.add(orderColumns);
+        }
+        return select;
+    }
+
+    private VoltXMLElement parseInsert() {
+        advance();
+        expectKeyword("INTO");
+        Table table = parseTable(true);
+
+        List<Column> targets = new ArrayList<Column>();
+        if (acceptSymbol("(")) {
+            Set<String> names = new HashSet<String>();
+            do {
+                Column column = resolveColumn(table, new String[] { null, expectIdentifier() });
+                if (!names.add(column.getTypeName())) {
+                    throw UNSUPPORTED;
+                }
+                targets.add(column);
+            } while (acceptSymbol(","));
+            expectSymbol(")");
+        }
+        else {
+            targets.addAll(columnsInOrder(table));
+        }
+
+        expectKeyword("VALUES");
+        expectSymbol("(");
+        VoltXMLElement columns = new VoltXMLElement("columns");
+        for (int i = 0; i < targets.size(); i++) {
+            if (i > 0) {
+                expectSymbol(",");
+            }
+            columns.children.add(assignment(targets.get(i)));
+        }
+        expectSymbol(")");
+
+        VoltXMLElement insert = new VoltXMLElement("insert");
+        insert.attributes.put("table", table.getTypeName());
+        insert.children.add(columns);
+        insert.children.add(parameters());
+        return insert;
+    }
+
+    private VoltXMLElement parseUpdate() {
+        advance();
+        Table table = parseTable(true);
+        expectKeyword("SET");
+
+        VoltXMLElement columns = new VoltXMLElement("columns");
+        Set<String> names = new HashSet<String>();
+        do {
+            Column column = resolveColumn(table, new String[] { null, expectIdentifier() });
+            if (!names.add(column.getTypeName())) {
+                throw UNSUPPORTED;
+            }
+            expectSymbol("=");
+            columns.children.add(assignment(column));
+        } while (acceptSymbol(","));
+
+        VoltXMLElement scan = tableScan(table);
+        if (acceptKeyword("WHERE")) {
+            addJoinCond(scan, parseCondition(table));
+        }
+
+        VoltXMLElement update = new VoltXMLElement("update");
+        update.attributes.put("table", table.getTypeName());
+        update.children.add(columns);
+        update.children.add(scan);
+        update.children.add(parameters());
+        return update;
+    }
+
+    private VoltXMLElement parseDelete() {
+        advance();
+        expectKeyword("FROM");
+        Table table = parseTable(true);
+
+        VoltXMLElement scan = tableScan(table);
+        if (acceptKeyword("WHERE")) {
+            addJoinCond(scan, parseCondition(table));
+        }
+
+        VoltXMLElement delete = new VoltXMLElement("delete");
+        delete.attributes.put("table", table.getTypeName());
+        delete.children.add(scan);
+        delete.children.add(parameters());
+        return delete;
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    // Clauses and expressions
+    ////////////////////////////////////////////////////////////////////////
+
+    private Table parseTable(boolean forWrite) {
+        Table table = m_db.getTables().getIgnoreCase(expectIdentifier());
+        if (table == null) {
+            throw UNSUPPORTED;
+        }
+        // Leave the "views are read only" error to HSQL.
+        if (forWrite && table.getMaterializer() != null) {
+            throw UNSUPPORTED;
+        }
+        return table;
+    }
+
+    /**
+     * @return the optional qualifier and the column name of a column reference
+     */
+    private String[] parseColumnName() {
+        String name = expectIdentifier();
+        if (acceptSymbol(".")) {
+            return new String[] { name, expectIdentifier() };
+        }
+        return new String[] { null, name };
+    }
+
+    private static Column resolveColumn(Table table, String[] ref) {
+        if (ref[0] != null && !ref[0].equalsIgnoreCase(table.getTypeName())) {
+            throw UNSUPPORTED;
+        }
+        Column column = table.getColumns().getIgnoreCase(ref[1]);
+        if (column == null) {
+            throw UNSUPPORTED;
+        }
+        return column;
+    }
+
+    private static List<Column> columnsInOrder(Table table) {
+        Column[] ordered = new Column[table.getColumns().size()];
+        for (Column column : table.getColumns()) {
+            ordered[column.getIndex()] = column;
+        }
+        List<Column> result = new ArrayList<Column>(ordered.length);
+        for (Column column : ordered) {
+            result.add(column);
+        }
+        return result;
+    }
+
+    /**
+     * Parse a conjunction of "column op operand" terms into a left deep
+     * tree of "and" operations.
+     */
+    private VoltXMLElement parseCondition(Table table) {
+        VoltXMLElement result = parseComparison(table);
+        while (acceptKeyword("AND")) {
+            VoltXMLElement right = parseComparison(table);
+            VoltXMLElement and = new VoltXMLElement("operation");
+            and.attributes.put("id", nextId());
+            and.attributes.put("optype", "and");
+            and.children.add(result);
+            and.children.add(right);
+            result = and;
+        }
+        return result;
+    }
+
+    private VoltXMLElement parseComparison(Table table) {
+        Column column = resolveColumn(table, parseColumnName());
+        VoltXMLElement left = columnRef(table, column);
+
+        if (m_tokenType != TokenType.SYMBOL) {
+            throw UNSUPPORTED;
+        }
+        String optype;
+        if (m_token.equals("=")) {
+            optype = "equal";
+        }
+        else if (m_token.equals("<>") || m_token.equals("!=")) {
+            optype = "notequal";
+        }
+        else if (m_token.equals("<")) {
+            optype = "lessthan";
+        }
+        else if (m_token.equals(">")) {
+            optype = "greaterthan";
+        }
+        else if (m_token.equals("<=")) {
+            optype = "lessthanorequalto";
+        }
+        else if (m_token.equals(">=")) {
+            optype = "greaterthanorequalto";
+        }
+        else {
+            throw UNSUPPORTED;
+        }
+        advance();
+
+        // HSQL refuses to compare numbers with strings, let it say so.
+        VoltType type = columnType(column);
+        VoltXMLElement right;
+        if (m_tokenType == TokenType.PARAM) {
+            right = parseOperand(column);
+        }
+        else if (m_tokenType == TokenType.STRING) {
+            if (type != VoltType.STRING) {
+                throw UNSUPPORTED;
+            }
+            right = parseOperand(column);
+        }
+        else if (m_tokenType == TokenType.NUMBER || isSymbol("-")) {
+            if (!type.isNumber()) {
+                throw UNSUPPORTED;
+            }
+            right = parseOperand(column);
+        }
+        else {
+            throw UNSUPPORTED;
+        }
+
+        VoltXMLElement op = new VoltXMLElement("operation");
+        op.attributes.put("id", nextId());
+        op.attributes.put("optype", optype);
+        op.children.add(left);
+        op.children.add(right);
+        return op;
+    }
+
+    private VoltXMLElement assignment(Column column) {
+        VoltXMLElement target = new VoltXMLElement("column");
+        target.attributes.put("name", column.getTypeName());
+        if (acceptKeyword("NULL")) {
+            VoltXMLElement value = new VoltXMLElement("value");
+            value.attributes.put("id", nextId());
+            value.attributes.put("valuetype", "NULL");
+            target.children.add(value);
+        }
+        else {
+            VoltXMLElement value = parseOperand(column);
+            if (!"true".equals(value.attributes.get("isparam"))) {
+                checkLiteralFits(column, value);
+            }
+            target.children.add(value);
+        }
+        return target;
+    }
+
+    /**
+     * HSQL and the planner convert, truncate or reject a literal that doesn't
+     * match the type of the column it is stored in, each with its own error
+     * message. Only take literals that go into the column unchanged.
+     */
+    private static void checkLiteralFits(Column column, VoltXMLElement value) {
+        VoltType type = columnType(column);
+        String valueType = value.attributes.get("valuetype");
+        String literal = value.attributes.get("value");
+        if (valueType.equals("CHAR")) {
+            if (type != VoltType.STRING) {
+                throw UNSUPPORTED;
+            }
+            // UTF-16 units are never fewer than characters, so this only
+            // sends the odd surrogate pair to HSQL.
+            int length = column.getInbytes() ?
+                    literal.getBytes(StandardCharsets.UTF_8).length : literal.length();
+            if (length > column.getSize()) {
+                throw UNSUPPORTED;
+            }
+        }
+        else if (valueType.equals("INTEGER") || valueType.equals("BIGINT")) {
+            long number = Long.parseLong(literal);
+            switch (type) {
+            case TINYINT:
+                checkRange(number, Byte.MIN_VALUE, Byte.MAX_VALUE);
+                break;
+            case SMALLINT:
+                checkRange(number, Short.MIN_VALUE, Short.MAX_VALUE);
+                break;
+            case INTEGER:
+                checkRange(number, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                break;
+            case BIGINT:
+                checkRange(number, Long.MIN_VALUE, Long.MAX_VALUE);
+                break;
+            case DECIMAL:
+                checkDecimal(new BigDecimal(literal));
+                break;
+            case FLOAT:
+                break;
+            default:
+                throw UNSUPPORTED;
+            }
+        }
+        else if (valueType.equals("NUMERIC")) {
+            if (type == VoltType.DECIMAL) {
+                checkDecimal(new BigDecimal(literal));
+            }
+            else if (type != VoltType.FLOAT) {
+                throw UNSUPPORTED;
+            }
+        }
+        else {
+            throw UNSUPPORTED;
+        }
+    }
+
+    // The minimum of each integer type is its null value.
+    private static void checkRange(long number, long nullValue, long max) {
+        if (number <= nullValue || number > max) {
+            throw UNSUPPORTED;
+        }
+    }
+
+    private static void checkDecimal(BigDecimal decimal) {
+        if (decimal.scale() > VoltDecimalHelper.kDefaultScale ||
+                decimal.precision() - decimal.scale() >
+                VoltDecimalHelper.kDefaultPrecision - VoltDecimalHelper.kDefaultScale) {
+            throw UNSUPPORTED;
+        }
+    }
+
+    /**
+     * Parse a literal or a parameter marker standing for a value of the given column.
+     */
+    private VoltXMLElement parseOperand(Column column) {
+        VoltXMLElement value = new VoltXMLElement("value");
+        String id = nextId();
+        value.attributes.put("id", id);
+        if (m_tokenType == TokenType.PARAM) {
+            advance();
+            value.attributes.put("isparam", "true");
+            addParameter(id, parameterTypeName(columnType(column)));
+            return value;
+        }
+        if (m_tokenType == TokenType.STRING) {
+            value.attributes.put("value", m_token);
+            value.attributes.put("valuetype", "CHAR");
+            advance();
+            return value;
+        }
+        boolean negative = acceptSymbol("-");
+        if (m_tokenType != TokenType.NUMBER) {
+            throw UNSUPPORTED;
+        }
+        if (m_token.indexOf('.') < 0) {
+            long magnitude = parseLong(m_token);
+            value.attributes.put("value", Long.toString(negative ? -magnitude : magnitude));
+            value.attributes.put("valuetype", magnitude <= Integer.MAX_VALUE ? "INTEGER" : "BIGINT");
+        }
+        else {
+            BigDecimal decimal = new BigDecimal(m_token);
+            if (decimal.precision() > VoltDecimalHelper.kDefaultPrecision) {
+                throw UNSUPPORTED;
+            }
+            value.attributes.put("value", (negative ? decimal.negate() : decimal).toPlainString());
+            value.attributes.put("valuetype", "NUMERIC");
+        }
+        advance();
+        return value;
+    }
+
+    private VoltXMLElement parseLimitOrOffset(String name) {
+        VoltXMLElement element = new VoltXMLElement(name);
+        String id = nextId();
+        if (m_tokenType == TokenType.PARAM) {
+            advance();
+            element.attributes.put(name + "_paramid", id);
+            addParameter(id, "INTEGER");
+        }
+        else if (m_tokenType == TokenType.NUMBER && m_token.indexOf('.') < 0) {
+            String count = Long.toString(parseLong(m_token));
+            advance();
+            element.attributes.put(name, count);
+            VoltXMLElement value = new VoltXMLElement("value");
+            value.attributes.put("id", id);
+            value.attributes.put("value", count);
+            value.attributes.put("valuetype", "BIGINT");
+            element.children.add(value);
+        }
+        else {
+            throw UNSUPPORTED;
+        }
+        return element;
+    }
+
+    private VoltXMLElement columnRef(Table table, Column column) {
+        VoltXMLElement ref = new VoltXMLElement("columnref");
+        ref.attributes.put("alias", column.getTypeName());
+        ref.attributes.put("column", column.getTypeName());
+        ref.attributes.put("id", nextId());
+        ref.attributes.put("index", Integer.toString(column.getIndex()));
+        ref.attributes.put("table", table.getTypeName());
+        return ref;
+    }
+
+    private static VoltXMLElement tableScan(Table table) {
+        VoltXMLElement scan = new VoltXMLElement("tablescan");
+        scan.attributes.put("jointype", "inner");
+        scan.attributes.put("table", table.getTypeName());
+        return scan;
+    }
+
+    private static void addJoinCond(VoltXMLElement scan, VoltXMLElement condition) {
+        VoltXMLElement joinCond = new VoltXMLElement("joincond");
+        joinCond.children.add(condition);
+        scan.children.add(joinCond);
+    }
+
+    private void addParameter(String id, String valueType) {
+        VoltXMLElement param = new VoltXMLElement("parameter");
+        param.attributes.put("id", id);
+        param.attributes.put("index", Integer.toString(m_parameters.size()));
+        param.attributes.put("valuetype", valueType);
+        m_parameters.add(param);
+    }
+
+    private VoltXMLElement parameters() {
+        VoltXMLElement parameters = new VoltXMLElement("parameters");
+        parameters.children.addAll(m_parameters);
+        return parameters;
+    }
+
+    private String nextId() {
+        return Integer.toString(m_nextId++);
+    }
+
+    private static VoltType columnType(Column column) {
+        return VoltType.get((byte) column.getType());
+    }
+
+    private static String parameterTypeName(VoltType type) {
+        switch (type) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+        case FLOAT:
+        case DECIMAL:
+        case TIMESTAMP:
+        case VARBINARY:
+            return type.name();
+        case STRING:
+            return "VARCHAR";
+        default:
+            // geospatial types and anything newer go through HSQL
+            throw UNSUPPORTED;
+        }
+    }
+
+    private static long parseLong(String digits) {
+        try {
+            return Long.parseLong(digits);
+        }
+        catch (NumberFormatException e) {
+            // HSQL turns these into DECIMAL constants
+            throw UNSUPPORTED;
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////
+    // Tokens
+    ////////////////////////////////////////////////////////////////////////
+
+    private boolean isSymbol(String symbol) {
+        return m_tokenType == TokenType.SYMBOL && m_token.equals(symbol);
+    }
+
+    private boolean acceptSymbol(String symbol) {
+        if (isSymbol(symbol)) {
+            advance();
+            return true;
+        }
+        return false;
+    }
+
+    private void expectSymbol(String symbol) {
+        if (!acceptSymbol(symbol)) {
+            throw UNSUPPORTED;
+        }
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        if (m_tokenType == TokenType.IDENTIFIER && m_token.equals(keyword)) {
+            advance();
+            return true;
+        }
+        return false;
+    }
+
+    private void expectKeyword(String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw UNSUPPORTED;
+        }
+    }
+
+    private String expectIdentifier() {
+        if (m_tokenType != TokenType.IDENTIFIER || isReserved(m_token)) {
+            throw UNSUPPORTED;
+        }
+        String identifier = m_token;
+        advance();
+        return identifier;
+    }
+
+    private static boolean isReserved(String word) {
+        switch (word) {
+        case "SELECT":
+        case "FROM":
+        case "WHERE":
+        case "AND":
+        case "ORDER":
+        case "BY":
+        case "LIMIT":
+        case "OFFSET":
+        case "INSERT":
+        case "INTO":
+        case "VALUES":
+        case "UPDATE":
+        case "SET":
+        case "DELETE":
+        case "NULL":
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Scan the next token. Identifiers and keywords are upper cased, string
+     * literals are unquoted. Quoted identifiers, comments, and characters
+     * that don't belong to the supported subset end the native parse.
+     */
+    private void advance() {
+        final String sql = m_sql;
+        final int length = sql.length();
+        int pos = m_pos;
+        while (pos < length && Character.isWhitespace(sql.charAt(pos))) {
+            pos++;
+        }
+        if (pos == length) {
+            m_pos = pos;
+            m_tokenType = TokenType.END;
+            m_token = null;
+            return;
+        }
+
+        char c = sql.charAt(pos);
+        int start = pos;
+        if (isLetter(c)) {
+            while (pos < length && isIdentifierPart(sql.charAt(pos))) {
+                pos++;
+            }
+            m_tokenType = TokenType.IDENTIFIER;
+            m_token = sql.substring(start, pos).toUpperCase(Locale.ENGLISH);
+        }
+        else if (isDigit(c) || (c == '.' && pos + 1 < length && isDigit(sql.charAt(pos + 1)))) {
+            while (pos < length && isDigit(sql.charAt(pos))) {
+                pos++;
+            }
+            if (pos < length && sql.charAt(pos) == '.') {
+                pos++;
+                while (pos < length && isDigit(sql.charAt(pos))) {
+                    pos++;
+                }
+            }
+            // exponents, hex and "5abc" are left to HSQL
+            if (pos < length && (isIdentifierPart(sql.charAt(pos)) || sql.charAt(pos) == '.')) {
+                throw UNSUPPORTED;
+            }
+            m_tokenType = TokenType.NUMBER;
+            m_token = sql.substring(start, pos);
+        }
+        else if (c == '\'') {
+            StringBuilder sb = null;
+            pos++;
+            int from = pos;
+            while (true) {
+                if (pos == length) {
+                    throw UNSUPPORTED;
+                }
+                if (sql.charAt(pos) == '\'') {
+                    if (pos + 1 < length && sql.charAt(pos + 1) == '\'') {
+                        if (sb == null) {
+                            sb = new StringBuilder();
+                        }
+                        sb.append(sql, from, pos + 1);
+                        pos += 2;
+                        from = pos;
+                        continue;
+                    }
+                    break;
+                }
+                pos++;
+            }
+            String text = sql.substring(from, pos);
+            pos++;
+            m_tokenType = TokenType.STRING;
+            m_token = sb == null ? text : sb.append(text).toString();
+        }
+        else if (c == '?') {
+            pos++;
+            m_tokenType = TokenType.PARAM;
+            m_token = "?";
+        }
+        else {
+            pos++;
+            switch (c) {
+            case '<':
+                if (pos < length && (sql.charAt(pos) == '=' || sql.charAt(pos) == '>')) {
+                    pos++;
+                }
+                break;
+            case '>':
+                if (pos < length && sql.charAt(pos) == '=') {
+                    pos++;
+                }
+                break;
+            case '!':
+                if (pos < length && sql.charAt(pos) == '=') {
+                    pos++;
+                    break;
+                }
+                throw UNSUPPORTED;
+            case '-':
+                // "--" starts a comment
+                if (pos < length && sql.charAt(pos) == '-') {
+                    throw UNSUPPORTED;
+                }
+                break;
+            case '=':
+            case ',':
+            case '(':
+            case ')':
+            case '*':
+            case '.':
+            case ';':
+                break;
+            default:
+                throw UNSUPPORTED;
+            }
+            m_tokenType = TokenType.SYMBOL;
+            m_token = sql.substring(start, pos);
+        }
+        m_pos = pos;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Non ASCII identifiers are left to HSQL, which knows how to case fold them.
+    private static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isLetter(c) || isDigit(c) || c == '_';
+    }
+}
@@ -111,6 +111,10 @@ public class PlanAssembler {
         }
     }
 
+    // Minimum estimated number of partial groups per partition for which
+    // the MPI merges the partitions' groups in parallel
+    static final long PARALLEL_MERGE_MIN_GROUPS = Long.getLong("PARALLEL_MERGE_MIN_GROUPS", 10000);
+
     /** convenience pointer to the database object in the catalog */
     private final Database m_catalogDb;
 
@@ -939,6 +943,92 @@ public class PlanAssembler {
         return root;
     }
 
+    /**
+     * Mark the coordinating hash aggregates of a multi-fragment plan whose
+     * partial groups the MPI can merge in parallel before the coordinator
+     * fragment runs. This only pays off when the partitions send back many
+     * groups, so the estimated number of partial rows per partition has to
+     * reach {@link #PARALLEL_MERGE_MIN_GROUPS}. The merge is limited to
+     * aggregates whose partial results combine by themselves: SUM of BIGINT
+     * (which covers COUNT) and MIN/MAX of integer, decimal and timestamp
+     * columns, grouped by plain columns of the receive.
+     *
+     * @param root the complete plan, with its column indexes resolved.
+     */
+    static void markParallelMergeAggregates(AbstractPlanNode root) {
+        for (AbstractPlanNode node : root.findAllNodesOfType(PlanNodeType.HASHAGGREGATE)) {
+            HashAggregatePlanNode aggNode = (HashAggregatePlanNode) node;
+            if (aggNode.getChildCount() != 1 ||
+                    aggNode.getChild(0).getPlanNodeType() != PlanNodeType.RECEIVE) {
+                continue;
+            }
+            if (aggNode.getChild(0).getEstimatedOutputTupleCount() < PARALLEL_MERGE_MIN_GROUPS) {
+                continue;
+            }
+            aggNode.setParallelMerge(canMergeInParallel(aggNode));
+        }
+    }
+
+    private static boolean canMergeInParallel(AggregatePlanNode aggNode) {
+        if ( ! aggNode.m_isCoordinatingAggregator ||
+                aggNode.getPrePredicate() != null ||
+                aggNode.getGroupByExpressions().isEmpty()) {
+            return false;
+        }
+        // every input column plays at most one part in the merge
+        Set<Integer> columns = new HashSet<>();
+        for (AbstractExpression expr : aggNode.getGroupByExpressions()) {
+            if ( ! (expr instanceof TupleValueExpression)) {
+                return false;
+            }
+            switch (expr.getValueType()) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+            case DECIMAL:
+            case TIMESTAMP:
+            case STRING:
+            case VARBINARY:
+                break;
+            default:
+                return false;
+            }
+            if ( ! columns.add(((TupleValueExpression) expr).getColumnIndex())) {
+                return false;
+            }
+        }
+        List<ExpressionType> aggTypes = aggNode.getAggregateTypes();
+        List<AbstractExpression> aggExprs = aggNode.getAggregateExpressions();
+        for (int ii = 0; ii < aggTypes.size(); ii++) {
+            AbstractExpression expr = aggExprs.get(ii);
+            if (aggNode.getAggregateDistinct().get(ii) != 0 ||
+                    ! (expr instanceof TupleValueExpression) ||
+                    ! columns.add(((TupleValueExpression) expr).getColumnIndex())) {
+                return false;
+            }
+            VoltType type = expr.getValueType();
+            switch (aggTypes.get(ii)) {
+            case AGGREGATE_SUM:
+                if (type != VoltType.BIGINT) {
+                    return false;
+                }
+                break;
+            case AGGREGATE_MIN:
+            case AGGREGATE_MAX:
+                if (type != VoltType.TINYINT && type != VoltType.SMALLINT &&
+                        type != VoltType.INTEGER && type != VoltType.BIGINT &&
+                        type != VoltType.DECIMAL && type != VoltType.TIMESTAMP) {
+                    return false;
+                }
+                break;
+            default:
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * For each Subquery node in the plan tree attach the subquery plan to the parent node.
      * @param initial plan
@@ -1042,6 +1132,7 @@ public class PlanAssembler {
                         }
 
                         List<AbstractPlanNode> nljs = receiveNode.findAllNodesOfType(PlanNodeType.NESTLOOP);
+                        nljs.addAll(receiveNode.findAllNodesOfType(PlanNodeType.HASHJOIN));
                         List<AbstractPlanNode> nlijs = receiveNode.findAllNodesOfType(PlanNodeType.NESTLOOPINDEX);
 
                         // outer join edge case does not have any join plan node under receive node.
@@ -2271,7 +2362,8 @@ public class PlanAssembler {
         }
 
         // For join node, find outer sequential scan plan node
-        if (candidate.getPlanNodeType() == PlanNodeType.NESTLOOP) {
+        if (candidate.getPlanNodeType() == PlanNodeType.NESTLOOP ||
+                candidate.getPlanNodeType() == PlanNodeType.HASHJOIN) {
             assert(candidate.getChildCount() == 2);
             return findSeqScanCandidateForGroupBy(candidate.getChild(0));
         }
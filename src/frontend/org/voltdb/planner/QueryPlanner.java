@@ -61,6 +61,7 @@ public class QueryPlanner {
     DeterminismMode m_detMode;
     PlanSelector m_planSelector;
     boolean m_isUpsert;
+    boolean m_useNativeParser = false;
 
     // generated by parse(..)
     VoltXMLElement m_xmlSQL = null;
@@ -174,15 +175,20 @@ public class QueryPlanner {
             m_sql = "INSERT" + m_sql.substring(6);
         }
 
+        // Simple single table statements can skip HSQL altogether.
+        m_xmlSQL = m_useNativeParser ? NativeSqlParser.parse(m_sql, m_db) : null;
+
         // use HSQLDB to get XML that describes the semantics of the statement
         // this is much easier to parse than SQL and is checked against the catalog
-        try {
-            m_xmlSQL = m_HSQL.getXMLCompiledStatement(m_sql);
-            //* enable to debug */ System.out.println("DEBUG: HSQL parsed:" + m_xmlSQL);
-        }
-        catch (HSQLParseException e) {
-            // XXXLOG probably want a real log message here
-            throw new PlanningErrorException(e.getMessage());
+        if (m_xmlSQL == null) {
+            try {
+                m_xmlSQL = m_HSQL.getXMLCompiledStatement(m_sql);
+                //* enable to debug */ System.out.println("DEBUG: HSQL parsed:" + m_xmlSQL);
+            }
+            catch (HSQLParseException e) {
+                // XXXLOG probably want a real log message here
+                throw new PlanningErrorException(e.getMessage());
+            }
         }
 
         if (m_isUpsert) {
@@ -194,6 +200,14 @@ public class QueryPlanner {
         m_planSelector.outputCompiledStatement(m_xmlSQL);
     }
 
+    /**
+     * Let {@link #parse()} try the native parser for simple statements
+     * before handing the SQL to HSQL.
+     */
+    public void setUseNativeParser(boolean useNativeParser) {
+        m_useNativeParser = useNativeParser;
+    }
+
     // Generate a Volt XML tree for a hypothetical SWAP TABLE statement.
     // This can take any form that makes it easy for the planner to turn
     // it into an AbstractParsedStmt and then an AbstractPlanNode (tree).
@@ -454,6 +468,8 @@ public class QueryPlanner {
         // Execute the generateOutputSchema and resolveColumnIndexes once for the best plan
         bestPlan.rootPlanGraph.generateOutputSchema(m_db);
         bestPlan.rootPlanGraph.resolveColumnIndexes();
+        // let the MPI merge large partial group sets before the coordinator aggregates them
+        PlanAssembler.markParallelMergeAggregates(bestPlan.rootPlanGraph);
 
         if (parsedStmt instanceof ParsedSelectStmt) {
             List<SchemaColumn> columns = bestPlan.rootPlanGraph.getOutputSchema().getColumns();
@@ -25,8 +25,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.voltdb.VoltType;
 import org.voltdb.catalog.Database;
 import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.AbstractSubqueryExpression;
 import org.voltdb.expressions.ExpressionUtil;
 import org.voltdb.expressions.TupleValueExpression;
 import org.voltdb.planner.parseinfo.BranchNode;
@@ -38,11 +40,13 @@ import org.voltdb.planner.parseinfo.SubqueryLeafNode;
 import org.voltdb.plannodes.AbstractJoinPlanNode;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractReceivePlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.IndexUseForOrderBy;
 import org.voltdb.plannodes.MaterializedScanPlanNode;
 import org.voltdb.plannodes.NestLoopIndexPlanNode;
 import org.voltdb.plannodes.NestLoopPlanNode;
+import org.voltdb.types.ExpressionType;
 import org.voltdb.types.JoinType;
 import org.voltdb.utils.PermutationGenerator;
 
@@ -722,7 +726,6 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
 
         AbstractJoinPlanNode ajNode = null;
         if (canHaveNLJ) {
-            NestLoopPlanNode nljNode = new NestLoopPlanNode();
             // get all the clauses that join the applicable two tables
             // Copy innerAccessPath.joinExprs to leave it unchanged,
             // avoiding accumulation of redundant expressions when
@@ -763,6 +766,31 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
                 // the inner node ONLY, that can not be pushed down.
                 joinClauses.addAll(innerAccessPath.otherExprs);
             }
+
+            // Without an index the nest loop join re-reads the whole inner input for
+            // every outer row. When the rows are matched on equality of outer and inner
+            // values, hash the inner input once instead and only visit matching rows.
+            // Either way each input is read once, so the plan costs are the same.
+            NestLoopPlanNode nljNode = null;
+            if ( ! (innerPlan instanceof IndexScanPlanNode) &&
+                    ! (innerPlan instanceof NestLoopIndexPlanNode) &&
+                    (joinNode.getJoinType() == JoinType.INNER || joinNode.getJoinType() == JoinType.LEFT)) {
+                List<AbstractExpression> outerKeys = new ArrayList<>();
+                List<AbstractExpression> innerKeys = new ArrayList<>();
+                List<Boolean> nullsMatch = new ArrayList<>();
+                findHashJoinKeys(joinClauses, innerJoinNode.generateTableJoinOrder(),
+                                 outerKeys, innerKeys, nullsMatch);
+                if ( ! outerKeys.isEmpty()) {
+                    HashJoinPlanNode hjNode = new HashJoinPlanNode();
+                    for (int ii = 0; ii < outerKeys.size(); ii++) {
+                        hjNode.addHashKey(outerKeys.get(ii), innerKeys.get(ii), nullsMatch.get(ii));
+                    }
+                    nljNode = hjNode;
+                }
+            }
+            if (nljNode == null) {
+                nljNode = new NestLoopPlanNode();
+            }
             nljNode.setJoinPredicate(ExpressionUtil.combinePredicates(joinClauses));
 
             // combine the tails plan graph with the new head node
@@ -831,6 +859,91 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
         return singleTVEExprs;
     }
 
+    /**
+     * Find the equality (or IS NOT DISTINCT FROM) join clauses that compare an
+     * expression of the outer tables with an expression of the inner tables of
+     * the same, hashable type. These can serve as the keys of a hash join.
+     *
+     * @param joinClauses - the clauses that join the outer and the inner node
+     * @param innerTableAliases - the tables of the inner node
+     * @param outerKeys - collects the outer side of each usable clause
+     * @param innerKeys - collects the inner side of each usable clause
+     * @param nullsMatch - collects whether each usable clause matches NULL with NULL
+     */
+    private static void findHashJoinKeys(Collection<AbstractExpression> joinClauses,
+                                         Collection<String> innerTableAliases,
+                                         List<AbstractExpression> outerKeys,
+                                         List<AbstractExpression> innerKeys,
+                                         List<Boolean> nullsMatch)
+    {
+        for (AbstractExpression clause : joinClauses) {
+            if (clause.getExpressionType() != ExpressionType.COMPARE_EQUAL &&
+                    clause.getExpressionType() != ExpressionType.COMPARE_NOTDISTINCT) {
+                continue;
+            }
+            Boolean leftIsInner = dependsOnlyOnInner(clause.getLeft(), innerTableAliases);
+            Boolean rightIsInner = dependsOnlyOnInner(clause.getRight(), innerTableAliases);
+            if (leftIsInner == null || rightIsInner == null || leftIsInner.equals(rightIsInner)) {
+                continue;
+            }
+            AbstractExpression outerExpr = leftIsInner ? clause.getRight() : clause.getLeft();
+            AbstractExpression innerExpr = leftIsInner ? clause.getLeft() : clause.getRight();
+            // Equal values must hash alike, so don't rely on implicit casts.
+            if (outerExpr.getValueType() != innerExpr.getValueType() ||
+                    ! isHashJoinKeyType(innerExpr.getValueType())) {
+                continue;
+            }
+            outerKeys.add(outerExpr);
+            innerKeys.add(innerExpr);
+            nullsMatch.add(clause.getExpressionType() == ExpressionType.COMPARE_NOTDISTINCT);
+        }
+    }
+
+    /**
+     * @return TRUE if all the columns in expr come from the inner tables,
+     * FALSE if they all come from the outer tables and null if there are
+     * none, or some of each, or expr contains a subquery.
+     */
+    private static Boolean dependsOnlyOnInner(AbstractExpression expr, Collection<String> innerTableAliases) {
+        if (expr.hasAnySubexpressionOfClass(AbstractSubqueryExpression.class)) {
+            return null;
+        }
+        List<TupleValueExpression> tves = ExpressionUtil.getTupleValueExpressions(expr);
+        if (tves.isEmpty()) {
+            return null;
+        }
+        boolean hasInner = false;
+        boolean hasOuter = false;
+        for (TupleValueExpression tve : tves) {
+            if (innerTableAliases.contains(tve.getTableAlias())) {
+                hasInner = true;
+            }
+            else {
+                hasOuter = true;
+            }
+        }
+        if (hasInner == hasOuter) {
+            return null;
+        }
+        return hasInner;
+    }
+
+    private static boolean isHashJoinKeyType(VoltType type) {
+        switch (type) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+        case TIMESTAMP:
+        case DECIMAL:
+        case STRING:
+        case VARBINARY:
+            return true;
+        default:
+            return false;
+        }
+    }
+
     /**
      * For a join node, determines whether any of the inner-outer expressions were used
      * for an inner index access -- this requires joining with a NestLoopIndexJoin.
@@ -0,0 +1,395 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.planner;
+
+import java.util.List;
+
+import org.voltdb.catalog.ColumnRef;
+import org.voltdb.catalog.Index;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.compiler.TableStatistics;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.ExpressionUtil;
+import org.voltdb.expressions.TupleValueExpression;
+import org.voltdb.plannodes.AbstractJoinPlanNode;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.AbstractScanPlanNode;
+import org.voltdb.plannodes.AggregatePlanNode;
+import org.voltdb.plannodes.IndexScanPlanNode;
+import org.voltdb.plannodes.LimitPlanNode;
+import org.voltdb.plannodes.NestLoopIndexPlanNode;
+import org.voltdb.types.ExpressionType;
+import org.voltdb.types.IndexLookupType;
+import org.voltdb.types.JoinType;
+import org.voltdb.types.PlanNodeType;
+import org.voltdb.utils.CatalogUtil;
+
+/**
+ * Cost model used once tables have been analyzed. It walks the plan and
+ * estimates, bottom up, the number of rows each node produces and the work
+ * it takes to produce them, using the row counts and the number of distinct
+ * column values from {@link TableStatistics}. Unlike the per-node estimates
+ * summed by {@link TrivialCostModel}, this accounts for join fan-out, so the
+ * cost of a join order depends on how many rows each join step produces.
+ *
+ * Tables that were never analyzed fall back on the default row count of
+ * {@link DatabaseEstimates}, and columns without a distinct value count on
+ * fixed selectivities.
+ */
+public class StatisticsCostModel extends AbstractCostModel {
+
+    // selectivity of column = constant, when the column's distinct values are unknown
+    static final double EQUALITY_SELECTIVITY = 0.1;
+    // selectivity of an open or closed range
+    static final double RANGE_SELECTIVITY = 1.0 / 3.0;
+    // selectivity of any other filter
+    static final double DEFAULT_SELECTIVITY = 0.5;
+    // assumed value of LIMIT ?, as in the index scan estimates
+    static final int PARAMETER_LIMIT = 50;
+    // Weight of the node heuristics in the final cost. Plans that this model
+    // can't tell apart are ordered by the heuristics, which e.g. prefer hash
+    // indexes and partial indexes.
+    static final double TIE_BREAK_WEIGHT = 1e-9;
+
+    /** Rows produced by a plan node and the work done by it and its inputs. */
+    static final class Estimate {
+        final double rows;
+        final double cost;
+
+        Estimate(double rows, double cost) {
+            this.rows = rows;
+            this.cost = cost;
+        }
+    }
+
+    private final DatabaseEstimates m_estimates;
+    private final TableStatistics m_statistics;
+    private final TrivialCostModel m_heuristics = new TrivialCostModel();
+
+    public StatisticsCostModel(DatabaseEstimates estimates) {
+        m_estimates = estimates;
+        m_statistics = estimates.getStatistics();
+    }
+
+    @Override
+    public double getPlanCost(PlanStatistics stats) {
+        return m_heuristics.getPlanCost(stats);
+    }
+
+    @Override
+    public double getPlanCost(AbstractPlanNode plan, PlanStatistics stats) {
+        return estimate(plan).cost + TIE_BREAK_WEIGHT * m_heuristics.getPlanCost(stats);
+    }
+
+    Estimate estimate(AbstractPlanNode node) {
+        Estimate result;
+        switch (node.getPlanNodeType()) {
+        case SEQSCAN:
+            result = estimateSeqScan((AbstractScanPlanNode) node);
+            break;
+        case INDEXSCAN:
+            result = estimateIndexScan((IndexScanPlanNode) node);
+            break;
+        case INDEXCOUNT:
+        case TABLECOUNT:
+            result = new Estimate(1, log2(tableRows(((AbstractScanPlanNode) node).getTargetTableName())));
+            break;
+        case NESTLOOP:
+        case HASHJOIN:
+            result = estimateNestLoop((AbstractJoinPlanNode) node);
+            break;
+        case NESTLOOPINDEX:
+            result = estimateNestLoopIndex((NestLoopIndexPlanNode) node);
+            break;
+        case AGGREGATE:
+        case HASHAGGREGATE:
+        case PARTIALAGGREGATE:
+            result = estimateAggregate((AggregatePlanNode) node, estimateChildren(node));
+            break;
+        case ORDERBY:
+        case WINDOWFUNCTION: {
+            Estimate input = estimateChildren(node);
+            result = new Estimate(input.rows, input.cost + input.rows * log2(input.rows));
+            break;
+        }
+        case LIMIT:
+            result = applyLimit((LimitPlanNode) node, estimateChildren(node));
+            break;
+        default:
+            result = estimateChildren(node);
+        }
+        return applyInlineNodes(node, result);
+    }
+
+    /**
+     * Single inputs pass through, several inputs (union) add up.
+     */
+    private Estimate estimateChildren(AbstractPlanNode node) {
+        if (node.getChildCount() == 0) {
+            return new Estimate(1, 0);
+        }
+        double rows = 0;
+        double cost = 0;
+        for (int i = 0; i < node.getChildCount(); i++) {
+            Estimate child = estimate(node.getChild(i));
+            rows += child.rows;
+            cost += child.cost;
+        }
+        return new Estimate(rows, cost);
+    }
+
+    private Estimate applyInlineNodes(AbstractPlanNode node, Estimate input) {
+        Estimate result = input;
+        AggregatePlanNode aggregate = AggregatePlanNode.getInlineAggregationNode(node);
+        if (aggregate != null) {
+            result = estimateAggregate(aggregate, result);
+        }
+        LimitPlanNode limit = (LimitPlanNode) node.getInlinePlanNode(PlanNodeType.LIMIT);
+        if (limit != null) {
+            result = applyLimit(limit, result);
+        }
+        return result;
+    }
+
+    private Estimate estimateSeqScan(AbstractScanPlanNode scan) {
+        double inputRows;
+        double cost;
+        if (scan.isSubQuery() && scan.getChildCount() > 0) {
+            Estimate subquery = estimate(scan.getChild(0));
+            inputRows = subquery.rows;
+            cost = subquery.cost + inputRows;
+        }
+        else {
+            inputRows = tableRows(scan.getTargetTableName());
+            cost = inputRows;
+        }
+        double rows = inputRows * selectivity(scan.getPredicate());
+        // a scan without a filter stops at the limit
+        if (scan.getPredicate() == null && AggregatePlanNode.getInlineAggregationNode(scan) == null) {
+            cost = Math.min(cost, limitRows((LimitPlanNode) scan.getInlinePlanNode(PlanNodeType.LIMIT), cost));
+        }
+        return new Estimate(rows, cost);
+    }
+
+    /**
+     * Estimate one index scan. For the inner side of a nested loop index
+     * join this is the estimate of a single probe.
+     */
+    private Estimate estimateIndexScan(IndexScanPlanNode scan) {
+        double tableRows = tableRows(scan.getTargetTableName());
+        double matched = Math.max(1, tableRows * indexSelectivity(scan));
+        double rows = matched * selectivity(scan.getPredicate());
+        double cost = log2(tableRows) + matched;
+        if (scan.getPredicate() == null && AggregatePlanNode.getInlineAggregationNode(scan) == null) {
+            cost = Math.min(cost, log2(tableRows) +
+                    limitRows((LimitPlanNode) scan.getInlinePlanNode(PlanNodeType.LIMIT), matched));
+        }
+        return new Estimate(rows, cost);
+    }
+
+    private double indexSelectivity(IndexScanPlanNode scan) {
+        Index index = scan.getCatalogIndex();
+        List<AbstractExpression> searchKeys = scan.getSearchKeyExpressions();
+        int keyCount = searchKeys.size();
+        if (keyCount == 0) {
+            // an end key alone is a range scan, otherwise the index only provides order
+            return scan.getEndExpression() == null ? 1.0 : RANGE_SELECTIVITY;
+        }
+        boolean isRange = scan.getLookupType() != IndexLookupType.EQ &&
+                          scan.getLookupType() != IndexLookupType.GEO_CONTAINS;
+        if (index.getUnique() && ! isRange && keyCount == CatalogUtil.getCatalogIndexSize(index)) {
+            return 0;
+        }
+        // only plain column indexes can be matched to column statistics
+        List<ColumnRef> columns = index.getExpressionsjson().isEmpty() ?
+                CatalogUtil.getSortedCatalogItems(index.getColumns(), "index") : null;
+        TableStatistics.Table stats = m_statistics.getTable(scan.getTargetTableName());
+        double selectivity = 1.0;
+        for (int i = 0; i < keyCount; i++) {
+            if (isRange && i == keyCount - 1) {
+                selectivity *= RANGE_SELECTIVITY;
+            }
+            else {
+                long ndv = (stats == null || columns == null) ? -1 :
+                    stats.getDistinctValues(columns.get(i).getColumn().getTypeName());
+                selectivity *= ndv > 0 ? 1.0 / ndv : EQUALITY_SELECTIVITY;
+            }
+        }
+        return selectivity;
+    }
+
+    private Estimate estimateNestLoop(AbstractJoinPlanNode join) {
+        Estimate outer = estimate(join.getChild(0));
+        Estimate inner = estimate(join.getChild(1));
+        double pairs = outer.rows * inner.rows;
+        double rows = pairs * selectivity(join.getJoinPredicate());
+        double cost;
+        if (join.getPlanNodeType() == PlanNodeType.HASHJOIN) {
+            cost = outer.cost + inner.cost + outer.rows + inner.rows;
+        }
+        else {
+            // the inner side is produced once and scanned for every outer row
+            cost = outer.cost + inner.cost + pairs;
+        }
+        rows = outerJoinRows(join.getJoinType(), rows, outer.rows, inner.rows);
+        return new Estimate(rows * selectivity(join.getWherePredicate()), cost);
+    }
+
+    private Estimate estimateNestLoopIndex(NestLoopIndexPlanNode join) {
+        Estimate outer = estimate(join.getChild(0));
+        Estimate probe = estimateIndexScan(join.getInlineIndexScan());
+        double rows = outer.rows * probe.rows * selectivity(join.getJoinPredicate());
+        double cost = outer.cost + outer.rows * probe.cost;
+        rows = outerJoinRows(join.getJoinType(), rows, outer.rows, 0);
+        return new Estimate(rows * selectivity(join.getWherePredicate()), cost);
+    }
+
+    private static double outerJoinRows(JoinType joinType, double rows, double outerRows, double innerRows) {
+        switch (joinType) {
+        case LEFT:
+            return Math.max(rows, outerRows);
+        case FULL:
+            return Math.max(rows, Math.max(outerRows, innerRows));
+        default:
+            return rows;
+        }
+    }
+
+    private Estimate estimateAggregate(AggregatePlanNode aggregate, Estimate input) {
+        List<AbstractExpression> groupBy = aggregate.getGroupByExpressions();
+        double groups = 1;
+        if (groupBy != null && ! groupBy.isEmpty()) {
+            for (AbstractExpression expr : groupBy) {
+                long ndv = distinctValues(expr);
+                groups *= ndv > 0 ? ndv : Math.max(1, input.rows * EQUALITY_SELECTIVITY);
+            }
+            groups = Math.min(groups, input.rows);
+        }
+        return new Estimate(groups * selectivity(aggregate.getPostPredicate()), input.cost + input.rows);
+    }
+
+    private static Estimate applyLimit(LimitPlanNode limit, Estimate input) {
+        return new Estimate(limitRows(limit, input.rows), input.cost);
+    }
+
+    private static double limitRows(LimitPlanNode limit, double rows) {
+        if (limit == null) {
+            return rows;
+        }
+        int limitRows = limit.getLimit();
+        if (limitRows == -1) {
+            limitRows = PARAMETER_LIMIT;
+        }
+        return Math.min(rows, limitRows + limit.getOffset());
+    }
+
+    /**
+     * Fraction of the input rows passing a filter. Conjuncts are assumed
+     * to be independent.
+     */
+    double selectivity(AbstractExpression predicate) {
+        if (predicate == null) {
+            return 1.0;
+        }
+        ExpressionType type = predicate.getExpressionType();
+        switch (type) {
+        case CONJUNCTION_AND: {
+            double selectivity = 1.0;
+            for (AbstractExpression conjunct : ExpressionUtil.uncombinePredicate(predicate)) {
+                selectivity *= selectivity(conjunct);
+            }
+            return selectivity;
+        }
+        case CONJUNCTION_OR: {
+            double left = selectivity(predicate.getLeft());
+            double right = selectivity(predicate.getRight());
+            return left + right - left * right;
+        }
+        case OPERATOR_NOT:
+            return 1.0 - selectivity(predicate.getLeft());
+        case COMPARE_EQUAL:
+        case COMPARE_NOTDISTINCT:
+            return equalitySelectivity(predicate.getLeft(), predicate.getRight());
+        case COMPARE_NOTEQUAL:
+            return 1.0 - equalitySelectivity(predicate.getLeft(), predicate.getRight());
+        case COMPARE_LESSTHAN:
+        case COMPARE_GREATERTHAN:
+        case COMPARE_LESSTHANOREQUALTO:
+        case COMPARE_GREATERTHANOREQUALTO:
+            return RANGE_SELECTIVITY;
+        case COMPARE_IN: {
+            double inList = predicate.getRight().getArgs() == null ?
+                    PARAMETER_LIMIT : predicate.getRight().getArgs().size();
+            return Math.min(1.0, inList * equalitySelectivity(predicate.getLeft(), null));
+        }
+        case COMPARE_LIKE:
+        case OPERATOR_IS_NULL:
+            return EQUALITY_SELECTIVITY;
+        default:
+            return DEFAULT_SELECTIVITY;
+        }
+    }
+
+    /**
+     * Selectivity of {@code left = right}. Comparing two columns is a join
+     * condition, it matches 1 / max(distinct values) of the pairs. A column
+     * without a distinct value count is taken to be unique, which is what
+     * most join columns (keys) are.
+     */
+    private double equalitySelectivity(AbstractExpression left, AbstractExpression right) {
+        boolean leftIsColumn = left instanceof TupleValueExpression;
+        boolean rightIsColumn = right instanceof TupleValueExpression;
+        if (leftIsColumn && rightIsColumn) {
+            double ndv = Math.max(distinctValuesOrRows((TupleValueExpression) left),
+                                  distinctValuesOrRows((TupleValueExpression) right));
+            return ndv > 0 ? 1.0 / ndv : EQUALITY_SELECTIVITY;
+        }
+        AbstractExpression column = leftIsColumn ? left : (rightIsColumn ? right : null);
+        long ndv = column == null ? -1 : distinctValues(column);
+        return ndv > 0 ? 1.0 / ndv : EQUALITY_SELECTIVITY;
+    }
+
+    /**
+     * @return the number of distinct values of a column, or -1 if unknown
+     */
+    private long distinctValues(AbstractExpression expr) {
+        if (! (expr instanceof TupleValueExpression)) {
+            return -1;
+        }
+        TupleValueExpression tve = (TupleValueExpression) expr;
+        TableStatistics.Table stats = m_statistics.getTable(tve.getTableName());
+        return stats == null ? -1 : stats.getDistinctValues(tve.getColumnName());
+    }
+
+    private long distinctValuesOrRows(TupleValueExpression tve) {
+        long ndv = distinctValues(tve);
+        if (ndv > 0) {
+            return ndv;
+        }
+        TableStatistics.Table stats = m_statistics.getTable(tve.getTableName());
+        return stats == null ? -1 : Math.max(1, stats.getRowCount());
+    }
+
+    private double tableRows(String tableName) {
+        return Math.max(1, m_estimates.getEstimatesForTable(tableName).maxTuples);
+    }
+
+    private static double log2(double n) {
+        return Math.log(n + 1) / Math.log(2);
+    }
+}
@@ -25,24 +25,29 @@ import org.voltdb.planner.CompiledPlan;
 public class MicroOptimizationRunner {
 
     // list all of the micro optimizations here
-    static ArrayList<MicroOptimization> optimizations = new ArrayList<MicroOptimization>();
-    static {
+    // The optimizations keep per-plan state while they run, so each planner
+    // thread gets its own instances.
+    static final ThreadLocal<ArrayList<MicroOptimization>> optimizations =
+            ThreadLocal.withInitial(() -> {
+        ArrayList<MicroOptimization> opts = new ArrayList<MicroOptimization>();
         // The orders here is important
-        optimizations.add(new PushdownLimits());
-        optimizations.add(new ReplaceWithIndexCounter());
-        optimizations.add(new ReplaceWithIndexLimit());
+        opts.add(new PushdownLimits());
+        opts.add(new ReplaceWithIndexCounter());
+        opts.add(new ReplaceWithIndexLimit());
 
         // Inline aggregation has to be applied after Index counter and Index Limit with MIN/MAX.
-        optimizations.add(new InlineAggregation());
+        opts.add(new InlineAggregation());
 
         // MP ORDER BY Optimization
-        optimizations.add(new InlineOrderByIntoMergeReceive());
-    }
+        opts.add(new InlineOrderByIntoMergeReceive());
+        return opts;
+    });
 
     public static void applyAll(CompiledPlan plan, AbstractParsedStmt parsedStmt)
     {
-        for (int i = 0; i < optimizations.size(); i++) {
-            MicroOptimization opt = optimizations.get(i);
+        ArrayList<MicroOptimization> opts = optimizations.get();
+        for (int i = 0; i < opts.size(); i++) {
+            MicroOptimization opt = opts.get(i);
             opt.apply(plan, parsedStmt);
         }
     }
@@ -51,7 +51,10 @@ public class AggregatePlanNode extends AbstractPlanNode {
         AGGREGATE_OUTPUT_COLUMN,
         AGGREGATE_EXPRESSION,
         GROUPBY_EXPRESSIONS,
-        PARTIAL_GROUPBY_COLUMNS
+        PARTIAL_GROUPBY_COLUMNS,
+        PARALLEL_MERGE,
+        MERGE_GROUPBY_COLUMNS,
+        MERGE_AGGREGATE_COLUMNS
         ;
     }
 
@@ -78,6 +81,12 @@ public class AggregatePlanNode extends AbstractPlanNode {
     // decide if other nodes can be pushed down / past this node.
     public boolean m_isCoordinatingAggregator = false;
 
+    // True if this coordinating aggregator reads the partial groups of a
+    // plain receive and the planner expects enough of them that the MPI
+    // should merge the partitions' groups in parallel before the EE
+    // aggregates them. See PlanAssembler.markParallelMergeAggregates.
+    protected boolean m_parallelMerge = false;
+
     protected AbstractExpression m_prePredicate;
     protected AbstractExpression m_postPredicate;
 
@@ -94,6 +103,26 @@ public class AggregatePlanNode extends AbstractPlanNode {
         return m_aggregateTypes;
     }
 
+    public List<Integer> getAggregateDistinct() {
+        return m_aggregateDistinct;
+    }
+
+    public List<AbstractExpression> getAggregateExpressions() {
+        return m_aggregateExpressions;
+    }
+
+    public AbstractExpression getPrePredicate() {
+        return m_prePredicate;
+    }
+
+    public boolean isParallelMerge() {
+        return m_parallelMerge;
+    }
+
+    public void setParallelMerge(boolean parallelMerge) {
+        m_parallelMerge = parallelMerge;
+    }
+
     @Override
     public void validate() throws Exception {
         super.validate();
@@ -448,6 +477,23 @@ public class AggregatePlanNode extends AbstractPlanNode {
         if (m_postPredicate != null) {
             stringer.key(Members.POST_PREDICATE.name()).value(m_postPredicate);
         }
+
+        if (m_parallelMerge) {
+            // The input column offsets of the group keys and of each aggregate,
+            // so the MPI can merge partial groups without rebuilding the plan.
+            stringer.key(Members.PARALLEL_MERGE.name()).object();
+            stringer.key(Members.MERGE_GROUPBY_COLUMNS.name()).array();
+            for (AbstractExpression expr : m_groupByExpressions) {
+                stringer.value(((TupleValueExpression) expr).getColumnIndex());
+            }
+            stringer.endArray();
+            stringer.key(Members.MERGE_AGGREGATE_COLUMNS.name()).array();
+            for (AbstractExpression expr : m_aggregateExpressions) {
+                stringer.value(((TupleValueExpression) expr).getColumnIndex());
+            }
+            stringer.endArray();
+            stringer.endObject();
+        }
     }
 
     private static String planNodeTypeToAggDescString(PlanNodeType nodeType) {
@@ -532,6 +578,7 @@ public class AggregatePlanNode extends AbstractPlanNode {
 
         m_prePredicate = AbstractExpression.fromJSONChild(jobj, Members.PRE_PREDICATE.name());
         m_postPredicate = AbstractExpression.fromJSONChild(jobj, Members.POST_PREDICATE.name());
+        m_parallelMerge = ! jobj.isNull(Members.PARALLEL_MERGE.name());
     }
 
     public static AggregatePlanNode getInlineAggregationNode(AbstractPlanNode node) {
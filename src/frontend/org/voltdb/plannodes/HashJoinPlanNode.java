@@ -0,0 +1,166 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.plannodes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.json_voltpatches.JSONArray;
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.json_voltpatches.JSONStringer;
+import org.voltdb.catalog.Database;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.types.PlanNodeType;
+import org.voltdb.types.SortDirectionType;
+
+/**
+ * A nest loop join whose inner loop only visits the inner rows with a
+ * matching join key. The EE hashes the inner input on the inner key
+ * expressions once, then streams the outer input and probes the hash
+ * table with the outer key expressions. The full join predicate, which
+ * includes the key equalities, is still applied to every candidate pair,
+ * so hash collisions and type coercions are handled as they are for a
+ * plain nest loop join. Like the nest loop join it reads each input once,
+ * so it shares its cost estimates.
+ */
+public class HashJoinPlanNode extends NestLoopPlanNode {
+
+    public enum Members {
+        OUTER_HASH_EXPRESSIONS,
+        INNER_HASH_EXPRESSIONS,
+        NULL_MATCHING_KEYS;
+    }
+
+    // Pairwise equal key expressions, evaluated against the outer and the inner tuple
+    protected List<AbstractExpression> m_outerHashExpressions = new ArrayList<>();
+    protected List<AbstractExpression> m_innerHashExpressions = new ArrayList<>();
+    // Indexes of the key pairs compared with IS NOT DISTINCT FROM, for which NULL matches NULL.
+    // Rows with a NULL value in any other key can't match and are left out of the hash table.
+    protected List<Integer> m_nullMatchingKeys = new ArrayList<>();
+
+    public HashJoinPlanNode() {
+        super();
+    }
+
+    @Override
+    public PlanNodeType getPlanNodeType() {
+        return PlanNodeType.HASHJOIN;
+    }
+
+    public List<AbstractExpression> getOuterHashExpressions() {
+        return m_outerHashExpressions;
+    }
+
+    public List<AbstractExpression> getInnerHashExpressions() {
+        return m_innerHashExpressions;
+    }
+
+    public List<Integer> getNullMatchingKeys() {
+        return m_nullMatchingKeys;
+    }
+
+    /**
+     * Add a pair of key expressions that must be equal for an outer and an
+     * inner row to join.
+     * @param nullsMatch true if the keys are compared with IS NOT DISTINCT FROM
+     */
+    public void addHashKey(AbstractExpression outerExpr, AbstractExpression innerExpr, boolean nullsMatch) {
+        if (nullsMatch) {
+            m_nullMatchingKeys.add(m_outerHashExpressions.size());
+        }
+        m_outerHashExpressions.add(outerExpr.clone());
+        m_innerHashExpressions.add(innerExpr.clone());
+    }
+
+    @Override
+    public void validate() throws Exception {
+        super.validate();
+        if (m_outerHashExpressions.isEmpty() ||
+                m_outerHashExpressions.size() != m_innerHashExpressions.size()) {
+            throw new Exception("ERROR: Hash join requires pairs of outer and inner key expressions");
+        }
+        for (AbstractExpression expr : m_outerHashExpressions) {
+            expr.validate();
+        }
+        for (AbstractExpression expr : m_innerHashExpressions) {
+            expr.validate();
+        }
+    }
+
+    @Override
+    public void resolveColumnIndexes() {
+        super.resolveColumnIndexes();
+        final NodeSchema outer_schema = m_children.get(0).getOutputSchema();
+        final NodeSchema inner_schema = m_children.get(1).getOutputSchema();
+        resolvePredicate(m_outerHashExpressions, outer_schema, inner_schema);
+        resolvePredicate(m_innerHashExpressions, outer_schema, inner_schema);
+    }
+
+    @Override
+    public void toJSONString(JSONStringer stringer) throws JSONException {
+        super.toJSONString(stringer);
+        AbstractExpression.toJSONArray(stringer, Members.OUTER_HASH_EXPRESSIONS.name(), m_outerHashExpressions);
+        AbstractExpression.toJSONArray(stringer, Members.INNER_HASH_EXPRESSIONS.name(), m_innerHashExpressions);
+        if ( ! m_nullMatchingKeys.isEmpty()) {
+            stringer.key(Members.NULL_MATCHING_KEYS.name()).array();
+            for (Integer ith : m_nullMatchingKeys) {
+                stringer.value(ith.longValue());
+            }
+            stringer.endArray();
+        }
+    }
+
+    @Override
+    public void loadFromJSONObject(JSONObject jobj, Database db) throws JSONException {
+        super.loadFromJSONObject(jobj, db);
+        m_outerHashExpressions.clear();
+        m_innerHashExpressions.clear();
+        m_nullMatchingKeys.clear();
+        AbstractExpression.loadFromJSONArrayChild(m_outerHashExpressions, jobj,
+                Members.OUTER_HASH_EXPRESSIONS.name(), null);
+        AbstractExpression.loadFromJSONArrayChild(m_innerHashExpressions, jobj,
+                Members.INNER_HASH_EXPRESSIONS.name(), null);
+        if ( ! jobj.isNull(Members.NULL_MATCHING_KEYS.name())) {
+            JSONArray jarray = jobj.getJSONArray(Members.NULL_MATCHING_KEYS.name());
+            for (int ii = 0; ii < jarray.length(); ++ii) {
+                m_nullMatchingKeys.add(jarray.getInt(ii));
+            }
+        }
+    }
+
+    @Override
+    public void findAllExpressionsOfClass(Class< ? extends AbstractExpression> aeClass, Set<AbstractExpression> collected) {
+        super.findAllExpressionsOfClass(aeClass, collected);
+        for (AbstractExpression expr : m_outerHashExpressions) {
+            collected.addAll(expr.findAllSubexpressionsOfClass(aeClass));
+        }
+        for (AbstractExpression expr : m_innerHashExpressions) {
+            collected.addAll(expr.findAllSubexpressionsOfClass(aeClass));
+        }
+    }
+
+    @Override
+    protected String explainPlanForNode(String indent) {
+        return "HASH " + this.m_joinType.toString() + " JOIN" +
+                (m_sortDirection == SortDirectionType.INVALID ? "" : " (" + m_sortDirection + ")") +
+                explainFilters(indent);
+    }
+
+}
@@ -20,6 +20,7 @@ package org.voltdb.rejoin;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.voltcore.logging.VoltLogger;
@@ -30,7 +31,9 @@ import org.voltdb.exceptions.SerializableException;
 import com.google_voltpatches.common.base.Preconditions;
 
 /**
- * Thread that blocks on the receipt of Acks.
+ * Thread that blocks on the receipt of Acks. It also owns the in-flight
+ * window of each target, which the senders must acquire before putting a
+ * block on the wire and which is released when the block is acked.
  */
 public class StreamSnapshotAckReceiver implements Runnable {
     public static interface AckCallback {
@@ -39,10 +42,67 @@ public class StreamSnapshotAckReceiver implements Runnable {
 
     private static final VoltLogger rejoinLog = new VoltLogger("REJOIN");
 
+    // number of blocks that may be sent to a target ahead of their acks
+    public static final int DEFAULT_INFLIGHT_WINDOW = Math.max(1, Integer.getInteger("REJOIN_INFLIGHT_WINDOW", 16));
+
+    /**
+     * Counts the blocks sent to one target that have not been acked yet.
+     */
+    public static class InflightWindow {
+        private final int m_size;
+        private int m_inflight = 0;
+
+        InflightWindow(int size) {
+            m_size = size;
+        }
+
+        /**
+         * Take a slot in the window, waiting up to the timeout for one to free up.
+         * @return false if the window is still full after the timeout
+         */
+        public synchronized boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (m_inflight >= m_size) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            m_inflight++;
+            return true;
+        }
+
+        public synchronized void release() {
+            if (m_inflight > 0) {
+                m_inflight--;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Forget about everything in flight, used when the stream failed and no more acks are coming.
+         */
+        public synchronized void reset() {
+            m_inflight = 0;
+            notifyAll();
+        }
+
+        public synchronized int getInflight() {
+            return m_inflight;
+        }
+
+        public int getSize() {
+            return m_size;
+        }
+    }
+
     private final Mailbox m_mb;
     private final StreamSnapshotBase.MessageFactory m_msgFactory;
     private final Map<Long, AckCallback> m_callbacks;
+    private final Map<Long, InflightWindow> m_windows;
     private final AtomicInteger m_expectedEOFs;
+    private final int m_windowSize;
 
     volatile Exception m_lastException = null;
 
@@ -52,18 +112,30 @@ public class StreamSnapshotAckReceiver implements Runnable {
     }
 
     public StreamSnapshotAckReceiver(Mailbox mb, StreamSnapshotBase.MessageFactory msgFactory) {
+        this(mb, msgFactory, DEFAULT_INFLIGHT_WINDOW);
+    }
+
+    public StreamSnapshotAckReceiver(Mailbox mb, StreamSnapshotBase.MessageFactory msgFactory, int windowSize) {
         Preconditions.checkArgument(mb != null);
+        Preconditions.checkArgument(windowSize > 0);
         m_mb = mb;
         m_msgFactory = msgFactory;
         m_callbacks = Collections.synchronizedMap(new HashMap<Long, AckCallback>());
+        m_windows = Collections.synchronizedMap(new HashMap<Long, InflightWindow>());
         m_expectedEOFs = new AtomicInteger();
+        m_windowSize = windowSize;
     }
 
     public void setCallback(long targetId, AckCallback callback) {
         m_expectedEOFs.incrementAndGet();
+        m_windows.put(targetId, new InflightWindow(m_windowSize));
         m_callbacks.put(targetId, callback);
     }
 
+    public InflightWindow getWindow(long targetId) {
+        return m_windows.get(targetId);
+    }
+
     @Override
     public void run() {
         rejoinLog.trace("Starting ack receiver thread");
@@ -96,6 +168,7 @@ public class StreamSnapshotAckReceiver implements Runnable {
                                     " in stream snapshot ack message");
                 } else if (m_msgFactory.getAckBlockIndex(msg) != -1) {
                     ackCallback.receiveAck(m_msgFactory.getAckBlockIndex(msg));
+                    m_windows.get(m_msgFactory.getAckTargetId(msg)).release();
                 }
 
                 if (m_msgFactory.isAckEOS(msg)) {
@@ -19,8 +19,10 @@ package org.voltdb.rejoin;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
@@ -45,6 +47,7 @@ import org.voltdb.utils.CompressionService;
 import com.google_voltpatches.common.base.Preconditions;
 import com.google_voltpatches.common.util.concurrent.Futures;
 import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
 import com.google_voltpatches.common.util.concurrent.SettableFuture;
 
 /**
@@ -72,6 +75,8 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
     // input and output threads
     private final SnapshotSender m_sender;
     private final StreamSnapshotAckReceiver m_ackReceiver;
+    private final StreamSnapshotAckReceiver.InflightWindow m_window;
+    private final StreamSnapshotStats.TargetStats m_stats;
 
     // Skip all subsequent writes if one fails
     private final AtomicReference<IOException> m_writeFailed = new AtomicReference<IOException>();
@@ -108,6 +113,9 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         m_sender.registerDataTarget(m_targetId);
         m_ackReceiver = ackReceiver;
         m_ackReceiver.setCallback(m_targetId, this);
+        m_window = m_ackReceiver.getWindow(m_targetId);
+        m_stats = StreamSnapshotStats.register(m_targetId, m_destHSId);
+        m_stats.m_window = m_window;
 
         rejoinLog.debug(String.format("Initializing snapshot stream processor " +
                 "for source site id: %s, and with processorid: %d",
@@ -124,7 +132,9 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
 
     /**
      * Packages up a pending write into a piece of work that can be tracked
-     * and can be scheduled.
+     * and can be scheduled. The block is compressed by one of the sender's
+     * compression workers as soon as it is offered, then put on the wire by
+     * the sender stream of its target, in the order it was offered.
      */
     public static class SendWork {
         BBContainer m_message;
@@ -137,6 +147,15 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         // A listenable future used to notify a listener when this buffer is discarded
         final SettableFuture<Boolean> m_future;
 
+        // The in-flight window of the target, a slot is taken before sending
+        final StreamSnapshotAckReceiver.InflightWindow m_window;
+        final StreamSnapshotStats.TargetStats m_stats;
+
+        // The compressed block, set when the work is offered to the sender
+        ListenableFuture<byte[]> m_compressed;
+        int m_rawBytes;
+        volatile long m_sentNanos;
+
         /**
          * Creates an empty send work to terminate the sender thread
          */
@@ -146,17 +165,29 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
             m_destHSId = -1;
             m_ts = -1;
             m_future = null;
+            m_window = null;
+            m_stats = null;
         }
 
         SendWork (long targetId, long destHSId,
                   BBContainer message,
                   SettableFuture<Boolean> future) {
+            this(targetId, destHSId, message, future, null, null);
+        }
+
+        SendWork (long targetId, long destHSId,
+                  BBContainer message,
+                  SettableFuture<Boolean> future,
+                  StreamSnapshotAckReceiver.InflightWindow window,
+                  StreamSnapshotStats.TargetStats stats) {
             m_isEmpty = false;
             m_targetId = targetId;
             m_destHSId = destHSId;
             m_message = message;
             m_ts = System.currentTimeMillis();
             m_future = future;
+            m_window = window;
+            m_stats = stats;
         }
 
         /**
@@ -171,49 +202,61 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
             }
         }
 
+        public synchronized boolean isDiscarded() {
+            return m_message == null;
+        }
+
         /**
-         * Compress the data in the BBContainer provided, then package it up in
-         * a RejoinDataMessage instance, and finally hand it off to the messaging
-         * subsystem.
+         * Compress the data in the BBContainer, runs on a compression worker.
+         * @return the compressed block, or null if the work has been discarded
          */
-        protected int send(Mailbox mb, MessageFactory msgFactory, BBContainer message) throws IOException {
-            final ByteBuffer messageBuffer = message.b();
+        synchronized byte[] compress() throws IOException {
+            if (m_message == null) {
+                return null;
+            }
+            final ByteBuffer messageBuffer = m_message.b();
+            m_rawBytes = messageBuffer.remaining();
             if (messageBuffer.isDirect()) {
-                byte[] data = CompressionService.compressBuffer(messageBuffer);
-                mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, data));
-
-                if (rejoinLog.isTraceEnabled()) {
-                    rejoinLog.trace("Sending direct buffer");
-                }
-
-                return data.length;
+                return CompressionService.compressBuffer(messageBuffer.duplicate());
             } else {
-                byte compressedBytes[] =
-                    CompressionService.compressBytes(
-                            messageBuffer.array(), messageBuffer.position(),
-                            messageBuffer.remaining());
-
-                mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, compressedBytes));
-
-                if (rejoinLog.isTraceEnabled()) {
-                    rejoinLog.trace("Sending heap buffer");
-                }
-
-                return compressedBytes.length;
+                return CompressionService.compressBytes(
+                        messageBuffer.array(), messageBuffer.position(),
+                        messageBuffer.remaining());
             }
         }
 
-        public synchronized int doWork(Mailbox mb, MessageFactory msgFactory) throws Exception {
-            // this work has already been discarded
-            if (m_message == null) {
-                return 0;
-            }
-
+        /**
+         * Package the compressed block up in a RejoinDataMessage instance and hand
+         * it off to the messaging subsystem. Must hold a slot in the in-flight window.
+         * @return the number of bytes sent, or -1 if the work was discarded and nothing was sent
+         */
+        public int doWork(Mailbox mb, MessageFactory msgFactory) throws Exception {
             try {
-                return send(mb, msgFactory, m_message);
+                // wait for the compression outside of the lock, discard() may need it meanwhile
+                final byte[] data = m_compressed.get();
+                synchronized (this) {
+                    // this work has already been discarded
+                    if (data == null || m_message == null) {
+                        return -1;
+                    }
+                    m_sentNanos = System.nanoTime();
+                    mb.send(m_destHSId, msgFactory.makeDataMessage(m_targetId, data));
+
+                    if (rejoinLog.isTraceEnabled()) {
+                        rejoinLog.trace("Sending block of " + data.length + " bytes to " + CoreUtils.hsIdToString(m_destHSId));
+                    }
+
+                    // The block is now bounded by the in-flight window and the
+                    // compressed copy, return the snapshot buffer to the site.
+                    m_message.discard();
+                    m_message = null;
+
+                    if (m_stats != null) {
+                        m_stats.blockSent(m_rawBytes, data.length);
+                    }
+                    return data.length;
+                }
             } finally {
-                // Buffers are only discarded after they are acked. Discarding them here would cause the sender to
-                // generate too much work for the receiver.
                 m_future.set(true);
             }
         }
@@ -307,6 +350,8 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         }
         m_outstandingWork.clear();
         m_outstandingWorkCount.set(0);
+        // no acks will come for what is still in flight
+        m_window.reset();
     }
 
     /**
@@ -320,18 +365,34 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         m_outstandingWorkCount.decrementAndGet();
         SendWork work = m_outstandingWork.remove(blockIndex);
 
+        if (work.m_sentNanos != 0) {
+            m_stats.blockAcked(System.nanoTime() - work.m_sentNanos);
+        }
         // releases the BBContainers and cleans up
         work.discard();
     }
 
     /**
-     * Thread that runs send work (sending snapshot blocks). One per node
+     * Sends snapshot blocks for all the data targets of a node. Blocks are
+     * compressed by a pool of workers as soon as they are offered, and put on
+     * the wire by a number of sender streams. Each target is served by a single
+     * stream, so its blocks leave in the order they were offered (schemas must
+     * arrive before the data of their table), while different targets proceed
+     * in parallel.
      */
-    public static class SnapshotSender implements Runnable {
+    public static class SnapshotSender {
+        // threads compressing blocks, defaults to half of the cores (1..8)
+        public static final int DEFAULT_COMPRESSION_THREADS = Math.max(1, Integer.getInteger("REJOIN_COMPRESSION_THREADS",
+                Math.min(8, CoreUtils.availableProcessors() / 2)));
+        // threads putting compressed blocks on the wire
+        public static final int DEFAULT_SEND_STREAMS = Math.max(1, Integer.getInteger("REJOIN_SEND_STREAMS", 2));
+
         private final Mailbox m_mb;
         private final MessageFactory m_msgFactory;
-        private final LinkedBlockingQueue<SendWork> m_workQueue;
+        private final int m_compressionThreads;
+        private final List<LinkedBlockingQueue<SendWork>> m_streams;
         private final AtomicInteger m_expectedEOFs;
+        private ListeningExecutorService m_compressionService;
 
         final Map<Long, AtomicLong> m_bytesSent;
         final Map<Long, AtomicLong> m_worksSent;
@@ -343,14 +404,43 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
         }
 
         public SnapshotSender(Mailbox mb, MessageFactory msgFactory)
+        {
+            this(mb, msgFactory, DEFAULT_COMPRESSION_THREADS, DEFAULT_SEND_STREAMS);
+        }
+
+        public SnapshotSender(Mailbox mb, MessageFactory msgFactory, int compressionThreads, int streams)
         {
             Preconditions.checkArgument(mb != null);
+            Preconditions.checkArgument(compressionThreads > 0 && streams > 0);
             m_mb = mb;
             m_msgFactory = msgFactory;
-            m_workQueue = new LinkedBlockingQueue<SendWork>();
+            m_compressionThreads = compressionThreads;
+            m_streams = new ArrayList<LinkedBlockingQueue<SendWork>>(streams);
+            for (int i = 0; i < streams; i++) {
+                m_streams.add(new LinkedBlockingQueue<SendWork>());
+            }
             m_expectedEOFs = new AtomicInteger();
             m_bytesSent = Collections.synchronizedMap(new HashMap<Long, AtomicLong>());
             m_worksSent = Collections.synchronizedMap(new HashMap<Long, AtomicLong>());
+            StreamSnapshotStats.clearFinished();
+        }
+
+        /**
+         * Start the compression workers and the sender streams.
+         */
+        public void start()
+        {
+            m_compressionService = CoreUtils.getListeningExecutorService("Stream Snapshot Compression",
+                                                                        m_compressionThreads);
+            for (int i = 0; i < m_streams.size(); i++) {
+                final LinkedBlockingQueue<SendWork> queue = m_streams.get(i);
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        runStream(queue);
+                    }
+                }, "Stream Snapshot Sender - " + i).start();
+            }
         }
 
         public void registerDataTarget(long targetId)
@@ -360,13 +450,32 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
             m_worksSent.put(targetId, new AtomicLong());
         }
 
-        public void offer(SendWork work)
+        public void offer(final SendWork work)
         {
-            m_workQueue.offer(work);
+            if (work.m_isEmpty) {
+                // Empty work indicates the end of the queue.
+                // The sender is shared by multiple data targets, each of them will
+                // send an end-of-queue work, must wait until all end-of-queue works
+                // are received before terminating the streams.
+                if (m_expectedEOFs.decrementAndGet() == 0) {
+                    for (LinkedBlockingQueue<SendWork> queue : m_streams) {
+                        queue.offer(work);
+                    }
+                    m_compressionService.shutdown();
+                }
+                return;
+            }
+
+            work.m_compressed = m_compressionService.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return work.compress();
+                }
+            });
+            m_streams.get((int) (work.m_targetId % m_streams.size())).offer(work);
         }
 
-        @Override
-        public void run() {
+        private void runStream(LinkedBlockingQueue<SendWork> queue) {
             rejoinLog.trace("Starting stream sender thread");
 
             while (true) {
@@ -374,32 +483,40 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
 
                 try {
                     rejoinLog.trace("Blocking on sending work queue");
-                    work = m_workQueue.poll(10, TimeUnit.MINUTES);
+                    work = queue.poll(10, TimeUnit.MINUTES);
 
                     if (work == null) {
                         rejoinLog.warn("No stream snapshot send work was produced in the past 10 minutes");
                         break;
                     } else if (work.m_isEmpty) {
-                        // Empty work indicates the end of the queue.
-                        // The sender is shared by multiple data targets, each of them will
-                        // send an end-of-queue work, must wait until all end-of-queue works
-                        // are received before terminating the thread.
-                        if (m_expectedEOFs.decrementAndGet() == 0) {
-                            break;
-                        } else {
-                            continue;
+                        break;
+                    }
+
+                    // Wait for a slot in the target's in-flight window. Give up
+                    // waiting if the work is discarded because the stream failed.
+                    boolean acquired = false;
+                    if (work.m_window != null) {
+                        while (!(acquired = work.m_window.acquire(1, TimeUnit.SECONDS))) {
+                            if (work.isDiscarded()) {
+                                break;
+                            }
                         }
                     }
 
-                    m_bytesSent.get(work.m_targetId).addAndGet(work.doWork(m_mb, m_msgFactory));
-                    m_worksSent.get(work.m_targetId).incrementAndGet();
+                    final int bytes = work.doWork(m_mb, m_msgFactory);
+                    if (bytes >= 0) {
+                        m_bytesSent.get(work.m_targetId).addAndGet(bytes);
+                        m_worksSent.get(work.m_targetId).incrementAndGet();
+                    } else if (acquired) {
+                        // nothing went out, so no ack will free the slot
+                        work.m_window.release();
+                    }
                 }
                 catch (Exception e) {
                     m_lastException = e;
                     rejoinLog.error("Error sending a recovery stream message", e);
                 }
             }
-            CompressionService.releaseThreadLocal();
             rejoinLog.trace("Stream sender thread exiting");
         }
     }
@@ -496,7 +613,7 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
      */
     synchronized ListenableFuture<Boolean> send(int blockIndex, BBContainer chunk) {
         SettableFuture<Boolean> sendFuture = SettableFuture.create();
-        SendWork sendWork = new SendWork(m_targetId, m_destHSId, chunk, sendFuture);
+        SendWork sendWork = new SendWork(m_targetId, m_destHSId, chunk, sendFuture, m_window, m_stats);
         m_outstandingWork.put(blockIndex, sendWork);
         m_outstandingWorkCount.incrementAndGet();
         m_sender.offer(sendWork);
@@ -540,6 +657,7 @@ implements SnapshotDataTarget, StreamSnapshotAckReceiver.AckCallback {
 
                 assert(m_outstandingWork.size() == 0);
             }
+            m_stats.finished();
 
             rejoinLog.trace("Closed stream snapshot target");
         }
@@ -0,0 +1,167 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.rejoin;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Progress of the stream snapshots this node is sending to rejoining or
+ * joining nodes, one row per destination site. Throughput is in uncompressed
+ * bytes per second, ack latencies are in nanoseconds from putting a block on
+ * the wire to receiving its ack.
+ */
+public class StreamSnapshotStats extends StatsSource {
+
+    /**
+     * Counters of one stream snapshot data target.
+     */
+    static class TargetStats {
+        final long m_targetId;
+        final long m_destHSId;
+        final long m_startTime = System.nanoTime();
+        volatile long m_endTime = 0;
+        volatile StreamSnapshotAckReceiver.InflightWindow m_window;
+
+        final AtomicLong m_blocksSent = new AtomicLong(0);
+        final AtomicLong m_rawBytes = new AtomicLong(0);
+        final AtomicLong m_compressedBytes = new AtomicLong(0);
+        final AtomicLong m_acks = new AtomicLong(0);
+        final AtomicLong m_totalAckNanos = new AtomicLong(0);
+        volatile long m_maxAckNanos = 0;
+
+        TargetStats(long targetId, long destHSId) {
+            m_targetId = targetId;
+            m_destHSId = destHSId;
+        }
+
+        void blockSent(int rawBytes, int compressedBytes) {
+            m_blocksSent.incrementAndGet();
+            m_rawBytes.addAndGet(rawBytes);
+            m_compressedBytes.addAndGet(compressedBytes);
+        }
+
+        // Acks for one target are delivered by a single thread
+        void blockAcked(long latencyNanos) {
+            m_acks.incrementAndGet();
+            m_totalAckNanos.addAndGet(latencyNanos);
+            if (latencyNanos > m_maxAckNanos) {
+                m_maxAckNanos = latencyNanos;
+            }
+        }
+
+        void finished() {
+            m_endTime = System.nanoTime();
+        }
+    }
+
+    private static final Map<Long, TargetStats> s_targets = new ConcurrentHashMap<Long, TargetStats>();
+
+    static TargetStats register(long targetId, long destHSId) {
+        TargetStats stats = new TargetStats(targetId, destHSId);
+        s_targets.put(targetId, stats);
+        return stats;
+    }
+
+    /**
+     * Drop the rows of transfers that have completed, called when a new stream snapshot starts.
+     */
+    static void clearFinished() {
+        Iterator<TargetStats> iter = s_targets.values().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().m_endTime != 0) {
+                iter.remove();
+            }
+        }
+    }
+
+    public StreamSnapshotStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("TARGET_ID", VoltType.BIGINT));
+        columns.add(new ColumnInfo("DESTINATION", VoltType.STRING));
+        columns.add(new ColumnInfo("STATUS", VoltType.STRING));
+        columns.add(new ColumnInfo("BLOCKS_SENT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BYTES_UNCOMPRESSED", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BYTES_SENT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("COMPRESSION_RATIO", VoltType.FLOAT));
+        columns.add(new ColumnInfo("THROUGHPUT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BLOCKS_IN_FLIGHT", VoltType.INTEGER));
+        columns.add(new ColumnInfo("IN_FLIGHT_WINDOW", VoltType.INTEGER));
+        columns.add(new ColumnInfo("AVG_ACK_LATENCY", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX_ACK_LATENCY", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        super.updateStatsRow(rowKey, rowValues);
+        TargetStats stats = (TargetStats) rowKey;
+        final long raw = stats.m_rawBytes.get();
+        final long compressed = stats.m_compressedBytes.get();
+        final long acks = stats.m_acks.get();
+        final long endTime = stats.m_endTime;
+        final long elapsed = (endTime == 0 ? System.nanoTime() : endTime) - stats.m_startTime;
+        final StreamSnapshotAckReceiver.InflightWindow window = stats.m_window;
+
+        rowValues[columnNameToIndex.get("TARGET_ID")] = stats.m_targetId;
+        rowValues[columnNameToIndex.get("DESTINATION")] = CoreUtils.hsIdToString(stats.m_destHSId);
+        rowValues[columnNameToIndex.get("STATUS")] = endTime == 0 ? "ACTIVE" : "COMPLETE";
+        rowValues[columnNameToIndex.get("BLOCKS_SENT")] = stats.m_blocksSent.get();
+        rowValues[columnNameToIndex.get("BYTES_UNCOMPRESSED")] = raw;
+        rowValues[columnNameToIndex.get("BYTES_SENT")] = compressed;
+        rowValues[columnNameToIndex.get("COMPRESSION_RATIO")] = compressed == 0 ? 0.0 : (double) raw / compressed;
+        rowValues[columnNameToIndex.get("THROUGHPUT")] = elapsed <= 0 ? 0L : (long) (raw * 1000000000.0 / elapsed);
+        rowValues[columnNameToIndex.get("BLOCKS_IN_FLIGHT")] = window == null ? 0 : window.getInflight();
+        rowValues[columnNameToIndex.get("IN_FLIGHT_WINDOW")] = window == null ? 0 : window.getSize();
+        rowValues[columnNameToIndex.get("AVG_ACK_LATENCY")] = acks == 0 ? 0L : stats.m_totalAckNanos.get() / acks;
+        rowValues[columnNameToIndex.get("MAX_ACK_LATENCY")] = stats.m_maxAckNanos;
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        final Iterator<TargetStats> i = new ArrayList<TargetStats>(s_targets.values()).iterator();
+        return new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                return i.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return i.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,262 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.zookeeper_voltpatches.KeeperException;
+import org.apache.zookeeper_voltpatches.ZooKeeper;
+import org.apache.zookeeper_voltpatches.data.Stat;
+import org.voltcore.utils.Pair;
+import org.voltdb.CatalogContext;
+import org.voltdb.TableStatisticsMonitor;
+import org.voltdb.TheHashinator;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltNTSystemProcedure;
+import org.voltdb.VoltProcedure.VoltAbortException;
+import org.voltdb.VoltSystemProcedure;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.VoltZK;
+import org.voltdb.catalog.Column;
+import org.voltdb.catalog.Table;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.compiler.AdHocCompilerCache;
+import org.voltdb.compiler.TableStatistics;
+import org.voltdb.utils.CatalogUtil;
+
+/**
+ * Gather the row count of tables and the number of distinct values of their
+ * columns, and hand them to the planner on every host. Ad hoc queries planned
+ * afterwards are costed with these statistics.
+ *
+ * Row counts come from the table statistics of each partition. Distinct values
+ * are counted with APPROX_COUNT_DISTINCT over a sample of the first
+ * ANALYZE_SAMPLE_ROWS rows of each partition, one single partition read at a
+ * time, so analyzing never holds up the whole cluster.
+ *
+ * The statistics are merged into a ZooKeeper node before they are installed,
+ * so that a host that starts or rejoins later plans with the same statistics.
+ *
+ * Takes the name of the table to analyze, or an empty string for all tables.
+ */
+public class AnalyzeTable extends VoltNTSystemProcedure {
+
+    // rows of each partition read to count distinct values
+    static final int SAMPLE_ROWS = Integer.getInteger("ANALYZE_SAMPLE_ROWS", 100_000);
+
+    /**
+     * Install the statistics on this host and drop the plans cached before.
+     */
+    public static class StorePlannerStatisticsNT extends VoltNTSystemProcedure {
+
+        public VoltTable run(int version, VoltTable statistics) {
+            CatalogContext context = VoltDB.instance().getCatalogContext();
+            if (context.setTableStatistics(version, TableStatistics.fromVoltTable(statistics))) {
+                AdHocCompilerCache.getCacheForCatalogHash(context.getCatalogHash()).clear();
+            }
+            VoltTable vt = new VoltTable(new ColumnInfo("TABLE_COUNT", VoltType.INTEGER));
+            vt.addRow(context.getTableStatistics().getTableCount());
+            return vt;
+        }
+    }
+
+    private static boolean supportsDistinctCount(Column column) {
+        switch (VoltType.get((byte) column.getType())) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+        case DECIMAL:
+        case TIMESTAMP:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static VoltTable checkResponse(ClientResponse cr, String what) {
+        if (cr.getStatus() != ClientResponse.SUCCESS) {
+            throw new VoltAbortException("Failed to " + what + ": " + cr.getStatusString());
+        }
+        return cr.getResults()[0];
+    }
+
+    /**
+     * Scale the distinct values found in a sample up to the whole partition. A column
+     * whose sampled values were nearly all different is assumed to keep going that way,
+     * one whose values repeated a lot is assumed to have shown most of its values.
+     */
+    static long estimateDistinctValues(long sampledDistinct, long sampleRows, long partitionRows) {
+        if (sampleRows <= 0 || partitionRows <= sampleRows) {
+            return Math.max(1, sampledDistinct);
+        }
+        double distinctFraction = Math.min(1.0, (double) sampledDistinct / sampleRows);
+        double estimate = sampledDistinct + (partitionRows - sampleRows) * distinctFraction * distinctFraction;
+        return Math.max(1, Math.min(partitionRows, Math.round(estimate)));
+    }
+
+    /**
+     * @return the row count of each table in each partition
+     */
+    private Map<String, Map<Integer, Long>> getRowCounts() throws InterruptedException, ExecutionException {
+        VoltTable stats = checkResponse(callProcedure("@Statistics", "TABLE", 0).get(), "read table statistics");
+        Map<String, Map<Integer, Long>> rowCounts = new HashMap<>();
+        while (stats.advanceRow()) {
+            String tableName = stats.getString("TABLE_NAME");
+            Map<Integer, Long> partitions = rowCounts.get(tableName);
+            if (partitions == null) {
+                partitions = new HashMap<>();
+                rowCounts.put(tableName, partitions);
+            }
+            // replicated tables are reported once per site, all with the same count
+            partitions.put((int) stats.getLong("PARTITION_ID"), stats.getLong("TUPLE_COUNT"));
+        }
+        return rowCounts;
+    }
+
+    private TableStatistics.Table analyze(Table table, Map<Integer, Long> rowCounts,
+            Map<Integer, Integer> partitionKeys, long analyzedAt) throws InterruptedException, ExecutionException {
+        long rowCount = 0;
+        for (long count : rowCounts.values()) {
+            rowCount = Math.max(rowCount, count);
+        }
+        List<Column> columns = new ArrayList<>();
+        for (Column column : CatalogUtil.getSortedCatalogItems(table.getColumns(), "index")) {
+            if (supportsDistinctCount(column)) {
+                columns.add(column);
+            }
+        }
+        Map<String, Long> distinctValues = new HashMap<>();
+        if (columns.isEmpty() || rowCount == 0 || partitionKeys.isEmpty()) {
+            return new TableStatistics.Table(table.getTypeName(), rowCount, distinctValues, analyzedAt);
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*)");
+        StringBuilder sample = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            String name = columns.get(i).getTypeName();
+            sql.append(", APPROX_COUNT_DISTINCT(").append(name).append(")");
+            sample.append(i == 0 ? "" : ", ").append(name);
+        }
+        sql.append(" FROM (SELECT ").append(sample).append(" FROM ").append(table.getTypeName())
+           .append(" LIMIT ").append(SAMPLE_ROWS).append(") SAMPLE;");
+
+        // A replicated table has the same rows everywhere, one partition is enough
+        Map<Integer, Integer> sampled = partitionKeys;
+        if (table.getIsreplicated()) {
+            Map.Entry<Integer, Integer> any = partitionKeys.entrySet().iterator().next();
+            sampled = new HashMap<>();
+            sampled.put(any.getKey(), any.getValue());
+        }
+        // Each sample is a single partition read, they run side by side
+        Map<Integer, CompletableFuture<ClientResponse>> responses = new HashMap<>();
+        for (Map.Entry<Integer, Integer> e : sampled.entrySet()) {
+            responses.put(e.getKey(), callProcedure("@AdHocSpForTest", sql.toString(), e.getValue()));
+        }
+        for (Map.Entry<Integer, CompletableFuture<ClientResponse>> e : responses.entrySet()) {
+            VoltTable result = checkResponse(e.getValue().get(), "sample " + table.getTypeName());
+            result.advanceRow();
+            long sampleRows = result.getLong(0);
+            Long partitionRows = rowCounts.get(e.getKey());
+            long rows = Math.max(sampleRows, partitionRows == null ? 0 : partitionRows);
+            // the busiest partition decides, like the row count
+            for (int i = 0; i < columns.size(); i++) {
+                long ndv = estimateDistinctValues(Math.round(result.getDouble(i + 1)), sampleRows, rows);
+                String name = columns.get(i).getTypeName();
+                Long current = distinctValues.get(name);
+                if (current == null || current < ndv) {
+                    distinctValues.put(name, ndv);
+                }
+            }
+        }
+        return new TableStatistics.Table(table.getTypeName(), rowCount, distinctValues, analyzedAt);
+    }
+
+    /**
+     * Merge the analyzed tables into the statistics in ZooKeeper, retrying if another
+     * analyze got there first.
+     *
+     * @return the version of the node and the merged statistics it now holds
+     */
+    private static Pair<Integer, VoltTable> store(ZooKeeper zk, TableStatistics analyzed, CatalogContext context)
+            throws KeeperException, InterruptedException {
+        while (true) {
+            Stat stat = new Stat();
+            TableStatistics current = TableStatisticsMonitor.readStoredStatistics(zk, stat);
+            VoltTable merged = current.merge(analyzed).retainTables(context.database).toVoltTable();
+            try {
+                byte[] data = merged.toJSONString().getBytes(StandardCharsets.UTF_8);
+                int version = zk.setData(VoltZK.planner_statistics, data, stat.getVersion()).getVersion();
+                return Pair.of(version, merged);
+            } catch (KeeperException.BadVersionException e) {
+                // someone else stored statistics in between, merge with theirs
+            }
+        }
+    }
+
+    public VoltTable run(String tableName) throws Exception {
+        CatalogContext context = VoltDB.instance().getCatalogContext();
+        List<Table> tables = new ArrayList<>();
+        if (tableName == null || tableName.isEmpty()) {
+            for (Table table : context.database.getTables()) {
+                if (! CatalogUtil.isTableExportOnly(context.database, table)) {
+                    tables.add(table);
+                }
+            }
+        }
+        else {
+            Table table = context.database.getTables().getIgnoreCase(tableName);
+            if (table == null || CatalogUtil.isTableExportOnly(context.database, table)) {
+                throw new VoltAbortException("Table " + tableName + " does not exist.");
+            }
+            tables.add(table);
+        }
+
+        Map<String, Map<Integer, Long>> rowCounts = getRowCounts();
+        Map<Integer, Integer> partitionKeys = new HashMap<>();
+        VoltTable keys = TheHashinator.getPartitionKeys(VoltType.INTEGER);
+        while (keys.advanceRow()) {
+            partitionKeys.put((int) keys.getLong(VoltSystemProcedure.CNAME_PARTITION_ID),
+                    (int) keys.getLong(TheHashinator.CNAME_PARTITION_KEY));
+        }
+        long analyzedAt = System.currentTimeMillis();
+        List<TableStatistics.Table> analyzed = new ArrayList<>();
+        for (Table table : tables) {
+            Map<Integer, Long> counts = rowCounts.get(table.getTypeName());
+            analyzed.add(analyze(table, counts == null ? new HashMap<Integer, Long>() : counts,
+                    partitionKeys, analyzedAt));
+        }
+        TableStatistics statistics = TableStatistics.of(analyzed);
+
+        Pair<Integer, VoltTable> stored = store(VoltDB.instance().getHostMessenger().getZK(), statistics, context);
+        Map<Integer, ClientResponse> responses =
+                callNTProcedureOnAllHosts("@StorePlannerStatisticsNT", stored.getFirst(), stored.getSecond()).get();
+        for (ClientResponse cr : responses.values()) {
+            checkResponse(cr, "store planner statistics");
+        }
+        return statistics.toVoltTable();
+    }
+}
@@ -0,0 +1,299 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+
+/**
+ * Column-major encoding of the tuples in a native snapshot chunk, used by snapshot
+ * files with version 3 and later.
+ *
+ * The EE serializes a chunk as a row count followed by rows in the VoltTable format,
+ * each prefixed with its length. Before such a chunk is compressed the rows are
+ * transposed so that the values of a column are stored together, and each column is
+ * stored with the cheapest of these encodings:
+ * <ul>
+ * <li>{@link #PLAIN}, values as in the row format, one after the other</li>
+ * <li>{@link #DELTA}, for BIGINT and TIMESTAMP, zig-zag varint differences to the previous row</li>
+ * <li>{@link #DICTIONARY}, for VARCHAR, the distinct values followed by a varint index per row</li>
+ * </ul>
+ * Decoding reproduces the original rows byte for byte.
+ *
+ * A block is an int row count and a short column count, followed by each column as a
+ * byte encoding, the int length of the column data and the column data.
+ */
+public final class ColumnarChunkCodec {
+
+    static final byte PLAIN = 0;
+    static final byte DELTA = 1;
+    static final byte DICTIONARY = 2;
+
+    private static final int BLOCK_HEADER_LENGTH = 4 + 2;
+    private static final int COLUMN_HEADER_LENGTH = 1 + 4;
+
+    /**
+     * Upper bound of how much larger an encoded chunk can be than the row format,
+     * tables have at most 1024 columns.
+     */
+    public static final int MAX_ENCODING_OVERHEAD = BLOCK_HEADER_LENGTH + 1024 * COLUMN_HEADER_LENGTH;
+
+    // Give up on a dictionary once it holds more values than this
+    private static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    private ColumnarChunkCodec() {}
+
+    public static VoltType[] getColumnTypes(VoltTable schema) {
+        VoltType types[] = new VoltType[schema.getColumnCount()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = schema.getColumnType(i);
+        }
+        return types;
+    }
+
+    /**
+     * Encode the row count and rows between the position and limit of {@code rows}
+     * into {@code out}. Neither buffer's position is used for anything but the
+     * start of the data, only the position of {@code out} is advanced.
+     */
+    public static void encode(VoltType[] types, ByteBuffer rows, ByteBuffer out) {
+        final int rowCount = rows.getInt(rows.position());
+        // Position in every row of the next column to encode, and of the current one
+        final int cursors[] = new int[rowCount];
+        final int starts[] = new int[rowCount];
+        int rowStart = rows.position() + 4;
+        for (int r = 0; r < rowCount; r++) {
+            cursors[r] = rowStart + 4;
+            rowStart += 4 + rows.getInt(rowStart);
+        }
+
+        out.putInt(rowCount);
+        out.putShort((short) types.length);
+        for (VoltType type : types) {
+            final int fixedLength = type.getLengthInBytesForFixedTypesWithoutCheck();
+            final boolean variableLength = type.isVariableLength();
+            int plainLength = 0;
+            for (int r = 0; r < rowCount; r++) {
+                starts[r] = cursors[r];
+                int length = variableLength ? 4 + Math.max(0, rows.getInt(cursors[r])) : fixedLength;
+                cursors[r] += length;
+                plainLength += length;
+            }
+
+            final int headerPosition = out.position();
+            out.position(headerPosition + COLUMN_HEADER_LENGTH);
+            byte encoding = PLAIN;
+            if ((type == VoltType.BIGINT || type == VoltType.TIMESTAMP) &&
+                    deltaLength(rows, starts, rowCount) < plainLength) {
+                encoding = DELTA;
+                long previous = 0;
+                for (int r = 0; r < rowCount; r++) {
+                    long value = rows.getLong(starts[r]);
+                    putVarLong(out, zigZag(value - previous));
+                    previous = value;
+                }
+            } else if (type == VoltType.STRING && encodeDictionary(rows, starts, rowCount, plainLength, out)) {
+                encoding = DICTIONARY;
+            } else {
+                ByteBuffer src = rows.duplicate();
+                for (int r = 0; r < rowCount; r++) {
+                    copy(src, starts[r], cursors[r] - starts[r], out);
+                }
+            }
+            out.put(headerPosition, encoding);
+            out.putInt(headerPosition + 1, out.position() - headerPosition - COLUMN_HEADER_LENGTH);
+        }
+    }
+
+    private static int deltaLength(ByteBuffer rows, int[] starts, int rowCount) {
+        int length = 0;
+        long previous = 0;
+        for (int r = 0; r < rowCount; r++) {
+            long value = rows.getLong(starts[r]);
+            length += varLongLength(zigZag(value - previous));
+            previous = value;
+        }
+        return length;
+    }
+
+    /**
+     * Write the column as a dictionary if that is smaller than the plain layout.
+     * @return false, with nothing written, if it isn't
+     */
+    private static boolean encodeDictionary(ByteBuffer rows, int[] starts, int rowCount, int plainLength, ByteBuffer out) {
+        // Values are keyed on their serialized form, length prefix included, so null is just another value
+        final HashMap<ByteBuffer, Integer> dictionary = new HashMap<ByteBuffer, Integer>();
+        final int indexes[] = new int[rowCount];
+        final int maxSize = Math.min(MAX_DICTIONARY_SIZE, rowCount / 2);
+        int length = 4;
+        for (int r = 0; r < rowCount; r++) {
+            ByteBuffer value = rows.duplicate();
+            value.limit(starts[r] + 4 + Math.max(0, rows.getInt(starts[r])));
+            value.position(starts[r]);
+            Integer index = dictionary.get(value);
+            if (index == null) {
+                if (dictionary.size() >= maxSize) {
+                    return false;
+                }
+                index = dictionary.size();
+                dictionary.put(value, index);
+                length += value.remaining();
+            }
+            indexes[r] = index;
+            length += varLongLength(index);
+            if (length >= plainLength) {
+                return false;
+            }
+        }
+
+        final ByteBuffer values[] = new ByteBuffer[dictionary.size()];
+        for (Map.Entry<ByteBuffer, Integer> e : dictionary.entrySet()) {
+            values[e.getValue()] = e.getKey();
+        }
+        out.putInt(values.length);
+        for (ByteBuffer value : values) {
+            out.put(value);
+        }
+        for (int r = 0; r < rowCount; r++) {
+            putVarLong(out, indexes[r]);
+        }
+        return true;
+    }
+
+    /**
+     * Decode a block produced by {@link #encode} starting at the position of {@code block},
+     * and write the row count and rows in the row format to {@code out}. The position
+     * of {@code block} is left at the end of the block.
+     */
+    public static void decode(VoltType[] types, ByteBuffer block, ByteBuffer out) throws IOException {
+        final int rowCount = block.getInt();
+        final int columnCount = block.getShort();
+        if (rowCount < 0 || columnCount != types.length) {
+            throw new IOException("Columnar chunk has " + columnCount + " columns and " + rowCount +
+                    " rows, expected " + types.length + " columns");
+        }
+
+        final byte encodings[] = new byte[columnCount];
+        // Read position of each column, and for dictionaries the position of every value
+        final int positions[] = new int[columnCount];
+        final long previous[] = new long[columnCount];
+        final int dictionaries[][] = new int[columnCount][];
+        int columnStart = block.position();
+        for (int c = 0; c < columnCount; c++) {
+            encodings[c] = block.get(columnStart);
+            final int length = block.getInt(columnStart + 1);
+            positions[c] = columnStart + COLUMN_HEADER_LENGTH;
+            columnStart = positions[c] + length;
+            if (length < 0 || columnStart > block.limit()) {
+                throw new IOException("Columnar chunk column " + c + " has invalid length " + length);
+            }
+            if (encodings[c] == DICTIONARY) {
+                final int values[] = new int[block.getInt(positions[c])];
+                int position = positions[c] + 4;
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = position;
+                    position += 4 + Math.max(0, block.getInt(position));
+                }
+                dictionaries[c] = values;
+                positions[c] = position;
+            } else if (encodings[c] != PLAIN && encodings[c] != DELTA) {
+                throw new IOException("Columnar chunk column " + c + " has unknown encoding " + encodings[c]);
+            }
+        }
+
+        final ByteBuffer src = block.duplicate();
+        block.position(columnStart);
+        out.putInt(rowCount);
+        for (int r = 0; r < rowCount; r++) {
+            final int lengthPosition = out.position();
+            out.position(lengthPosition + 4);
+            for (int c = 0; c < columnCount; c++) {
+                final VoltType type = types[c];
+                switch (encodings[c]) {
+                case DELTA:
+                    previous[c] += unZigZag(getVarLong(block, positions, c));
+                    out.putLong(previous[c]);
+                    break;
+                case DICTIONARY: {
+                    final int value = dictionaries[c][(int) getVarLong(block, positions, c)];
+                    copy(src, value, 4 + Math.max(0, block.getInt(value)), out);
+                    break;
+                }
+                default: {
+                    final int length = type.isVariableLength() ?
+                            4 + Math.max(0, block.getInt(positions[c])) :
+                            type.getLengthInBytesForFixedTypesWithoutCheck();
+                    copy(src, positions[c], length, out);
+                    positions[c] += length;
+                }
+                }
+            }
+            out.putInt(lengthPosition, out.position() - lengthPosition - 4);
+        }
+    }
+
+    private static void copy(ByteBuffer src, int position, int length, ByteBuffer out) {
+        src.limit(position + length);
+        src.position(position);
+        out.put(src);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varLongLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer block, int[] positions, int column) throws IOException {
+        int position = positions[column];
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = block.get(position++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                positions[column] = position;
+                return value;
+            }
+        }
+        throw new IOException("Columnar chunk column " + column + " has a malformed varint");
+    }
+}
@@ -0,0 +1,63 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers, for every partitioned table, the last incremental snapshot this host
+ * completed so the next one can be written as a delta on top of it. A table only
+ * has an entry once a snapshot of it succeeded, anything else makes the next
+ * incremental snapshot of the table a full one again.
+ *
+ * Incremental snapshots can only build on snapshots in the same directory, switching
+ * the directory starts new chains for all tables.
+ */
+public class IncrementalSnapshotChain {
+
+    private static String s_path = null;
+    private static final Map<String, String> s_lastNonces = new HashMap<String, String>();
+
+    /**
+     * Start an incremental snapshot of a table.
+     * @return the nonce of the snapshot to build on, or null to write the whole table
+     */
+    public static synchronized String startSnapshot(String path, String tableName) {
+        if (!path.equals(s_path)) {
+            s_path = path;
+            s_lastNonces.clear();
+        }
+        // If this snapshot fails its files can't be built on, nor can the
+        // previous ones since the EE forgot which blocks they are missing
+        return s_lastNonces.remove(tableName);
+    }
+
+    /**
+     * Record an incremental snapshot of the tables as completed.
+     */
+    public static synchronized void snapshotCompleted(String path, String nonce, Collection<String> tableNames) {
+        if (!path.equals(s_path)) {
+            return;
+        }
+        for (String tableName : tableNames) {
+            s_lastNonces.put(tableName, nonce);
+        }
+    }
+}
@@ -37,6 +37,7 @@ import org.voltdb.SnapshotFormat;
 import org.voltdb.SnapshotSiteProcessor;
 import org.voltdb.SnapshotTableTask;
 import org.voltdb.SystemProcedureExecutionContext;
+import org.voltdb.TableStreamType;
 import org.voltdb.TheHashinator;
 import org.voltdb.TheHashinator.HashinatorType;
 import org.voltdb.VoltDB;
@@ -114,17 +115,30 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                     SnapshotFormat.NATIVE,
                     tableArray);
 
+        // Incremental snapshots write the partitioned tables as deltas to the previous
+        // incremental snapshot in the same directory, replicated tables are always whole
+        final boolean incremental = jsData != null && jsData.optBoolean("incremental", false);
+        final Map<String, String> previousNonces = new HashMap<String, String>();
+
         final ArrayList<SnapshotTableTask> partitionedSnapshotTasks =
             new ArrayList<SnapshotTableTask>();
         final ArrayList<SnapshotTableTask> replicatedSnapshotTasks =
             new ArrayList<SnapshotTableTask>();
         for (final Table table : tableArray) {
+            TableStreamType streamType = null;
+            if (incremental && !table.getIsreplicated()) {
+                final String previousNonce = IncrementalSnapshotChain.startSnapshot(file_path, table.getTypeName());
+                previousNonces.put(table.getTypeName(), previousNonce);
+                streamType = previousNonce == null ?
+                        TableStreamType.SNAPSHOT_DELTA_BASE : TableStreamType.SNAPSHOT_DELTA;
+            }
             final SnapshotTableTask task =
                     new SnapshotTableTask(
                             table,
                             new SnapshotDataFilter[0],
                             null,
-                            false);
+                            false,
+                            streamType);
 
             SNAP_LOG.debug("ADDING TASK: " + task);
 
@@ -159,7 +173,7 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
         return createDeferredSetup(file_path, pathType, file_nonce, txnId, partitionTransactionIds,
                 context, extraSnapshotData, tracker, hashinatorData, timestamp,
                 newPartitionCount, tableArray, m_snapshotRecord, partitionedSnapshotTasks,
-                replicatedSnapshotTasks, isTruncationSnapshot);
+                replicatedSnapshotTasks, isTruncationSnapshot, incremental ? previousNonces : null);
     }
 
     private Callable<Boolean> createDeferredSetup(final String file_path,
@@ -177,7 +191,8 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                                                   final SnapshotRegistry.Snapshot snapshotRecord,
                                                   final ArrayList<SnapshotTableTask> partitionedSnapshotTasks,
                                                   final ArrayList<SnapshotTableTask> replicatedSnapshotTasks,
-                                                  final boolean isTruncationSnapshot)
+                                                  final boolean isTruncationSnapshot,
+                                                  final Map<String, String> previousNonces)
     {
         return new Callable<Boolean>() {
             private final HashMap<Integer, SnapshotDataTarget> m_createdTargets = Maps.newHashMap();
@@ -214,6 +229,17 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                         }
                     });
                 }
+                if (previousNonces != null) {
+                    // Later incremental snapshots can build on this one once it succeeded
+                    SnapshotSiteProcessor.m_tasksOnSnapshotCompletion.offer(new Runnable() {
+                        @Override
+                        public void run()
+                        {
+                            IncrementalSnapshotChain.snapshotCompleted(file_path, file_nonce,
+                                                                       previousNonces.keySet());
+                        }
+                    });
+                }
                 // Sync export buffer for all types of snapshot
                 SnapshotSiteProcessor.m_tasksOnSnapshotCompletion.offer(new Runnable() {
                     @Override
@@ -235,7 +261,11 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                                                       context.getHostId(), context.getCluster().getTypeName(),
                                                       context.getDatabase().getTypeName(), context.getNumberOfPartitions(),
                                                       DrRoleType.XDCR.value().equals(context.getCluster().getDrrole()),
-                                                      tracker, timestamp, numTables, snapshotRecord);
+                                                      tracker, timestamp, numTables, snapshotRecord,
+                                                      previousNonces != null &&
+                                                      previousNonces.containsKey(task.m_table.getTypeName()),
+                                                      previousNonces == null ? null :
+                                                      previousNonces.get(task.m_table.getTypeName()));
                     m_createdTargets.put(task.m_table.getRelativeIndex(), target);
                 }
                 return target;
@@ -255,7 +285,9 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                                                         SiteTracker tracker,
                                                         long timestamp,
                                                         AtomicInteger numTables,
-                                                        SnapshotRegistry.Snapshot snapshotRecord)
+                                                        SnapshotRegistry.Snapshot snapshotRecord,
+                                                        boolean isDelta,
+                                                        String previousNonce)
             throws IOException
     {
         SnapshotDataTarget sdt;
@@ -267,18 +299,25 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                 SnapshotFormat.NATIVE,
                 hostId);
 
+        final VoltTable schemaTable;
         if (isActiveActiveDRed && table.getIsdred()) {
+            schemaTable = CatalogUtil.getVoltTable(table, CatalogUtil.DR_HIDDEN_COLUMN_INFO);
+        } else {
+            schemaTable = CatalogUtil.getVoltTable(table);
+        }
+
+        if (isDelta) {
             sdt = new DefaultSnapshotDataTarget(saveFilePath,
                     hostId,
                     clusterName,
                     databaseName,
                     table.getTypeName(),
                     partitionCount,
-                    table.getIsreplicated(),
                     tracker.getPartitionsForHost(hostId),
-                    CatalogUtil.getVoltTable(table, CatalogUtil.DR_HIDDEN_COLUMN_INFO),
+                    schemaTable,
                     txnId,
-                    timestamp);
+                    timestamp,
+                    previousNonce);
         }
         else {
             sdt = new DefaultSnapshotDataTarget(saveFilePath,
@@ -289,7 +328,7 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                     partitionCount,
                     table.getIsreplicated(),
                     tracker.getPartitionsForHost(hostId),
-                    CatalogUtil.getVoltTable(table),
+                    schemaTable,
                     txnId,
                     timestamp);
         }
@@ -668,6 +668,8 @@ public class SnapshotUtil {
         public final List<Set<Integer>> m_validPartitionIds = new ArrayList<Set<Integer>>();
         public final List<Set<Integer>> m_corruptParititionIds = new ArrayList<Set<Integer>>();
         public final List<Integer> m_totalPartitionCounts = new ArrayList<Integer>();
+        // nonce of the snapshot an incremental file builds on, null for self contained files
+        public final List<String> m_previousNonces = new ArrayList<String>();
     }
 
     /**
@@ -890,6 +892,7 @@ public class SnapshotUtil {
                         namedTableFiles.m_validPartitionIds.add(partitionIds);
                         namedTableFiles.m_corruptParititionIds.add(saveFile.getCorruptedPartitionIds());
                         namedTableFiles.m_totalPartitionCounts.add(saveFile.getTotalPartitions());
+                        namedTableFiles.m_previousNonces.add(saveFile.getPreviousNonce());
                     } finally {
                         saveFile.close();
                     }
@@ -26,8 +26,13 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
 import java.util.zip.Checksum;
@@ -43,6 +48,8 @@ import org.voltcore.utils.Bits;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.EELibraryLoader;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltType;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.PosixAdvise;
@@ -61,14 +68,22 @@ public class TableSaveFile
         CRC32, CRC32C
     }
 
+    /**
+     * Block id of the chunks of an incremental snapshot that hold its block manifest
+     */
+    public static final long MANIFEST_BLOCK_ID = -1;
+
     public class Container extends BBContainer {
         public final int partitionId;
+        // tuple block the rows were read from, -1 if the file has no block ids
+        public final long blockId;
         private final BBContainer m_origin;
         private boolean discarded = false;
-        Container(ByteBuffer b, BBContainer origin, int partitionId) {
+        Container(ByteBuffer b, BBContainer origin, int partitionId, long blockId) {
             super(b);
             m_origin = origin;
             this.partitionId = partitionId;
+            this.blockId = blockId;
         }
 
         @Override
@@ -91,6 +106,11 @@ public class TableSaveFile
     private static final int DEFAULT_CHUNKSIZE =
             org.voltdb.SnapshotSiteProcessor.m_snapshotBufferLength + (1024 * 256);
 
+    /**
+     * Largest columnar chunk before compression in a version 3 file
+     */
+    private static final int COLUMNAR_CHUNKSIZE = DEFAULT_CHUNKSIZE + ColumnarChunkCodec.MAX_ENCODING_OVERHEAD;
+
     public TableSaveFile(
             FileInputStream fis,
             int readAheadChunks,
@@ -261,13 +281,27 @@ public class TableSaveFile
                     }
                 }
                 m_hasVersion2FormatChunks = false;
+                m_columnTypes = null;
+                m_hasBlockIds = false;
+                m_previousNonce = null;
             } else {
-                assert(m_versionNum[3] == 1 || m_versionNum[3] == 2);
+                assert(m_versionNum[3] >= 1 && m_versionNum[3] <= 3);
                 if (m_versionNum[3] >= 2) {
                     m_hasVersion2FormatChunks = true;
                 } else {
                     m_hasVersion2FormatChunks = false;
                 }
+                if (m_versionNum[3] >= 3) {
+                    // Get the column types from the schema, with a zero row count to make it a table
+                    final ByteBuffer schema = ByteBuffer.allocate(m_tableHeader.capacity() + 4);
+                    final ByteBuffer header = m_tableHeader.duplicate();
+                    header.position(0);
+                    schema.put(header).putInt(0).flip();
+                    m_columnTypes = ColumnarChunkCodec.getColumnTypes(
+                            PrivateVoltTableFactory.createVoltTableFromBuffer(schema, true));
+                } else {
+                    m_columnTypes = null;
+                }
                 int numJSONBytes = fd.readInt();
                 byte jsonBytes[] = new byte[numJSONBytes];
                 fd.readFully(jsonBytes);
@@ -290,6 +324,12 @@ public class TableSaveFile
                 m_isReplicated = obj.getBoolean("isReplicated");
                 m_isCompressed = obj.optBoolean("isCompressed", false);
                 m_checksumType = ChecksumType.valueOf(obj.optString("checksumType", "CRC32"));
+                // Incremental snapshots, added in version 2 of the chunk format
+                m_hasBlockIds = obj.optBoolean("blockIds", false);
+                m_previousNonce = obj.has("previousNonce") ? obj.getString("previousNonce") : null;
+                if (m_hasBlockIds && !m_hasVersion2FormatChunks) {
+                    throw new IOException("Corrupted save file has block ids in a version 1 file");
+                }
                 if (!m_isReplicated) {
                     JSONArray partitionIds = obj.getJSONArray("partitionIds");
                     m_partitionIds = new int[partitionIds.length()];
@@ -385,6 +425,41 @@ public class TableSaveFile
         return m_timestamp;
     }
 
+    /**
+     * @return true if the file is an incremental snapshot, with a block id on every
+     * chunk and a block manifest per partition
+     */
+    public boolean hasBlockIds() {
+        return m_hasBlockIds;
+    }
+
+    /**
+     * @return the nonce of the snapshot the blocks missing from this incremental
+     * snapshot can be found in, or null if the file is self contained
+     */
+    public String getPreviousNonce() {
+        return m_previousNonce;
+    }
+
+    /**
+     * Get the block manifest of a partition of an incremental snapshot. Each entry is
+     * the id of a block that was live when the snapshot was taken, complemented if the
+     * block was not modified since the previous snapshot and is not in this file.
+     * Only complete once all the chunks have been read.
+     * @return the manifest entries, or null if none were read for the partition
+     */
+    public synchronized long[] getBlockManifest(int partitionId) {
+        List<Long> entries = m_blockManifests.get(partitionId);
+        if (entries == null) {
+            return null;
+        }
+        long manifest[] = new long[entries.size()];
+        for (int ii = 0; ii < manifest.length; ii++) {
+            manifest[ii] = entries.get(ii);
+        }
+        return manifest;
+    }
+
     public void close() throws IOException {
         Thread chunkReader;
         synchronized (this) {
@@ -402,6 +477,14 @@ public class TableSaveFile
         }
 
         synchronized (this) {
+            // Decoding chunks still hold buffers and may offer a chunk
+            while (m_pendingDecodes > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
             while (!m_availableChunks.isEmpty()) {
                 m_availableChunks.poll().discard();
             }
@@ -493,6 +576,15 @@ public class TableSaveFile
     private final HashSet<Integer> m_relevantPartitionIds;
     private final ChecksumType m_checksumType;
 
+    /*
+     * Incremental snapshot files have a block id in every chunk header, see
+     * DefaultSnapshotDataTarget. The manifest chunks are collected here instead
+     * of being handed out.
+     */
+    private final boolean m_hasBlockIds;
+    private final String m_previousNonce;
+    private final Map<Integer, List<Long>> m_blockManifests = new HashMap<Integer, List<Long>>();
+
     /*
      * In version 2 the layout of chunks was rejiggered to do less work
      * in execution sites. The checksum is done after the compression so the layout
@@ -500,6 +592,17 @@ public class TableSaveFile
      */
     private final boolean m_hasVersion2FormatChunks;
 
+    /*
+     * Version 3 chunks have the version 2 layout, but the tuples are stored column-major
+     * and have to be decoded with these column types. Null for older versions.
+     */
+    private final VoltType m_columnTypes[];
+
+    /*
+     * Number of version 3 chunks being decoded on the compression service
+     */
+    private int m_pendingDecodes = 0;
+
     /**
      * Maintain a list of corrupted partitions. It is possible for uncorrupted partitions
      * to be recovered from a save file in the future
@@ -525,6 +628,51 @@ public class TableSaveFile
      */
     private class ChunkReader implements Runnable {
 
+        private long m_sinceLastFAdvise = Long.MAX_VALUE;
+        private long m_positionAtLastFAdvise = 0;
+
+        /*
+         * Ask the kernel to read ahead of the current position and to drop the pages
+         * that have already been read
+         */
+        private void adviseReadAhead() {
+            if (m_sinceLastFAdvise > 1024 * 1024 * 48) {
+                m_sinceLastFAdvise = 0;
+                VoltLogger log = new VoltLogger("SNAPSHOT");
+                try {
+                    final long position = m_saveFile.position();
+                    long retval = PosixAdvise.fadvise(
+                            m_fd,
+                            position,
+                            position + 1024 * 1024 * 64,
+                            PosixAdvise.POSIX_FADV_WILLNEED);
+                    if (retval != 0) {
+                        log.info("Failed to fadvise in TableSaveFile, this is harmless: " + retval);
+                    }
+
+                    //Get aligned start and end position
+                    final long fadviseStart = m_positionAtLastFAdvise;
+                    //-1 because we don't want to drop the last page because
+                    //We will be reading it soon
+                    m_positionAtLastFAdvise = ((position / Bits.pageSize()) - 1) * Bits.pageSize();
+                    final long length = m_positionAtLastFAdvise - fadviseStart;
+                    if (length > 0) {
+                        retval = PosixAdvise.fadvise(
+                                m_fd,
+                                fadviseStart,
+                                length,
+                                PosixAdvise.POSIX_FADV_DONTNEED);
+                    }
+                    if (retval != 0) {
+                        log.info("Failed to fadvise in TableSaveFile, this is harmless: " + retval);
+                    }
+                    m_positionAtLastFAdvise = position;
+                } catch (Throwable t) {
+                    log.info("Exception attempting fadvise", t);
+                }
+            }
+        }
+
         /*
          * The old method was out of hand. Going to start a new one with a different format
          * that should be easier to understand and validate.
@@ -534,44 +682,8 @@ public class TableSaveFile
             final BBContainer fileInputBufferC =
                     DBBPool.allocateDirect(CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE));
             final ByteBuffer fileInputBuffer = fileInputBufferC.b();
-            long sinceLastFAdvise = Long.MAX_VALUE;
-            long positionAtLastFAdvise = 0;
             while (m_hasMoreChunks) {
-                if (sinceLastFAdvise > 1024 * 1024 * 48) {
-                    sinceLastFAdvise = 0;
-                    VoltLogger log = new VoltLogger("SNAPSHOT");
-                    try {
-                        final long position = m_saveFile.position();
-                        long retval = PosixAdvise.fadvise(
-                                m_fd,
-                                position,
-                                position + 1024 * 1024 * 64,
-                                PosixAdvise.POSIX_FADV_WILLNEED);
-                        if (retval != 0) {
-                            log.info("Failed to fadvise in TableSaveFile, this is harmless: " + retval);
-                        }
-
-                        //Get aligned start and end position
-                        final long fadviseStart = positionAtLastFAdvise;
-                        //-1 because we don't want to drop the last page because
-                        //We will be reading it soon
-                        positionAtLastFAdvise = ((position / Bits.pageSize()) - 1) * Bits.pageSize();
-                        final long length = positionAtLastFAdvise - fadviseStart;
-                        if (length > 0) {
-                            retval = PosixAdvise.fadvise(
-                                    m_fd,
-                                    fadviseStart,
-                                    length,
-                                    PosixAdvise.POSIX_FADV_DONTNEED);
-                        }
-                        if (retval != 0) {
-                            log.info("Failed to fadvise in TableSaveFile, this is harmless: " + retval);
-                        }
-                        positionAtLastFAdvise = position;
-                    } catch (Throwable t) {
-                        log.info("Exception attempting fadvise", t);
-                    }
-                }
+                adviseReadAhead();
 
                 /*
                  * Limit the number of chunk materialized into memory at one time
@@ -587,16 +699,17 @@ public class TableSaveFile
                 try {
 
                     /*
-                     * Get the length of the next chunk, partition id, crc for partition id, and length prefix,
-                     * and then the CRC of the compressed payload
+                     * Get the length of the next chunk, partition id, block id if any, crc for partition id,
+                     * and length prefix, and then the CRC of the compressed payload
                      */
-                    ByteBuffer chunkLengthB = ByteBuffer.allocate(16);
+                    final int headerLength = chunkHeaderLength();
+                    ByteBuffer chunkLengthB = ByteBuffer.allocate(headerLength);
                     while (chunkLengthB.hasRemaining()) {
                         final int read = m_saveFile.read(chunkLengthB);
                         if (read == -1) {
                             throw new EOFException();
                         }
-                        sinceLastFAdvise += read;
+                        m_sinceLastFAdvise += read;
                     }
                     int nextChunkLength = chunkLengthB.getInt(0);
                     expectedAnotherChunk = true;
@@ -610,9 +723,10 @@ public class TableSaveFile
                     assert(m_checksumType == ChecksumType.CRC32C);
                     final Checksum partitionIdCRC = new PureJavaCrc32C();
                     final int nextChunkPartitionId = chunkLengthB.getInt(4);
-                    final int nextChunkPartitionIdCRC = chunkLengthB.getInt(8);
+                    final long nextChunkBlockId = m_hasBlockIds ? chunkLengthB.getLong(8) : -1;
+                    final int nextChunkPartitionIdCRC = chunkLengthB.getInt(headerLength - 8);
 
-                    partitionIdCRC.update(chunkLengthB.array(), 0, 8);
+                    partitionIdCRC.update(chunkLengthB.array(), 0, headerLength - 8);
                     int generatedValue = (int)partitionIdCRC.getValue();
                     if (generatedValue != nextChunkPartitionIdCRC) {
                         chunkLengthB.position(0);
@@ -626,7 +740,7 @@ public class TableSaveFile
                     /*
                      * CRC for the data portion of the chunk
                      */
-                    final int nextChunkCRC = chunkLengthB.getInt(12);
+                    final int nextChunkCRC = chunkLengthB.getInt(headerLength - 4);
 
                     /*
                      * Sanity check the length value to ensure there isn't
@@ -654,7 +768,7 @@ public class TableSaveFile
                         if (read == -1) {
                             throw new EOFException();
                         }
-                        sinceLastFAdvise += read;
+                        m_sinceLastFAdvise += read;
                     }
                     fileInputBuffer.flip();
                     nextChunkLength = CompressionService.uncompressedLength(fileInputBuffer);
@@ -681,7 +795,7 @@ public class TableSaveFile
                      * be sucked straight in. There is a little funny business to overwrite the
                      * partition id that is not part of the serialization format
                      */
-                    c = getOutputBuffer(nextChunkPartitionId);
+                    c = getOutputBuffer(nextChunkPartitionId, nextChunkBlockId);
 
                     /*
                      * If the length value is wrong or not all data made it to disk this read will
@@ -719,6 +833,12 @@ public class TableSaveFile
                         }
                     }
 
+                    if (m_hasBlockIds && nextChunkBlockId == MANIFEST_BLOCK_ID) {
+                        addManifestEntries(nextChunkPartitionId, c.b(), m_tableHeader.capacity());
+                        m_chunkReads.release();
+                        continue;
+                    }
+
                     /*
                      * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
                      * in case it is the length value that is corrupted
@@ -888,7 +1008,7 @@ public class TableSaveFile
                      * be sucked straight in. There is a little funny business to overwrite the
                      * partition id that is not part of the serialization format
                      */
-                    c = getOutputBuffer(nextChunkPartitionId);
+                    c = getOutputBuffer(nextChunkPartitionId, -1);
 
                     /*
                      * If the length value is wrong or not all data made it to disk this read will
@@ -1043,12 +1163,248 @@ public class TableSaveFile
             }
             fileInputBufferC.discard();
         }
-        private Container getOutputBuffer(final int nextChunkPartitionId) {
+        /*
+         * Version 3 chunks are framed like version 2 chunks. Only the read and the check of
+         * the partition id happen on this thread. Checking the payload CRC, decompressing and
+         * converting the columns back to rows happen on the compression service, so chunks
+         * are decoded in parallel and may become available out of file order.
+         */
+        private void readChunksV3() {
+            while (m_hasMoreChunks) {
+                adviseReadAhead();
+
+                /*
+                 * Limit the number of chunk materialized into memory at one time
+                 */
+                try {
+                    m_chunkReads.acquire();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                boolean expectedAnotherChunk = false;
+                BBContainer compressedC = null;
+                try {
+                    final int headerLength = chunkHeaderLength();
+                    ByteBuffer chunkLengthB = ByteBuffer.allocate(headerLength);
+                    while (chunkLengthB.hasRemaining()) {
+                        final int read = m_saveFile.read(chunkLengthB);
+                        if (read == -1) {
+                            throw new EOFException();
+                        }
+                        m_sinceLastFAdvise += read;
+                    }
+                    final int nextChunkLength = chunkLengthB.getInt(0);
+                    expectedAnotherChunk = true;
+
+                    final Checksum partitionIdCRC = new PureJavaCrc32C();
+                    final int nextChunkPartitionId = chunkLengthB.getInt(4);
+                    final long nextChunkBlockId = m_hasBlockIds ? chunkLengthB.getLong(8) : -1;
+                    final int nextChunkPartitionIdCRC = chunkLengthB.getInt(headerLength - 8);
+                    partitionIdCRC.update(chunkLengthB.array(), 0, headerLength - 8);
+                    if ((int)partitionIdCRC.getValue() != nextChunkPartitionIdCRC) {
+                        synchronized (TableSaveFile.this) {
+                            for (int partitionId : m_partitionIds) {
+                                m_corruptedPartitions.add(partitionId);
+                            }
+                        }
+                        throw new IOException("Chunk partition ID CRC check failed. " +
+                                "This corrupts all partitions in this file");
+                    }
+                    final int nextChunkCRC = chunkLengthB.getInt(headerLength - 4);
+
+                    compressedC = DBBPool.allocateDirectAndPool(CompressionService.maxCompressedLength(COLUMNAR_CHUNKSIZE));
+                    final ByteBuffer compressed = compressedC.b();
+                    if (nextChunkLength < 0) {
+                        throw new IOException("Corrupted TableSaveFile chunk has negative chunk length");
+                    }
+                    if (nextChunkLength > compressed.capacity()) {
+                        throw new IOException("Corrupted TableSaveFile chunk has unreasonable length " +
+                                "> DEFAULT_CHUNKSIZE bytes");
+                    }
+                    compressed.clear();
+                    compressed.limit(nextChunkLength);
+                    while (compressed.hasRemaining()) {
+                        final int read = m_saveFile.read(compressed);
+                        if (read == -1) {
+                            throw new EOFException();
+                        }
+                        m_sinceLastFAdvise += read;
+                    }
+                    compressed.flip();
+
+                    submitDecode(compressedC, nextChunkPartitionId, nextChunkBlockId, nextChunkCRC);
+                    compressedC = null;
+                } catch (EOFException eof) {
+                    synchronized (TableSaveFile.this) {
+                        m_hasMoreChunks = false;
+                        if (expectedAnotherChunk) {
+                            m_chunkReaderException = new IOException(
+                                    "Expected to find another chunk but reached end of file instead");
+                        }
+                        TableSaveFile.this.notifyAll();
+                    }
+                } catch (IOException e) {
+                    synchronized (TableSaveFile.this) {
+                        m_hasMoreChunks = false;
+                        m_chunkReaderException = e;
+                        TableSaveFile.this.notifyAll();
+                    }
+                } catch (BufferUnderflowException | BufferOverflowException | IndexOutOfBoundsException e) {
+                    synchronized (TableSaveFile.this) {
+                        m_hasMoreChunks = false;
+                        m_chunkReaderException = new IOException(e);
+                        TableSaveFile.this.notifyAll();
+                    }
+                } finally {
+                    if (compressedC != null) compressedC.discard();
+                }
+            }
+
+            /*
+             * The file is done once the last chunk is decoded, run() will mark it as such
+             */
+            synchronized (TableSaveFile.this) {
+                while (m_pendingDecodes > 0) {
+                    try {
+                        TableSaveFile.this.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void submitDecode(final BBContainer compressedC, final int partitionId, final long blockId,
+                                  final int expectedCRC) {
+            synchronized (TableSaveFile.this) {
+                m_pendingDecodes++;
+            }
+            CompressionService.submitCompressionTask(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    try {
+                        decodeChunk(compressedC.b(), partitionId, blockId, expectedCRC);
+                    } finally {
+                        compressedC.discard();
+                        synchronized (TableSaveFile.this) {
+                            m_pendingDecodes--;
+                            TableSaveFile.this.notifyAll();
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private void decodeChunk(final ByteBuffer compressed, final int partitionId, final long blockId,
+                                 final int expectedCRC) {
+            BBContainer columnsC = null;
+            Container c = null;
+            try {
+                final int calculatedCRC = DBBPool.getBufferCRC32C(compressed, 0, compressed.remaining());
+                if (calculatedCRC != expectedCRC) {
+                    chunkCorrupted(partitionId, new IOException("CRC mismatch in saved table chunk"));
+                    return;
+                }
+
+                // Manifest chunks are only compressed, never in columns
+                final boolean isManifest = m_hasBlockIds && blockId == MANIFEST_BLOCK_ID;
+
+                /*
+                 * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
+                 * in case it is the length value that is corrupted
+                 */
+                if (!isManifest && m_relevantPartitionIds != null && !m_relevantPartitionIds.contains(partitionId)) {
+                    m_chunkReads.release();
+                    return;
+                }
+
+                if (CompressionService.uncompressedLength(compressed) > COLUMNAR_CHUNKSIZE) {
+                    throw new IOException("Corrupted TableSaveFile chunk has unreasonable uncompressed length");
+                }
+                columnsC = DBBPool.allocateDirectAndPool(COLUMNAR_CHUNKSIZE);
+                final ByteBuffer columns = columnsC.b();
+                columns.clear();
+                //Doesn't move buffer position, does change the limit
+                CompressionService.decompressBuffer(compressed, columns);
+                if (isManifest) {
+                    addManifestEntries(partitionId, columns, 0);
+                    m_chunkReads.release();
+                    return;
+                }
+
+                /*
+                 * Assemble a VoltTable out of the cached header followed by the row count
+                 * and rows decoded from the columns
+                 */
+                c = getOutputBuffer(partitionId, blockId);
+                final ByteBuffer buf = c.b();
+                buf.clear();
+                final ByteBuffer header = m_tableHeader.duplicate();
+                header.position(0);
+                buf.put(header);
+                ColumnarChunkCodec.decode(m_columnTypes, columns, buf);
+                buf.flip();
+
+                synchronized (TableSaveFile.this) {
+                    m_availableChunks.offer(c);
+                    c = null;
+                    TableSaveFile.this.notifyAll();
+                }
+            } catch (IOException | RuntimeException e) {
+                chunkCorrupted(partitionId, new IOException("Failed decompression of saved table chunk", e));
+            } finally {
+                if (columnsC != null) columnsC.discard();
+                if (c != null) c.discard();
+            }
+        }
+
+        private void chunkCorrupted(int partitionId, IOException e) {
+            // The chunk will never be handed out, let the reader have another one
+            m_chunkReads.release();
+            synchronized (TableSaveFile.this) {
+                m_corruptedPartitions.add(partitionId);
+                if (!m_continueOnCorruptedChunk && m_chunkReaderException == null) {
+                    m_hasMoreChunks = false;
+                    m_chunkReaderException = e;
+                    TableSaveFile.this.notifyAll();
+                }
+            }
+        }
+
+        /*
+         * Length of the chunk header, up to and including the CRC of the payload
+         */
+        private int chunkHeaderLength() {
+            return m_hasBlockIds ? 24 : 16;
+        }
+
+        /*
+         * Record the entries of a manifest chunk, a row count followed by a long per row
+         */
+        private void addManifestEntries(int partitionId, ByteBuffer chunk, int offset) {
+            final int count = chunk.getInt(offset);
+            if (count < 0 || offset + 4 + count * 8L > chunk.limit()) {
+                throw new BufferUnderflowException();
+            }
+            synchronized (TableSaveFile.this) {
+                List<Long> entries = m_blockManifests.get(partitionId);
+                if (entries == null) {
+                    entries = new ArrayList<Long>(count);
+                    m_blockManifests.put(partitionId, entries);
+                }
+                for (int ii = 0; ii < count; ii++) {
+                    entries.add(chunk.getLong(offset + 4 + ii * 8));
+                }
+            }
+        }
+
+        private Container getOutputBuffer(final int nextChunkPartitionId, final long nextChunkBlockId) {
             BBContainer c = m_buffers.poll();
             if (c == null) {
                 final BBContainer originContainer = DBBPool.allocateDirect(DEFAULT_CHUNKSIZE);
                 final ByteBuffer b = originContainer.b();
-                final Container retcont = new Container(b, originContainer, nextChunkPartitionId);
+                final Container retcont = new Container(b, originContainer, nextChunkPartitionId, nextChunkBlockId);
                 return retcont;
             }
             /*
@@ -1056,14 +1412,16 @@ public class TableSaveFile
              * chunk so it can be a final public field. The buffer, address, and origin
              * container remain the same.
              */
-            final Container retcont = new Container(c.b(), c, nextChunkPartitionId);
+            final Container retcont = new Container(c.b(), c, nextChunkPartitionId, nextChunkBlockId);
             return retcont;
         }
 
         @Override
         public void run() {
             try {
-                if (m_hasVersion2FormatChunks) {
+                if (m_columnTypes != null) {
+                    readChunksV3();
+                } else if (m_hasVersion2FormatChunks) {
                     readChunksV2();
                 } else {
                     readChunks();
@@ -0,0 +1,189 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.voltcore.utils.DBBPool.BBContainer;
+
+/**
+ * Reads the chunks of a table out of a chain of incremental snapshot files, so that
+ * the result is the content of the table as of the newest snapshot.
+ *
+ * The newest file holds every block that was modified since the snapshot before it,
+ * and a manifest of the other live blocks. Those are found in older files of the
+ * chain, the first file that dumped a block holding its current content. Chunks of
+ * older files are only handed out for blocks not yet found, and the chain stops
+ * being read once all blocks are found.
+ */
+public class TableSaveFileChain {
+
+    private final List<TableSaveFile> m_files;
+    private final Set<Integer> m_relevantPartitionIds;
+    private int m_current = 0;
+
+    // Blocks of each partition still to be found in older files, null until the newest file is read
+    private Map<Integer, Set<Long>> m_remaining = null;
+    // Blocks of each partition that have chunks in the current file
+    private final Map<Integer, Set<Long>> m_dumped = new HashMap<Integer, Set<Long>>();
+
+    /**
+     * @param files files of the same table and host, newest first, each one the
+     * previous snapshot of the one before it. The last one need not be a base snapshot
+     * if all blocks are found before it.
+     * @param relevantPartitionIds partitions the files were opened for, null for all
+     */
+    public TableSaveFileChain(List<TableSaveFile> files, Integer[] relevantPartitionIds) {
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("Must specify at least one file");
+        }
+        m_files = new ArrayList<TableSaveFile>(files);
+        if (relevantPartitionIds == null) {
+            m_relevantPartitionIds = null;
+        } else {
+            m_relevantPartitionIds = new HashSet<Integer>();
+            for (Integer partitionId : relevantPartitionIds) {
+                m_relevantPartitionIds.add(partitionId);
+            }
+        }
+    }
+
+    /**
+     * @return the next chunk of the table, or null once every block has been handed out
+     * @throws IOException if a file can't be read or the chain ends before all blocks are found
+     */
+    public BBContainer getNextChunk() throws IOException {
+        while (m_current < m_files.size()) {
+            final TableSaveFile file = m_files.get(m_current);
+            if (!file.hasBlockIds()) {
+                if (m_current == 0) {
+                    // Not incremental, the file has the whole table
+                    return file.getNextChunk();
+                }
+                throw new IOException("Snapshot of table " + file.getTableName() +
+                        " in the incremental chain has no block ids");
+            }
+
+            final BBContainer c = file.getNextChunk();
+            if (c == null) {
+                finishFile(file);
+                if (isResolved()) {
+                    m_current = m_files.size();
+                    break;
+                }
+                m_current++;
+                continue;
+            }
+
+            final TableSaveFile.Container chunk = (TableSaveFile.Container) c;
+            Set<Long> dumped = m_dumped.get(chunk.partitionId);
+            if (dumped == null) {
+                dumped = new HashSet<Long>();
+                m_dumped.put(chunk.partitionId, dumped);
+            }
+            dumped.add(chunk.blockId);
+
+            if (m_remaining == null) {
+                return chunk;
+            }
+            final Set<Long> remaining = m_remaining.get(chunk.partitionId);
+            if (remaining != null && remaining.contains(chunk.blockId)) {
+                return chunk;
+            }
+            chunk.discard();
+        }
+
+        if (m_remaining != null && !isResolved()) {
+            throw new IOException("Incremental snapshot chain of table " +
+                    m_files.get(0).getTableName() + " ends before all blocks were found");
+        }
+        return null;
+    }
+
+    private void finishFile(TableSaveFile file) throws IOException {
+        if (m_remaining == null) {
+            // Blocks that were clean in the newest snapshot have complemented ids
+            m_remaining = new HashMap<Integer, Set<Long>>();
+            for (int partitionId : file.getPartitionIds()) {
+                if (m_relevantPartitionIds != null && !m_relevantPartitionIds.contains(partitionId)) {
+                    continue;
+                }
+                final long manifest[] = file.getBlockManifest(partitionId);
+                if (manifest == null) {
+                    throw new IOException("Snapshot of table " + file.getTableName() +
+                            " has no block manifest for partition " + partitionId);
+                }
+                final Set<Long> clean = new HashSet<Long>();
+                for (long entry : manifest) {
+                    if (entry < 0) {
+                        clean.add(~entry);
+                    }
+                }
+                m_remaining.put(partitionId, clean);
+            }
+        } else {
+            for (Map.Entry<Integer, Set<Long>> e : m_remaining.entrySet()) {
+                final Set<Long> dumped = m_dumped.get(e.getKey());
+                if (dumped != null) {
+                    e.getValue().removeAll(dumped);
+                }
+            }
+        }
+        m_dumped.clear();
+    }
+
+    private boolean isResolved() {
+        for (Set<Long> remaining : m_remaining.values()) {
+            if (!remaining.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return partitions that could not be read completely from some file of the chain
+     */
+    public Set<Integer> getCorruptedPartitionIds() {
+        final Set<Integer> corrupted = new HashSet<Integer>();
+        for (TableSaveFile file : m_files) {
+            corrupted.addAll(file.getCorruptedPartitionIds());
+        }
+        return corrupted;
+    }
+
+    public void close() throws IOException {
+        IOException failure = null;
+        for (TableSaveFile file : m_files) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
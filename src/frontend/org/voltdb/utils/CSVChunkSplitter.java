@@ -0,0 +1,216 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Cuts a CSV stream into chunks of whole rows that can be tokenized
+ * independently of each other.
+ *
+ * The stream is scanned once, tracking just enough of the tokenizer's state
+ * (quoted sections, the escape character and line terminators) to know where
+ * a row ends. A quoted value may span several physical lines, so a chunk is
+ * only ever cut after a line terminator that is outside of quotes. Each chunk
+ * carries the number of physical lines that precede it in the stream, so the
+ * line numbers reported while parsing the chunk can be made absolute.
+ *
+ * An unbalanced quote would otherwise hold the rest of the stream in memory,
+ * so once the text since the last cut grows past the maximum row size the
+ * quoted section is considered closed at the last line terminator, which is
+ * roughly where the tokenizer gives up on an oversized column as well.
+ */
+class CSVChunkSplitter {
+
+    static final class Chunk {
+        /** The text of the chunk, including the line terminators */
+        final String text;
+        /** The number of physical lines in the stream before this chunk */
+        final long firstLine;
+
+        Chunk(String text, long firstLine) {
+            this.text = text;
+            this.firstLine = firstLine;
+        }
+    }
+
+    private final Reader m_in;
+    private final char m_quoteChar;
+    private final char m_escapeChar;
+    private final int m_chunkSize;
+    private final int m_maxRowSize;
+    private final long m_skipLines;
+
+    private char[] m_buf;
+    // valid characters in the buffer, and how far they have been scanned
+    private int m_len = 0;
+    private int m_scan = 0;
+    // the pending chunk starts at m_start, and can be cut at m_cut
+    private int m_start = 0;
+    private int m_cut = 0;
+    // line terminators scanned so far, before m_start and before m_cut
+    private long m_lines = 0;
+    private long m_linesAtStart = 0;
+    private long m_linesAtCut = 0;
+    // the end of the last line, in or out of quotes
+    private int m_lineEnd = 0;
+    private long m_linesAtLineEnd = 0;
+
+    private boolean m_inQuote = false;
+    private boolean m_escaped = false;
+    private boolean m_sawCR = false;
+    private boolean m_eof = false;
+    private boolean m_forceCut = false;
+
+    /**
+     * @param in         the CSV stream
+     * @param quoteChar  the quote character of the tokenizer
+     * @param escapeChar the escape character of the tokenizer
+     * @param chunkSize  the number of characters after which a chunk is cut
+     * @param maxRowSize the number of characters a single row may span
+     * @param skipLines  the number of physical lines to drop from the start of the stream
+     */
+    CSVChunkSplitter(Reader in, char quoteChar, char escapeChar, int chunkSize, int maxRowSize,
+            long skipLines) {
+        m_in = in;
+        m_quoteChar = quoteChar;
+        m_escapeChar = escapeChar;
+        m_chunkSize = chunkSize;
+        m_maxRowSize = maxRowSize;
+        m_skipLines = skipLines;
+        m_buf = new char[chunkSize + chunkSize / 4 + 1];
+    }
+
+    /**
+     * @return the next chunk of whole rows, or null at the end of the stream
+     */
+    Chunk next() throws IOException {
+        while (!m_eof && !m_forceCut && m_cut - m_start < m_chunkSize) {
+            if (m_scan == m_len && !fill()) {
+                m_eof = true;
+                break;
+            }
+            scan();
+        }
+
+        if (m_eof) {
+            if (m_start >= m_len || m_lines < m_skipLines) {
+                return null;
+            }
+            Chunk last = new Chunk(new String(m_buf, m_start, m_len - m_start), m_linesAtStart);
+            m_start = m_len;
+            return last;
+        }
+
+        Chunk chunk = new Chunk(new String(m_buf, m_start, m_cut - m_start), m_linesAtStart);
+        m_start = m_cut;
+        m_linesAtStart = m_linesAtCut;
+        m_forceCut = false;
+        return chunk;
+    }
+
+    private boolean fill() throws IOException {
+        if (m_len == m_buf.length) {
+            if (m_start > 0) {
+                // drop the text already handed out
+                System.arraycopy(m_buf, m_start, m_buf, 0, m_len - m_start);
+                m_len -= m_start;
+                m_scan -= m_start;
+                m_cut -= m_start;
+                m_lineEnd -= m_start;
+                m_start = 0;
+            }
+            else {
+                if (m_len - m_cut > m_maxRowSize && m_lineEnd > m_cut) {
+                    m_cut = m_lineEnd;
+                    m_linesAtCut = m_linesAtLineEnd;
+                    m_inQuote = false;
+                    m_forceCut = true;
+                    return true;
+                }
+                // a single row larger than the buffer
+                char[] buf = new char[m_buf.length * 2];
+                System.arraycopy(m_buf, 0, buf, 0, m_len);
+                m_buf = buf;
+            }
+        }
+        int read = m_in.read(m_buf, m_len, m_buf.length - m_len);
+        if (read < 0) {
+            return false;
+        }
+        m_len += read;
+        return true;
+    }
+
+    private void scan() {
+        for (; m_scan < m_len; m_scan++) {
+            final char c = m_buf[m_scan];
+            if (m_sawCR) {
+                m_sawCR = false;
+                if (c == '\n') {
+                    endOfLine(m_scan + 1);
+                    continue;
+                }
+                // a lone \r ends a line as well
+                endOfLine(m_scan);
+            }
+            if (c == '\r') {
+                m_sawCR = true;
+                m_escaped = false;
+            }
+            else if (c == '\n') {
+                m_escaped = false;
+                endOfLine(m_scan + 1);
+            }
+            else if (m_lines < m_skipLines) {
+                // skipped lines are not tokenized
+            }
+            else if (m_inQuote) {
+                // a doubled quote leaves and re-enters the quoted section,
+                // which ends up in the same state as the tokenizer
+                if (c == m_quoteChar) {
+                    m_inQuote = false;
+                }
+            }
+            else if (m_escaped) {
+                m_escaped = false;
+            }
+            else if (c == m_escapeChar) {
+                m_escaped = true;
+            }
+            else if (c == m_quoteChar) {
+                m_inQuote = true;
+            }
+        }
+    }
+
+    private void endOfLine(int end) {
+        m_lines++;
+        m_lineEnd = end;
+        m_linesAtLineEnd = m_lines;
+        if (m_lines <= m_skipLines) {
+            m_start = m_cut = end;
+            m_linesAtStart = m_linesAtCut = m_lines;
+        }
+        else if (!m_inQuote) {
+            m_cut = end;
+            m_linesAtCut = m_lines;
+        }
+    }
+}
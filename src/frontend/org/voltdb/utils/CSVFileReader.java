@@ -16,16 +16,25 @@
  */
 package org.voltdb.utils;
 
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.supercsv.exception.SuperCsvException;
+import org.supercsv.io.CsvListReader;
 import org.supercsv.io.ICsvListReader;
+import org.supercsv.prefs.CsvPreference;
+import org.supercsv_voltpatches.tokenizer.Tokenizer;
 import org.voltcore.logging.VoltLogger;
 import org.voltdb.VoltType;
 import org.voltdb.client.Client;
@@ -39,6 +48,13 @@ import com.google_voltpatches.common.collect.HashBiMap;
  * This is a single thread reader which feeds the lines after validating syntax
  * to CSVDataLoader.
  *
+ * With --parsers greater than 1 and an input file, the reader thread only cuts
+ * the file into chunks of whole rows (see {@link CSVChunkSplitter}). The chunks
+ * are tokenized, validated and handed to the CSVDataLoader by a set of parser
+ * threads, so the per row work, including the type conversion done by the
+ * bulk loader on the inserting thread, runs on several cores. Rows are then
+ * inserted in no particular order.
+ *
  */
 class CSVFileReader implements Runnable {
     private static final String COLUMN_COUNT_ERROR =
@@ -54,6 +70,9 @@ class CSVFileReader implements Runnable {
             "Whitespace detected in column %d while --nowhitespace is used. " +
             "To proceed, either remove the whitespaces from the column or remove --nowhitespace.";
 
+    // number of characters in a chunk handed to a parser thread, tests make it small
+    static int m_chunkSize = Integer.getInteger("CSVLOADER_CHUNK_SIZE", 4 * 1024 * 1024);
+
     static AtomicLong m_totalRowCount = new AtomicLong(0);
     static AtomicLong m_totalLineCount = new AtomicLong(0);
     static CSVLoader.CSVConfig m_config = null;
@@ -68,6 +87,9 @@ class CSVFileReader implements Runnable {
     private final int m_columnCount;
     private int headerlen;
     private Integer[] order;
+    // set by the parser threads to stop reading the file
+    private volatile boolean m_stopped = false;
+    private volatile boolean m_splitDone = false;
 
     static {
         m_blankStrings.put(VoltType.TINYINT, "0");
@@ -96,8 +118,6 @@ class CSVFileReader implements Runnable {
 
     @Override
     public void run() {
-        List<String> lineList;
-
         //if header option is true, check whether csv first line is valid
         if (m_config.header) {
             if (!checkHeader()) {
@@ -107,6 +127,34 @@ class CSVFileReader implements Runnable {
             }
         }
 
+        if (m_config.parsers > 1) {
+            if (m_config.file.isEmpty() || m_config.limitrows != Integer.MAX_VALUE) {
+                m_log.info("Reading the input with a single parser, --parsers only applies to "
+                        + "input files without --limitrows.");
+                readRows();
+            }
+            else {
+                readRowsInParallel();
+            }
+        }
+        else {
+            readRows();
+        }
+
+        //Now wait for processors to see endOfData and count down. After that drain to finish all callbacks
+        try {
+            m_log.debug("Waiting for CSVDataLoader to finish.");
+            m_loader.close();
+            m_log.debug("CSVDataLoader Done.");
+        } catch (Exception ex) {
+            m_log.warn("Stopped processing because of connection error. "
+                    + "A report will be generated with what we processed so far. Error: " + ex);
+        }
+    }
+
+    private void readRows() {
+        List<String> lineList;
+
         while ((m_config.limitrows-- > 0)) {
             if (m_errHandler.hasReachedErrorLimit()) {
                 break;
@@ -169,15 +217,175 @@ class CSVFileReader implements Runnable {
                 break;
             }
         }
+    }
 
-        //Now wait for processors to see endOfData and count down. After that drain to finish all callbacks
+    private void readRowsInParallel() {
+        // The chunks start after the lines the tokenizer would have skipped:
+        // the header row, and --skip lines counting the header as one of them.
+        long firstLine = m_config.skip;
+        if (m_config.header) {
+            firstLine = Math.max(m_listReader.getLineNumber(), m_config.skip + 1);
+        }
+        m_totalLineCount.set(firstLine);
+
+        final BlockingQueue<CSVChunkSplitter.Chunk> chunks =
+                new ArrayBlockingQueue<CSVChunkSplitter.Chunk>(m_config.parsers * 2);
+        final ChunkParser[] parsers = new ChunkParser[m_config.parsers];
+        final Thread[] threads = new Thread[m_config.parsers];
+        for (int i = 0; i < parsers.length; i++) {
+            parsers[i] = new ChunkParser(chunks);
+            threads[i] = new Thread(parsers[i]);
+            threads[i].setName("CSVFileReader - " + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        // a row may be bigger than a chunk, give up on a quoted section long after any column limit
+        final int maxRowSize = (int) Math.min(Integer.MAX_VALUE / 4,
+                Math.max(m_chunkSize, 2 * m_config.columnsizelimit));
+        Reader in = null;
         try {
-            m_log.debug("Waiting for CSVDataLoader to finish.");
-            m_loader.close();
-            m_log.debug("CSVDataLoader Done.");
-        } catch (Exception ex) {
-            m_log.warn("Stopped processing because of connection error. "
-                    + "A report will be generated with what we processed so far. Error: " + ex);
+            in = new FileReader(m_config.file);
+            CSVChunkSplitter splitter = new CSVChunkSplitter(in, m_config.quotechar, m_config.escape,
+                    m_chunkSize, maxRowSize, firstLine);
+            CSVChunkSplitter.Chunk chunk;
+            while (!m_stopped && (chunk = splitter.next()) != null) {
+                while (!m_stopped && !chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                }
+            }
+        } catch (IOException ex) {
+            m_log.error("Failed to read CSV line from file: " + ex);
+            m_stopped = true;
+        } catch (InterruptedException e) {
+            m_log.error("CSVLoader interrupted: " + e);
+            m_stopped = true;
+        } finally {
+            m_splitDone = true;
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignore) {}
+            }
+        }
+
+        for (int i = 0; i < threads.length; i++) {
+            try {
+                threads[i].join();
+            } catch (InterruptedException e) {
+                m_log.error("CSVLoader interrupted: " + e);
+            }
+            // the parsers ran side by side, the slowest one is what the load waited for
+            m_parsingTime = Math.max(m_parsingTime, parsers[i].m_parsingTime);
+        }
+    }
+
+    private static void updateTotalLineCount(long lineNumber) {
+        long current;
+        while ((current = m_totalLineCount.get()) < lineNumber) {
+            if (m_totalLineCount.compareAndSet(current, lineNumber)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Tokenizes the chunks cut by the reader thread and feeds their rows to
+     * the CSVDataLoader. Line numbers are local to a chunk's tokenizer, the
+     * chunk's first line turns them into line numbers in the file.
+     */
+    private class ChunkParser implements Runnable {
+        private final BlockingQueue<CSVChunkSplitter.Chunk> m_chunks;
+        private final CsvPreference m_csvPreference =
+                new CsvPreference.Builder(m_config.quotechar, m_config.separator, "\n").build();
+        long m_parsingTime = 0;
+
+        ChunkParser(BlockingQueue<CSVChunkSplitter.Chunk> chunks) {
+            m_chunks = chunks;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!m_stopped) {
+                    CSVChunkSplitter.Chunk chunk = m_chunks.poll(100, TimeUnit.MILLISECONDS);
+                    if (chunk != null) {
+                        parse(chunk);
+                    }
+                    else if (m_splitDone && m_chunks.isEmpty()) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                m_log.error("CSVLoader interrupted: " + e);
+                m_stopped = true;
+            } catch (RuntimeException e) {
+                // don't leave the reader thread waiting on parsers that are gone
+                m_log.error("CSVLoader parser failed: " + e);
+                m_stopped = true;
+                throw e;
+            }
+        }
+
+        private void parse(CSVChunkSplitter.Chunk chunk) throws InterruptedException {
+            final ICsvListReader listReader = new CsvListReader(
+                    new Tokenizer(new StringReader(chunk.text), m_csvPreference,
+                            m_config.strictquotes, m_config.escape, m_config.columnsizelimit, 0),
+                    m_csvPreference);
+            while (!m_stopped) {
+                if (m_errHandler.hasReachedErrorLimit()) {
+                    m_stopped = true;
+                    break;
+                }
+
+                final long lineNumber = chunk.firstLine + listReader.getLineNumber();
+                try {
+                    long st = System.nanoTime();
+                    List<String> lineList = listReader.read();
+                    long end = System.nanoTime();
+                    m_parsingTime += (end - st);
+                    updateTotalLineCount(chunk.firstLine + listReader.getLineNumber());
+                    if (lineList == null) {
+                        break;
+                    }
+                    m_totalRowCount.incrementAndGet();
+
+                    if (lineList.isEmpty()) {
+                        continue;
+                    }
+
+                    String[] lineValues = lineList.toArray(new String[0]);
+                    String lineCheckResult;
+                    String[] reorderValues = new String[m_columnCount];
+                    if ((lineCheckResult = checkparams_trimspace_reorder(lineValues, reorderValues)) != null) {
+                        final RowWithMetaData metaData
+                                = new RowWithMetaData(listReader.getUntokenizedRow(), lineNumber + 1);
+                        if (m_errHandler.handleError(metaData, null, lineCheckResult)) {
+                            m_stopped = true;
+                            break;
+                        }
+                        continue;
+                    }
+
+                    RowWithMetaData lineData
+                            = new RowWithMetaData(listReader.getUntokenizedRow(),
+                                    chunk.firstLine + listReader.getLineNumber());
+                    m_loader.insertRow(lineData, reorderValues);
+                } catch (SuperCsvException e) {
+                    //Catch rows that can not be read by superCSV listReader.
+                    // e.g. items without quotes when strictquotes is enabled.
+                    updateTotalLineCount(chunk.firstLine + listReader.getLineNumber());
+                    final RowWithMetaData metaData
+                            = new RowWithMetaData(listReader.getUntokenizedRow(), lineNumber + 1);
+                    if (m_errHandler.handleError(metaData, null, e.getMessage())) {
+                        m_stopped = true;
+                        break;
+                    }
+                } catch (IOException ex) {
+                    m_log.error("Failed to read CSV line from file: " + ex);
+                    m_stopped = true;
+                    break;
+                }
+            }
         }
     }
 
@@ -308,6 +308,9 @@ public class CSVLoader implements BulkLoaderErrorHandler {
         @Option(desc = "First line of csv file is column name.", hasArg = false)
         boolean header = DEFAULT_HEADER;
 
+        @Option(desc = "number of threads parsing the input file in parallel (default: 1)")
+        int parsers = 1;
+
         /**
          * Table name to insert CSV data into.
          */
@@ -344,6 +347,9 @@ public class CSVLoader implements BulkLoaderErrorHandler {
             if (batch < 0) {
                 exitWithMessageAndUsage("batch size number must be >= 0");
             }
+            if (parsers < 1) {
+                exitWithMessageAndUsage("number of parsers must be >= 1");
+            }
             if(!customNullString.isEmpty() && !blank.equals("error")){
                 blank = "empty";
             }
@@ -134,21 +134,29 @@ public final class CompressionService {
 
             @Override
             public BBContainer call() throws Exception {
-                final ByteBuffer outBuffer = outBufferC.b();
-                //Reserve 4-bytes for the CRC
-                final int crcPosition = outBuffer.position();
-                outBuffer.position(outBuffer.position() + 4);
-                final int crcCalcStart = outBuffer.position();
-                compressBuffer(inBuffer, outBuffer);
-                final int crc32c =
-                        DBBPool.getCRC32C( outBufferC.address(), crcCalcStart, outBuffer.limit() - crcCalcStart);
-                outBuffer.putInt(crcPosition, crc32c);
-                return outBufferC;
+                return compressAndCRC32cBuffer(inBuffer, outBufferC);
             }
 
         });
     }
 
+    /**
+     * Compress the input into the output buffer starting at its position, preceded by
+     * a 4-byte CRC32C of the compressed bytes.
+     */
+    public static BBContainer compressAndCRC32cBuffer(final ByteBuffer inBuffer, final BBContainer outBufferC) throws IOException {
+        final ByteBuffer outBuffer = outBufferC.b();
+        //Reserve 4-bytes for the CRC
+        final int crcPosition = outBuffer.position();
+        outBuffer.position(outBuffer.position() + 4);
+        final int crcCalcStart = outBuffer.position();
+        compressBuffer(inBuffer, outBuffer);
+        final int crc32c =
+                DBBPool.getCRC32C( outBufferC.address(), crcCalcStart, outBuffer.limit() - crcCalcStart);
+        outBuffer.putInt(crcPosition, crc32c);
+        return outBufferC;
+    }
+
     public static int compressBuffer(ByteBuffer buffer, ByteBuffer output) throws IOException {
         assert(buffer.isDirect());
         assert(output.isDirect());
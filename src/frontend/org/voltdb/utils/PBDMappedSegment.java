@@ -0,0 +1,604 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.DeferredSerialization;
+import org.voltdb.utils.BinaryDeque.OutputContainerFactory;
+
+import com.google_voltpatches.common.base.Preconditions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A segment with the same on disk format as {@link PBDRegularSegment} that
+ * is accessed through a memory mapping instead of file channel reads and writes.
+ *
+ * A segment opened for appending is mapped at its full size of
+ * {@link PBDSegment#CHUNK_SIZE} bytes and objects are serialized or compressed
+ * straight into the mapping. The file is trimmed to the bytes actually written
+ * when the segment is closed. Segments opened only for reading are mapped read only.
+ * A segment left at its full size by a crash is cut back to the objects its header
+ * counts when it is recovered or reopened.
+ *
+ * Uncompressed objects are polled as read only slices of the mapping, without
+ * allocating or copying. The mapping is released once the segment has been
+ * closed and every slice handed out has been discarded.
+ */
+public class PBDMappedSegment extends PBDSegment {
+    private static final VoltLogger LOG = new VoltLogger("HOST");
+
+    /**
+     * A mapping of the segment file that stays valid while the segment has it
+     * open or any polled slice of it has not been discarded.
+     */
+    private static class Mapping {
+        private final DBBPool.MBBContainer m_cont;
+        private int m_refCount = 1;
+
+        Mapping(MappedByteBuffer buf) {
+            m_cont = DBBPool.wrapMBB(buf);
+        }
+
+        ByteBuffer b() {
+            return m_cont.b();
+        }
+
+        synchronized void retain() {
+            assert(m_refCount > 0);
+            m_refCount++;
+        }
+
+        synchronized void release() {
+            //An empty file is mapped without an unmapper, there is nothing to free
+            if (--m_refCount == 0 && m_cont.b().capacity() > 0) {
+                m_cont.discard();
+            }
+        }
+    }
+
+    private final Map<String, SegmentReader> m_readCursors = new HashMap<>();
+    private final Map<String, SegmentReader> m_closedCursors = new HashMap<>();
+
+    //ID of this segment
+    private final Long m_index;
+
+    private int m_numOfEntries = -1;
+    private int m_size = -1;
+
+    private Mapping m_mapping = null;
+    private ByteBuffer m_buf = null;
+    //Offset the next object is appended at
+    private int m_writeOffset = SEGMENT_HEADER_BYTES;
+    //True if the file was grown to CHUNK_SIZE and has to be trimmed on close
+    private boolean m_trimOnClose = false;
+    //True once the file has been checked for an untrimmed tail
+    private boolean m_tailChecked = false;
+
+    public PBDMappedSegment(Long index, File file) {
+        super(file);
+        m_index = index;
+        reset();
+    }
+
+    @Override
+    public long segmentId()
+    {
+        return m_index;
+    }
+
+    @Override
+    public File file()
+    {
+        return m_file;
+    }
+
+    @Override
+    public void reset()
+    {
+        m_syncedSinceLastEdit = false;
+    }
+
+    @Override
+    public int getNumEntries() throws IOException
+    {
+        if (m_closed) {
+            //Read the header without mapping the file, this is done for every
+            //segment when the deque is recovered
+            trimUnwrittenTail();
+            RandomAccessFile ras = new RandomAccessFile(m_file, "r");
+            try {
+                if (ras.length() >= SEGMENT_HEADER_BYTES) {
+                    ras.seek(COUNT_OFFSET);
+                    m_numOfEntries = ras.readInt();
+                    m_size = ras.readInt();
+                } else {
+                    m_numOfEntries = 0;
+                    m_size = 0;
+                }
+            } finally {
+                ras.close();
+            }
+        } else {
+            readHeader();
+        }
+        return m_numOfEntries;
+    }
+
+    /**
+     * A segment that was still open for appending when the process died was never
+     * trimmed, so it is CHUNK_SIZE bytes with a sparse tail of zeroes after the
+     * objects. Walk the objects the header counts and cut the file where they end,
+     * so the tail is neither kept on disk nor taken for room that was already used.
+     */
+    private void trimUnwrittenTail() throws IOException {
+        if (m_tailChecked || !m_file.exists() || m_file.length() != CHUNK_SIZE) {
+            m_tailChecked = true;
+            return;
+        }
+        RandomAccessFile ras = new RandomAccessFile(m_file, "rw");
+        try {
+            final long fileLength = ras.length();
+            ras.seek(COUNT_OFFSET);
+            final int count = ras.readInt();
+            long end = SEGMENT_HEADER_BYTES;
+            for (int i = 0; i < count; i++) {
+                if (end + OBJECT_HEADER_BYTES > fileLength) {
+                    throw new IOException("Segment " + m_file + " ends in the header of object " + i + " of " + count);
+                }
+                ras.seek(end);
+                final int length = ras.readInt();
+                if (length < 1 || end + OBJECT_HEADER_BYTES + length > fileLength) {
+                    throw new IOException("Segment " + m_file + " has an invalid length " + length +
+                                          " for object " + i + " of " + count);
+                }
+                end += OBJECT_HEADER_BYTES + length;
+            }
+            if (end < fileLength) {
+                LOG.info("Trimming segment " + m_file + " that was not closed from " + fileLength + " to " + end + " bytes");
+                ras.setLength(end);
+            }
+        } finally {
+            ras.close();
+        }
+        m_tailChecked = true;
+    }
+
+    private void readHeader() {
+        if (m_buf.capacity() >= SEGMENT_HEADER_BYTES) {
+            m_numOfEntries = m_buf.getInt(COUNT_OFFSET);
+            m_size = m_buf.getInt(SIZE_OFFSET);
+        } else {
+            m_numOfEntries = 0;
+            m_size = 0;
+        }
+    }
+
+    @Override
+    public boolean isBeingPolled()
+    {
+        return !m_readCursors.isEmpty();
+    }
+
+    @Override
+    public boolean isOpenForReading(String cursorId) {
+        return m_readCursors.containsKey(cursorId);
+    }
+
+    @Override
+    public PBDSegmentReader openForRead(String cursorId) throws IOException
+    {
+        Preconditions.checkNotNull(cursorId, "Reader id must be non-null");
+        if (m_readCursors.containsKey(cursorId) || m_closedCursors.containsKey(cursorId)) {
+            throw new IOException("Segment is already open for reading for cursor " + cursorId);
+        }
+
+        if (m_closed) {
+            open(false, false);
+        }
+        SegmentReader reader = new SegmentReader(cursorId);
+        m_readCursors.put(cursorId, reader);
+        return reader;
+    }
+
+    @Override
+    public PBDSegmentReader getReader(String cursorId) {
+        PBDSegmentReader reader = m_closedCursors.get(cursorId);
+        return (reader == null) ? m_readCursors.get(cursorId) : reader;
+    }
+
+    @Override
+    protected void openForWrite(boolean emptyFile) throws IOException {
+        open(true, emptyFile);
+    }
+
+    private void open(boolean forWrite, boolean emptyFile) throws IOException {
+        if (!m_closed) {
+            throw new IOException("Segment is already opened");
+        }
+
+        if (!m_file.exists()) {
+            if (!forWrite) {
+                throw new IOException("File " + m_file + " does not exist");
+            }
+            m_syncedSinceLastEdit = false;
+        } else if (!emptyFile) {
+            trimUnwrittenTail();
+        }
+        assert(m_ras == null);
+        m_ras = new RandomAccessFile(m_file, forWrite ? "rw" : "r");
+        m_fc = m_ras.getChannel();
+        try {
+            final long mapSize;
+            if (forWrite && emptyFile) {
+                //Map the whole chunk so objects can be appended in place,
+                //the file is sparse until they are
+                mapSize = CHUNK_SIZE;
+                m_trimOnClose = true;
+            } else {
+                //Existing contents are only read, or truncated in place
+                mapSize = m_fc.size();
+                m_trimOnClose = false;
+            }
+            m_mapping = new Mapping(m_fc.map(forWrite ? MapMode.READ_WRITE : MapMode.READ_ONLY, 0, mapSize));
+        } catch (IOException e) {
+            m_ras.close();
+            m_ras = null;
+            m_fc = null;
+            throw e;
+        }
+        m_buf = m_mapping.b();
+
+        if (emptyFile) {
+            initNumEntries(0, 0);
+            m_writeOffset = SEGMENT_HEADER_BYTES;
+        } else {
+            readHeader();
+            m_writeOffset = m_buf.capacity();
+        }
+        m_fc.position(SEGMENT_HEADER_BYTES);
+
+        m_closed = false;
+    }
+
+    @Override
+    protected void initNumEntries(int count, int size) throws IOException {
+        m_numOfEntries = count;
+        m_size = size;
+
+        m_buf.putInt(COUNT_OFFSET, m_numOfEntries);
+        m_buf.putInt(SIZE_OFFSET, m_size);
+        m_syncedSinceLastEdit = false;
+    }
+
+    private void incrementNumEntries(int size) throws IOException
+    {
+        m_numOfEntries++;
+        m_size += size;
+
+        m_buf.putInt(COUNT_OFFSET, m_numOfEntries);
+        m_buf.putInt(SIZE_OFFSET, m_size);
+        m_syncedSinceLastEdit = false;
+    }
+
+    /**
+     * Bytes of space available for inserting more entries
+     */
+    private int remaining() {
+        return m_buf.capacity() - m_writeOffset;
+    }
+
+    @Override
+    public void closeAndDelete() throws IOException {
+        close();
+        m_file.delete();
+
+        m_numOfEntries = -1;
+        m_size = -1;
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return m_closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        m_closedCursors.clear();
+        closeReadersAndFile();
+    }
+
+    private void closeReadersAndFile() throws IOException {
+        m_readCursors.clear();
+        try {
+            if (m_ras != null) {
+                //Give back the part of the chunk that was never written.
+                //Slices that are still out only cover written objects.
+                if (m_trimOnClose && m_fc.size() > m_writeOffset) {
+                    m_fc.truncate(m_writeOffset);
+                }
+                m_ras.close();
+            }
+        } finally {
+            if (m_mapping != null) {
+                m_mapping.release();
+            }
+            m_mapping = null;
+            m_buf = null;
+            m_ras = null;
+            m_fc = null;
+            m_trimOnClose = false;
+            m_closed = true;
+            reset();
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        if (m_closed) throw new IOException("Segment closed");
+        if (!m_syncedSinceLastEdit) {
+            ((MappedByteBuffer) m_buf).force();
+        }
+        m_syncedSinceLastEdit = true;
+    }
+
+    @Override
+    public boolean hasAllFinishedReading() throws IOException {
+        if (m_closed) throw new IOException("Segment closed");
+
+        if (m_readCursors.size() == 0) return false;
+
+        for (SegmentReader reader : m_readCursors.values()) {
+            if (reader.m_objectReadIndex < m_numOfEntries) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return a buffer over the mapping from the given offset to the end of the mapping
+     */
+    private ByteBuffer mappedFrom(int offset) {
+        ByteBuffer dup = m_buf.duplicate();
+        dup.position(offset);
+        return dup.slice();
+    }
+
+    @Override
+    public boolean offer(DBBPool.BBContainer cont, boolean compress) throws IOException
+    {
+        if (m_closed) throw new IOException("Segment closed");
+        final ByteBuffer buf = cont.b();
+        final int remaining = buf.remaining();
+        if (remaining < 32 || !buf.isDirect()) compress = false;
+        final int maxCompressedSize = (compress ? CompressionService.maxCompressedLength(remaining) : remaining) + OBJECT_HEADER_BYTES;
+        if (remaining() < maxCompressedSize) return false;
+
+        m_syncedSinceLastEdit = false;
+
+        try {
+            final ByteBuffer dest = mappedFrom(m_writeOffset);
+            final int length;
+            final int flags;
+            if (compress) {
+                dest.position(OBJECT_HEADER_BYTES);
+                length = CompressionService.compressBuffer(buf, dest.slice());
+                flags = FLAG_COMPRESSED;
+            } else {
+                dest.position(OBJECT_HEADER_BYTES);
+                dest.put(buf);
+                length = remaining;
+                flags = NO_FLAGS;
+            }
+            dest.putInt(0, length);
+            dest.putInt(4, flags);
+            m_writeOffset += OBJECT_HEADER_BYTES + length;
+
+            incrementNumEntries(remaining);
+        } finally {
+            cont.discard();
+        }
+
+        return true;
+    }
+
+    @Override
+    public int offer(DeferredSerialization ds) throws IOException
+    {
+        if (m_closed) throw new IOException("closed");
+        final int fullSize = ds.getSerializedSize() + OBJECT_HEADER_BYTES;
+        if (remaining() < fullSize) return -1;
+
+        m_syncedSinceLastEdit = false;
+        final ByteBuffer dest = mappedFrom(m_writeOffset);
+        dest.limit(fullSize);
+        final int written = PBDUtils.writeDeferredSerialization(dest, ds);
+        m_writeOffset += OBJECT_HEADER_BYTES + written;
+
+        incrementNumEntries(written);
+        return written;
+    }
+
+    @Override
+    public int size() {
+        return m_size;
+    }
+
+    @Override
+    protected int writeTruncatedEntry(BinaryDeque.TruncatorResponse entry, int length) throws IOException
+    {
+        //Only used by parseAndTruncate, which positions the channel and trims the file afterwards
+        int written = 0;
+        final DBBPool.BBContainer partialCont = DBBPool.allocateDirect(length);
+        try {
+            written += entry.writeTruncatedObject(partialCont.b());
+            partialCont.b().flip();
+
+            while (partialCont.b().hasRemaining()) {
+                m_fc.write(partialCont.b());
+            }
+        } finally {
+            partialCont.discard();
+        }
+        return written;
+    }
+
+    private class SegmentReader implements PBDSegmentReader {
+        private final String m_cursorId;
+        private long m_readOffset = SEGMENT_HEADER_BYTES;
+        //Index of the next object to read, not an offset into the file
+        private int m_objectReadIndex = 0;
+        private int m_bytesRead = 0;
+        private int m_discardCount = 0;
+        private boolean m_closed = false;
+
+        public SegmentReader(String cursorId) {
+            assert(cursorId != null);
+            m_cursorId = cursorId;
+        }
+
+        @Override
+        public boolean hasMoreEntries() throws IOException {
+            return m_objectReadIndex < m_numOfEntries;
+        }
+
+        @Override
+        public boolean allReadAndDiscarded() throws IOException {
+            return m_discardCount == m_numOfEntries;
+        }
+
+        @Override
+        public BBContainer poll(OutputContainerFactory factory) throws IOException {
+            if (m_closed) throw new IOException("Reader closed");
+
+            if (!hasMoreEntries()) {
+                return null;
+            }
+
+            final int offset = (int) m_readOffset;
+            if (offset + OBJECT_HEADER_BYTES > m_buf.capacity()) {
+                throw new IOException("Read past the end of segment " + m_file);
+            }
+            final int length = m_buf.getInt(offset);
+            final int flags = m_buf.getInt(offset + 4);
+            final boolean compressed = (flags & FLAG_COMPRESSED) != 0;
+            final int uncompressedLen;
+
+            if (length < 1) {
+                throw new IOException("Read an invalid length");
+            }
+            if (offset + OBJECT_HEADER_BYTES + length > m_buf.capacity()) {
+                throw new IOException("Read past the end of segment " + m_file);
+            }
+
+            final ByteBuffer object = mappedFrom(offset + OBJECT_HEADER_BYTES);
+            object.limit(length);
+
+            final DBBPool.BBContainer retcont;
+            if (compressed) {
+                uncompressedLen = CompressionService.uncompressedLength(object.asReadOnlyBuffer());
+                retcont = factory.getContainer(uncompressedLen);
+                retcont.b().limit(uncompressedLen);
+                CompressionService.decompressBuffer(object, retcont.b());
+            } else {
+                //Hand out the mapped bytes, the mapping is kept alive until this is discarded.
+                //The slice is read only, a consumer must not write through to the file.
+                uncompressedLen = length;
+                final Mapping mapping = m_mapping;
+                mapping.retain();
+                retcont = new DBBPool.BBContainer(object.asReadOnlyBuffer()) {
+                    @Override
+                    public void discard() {
+                        checkDoubleFree();
+                        mapping.release();
+                    }
+                };
+            }
+
+            m_readOffset = offset + OBJECT_HEADER_BYTES + length;
+            m_bytesRead += uncompressedLen;
+            m_objectReadIndex++;
+
+            return new DBBPool.BBContainer(retcont.b()) {
+                private boolean m_discarded = false;
+
+                @Override
+                public void discard() {
+                    checkDoubleFree();
+                    if (m_discarded) {
+                        LOG.error("PBD Container discarded more than once");
+                        return;
+                    }
+
+                    m_discarded = true;
+                    retcont.discard();
+                    m_discardCount++;
+                }
+            };
+        }
+
+        @Override
+        public int uncompressedBytesToRead() {
+            if (m_closed) throw new RuntimeException("Reader closed");
+
+            return m_size - m_bytesRead;
+        }
+
+        @Override
+        public long readOffset() {
+            return m_readOffset;
+        }
+
+        @Override
+        public int readIndex() {
+            return m_objectReadIndex;
+        }
+
+        @Override
+        public void rewindReadOffset(int byBytes) {
+            m_readOffset -= byBytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            m_closed = true;
+            m_readCursors.remove(m_cursorId);
+            m_closedCursors.put(m_cursorId, this);
+            if (m_readCursors.isEmpty()) {
+                closeReadersAndFile();
+            }
+        }
+
+        @Override
+        public boolean isClosed() {
+            return m_closed;
+        }
+    }
+}
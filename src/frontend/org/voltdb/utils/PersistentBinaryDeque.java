@@ -237,6 +237,12 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
     public static final OutputContainerFactory UNSAFE_CONTAINER_FACTORY = new UnsafeOutputContainerFactory();
 
+    /**
+     * Access segments through memory mappings ({@link PBDMappedSegment}) instead of
+     * file channel reads and writes. Both use the same file format.
+     */
+    static boolean s_useMappedSegments = Boolean.getBoolean("PBD_MAPPED_SEGMENTS");
+
     /**
      * Processors also log using this facility.
      */
@@ -483,6 +489,9 @@ public class PersistentBinaryDeque implements BinaryDeque {
     }
 
     private PBDSegment newSegment(long segmentId, File file) {
+        if (s_useMappedSegments) {
+            return new PBDMappedSegment(segmentId, file);
+        }
         return new PBDRegularSegment(segmentId, file);
     }
 
@@ -45,6 +45,8 @@
 #include "storage/TableStreamerContext.h"
 #include "storage/tableutil.h"
 
+#include "test_utils/DeltaSnapshotReader.hpp"
+
 #include <boost/foreach.hpp>
 #include <boost/shared_ptr.hpp>
 #include <boost/ptr_container/ptr_vector.hpp>
@@ -493,6 +495,44 @@ public:
         return boost::shared_ptr<ElasticScanner>(new ElasticScanner(*m_table, m_table->m_surgeon.getData()));
     }
 
+    int64_t getBlockId(TableTuple &tuple) {
+        return PersistentTable::findBlock(tuple.address(), m_table->m_data,
+                                          m_table->m_tableAllocationSize)->blockId();
+    }
+
+    // The rows of every block of the table, empty blocks included.
+    std::map<int64_t, T_ValueSet> getBlockContents() {
+        std::map<int64_t, T_ValueSet> contents;
+        for (TBMapI blockIterator = m_table->m_data.begin(); blockIterator != m_table->m_data.end(); blockIterator++) {
+            contents[blockIterator.data()->blockId()];
+        }
+        voltdb::TableIterator& iterator = m_table->iterator();
+        TableTuple tuple(m_table->schema());
+        while (iterator.next(tuple)) {
+            contents[getBlockId(tuple)].insert(*reinterpret_cast<const int64_t*>(tuple.address() + 1));
+        }
+        return contents;
+    }
+
+    // An incremental snapshot has to list every block of the table, stream
+    // all rows of the blocks it dumps and may only leave out the blocks
+    // whose rows are unchanged since the previous snapshot.
+    void checkDeltaSnapshot(const std::map<int64_t, T_ValueSet> &previous, const DeltaSnapshotReader &reader) {
+        std::map<int64_t, T_ValueSet> current = getBlockContents();
+        ASSERT_EQ(current.size(), reader.m_dumpedBlocks.size() + reader.m_cleanBlocks.size());
+        for (std::map<int64_t, T_ValueSet>::const_iterator it = current.begin(); it != current.end(); ++it) {
+            if (reader.m_cleanBlocks.count(it->first) != 0) {
+                std::map<int64_t, T_ValueSet>::const_iterator before = previous.find(it->first);
+                ASSERT_TRUE(before != previous.end());
+                ASSERT_TRUE(before->second == it->second);
+                continue;
+            }
+            ASSERT_EQ(1, reader.m_dumpedBlocks.count(it->first));
+            std::map<int64_t, int32_t>::const_iterator rows = reader.m_blockRows.find(it->first);
+            ASSERT_EQ(it->second.size(), rows == reader.m_blockRows.end() ? 0 : rows->second);
+        }
+    }
+
     void context(const std::string msg, ...) {
         va_list args;
         va_start(args, msg);
@@ -1223,6 +1263,110 @@ TEST_F(CopyOnWriteTest, TestTupleInsertionBetweenSnapshotActivateFinish) {
     ASSERT_EQ(tupleCount, m_table->visibleTupleCount());
 }
 
+// The first incremental snapshot dumps every block, later ones only the
+// blocks that took an insert since.
+TEST_F(CopyOnWriteTest, DeltaSnapshotInsert) {
+    initTable(1, (m_tupleWidth + TUPLE_HEADER_SIZE) * 100);
+    addRandomUniqueTuples(m_table, 1050);
+    DeltaSnapshotReader reader;
+
+    std::map<int64_t, T_ValueSet> contents = getBlockContents();
+    ASSERT_TRUE(contents.size() > 5);
+    ASSERT_TRUE(reader.read(m_table, TABLE_STREAM_SNAPSHOT_DELTA, m_tableId));
+    ASSERT_EQ(contents.size(), reader.m_dumpedBlocks.size());
+    ASSERT_EQ(1050, reader.m_rowCount);
+    checkDeltaSnapshot(contents, reader);
+
+    ASSERT_TRUE(reader.read(m_table, TABLE_STREAM_SNAPSHOT_DELTA, m_tableId));
+    ASSERT_EQ(0, reader.m_dumpedBlocks.size());
+    ASSERT_EQ(contents.size(), reader.m_cleanBlocks.size());
+    ASSERT_EQ(0, reader.m_rowCount);
+
+    addRandomUniqueTuples(m_table, 1);
+    ASSERT_TRUE(reader.read(m_table, TABLE_STREAM_SNAPSHOT_DELTA, m_tableId));
+    ASSERT_EQ(1, reader.m_dumpedBlocks.size());
+    checkDeltaSnapshot(contents, reader);
+
+    // A base snapshot dumps everything regardless.
+    contents = getBlockContents();
+    ASSERT_TRUE(reader.read(m_table, TABLE_STREAM_SNAPSHOT_DELTA_BASE, m_tableId));
+    ASSERT_EQ(0, reader.m_cleanBlocks.size());
+    ASSERT_EQ(1051, reader.m_rowCount);
+    checkDeltaSnapshot(contents, reader);
+}
+
+TEST_F(CopyOnWriteTest, DeltaSnapshotUpdate) {
+    initTable(1, (m_tupleWidth + TUPLE_HEADER_SIZE) * 100);
+    addRandomUniqueTuples(m_table, 1000);
+    DeltaSnapshotReader reader;
+
+    // Updates before the first incremental snapshot aren't tracked, the
+    // first one dumps everything anyway.
+    doRandomUpdate(m_table);
+    ASSERT_TRUE(reader.read(m_table, TABLE_STREAM_SNAPSHOT_DELTA, m_tableId));
+    ASSERT_EQ(1000, reader.m_rowCount);
+
+    std::map<int64_t, T_ValueSet> contents = getBlockContents();
+    TableTuple tuple(m_table->schema());
+    ASSERT_TRUE(tableutil::getRandomTuple(m_table, tuple));
+    int64_t blockId = getBlockId(tuple);
+    updateSpecificTuple(m_table, tuple);
+    ASSERT_TRUE(reader.read(m_table, TABLE_STREAM_SNAPSHOT_DELTA, m_tableId));
+    ASSERT_EQ(1, reader.m_dumpedBlocks.size());
+    ASSERT_EQ(1, reader.m_dumpedBlocks.count(blockId));
+    checkDeltaSnapshot(contents, reader);
+}
+
+TEST_F(CopyOnWriteTest, DeltaSnapshotDelete) {
+    initTable(1, (m_tupleWidth + TUPLE_HEADER_SIZE) * 100);
+    addRandomUniqueTuples(m_table, 1000);
+    DeltaSnapshotReader reader;
+    ASSERT_TRUE(reader.read(m_table, TABLE_STREAM_SNAPSHOT_DELTA, m_tableId));
+
+    std::map<int64_t, T_ValueSet> contents = getBlockContents();
+    TableTuple tuple(m_table->schema());
+    ASSERT_TRUE(tableutil::getRandomTuple(m_table, tuple));
+    int64_t blockId = getBlockId(tuple);
+    m_table->deleteTuple(tuple, true);
+    ASSERT_TRUE(reader.read(m_table, TABLE_STREAM_SNAPSHOT_DELTA, m_tableId));
+    ASSERT_EQ(1, reader.m_dumpedBlocks.size());
+    ASSERT_EQ(1, reader.m_dumpedBlocks.count(blockId));
+    ASSERT_EQ(contents[blockId].size() - 1, reader.m_rowCount);
+    checkDeltaSnapshot(contents, reader);
+}
+
+// Compaction moves tuples between blocks and frees the blocks it empties.
+// The blocks that took tuples are dumped, the freed ones leave the manifest.
+TEST_F(CopyOnWriteTest, DeltaSnapshotCompaction) {
+    initTable(1, (m_tupleWidth + TUPLE_HEADER_SIZE) * 100);
+    addRandomUniqueTuples(m_table, 1000);
+
+    // Thin out the first half of the table.
+    std::vector<char*> deletes;
+    voltdb::TableIterator& iterator = m_table->iterator();
+    TableTuple tuple(m_table->schema());
+    for (int i = 0; iterator.next(tuple) && i < 500; i++) {
+        if (i % 10 != 0) {
+            deletes.push_back(tuple.address());
+        }
+    }
+    BOOST_FOREACH (char *address, deletes) {
+        tuple.move(address);
+        m_table->deleteTuple(tuple, true);
+    }
+
+    DeltaSnapshotReader reader;
+    ASSERT_TRUE(reader.read(m_table, TABLE_STREAM_SNAPSHOT_DELTA, m_tableId));
+    std::map<int64_t, T_ValueSet> contents = getBlockContents();
+    ASSERT_TRUE(doForcedCompaction(m_table));
+    ASSERT_TRUE(getBlockContents().size() < contents.size());
+
+    ASSERT_TRUE(reader.read(m_table, TABLE_STREAM_SNAPSHOT_DELTA, m_tableId));
+    ASSERT_TRUE(reader.m_cleanBlocks.size() > 0);
+    ASSERT_TRUE(reader.m_rowCount < m_table->activeTupleCount());
+    checkDeltaSnapshot(contents, reader);
+}
+
 TEST_F(CopyOnWriteTest, BigTest) {
     initTable(1, 0);
     int tupleCount = TUPLE_COUNT;
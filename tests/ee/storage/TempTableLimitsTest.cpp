@@ -22,12 +22,21 @@
  */
 
 #include "storage/TempTableLimits.h"
+#include "storage/TempTableSpillFile.h"
+#include "storage/tablefactory.h"
+#include "storage/tableiterator.h"
+#include "storage/temptable.h"
 
 #include "harness.h"
 #include "common/SQLException.h"
+#include "common/TupleSchema.h"
+#include "common/ValueFactory.hpp"
+#include "common/ValuePeeker.hpp"
 #include "logging/LogManager.h"
 
+#include <cstring>
 #include <sstream>
+#include <unistd.h>
 
 using namespace voltdb;
 
@@ -125,6 +134,137 @@ TEST_F(TempTableLimitsTest, CheckLimitException)
     EXPECT_TRUE(threw);
 }
 
+TEST_F(TempTableLimitsTest, CheckSpill)
+{
+    TestProxy* proxy = dynamic_cast<TestProxy*>(const_cast<LogProxy*>(m_logManager.getLogProxy()));
+    proxy->reset();
+
+    std::ostringstream path;
+    path << "/tmp/TempTableLimitsTest_" << getpid() << ".bin";
+    TempTableSpillFile spillFile(path.str());
+    TempTableLimits dut(1024 * 10, -1, &spillFile); // Set 10K hard limit and a spill file.
+    dut.increaseAllocated(1024 * 6);
+    EXPECT_FALSE(dut.shouldSpill(1024 * 2));
+    EXPECT_TRUE(dut.shouldSpill(1024 * 6));
+
+    // spilling gives back memory and logs once
+    dut.spilledToDisk(1024 * 4);
+    EXPECT_EQ(1024 * 2, dut.getAllocated());
+    EXPECT_EQ(proxy->lastLoggerId, LOGGERID_SQL);
+    EXPECT_EQ(proxy->lastLogLevel, LOGLEVEL_INFO);
+    proxy->reset();
+    dut.spilledToDisk(1024);
+    EXPECT_EQ(proxy->lastLoggerId, LOGGERID_INVALID);
+
+    // what is written comes back
+    char block[1024];
+    char readBack[1024];
+    memset(block, 'a', sizeof(block));
+    int64_t first = spillFile.write(block, sizeof(block));
+    memset(block, 'b', sizeof(block));
+    int64_t second = spillFile.write(block, sizeof(block));
+    EXPECT_EQ(2 * sizeof(block), spillFile.getSpilledBytes());
+    spillFile.read(first, readBack, sizeof(readBack));
+    EXPECT_EQ('a', readBack[sizeof(readBack) - 1]);
+    spillFile.read(second, readBack, sizeof(readBack));
+    EXPECT_EQ('b', readBack[0]);
+    spillFile.release(sizeof(block));
+    spillFile.release(sizeof(block));
+    EXPECT_EQ(0, spillFile.getSpilledBytes());
+}
+
+static TempTable* createSpillTestTable(TempTableLimits* limits)
+{
+    std::vector<ValueType> types(1, VALUE_TYPE_BIGINT);
+    std::vector<int32_t> lengths(1, NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+    std::vector<bool> allowNull(1, false);
+    TupleSchema* schema = TupleSchema::createTupleSchemaForTest(types, lengths, allowNull);
+    std::vector<std::string> names(1, "ID");
+    return TableFactory::buildTempTable("SPILL_TEST", schema, names, limits);
+}
+
+static void insertRows(TempTable* table, int64_t first, int64_t count)
+{
+    TableTuple& tuple = table->tempTuple();
+    for (int64_t ii = first; ii < first + count; ++ii) {
+        tuple.setNValue(0, ValueFactory::getBigIntValue(ii));
+        table->insertTempTuple(tuple);
+    }
+}
+
+TEST_F(TempTableLimitsTest, CheckSpillAndReload)
+{
+    // Find out how big a block is and how many rows it holds.
+    TempTableLimits probeLimits(-1);
+    TempTable* probe = createSpillTestTable(&probeLimits);
+    insertRows(probe, 0, 1);
+    const int blockSize = static_cast<int>(probeLimits.getAllocated());
+    int64_t rowsPerBlock = 1;
+    while (probeLimits.getAllocated() == blockSize) {
+        insertRows(probe, rowsPerBlock++, 1);
+    }
+    --rowsPerBlock;
+    delete probe;
+
+    std::ostringstream path;
+    path << "/tmp/TempTableLimitsTest_" << getpid() << ".bin";
+    TempTableSpillFile spillFile(path.str());
+    TempTableLimits limits(blockSize * 5, -1, &spillFile);
+    TempTable* table = createSpillTestTable(&limits);
+    // Only the rows of a block are written out.
+    const int64_t spilledBlockBytes = (table->schema()->tupleLength() + TUPLE_HEADER_SIZE) * rowsPerBlock;
+
+    // Block 5 doesn't fit, so blocks 1 to 4 go to disk. Blocks 5 to 7 fill
+    // up in memory and block 8 holds the last row.
+    const int64_t rowCount = rowsPerBlock * 8 + 1;
+    insertRows(table, 0, rowCount);
+    EXPECT_EQ(4, table->spilledBlockCount());
+    EXPECT_EQ(blockSize * 5, limits.getAllocated());
+    EXPECT_EQ(spilledBlockBytes * 4, spillFile.getSpilledBytes());
+
+    // A scan that keeps what it reads back makes room by spilling the
+    // blocks it hasn't reached yet, and still stops at the limit.
+    TableTuple tuple(table->schema());
+    TableIterator& iter = table->iterator();
+    int64_t expected = 0;
+    bool threw = false;
+    try {
+        while (iter.next(tuple)) {
+            EXPECT_EQ(expected, ValuePeeker::peekBigInt(tuple.getNValue(0)));
+            if (expected == rowsPerBlock) {
+                // block 1 is back, blocks 5 to 7 went out to make room for it
+                EXPECT_EQ(6, table->spilledBlockCount());
+                EXPECT_EQ(blockSize * 3, limits.getAllocated());
+            }
+            ++expected;
+        }
+    }
+    catch (SQLException& sqle) {
+        threw = true;
+    }
+    EXPECT_TRUE(threw);
+    // Blocks 1 to 3 were read back, there was no room left for block 4.
+    EXPECT_EQ(rowsPerBlock * 4, expected);
+
+    // The block that didn't fit belongs to the table and is counted until
+    // the table gives it up.
+    EXPECT_EQ(blockSize * 6, limits.getAllocated());
+
+    // A scan that lets go of what it has read never needs more memory.
+    limits.resetPeakMemory();
+    TableIterator& deletingIter = table->iteratorDeletingAsWeGo();
+    expected = 0;
+    while (deletingIter.next(tuple)) {
+        ASSERT_EQ(expected, ValuePeeker::peekBigInt(tuple.getNValue(0)));
+        ++expected;
+    }
+    EXPECT_EQ(rowCount, expected);
+    EXPECT_EQ(blockSize * 6, limits.getPeakMemoryInBytes());
+
+    delete table;
+    EXPECT_EQ(0, spillFile.getSpilledBytes());
+}
+
 int main()
 {
     return TestSuite::globalInstance()->runAll();
@@ -24,8 +24,11 @@
 //#define STUPIDUNIT_ASSERT_BREAKPOINT 1
 
 #include "harness.h"
+#include "test_utils/DeltaSnapshotReader.hpp"
 #include "test_utils/ScopedTupleSchema.hpp"
 
+#include "catalog/table.h"
+
 #include "common/tabletuple.h"
 #include "common/TupleSchemaBuilder.h"
 #include "common/types.h"
@@ -236,6 +239,18 @@ protected:
         }
     }
 
+    // Insert rows with consecutive keys, which unlike random ones can't collide.
+    void addTuples(PersistentTable* table, int64_t firstKey, int count) {
+        voltdb::StandAloneTupleStorage storage(table->schema());
+        TableTuple &tuple = const_cast<TableTuple&>(storage.tuple());
+        NValue data = ValueFactory::getTempStringValue("Splendor sine occasu");
+        for (int i = 0; i < count; ++i) {
+            tuple.setNValue(0, ValueFactory::getBigIntValue(firstKey + i));
+            tuple.setNValue(1, data);
+            ASSERT_TRUE(table->insertTuple(tuple));
+        }
+    }
+
 private:
     boost::scoped_ptr<VoltDBEngine> m_engine;
     int64_t m_undoToken;
@@ -786,6 +801,104 @@ TEST_F(PersistentTableTest, SwapTablesTest) {
     rollback();
 }
 
+
+// A swap moves the rows of one table under the name of the other, so
+// block ids recorded by earlier snapshots of either name no longer apply.
+TEST_F(PersistentTableTest, DeltaSnapshotAfterSwap) {
+    VoltDBEngine* engine = getEngine();
+    engine->loadCatalog(0, catalogPayload());
+    const int32_t tableId = engine->getCatalogTable("T")->relativeIndex();
+    const int32_t dupTableId = engine->getCatalogTable("X")->relativeIndex();
+
+    std::vector<std::string> tableIndexes;
+    tableIndexes.push_back("VOLTDB_AUTOGEN_IDX_PK_T_PK");
+    std::vector<std::string> dupIndexes;
+    dupIndexes.push_back("VOLTDB_AUTOGEN_IDX_PK_X_PK");
+
+    PersistentTable* table = engine->getTableDelegate("T")->getPersistentTable();
+    PersistentTable* dupTable = engine->getTableDelegate("X")->getPersistentTable();
+    beginWork();
+    ASSERT_TRUE(tableutil::addRandomTuples(table, 10));
+    ASSERT_TRUE(tableutil::addRandomTuples(dupTable, 20));
+    commit();
+
+    // The first incremental snapshot turns on tracking, the second finds
+    // nothing changed.
+    DeltaSnapshotReader reader;
+    ASSERT_TRUE(reader.read(table, voltdb::TABLE_STREAM_SNAPSHOT_DELTA, tableId));
+    ASSERT_EQ(10, reader.m_rowCount);
+    ASSERT_TRUE(reader.read(table, voltdb::TABLE_STREAM_SNAPSHOT_DELTA, tableId));
+    ASSERT_EQ(1, reader.m_cleanBlocks.size());
+    ASSERT_EQ(0, reader.m_rowCount);
+    ASSERT_TRUE(reader.read(dupTable, voltdb::TABLE_STREAM_SNAPSHOT_DELTA, dupTableId));
+    ASSERT_TRUE(reader.read(dupTable, voltdb::TABLE_STREAM_SNAPSHOT_DELTA, dupTableId));
+    ASSERT_EQ(1, reader.m_cleanBlocks.size());
+
+    beginWork();
+    table->swapTable(dupTable, tableIndexes, dupIndexes);
+    commit();
+    ASSERT_EQ(dupTable, engine->getTableDelegate("T")->getPersistentTable());
+    ASSERT_EQ(table, engine->getTableDelegate("X")->getPersistentTable());
+
+    // Both start over with a full dump, then tracking resumes.
+    ASSERT_TRUE(reader.read(dupTable, voltdb::TABLE_STREAM_SNAPSHOT_DELTA, tableId));
+    ASSERT_EQ(0, reader.m_cleanBlocks.size());
+    ASSERT_EQ(20, reader.m_rowCount);
+    ASSERT_TRUE(reader.read(table, voltdb::TABLE_STREAM_SNAPSHOT_DELTA, dupTableId));
+    ASSERT_EQ(0, reader.m_cleanBlocks.size());
+    ASSERT_EQ(10, reader.m_rowCount);
+    ASSERT_TRUE(reader.read(dupTable, voltdb::TABLE_STREAM_SNAPSHOT_DELTA, tableId));
+    ASSERT_EQ(1, reader.m_cleanBlocks.size());
+    ASSERT_EQ(0, reader.m_rowCount);
+}
+
+TEST_F(PersistentTableTest, DeltaSnapshotAfterTruncate) {
+    VoltDBEngine* engine = getEngine();
+    engine->loadCatalog(0, catalogPayload());
+    const int32_t tableId = engine->getCatalogTable("T")->relativeIndex();
+    PersistentTable* table = engine->getTableDelegate("T")->getPersistentTable();
+    DeltaSnapshotReader reader;
+
+    // Truncating a sparse table deletes its rows one by one. The block
+    // they were in is left empty and can't be taken from an earlier snapshot.
+    beginWork();
+    ASSERT_TRUE(tableutil::addRandomTuples(table, 10));
+    commit();
+    ASSERT_TRUE(reader.read(table, voltdb::TABLE_STREAM_SNAPSHOT_DELTA, tableId));
+    ASSERT_EQ(10, reader.m_rowCount);
+
+    beginWork();
+    table->truncateTable(engine);
+    commit();
+    ASSERT_EQ(table, engine->getTableDelegate("T")->getPersistentTable());
+    ASSERT_TRUE(reader.read(table, voltdb::TABLE_STREAM_SNAPSHOT_DELTA, tableId));
+    ASSERT_EQ(0, reader.m_cleanBlocks.size());
+    ASSERT_EQ(0, reader.m_rowCount);
+
+    // A fuller table is replaced by a new empty one. Its block ids start
+    // over, so its first incremental snapshot dumps everything.
+    const int tuplesToInsert = static_cast<int>(table->allocatedTupleCount() / 5);
+    beginWork();
+    addTuples(table, 0, tuplesToInsert);
+    commit();
+    ASSERT_TRUE(reader.read(table, voltdb::TABLE_STREAM_SNAPSHOT_DELTA, tableId));
+    ASSERT_EQ(tuplesToInsert, reader.m_rowCount);
+    ASSERT_TRUE(reader.read(table, voltdb::TABLE_STREAM_SNAPSHOT_DELTA, tableId));
+    ASSERT_EQ(1, reader.m_cleanBlocks.size());
+
+    beginWork();
+    table->truncateTable(engine);
+    commit();
+    PersistentTable* truncated = engine->getTableDelegate("T")->getPersistentTable();
+    ASSERT_NE(table, truncated);
+    beginWork();
+    ASSERT_TRUE(tableutil::addRandomTuples(truncated, 10));
+    commit();
+    ASSERT_TRUE(reader.read(truncated, voltdb::TABLE_STREAM_SNAPSHOT_DELTA, tableId));
+    ASSERT_EQ(0, reader.m_cleanBlocks.size());
+    ASSERT_EQ(10, reader.m_rowCount);
+}
+
 int main() {
     return TestSuite::globalInstance()->runAll();
 }
@@ -0,0 +1,114 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef DELTASNAPSHOTREADER_HPP
+#define DELTASNAPSHOTREADER_HPP
+
+#include "common/serializeio.h"
+#include "common/TupleOutputStream.h"
+#include "common/TupleOutputStreamProcessor.h"
+#include "common/types.h"
+#include "storage/persistenttable.h"
+
+#include <cstring>
+#include <map>
+#include <set>
+#include <vector>
+
+// Streams an incremental snapshot of a table to the end and sorts out
+// what the chunks contain: the manifest, split into the blocks the
+// snapshot dumped and the clean ones it leaves to earlier snapshots,
+// and the number of rows dumped for each block.
+class DeltaSnapshotReader {
+public:
+    DeltaSnapshotReader()
+        : m_rowCount(0)
+        , m_buffer(131072)
+    {
+    }
+
+    bool read(voltdb::PersistentTable* table, voltdb::TableStreamType streamType, int32_t tableId) {
+        m_dumpedBlocks.clear();
+        m_cleanBlocks.clear();
+        m_blockRows.clear();
+        m_rowCount = 0;
+
+        char config[4];
+        ::memset(config, 0, 4);
+        voltdb::ReferenceSerializeInputBE input(config, 4);
+        if (!table->activateStream(streamType, 0, tableId, input)) {
+            return false;
+        }
+        while (true) {
+            voltdb::TupleOutputStreamProcessor outputStreams(&m_buffer[0], m_buffer.size());
+            std::vector<int> retPositions;
+            int64_t remaining = table->streamMore(outputStreams, streamType, retPositions);
+            if (remaining < 0) {
+                return false;
+            }
+            readChunk(outputStreams.at(0).position());
+            if (remaining == 0) {
+                return true;
+            }
+        }
+    }
+
+    // Manifest entries of the blocks whose rows are in this snapshot
+    std::set<int64_t> m_dumpedBlocks;
+    // Manifest entries of the blocks left to earlier snapshots
+    std::set<int64_t> m_cleanBlocks;
+    // Rows streamed per block id
+    std::map<int64_t, int32_t> m_blockRows;
+    int32_t m_rowCount;
+
+private:
+    // Chunks are a partition id, a block id and a row count followed by
+    // the rows. Manifest chunks have a block id of -1 and a long per row.
+    void readChunk(size_t length) {
+        if (length == 0) {
+            return;
+        }
+        voltdb::ReferenceSerializeInputBE chunk(&m_buffer[0], length);
+        chunk.readInt();
+        int64_t blockId = chunk.readLong();
+        int32_t rowCount = chunk.readInt();
+        if (blockId == -1) {
+            for (int32_t i = 0; i < rowCount; i++) {
+                int64_t entry = chunk.readLong();
+                if (entry >= 0) {
+                    m_dumpedBlocks.insert(entry);
+                }
+                else {
+                    m_cleanBlocks.insert(~entry);
+                }
+            }
+            return;
+        }
+        m_blockRows[blockId] += rowCount;
+        m_rowCount += rowCount;
+    }
+
+    std::vector<char> m_buffer;
+};
+
+#endif // DELTASNAPSHOTREADER_HPP
@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.voltcore.utils.Pair;
 import org.voltcore.utils.PortGenerator;
 
 import junit.framework.TestCase;
@@ -304,6 +305,72 @@ public class TestMessaging extends TestCase {
         }
     }
 
+    public void testBatchedSends() throws Exception {
+        List<HostMessenger.Config> configs = getConfigs(2);
+        HostMessenger msg1 = new HostMessenger(configs.get(0), null);
+        msg1.start();
+        HostMessenger msg2 = new HostMessenger(configs.get(1), null);
+        msg2.start();
+        msg1.waitForGroupJoin(2);
+        msg2.waitForGroupJoin(2);
+
+        final int senderCount = 4;
+        final int messagesPerSender = 20000;
+        final long destination = msg2.createMailbox().getHSId();
+        final Mailbox receiver = msg2.getMailbox(destination);
+
+        // Each message carries its sender and sequence number, so the receiver can
+        // check that messages coalesced into batches arrive complete and in order
+        Thread senders[] = new Thread[senderCount];
+        for (int ii = 0; ii < senderCount; ii++) {
+            final int senderId = ii;
+            final Mailbox mb = msg1.createMailbox();
+            senders[ii] = new Thread() {
+                @Override
+                public void run() {
+                    for (int seq = 0; seq < messagesPerSender; seq++) {
+                        MsgTest mt = new MsgTest();
+                        mt.m_localValue = ByteBuffer.allocate(8).putInt(senderId).putInt(seq).array();
+                        mb.send(destination, mt);
+                    }
+                }
+            };
+            senders[ii].start();
+        }
+
+        int nextSeq[] = new int[senderCount];
+        int received = 0;
+        long start = System.currentTimeMillis();
+        while (received < senderCount * messagesPerSender) {
+            assertTrue((System.currentTimeMillis() - start) < 60000);
+            MsgTest mt = (MsgTest) receiver.recv();
+            if (mt == null) {
+                Thread.yield();
+                continue;
+            }
+            ByteBuffer value = ByteBuffer.wrap(mt.m_localValue);
+            int senderId = value.getInt();
+            assertEquals(nextSeq[senderId]++, value.getInt());
+            received++;
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+
+        long frames = 0;
+        long messages = 0;
+        for (Pair<String, long[]> stats : msg1.getMessageBatchStats(false).values()) {
+            frames += stats.getSecond()[1];
+            messages += stats.getSecond()[2];
+        }
+        assertTrue(messages >= senderCount * messagesPerSender);
+        // Senders outpace the network thread, so some frames must carry more than one message
+        assertTrue(frames < messages);
+
+        msg1.shutdown();
+        msg2.shutdown();
+    }
+
     public void testFailAndRejoin() throws Exception {
         /* Why is throwing away a selector interesting !? */
         try {
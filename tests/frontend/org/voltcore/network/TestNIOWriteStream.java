@@ -57,8 +57,12 @@ import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SelectionKey;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.DirectDeferredSerialization;
 import org.voltcore.utils.EstTime;
 import org.voltcore.utils.EstTimeUpdater;
 import org.voltdb.AdmissionControlGroup;
@@ -203,8 +207,34 @@ public class TestNIOWriteStream extends TestCase {
         @Override
         public long write(ByteBuffer[] srcs, int offset, int length)
                 throws IOException {
-            // TODO Auto-generated method stub
-            return 0;
+            if (!m_open) throw new IOException();
+            if (closeAfter > 0 && ++writeCount >= closeAfter) {
+                m_open = false;
+            }
+
+            if (m_behavior == SINK) {
+                long written = 0;
+                for (int i = offset; i < offset + length; i++) {
+                    written += srcs[i].remaining();
+                    srcs[i].position(srcs[i].limit());
+                }
+                return written;
+            }
+            else if (m_behavior == FULL) {
+                return 0;
+            }
+            else if (m_behavior == PARTIAL) {
+                if (wrotePartial) {
+                    return 0;
+                } else {
+                    wrotePartial = true;
+                }
+                int half = srcs[offset].remaining() / 2;
+                srcs[offset].position(srcs[offset].position() + half);
+                return half;
+            }
+            assert(false);
+            return -1;
         }
     }
 
@@ -374,6 +404,65 @@ public class TestNIOWriteStream extends TestCase {
         assertEquals(0, acg.getPendingBytes());
     }
 
+    public void testDirectPayload() throws IOException {
+        MockChannel channel = new MockChannel(MockChannel.FULL, 0);
+        MockPort port = new MockPort();
+        NIOWriteStream wstream = new NIOWriteStream(port);
+
+        final AtomicInteger discarded = new AtomicInteger(0);
+        final BBContainer payload[] = new BBContainer[2];
+        for (int i = 0; i < payload.length; i++) {
+            final BBContainer origin = DBBPool.allocateDirect(8);
+            origin.b().limit(5 + i);
+            payload[i] = new BBContainer(origin.b()) {
+                @Override
+                public void discard() {
+                    checkDoubleFree();
+                    discarded.incrementAndGet();
+                    origin.discard();
+                }
+            };
+        }
+        wstream.enqueue(new DirectDeferredSerialization() {
+            @Override
+            public void serializeHeader(ByteBuffer buf) {
+                buf.put((byte)1);
+                buf.put((byte)2);
+                buf.put((byte)3);
+            }
+
+            @Override
+            public BBContainer[] detachPayload() {
+                return payload;
+            }
+
+            @Override
+            public void serialize(ByteBuffer buf) {
+                fail("Payload should have been queued without copying");
+            }
+
+            @Override
+            public void cancel() {}
+
+            @Override
+            public int getSerializedSize() {
+                return 3 + 5 + 6;
+            }
+        });
+        wstream.serializeQueuedWrites(pool);
+
+        // Header and payload are gathered into one write, which the full channel refuses
+        assertEquals(0, wstream.drainTo(channel));
+        assertFalse(wstream.isEmpty());
+        assertEquals(0, discarded.get());
+
+        channel.m_behavior = MockChannel.SINK;
+        assertEquals(14, wstream.drainTo(channel));
+        assertTrue(wstream.isEmpty());
+        assertEquals(2, discarded.get());
+        wstream.shutdown();
+    }
+
     public void testLargeNonDirectWrite() throws IOException {
         MockChannel channel = new MockChannel(MockChannel.SINK, 0);
         MockPort port = new MockPort();
@@ -0,0 +1,277 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltcore.utils.ssl.SSLConfiguration;
+import org.voltdb.client.TLSHandshaker;
+
+/**
+ * Loopback test of a TLS port with the batched cipher mode on. The client sends length
+ * prefixed messages cut into TLS records of random sizes, so messages straddle records and
+ * records straddle the batches of the decryption tasks. The server echoes every message
+ * back through the batched encryption tasks and the client checks each one.
+ */
+public class TestTLSVoltPort {
+
+    static {
+        // small batches, so that a run crosses many batch boundaries
+        System.setProperty("TLS_BATCHED_CIPHER", "true");
+        System.setProperty("TLS_CIPHER_BATCH_FRAMES", "2");
+    }
+
+    private static final String KEYSTORE = "tests/frontend/org/voltdb/keystore";
+
+    private VoltNetwork m_network;
+    private ServerSocketChannel m_acceptor;
+    private SocketChannel m_client;
+    private SSLEngine m_clientEngine;
+    private ExecutorService m_es;
+
+    private static class EchoHandler extends VoltProtocolHandler {
+        @Override
+        public int getMaxRead() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void handleMessage(ByteBuffer message, Connection c) {
+            ByteBuffer echo = ByteBuffer.allocate(4 + message.remaining());
+            echo.putInt(message.remaining());
+            echo.put(message);
+            echo.flip();
+            c.writeStream().enqueue(echo);
+        }
+
+        @Override
+        public Runnable onBackPressure() {
+            return new Runnable() {
+                @Override
+                public void run() {}
+            };
+        }
+
+        @Override
+        public Runnable offBackPressure() {
+            return new Runnable() {
+                @Override
+                public void run() {}
+            };
+        }
+
+        @Override
+        public QueueMonitor writestreamMonitor() {
+            return null;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        SSLContext sslContext = SSLConfiguration.createSslContext(
+                new SSLConfiguration.SslConfig(KEYSTORE, "password", KEYSTORE, "password"));
+        m_es = Executors.newFixedThreadPool(2);
+
+        m_acceptor = ServerSocketChannel.open();
+        m_acceptor.bind(new InetSocketAddress("localhost", 0));
+        m_client = SocketChannel.open(m_acceptor.getLocalAddress());
+        final SocketChannel server = m_acceptor.accept();
+        server.configureBlocking(false);
+        m_client.configureBlocking(false);
+
+        final SSLEngine serverEngine = sslContext.createSSLEngine();
+        serverEngine.setUseClientMode(false);
+        m_clientEngine = sslContext.createSSLEngine("localhost", m_acceptor.socket().getLocalPort());
+        m_clientEngine.setUseClientMode(true);
+        // the ports wrap one record per call, a TLS 1.3 session ticket would take the first one
+        m_clientEngine.setEnabledProtocols(new String[] { "TLSv1.2" });
+
+        Future<Boolean> serverHandshake = m_es.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return new TLSHandshaker(server, serverEngine).handshake();
+            }
+        });
+        assertTrue(new TLSHandshaker(m_client, m_clientEngine).handshake());
+        assertTrue(serverHandshake.get(60, TimeUnit.SECONDS));
+        m_client.configureBlocking(true);
+
+        CipherExecutor.SERVER.startup();
+        m_network = new VoltNetwork(0, null, "TLS Test");
+        m_network.start();
+        m_network.registerChannel(server, new EchoHandler(), SelectionKey.OP_READ,
+                ReverseDNSPolicy.NONE, CipherExecutor.SERVER, serverEngine);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_client.close();
+        m_network.shutdown();
+        m_acceptor.close();
+        CipherExecutor.SERVER.shutdown();
+        m_es.shutdownNow();
+    }
+
+    private static byte[] payload(int index, int size) {
+        byte[] payload = new byte[size];
+        new Random(index).nextBytes(payload);
+        return payload;
+    }
+
+    /**
+     * Send the messages in records of random sizes, on a separate thread so the echoes
+     * are read while the sending is still going on.
+     */
+    private Future<?> send(final List<Integer> sizes, final Random random) {
+        return m_es.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                int total = 0;
+                for (int size : sizes) {
+                    total += 4 + size;
+                }
+                ByteBuffer stream = ByteBuffer.allocate(total);
+                for (int ii = 0; ii < sizes.size(); ii++) {
+                    stream.putInt(sizes.get(ii));
+                    stream.put(payload(ii, sizes.get(ii)));
+                }
+                stream.flip();
+
+                ByteBuffer record = ByteBuffer.allocate(m_clientEngine.getSession().getPacketBufferSize());
+                while (stream.hasRemaining()) {
+                    ByteBuffer clear = stream.slice();
+                    clear.limit(Math.min(clear.remaining(), 1 + random.nextInt(CipherExecutor.FRAME_SIZE)));
+                    record.clear();
+                    SSLEngineResult result = m_clientEngine.wrap(clear, record);
+                    assertEquals(SSLEngineResult.Status.OK, result.getStatus());
+                    stream.position(stream.position() + result.bytesConsumed());
+                    record.flip();
+                    while (record.hasRemaining()) {
+                        m_client.write(record);
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Read the echoes and check that they come back whole, in order and unchanged.
+     */
+    private void receive(List<Integer> sizes) throws Exception {
+        ByteBuffer netIn = ByteBuffer.allocate(m_clientEngine.getSession().getPacketBufferSize() * 4);
+        ByteBuffer received = ByteBuffer.allocate(CipherExecutor.FRAME_SIZE * 8);
+        int next = 0;
+        while (next < sizes.size()) {
+            if (m_client.read(netIn) < 0) {
+                throw new EOFException("server closed the connection after " + next + " messages");
+            }
+            netIn.flip();
+            SSLEngineResult result;
+            do {
+                if (received.remaining() < m_clientEngine.getSession().getApplicationBufferSize()) {
+                    ByteBuffer larger = ByteBuffer.allocate(received.capacity() * 2);
+                    received.flip();
+                    larger.put(received);
+                    received = larger;
+                }
+                result = m_clientEngine.unwrap(netIn, received);
+            } while (result.getStatus() == SSLEngineResult.Status.OK && netIn.hasRemaining());
+            assertFalse(result.getStatus() == SSLEngineResult.Status.CLOSED);
+            netIn.compact();
+
+            received.flip();
+            while (received.remaining() >= 4 && received.remaining() >= 4 + received.getInt(received.position())) {
+                int size = received.getInt();
+                assertEquals("size of message " + next, (int) sizes.get(next), size);
+                byte[] echo = new byte[size];
+                received.get(echo);
+                assertTrue("content of message " + next, Arrays.equals(payload(next, size), echo));
+                next++;
+            }
+            received.compact();
+        }
+        assertEquals(0, received.position());
+    }
+
+    private void roundTrip(int count, int maxSize, long seed) throws Exception {
+        assertTrue(CipherExecutor.SERVER.isBatched());
+        assertEquals(2, CipherExecutor.SERVER.batchFrames());
+
+        Random random = new Random(seed);
+        List<Integer> sizes = new ArrayList<Integer>(count);
+        for (int ii = 0; ii < count; ii++) {
+            sizes.add(1 + random.nextInt(maxSize));
+        }
+        Future<?> sent = send(sizes, random);
+        receive(sizes);
+        assertNotNull(sent);
+        sent.get(60, TimeUnit.SECONDS);
+    }
+
+    @Test(timeout = 120000)
+    public void testSmallMessagesAcrossBatches() throws Exception {
+        // many messages per record, many records per batch
+        roundTrip(5000, 300, 1);
+    }
+
+    @Test(timeout = 120000)
+    public void testLargeMessagesAcrossBatches() throws Exception {
+        // messages spanning several records and several batches
+        roundTrip(200, 5 * CipherExecutor.FRAME_SIZE, 2);
+    }
+
+    @Test
+    public void testClientIsNotBatched() {
+        assertFalse(CipherExecutor.CLIENT.isBatched());
+        assertEquals(1, CipherExecutor.CLIENT.batchFrames());
+    }
+}
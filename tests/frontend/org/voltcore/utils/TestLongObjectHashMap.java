@@ -0,0 +1,204 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class TestLongObjectHashMap extends TestCase {
+
+    public void testBasicOperations() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<String>();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(42));
+        assertNull(map.put(42, "a"));
+        assertNull(map.put(-1, "b"));
+        assertNull(map.put(0, "c"));
+        assertNull(map.put(Long.MIN_VALUE, "d"));
+        assertEquals(4, map.size());
+        assertEquals("a", map.put(42, "e"));
+        assertEquals(4, map.size());
+        assertEquals("e", map.get(42));
+        assertEquals("b", map.get(-1));
+        assertEquals("c", map.get(0));
+        assertEquals("d", map.get(Long.MIN_VALUE));
+        assertTrue(map.containsKey(0));
+        assertFalse(map.containsKey(1));
+
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertTrue(Arrays.equals(new long[] { Long.MIN_VALUE, -1, 0, 42 }, keys));
+
+        assertEquals("c", map.remove(0));
+        assertNull(map.remove(0));
+        assertEquals(3, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(42));
+
+        try {
+            map.put(1, null);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    /**
+     * Compare against a HashMap under random churn, with a key space small
+     * enough to produce long probe runs and lots of removals inside them.
+     */
+    public void testRandomOperations() {
+        Random r = new Random(12345);
+        for (int keySpace : new int[] { 8, 100, 10000 }) {
+            LongObjectHashMap<Long> map = new LongObjectHashMap<Long>();
+            Map<Long, Long> expected = new HashMap<Long, Long>();
+            for (int i = 0; i < 200000; i++) {
+                long key = r.nextInt(keySpace) * 31L;
+                switch (r.nextInt(3)) {
+                case 0:
+                case 1:
+                    assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+                    break;
+                default:
+                    assertEquals(expected.remove(key), map.remove(key));
+                }
+                assertEquals(expected.size(), map.size());
+            }
+            for (Map.Entry<Long, Long> e : expected.entrySet()) {
+                assertEquals(e.getValue(), map.get(e.getKey()));
+            }
+            assertEquals(expected.size(), map.keys().length);
+        }
+    }
+
+    /**
+     * Handles are sequential and complete roughly in order, the table should
+     * not grow when the number in flight is stable.
+     */
+    public void testSlidingWindowOfHandles() {
+        LongObjectHashMap<Object> map = new LongObjectHashMap<Object>(1000);
+        Object value = new Object();
+        for (long handle = 0; handle < 1000000; handle++) {
+            map.put(handle, value);
+            if (handle >= 1000) {
+                assertSame(value, map.remove(handle - 1000));
+            }
+        }
+        assertEquals(1000, map.size());
+        for (long handle = 1000000 - 1000; handle < 1000000; handle++) {
+            assertSame(value, map.get(handle));
+        }
+    }
+
+    public void testConcurrentMap() throws Exception {
+        final ConcurrentLongObjectHashMap<Long> map = new ConcurrentLongObjectHashMap<Long>();
+        final int threads = 4;
+        final int perThread = 50000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger removed = new AtomicInteger();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (long i = 0; i < perThread; i++) {
+                        long key = i * threads + id;
+                        map.put(key, key);
+                        // race with the other threads to remove a neighbour's key
+                        long other = i * threads + ((id + 1) % threads);
+                        if (map.remove(other) != null) {
+                            removed.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread t : workers) {
+            t.join();
+        }
+        assertEquals(threads * perThread, removed.get() + map.size());
+        for (long key : map.keys()) {
+            assertEquals(Long.valueOf(key), map.get(key));
+        }
+    }
+
+    /**
+     * Measure the bytes allocated per put and remove of an in-flight handle,
+     * against a ConcurrentHashMap with boxed keys as used before.
+     */
+    public void testAllocationRate() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+        final long self = Thread.currentThread().getId();
+        final int inFlight = 10000;
+        final int ops = 1000000;
+        final Object value = new Object();
+
+        ConcurrentLongObjectHashMap<Object> primitive = new ConcurrentLongObjectHashMap<Object>(inFlight);
+        ConcurrentHashMap<Long, Object> boxed = new ConcurrentHashMap<Long, Object>(inFlight);
+        for (long h = 0; h < inFlight; h++) {
+            primitive.put(h, value);
+            boxed.put(h, value);
+        }
+
+        long before = bean.getThreadAllocatedBytes(self);
+        for (long h = inFlight; h < inFlight + ops; h++) {
+            primitive.put(h, value);
+            primitive.remove(h - inFlight);
+        }
+        long primitiveBytes = bean.getThreadAllocatedBytes(self) - before;
+
+        before = bean.getThreadAllocatedBytes(self);
+        for (long h = inFlight; h < inFlight + ops; h++) {
+            boxed.put(h, value);
+            boxed.remove(h - inFlight);
+        }
+        long boxedBytes = bean.getThreadAllocatedBytes(self) - before;
+
+        // a few allocations from the measurement itself are fine, one per operation is not
+        assertTrue(primitiveBytes < ops / 10);
+        assertTrue(primitiveBytes < boxedBytes);
+    }
+}
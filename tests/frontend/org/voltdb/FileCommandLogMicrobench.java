@@ -0,0 +1,176 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.voltdb.CommandLog.CompletionChecks;
+import org.voltdb.iv2.SpScheduler.DurableUniqueIdListener;
+import org.voltdb.iv2.TransactionTask;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.utils.VoltFile;
+
+/**
+ * Measures how long a synchronously logged transaction waits to become
+ * durable, and how many transactions per second the log sustains, for a
+ * range of group commit windows. Each logging thread stands in for a site
+ * and keeps one transaction in flight.
+ *
+ * Usage: FileCommandLogMicrobench [threads] [seconds per window] [log directory]
+ */
+public class FileCommandLogMicrobench {
+
+    static final long[] WINDOWS_MICROS = new long[] {0, 100, 500, 1000, 2000, 5000};
+
+    /** Releases a permit for every transaction that became durable. */
+    static class SignalingListener implements CommandLog.DurabilityListener {
+        final int m_partitionId;
+        final Semaphore m_durable = new Semaphore(0);
+        int m_pending = 0;
+
+        SignalingListener(int partitionId) {
+            m_partitionId = partitionId;
+        }
+
+        @Override
+        public void setUniqueIdListener(DurableUniqueIdListener listener) {}
+        @Override
+        public int getPartitionId() { return m_partitionId; }
+        @Override
+        public void createFirstCompletionCheck(boolean isSyncLogging, boolean commandLoggingEnabled) {}
+        @Override
+        public boolean completionCheckInitialized() { return true; }
+        @Override
+        public void addTransaction(TransactionTask pendingTask) { m_pending++; }
+        @Override
+        public void initializeLastDurableUniqueId(long uniqueId) {}
+        @Override
+        public int getNumberOfTasks() { return m_pending; }
+
+        @Override
+        public CompletionChecks startNewTaskList(int nextMaxRowCnt) {
+            final int count = m_pending;
+            m_pending = 0;
+            return new CompletionChecks() {
+                @Override
+                public CompletionChecks startNewCheckList(int startSize) { return null; }
+                @Override
+                public void addTask(TransactionTask task) {}
+                @Override
+                public void setLastDurableUniqueId(long uniqueId) {}
+                @Override
+                public boolean isChanged() { return count > 0; }
+                @Override
+                public int getTaskListSize() { return count; }
+                @Override
+                public void processChecks() { m_durable.release(count); }
+            };
+        }
+
+        @Override
+        public void processDurabilityChecks(CompletionChecks completionChecks) {
+            completionChecks.processChecks();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        final int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        File dir = args.length > 2 ? new File(args[2]) : File.createTempFile("cmdlogbench", "");
+        dir.delete();
+
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+        invocation.setProcName("Insert");
+        invocation.setParams(1L, "a hundred bytes of parameters ........................................");
+        final Iv2InitiateTaskMessage message =
+                new Iv2InitiateTaskMessage(0, 0, 0, 1, 1, false, true, invocation, 0, 0, false);
+
+        System.out.printf("%10s %12s %12s %12s%n", "window(us)", "txns/sec", "avg(us)", "p99(us)");
+        for (long windowMicros : WINDOWS_MICROS) {
+            dir.mkdirs();
+            final FileCommandLog log = new FileCommandLog(true, 1, TimeUnit.MICROSECONDS.toNanos(windowMicros),
+                    Integer.MAX_VALUE, dir, FileCommandLog.DEFAULT_SEGMENT_SIZE);
+            log.init(1024, Long.MIN_VALUE, threads, null, null);
+
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            final CyclicBarrier start = new CyclicBarrier(threads);
+            final long[][] latencies = new long[threads][];
+            final int[] counts = new int[threads];
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                final int id = t;
+                workers[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        SignalingListener listener = new SignalingListener(id);
+                        long[] samples = new long[1 << 20];
+                        int n = 0;
+                        try {
+                            start.await();
+                            while (System.nanoTime() < deadline && n < samples.length) {
+                                long begin = System.nanoTime();
+                                log.log(message, n, null, listener, null);
+                                listener.m_durable.acquire();
+                                samples[n++] = System.nanoTime() - begin;
+                            }
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                        latencies[id] = samples;
+                        counts[id] = n;
+                    }
+                };
+                workers[t].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            log.shutdown();
+            VoltFile.recursivelyDelete(dir);
+
+            int total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            long[] all = new long[total];
+            int pos = 0;
+            long sum = 0;
+            for (int t = 0; t < threads; t++) {
+                System.arraycopy(latencies[t], 0, all, pos, counts[t]);
+                pos += counts[t];
+            }
+            for (long latency : all) {
+                sum += latency;
+            }
+            Arrays.sort(all);
+            System.out.printf("%10d %12d %12d %12d%n", windowMicros, total / seconds,
+                    total == 0 ? 0 : sum / total / 1000,
+                    total == 0 ? 0 : all[(int) (total * 0.99)] / 1000);
+        }
+    }
+}
@@ -56,6 +56,7 @@ import org.voltdb.catalog.Column;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Table;
+import org.voltdb.compiler.AsyncCompilerAgent;
 import org.voltdb.compiler.deploymentfile.DeploymentType;
 import org.voltdb.compiler.deploymentfile.PathsType;
 import org.voltdb.dtxn.SiteTracker;
@@ -309,6 +310,12 @@ public class MockVoltDB implements VoltDBInterface
         return null;
     }
 
+    @Override
+    public AsyncCompilerAgent getAsyncCompilerAgent()
+    {
+        return null;
+    }
+
     public void setConfig(VoltDB.Configuration config)
     {
         voltconfig = config;
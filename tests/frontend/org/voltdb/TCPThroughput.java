@@ -23,6 +23,7 @@
 
 package org.voltdb;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.*;
 import java.nio.channels.*;
@@ -34,9 +35,21 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.HashSet;
 import java.util.ArrayList;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+
+import org.voltcore.network.CipherExecutor;
+import org.voltcore.utils.ssl.SSLConfiguration;
+
 /**
  * A class implementing a throughput test across several TCP sockets. This class implements both the client and the server
  *
+ * With tls=true both sides run a TLS handshake on every socket and encrypt what they send, so the result
+ * can be compared with a plain run to see the cost of TLS. By default every packet is wrapped in its own TLS
+ * record, as a response at a time would be. With batched=true packets are coalesced up to the maximum TLS
+ * record size before they are wrapped, as the batched cipher mode of the server does.
  */
 public class TCPThroughput {
 
@@ -62,15 +75,48 @@ public class TCPThroughput {
         public final int m_port;
         final SelectionKey m_selectionKey;
 
+        /*
+         * TLS state, the engine is null in a plain run. Network input left over from the
+         * handshake is already in m_netIn.
+         */
+        private final SSLEngine m_engine;
+        private final ByteBuffer m_netIn;
+        private final ByteBuffer m_netOut;
+        private final ByteBuffer m_appIn;
+        private final ByteBuffer m_record;
+
         public Port(SocketChannel channel, SelectionKey key, int port) {
+            this(channel, key, port, null, null);
+        }
+
+        public Port(SocketChannel channel, SelectionKey key, int port, SSLEngine engine, ByteBuffer netIn) {
             m_channel = channel;
             m_port = port;
             m_selectionKey = key;
+            m_engine = engine;
+            if (engine != null) {
+                final int packetSize = engine.getSession().getPacketBufferSize();
+                final int appSize = engine.getSession().getApplicationBufferSize();
+                m_netIn = netIn;
+                m_netOut = ByteBuffer.allocateDirect(packetSize + packetsPerRecord * 256);
+                m_netOut.flip();
+                m_appIn = ByteBuffer.allocateDirect(appSize);
+                m_record = ByteBuffer.allocateDirect(packetsPerRecord * expectedPacketSize);
+            } else {
+                m_netIn = null;
+                m_netOut = null;
+                m_appIn = null;
+                m_record = null;
+            }
         }
 
         //protected int m_readyOps = 0;
 
         public void handleWork() {
+            if (m_engine != null) {
+                handleTLSWork();
+                return;
+            }
             try {
                 m_buffer.clear();
                 if (m_selectionKey.isReadable()) {
@@ -87,6 +133,104 @@ public class TCPThroughput {
                 addToChangeList(this);
             }
         }
+
+        private void handleTLSWork() {
+            try {
+                if (m_selectionKey.isReadable()) {
+                    if (m_channel.read(m_netIn) < 0) {
+                        throw new EOFException("Connection closed by peer");
+                    }
+                    m_netIn.flip();
+                    SSLEngineResult result;
+                    do {
+                        m_appIn.clear();
+                        result = m_engine.unwrap(m_netIn, m_appIn);
+                        bytesReceived.addAndGet(result.bytesProduced());
+                    } while (result.getStatus() == SSLEngineResult.Status.OK && m_netIn.hasRemaining());
+                    m_netIn.compact();
+                }
+                if (m_selectionKey.isWritable()) {
+                    if (!m_netOut.hasRemaining()) {
+                        m_netOut.clear();
+                        if (batchRecords) {
+                            m_record.clear();
+                            m_engine.wrap(m_record, m_netOut);
+                        } else {
+                            for (int ii = 0; ii < packetsPerRecord; ii++) {
+                                m_buffer.clear();
+                                m_engine.wrap(m_buffer, m_netOut);
+                            }
+                        }
+                        m_netOut.flip();
+                    }
+                    bytesSent.addAndGet(m_channel.write(m_netOut));
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                isDead = true;
+            } finally {
+                addToChangeList(this);
+            }
+        }
+    }
+
+    /**
+     * @return a TLS engine for a new connection, or null if the run is plain
+     */
+    private static SSLEngine newEngine(boolean clientMode) {
+        if (sslContext == null) {
+            return null;
+        }
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(clientMode);
+        return engine;
+    }
+
+    /**
+     * Run a TLS handshake on a blocking channel.
+     * @return the network input buffer, holding anything received past the end of the handshake
+     */
+    private static ByteBuffer handshake(SocketChannel channel, SSLEngine engine) throws IOException {
+        final ByteBuffer netIn = ByteBuffer.allocateDirect(engine.getSession().getPacketBufferSize() * 4);
+        final ByteBuffer netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        final ByteBuffer appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+        final ByteBuffer empty = ByteBuffer.allocate(0);
+
+        engine.beginHandshake();
+        HandshakeStatus status = engine.getHandshakeStatus();
+        while (status != HandshakeStatus.FINISHED && status != HandshakeStatus.NOT_HANDSHAKING) {
+            switch (status) {
+            case NEED_WRAP:
+                netOut.clear();
+                status = engine.wrap(empty, netOut).getHandshakeStatus();
+                netOut.flip();
+                while (netOut.hasRemaining()) {
+                    channel.write(netOut);
+                }
+                break;
+            case NEED_UNWRAP:
+                netIn.flip();
+                SSLEngineResult result = engine.unwrap(netIn, appIn);
+                netIn.compact();
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                    if (channel.read(netIn) < 0) {
+                        throw new EOFException("Connection closed during TLS handshake");
+                    }
+                }
+                status = result.getHandshakeStatus();
+                break;
+            case NEED_TASK:
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+                status = engine.getHandshakeStatus();
+                break;
+            default:
+                throw new IllegalStateException("Invalid TLS handshake status " + status);
+            }
+        }
+        return netIn;
     }
 
     /*
@@ -134,6 +278,14 @@ public class TCPThroughput {
     private static String addressString = "localhost";
     private static InetAddress address;
 
+    private static boolean tls = false;
+    private static boolean batchRecords = false;
+    private static String keyStore = "tests/frontend/org/voltdb/keystore";
+    private static String keyStorePassword = "password";
+    private static SSLContext sslContext = null;
+    // whole packets that fit in a TLS record
+    private static int packetsPerRecord = 1;
+
     /**
      * Called by the selection thread to process any ports added to the changelist. Closes ports that have died due to an IOException
      * and sets the interest ops for ports that have finished handling work.
@@ -208,9 +360,23 @@ public class TCPThroughput {
                 addressString = parts[1];
             } else if (parts[0].equals("seconds")) {
                 seconds = Integer.parseInt(parts[1]);
+            } else if (parts[0].equals("tls")) {
+                tls = Boolean.parseBoolean(parts[1]);
+            } else if (parts[0].equals("batched")) {
+                batchRecords = Boolean.parseBoolean(parts[1]);
+            } else if (parts[0].equals("keystore")) {
+                keyStore = parts[1];
+            } else if (parts[0].equals("keystorepassword")) {
+                keyStorePassword = parts[1];
             }
         }
 
+        if (tls) {
+            sslContext = SSLConfiguration.createSslContext(
+                    new SSLConfiguration.SslConfig(keyStore, keyStorePassword, keyStore, keyStorePassword));
+            packetsPerRecord = Math.max(1, CipherExecutor.FRAME_SIZE / expectedPacketSize);
+        }
+
         try {
             address = InetAddress.getByName(addressString);
         } catch (UnknownHostException e) {
@@ -252,9 +418,11 @@ public class TCPThroughput {
                     tempsocket.setSendBufferSize(16777216);
                     tempsocketchannel.configureBlocking(true);
                     tempsocketchannel.connect(new InetSocketAddress( address, port + ii));
+                    SSLEngine engine = newEngine(true);
+                    ByteBuffer netIn = engine == null ? null : handshake(tempsocketchannel, engine);
                     tempsocketchannel.configureBlocking(false);
                     SelectionKey key = tempsocketchannel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-                    Port p = new Port(tempsocketchannel, key, ii);
+                    Port p = new Port(tempsocketchannel, key, ii, engine, netIn);
                     key.attach(p);
                     m_ports.add(p);
                 } catch (UnknownHostException e) {
@@ -376,10 +544,12 @@ public class TCPThroughput {
                         assert client != null;
                         tempsocket.setTcpNoDelay(false);
 
+                        SSLEngine engine = newEngine(false);
+                        ByteBuffer netIn = engine == null ? null : handshake(client, engine);
                         client.configureBlocking(false);
                         SelectionKey clientKey = client.register(selector,
                                 SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-                        Port newPort = new Port(client, clientKey, port);
+                        Port newPort = new Port(client, clientKey, port, engine, netIn);
                         synchronized (selectedPorts) {
                             m_ports.add(newPort);
                         }
@@ -0,0 +1,325 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltdb.CommandLog.CompletionChecks;
+import org.voltdb.iv2.SpScheduler.DurableUniqueIdListener;
+import org.voltdb.iv2.TransactionTask;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.utils.VoltFile;
+
+import com.google_voltpatches.common.collect.ImmutableSet;
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.SettableFuture;
+
+public class TestFileCommandLog {
+
+    private File m_dir;
+    private FileCommandLog m_log;
+
+    /**
+     * Records which transactions were reported durable, and checks that they
+     * were on disk by then.
+     */
+    class RecordingListener implements CommandLog.DurabilityListener {
+        final int m_partitionId;
+        // only touched from the log writer thread
+        long m_added = 0;
+        List<Long> m_pending = new ArrayList<Long>();
+        final List<Long> m_durable = Collections.synchronizedList(new ArrayList<Long>());
+        volatile boolean m_durableBeforeWritten = false;
+
+        RecordingListener(int partitionId) {
+            m_partitionId = partitionId;
+        }
+
+        @Override
+        public void setUniqueIdListener(DurableUniqueIdListener listener) {}
+
+        @Override
+        public int getPartitionId() {
+            return m_partitionId;
+        }
+
+        @Override
+        public void createFirstCompletionCheck(boolean isSyncLogging, boolean commandLoggingEnabled) {}
+
+        @Override
+        public boolean completionCheckInitialized() {
+            return true;
+        }
+
+        @Override
+        public void addTransaction(TransactionTask pendingTask) {
+            m_pending.add(++m_added);
+        }
+
+        @Override
+        public void initializeLastDurableUniqueId(long uniqueId) {}
+
+        @Override
+        public int getNumberOfTasks() {
+            return m_pending.size();
+        }
+
+        @Override
+        public CompletionChecks startNewTaskList(int nextMaxRowCnt) {
+            final List<Long> tasks = m_pending;
+            m_pending = new ArrayList<Long>(nextMaxRowCnt);
+            return new CompletionChecks() {
+                @Override
+                public CompletionChecks startNewCheckList(int startSize) { return null; }
+                @Override
+                public void addTask(TransactionTask task) {}
+                @Override
+                public void setLastDurableUniqueId(long uniqueId) {}
+                @Override
+                public boolean isChanged() { return !tasks.isEmpty(); }
+                @Override
+                public int getTaskListSize() { return tasks.size(); }
+                @Override
+                public void processChecks() {
+                    try {
+                        if (readAll().size() < m_durable.size() + tasks.size()) {
+                            m_durableBeforeWritten = true;
+                        }
+                    } catch (IOException e) {
+                        m_durableBeforeWritten = true;
+                    }
+                    m_durable.addAll(tasks);
+                }
+            };
+        }
+
+        @Override
+        public void processDurabilityChecks(CompletionChecks completionChecks) {
+            completionChecks.processChecks();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        m_dir = File.createTempFile("TestFileCommandLog", "");
+        m_dir.delete();
+        m_dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_log != null) {
+            m_log.shutdown();
+        }
+        VoltFile.recursivelyDelete(m_dir);
+    }
+
+    private FileCommandLog start(boolean synchronous, int segmentSize) {
+        m_log = new FileCommandLog(synchronous, 1, TimeUnit.MICROSECONDS.toNanos(500), Integer.MAX_VALUE,
+                                   m_dir, segmentSize);
+        m_log.init(0, Long.MIN_VALUE, 2, null, null);
+        return m_log;
+    }
+
+    private static Iv2InitiateTaskMessage message(long txnId, boolean isSinglePartition) {
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+        invocation.setProcName("Insert");
+        invocation.setParams(txnId, "value " + txnId);
+        return new Iv2InitiateTaskMessage(0, 0, 0, txnId, txnId, false, isSinglePartition, invocation, 0, 0, false);
+    }
+
+    private ListenableFuture<Object> log(RecordingListener listener, long txnId, int[] involved) {
+        return m_log.log(message(txnId, involved == null), txnId, involved, listener, null);
+    }
+
+    private List<FileCommandLog.LogEntry> readAll() throws IOException {
+        List<FileCommandLog.LogEntry> entries = new ArrayList<FileCommandLog.LogEntry>();
+        for (File segment : FileCommandLog.segmentFiles(m_dir)) {
+            entries.addAll(FileCommandLog.readSegment(segment));
+        }
+        return entries;
+    }
+
+    private static void waitFor(List<Long> durable, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (durable.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, durable.size());
+    }
+
+    @Test
+    public void testSyncLogging() throws Exception {
+        start(true, 1024 * 1024);
+        assertTrue(m_log.isSynchronous());
+        assertFalse(m_log.canOfferTask());
+
+        RecordingListener listener = new RecordingListener(3);
+        for (long txnId = 1; txnId <= 100; txnId++) {
+            // sync logging runs the task once it is durable, there is no future
+            assertNull(log(listener, txnId, null));
+        }
+        waitFor(listener.m_durable, 100);
+        assertFalse(listener.m_durableBeforeWritten);
+
+        List<FileCommandLog.LogEntry> entries = readAll();
+        assertEquals(100, entries.size());
+        for (int i = 0; i < 100; i++) {
+            FileCommandLog.LogEntry entry = entries.get(i);
+            assertTrue(entry.isInvocation());
+            assertEquals(3, entry.partitionId);
+            assertEquals(i + 1, entry.spHandle);
+            assertNull(entry.involvedPartitions);
+            assertEquals(i + 1, entry.message.getTxnId());
+            assertEquals("Insert", entry.message.getStoredProcedureInvocation().getProcName());
+            assertEquals("value " + (i + 1),
+                         entry.message.getStoredProcedureInvocation().getParams().toArray()[1]);
+        }
+    }
+
+    @Test
+    public void testAsyncLogging() throws Exception {
+        start(false, 1024 * 1024);
+        assertTrue(m_log.canOfferTask());
+
+        RecordingListener listener = new RecordingListener(0);
+        ListenableFuture<Object> future = log(listener, 1, new int[] {0, 1});
+        // not backpressured, the task can run right away
+        assertNotNull(future);
+        assertTrue(future.isDone());
+        waitFor(listener.m_durable, 1);
+
+        FileCommandLog.LogEntry entry = readAll().get(0);
+        assertFalse(entry.message.isSinglePartition());
+        assertEquals(2, entry.involvedPartitions.length);
+        assertEquals(1, entry.involvedPartitions[1]);
+    }
+
+    @Test
+    public void testSegmentRolling() throws Exception {
+        start(true, 4096);
+        RecordingListener first = new RecordingListener(0);
+        RecordingListener second = new RecordingListener(1);
+        for (long txnId = 1; txnId <= 200; txnId++) {
+            log(txnId % 2 == 0 ? first : second, txnId, null);
+        }
+        waitFor(first.m_durable, 100);
+        waitFor(second.m_durable, 100);
+
+        assertTrue(FileCommandLog.segmentFiles(m_dir).size() > 2);
+        List<FileCommandLog.LogEntry> entries = readAll();
+        assertEquals(200, entries.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i + 1, entries.get(i).message.getTxnId());
+            assertEquals((i + 1) % 2 == 0 ? 0 : 1, entries.get(i).partitionId);
+        }
+    }
+
+    @Test
+    public void testFaultEntry() throws Exception {
+        start(true, 1024 * 1024);
+        SettableFuture<Boolean> written = m_log.logIv2Fault(5, ImmutableSet.of(6L, 7L), 2, 42);
+        assertTrue(written.get(10, TimeUnit.SECONDS));
+
+        FileCommandLog.LogEntry entry = readAll().get(0);
+        assertFalse(entry.isInvocation());
+        assertEquals(2, entry.partitionId);
+        assertEquals(42, entry.spHandle);
+        assertEquals(5, entry.writerHSId);
+        assertEquals(ImmutableSet.of(6L, 7L), entry.survivors);
+    }
+
+    @Test
+    public void testTornEntry() throws Exception {
+        start(true, 1024 * 1024);
+        RecordingListener listener = new RecordingListener(0);
+        for (long txnId = 1; txnId <= 10; txnId++) {
+            log(listener, txnId, null);
+        }
+        waitFor(listener.m_durable, 10);
+        m_log.shutdown();
+        m_log = null;
+
+        // Flip a byte in the middle of the last entry, as if it was only partially written.
+        File segment = FileCommandLog.segmentFiles(m_dir).get(0);
+        List<FileCommandLog.LogEntry> entries = FileCommandLog.readSegment(segment);
+        long end = FileCommandLog.SEGMENT_HEADER_SIZE;
+        for (FileCommandLog.LogEntry entry : entries) {
+            end += FileCommandLog.ENTRY_HEADER_SIZE + 1 + 4 + 8 + 4 + entry.message.getSerializedSize();
+        }
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        try {
+            raf.seek(end - 10);
+            raf.write(raf.read() ^ 0xff);
+        } finally {
+            raf.close();
+        }
+        assertEquals(9, FileCommandLog.readSegment(segment).size());
+    }
+
+    @Test
+    public void testLogBeforeInit() throws Exception {
+        m_log = new FileCommandLog(true, 1, 0, Integer.MAX_VALUE, m_dir, 1024 * 1024);
+        assertTrue(m_log.needsInitialization());
+        // restore and replay happen before init, they are not logged
+        assertTrue(m_log.canOfferTask());
+        assertNull(m_log.log(message(1, true), 1, null, new RecordingListener(0), null));
+        m_log.shutdown();
+        m_log = null;
+        assertTrue(FileCommandLog.segmentFiles(m_dir).isEmpty());
+    }
+
+    @Test
+    public void testInitBetweenLogAndOffer() throws Exception {
+        m_log = new FileCommandLog(true, 1, 0, Integer.MAX_VALUE, m_dir, 1024 * 1024);
+        RecordingListener listener = new RecordingListener(0);
+        // The log was not initialized when the task arrived, so it was not queued
+        // and the site has to offer it even though init finished in the meantime
+        assertNull(log(listener, 1, null));
+        m_log.init(0, Long.MIN_VALUE, 2, null, null);
+        assertTrue(m_log.canOfferTask());
+
+        // From now on the log hands tasks back once they are durable
+        assertNull(log(listener, 2, null));
+        assertFalse(m_log.canOfferTask());
+        waitFor(listener.m_durable, 1);
+        assertEquals(1, readAll().size());
+        assertEquals(2, readAll().get(0).spHandle);
+    }
+}
@@ -0,0 +1,332 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.voltdb.AuthSystem.AuthUser;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+import org.voltdb.common.Permission;
+import org.voltdb.iv2.MpInitiator;
+
+public class TestInternalConnectionHandler {
+
+    private static final VoltTable.ColumnInfo[] COLUMNS = new VoltTable.ColumnInfo[] {
+        new VoltTable.ColumnInfo("ID", VoltType.INTEGER),
+        new VoltTable.ColumnInfo("NAME", VoltType.STRING)
+    };
+
+    private static final InternalConnectionContext CALLER = new InternalConnectionContext() {
+        @Override
+        public String getName() {
+            return "TestImporter";
+        }
+    };
+
+    /** Counts the outcome reported for each row. */
+    static class CountingStats implements InternalConnectionStatsCollector {
+        int m_successes = 0;
+        int m_failures = 0;
+        int m_retries = 0;
+
+        @Override
+        public synchronized void reportCompletion(String callerName, String procName, ClientResponse response) {
+            assertEquals(CALLER.getName(), callerName);
+            switch (response.getStatus()) {
+            case ClientResponse.SUCCESS:
+                m_successes++;
+                break;
+            case ClientResponse.RESPONSE_UNKNOWN:
+                m_retries++;
+                break;
+            default:
+                m_failures++;
+            }
+        }
+    }
+
+    /** Records the responses the caller's callback receives. */
+    static class RecordingCallback implements ProcedureCallback {
+        final List<ClientResponse> m_responses = new ArrayList<ClientResponse>();
+
+        @Override
+        public void clientCallback(ClientResponse response) {
+            m_responses.add(response);
+        }
+    }
+
+    /**
+     * Answers every single row invocation at once, rows whose name is "bad" fail.
+     */
+    static class RowHandler extends InternalConnectionHandler {
+        final List<Object[]> m_rows = new ArrayList<Object[]>();
+
+        @Override
+        void callProcedureForBatch(InternalConnectionContext caller, Function<Integer, Boolean> backPressurePredicate,
+                BatchCallback batchCallback, String proc, Object[] row) {
+            m_rows.add(row);
+            byte status = "bad".equals(row[1]) ? ClientResponse.GRACEFUL_FAILURE : ClientResponse.SUCCESS;
+            batchCallback.complete(1, response(status));
+        }
+    }
+
+    private static ClientResponse response(byte status) {
+        return new ClientResponseImpl(status, new VoltTable[0], null);
+    }
+
+    private static List<Object[]> rows(Object[]... rows) {
+        return new ArrayList<Object[]>(Arrays.asList(rows));
+    }
+
+    @BeforeClass
+    public static void setUp() {
+        TheHashinator.initialize(TheHashinator.getConfiguredHashinatorClass(), TheHashinator.getConfigureBytes(8));
+    }
+
+    @Test
+    public void testGroupByPartition() {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < 100; i++) {
+            rows.add(new Object[] { i, "row" + i });
+        }
+        List<Object[]> unloadable = new ArrayList<Object[]>();
+        Map<Integer, InternalConnectionHandler.PartitionLoad> loads =
+                InternalConnectionHandler.groupByPartition(COLUMNS, 0, rows, unloadable);
+
+        assertTrue(unloadable.isEmpty());
+        assertTrue("100 keys should hash to several partitions", loads.size() > 1);
+        int total = 0;
+        for (Map.Entry<Integer, InternalConnectionHandler.PartitionLoad> e : loads.entrySet()) {
+            InternalConnectionHandler.PartitionLoad load = e.getValue();
+            assertEquals(load.m_rows.size(), load.m_table.getRowCount());
+            load.m_table.resetRowPosition();
+            int previous = -1;
+            while (load.m_table.advanceRow()) {
+                int id = (int) load.m_table.getLong(0);
+                // every row in the partition it hashes to, in the order it was given
+                assertEquals((int) e.getKey(), TheHashinator.getPartitionForParameter(VoltType.INTEGER, id));
+                assertTrue(id > previous);
+                previous = id;
+            }
+            assertEquals(TheHashinator.getPartitionForParameter(VoltType.INTEGER, load.m_partitionValue), (int) e.getKey());
+            total += load.m_rows.size();
+        }
+        assertEquals(rows.size(), total);
+    }
+
+    @Test
+    public void testGroupReplicated() {
+        List<Object[]> unloadable = new ArrayList<Object[]>();
+        Map<Integer, InternalConnectionHandler.PartitionLoad> loads = InternalConnectionHandler.groupByPartition(
+                COLUMNS, -1, rows(new Object[] { 1, "a" }, new Object[] { 2, "b" }), unloadable);
+
+        assertTrue(unloadable.isEmpty());
+        assertEquals(1, loads.size());
+        assertEquals(2, loads.get(MpInitiator.MP_INIT_PID).m_table.getRowCount());
+    }
+
+    @Test
+    public void testGroupUnloadableRows() {
+        Object[] wrongWidth = new Object[] { 1 };
+        Object[] wrongType = new Object[] { "not a number", "a" };
+        Object[] nullKey = new Object[] { null, "b" };
+        Object[] good = new Object[] { 4, "c" };
+        // a string that parses is converted like a procedure parameter would be
+        Object[] converted = new Object[] { "5", "d" };
+        List<Object[]> unloadable = new ArrayList<Object[]>();
+        Map<Integer, InternalConnectionHandler.PartitionLoad> loads = InternalConnectionHandler.groupByPartition(
+                COLUMNS, 0, rows(wrongWidth, wrongType, nullKey, good, converted), unloadable);
+
+        assertEquals(Arrays.asList(wrongWidth, wrongType, nullKey), unloadable);
+        int loaded = 0;
+        for (InternalConnectionHandler.PartitionLoad load : loads.values()) {
+            loaded += load.m_rows.size();
+        }
+        assertEquals(2, loaded);
+    }
+
+    @Test
+    public void testCallbackCountsRows() throws Exception {
+        CountingStats stats = new CountingStats();
+        RecordingCallback cb = new RecordingCallback();
+        // three rows plus the count held while queueing
+        InternalConnectionHandler.BatchCallback batch =
+                new InternalConnectionHandler.BatchCallback(CALLER, stats, cb, "T.insert", 4);
+
+        batch.complete(2, response(ClientResponse.SUCCESS));
+        batch.retried(1);
+        batch.complete(1, response(ClientResponse.GRACEFUL_FAILURE));
+        assertTrue("callback fired while the batch was still being queued", cb.m_responses.isEmpty());
+        batch.complete(1, null);
+
+        assertEquals(1, cb.m_responses.size());
+        assertEquals(ClientResponse.GRACEFUL_FAILURE, cb.m_responses.get(0).getStatus());
+        assertEquals(2, stats.m_successes);
+        assertEquals(1, stats.m_failures);
+        assertEquals(1, stats.m_retries);
+    }
+
+    @Test
+    public void testServerUnavailableTakesPrecedence() {
+        RecordingCallback cb = new RecordingCallback();
+        InternalConnectionHandler.BatchCallback batch =
+                new InternalConnectionHandler.BatchCallback(CALLER, null, cb, "T.insert", 3);
+
+        batch.complete(1, response(ClientResponse.GRACEFUL_FAILURE));
+        ClientResponse unavailable = response(ClientResponse.SERVER_UNAVAILABLE);
+        batch.complete(1, unavailable);
+        batch.complete(1, response(ClientResponse.USER_ABORT));
+
+        assertEquals(1, cb.m_responses.size());
+        assertSame(unavailable, cb.m_responses.get(0));
+    }
+
+    @Test
+    public void testEmptyBatchSucceeds() {
+        CountingStats stats = new CountingStats();
+        RecordingCallback cb = new RecordingCallback();
+        new InternalConnectionHandler.BatchCallback(CALLER, stats, cb, "T.insert", 1).complete(1, null);
+
+        assertEquals(1, cb.m_responses.size());
+        assertEquals(ClientResponse.SUCCESS, cb.m_responses.get(0).getStatus());
+        assertEquals(0, stats.m_successes + stats.m_failures);
+    }
+
+    @Test
+    public void testLoadSuccessReportsEveryRow() throws Exception {
+        RowHandler handler = new RowHandler();
+        CountingStats stats = new CountingStats();
+        RecordingCallback cb = new RecordingCallback();
+        List<Object[]> rows = rows(new Object[] { 1, "a" }, new Object[] { 2, "b" }, new Object[] { 3, "c" });
+        InternalConnectionHandler.BatchCallback batch =
+                new InternalConnectionHandler.BatchCallback(CALLER, stats, cb, "T.insert", rows.size());
+
+        ProcedureCallback load = handler.loadCallback(CALLER, batch, "T.insert", rows);
+        load.clientCallback(response(ClientResponse.RESPONSE_UNKNOWN));
+        assertTrue(cb.m_responses.isEmpty());
+        load.clientCallback(response(ClientResponse.SUCCESS));
+
+        assertTrue("a successful load must not be retried", handler.m_rows.isEmpty());
+        assertEquals(1, cb.m_responses.size());
+        assertEquals(ClientResponse.SUCCESS, cb.m_responses.get(0).getStatus());
+        assertEquals(3, stats.m_successes);
+        assertEquals(3, stats.m_retries);
+    }
+
+    @Test
+    public void testFailedLoadRetriesRowByRow() throws Exception {
+        RowHandler handler = new RowHandler();
+        CountingStats stats = new CountingStats();
+        RecordingCallback cb = new RecordingCallback();
+        List<Object[]> rows = rows(new Object[] { 1, "a" }, new Object[] { 2, "bad" }, new Object[] { 3, "c" });
+        InternalConnectionHandler.BatchCallback batch =
+                new InternalConnectionHandler.BatchCallback(CALLER, stats, cb, "T.insert", rows.size());
+
+        handler.loadCallback(CALLER, batch, "T.insert", rows).clientCallback(response(ClientResponse.GRACEFUL_FAILURE));
+
+        assertEquals(rows, handler.m_rows);
+        assertEquals(1, cb.m_responses.size());
+        assertEquals(ClientResponse.GRACEFUL_FAILURE, cb.m_responses.get(0).getStatus());
+        // only the bad row is a failure, the load's own failure isn't counted
+        assertEquals(2, stats.m_successes);
+        assertEquals(1, stats.m_failures);
+    }
+
+    @Test
+    public void testServerUnavailableLoadIsNotRetried() throws Exception {
+        RowHandler handler = new RowHandler();
+        CountingStats stats = new CountingStats();
+        RecordingCallback cb = new RecordingCallback();
+        List<Object[]> rows = rows(new Object[] { 1, "a" }, new Object[] { 2, "b" });
+        InternalConnectionHandler.BatchCallback batch =
+                new InternalConnectionHandler.BatchCallback(CALLER, stats, cb, "T.insert", rows.size());
+
+        handler.loadCallback(CALLER, batch, "T.insert", rows).clientCallback(response(ClientResponse.SERVER_UNAVAILABLE));
+
+        assertTrue(handler.m_rows.isEmpty());
+        assertEquals(ClientResponse.SERVER_UNAVAILABLE, cb.m_responses.get(0).getStatus());
+        assertEquals(2, stats.m_failures);
+    }
+
+    @Test
+    public void testBulkLoadPermission() {
+        Procedure insert = mock(Procedure.class);
+        when(insert.getTypeName()).thenReturn("T.insert");
+        when(insert.getDefaultproc()).thenReturn(true);
+        when(insert.getReadonly()).thenReturn(false);
+
+        AuthUser authDisabled = mock(AuthUser.class);
+        when(authDisabled.isAuthEnabled()).thenReturn(false);
+        assertTrue(InternalConnectionHandler.mayBulkLoad(authDisabled, insert));
+
+        AuthUser allowed = mock(AuthUser.class);
+        when(allowed.isAuthEnabled()).thenReturn(true);
+        when(allowed.hasPermission(Permission.DEFAULTPROC)).thenReturn(true);
+        assertTrue(InternalConnectionHandler.mayBulkLoad(allowed, insert));
+
+        AuthUser denied = mock(AuthUser.class);
+        when(denied.isAuthEnabled()).thenReturn(true);
+        when(denied.hasPermission(any(Permission.class))).thenReturn(false);
+        assertFalse(InternalConnectionHandler.mayBulkLoad(denied, insert));
+    }
+
+    @Test
+    public void testLoadSysprocAcceptedOnlyForImporter() {
+        Procedure load = mock(Procedure.class);
+        when(load.getSystemproc()).thenReturn(true);
+        when(load.getReadonly()).thenReturn(false);
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+        invocation.setProcName("@LoadSinglepartitionTable");
+        InvocationSysprocPermissionPolicy policy = new InvocationSysprocPermissionPolicy();
+
+        AuthSystem.InternalImporterUser importer = mock(AuthSystem.InternalImporterUser.class);
+        when(importer.hasPermission(Permission.DEFAULTPROC)).thenReturn(true);
+        assertEquals(InvocationPermissionPolicy.PolicyResult.ALLOW, policy.shouldAccept(importer, invocation, load));
+
+        // any other user still needs admin
+        AuthUser user = mock(AuthUser.class);
+        when(user.hasPermission(Permission.DEFAULTPROC)).thenReturn(true);
+        assertEquals(InvocationPermissionPolicy.PolicyResult.DENY, policy.shouldAccept(user, invocation, load));
+
+        // and so does the importer for any other sysproc
+        invocation.setProcName("@UpdateApplicationCatalog");
+        assertEquals(InvocationPermissionPolicy.PolicyResult.DENY, policy.shouldAccept(importer, invocation, load));
+    }
+}
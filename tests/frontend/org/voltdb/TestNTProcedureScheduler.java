@@ -0,0 +1,191 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestNTProcedureScheduler {
+
+    // runs nothing until told to, so the test decides when invocations start
+    private final List<Runnable> m_executed = new ArrayList<>();
+    private final List<String> m_started = new ArrayList<>();
+    private final List<String> m_rejected = new ArrayList<>();
+    // number of upcoming executions the executor turns away
+    private int m_rejectCount = 0;
+    private NTProcedureScheduler m_scheduler;
+
+    @Before
+    public void setUp() {
+        m_executed.clear();
+        m_started.clear();
+        m_rejected.clear();
+        m_rejectCount = 0;
+        m_scheduler = new NTProcedureScheduler(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (m_rejectCount > 0) {
+                    m_rejectCount--;
+                    throw new RejectedExecutionException();
+                }
+                m_executed.add(command);
+            }
+        }, 2, 3, 4);
+    }
+
+    private boolean submit(String key, long id) {
+        final String name = key + id;
+        return m_scheduler.submit(key, id, new Runnable() {
+            @Override
+            public void run() {
+                m_started.add(name);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                m_rejected.add(name);
+            }
+        });
+    }
+
+    private void runExecuted() {
+        for (Runnable r : m_executed) {
+            r.run();
+        }
+        m_executed.clear();
+    }
+
+    private Object[] findRow(Object[][] rows, String name) {
+        StatsSource stats = m_scheduler.getStatsSource();
+        for (Object[] row : rows) {
+            if (name.equals(row[stats.columnNameToIndex.get("NAME")])) {
+                return row;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testPerKeyLimit() {
+        // two run, three wait, the sixth is turned away
+        for (long id = 0; id < 5; id++) {
+            assertTrue(submit("slow", id));
+        }
+        assertFalse(submit("slow", 5));
+        assertEquals(2, m_executed.size());
+
+        // another procedure is not held back by the queue of the first
+        assertTrue(submit("fast", 10));
+        assertEquals(3, m_executed.size());
+        runExecuted();
+        assertEquals("[slow0, slow1, fast10]", m_started.toString());
+
+        // a finished invocation hands its slot to the next one of the same key, in order
+        m_scheduler.finished(1);
+        m_scheduler.finished(10);
+        runExecuted();
+        assertEquals("[slow0, slow1, fast10, slow2]", m_started.toString());
+
+        // unknown ids, e.g. nt procs started by other nt procs, are ignored
+        m_scheduler.finished(42);
+        assertEquals(0, m_executed.size());
+    }
+
+    @Test
+    public void testTotalQueueLimit() {
+        for (long id = 0; id < 5; id++) {
+            assertTrue(submit("a", id));
+        }
+        // "a" has 3 waiting, one more from "b" fills the shared queue
+        assertTrue(submit("b", 10));
+        assertTrue(submit("b", 11));
+        assertTrue(submit("b", 12));
+        assertFalse(submit("b", 13));
+        assertEquals(4, m_executed.size());
+    }
+
+    @Test
+    public void testRejectedWhenStarting() {
+        for (long id = 0; id < 5; id++) {
+            assertTrue(submit("slow", id));
+        }
+        runExecuted();
+
+        // the executor turns the first waiting invocation away, its caller
+        // is told and the next one takes the slot
+        m_rejectCount = 1;
+        m_scheduler.finished(0);
+        assertEquals("[slow2]", m_rejected.toString());
+        runExecuted();
+        assertEquals("[slow0, slow1, slow3]", m_started.toString());
+
+        // the last waiting invocation is turned away too, the queue drains
+        m_rejectCount = 1;
+        m_scheduler.finished(1);
+        assertEquals("[slow2, slow4]", m_rejected.toString());
+        assertEquals(0, m_executed.size());
+
+        // the slots did not leak, the key still runs two at a time
+        m_scheduler.finished(3);
+        for (long id = 5; id < 8; id++) {
+            assertTrue(submit("slow", id));
+        }
+        runExecuted();
+        assertEquals("[slow0, slow1, slow3, slow5, slow6]", m_started.toString());
+
+        StatsSource stats = m_scheduler.getStatsSource();
+        Object[] row = findRow(stats.getStatsRows(false, System.currentTimeMillis()), "slow");
+        assertEquals(2, row[stats.columnNameToIndex.get("RUNNING")]);
+        assertEquals(1, row[stats.columnNameToIndex.get("QUEUED")]);
+        assertEquals(5L, row[stats.columnNameToIndex.get("ADMITTED")]);
+        assertEquals(2L, row[stats.columnNameToIndex.get("REJECTED")]);
+    }
+
+    @Test
+    public void testStats() {
+        for (long id = 0; id < 6; id++) {
+            submit("proc", id);
+        }
+        runExecuted();
+
+        StatsSource stats = m_scheduler.getStatsSource();
+        Object[][] rows = stats.getStatsRows(false, System.currentTimeMillis());
+        assertEquals(1, rows.length);
+        Object[] row = findRow(rows, "proc");
+        assertEquals(2, row[stats.columnNameToIndex.get("RUNNING")]);
+        assertEquals(2, row[stats.columnNameToIndex.get("MAX_RUNNING")]);
+        assertEquals(3, row[stats.columnNameToIndex.get("QUEUED")]);
+        assertEquals(2L, row[stats.columnNameToIndex.get("ADMITTED")]);
+        assertEquals(1L, row[stats.columnNameToIndex.get("REJECTED")]);
+        assertTrue((Long) row[stats.columnNameToIndex.get("WAIT_MAX")] >= 0);
+    }
+}
@@ -0,0 +1,185 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.catalog.Table;
+import org.voltdb.client.ClientResponse;
+
+public class TestProcedureResultCache {
+
+    private Database m_db;
+
+    @Before
+    public void setUp() {
+        Catalog catalog = new Catalog();
+        catalog.execute("add / clusters cluster");
+        catalog.execute("add /clusters#cluster databases database");
+        m_db = catalog.getClusters().get("cluster").getDatabases().get("database");
+        addTable("ITEMS", true);
+        addTable("PRICES", true);
+        addTable("ORDERS", false);
+        addProcedure("GetItem", true, true, "ITEMS", "");
+        addProcedure("GetOrder", true, true, "ORDERS,ITEMS", "");
+        addProcedure("CountItems", true, false, "ITEMS", "");
+        addProcedure("UpdateItems", false, false, "", "ITEMS");
+        addProcedure("UpdatePrices", false, false, "", "PRICES");
+    }
+
+    private void addTable(String name, boolean replicated) {
+        Table table = m_db.getTables().add(name);
+        table.setIsreplicated(replicated);
+    }
+
+    private void addProcedure(String name, boolean readOnly, boolean singlePartition,
+            String tablesRead, String tablesUpdated) {
+        Procedure proc = m_db.getProcedures().add(name);
+        proc.setReadonly(readOnly);
+        proc.setSinglepartition(singlePartition);
+        proc.setTransactional(true);
+        Statement stmt = proc.getStatements().add("sql");
+        stmt.setReadonly(readOnly);
+        stmt.setTablesread(tablesRead);
+        stmt.setTablesupdated(tablesUpdated);
+    }
+
+    private static StoredProcedureInvocation invocation(String procName, long clientHandle, Object... params) {
+        StoredProcedureInvocation task = new StoredProcedureInvocation();
+        task.setProcName(procName);
+        task.setClientHandle(clientHandle);
+        task.setParams(params);
+        return task;
+    }
+
+    private static ClientResponseImpl response(long value) {
+        VoltTable table = new VoltTable(new VoltTable.ColumnInfo("VAL", VoltType.BIGINT));
+        table.addRow(value);
+        return new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { table }, "", 0);
+    }
+
+    private ProcedureResultCache.Lookup lookup(ProcedureResultCache cache, String procName,
+            long clientHandle, Object... params) {
+        return cache.lookup(m_db, m_db.getProcedures().get(procName), invocation(procName, clientHandle, params));
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        ProcedureResultCache cache = new ProcedureResultCache("GetItem", 1024 * 1024);
+        ProcedureResultCache.Lookup lookup = lookup(cache, "GetItem", 1, 5);
+        assertNotNull(lookup);
+        assertNull(lookup.getCachedResponse());
+        lookup.complete(response(42));
+
+        lookup = lookup(cache, "GetItem", 2, 5);
+        ClientResponseImpl hit = lookup.getCachedResponse();
+        assertNotNull(hit);
+        assertEquals(2, hit.getClientHandle());
+        assertEquals(ClientResponse.SUCCESS, hit.getStatus());
+        assertEquals(42, hit.getResults()[0].asScalarLong());
+
+        // other parameters are another entry
+        assertNull(lookup(cache, "GetItem", 3, 6).getCachedResponse());
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(1, cache.size());
+        assertTrue(cache.sizeBytes() > 0);
+    }
+
+    @Test
+    public void testOnlyReplicatedReadsAreCached() {
+        ProcedureResultCache cache = new ProcedureResultCache("GetItem,GetOrder,CountItems,UpdateItems", 1024 * 1024);
+        assertNotNull(lookup(cache, "GetItem", 1, 5));
+        // reads a partitioned table
+        assertNull(lookup(cache, "GetOrder", 1, 5));
+        // multi partition
+        assertNull(lookup(cache, "CountItems", 1));
+        // not read only
+        assertNull(lookup(cache, "UpdateItems", 1));
+        // not named
+        assertNull(new ProcedureResultCache("GetOrder", 1024).lookup(
+                m_db, m_db.getProcedures().get("GetItem"), invocation("GetItem", 1, 5)));
+    }
+
+    @Test
+    public void testWritesInvalidate() {
+        ProcedureResultCache cache = new ProcedureResultCache("GetItem", 1024 * 1024);
+        lookup(cache, "GetItem", 1, 5).complete(response(42));
+
+        // a write to another table leaves the entry alone
+        ProcedureResultCache.recordWrite(m_db, "UpdatePrices");
+        assertNotNull(lookup(cache, "GetItem", 2, 5).getCachedResponse());
+
+        ProcedureResultCache.recordWrite(m_db, "UpdateItems");
+        ProcedureResultCache.Lookup lookup = lookup(cache, "GetItem", 3, 5);
+        assertNull(lookup.getCachedResponse());
+        assertEquals(1, cache.invalidations());
+        assertEquals(0, cache.size());
+
+        lookup.complete(response(43));
+        assertEquals(43, lookup(cache, "GetItem", 4, 5).getCachedResponse().getResults()[0].asScalarLong());
+
+        // writes to unknown tables invalidate everything
+        ProcedureResultCache.recordWrite(m_db, null);
+        assertNull(lookup(cache, "GetItem", 5, 5).getCachedResponse());
+        assertEquals(2, cache.invalidations());
+    }
+
+    @Test
+    public void testWriteDuringTransactionIsNotCached() {
+        ProcedureResultCache cache = new ProcedureResultCache("GetItem", 1024 * 1024);
+        ProcedureResultCache.Lookup lookup = lookup(cache, "GetItem", 1, 5);
+        ProcedureResultCache.recordWrite(m_db, "UpdateItems");
+        lookup.complete(response(42));
+        assertEquals(0, cache.size());
+
+        // nor are failures
+        lookup = lookup(cache, "GetItem", 2, 5);
+        lookup.complete(new ClientResponseImpl(ClientResponse.USER_ABORT, new VoltTable[0], "nope", 0));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSizeBound() {
+        ProcedureResultCache cache = new ProcedureResultCache("GetItem", 16 * 1024);
+        for (int i = 0; i < 1000; i++) {
+            ProcedureResultCache.Lookup lookup = lookup(cache, "GetItem", i, i);
+            lookup.complete(response(i));
+            assertTrue(cache.sizeBytes() <= 16 * 1024);
+        }
+        assertTrue(cache.evictions() > 0);
+        assertEquals(1000 - cache.evictions(), cache.size());
+        // the most recent insert survives
+        assertNotNull(lookup(cache, "GetItem", 1000, 999).getCachedResponse());
+    }
+}
@@ -0,0 +1,117 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.voltcore.messaging.Mailbox;
+import org.voltcore.messaging.VoltMessage;
+import org.voltcore.network.Connection;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.messaging.InitiateResponseMessage;
+
+public class TestProcedureRunnerNT {
+
+    // hands out the future the test completes
+    public static class FutureProc extends VoltNonTransactionalProcedure {
+        static CompletableFuture<Long> s_future;
+
+        public CompletableFuture<Long> run() {
+            return s_future;
+        }
+    }
+
+    private NTProcedureService m_service;
+    private Mailbox m_mailbox;
+    private ProcedureRunnerNT m_runner;
+
+    @Before
+    public void setUp() throws Exception {
+        FutureProc.s_future = new CompletableFuture<>();
+        m_service = mock(NTProcedureService.class);
+        m_mailbox = mock(Mailbox.class);
+        m_runner = new ProcedureRunnerNT(1,
+                                         null,
+                                         mock(Connection.class),
+                                         2,
+                                         3,
+                                         new FutureProc(),
+                                         "FutureProc",
+                                         FutureProc.class.getMethod("run"),
+                                         new Class<?>[0],
+                                         null,
+                                         m_service,
+                                         m_mailbox,
+                                         new ProcedureStatsCollector(0, 0, "FutureProc", false,
+                                                                     new ArrayList<String>(), false));
+    }
+
+    private ClientResponse delivered() {
+        ArgumentCaptor<VoltMessage> message = ArgumentCaptor.forClass(VoltMessage.class);
+        verify(m_mailbox).deliver(message.capture());
+        return ((InitiateResponseMessage) message.getValue()).getClientResponseData();
+    }
+
+    @Test
+    public void testFutureCompletes() {
+        assertFalse(m_runner.call());
+        verify(m_service, never()).handleNTProcEnd(any(ProcedureRunnerNT.class));
+
+        FutureProc.s_future.complete(5L);
+        assertEquals(ClientResponse.SUCCESS, delivered().getStatus());
+        verify(m_service).handleNTProcEnd(m_runner);
+    }
+
+    @Test
+    public void testFutureCompletesExceptionally() {
+        assertFalse(m_runner.call());
+
+        // the caller gets an answer and the slot is freed
+        FutureProc.s_future.completeExceptionally(new RuntimeException("failed"));
+        ClientResponseImpl response = (ClientResponseImpl) delivered();
+        assertEquals(ClientResponse.UNEXPECTED_FAILURE, response.getStatus());
+        assertEquals(3, response.getClientHandle());
+        verify(m_service).handleNTProcEnd(m_runner);
+    }
+
+    @Test
+    public void testFutureCancelled() {
+        assertFalse(m_runner.call());
+
+        FutureProc.s_future.cancel(false);
+        assertEquals(ClientResponse.UNEXPECTED_FAILURE, delivered().getStatus());
+        verify(m_service).handleNTProcEnd(m_runner);
+    }
+}
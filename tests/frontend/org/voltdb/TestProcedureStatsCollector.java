@@ -0,0 +1,164 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.voltdb.StatementStats.SingleCallStatsToken;
+
+public class TestProcedureStatsCollector {
+
+    private ProcedureStatsCollector m_stats;
+
+    @Before
+    public void setUp() {
+        m_stats = new ProcedureStatsCollector(0, 1, "TestProc", true,
+                new ArrayList<String>(Arrays.asList("stmt")), true);
+        // time every invocation and every statement
+        m_stats.setProcSamplingInterval(1);
+        m_stats.setStmtSamplingInterval(1);
+    }
+
+    private Object[] findRow(Object[][] rows, String stmtName) {
+        for (Object[] row : rows) {
+            if (stmtName.equals(row[m_stats.columnNameToIndex.get("STATEMENT")])) {
+                return row;
+            }
+        }
+        return null;
+    }
+
+    private long longColumn(Object[] row, String column) {
+        return ((Number) row[m_stats.columnNameToIndex.get(column)]).longValue();
+    }
+
+    private void runProcedure(boolean aborted, long stmtDuration, int paramSize) {
+        SingleCallStatsToken token = m_stats.beginProcedure();
+        token.setParameterSize(paramSize);
+        token.recordStatementStats("stmt", false, false, stmtDuration, null, null);
+        m_stats.endProcedure(aborted, false, token);
+    }
+
+    @Test
+    public void testCumulativeAndIncremental() {
+        runProcedure(false, 100, 10);
+        runProcedure(true, 300, 30);
+
+        Object[][] rows = m_stats.getStatsRows(true, 0L);
+        Object[] proc = findRow(rows, "<ALL>");
+        assertNotNull(proc);
+        assertEquals(2, longColumn(proc, "INVOCATIONS"));
+        assertEquals(2, longColumn(proc, "TIMED_INVOCATIONS"));
+        assertEquals(1, longColumn(proc, "ABORTS"));
+        assertEquals(10, longColumn(proc, "MIN_PARAMETER_SET_SIZE"));
+        assertEquals(30, longColumn(proc, "MAX_PARAMETER_SET_SIZE"));
+        Object[] stmt = findRow(rows, "stmt");
+        assertNotNull(stmt);
+        assertEquals(100, longColumn(stmt, "MIN_EXECUTION_TIME"));
+        assertEquals(300, longColumn(stmt, "MAX_EXECUTION_TIME"));
+        assertEquals(200, longColumn(stmt, "AVG_EXECUTION_TIME"));
+
+        // Nothing ran since the last interval
+        rows = m_stats.getStatsRows(true, 0L);
+        assertNull(findRow(rows, "<ALL>"));
+        assertNull(findRow(rows, "stmt"));
+
+        runProcedure(false, 200, 20);
+
+        rows = m_stats.getStatsRows(true, 0L);
+        proc = findRow(rows, "<ALL>");
+        assertEquals(1, longColumn(proc, "INVOCATIONS"));
+        assertEquals(0, longColumn(proc, "ABORTS"));
+        assertEquals(20, longColumn(proc, "MIN_PARAMETER_SET_SIZE"));
+        assertEquals(20, longColumn(proc, "MAX_PARAMETER_SET_SIZE"));
+        stmt = findRow(rows, "stmt");
+        assertEquals(200, longColumn(stmt, "MIN_EXECUTION_TIME"));
+        assertEquals(200, longColumn(stmt, "MAX_EXECUTION_TIME"));
+
+        // Since the beginning
+        rows = m_stats.getStatsRows(false, 0L);
+        proc = findRow(rows, "<ALL>");
+        assertEquals(3, longColumn(proc, "INVOCATIONS"));
+        assertEquals(1, longColumn(proc, "ABORTS"));
+        assertEquals(10, longColumn(proc, "MIN_PARAMETER_SET_SIZE"));
+        assertEquals(30, longColumn(proc, "MAX_PARAMETER_SET_SIZE"));
+        stmt = findRow(rows, "stmt");
+        assertEquals(3, longColumn(stmt, "INVOCATIONS"));
+        assertEquals(100, longColumn(stmt, "MIN_EXECUTION_TIME"));
+        assertEquals(300, longColumn(stmt, "MAX_EXECUTION_TIME"));
+    }
+
+    @Test
+    public void testPollWhileRecording() throws Exception {
+        final int procCount = 200000;
+        final AtomicBoolean done = new AtomicBoolean(false);
+        Thread site = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < procCount; i++) {
+                    runProcedure(false, 1 + (i % 1000), 8);
+                }
+                done.set(true);
+            }
+        };
+        site.start();
+
+        long invocations = 0;
+        long timedInvocations = 0;
+        long stmtInvocations = 0;
+        boolean finished = false;
+        while (!finished) {
+            finished = done.get();
+            Object[][] rows = m_stats.getStatsRows(true, 0L);
+            Object[] proc = findRow(rows, "<ALL>");
+            if (proc != null) {
+                invocations += longColumn(proc, "INVOCATIONS");
+                timedInvocations += longColumn(proc, "TIMED_INVOCATIONS");
+                assertTrue(longColumn(proc, "MIN_PARAMETER_SET_SIZE") == 8);
+            }
+            Object[] stmt = findRow(rows, "stmt");
+            if (stmt != null) {
+                stmtInvocations += longColumn(stmt, "TIMED_INVOCATIONS");
+                assertTrue(longColumn(stmt, "MIN_EXECUTION_TIME") >= 1);
+                assertTrue(longColumn(stmt, "MAX_EXECUTION_TIME") <= 1000);
+            }
+        }
+        site.join();
+
+        // The intervals add up to everything that was recorded
+        assertEquals(procCount, invocations);
+        assertEquals(procCount, timedInvocations);
+        assertEquals(procCount, stmtInvocations);
+        Object[] proc = findRow(m_stats.getStatsRows(false, 0L), "<ALL>");
+        assertEquals(procCount, longColumn(proc, "INVOCATIONS"));
+    }
+}
@@ -0,0 +1,110 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.voltdb.sysprocs.saverestore.TestTableSaveFileChain.block;
+import static org.voltdb.sysprocs.saverestore.TestTableSaveFileChain.manifest;
+import static org.voltdb.sysprocs.saverestore.TestTableSaveFileChain.writeFile;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltdb.sysprocs.saverestore.SnapshotPathType;
+import org.voltdb.sysprocs.saverestore.SnapshotUtil;
+import org.voltdb.sysprocs.saverestore.SnapshotUtil.Snapshot;
+import org.voltdb.utils.VoltFile;
+
+public class TestRestoreAgentIncrementalChain extends TestCase {
+
+    private File m_dir;
+
+    @Override
+    public void setUp() throws Exception {
+        EELibraryLoader.loadExecutionEngineLibrary(true);
+        m_dir = File.createTempFile("TestRestoreAgentIncrementalChain", "");
+        m_dir.delete();
+        m_dir.mkdirs();
+
+        // newest builds on middle, which builds on base
+        writeFile(m_dir, "base", null, manifest(0, 0), block(0, 0, 1));
+        writeFile(m_dir, "middle", "base", manifest(0, ~0L, 1), block(0, 1, 2));
+        writeFile(m_dir, "newest", "middle", manifest(0, ~0L, ~1L, 2), block(0, 2, 3));
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        VoltFile.recursivelyDelete(m_dir);
+    }
+
+    private Map<String, Snapshot> retrieveSnapshots() {
+        Map<String, Snapshot> snapshots = new HashMap<String, Snapshot>();
+        SnapshotUtil.retrieveSnapshotFiles(m_dir, snapshots, new SnapshotUtil.SnapshotFilter(), false,
+                SnapshotPathType.SNAP_PATH, new VoltLogger("HOST"));
+        return snapshots;
+    }
+
+    private static boolean check(String nonce, Map<String, Snapshot> snapshots, StringBuilder errLog) {
+        return RestoreAgent.checkIncrementalChainIsComplete(snapshots.get(nonce), snapshots, errLog);
+    }
+
+    public void testCompleteChain() {
+        Map<String, Snapshot> snapshots = retrieveSnapshots();
+        StringBuilder errLog = new StringBuilder();
+        assertTrue(check("base", snapshots, errLog));
+        assertTrue(check("middle", snapshots, errLog));
+        assertTrue(check("newest", snapshots, errLog));
+        assertEquals("", errLog.toString());
+    }
+
+    public void testMissingPredecessor() {
+        assertTrue(new File(m_dir, "base-T-host_0.vpt").delete());
+        Map<String, Snapshot> snapshots = retrieveSnapshots();
+        StringBuilder errLog = new StringBuilder();
+        // Every snapshot that builds on it, directly or not, is rejected
+        assertFalse(check("middle", snapshots, errLog));
+        assertFalse(check("newest", snapshots, errLog));
+        assertTrue(errLog.toString(), errLog.toString().contains("snapshot base it builds on"));
+    }
+
+    public void testIncompletePredecessor() throws Exception {
+        // Clear the completed flag that follows the header CRC and length
+        RandomAccessFile file = new RandomAccessFile(new File(m_dir, "middle-T-host_0.vpt"), "rw");
+        try {
+            file.seek(8);
+            file.write(0);
+        } finally {
+            file.close();
+        }
+        Map<String, Snapshot> snapshots = retrieveSnapshots();
+        StringBuilder errLog = new StringBuilder();
+        assertTrue(check("base", snapshots, errLog));
+        assertFalse(check("newest", snapshots, errLog));
+        assertTrue(errLog.toString(), errLog.toString().contains("snapshot middle it builds on"));
+    }
+}
@@ -36,6 +36,7 @@ import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Test;
 import org.voltcore.network.Connection;
@@ -500,6 +501,77 @@ public class TestDistributer extends TestCase {
         }
     }
 
+    @Test
+    public void testQueueBatched() throws Exception {
+        // Invocations queued from several threads are coalesced into batched writes,
+        // the server still sees every one of them and every callback runs once.
+        MockVolt volt0, volt1;
+        volt0 = volt1 = null;
+        try {
+            volt0 = new MockVolt(20000);
+            volt0.start();
+            volt1 = new MockVolt(20001);
+            volt1.start();
+
+            final Distributer dist = new Distributer(false,
+                    ClientConfig.DEFAULT_PROCEDURE_TIMOUT_NANOS,
+                    ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                    false, false, null /* subject */, null);
+            dist.setBatchRequests(true);
+            dist.createConnection("localhost", "", "", 20000, ClientAuthScheme.HASH_SHA1);
+            dist.createConnection("localhost", "", "", 20001, ClientAuthScheme.HASH_SHA1);
+
+            final int threads = 4;
+            final int invocationsPerThread = 500;
+            final AtomicLong nextHandle = new AtomicLong(0);
+            final AtomicInteger callbacks = new AtomicInteger(0);
+            final ProcedureCallback callback = new ProcedureCallback() {
+                @Override
+                public void clientCallback(ClientResponse clientResponse) {
+                    assertEquals(ClientResponse.SUCCESS, clientResponse.getStatus());
+                    callbacks.incrementAndGet();
+                }
+            };
+            Thread senders[] = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                senders[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int j = 0; j < invocationsPerThread; j++) {
+                                ProcedureInvocation pi =
+                                        new ProcedureInvocation(nextHandle.incrementAndGet(), "i1", Integer.valueOf(j));
+                                dist.queue(pi, callback, true, System.nanoTime(), 0);
+                            }
+                        }
+                        catch (NoConnectionsException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                };
+                senders[i].start();
+            }
+            for (Thread sender : senders) {
+                sender.join();
+            }
+            dist.drain();
+
+            assertEquals(threads * invocationsPerThread, callbacks.get());
+            assertEquals(threads * invocationsPerThread,
+                    volt0.handler.roundTrips.get() + volt1.handler.roundTrips.get());
+            // round-robin still spreads the invocations over both connections
+            assertEquals(volt0.handler.roundTrips.get(), volt1.handler.roundTrips.get());
+        }
+        finally {
+            if (volt0 != null) {
+                volt0.shutdown();
+            }
+            if (volt1 != null) {
+                volt1.shutdown();
+            }
+        }
+    }
+
     @Test
     public void testQueueMixed() throws Exception {
         // TODO: write a mock server that can grock ssl
@@ -0,0 +1,196 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client.VoltBulkLoader;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.MockVoltClient;
+import org.voltdb.client.ProcedureCallback;
+
+public class TestPerPartitionTable {
+
+    private static final VoltTable.ColumnInfo[] COLUMNS = new VoltTable.ColumnInfo[] {
+        new VoltTable.ColumnInfo("ID", VoltType.INTEGER),
+        new VoltTable.ColumnInfo("NAME", VoltType.STRING)
+    };
+
+    /**
+     * Answers every load request on the calling thread. A request fails if it carries more
+     * than one row and batches are set to fail, or if any of its rows is named "bad".
+     */
+    static class LoadingClient extends MockVoltClient {
+        final List<Integer> m_requestSizes = new ArrayList<Integer>();
+        volatile boolean m_failBatches = false;
+        volatile RuntimeException m_sendException = null;
+
+        @Override
+        public boolean callProcedure(ProcedureCallback callback, String procName, Object... parameters) {
+            if (m_sendException != null) {
+                throw m_sendException;
+            }
+            VoltTable rows = (VoltTable) parameters[parameters.length - 1];
+            byte status = ClientResponse.SUCCESS;
+            if (m_failBatches && rows.getRowCount() > 1) {
+                status = ClientResponse.GRACEFUL_FAILURE;
+            }
+            // the loader reuses its tables, leave the cursor where it was
+            rows.resetRowPosition();
+            while (rows.advanceRow()) {
+                if ("bad".equals(rows.getString("NAME"))) {
+                    status = ClientResponse.GRACEFUL_FAILURE;
+                }
+            }
+            rows.resetRowPosition();
+            synchronized (m_requestSizes) {
+                m_requestSizes.add(rows.getRowCount());
+            }
+            try {
+                callback.clientCallback(new ClientResponseImpl(status, new VoltTable[0], null));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return true;
+        }
+    }
+
+    private final LoadingClient m_client = new LoadingClient();
+    private PerPartitionTable m_table;
+
+    private PerPartitionTable create(int batchSize) {
+        m_table = new PerPartitionTable(m_client, "T", 0, false, "@LoadSinglepartitionTable", false,
+                                        COLUMNS, new VoltType[] { VoltType.INTEGER, VoltType.STRING },
+                                        0, VoltType.INTEGER, batchSize);
+        return m_table;
+    }
+
+    // Sends what is left and waits for the row by row retries
+    private void shutdown() throws Exception {
+        m_table.shutdown();
+        m_table = null;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_table != null) {
+            shutdown();
+        }
+    }
+
+    // Counts the rows a mocked loader was told are done
+    private static AtomicInteger countCompletions(VoltBulkLoader loader) {
+        final AtomicInteger completed = new AtomicInteger();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                completed.addAndGet((Integer) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(loader).rowsCompleted(anyInt());
+        return completed;
+    }
+
+    @Test
+    public void testBatchesCompleteEachLoadersRows() throws Exception {
+        create(4);
+        VoltBulkLoader first = mock(VoltBulkLoader.class);
+        VoltBulkLoader second = mock(VoltBulkLoader.class);
+        AtomicInteger firstCompleted = countCompletions(first);
+        AtomicInteger secondCompleted = countCompletions(second);
+
+        // Loaders sharing the table end up in the same batches
+        for (int i = 0; i < 10; i++) {
+            m_table.insertRowInTable(new VoltBulkLoaderRow(i % 3 == 0 ? first : second, i, i, "row " + i));
+        }
+        shutdown();
+
+        assertEquals(4, firstCompleted.get());
+        assertEquals(6, secondCompleted.get());
+        // two full batches and the flushed remainder
+        assertEquals(3, m_client.m_requestSizes.size());
+        assertEquals(2, (int) m_client.m_requestSizes.get(2));
+        verify(first, never()).rowFailed(any(VoltBulkLoaderRow.class), any(ClientResponse.class));
+        verify(second, never()).rowFailed(any(VoltBulkLoaderRow.class), any(ClientResponse.class));
+    }
+
+    @Test
+    public void testFailedBatchIsRetriedRowByRow() throws Exception {
+        create(4);
+        m_client.m_failBatches = true;
+        VoltBulkLoader loader = mock(VoltBulkLoader.class);
+        AtomicInteger completed = countCompletions(loader);
+
+        VoltBulkLoaderRow bad = new VoltBulkLoaderRow(loader, 2, 2, "bad");
+        m_table.insertRowInTable(new VoltBulkLoaderRow(loader, 0, 0, "row 0"));
+        m_table.insertRowInTable(new VoltBulkLoaderRow(loader, 1, 1, "row 1"));
+        m_table.insertRowInTable(bad);
+        m_table.insertRowInTable(new VoltBulkLoaderRow(loader, 3, 3, "row 3"));
+        shutdown();
+
+        // the batch, then each of its rows on its own
+        assertEquals(5, m_client.m_requestSizes.size());
+        assertEquals(3, completed.get());
+        verify(loader).rowFailed(eq(bad), any(ClientResponse.class));
+    }
+
+    @Test(timeout = 60000)
+    public void testSendFailureReleasesPermitAndFailsRows() throws Exception {
+        create(1);
+        m_client.m_sendException = new IllegalStateException("serialization failed");
+        VoltBulkLoader loader = mock(VoltBulkLoader.class);
+
+        // More batches than may be in flight, each one must give its permit back
+        final int rowCount = PerPartitionTable.MAX_BATCHES_IN_FLIGHT * 2;
+        for (int i = 0; i < rowCount; i++) {
+            m_table.insertRowInTable(new VoltBulkLoaderRow(loader, i, i, "row " + i));
+        }
+
+        ArgumentCaptor<ClientResponse> responses = ArgumentCaptor.forClass(ClientResponse.class);
+        verify(loader, times(rowCount)).rowFailed(any(VoltBulkLoaderRow.class), responses.capture());
+        for (ClientResponse response : responses.getAllValues()) {
+            assertEquals(ClientResponse.UNEXPECTED_FAILURE, response.getStatus());
+        }
+        verify(loader, never()).rowsCompleted(anyInt());
+    }
+}
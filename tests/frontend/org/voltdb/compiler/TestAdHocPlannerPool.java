@@ -0,0 +1,165 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+
+public class TestAdHocPlannerPool {
+    private AdHocPlannerPool m_pool = null;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (m_pool != null) {
+            m_pool.shutdown();
+        }
+    }
+
+    /**
+     * Every worker should be able to plan at the same time.
+     */
+    @Test
+    public void testWorkersRunConcurrently() throws InterruptedException {
+        final int poolSize = 4;
+        m_pool = new AdHocPlannerPool("Test Planner", poolSize, 10);
+        final CountDownLatch allRunning = new CountDownLatch(poolSize);
+        final Semaphore release = new Semaphore(0);
+        for (int i = 0; i < poolSize; i++) {
+            // one connection per worker
+            assertTrue(m_pool.submit(i, new Runnable() {
+                @Override
+                public void run() {
+                    allRunning.countDown();
+                    release.acquireUninterruptibly();
+                }
+            }));
+        }
+        // deadlocks with a single planner thread
+        assertTrue(allRunning.await(60, TimeUnit.SECONDS));
+        assertEquals(0, m_pool.getQueueDepth());
+        release.release(poolSize);
+    }
+
+    /**
+     * Work beyond the running requests plus the queue depth is rejected,
+     * and the pool accepts work again once it drains.
+     */
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        final int poolSize = 2;
+        final int maxQueueDepth = 5;
+        m_pool = new AdHocPlannerPool("Test Planner", poolSize, maxQueueDepth);
+        final Semaphore release = new Semaphore(0);
+        final CountDownLatch done = new CountDownLatch(poolSize + maxQueueDepth);
+        Runnable blocker = new Runnable() {
+            @Override
+            public void run() {
+                release.acquireUninterruptibly();
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < poolSize + maxQueueDepth; i++) {
+            assertTrue(m_pool.submit(i, blocker));
+        }
+        assertTrue(m_pool.isFull());
+        assertFalse(m_pool.submit(0, blocker));
+
+        StatsSource stats = m_pool.getStatsSource();
+        VoltTable table = new VoltTable(stats.getColumnSchema().toArray(new ColumnInfo[0]));
+        for (Object[] row : stats.getStatsRows(false, System.currentTimeMillis())) {
+            table.addRow(row);
+        }
+        assertEquals(poolSize, table.getRowCount());
+        long rejections = 0;
+        while (table.advanceRow()) {
+            rejections += table.getLong("REJECTIONS");
+        }
+        assertEquals(1, rejections);
+
+        release.release(poolSize + maxQueueDepth);
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        m_pool.shutdown();
+        assertFalse(m_pool.isFull());
+        assertEquals(0, m_pool.getQueueDepth());
+    }
+
+    /**
+     * Statements of one connection complete in the order they were submitted,
+     * however busy the other workers are.
+     */
+    @Test
+    public void testConnectionOrder() throws InterruptedException {
+        final int poolSize = 4;
+        final int connections = 8;
+        final int statements = 50;
+        m_pool = new AdHocPlannerPool("Test Planner", poolSize, connections * statements);
+        final Random random = new Random(7);
+        final List<List<Integer>> completed = new ArrayList<List<Integer>>();
+        for (int c = 0; c < connections; c++) {
+            completed.add(Collections.synchronizedList(new ArrayList<Integer>()));
+        }
+        final CountDownLatch done = new CountDownLatch(connections * statements);
+        for (int i = 0; i < statements; i++) {
+            for (int c = 0; c < connections; c++) {
+                final List<Integer> order = completed.get(c);
+                final int stmt = i;
+                final long sleepMicros = random.nextInt(500);
+                assertTrue(m_pool.submit(c, new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            TimeUnit.MICROSECONDS.sleep(sleepMicros);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        order.add(stmt);
+                        done.countDown();
+                    }
+                }));
+            }
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        for (List<Integer> order : completed) {
+            assertEquals(statements, order.size());
+            for (int i = 0; i < statements; i++) {
+                assertEquals(i, order.get(i).intValue());
+            }
+        }
+    }
+}
@@ -24,7 +24,9 @@
 package org.voltdb.compiler;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
@@ -91,15 +93,16 @@ public class TestAsyncCompilerAgent {
         m_agent.m_mailbox = spy(m_agent.m_mailbox);
 
         /*
-         * send max + 2 messages to the agent. The first one will be executed
-         * immediately so it doesn't consume queue capacity, the next max number
-         * of messages will use up all the capacity, the last one will be
-         * rejected.
+         * send max + pool size + 1 messages to the agent. Each planner worker
+         * can be busy with one request without consuming queue capacity, the
+         * next max number of messages will use up all the capacity, the last
+         * one will be rejected.
          */
+        final int requests = AsyncCompilerAgent.MAX_QUEUE_DEPTH + m_agent.getPlannerPoolSize() + 1;
         final AtomicInteger completedRequests = new AtomicInteger();
         final AtomicReference<AsyncCompilerResult> result = new AtomicReference<AsyncCompilerResult>();
         final long threadId = Thread.currentThread().getId();
-        for (int i = 0; i < AsyncCompilerAgent.MAX_QUEUE_DEPTH + 2; ++i) {
+        for (int i = 0; i < requests; ++i) {
             AsyncCompilerWorkCompletionHandler handler = new AsyncCompilerWorkCompletionHandler() {
                 @Override
                 public void onCompletion(AsyncCompilerResult compilerResult) {
@@ -125,12 +128,14 @@ public class TestAsyncCompilerAgent {
 
         // check for one rejected request
         assertNotNull(result.get().errorMsg);
+        assertTrue(m_agent.isPlannerQueueFull());
 
         // let all requests return
-        blockingAnswer.flag.release(AsyncCompilerAgent.MAX_QUEUE_DEPTH + 5);
+        blockingAnswer.flag.release(requests + 5);
 
         // check if all previous requests finish
         m_agent.shutdown();
-        assertEquals(AsyncCompilerAgent.MAX_QUEUE_DEPTH + 2, completedRequests.get());
+        assertEquals(requests, completedRequests.get());
+        assertFalse(m_agent.isPlannerQueueFull());
     }
 }
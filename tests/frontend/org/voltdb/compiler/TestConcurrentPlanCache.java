@@ -0,0 +1,165 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class TestConcurrentPlanCache {
+
+    private static final ConcurrentPlanCache.Weigher<String> LENGTH =
+            new ConcurrentPlanCache.Weigher<String>() {
+                @Override
+                public int weigh(String value) {
+                    return value.length();
+                }
+            };
+
+    @Test
+    public void testHitsAndMisses() {
+        ConcurrentPlanCache<String> cache = new ConcurrentPlanCache<String>(10, 1000, LENGTH);
+        assertNull(cache.get("a"));
+        assertNull(cache.putIfAbsent("a", "plan-a"));
+        assertEquals("plan-a", cache.putIfAbsent("a", "other"));
+        assertEquals("plan-a", cache.get("a"));
+        assertEquals("plan-a", cache.peek("a"));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.insertions());
+        assertEquals(1, cache.size());
+        assertEquals(6, cache.weight());
+    }
+
+    @Test
+    public void testEntryBound() throws InterruptedException {
+        ConcurrentPlanCache<String> cache = new ConcurrentPlanCache<String>(100, Long.MAX_VALUE, LENGTH);
+        for (int i = 0; i < 100; i++) {
+            cache.putIfAbsent("hot" + i, "x");
+        }
+        for (int i = 0; i < 1000; i++) {
+            cache.putIfAbsent("cold" + i, "x");
+            assertTrue(cache.size() <= 100);
+        }
+        assertEquals(100, cache.size());
+        assertEquals(1000, cache.evictions());
+        // the most recent insert always survives
+        assertNotNull(cache.peek("cold999"));
+    }
+
+    @Test
+    public void testRecentlyUsedSurvive() {
+        ConcurrentPlanCache<String> cache = new ConcurrentPlanCache<String>(1600, Long.MAX_VALUE, LENGTH);
+        int lost = 0;
+        for (int i = 0; i < 5000; i++) {
+            if (i % 100 == 0) {
+                for (int j = 0; j < 100; j++) {
+                    if (cache.get("hot" + j) == null) {
+                        lost++;
+                        cache.putIfAbsent("hot" + j, "x");
+                    }
+                }
+            }
+            cache.putIfAbsent("cold" + i, "x");
+        }
+        assertEquals(1600, cache.size());
+        // The first round misses them all. After that a hot entry is only
+        // evicted if the whole sample was about as fresh, evicting at random
+        // would lose several hundred.
+        assertTrue("lost " + lost, lost < 120);
+    }
+
+    @Test
+    public void testWeightBound() {
+        ConcurrentPlanCache<String> cache = new ConcurrentPlanCache<String>(1000, 50, LENGTH);
+        for (int i = 0; i < 20; i++) {
+            cache.putIfAbsent("k" + i, "0123456789");
+            assertTrue(cache.weight() <= 50);
+        }
+        assertEquals(5, cache.size());
+        assertEquals(15, cache.evictions());
+
+        // a value larger than the bound is kept on its own
+        cache.putIfAbsent("big", "0123456789012345678901234567890123456789012345678901234567890");
+        assertEquals(1, cache.size());
+        assertNotNull(cache.peek("big"));
+    }
+
+    @Test
+    public void testReplaceReweighs() {
+        ConcurrentPlanCache<String> cache = new ConcurrentPlanCache<String>(10, 1000, LENGTH);
+        cache.putIfAbsent("a", "12");
+        assertFalse(cache.replace("a", "other", "1234"));
+        assertTrue(cache.replace("a", cache.peek("a"), "1234"));
+        assertEquals("1234", cache.peek("a"));
+        assertEquals(4, cache.weight());
+        assertEquals(1, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+    }
+
+    @Test
+    public void testConcurrentAccessStaysBounded() throws InterruptedException {
+        final ConcurrentPlanCache<String> cache = new ConcurrentPlanCache<String>(64, 64 * 8, LENGTH);
+        final int threads = 8;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 20000; i++) {
+                            String key = "k" + ((i * 31 + seed) % 500);
+                            if (cache.get(key) == null) {
+                                cache.putIfAbsent(key, "v" + key);
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        failed.set(true);
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        assertFalse(failed.get());
+        assertTrue(cache.size() <= 64);
+        assertTrue(cache.weight() <= 64 * 8);
+        assertEquals(cache.insertions() - cache.evictions(), cache.size());
+        assertEquals(threads * 20000L, cache.hits() + cache.misses());
+    }
+}
@@ -0,0 +1,343 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.importclient.kafka;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.VoltTable;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+import org.voltdb.importer.AbstractImporter;
+import org.voltdb.importer.CommitTracker;
+import org.voltdb.importer.ImporterServerAdapter;
+import org.voltdb.importer.formatter.FormatException;
+import org.voltdb.importer.formatter.Formatter;
+import org.voltdb.importer.formatter.FormatterBuilder;
+
+import kafka.message.Message;
+import kafka.message.MessageAndOffset;
+
+public class TestKafkaTopicPartitionImporter {
+
+    /** Records every commit, in order. */
+    static class RecordingTracker implements CommitTracker {
+        final List<Long> m_commits = new ArrayList<Long>();
+
+        @Override
+        public void submit(long offset) {
+        }
+
+        @Override
+        public synchronized long commit(long offset) {
+            m_commits.add(offset);
+            return offset;
+        }
+
+        @Override
+        public void resetTo(long offset) {
+        }
+    }
+
+    /** One column with the message text, "bad" messages can't be formatted. */
+    static class TextFormatter implements Formatter {
+        @Override
+        public Object[] transform(ByteBuffer sourceData) throws FormatException {
+            byte[] bytes = new byte[sourceData.remaining()];
+            sourceData.get(bytes);
+            String text = new String(bytes, StandardCharsets.UTF_8);
+            if ("bad".equals(text)) {
+                throw new FormatException("can't format %s", text);
+            }
+            return new Object[] { text };
+        }
+    }
+
+    /** A batch handed to the server, and the callback that completes it. */
+    static class Submitted {
+        final List<Object[]> m_rows;
+        final ProcedureCallback m_cb;
+
+        Submitted(List<Object[]> rows, ProcedureCallback cb) {
+            m_rows = new ArrayList<Object[]>(rows);
+            m_cb = cb;
+        }
+    }
+
+    private static ClientResponse response(byte status) {
+        return new ClientResponseImpl(status, new VoltTable[0], null);
+    }
+
+    private static List<MessageAndOffset> messages(String... texts) {
+        List<MessageAndOffset> messages = new ArrayList<MessageAndOffset>();
+        for (int i = 0; i < texts.length; i++) {
+            messages.add(new MessageAndOffset(new Message(texts[i].getBytes(StandardCharsets.UTF_8)), 100 + i));
+        }
+        return messages;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static KafkaTopicPartitionImporter importer(final List<Submitted> submitted) {
+        FormatterBuilder<?> formatterBuilder = mock(FormatterBuilder.class);
+        when(formatterBuilder.create()).thenAnswer(new Answer<Formatter>() {
+            @Override
+            public Formatter answer(InvocationOnMock invocation) {
+                return new TextFormatter();
+            }
+        });
+        KafkaStreamImporterConfig config = mock(KafkaStreamImporterConfig.class);
+        when(config.getTopic()).thenReturn("topic");
+        when(config.getPartition()).thenReturn(0);
+        when(config.getProcedure()).thenReturn("T.insert");
+        when(config.getFormatterBuilder()).thenReturn(formatterBuilder);
+
+        ImporterServerAdapter adapter = mock(ImporterServerAdapter.class);
+        doAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                Object[] args = invocation.getArguments();
+                submitted.add(new Submitted((List<Object[]>) args[4], (ProcedureCallback) args[2]));
+                return true;
+            }
+        }).when(adapter).callProcedureBatch(any(AbstractImporter.class), any(Function.class),
+                any(ProcedureCallback.class), anyString(), anyListOf(Object[].class));
+
+        KafkaTopicPartitionImporter importer = new KafkaTopicPartitionImporter(config);
+        importer.setImportServerAdapter(adapter);
+        return importer;
+    }
+
+    @Test
+    public void testBatchCallbackCommitsEveryOffset() throws Exception {
+        RecordingTracker tracker = new RecordingTracker();
+        AtomicLong cbcnt = new AtomicLong();
+        AtomicLong pauseOffset = new AtomicLong(-1);
+        KafkaTopicPartitionImporter.TopicPartitionBatchCallback cb = new KafkaTopicPartitionImporter.TopicPartitionBatchCallback(
+                10, new long[] { 11, 13, 14 }, cbcnt, tracker, new AtomicBoolean(false), pauseOffset);
+
+        cb.clientCallback(response(ClientResponse.SUCCESS));
+
+        assertEquals(Arrays.asList(11L, 13L, 14L), tracker.m_commits);
+        assertEquals(3, cbcnt.get());
+        assertEquals(-1, pauseOffset.get());
+    }
+
+    @Test
+    public void testBatchCallbackCommitsRejectedRows() throws Exception {
+        RecordingTracker tracker = new RecordingTracker();
+        KafkaTopicPartitionImporter.TopicPartitionBatchCallback cb = new KafkaTopicPartitionImporter.TopicPartitionBatchCallback(
+                10, new long[] { 11, 12 }, new AtomicLong(), tracker, new AtomicBoolean(false), new AtomicLong(-1));
+
+        // bad rows are skipped like the row at a time importer does
+        cb.clientCallback(response(ClientResponse.GRACEFUL_FAILURE));
+
+        assertEquals(Arrays.asList(11L, 12L), tracker.m_commits);
+    }
+
+    @Test
+    public void testBatchCallbackPausesWhenServerUnavailable() throws Exception {
+        RecordingTracker tracker = new RecordingTracker();
+        AtomicLong cbcnt = new AtomicLong();
+        AtomicLong pauseOffset = new AtomicLong(-1);
+        KafkaTopicPartitionImporter.TopicPartitionBatchCallback cb = new KafkaTopicPartitionImporter.TopicPartitionBatchCallback(
+                10, new long[] { 11, 12 }, cbcnt, tracker, new AtomicBoolean(false), pauseOffset);
+
+        cb.clientCallback(response(ClientResponse.SERVER_UNAVAILABLE));
+
+        assertTrue(tracker.m_commits.isEmpty());
+        assertEquals(2, cbcnt.get());
+        assertEquals(10, pauseOffset.get());
+    }
+
+    @Test
+    public void testBatchCallbackDoesNotCommitWhenDead() throws Exception {
+        RecordingTracker tracker = new RecordingTracker();
+        KafkaTopicPartitionImporter.TopicPartitionBatchCallback cb = new KafkaTopicPartitionImporter.TopicPartitionBatchCallback(
+                10, new long[] { 11 }, new AtomicLong(), tracker, new AtomicBoolean(true), new AtomicLong(-1));
+
+        cb.clientCallback(response(ClientResponse.SUCCESS));
+
+        assertTrue(tracker.m_commits.isEmpty());
+    }
+
+    /** Fetches on the prefetch thread return the offset they were for. */
+    static class OffsetPrefetcher extends KafkaTopicPartitionImporter.Prefetcher<Long> {
+        final List<Long> m_requests = new ArrayList<Long>();
+        volatile CountDownLatch m_block = new CountDownLatch(0);
+        volatile long m_failOffset = -1;
+
+        OffsetPrefetcher() {
+            super("Test Prefetch");
+        }
+
+        @Override
+        Callable<Long> request(final long offset) {
+            synchronized (m_requests) {
+                m_requests.add(offset);
+            }
+            return new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    m_block.await(10, TimeUnit.SECONDS);
+                    if (offset == m_failOffset) {
+                        throw new IOException("fetch failed");
+                    }
+                    return offset;
+                }
+            };
+        }
+    }
+
+    @Test
+    public void testPrefetchIsUsed() throws Exception {
+        OffsetPrefetcher prefetcher = new OffsetPrefetcher();
+        try {
+            prefetcher.m_block = new CountDownLatch(1);
+            prefetcher.prefetch(5);
+            prefetcher.m_block.countDown();
+            assertEquals(5L, (long) prefetcher.fetch(5));
+            assertEquals(Arrays.asList(5L), prefetcher.m_requests);
+
+            // nothing outstanding, fetched on the calling thread
+            assertEquals(6L, (long) prefetcher.fetch(6));
+            assertEquals(Arrays.asList(5L, 6L), prefetcher.m_requests);
+        } finally {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testPrefetchForAnotherOffsetIsDropped() throws Exception {
+        OffsetPrefetcher prefetcher = new OffsetPrefetcher();
+        try {
+            prefetcher.prefetch(5);
+            // the importer moved on, e.g. after an offset reset
+            assertEquals(2L, (long) prefetcher.fetch(2));
+            assertEquals(Arrays.asList(5L, 2L), prefetcher.m_requests);
+
+            // a failed prefetch that isn't wanted doesn't matter either
+            prefetcher.m_failOffset = 7;
+            prefetcher.prefetch(7);
+            assertEquals(3L, (long) prefetcher.fetch(3));
+        } finally {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testPrefetchFailureIsThrown() throws Exception {
+        OffsetPrefetcher prefetcher = new OffsetPrefetcher();
+        try {
+            prefetcher.m_failOffset = 5;
+            prefetcher.prefetch(5);
+            try {
+                prefetcher.fetch(5);
+                fail("the failed prefetch should have been thrown");
+            } catch (IOException expected) {
+            }
+            // and then it is gone
+            prefetcher.m_failOffset = -1;
+            assertEquals(5L, (long) prefetcher.fetch(5));
+        } finally {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testSubmitBatchesGroupsInOffsetOrder() throws Exception {
+        List<Submitted> submitted = new ArrayList<Submitted>();
+        KafkaTopicPartitionImporter importer = importer(submitted);
+        String[] texts = new String[10];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = "m" + i;
+        }
+
+        assertEquals(10, importer.submitBatches(messages(texts), 4, new AtomicLong()));
+
+        assertEquals(3, submitted.size());
+        int expected = 0;
+        for (int i = 0; i < submitted.size(); i++) {
+            assertEquals(i < 2 ? 4 : 2, submitted.get(i).m_rows.size());
+            for (Object[] row : submitted.get(i).m_rows) {
+                assertEquals("m" + expected++, row[0]);
+            }
+        }
+    }
+
+    @Test
+    public void testSubmitBatchesSkipsUnformattable() throws Exception {
+        List<Submitted> submitted = new ArrayList<Submitted>();
+        KafkaTopicPartitionImporter importer = importer(submitted);
+
+        assertEquals(5, importer.submitBatches(messages("a", "bad", "b", "bad", "bad"), 3, new AtomicLong()));
+
+        // the last group has nothing left to send
+        assertEquals(1, submitted.size());
+        assertEquals(2, submitted.get(0).m_rows.size());
+        assertEquals("a", submitted.get(0).m_rows.get(0)[0]);
+        assertEquals("b", submitted.get(0).m_rows.get(1)[0]);
+    }
+
+    @Test
+    public void testSubmitBatchesCallbackCountsRows() throws Exception {
+        List<Submitted> submitted = new ArrayList<Submitted>();
+        KafkaTopicPartitionImporter importer = importer(submitted);
+        AtomicLong cbcnt = new AtomicLong();
+
+        importer.submitBatches(messages("a", "b", "bad", "c", "d"), 2, cbcnt);
+        assertEquals(3, submitted.size());
+        for (Submitted batch : submitted) {
+            batch.m_cb.clientCallback(response(ClientResponse.SUCCESS));
+        }
+
+        // one count per row that reached the server
+        assertEquals(4, cbcnt.get());
+        // the unformattable message doesn't shift the rows after it
+        assertEquals("c", submitted.get(1).m_rows.get(0)[0]);
+    }
+}
@@ -0,0 +1,195 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.json_voltpatches.JSONObject;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.types.ExpressionType;
+
+public class TestMpAggregateMerger extends TestCase
+{
+    // key, count, min, max, a column the coordinator doesn't aggregate
+    static final ColumnInfo[] SCHEMA = new ColumnInfo[] {
+        new ColumnInfo("K", VoltType.STRING),
+        new ColumnInfo("CNT", VoltType.BIGINT),
+        new ColumnInfo("LO", VoltType.INTEGER),
+        new ColumnInfo("HI", VoltType.DECIMAL),
+        new ColumnInfo("X", VoltType.BIGINT)
+    };
+
+    static final MpAggregateMerger.MergeSpec SPEC = new MpAggregateMerger.MergeSpec(
+            new int[] { 0 },
+            new int[] { 1, 2, 3 },
+            new ExpressionType[] { ExpressionType.AGGREGATE_SUM,
+                                   ExpressionType.AGGREGATE_MIN,
+                                   ExpressionType.AGGREGATE_MAX });
+
+    ExecutorService m_es;
+
+    @Override
+    public void setUp()
+    {
+        m_es = Executors.newFixedThreadPool(3);
+    }
+
+    @Override
+    public void tearDown()
+    {
+        m_es.shutdownNow();
+    }
+
+    static BigDecimal dec(long value)
+    {
+        return new BigDecimal(value).setScale(12);
+    }
+
+    static Map<String, Object[]> byKey(List<VoltTable> tables)
+    {
+        Map<String, Object[]> rows = new HashMap<String, Object[]>();
+        for (VoltTable table : tables) {
+            while (table.advanceRow()) {
+                Object[] row = new Object[SCHEMA.length];
+                for (int c = 0; c < SCHEMA.length; c++) {
+                    Object value = table.get(c, table.getColumnType(c));
+                    row[c] = table.wasNull() ? null : value;
+                }
+                assertNull("group seen twice", rows.put((String) row[0], row));
+            }
+        }
+        return rows;
+    }
+
+    public void testMergeGroups()
+    {
+        List<VoltTable> partials = new ArrayList<VoltTable>();
+        for (int p = 0; p < 4; p++) {
+            VoltTable table = new VoltTable(SCHEMA);
+            for (int k = 0; k < 100; k++) {
+                // every partition sees the even keys, only partition p the odd ones
+                if (k % 2 == 1 && k % 4 != p) {
+                    continue;
+                }
+                table.addRow("k" + k, (long) (p + 1), p * 10 + k, dec(k - p), 7);
+            }
+            partials.add(table);
+        }
+
+        List<VoltTable> merged = MpAggregateMerger.merge(SPEC, partials, 3, 1, m_es);
+        assertEquals(3, merged.size());
+        Map<String, Object[]> rows = byKey(merged);
+        assertEquals(100, rows.size());
+        for (int k = 0; k < 100; k++) {
+            Object[] row = rows.get("k" + k);
+            if (k % 2 == 0) {
+                assertEquals(10L, row[1]);
+                assertEquals(k, row[2]);
+                assertEquals(dec(k), row[3]);
+            }
+            else {
+                int p = k % 4;
+                assertEquals((long) (p + 1), row[1]);
+                assertEquals(p * 10 + k, row[2]);
+                assertEquals(dec(k - p), row[3]);
+            }
+            assertEquals(7L, row[4]);
+        }
+    }
+
+    public void testFewRowsAreLeftToTheEE()
+    {
+        VoltTable t1 = new VoltTable(SCHEMA);
+        VoltTable t2 = new VoltTable(SCHEMA);
+        for (int k = 0; k < 30; k++) {
+            t1.addRow("k" + k, 1L, k, dec(k), 0);
+            t2.addRow("k" + k, 1L, k, dec(k), 0);
+        }
+        // 60 rows keep only two of the three threads busy
+        assertEquals(2, MpAggregateMerger.merge(SPEC, Arrays.asList(t1, t2), 3, 30, m_es).size());
+        // and one thread is no better than the coordinator's serial aggregate
+        assertNull(MpAggregateMerger.merge(SPEC, Arrays.asList(t1, t2), 3, 31, m_es));
+    }
+
+    public void testNullsAndNullKeys()
+    {
+        VoltTable t1 = new VoltTable(SCHEMA);
+        t1.addRow(null, 1L, null, dec(5), null);
+        t1.addRow("a", null, 3, null, null);
+        VoltTable t2 = new VoltTable(SCHEMA);
+        t2.addRow(null, 2L, 4, null, null);
+        t2.addRow("a", null, null, null, null);
+
+        Map<String, Object[]> rows = byKey(MpAggregateMerger.merge(SPEC, Arrays.asList(t1, t2), 2, 1, m_es));
+        assertEquals(2, rows.size());
+        assertEquals(3L, rows.get(null)[1]);
+        assertEquals(4, rows.get(null)[2]);
+        assertEquals(dec(5), rows.get(null)[3]);
+        assertNull(rows.get("a")[1]);
+        assertEquals(3, rows.get("a")[2]);
+        assertNull(rows.get("a")[3]);
+    }
+
+    public void testSumOverflowIsLeftToTheEE()
+    {
+        VoltTable t1 = new VoltTable(SCHEMA);
+        t1.addRow("a", Long.MAX_VALUE, 1, dec(1), 0);
+        VoltTable t2 = new VoltTable(SCHEMA);
+        t2.addRow("a", 1L, 1, dec(1), 0);
+        assertNull(MpAggregateMerger.merge(SPEC, Arrays.asList(t1, t2), 2, 1, m_es));
+    }
+
+    public void testParseMergeSpec() throws Exception
+    {
+        String plan = "{\"PLAN_NODES\":[" +
+                "{\"ID\":1,\"PLAN_NODE_TYPE\":\"SEND\",\"CHILDREN_IDS\":[2]}," +
+                "{\"ID\":2,\"PLAN_NODE_TYPE\":\"HASHAGGREGATE\",\"CHILDREN_IDS\":[3]," +
+                "\"AGGREGATE_COLUMNS\":[" +
+                "{\"AGGREGATE_TYPE\":\"AGGREGATE_SUM\",\"AGGREGATE_DISTINCT\":0,\"AGGREGATE_OUTPUT_COLUMN\":1}," +
+                "{\"AGGREGATE_TYPE\":\"AGGREGATE_MAX\",\"AGGREGATE_DISTINCT\":0,\"AGGREGATE_OUTPUT_COLUMN\":2}]," +
+                "\"PARALLEL_MERGE\":{\"MERGE_GROUPBY_COLUMNS\":[2,0],\"MERGE_AGGREGATE_COLUMNS\":[1,3]}}," +
+                "{\"ID\":3,\"PLAN_NODE_TYPE\":\"RECEIVE\"}]}";
+        MpAggregateMerger.MergeSpec spec = MpAggregateMerger.parseMergeSpec(new JSONObject(plan));
+        assertNotNull(spec);
+        assertTrue(Arrays.equals(new int[] { 2, 0 }, spec.m_groupByColumns));
+        assertTrue(Arrays.equals(new int[] { 1, 3 }, spec.m_aggregateColumns));
+        assertTrue(Arrays.equals(new ExpressionType[] { ExpressionType.AGGREGATE_SUM, ExpressionType.AGGREGATE_MAX },
+                spec.m_aggregateTypes));
+
+        String unmarked = "{\"PLAN_NODES\":[{\"ID\":1,\"PLAN_NODE_TYPE\":\"SEND\",\"CHILDREN_IDS\":[2]}," +
+                "{\"ID\":2,\"PLAN_NODE_TYPE\":\"RECEIVE\"}]}";
+        assertNull(MpAggregateMerger.parseMergeSpec(new JSONObject(unmarked)));
+    }
+}
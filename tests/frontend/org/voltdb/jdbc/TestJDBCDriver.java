@@ -33,6 +33,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -40,6 +41,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.Arrays;
@@ -969,6 +971,50 @@ public class TestJDBCDriver {
         }
     }
 
+    @Test
+    public void testPipelinedBatch() throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty(JDBC4Connection.BATCH_PIPELINE_WINDOW, "16");
+        myconn = JDBCTestCommons.getJdbcConnection("jdbc:voltdb://localhost:21212", props);
+
+        PreparedStatement ps = myconn.prepareStatement("INSERT INTO TT VALUES(?, ?);");
+        for (int i = 0; i < 500; i++) {
+            ps.setInt(1, 10000 + i);
+            ps.setInt(2, i);
+            ps.addBatch();
+        }
+        int[] counts = ps.executeBatch();
+        assertEquals(500, counts.length);
+        for (int count : counts) {
+            assertEquals(1, count);
+        }
+        assertEquals(500, ps.getUpdateCount());
+
+        // The statement at index 50 repeats a key committed by the first batch,
+        // so it fails whatever order the statements in flight run in, and
+        // everything before it must be reported as applied.
+        for (int i = 0; i < 100; i++) {
+            ps.setInt(1, i == 50 ? 10010 : 20000 + i);
+            ps.setInt(2, i);
+            ps.addBatch();
+        }
+        try {
+            ps.executeBatch();
+            fail("Expected the duplicate key to fail the batch");
+        }
+        catch (BatchUpdateException e) {
+            counts = e.getUpdateCounts();
+            assertTrue(counts.length > 50);
+            for (int i = 0; i < 50; i++) {
+                assertEquals(1, counts[i]);
+            }
+            assertEquals(Statement.EXECUTE_FAILED, counts[50]);
+            assertTrue(e.getMessage().contains("violation of constraint"));
+        }
+        myconn.close();
+    }
+
     @Test
     public void testSSLPropertiesFromURL() {
         String url = "jdbc:voltdb://server1:21212,server2?"
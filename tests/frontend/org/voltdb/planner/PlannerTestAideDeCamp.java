@@ -39,6 +39,7 @@ import org.voltdb.catalog.StmtParameter;
 import org.voltdb.compiler.DatabaseEstimates;
 import org.voltdb.compiler.DeterminismMode;
 import org.voltdb.compiler.StatementCompiler;
+import org.voltdb.compiler.TableStatistics;
 import org.voltdb.compiler.VoltCompiler;
 import org.voltdb.compiler.VoltCompiler.DdlProceduresToLoad;
 import org.voltdb.expressions.ParameterValueExpression;
@@ -59,6 +60,9 @@ public class PlannerTestAideDeCamp {
 
     private CompiledPlan m_currentPlan = null;
 
+    // planner statistics as if the tables had been analyzed
+    private TableStatistics m_statistics = TableStatistics.EMPTY;
+
     /**
      * Loads the schema at ddlurl and setups a voltcompiler / hsql instance.
      * @param ddlurl URL to the schema/ddl file.
@@ -79,6 +83,10 @@ public class PlannerTestAideDeCamp {
     public void tearDown() {
     }
 
+    void setTableStatistics(TableStatistics statistics) {
+        m_statistics = statistics;
+    }
+
     public Database getDatabase() {
         return db;
     }
@@ -132,8 +140,8 @@ public class PlannerTestAideDeCamp {
         // name will look like "basename-stmt-#"
         String name = catalogStmt.getParent().getTypeName() + "-" + catalogStmt.getTypeName();
 
-        DatabaseEstimates estimates = new DatabaseEstimates();
-        TrivialCostModel costModel = new TrivialCostModel();
+        DatabaseEstimates estimates = new DatabaseEstimates(m_statistics);
+        AbstractCostModel costModel = AbstractCostModel.forEstimates(estimates);
         StatementPartitioning partitioning;
         if (inferPartitioning) {
             partitioning = StatementPartitioning.inferPartitioning();
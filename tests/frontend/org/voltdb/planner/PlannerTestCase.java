@@ -32,6 +32,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.voltdb.catalog.Catalog;
 import org.voltdb.catalog.Database;
 import org.voltdb.compiler.DeterminismMode;
+import org.voltdb.compiler.TableStatistics;
 import org.voltdb.expressions.AbstractExpression;
 import org.voltdb.expressions.TupleValueExpression;
 import org.voltdb.plannodes.AbstractPlanNode;
@@ -307,6 +308,13 @@ public class PlannerTestCase extends TestCase {
         m_aide = new PlannerTestAideDeCamp(ddlURL, basename);
     }
 
+    /**
+     * Plan the following statements as if the tables had been analyzed.
+     */
+    protected void setTableStatistics(TableStatistics statistics) {
+        m_aide.setTableStatistics(statistics);
+    }
+
     public String getCatalogString() {
         return m_aide.getCatalogString();
     }
@@ -479,10 +487,10 @@ public class PlannerTestCase extends TestCase {
 
     /**
      * Assert that a two-fragment plan's coordinator fragment does a left join
-     * with a specific replicated table on its outer side.
+     * of the given type with a specific replicated table on its outer side.
      **/
     protected static void assertReplicatedLeftJoinCoordinator(
-            List<AbstractPlanNode> lpn, String replicatedTable) {
+            List<AbstractPlanNode> lpn, PlanNodeType joinNodeType, String replicatedTable) {
         AbstractPlanNode pn;
         AbstractPlanNode node;
         NestLoopPlanNode nlj;
@@ -490,12 +498,12 @@ public class PlannerTestCase extends TestCase {
         pn = lpn.get(0);
         assertTopDownTree(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                joinNodeType,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.RECEIVE);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                joinNodeType);
         nlj = (NestLoopPlanNode) node;
         assertEquals(JoinType.LEFT, nlj.getJoinType());
         assertEquals(2, nlj.getChildCount());
@@ -234,7 +234,7 @@ public class TestJoinOrder extends PlannerTestCase {
         assertEquals(JoinType.FULL, ((NestLoopPlanNode) n).getJoinType());
         assertTrue(((SeqScanPlanNode)n.getChild(1)).getTargetTableName().equals("T3"));
         n = n.getChild(0);
-        assertEquals(PlanNodeType.NESTLOOP, n.getPlanNodeType());
+        assertEquals(PlanNodeType.HASHJOIN, n.getPlanNodeType());
         assertTrue(((SeqScanPlanNode)n.getChild(0)).getTargetTableName().equals("T1"));
         assertTrue(((SeqScanPlanNode)n.getChild(1)).getTargetTableName().equals("T2"));
 
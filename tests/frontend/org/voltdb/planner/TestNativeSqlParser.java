@@ -0,0 +1,260 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.planner;
+
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hsqldb_voltpatches.HSQLInterface;
+import org.hsqldb_voltpatches.VoltXMLElement;
+import org.voltdb.catalog.Database;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.compiler.DeterminismMode;
+import org.voltdb.compiler.StatementCompiler;
+import org.voltdb.compiler.VoltCompiler;
+import org.voltdb.compiler.VoltCompiler.DdlProceduresToLoad;
+
+import junit.framework.TestCase;
+
+public class TestNativeSqlParser extends TestCase {
+
+    private HSQLInterface m_hsql;
+    private Database m_db;
+
+    @Override
+    protected void setUp() throws Exception {
+        String schemaPath = URLDecoder.decode(
+                TestNativeSqlParser.class.getResource("testplans-nativeparser-ddl.sql").getPath(), "UTF-8");
+        VoltCompiler compiler = new VoltCompiler(false);
+        m_hsql = HSQLInterface.loadHsqldb();
+        compiler.loadSchema(m_hsql, DdlProceduresToLoad.NO_DDL_PROCEDURES, schemaPath);
+        m_db = compiler.getCatalogDatabase();
+    }
+
+    public void testSelect() throws Exception {
+        assertSameAsHsql("SELECT A, B FROM T WHERE A = 5");
+        assertSameAsHsql("select a, b from t where a = 5;");
+        assertSameAsHsql("SELECT * FROM T");
+        assertSameAsHsql("SELECT T.A FROM T WHERE T.B = 'x''y'");
+        assertSameAsHsql("SELECT * FROM T WHERE A = ? AND C > 10 AND D <= -1.50 ORDER BY B DESC, A LIMIT 10 OFFSET 5");
+        assertSameAsHsql("SELECT A FROM T WHERE A <> ? AND B != ? AND E >= ? AND F < .5 AND G = ? AND H = ?");
+        assertSameAsHsql("SELECT A FROM T ORDER BY C ASC");
+        assertSameAsHsql("SELECT A FROM T WHERE A = ? LIMIT ? OFFSET ?");
+        assertSameAsHsql("SELECT A FROM T LIMIT 3 OFFSET ?");
+        assertSameAsHsql("SELECT X FROM R WHERE Z = 100000 AND X = 10000000000");
+        assertSameAsHsql("SELECT A FROM T WHERE A = -2147483648");
+        assertSameAsHsql("SELECT X, N FROM V WHERE X = 1");
+    }
+
+    public void testInsert() throws Exception {
+        assertSameAsHsql("INSERT INTO R VALUES (1, 'a', NULL, NULL)");
+        assertSameAsHsql("INSERT INTO T (B, A) VALUES (?, -5)");
+        assertSameAsHsql("insert into t (a, c, f, g, h) values (?, 3000000000, 5., ?, ?)");
+        assertSameAsHsql("INSERT INTO R (Y) VALUES ('a')");
+        assertSameAsHsql("INSERT INTO T (A, B, C, D, F, G) VALUES (2147483647, '01234567890123456789', "
+                + "-9223372036854775807, 3, 12345678901234567890123456.123456789012, -127)");
+        assertSameAsHsql("INSERT INTO R (X, Y, Z) VALUES (-2147483647, 'a', 32767)");
+    }
+
+    public void testUpdateAndDelete() throws Exception {
+        assertSameAsHsql("UPDATE T SET B = 'q', D = 1.50 WHERE A = 7");
+        assertSameAsHsql("UPDATE R SET Z = ?, Y = ? WHERE X >= ? AND Z < 3");
+        assertSameAsHsql("UPDATE R SET Z = -32767, Y = 'x''y'");
+        assertSameAsHsql("DELETE FROM R WHERE X >= 3");
+        assertSameAsHsql("DELETE FROM R");
+    }
+
+    public void testFallsBackToHsql() {
+        // joins, expressions, aggregates, aliases and the rest of SQL
+        assertNull(parse("SELECT A FROM T, R WHERE A = X"));
+        assertNull(parse("SELECT A + 1 FROM T"));
+        assertNull(parse("SELECT COUNT(*) FROM T"));
+        assertNull(parse("SELECT DISTINCT A FROM T"));
+        assertNull(parse("SELECT A AS Q FROM T"));
+        assertNull(parse("SELECT A, A FROM T"));
+        assertNull(parse("SELECT A FROM T T1"));
+        assertNull(parse("SELECT A FROM T WHERE A = 1 OR A = 2"));
+        assertNull(parse("SELECT A FROM T WHERE (A = 1)"));
+        assertNull(parse("SELECT A FROM T WHERE A IN (1, 2)"));
+        assertNull(parse("SELECT A FROM T WHERE B IS NULL"));
+        assertNull(parse("SELECT A FROM T WHERE A = NULL"));
+        assertNull(parse("SELECT A FROM T WHERE 1 = A"));
+        assertNull(parse("SELECT A FROM T WHERE A = 1e3"));
+        assertNull(parse("SELECT A FROM T WHERE A = 99999999999999999999"));
+        assertNull(parse("SELECT A FROM T OFFSET 3"));
+        assertNull(parse("SELECT \"A\" FROM T"));
+        assertNull(parse("SELECT A FROM T -- comment"));
+        assertNull(parse("SELECT A FROM T WHERE P = ?"));
+        assertNull(parse("INSERT INTO T (A, B) VALUES (1, 'a'), (2, 'b')"));
+        assertNull(parse("INSERT INTO T (A) SELECT X FROM R"));
+        assertNull(parse("UPSERT INTO T (A) VALUES (1)"));
+        assertNull(parse("TRUNCATE TABLE T"));
+        // statements HSQL has to reject with a proper message
+        assertNull(parse("SELECT A FROM NOSUCHTABLE"));
+        assertNull(parse("SELECT NOSUCHCOLUMN FROM T"));
+        assertNull(parse("SELECT R.X FROM T"));
+        assertNull(parse("SELECT A FROM T WHERE A = 'x'"));
+        assertNull(parse("SELECT A FROM T WHERE B = 5"));
+        assertNull(parse("SELECT A FROM T WHERE B = 'unterminated"));
+        assertNull(parse("INSERT INTO T (A, B) VALUES (1)"));
+        assertNull(parse("INSERT INTO T (A, A) VALUES (1, 2)"));
+        assertNull(parse("UPDATE T SET B = 'a', B = 'b'"));
+        // literals that have to be converted, or don't fit, in their column
+        assertNull(parse("INSERT INTO T (A, B) VALUES ('1', 'a')"));
+        assertNull(parse("INSERT INTO T (A, B) VALUES (1, 2)"));
+        assertNull(parse("INSERT INTO T (A, B) VALUES (1, '012345678901234567890')"));
+        assertNull(parse("INSERT INTO T (A) VALUES (2147483648)"));
+        assertNull(parse("INSERT INTO T (A) VALUES (-2147483648)"));
+        assertNull(parse("INSERT INTO T (A, G) VALUES (1, 128)"));
+        assertNull(parse("INSERT INTO T (A, G) VALUES (1, -128)"));
+        assertNull(parse("INSERT INTO T (A, C) VALUES (1, 1.5)"));
+        assertNull(parse("INSERT INTO T (A, E) VALUES (1, '2017-01-01 00:00:00')"));
+        assertNull(parse("INSERT INTO T (A, E) VALUES (1, 0)"));
+        assertNull(parse("INSERT INTO T (A, F) VALUES (1, 0.1234567890123)"));
+        assertNull(parse("INSERT INTO T (A, F) VALUES (1, 123456789012345678901234567)"));
+        assertNull(parse("INSERT INTO T (A, H) VALUES (1, 'ab')"));
+        assertNull(parse("UPDATE R SET Z = 1.5"));
+        assertNull(parse("UPDATE R SET Z = 32768"));
+        assertNull(parse("UPDATE R SET X = 'x'"));
+        // Y is sized in bytes, and each of these takes two of them
+        assertNotNull(parse("UPDATE R SET Y = '" + repeat("\u00e9", 32) + "'"));
+        assertNull(parse("UPDATE R SET Y = '" + repeat("\u00e9", 33) + "'"));
+        assertNull(parse("DELETE FROM V"));
+        assertNull(parse("SELECT A FROM T WHERE A = 1 extra"));
+    }
+
+    public void testPlansMatchHsql() throws Exception {
+        String[] statements = {
+            "SELECT A, B FROM T WHERE A = 5",
+            "SELECT * FROM T WHERE A = ? AND C > 10 ORDER BY B DESC, A LIMIT 10 OFFSET 5",
+            "SELECT X FROM R WHERE X = ? ORDER BY Z",
+            "INSERT INTO T (B, A) VALUES (?, -5)",
+            "UPDATE R SET Z = ?, Y = ? WHERE X >= ?",
+            "DELETE FROM T WHERE A = 7",
+        };
+        for (String sql : statements) {
+            assertEquals(sql, plan(sql, false).explainedPlan, plan(sql, true).explainedPlan);
+        }
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    private VoltXMLElement parse(String sql) {
+        return NativeSqlParser.parse(sql, m_db);
+    }
+
+    private void assertSameAsHsql(String sql) throws Exception {
+        VoltXMLElement xml = parse(sql);
+        assertNotNull("native parser declined: " + sql, xml);
+        assertEquals(sql, canonical(m_hsql.getXMLCompiledStatement(sql)).toString(),
+                canonical(xml).toString());
+    }
+
+    private CompiledPlan plan(String sql, boolean useNativeParser) {
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        QueryPlanner planner = new QueryPlanner(sql, "stmt", "proc", m_db,
+                StatementPartitioning.inferPartitioning(), m_hsql, estimates, true,
+                StatementCompiler.DEFAULT_MAX_JOIN_TABLES, new TrivialCostModel(),
+                null, null, DeterminismMode.FASTER);
+        planner.setUseNativeParser(useNativeParser);
+        planner.parse();
+        return planner.plan();
+    }
+
+    /**
+     * Strip the expression ids, which only need to be unique, refer to
+     * parameters by index, flatten conjunctions into a sorted list, and
+     * drop the update/delete "condition" the planner doesn't read.
+     */
+    private static VoltXMLElement canonical(VoltXMLElement xml) {
+        Map<String, String> paramIndexes = new HashMap<String, String>();
+        for (VoltXMLElement child : xml.children) {
+            if (child.name.equals("parameters")) {
+                for (VoltXMLElement param : child.children) {
+                    paramIndexes.put(param.attributes.get("id"), param.attributes.get("index"));
+                }
+            }
+        }
+        return canonical(xml, paramIndexes);
+    }
+
+    private static VoltXMLElement canonical(VoltXMLElement xml, Map<String, String> paramIndexes) {
+        VoltXMLElement result = new VoltXMLElement(xml.name);
+        for (Map.Entry<String, String> attr : xml.attributes.entrySet()) {
+            String key = attr.getKey();
+            if (key.equals("id")) {
+                if ("true".equals(xml.attributes.get("isparam"))) {
+                    result.attributes.put("param", paramIndexes.get(attr.getValue()));
+                }
+            }
+            else if (key.endsWith("_paramid")) {
+                result.attributes.put(key, paramIndexes.get(attr.getValue()));
+            }
+            else {
+                result.attributes.put(key, attr.getValue());
+            }
+        }
+        if (xml.name.equals("operation") && "and".equals(xml.attributes.get("optype"))) {
+            List<VoltXMLElement> terms = new ArrayList<VoltXMLElement>();
+            collectTerms(xml, terms, paramIndexes);
+            Collections.sort(terms, new Comparator<VoltXMLElement>() {
+                @Override
+                public int compare(VoltXMLElement o1, VoltXMLElement o2) {
+                    return o1.toString().compareTo(o2.toString());
+                }
+            });
+            result.children.addAll(terms);
+            return result;
+        }
+        for (VoltXMLElement child : xml.children) {
+            if (!child.name.equals("condition")) {
+                result.children.add(canonical(child, paramIndexes));
+            }
+        }
+        return result;
+    }
+
+    private static void collectTerms(VoltXMLElement xml, List<VoltXMLElement> terms,
+            Map<String, String> paramIndexes) {
+        for (VoltXMLElement child : xml.children) {
+            if (child.name.equals("operation") && "and".equals(child.attributes.get("optype"))) {
+                collectTerms(child, terms, paramIndexes);
+            }
+            else {
+                terms.add(canonical(child, paramIndexes));
+            }
+        }
+    }
+}
@@ -321,6 +321,37 @@ public class TestPlansGroupBy extends PlannerTestCase {
 
     }
 
+    public void testParallelMergeAggregate() {
+        List<AbstractPlanNode> pns;
+        AbstractPlanNode p;
+
+        // SUM (and COUNT, which is re-aggregated as a SUM), MIN and MAX merge by themselves
+        pns = compileToFragments("SELECT A1, COUNT(*), SUM(C1), MIN(B1), MAX(D1) FROM P1 GROUP BY A1");
+        p = pns.get(0).getChild(0);
+        assertTrue(p instanceof HashAggregatePlanNode);
+        assertTrue(p.getChild(0) instanceof ReceivePlanNode);
+        assertTrue(((AggregatePlanNode)p).isParallelMerge());
+        assertTrue(p.toJSONString().contains("\"PARALLEL_MERGE\""));
+
+        // Having is evaluated by the coordinator after the merge
+        pns = compileToFragments("SELECT A1, COUNT(*) FROM P1 GROUP BY A1 HAVING COUNT(*) > 3");
+        p = pns.get(0).getChild(0);
+        assertTrue(((AggregatePlanNode)p).isParallelMerge());
+
+        // No groups to hash
+        pns = compileToFragments("SELECT COUNT(*), SUM(C1) FROM P1");
+        p = pns.get(0).getChild(0);
+        assertTrue(p instanceof AggregatePlanNode);
+        assertFalse(((AggregatePlanNode)p).isParallelMerge());
+
+        // Distinct aggregates are not pushed down, there is nothing to merge
+        pns = compileToFragments("SELECT A1, COUNT(DISTINCT C1) FROM P1 GROUP BY A1");
+        for (AbstractPlanNode agg : pns.get(0).findAllNodesOfType(PlanNodeType.HASHAGGREGATE)) {
+            assertFalse(((AggregatePlanNode)agg).isParallelMerge());
+        }
+        assertFalse(pns.get(0).toJSONString().contains("\"PARALLEL_MERGE\""));
+    }
+
     private void checkGroupByPartitionKey(List<AbstractPlanNode> pns,
             boolean topAgg, boolean having) {
         AbstractPlanNode p;
@@ -31,6 +31,7 @@ import org.voltdb.expressions.TupleValueExpression;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractScanPlanNode;
 import org.voltdb.plannodes.AggregatePlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.NestLoopIndexPlanNode;
 import org.voltdb.plannodes.NestLoopPlanNode;
@@ -75,13 +76,13 @@ public class TestPlansJoin extends PlannerTestCase {
         query = "SELECT * FROM R1 JOIN R2 USING(C)";
         pn = compileToTopDownTree(query, 4, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         followAssertedLeftChain(pn,
                 PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         assertEquals(4, pn.getOutputSchema().getColumns().size());
 
         for (JoinOp joinOp : JoinOp.JOIN_OPS) {
@@ -105,27 +106,27 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN, PlanNodeType.SEQSCAN);
 
         query = "SELECT R1.A, R1.C, D FROM R1 JOIN R2 ON R1.C" +
                 joinOp + "R2.C";
         pn = compileToTopDownTree(query, 3, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN, PlanNodeType.SEQSCAN);
 
         query = "SELECT R1.A, C, R1.D FROM R1 JOIN R2 USING(C)";
         pn = compileToTopDownTree(query, 3, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN, PlanNodeType.SEQSCAN);
 
         query = "SELECT R1.A, R2.C, R1.D FROM R1 JOIN R2 ON R1.C" +
                 joinOp + "R2.C";
         pn = compileToTopDownTree(query, 3, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN, PlanNodeType.SEQSCAN);
         selectColumns = pn.getOutputSchema().getColumns();
         assertEquals("R1", selectColumns.get(0).getTableName());
@@ -135,7 +136,7 @@ public class TestPlansJoin extends PlannerTestCase {
         query = "SELECT R1.A, C, R1.D FROM R1 JOIN R2 USING(C)";
         pn = compileToTopDownTree(query, 3, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN, PlanNodeType.SEQSCAN);
         selectColumns = pn.getOutputSchema().getColumns();
         assertEquals("R1", selectColumns.get(0).getTableName());
@@ -186,8 +187,8 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C";
         pn = compileToTopDownTree(query, 7, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
@@ -197,8 +198,8 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C";
         pn = compileToTopDownTree(query, 2, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
@@ -206,8 +207,8 @@ public class TestPlansJoin extends PlannerTestCase {
         query = "SELECT C FROM R1 INNER JOIN R2 USING (C) INNER JOIN R3 USING(C)";
         pn = compileToTopDownTree(query, 1, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
@@ -216,14 +217,14 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R3_NOC.A";
         pn = compileToTopDownTree(query, 1, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 null, // weakened. soon, replace with: NESTLOOPINDEX, SEQSCAN?
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         if (joinOp == JoinOp.EQUAL) { // weaken test for now
-            node = followAssertedLeftChain(node, PlanNodeType.NESTLOOP,
+            node = followAssertedLeftChain(node, PlanNodeType.HASHJOIN,
                     PlanNodeType.NESTLOOPINDEX,
                     PlanNodeType.SEQSCAN);
         }
@@ -264,11 +265,11 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.A AND R1.C > 0";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN, PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertNull(nlj.getPreJoinPredicate());
         predicate = nlj.getJoinPredicate();
@@ -286,12 +287,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.A AND R1.C > R2.C";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertNull(nlj.getPreJoinPredicate());
         predicate = nlj.getJoinPredicate();
@@ -315,12 +316,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.A WHERE R1.C > 0";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertNull(nlj.getPreJoinPredicate());
         predicate = nlj.getJoinPredicate();
@@ -342,12 +343,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.A WHERE R1.C > R2.C";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertNull(nlj.getPreJoinPredicate());
         predicate = nlj.getJoinPredicate();
@@ -372,14 +373,14 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R3.C AND R1.A > 0";
         pn = compileToTopDownTree(query, 7, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertNull(nlj.getPreJoinPredicate());
         predicate = nlj.getJoinPredicate();
@@ -414,12 +415,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C WHERE R1.A > 0";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertNull(nlj.getPreJoinPredicate());
         predicate = nlj.getJoinPredicate();
@@ -443,12 +444,12 @@ public class TestPlansJoin extends PlannerTestCase {
         query = "SELECT A, C FROM R1 JOIN R2 USING (A, C)";
         pn = compileToTopDownTree(query, 2, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertNull(nlj.getPreJoinPredicate());
         predicate = nlj.getJoinPredicate();
@@ -462,12 +463,12 @@ public class TestPlansJoin extends PlannerTestCase {
         query = "SELECT A, C FROM R1 JOIN R2 USING (A, C) WHERE A > 0";
         pn = compileToTopDownTree(query, 2, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertNull(nlj.getPreJoinPredicate());
         predicate = nlj.getJoinPredicate();
@@ -491,14 +492,14 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R3.C WHERE R1.A > 0";
         pn = compileToTopDownTree(query, 7, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertNull(nlj.getPreJoinPredicate());
         predicate = nlj.getJoinPredicate();
@@ -542,7 +543,7 @@ public class TestPlansJoin extends PlannerTestCase {
 
         query = "SELECT max(A) FROM R1 JOIN R2 USING(A)";
         pn = compileToTopDownTree(query, 1, PlanNodeType.SEND,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN, PlanNodeType.SEQSCAN);
         selectColumns = pn.getOutputSchema().getColumns();
         for (SchemaColumn sc : selectColumns) {
@@ -552,12 +553,12 @@ public class TestPlansJoin extends PlannerTestCase {
             assertNotSame(-1, tve.getColumnIndex());
         }
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         assertNotNull(AggregatePlanNode.getInlineAggregationNode(node));
 
         query = "SELECT distinct(A) FROM R1 JOIN R2 USING(A)";
         pn = compileToTopDownTree(query, 1, PlanNodeType.SEND,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN, PlanNodeType.SEQSCAN);
         selectColumns = pn.getOutputSchema().getColumns();
         for (SchemaColumn sc : selectColumns) {
@@ -571,7 +572,7 @@ public class TestPlansJoin extends PlannerTestCase {
         pn = compileToTopDownTree(query, 1, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
                 PlanNodeType.ORDERBY,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         selectColumns = pn.getOutputSchema().getColumns();
@@ -589,11 +590,11 @@ public class TestPlansJoin extends PlannerTestCase {
         assertProjectingCoordinator(lpn);
         pn = lpn.get(1);
         assertTopDownTree(pn, PlanNodeType.SEND,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(lpn.get(1), PlanNodeType.SEND,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertNull(nlj.getPreJoinPredicate());
         predicate = nlj.getJoinPredicate();
@@ -615,7 +616,7 @@ public class TestPlansJoin extends PlannerTestCase {
         query = "SELECT * FROM P1 LABEL LEFT JOIN R2 USING(A) WHERE A > 0";
         lpn = compileToFragments(query);
         node = followAssertedLeftChain(lpn.get(1), PlanNodeType.SEND,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertTrue(JoinType.LEFT == nlj.getJoinType());
         assertNull(nlj.getPreJoinPredicate());
@@ -641,11 +642,11 @@ public class TestPlansJoin extends PlannerTestCase {
 
         pn = lpn.get(1);
         assertTopDownTree(pn, PlanNodeType.SEND,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(lpn.get(1), PlanNodeType.SEND,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(JoinType.LEFT, nlj.getJoinType());
         assertNull(nlj.getPreJoinPredicate());
@@ -748,11 +749,11 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.A AND R2.C = 1 ";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN, PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn,PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         predicate = nlj.getJoinPredicate();
         assertExprTopDownTree(predicate, joinOp.toOperator(),
@@ -764,11 +765,11 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.A AND ABS(R2.C) = 1 ";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN, PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn,PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         predicate = nlj.getJoinPredicate();
         assertExprTopDownTree(predicate, joinOp.toOperator(),
@@ -902,11 +903,11 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + " ABS(R2.A) ";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN, PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn,PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         predicate = nlj.getJoinPredicate();
         assertExprTopDownTree(predicate, joinOp.toOperator(),
@@ -919,11 +920,11 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + " ABS(R2.A) ";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN, PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn,PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         predicate = nlj.getJoinPredicate();
         assertExprTopDownTree(predicate, joinOp.toOperator(),
@@ -1068,13 +1069,13 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R1.A WHERE R3.C > 0 AND R2.C >= 5";
         pn = compileToTopDownTree(query, 7, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.NESTLOOPINDEX,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertNull(nlj.getPreJoinPredicate());
         predicate = nlj.getJoinPredicate();
@@ -1186,12 +1187,12 @@ public class TestPlansJoin extends PlannerTestCase {
         query = "SELECT A, C FROM R2 JOIN R1 USING(A, C)";
         pn = compileToTopDownTree(query, 2, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         predicate = nlj.getJoinPredicate();
         assertExprTopDownTree(predicate, ExpressionType.CONJUNCTION_AND,
@@ -1257,12 +1258,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C";
         pn = compileToTopDownTree(query, 2, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         predicate = nlj.getJoinPredicate();
         assertExprTopDownTree(predicate, ExpressionType.CONJUNCTION_AND,
@@ -1316,6 +1317,60 @@ public class TestPlansJoin extends PlannerTestCase {
                 ExpressionType.VALUE_TUPLE, ExpressionType.VALUE_TUPLE);
     }
 
+    public void testHashJoinKeys() {
+        String query;
+        AbstractPlanNode pn;
+        HashJoinPlanNode hj;
+
+        // Equality and IS NOT DISTINCT FROM clauses become the hash keys,
+        // the inequality is only applied as part of the join predicate.
+        query = "SELECT * FROM R1 LEFT JOIN R2 ON R1.A = R2.A AND " +
+                "R1.C IS NOT DISTINCT FROM R2.C AND R1.D > R2.C";
+        pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
+                PlanNodeType.PROJECTION,
+                PlanNodeType.HASHJOIN,
+                PlanNodeType.SEQSCAN,
+                PlanNodeType.SEQSCAN);
+        hj = (HashJoinPlanNode) followAssertedLeftChain(pn, PlanNodeType.SEND,
+                PlanNodeType.PROJECTION,
+                PlanNodeType.HASHJOIN);
+        assertEquals(JoinType.LEFT, hj.getJoinType());
+        assertEquals(2, hj.getOuterHashExpressions().size());
+        assertEquals(2, hj.getInnerHashExpressions().size());
+        for (int ii = 0; ii < 2; ++ii) {
+            TupleValueExpression outer = (TupleValueExpression) hj.getOuterHashExpressions().get(ii);
+            TupleValueExpression inner = (TupleValueExpression) hj.getInnerHashExpressions().get(ii);
+            assertEquals("R1", outer.getTableName());
+            assertEquals("R2", inner.getTableName());
+            assertEquals(outer.getColumnName(), inner.getColumnName());
+        }
+        assertEquals(1, hj.getNullMatchingKeys().size());
+        assertEquals("C", ((TupleValueExpression) hj.getOuterHashExpressions()
+                .get(hj.getNullMatchingKeys().get(0))).getColumnName());
+        assertExprTopDownTree(hj.getJoinPredicate(), ExpressionType.CONJUNCTION_AND,
+                ExpressionType.CONJUNCTION_AND,
+                ExpressionType.COMPARE_EQUAL,
+                ExpressionType.VALUE_TUPLE, ExpressionType.VALUE_TUPLE,
+                ExpressionType.COMPARE_NOTDISTINCT,
+                ExpressionType.VALUE_TUPLE, ExpressionType.VALUE_TUPLE,
+                ExpressionType.COMPARE_LESSTHAN,
+                ExpressionType.VALUE_TUPLE, ExpressionType.VALUE_TUPLE);
+
+        // Full joins and joins without an equality key stay nested loops.
+        query = "SELECT * FROM R1 FULL JOIN R2 ON R1.A = R2.A";
+        compileToTopDownTree(query, 5, PlanNodeType.SEND,
+                PlanNodeType.PROJECTION,
+                PlanNodeType.NESTLOOP,
+                PlanNodeType.SEQSCAN,
+                PlanNodeType.SEQSCAN);
+        query = "SELECT * FROM R1 JOIN R2 ON R1.A > R2.A";
+        compileToTopDownTree(query, 5, PlanNodeType.SEND,
+                PlanNodeType.PROJECTION,
+                PlanNodeType.NESTLOOP,
+                PlanNodeType.SEQSCAN,
+                PlanNodeType.SEQSCAN);
+    }
+
     public void testDistributedInnerJoin() {
         for (JoinOp joinOp : JoinOp.JOIN_OPS) {
             perJoinOpTestDistributedInnerJoin(joinOp);
@@ -1379,12 +1434,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(JoinType.LEFT, nlj.getJoinType());
         assertNull(nlj.getPreJoinPredicate());
@@ -1403,12 +1458,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C AND R1.A = 5";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(JoinType.LEFT, nlj.getJoinType());
         predicate = nlj.getPreJoinPredicate();
@@ -1448,12 +1503,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(JoinType.LEFT, nlj.getJoinType());
         assertNull(nlj.getPreJoinPredicate());
@@ -1470,7 +1525,7 @@ public class TestPlansJoin extends PlannerTestCase {
         // Same but with distributed table
         query = "SELECT * FROM P1 RIGHT JOIN R2 ON P1.C" + joinOp + "R2.C";
         lpn = compileToFragments(query);
-        assertReplicatedLeftJoinCoordinator(lpn, "R2");
+        assertReplicatedLeftJoinCoordinator(lpn, PlanNodeType.HASHJOIN, "R2");
 
         pn = lpn.get(1);
         assertTopDownTree(pn, PlanNodeType.SEND,
@@ -1501,12 +1556,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertNull(nlj.getPreJoinPredicate());
         predicate = nlj.getJoinPredicate();
@@ -1527,12 +1582,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C AND R1.A > 0 AND R2.A < 0";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         predicate = nlj.getPreJoinPredicate();
         assertExprTopDownTree(predicate, ExpressionType.COMPARE_GREATERTHAN,
@@ -1557,12 +1612,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C AND (R1.A > 0 OR R2.A < 0)";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertNull(nlj.getPreJoinPredicate());
         predicate = nlj.getJoinPredicate();
@@ -1606,12 +1661,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C WHERE R1.A > 0 AND R2.A IS NULL AND (R1.C > R2.C OR R2.C IS NULL)";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(JoinType.LEFT, nlj.getJoinType());
         assertNull(nlj.getPreJoinPredicate());
@@ -1644,12 +1699,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.A WHERE R3.A > 3 AND R3.C < 0";
         pn = compileToTopDownTree(query, 4, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.INDEXSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(JoinType.LEFT, nlj.getJoinType());
         assertNull(nlj.getPreJoinPredicate());
@@ -1731,7 +1786,7 @@ public class TestPlansJoin extends PlannerTestCase {
         assertProjectingCoordinator(lpn);
         pn = lpn.get(1);
         assertTopDownTree(pn, PlanNodeType.SEND,
-        PlanNodeType.NESTLOOP,
+        PlanNodeType.HASHJOIN,
         PlanNodeType.SEQSCAN,
         PlanNodeType.SEQSCAN);
 
@@ -1740,7 +1795,7 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C";
         lpn = compileToFragments(query);
         assertEquals(2, lpn.size());
-        assertReplicatedLeftJoinCoordinator(lpn, "R2");
+        assertReplicatedLeftJoinCoordinator(lpn, PlanNodeType.HASHJOIN, "R2");
         pn = lpn.get(1);
         assertTopDownTree(pn, PlanNodeType.SEND,
                 PlanNodeType.SEQSCAN);
@@ -1751,7 +1806,7 @@ public class TestPlansJoin extends PlannerTestCase {
         lpn = compileToFragments(query);
         assertEquals(2, lpn.size());
         assertTopDownTree(lpn.get(1), PlanNodeType.SEND,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
 
@@ -1784,12 +1839,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C";
         pn = compileToTopDownTree(query, 4, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(JoinType.LEFT, nlj.getJoinType());
         assertNull(nlj.getPreJoinPredicate());
@@ -1809,12 +1864,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C";
         pn = compileToTopDownTree(query, 4, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(JoinType.LEFT, nlj.getJoinType());
         assertNull(nlj.getPreJoinPredicate());
@@ -2000,7 +2055,7 @@ public class TestPlansJoin extends PlannerTestCase {
         assertEquals(2, lpn.size());
         pn = lpn.get(1);
         assertTopDownTree(pn, PlanNodeType.SEND,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
 
@@ -2008,7 +2063,7 @@ public class TestPlansJoin extends PlannerTestCase {
         query = "SELECT * FROM R2 LEFT JOIN P1 ON P1.C" +
                 joinOp + "R2.C";
         lpn = compileToFragments(query);
-        assertReplicatedLeftJoinCoordinator(lpn, "R2");
+        assertReplicatedLeftJoinCoordinator(lpn, PlanNodeType.HASHJOIN, "R2");
         pn = lpn.get(1);
         assertTopDownTree(pn, PlanNodeType.SEND,
                 PlanNodeType.SEQSCAN);
@@ -2021,7 +2076,7 @@ public class TestPlansJoin extends PlannerTestCase {
         assertEquals(2, lpn.size());
         pn = lpn.get(1);
         assertTopDownTree(pn, PlanNodeType.SEND,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
 
@@ -2067,7 +2122,7 @@ public class TestPlansJoin extends PlannerTestCase {
         lpn = compileToFragments(query);
         assertEquals(2, lpn.size());
         //*enable to debug*/printExplainPlan(lpn);
-        assertReplicatedLeftJoinCoordinator(lpn, "R3");
+        assertReplicatedLeftJoinCoordinator(lpn, PlanNodeType.NESTLOOP, "R3");
         pn = lpn.get(0);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
@@ -2170,12 +2225,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C WHERE R2.C IS NOT NULL";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP);
+                PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(nlj.getJoinType(), JoinType.INNER);
 
@@ -2183,12 +2238,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C WHERE R2.C > 0";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                  PlanNodeType.PROJECTION,
-                 PlanNodeType.NESTLOOP);
+                 PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(nlj.getJoinType(), JoinType.INNER);
 
@@ -2196,12 +2251,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C WHERE R1.C > 0";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                  PlanNodeType.PROJECTION,
-                 PlanNodeType.NESTLOOP);
+                 PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(nlj.getJoinType(), JoinType.INNER);
 
@@ -2236,12 +2291,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C WHERE ABS(R2.C) < 10";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                  PlanNodeType.PROJECTION,
-                 PlanNodeType.NESTLOOP);
+                 PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(nlj.getJoinType(), JoinType.INNER);
 
@@ -2249,12 +2304,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C WHERE ABS(R1.C) < 10";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                  PlanNodeType.PROJECTION,
-                 PlanNodeType.NESTLOOP);
+                 PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(nlj.getJoinType(), JoinType.INNER);
 
@@ -2262,12 +2317,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C WHERE ABS(R1.C) < 10";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                  PlanNodeType.PROJECTION,
-                 PlanNodeType.NESTLOOP);
+                 PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(nlj.getJoinType(), JoinType.LEFT);
 
@@ -2275,12 +2330,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C WHERE ABS(R2.C) < 10";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                  PlanNodeType.PROJECTION,
-                 PlanNodeType.NESTLOOP);
+                 PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(nlj.getJoinType(), JoinType.LEFT);
 
@@ -2301,12 +2356,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C WHERE ABS(R2.C) <  10 OR R2.C IS NOT NULL";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                  PlanNodeType.PROJECTION,
-                 PlanNodeType.NESTLOOP);
+                 PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(nlj.getJoinType(), JoinType.INNER);
 
@@ -2314,12 +2369,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C WHERE ABS(R1.C) <  10 AND R1.C > 3";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                  PlanNodeType.PROJECTION,
-                 PlanNodeType.NESTLOOP);
+                 PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(nlj.getJoinType(), JoinType.LEFT);
 
@@ -2327,12 +2382,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R2.C WHERE ABS(R1.C) <  10 OR R2.C IS NOT NULL";
         pn = compileToTopDownTree(query, 5, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                  PlanNodeType.PROJECTION,
-                 PlanNodeType.NESTLOOP);
+                 PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(nlj.getJoinType(), JoinType.LEFT);
 
@@ -2341,13 +2396,13 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R1.A WHERE R2.A > 3";
         pn = compileToTopDownTree(query, 4, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         //* enable for debug */ System.out.println(pn.toExplainPlanString());
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                  PlanNodeType.PROJECTION,
-                 PlanNodeType.NESTLOOP);
+                 PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(nlj.getJoinType(), JoinType.INNER);
         assertNull(nlj.getPreJoinPredicate());
@@ -2360,12 +2415,12 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R1.A WHERE R2.A IS NULL";
         pn = compileToTopDownTree(query, 4, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                  PlanNodeType.PROJECTION,
-                 PlanNodeType.NESTLOOP);
+                 PlanNodeType.HASHJOIN);
         nlj = (NestLoopPlanNode) node;
         assertEquals(nlj.getJoinType(), JoinType.LEFT);
         assertNull(nlj.getPreJoinPredicate());
@@ -2482,11 +2537,11 @@ public class TestPlansJoin extends PlannerTestCase {
         assertProjectingCoordinator(lpn);
 
         assertTopDownTree(lpn.get(1), PlanNodeType.SEND,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.NESTLOOPINDEX,
                 PlanNodeType.NESTLOOPINDEX,
-                PlanNodeType.NESTLOOP,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN,
@@ -2503,11 +2558,11 @@ public class TestPlansJoin extends PlannerTestCase {
         assertProjectingCoordinator(lpn);
 
         assertTopDownTree(lpn.get(1), PlanNodeType.SEND,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.NESTLOOPINDEX,
                 PlanNodeType.NESTLOOPINDEX,
-                PlanNodeType.NESTLOOP,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN,
@@ -2544,7 +2599,7 @@ public class TestPlansJoin extends PlannerTestCase {
         compileToTopDownTree(query, 2, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
                 PlanNodeType.ORDERBY,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
 
@@ -2552,7 +2607,7 @@ public class TestPlansJoin extends PlannerTestCase {
         compileToTopDownTree(query, 2, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
                 PlanNodeType.ORDERBY,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
 
@@ -2565,8 +2620,8 @@ public class TestPlansJoin extends PlannerTestCase {
                 " INNER JOIN R3 USING(C);";
         compileToTopDownTree(query, 2, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
@@ -2585,7 +2640,7 @@ public class TestPlansJoin extends PlannerTestCase {
         compileToTopDownTree(query, 1, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
                 PlanNodeType.NESTLOOP,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
@@ -2594,7 +2649,7 @@ public class TestPlansJoin extends PlannerTestCase {
         compileToTopDownTree(query, 1, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
                 PlanNodeType.NESTLOOP,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
@@ -2603,7 +2658,7 @@ public class TestPlansJoin extends PlannerTestCase {
         compileToTopDownTree(query, 2, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
                 PlanNodeType.NESTLOOP,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
@@ -2762,7 +2817,7 @@ public class TestPlansJoin extends PlannerTestCase {
                 joinOp + "R3.A";
         compileToTopDownTree(query, 1, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 null,
                 PlanNodeType.SEQSCAN);
 
@@ -2843,8 +2898,8 @@ public class TestPlansJoin extends PlannerTestCase {
         query = "SELECT C FROM R1 JOIN R2 USING (C) JOIN R3 USING (C)";
         pn = compileToTopDownTree(query, 1, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
@@ -2859,7 +2914,7 @@ public class TestPlansJoin extends PlannerTestCase {
         query = "SELECT C FROM R1 LEFT JOIN R2 USING (C)";
         pn = compileToTopDownTree(query, 1, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         selectColumns = pn.getOutputSchema().getColumns();
@@ -2873,7 +2928,7 @@ public class TestPlansJoin extends PlannerTestCase {
         query = "SELECT C FROM R1 RIGHT JOIN R2 USING (C)";
         pn = compileToTopDownTree(query, 1, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         selectColumns = pn.getOutputSchema().getColumns();
@@ -2894,12 +2949,12 @@ public class TestPlansJoin extends PlannerTestCase {
         query = "SELECT * FROM R2 JOIN R1 USING (C) WHERE R1.A > 0";
         pn = compileToTopDownTree(query, 4, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN);
         sn = (AbstractScanPlanNode) node;
         assertEquals("R1", sn.getTargetTableName());
@@ -2908,12 +2963,12 @@ public class TestPlansJoin extends PlannerTestCase {
         query = "SELECT * FROM R1 JOIN R2 USING (C) WHERE R1.A > 0 AND R2.A = 3";
         pn = compileToTopDownTree(query, 4, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN);
         sn = (AbstractScanPlanNode) node;
         assertEquals("R2", sn.getTargetTableName());
@@ -2922,12 +2977,12 @@ public class TestPlansJoin extends PlannerTestCase {
         query = "SELECT * FROM R1 JOIN R2 USING (C) WHERE R1.A > 0 AND R1.A < 3 AND R2.A = 3";
         pn = compileToTopDownTree(query, 4, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN);
         sn = (AbstractScanPlanNode) node;
         assertEquals("R2", sn.getTargetTableName());
@@ -2936,12 +2991,12 @@ public class TestPlansJoin extends PlannerTestCase {
         query = "SELECT * FROM R1 JOIN R2 USING (C) WHERE R1.A = 0 AND R1.D < 3 AND R2.A = 3";
         pn = compileToTopDownTree(query, 4, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN,
                 PlanNodeType.SEQSCAN);
         node = followAssertedLeftChain(pn, PlanNodeType.SEND,
                 PlanNodeType.PROJECTION,
-                PlanNodeType.NESTLOOP,
+                PlanNodeType.HASHJOIN,
                 PlanNodeType.SEQSCAN);
         sn = (AbstractScanPlanNode) node;
         assertEquals("R1", sn.getTargetTableName());
@@ -393,7 +393,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
 
         pn = planNodes.get(1);
         assertTrue(pn instanceof SendPlanNode);
-        checkJoinNode(pn, PlanNodeType.NESTLOOP, nljCount);
+        checkScanJoinNodes(pn, nljCount);
         checkJoinNode(pn, PlanNodeType.NESTLOOPINDEX, nlijCount);
     }
 
@@ -1393,15 +1393,23 @@ public class TestPlansSubQueries extends PlannerTestCase {
         }
     }
 
+    // Joins without an inner index are planned as nest loop or hash joins.
+    private void checkScanJoinNodes(AbstractPlanNode root, int num) {
+        if (num > 0) {
+            assertEquals(num, root.findAllNodesOfType(PlanNodeType.NESTLOOP).size() +
+                    root.findAllNodesOfType(PlanNodeType.HASHJOIN).size());
+        }
+    }
+
     private void checkPushedDownJoins(int nestLoopCount, int nestLoopIndexCount, String joinQuery) {
         List<AbstractPlanNode> planNodes = compileToFragments(joinQuery);
         assertEquals(2, planNodes.size());
         //* enable to debug */ System.out.println(planNodes.get(0).toExplainPlanString());
-        checkJoinNode(planNodes.get(0), PlanNodeType.NESTLOOP, 0);
+        checkScanJoinNodes(planNodes.get(0), 0);
         checkJoinNode(planNodes.get(0), PlanNodeType.NESTLOOPINDEX, 0);
         // Join on distributed node
         //* enable to debug */ System.out.println(planNodes.get(1).toExplainPlanString());
-        checkJoinNode(planNodes.get(1), PlanNodeType.NESTLOOP, nestLoopCount);
+        checkScanJoinNodes(planNodes.get(1), nestLoopCount);
         checkJoinNode(planNodes.get(1), PlanNodeType.NESTLOOPINDEX, nestLoopIndexCount);
     }
 
@@ -1654,7 +1662,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
         pn = planNodes.get(1).getChild(0);
         // this join can be pushed down.
         //* enable to debug */ System.out.println(pn.toExplainPlanString());
-        assertTrue(pn.toExplainPlanString().contains("LOOP INNER JOIN"));
+        assertTrue(pn.toExplainPlanString().contains("HASH INNER JOIN"));
         pn = pn.getChild(0);
         // This is a trivial subquery result scan.
         assertTrue(pn instanceof SeqScanPlanNode);
@@ -1726,7 +1734,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
 
         assertTrue(planNodes.get(1).toExplainPlanString().contains("AGGREGATION"));
         assertTrue(planNodes.get(1).toExplainPlanString().contains("INDEX INNER JOIN"));
-        assertTrue(planNodes.get(1).toExplainPlanString().contains("LOOP INNER JOIN"));
+        assertTrue(planNodes.get(1).toExplainPlanString().contains("HASH INNER JOIN"));
 
         // Distinct without GROUP BY
         String sql1, sql2;
@@ -1757,7 +1765,7 @@ public class TestPlansSubQueries extends PlannerTestCase {
 
         assertTrue(planNodes.get(1).toExplainPlanString().contains("AGGREGATION"));
         assertTrue(planNodes.get(1).toExplainPlanString().contains("INDEX INNER JOIN"));
-        assertTrue(planNodes.get(1).toExplainPlanString().contains("LOOP INNER JOIN"));
+        assertTrue(planNodes.get(1).toExplainPlanString().contains("HASH INNER JOIN"));
 
         failToCompile(
                 "SELECT * FROM (SELECT DISTINCT A FROM P1 GROUP BY A, C) T1, P2 " +
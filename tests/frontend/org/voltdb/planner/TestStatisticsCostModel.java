@@ -0,0 +1,138 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.planner;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.voltdb.VoltTable;
+import org.voltdb.compiler.TableStatistics;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.AbstractScanPlanNode;
+import org.voltdb.plannodes.IndexScanPlanNode;
+import org.voltdb.plannodes.NestLoopIndexPlanNode;
+import org.voltdb.types.PlanNodeType;
+
+public class TestStatisticsCostModel extends PlannerTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        setupSchema(TestStatisticsCostModel.class.getResource("testplans-statistics-ddl.sql"),
+                    "teststatisticscostmodel", false);
+    }
+
+    private static TableStatistics.Table table(String name, long rowCount, Object... columnsAndDistinctValues) {
+        Map<String, Long> distinctValues = new HashMap<>();
+        for (int i = 0; i < columnsAndDistinctValues.length; i += 2) {
+            distinctValues.put((String) columnsAndDistinctValues[i],
+                               ((Number) columnsAndDistinctValues[i + 1]).longValue());
+        }
+        return new TableStatistics.Table(name, rowCount, distinctValues, 0);
+    }
+
+    private IndexScanPlanNode findIndexScan(String sql) {
+        AbstractPlanNode pn = compile(sql);
+        List<AbstractPlanNode> scans = pn.findAllNodesOfType(PlanNodeType.INDEXSCAN);
+        assertEquals(1, scans.size());
+        return (IndexScanPlanNode) scans.get(0);
+    }
+
+    private NestLoopIndexPlanNode findNestLoopIndex(String sql) {
+        AbstractPlanNode pn = compile(sql);
+        List<AbstractPlanNode> joins = pn.findAllNodesOfType(PlanNodeType.NESTLOOPINDEX);
+        assertEquals(1, joins.size());
+        return (NestLoopIndexPlanNode) joins.get(0);
+    }
+
+    public void testIndexSelectionFollowsDistinctValues() {
+        final String sql = "SELECT * FROM ORDERS WHERE CUST_ID = ? AND REGION = ?;";
+
+        setTableStatistics(TableStatistics.of(Arrays.asList(
+                table("ORDERS", 1000000, "ID", 1000000, "CUST_ID", 100000, "REGION", 5))));
+        assertEquals("ORDERS_CUST", findIndexScan(sql).getTargetIndexName());
+
+        setTableStatistics(TableStatistics.of(Arrays.asList(
+                table("ORDERS", 1000000, "ID", 1000000, "CUST_ID", 5, "REGION", 100000))));
+        assertEquals("ORDERS_REGION", findIndexScan(sql).getTargetIndexName());
+    }
+
+    public void testJoinOrderFollowsRowCounts() {
+        final String sql = "SELECT * FROM R1, R2 WHERE R1.A = R2.A AND R1.B > ?;";
+
+        // the small table drives the join, the large one is probed through its index
+        setTableStatistics(TableStatistics.of(Arrays.asList(
+                table("R1", 10, "A", 10, "B", 10),
+                table("R2", 1000000, "A", 1000000, "B", 1000))));
+        NestLoopIndexPlanNode join = findNestLoopIndex(sql);
+        assertEquals("R1", ((AbstractScanPlanNode) join.getChild(0)).getTargetTableName());
+        assertEquals("R2", join.getInlineIndexScan().getTargetTableName());
+
+        setTableStatistics(TableStatistics.of(Arrays.asList(
+                table("R1", 1000000, "A", 1000000, "B", 1000),
+                table("R2", 10, "A", 10, "B", 10))));
+        join = findNestLoopIndex(sql);
+        assertEquals("R2", ((AbstractScanPlanNode) join.getChild(0)).getTargetTableName());
+        assertEquals("R1", join.getInlineIndexScan().getTargetTableName());
+    }
+
+    public void testJoinFollowsFilterSelectivity() {
+        final String sql = "SELECT * FROM ORDERS, CUSTOMERS " +
+                "WHERE ORDERS.CUST_ID = CUSTOMERS.ID AND CUSTOMERS.KIND = ?;";
+
+        // a rare kind of customer, find the customers first
+        setTableStatistics(TableStatistics.of(Arrays.asList(
+                table("ORDERS", 1000000, "ID", 1000000, "CUST_ID", 100000, "REGION", 5),
+                table("CUSTOMERS", 100000, "ID", 100000, "KIND", 10000))));
+        NestLoopIndexPlanNode join = findNestLoopIndex(sql);
+        assertEquals("CUSTOMERS", ((AbstractScanPlanNode) join.getChild(0)).getTargetTableName());
+        assertEquals("ORDERS_CUST", join.getInlineIndexScan().getTargetIndexName());
+    }
+
+    public void testStatisticsRoundTrip() {
+        TableStatistics first = TableStatistics.of(Arrays.asList(
+                table("R1", 10, "A", 10, "B", 3),
+                table("R2", 20, "A", 20)));
+        VoltTable vt = first.toVoltTable();
+        assertEquals(5, vt.getRowCount());
+
+        TableStatistics copy = TableStatistics.fromVoltTable(vt);
+        assertEquals(2, copy.getTableCount());
+        assertEquals(10, copy.getTable("R1").getRowCount());
+        assertEquals(3, copy.getTable("R1").getDistinctValues("B"));
+        assertEquals(-1, copy.getTable("R2").getDistinctValues("B"));
+
+        TableStatistics merged = copy.merge(TableStatistics.of(Arrays.asList(
+                table("R2", 40, "A", 40),
+                table("DROPPED", 5))));
+        assertEquals(3, merged.getTableCount());
+        assertEquals(10, merged.getTable("R1").getRowCount());
+        assertEquals(40, merged.getTable("R2").getRowCount());
+
+        TableStatistics retained = merged.retainTables(getDatabase());
+        assertEquals(2, retained.getTableCount());
+        assertNull(retained.getTable("DROPPED"));
+    }
+}
@@ -44,6 +44,7 @@
 package org.voltdb.planner.eegentests;
 
 import org.voltdb.catalog.Database;
+import org.voltdb.types.PlanNodeType;
 
 /**
  * This is not a jUnit test, it's a Java application, which generates EE
@@ -739,6 +740,109 @@ public class GenerateEETests extends EEPlanGenerator {
         generateTests("executors", "TestGeneratedString", GSDB);
     }
 
+    /**
+     * The hash join and the nested loop join must agree.  Each hash join
+     * test has a twin whose join condition is the same equality spelled as
+     * a pair of inequalities, which only a nested loop join can evaluate,
+     * and both are checked against the same answer.
+     */
+    public void generatedHashJoinPlan() throws Exception {
+        Database db = getDatabase();
+        final TableConfig outerConfig = new TableConfig("HJ_OUTER",
+                                                        db,
+                                                        new Integer[][] {
+                                                            // A   B    C
+                                                            {  1, 10, 100 },
+                                                            {  2, 20, 200 },
+                                                            {  3, 20, 300 },
+                                                            // no match
+                                                            {  4, 40, 400 },
+                                                            {  5, 50, 500 } } );
+        final TableConfig innerConfig = new TableConfig("HJ_INNER",
+                                                        db,
+                                                        new Integer[][] {
+                                                            // A   B     C
+                                                            {  1, 10, 1000 },
+                                                            {  1, 20, 2000 },
+                                                            {  2, 20, 2001 },
+                                                            {  3, 50, 5000 },
+                                                            // no match
+                                                            {  4, 60, 6000 },
+                                                            {  5, 10, 1001 } } );
+        final TableConfig innerOutput = new TableConfig("hash_join_output",
+                                                        db,
+                                                        new Integer[][] {
+                                                            {  1, 10, 1000 },
+                                                            {  1, 10, 1001 },
+                                                            {  2, 20, 2000 },
+                                                            {  2, 20, 2001 },
+                                                            {  3, 20, 2000 },
+                                                            {  3, 20, 2001 },
+                                                            {  5, 50, 5000 } } );
+        final TableConfig leftOutput = new TableConfig("hash_join_left_output",
+                                                       db,
+                                                       new Integer[][] {
+                                                           {  1, 10, 1000 },
+                                                           {  1, 10, 1001 },
+                                                           {  2, 20, 2000 },
+                                                           {  2, 20, 2001 },
+                                                           {  3, 20, 2000 },
+                                                           {  3, 20, 2001 },
+                                                           {  4, 40,   -1 },
+                                                           {  5, 50, 5000 } } );
+        final TableConfig twoKeyOutput = new TableConfig("hash_join_two_key_output",
+                                                         db,
+                                                         new Integer[][] {
+                                                             {  1, 10, 1000 },
+                                                             {  2, 20, 2001 } } );
+        DBConfig hashJoinDB = new DBConfig(getClass(),
+                                           GenerateEETests.class.getResource(DDL_FILENAME),
+                                           getCatalogString(),
+                                           outerConfig,
+                                           innerConfig,
+                                           innerOutput,
+                                           leftOutput,
+                                           twoKeyOutput);
+        addJoinTest(hashJoinDB, "test_hash_join_inner",
+                    "select HJ_OUTER.A, HJ_OUTER.B, HJ_INNER.C from HJ_OUTER join HJ_INNER "
+                    + "on HJ_OUTER.B = HJ_INNER.B order by 1, 2, 3;",
+                    PlanNodeType.HASHJOIN, innerOutput);
+        addJoinTest(hashJoinDB, "test_nested_loop_inner",
+                    "select HJ_OUTER.A, HJ_OUTER.B, HJ_INNER.C from HJ_OUTER join HJ_INNER "
+                    + "on HJ_OUTER.B >= HJ_INNER.B and HJ_OUTER.B <= HJ_INNER.B order by 1, 2, 3;",
+                    PlanNodeType.NESTLOOP, innerOutput);
+        addJoinTest(hashJoinDB, "test_hash_join_left",
+                    "select HJ_OUTER.A, HJ_OUTER.B, coalesce(HJ_INNER.C, -1) from HJ_OUTER left join HJ_INNER "
+                    + "on HJ_OUTER.B = HJ_INNER.B order by 1, 2, 3;",
+                    PlanNodeType.HASHJOIN, leftOutput);
+        addJoinTest(hashJoinDB, "test_nested_loop_left",
+                    "select HJ_OUTER.A, HJ_OUTER.B, coalesce(HJ_INNER.C, -1) from HJ_OUTER left join HJ_INNER "
+                    + "on HJ_OUTER.B >= HJ_INNER.B and HJ_OUTER.B <= HJ_INNER.B order by 1, 2, 3;",
+                    PlanNodeType.NESTLOOP, leftOutput);
+        addJoinTest(hashJoinDB, "test_hash_join_two_keys",
+                    "select HJ_OUTER.A, HJ_OUTER.B, HJ_INNER.C from HJ_OUTER join HJ_INNER "
+                    + "on HJ_OUTER.A = HJ_INNER.A and HJ_OUTER.B = HJ_INNER.B order by 1, 2, 3;",
+                    PlanNodeType.HASHJOIN, twoKeyOutput);
+        addJoinTest(hashJoinDB, "test_nested_loop_two_keys",
+                    "select HJ_OUTER.A, HJ_OUTER.B, HJ_INNER.C from HJ_OUTER join HJ_INNER "
+                    + "on HJ_OUTER.A >= HJ_INNER.A and HJ_OUTER.A <= HJ_INNER.A "
+                    + "and HJ_OUTER.B >= HJ_INNER.B and HJ_OUTER.B <= HJ_INNER.B order by 1, 2, 3;",
+                    PlanNodeType.NESTLOOP, twoKeyOutput);
+        generateTests("executors", "TestGeneratedHashJoin", hashJoinDB);
+    }
+
+    /**
+     * Add a test, after making sure the planner still picks the join
+     * the test is meant to exercise.
+     */
+    private void addJoinTest(DBConfig db, String testName, String sql,
+                             PlanNodeType joinType, TableConfig expectedOutput) {
+        if (! compile(sql).hasAnyNodeOfType(joinType)) {
+            throw new IllegalStateException("Test " + testName + " is not planned as a " + joinType + ": " + sql);
+        }
+        db.addTest(new TestConfig(testName, sql, false, expectedOutput));
+    }
+
 
     @Override
     protected void tearDown() throws Exception {
@@ -757,6 +861,7 @@ public class GenerateEETests extends EEPlanGenerator {
             tg.generatedSumPlan();
             tg.generatedRankPlan();
             tg.generatedStringPlan();
+            tg.generatedHashJoinPlan();
         } catch (Exception e) {
             System.err.printf("Unexpected exception: %s\n", e.getMessage());
             e.printStackTrace();
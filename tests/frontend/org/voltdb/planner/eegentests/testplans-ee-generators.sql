@@ -11,6 +11,11 @@ drop table test_join if exists;
 drop table XXX if exists;
 drop table rank_output if exists;
 drop table rank_dense_output if exists;
+drop table HJ_OUTER if exists;
+drop table HJ_INNER if exists;
+drop table hash_join_output if exists;
+drop table hash_join_left_output if exists;
+drop table hash_join_two_key_output if exists;
 
 CREATE TABLE T (
   A INTEGER,
@@ -103,3 +108,33 @@ create table rank_dense_output (
   C integer,
   R integer
 );
+
+create table HJ_OUTER (
+  A integer,
+  B integer,
+  C integer
+);
+
+create table HJ_INNER (
+  A integer,
+  B integer,
+  C integer
+);
+
+create table hash_join_output (
+  A integer,
+  B integer,
+  C integer
+);
+
+create table hash_join_left_output (
+  A integer,
+  B integer,
+  C integer
+);
+
+create table hash_join_two_key_output (
+  A integer,
+  B integer,
+  C integer
+);
@@ -0,0 +1,22 @@
+CREATE TABLE T (
+    A INTEGER NOT NULL,
+    B VARCHAR(20),
+    C BIGINT,
+    D FLOAT,
+    E TIMESTAMP,
+    F DECIMAL,
+    G TINYINT,
+    H VARBINARY(16),
+    PRIMARY KEY (A)
+);
+PARTITION TABLE T ON COLUMN A;
+
+CREATE TABLE R (
+    X INTEGER NOT NULL,
+    Y VARCHAR(64 BYTES) DEFAULT 'z',
+    Z SMALLINT DEFAULT 3,
+    P GEOGRAPHY_POINT
+);
+CREATE INDEX RX ON R (X);
+
+CREATE VIEW V (X, N) AS SELECT X, COUNT(*) FROM R GROUP BY X;
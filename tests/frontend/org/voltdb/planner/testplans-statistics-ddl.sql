@@ -0,0 +1,28 @@
+CREATE TABLE ORDERS (
+	ID INTEGER NOT NULL,
+	CUST_ID INTEGER NOT NULL,
+	REGION INTEGER NOT NULL,
+	AMOUNT BIGINT,
+	PRIMARY KEY (ID)
+);
+CREATE INDEX ORDERS_CUST ON ORDERS (CUST_ID);
+CREATE INDEX ORDERS_REGION ON ORDERS (REGION);
+
+CREATE TABLE CUSTOMERS (
+	ID INTEGER NOT NULL,
+	KIND INTEGER NOT NULL,
+	PRIMARY KEY (ID)
+);
+CREATE INDEX CUSTOMERS_KIND ON CUSTOMERS (KIND);
+
+CREATE TABLE R1 (
+	A INTEGER NOT NULL,
+	B INTEGER NOT NULL
+);
+CREATE INDEX R1_A ON R1 (A);
+
+CREATE TABLE R2 (
+	A INTEGER NOT NULL,
+	B INTEGER NOT NULL
+);
+CREATE INDEX R2_A ON R2 (A);
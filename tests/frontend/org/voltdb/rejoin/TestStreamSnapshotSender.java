@@ -0,0 +1,225 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.rejoin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.voltcore.messaging.Mailbox;
+import org.voltcore.messaging.VoltMessage;
+import org.voltcore.utils.DBBPool;
+import org.voltdb.exceptions.SerializableException;
+import org.voltdb.rejoin.StreamSnapshotAckReceiver.InflightWindow;
+import org.voltdb.rejoin.StreamSnapshotDataTarget.SendWork;
+import org.voltdb.rejoin.StreamSnapshotDataTarget.SnapshotSender;
+
+import com.google_voltpatches.common.util.concurrent.SettableFuture;
+
+public class TestStreamSnapshotSender {
+
+    /**
+     * Acks are plain messages, the factory knows which block each one acks.
+     */
+    private static class AckMessage extends VoltMessage {
+        final long m_targetId;
+        final int m_blockIndex;
+        final boolean m_eos;
+
+        AckMessage(long targetId, int blockIndex, boolean eos) {
+            m_targetId = targetId;
+            m_blockIndex = blockIndex;
+            m_eos = eos;
+        }
+
+        @Override
+        protected void initFromBuffer(ByteBuffer buf) {}
+
+        @Override
+        public void flattenToBuffer(ByteBuffer buf) {}
+    }
+
+    private static class TestMessageFactory implements StreamSnapshotBase.MessageFactory {
+        @Override
+        public VoltMessage makeDataMessage(long targetId, byte[] data) {
+            return new RejoinDataMessage(targetId, data);
+        }
+
+        @Override
+        public boolean isAckEOS(VoltMessage msg) {
+            return ((AckMessage) msg).m_eos;
+        }
+
+        @Override
+        public long getAckTargetId(VoltMessage msg) {
+            return ((AckMessage) msg).m_targetId;
+        }
+
+        @Override
+        public int getAckBlockIndex(VoltMessage msg) {
+            return ((AckMessage) msg).m_blockIndex;
+        }
+
+        @Override
+        public SerializableException getException(VoltMessage msg) {
+            return null;
+        }
+    }
+
+    private static SendWork block(long targetId, InflightWindow window) {
+        ByteBuffer buf = ByteBuffer.allocate(1024);
+        buf.put(new byte[1024]);
+        buf.flip();
+        return new SendWork(targetId, 0, DBBPool.wrapBB(buf), SettableFuture.<Boolean>create(), window, null);
+    }
+
+    @Test
+    public void testWindowAcquireAndRelease() throws Exception {
+        InflightWindow window = new InflightWindow(2);
+        assertTrue(window.acquire(0, TimeUnit.MILLISECONDS));
+        assertTrue(window.acquire(0, TimeUnit.MILLISECONDS));
+        assertEquals(2, window.getInflight());
+
+        // full, times out
+        long start = System.nanoTime();
+        assertFalse(window.acquire(100, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+
+        window.release();
+        assertEquals(1, window.getInflight());
+        assertTrue(window.acquire(0, TimeUnit.MILLISECONDS));
+
+        // an extra release does not open more slots than the size
+        window.reset();
+        window.release();
+        assertEquals(0, window.getInflight());
+        assertEquals(2, window.getSize());
+    }
+
+    @Test
+    public void testReleaseWakesWaiter() throws Exception {
+        final InflightWindow window = new InflightWindow(1);
+        assertTrue(window.acquire(0, TimeUnit.MILLISECONDS));
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    if (window.acquire(1, TimeUnit.MINUTES)) {
+                        acquired.countDown();
+                    }
+                } catch (InterruptedException e) {}
+            }
+        };
+        waiter.start();
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        window.release();
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        waiter.join();
+        assertEquals(1, window.getInflight());
+    }
+
+    @Test
+    public void testStalledReceiver() throws Exception {
+        Mailbox mb = mock(Mailbox.class);
+        SnapshotSender sender = new SnapshotSender(mb, new TestMessageFactory(), 2, 1);
+        sender.registerDataTarget(0);
+        sender.start();
+
+        // the receiver never acks, only a window worth of blocks goes out
+        InflightWindow window = new InflightWindow(2);
+        List<SendWork> works = new ArrayList<SendWork>();
+        for (int i = 0; i < 5; i++) {
+            SendWork work = block(0, window);
+            works.add(work);
+            sender.offer(work);
+        }
+        verify(mb, timeout(10000).times(2)).send(anyLong(), any(VoltMessage.class));
+        Thread.sleep(500);
+        verify(mb, times(2)).send(anyLong(), any(VoltMessage.class));
+        assertEquals(2, window.getInflight());
+        assertTrue(works.get(0).m_future.isDone());
+        assertFalse(works.get(2).m_future.isDone());
+
+        // an ack frees one slot
+        window.release();
+        verify(mb, timeout(10000).times(3)).send(anyLong(), any(VoltMessage.class));
+        assertEquals(2, window.getInflight());
+
+        // the stream failed, what is still waiting is dropped without being sent
+        works.get(3).discard();
+        works.get(4).discard();
+        window.reset();
+        works.get(4).m_future.get(10, TimeUnit.SECONDS);
+        verify(mb, times(3)).send(anyLong(), any(VoltMessage.class));
+        assertEquals(0, window.getInflight());
+
+        sender.offer(new SendWork());
+        assertNull(sender.m_lastException);
+        assertEquals(3, sender.m_worksSent.get(0L).get());
+    }
+
+    @Test
+    public void testAcksReleaseWindow() throws Exception {
+        Mailbox mb = mock(Mailbox.class);
+        when(mb.recvBlocking(anyLong())).thenReturn(new AckMessage(7, 0, false),
+                                                    new AckMessage(7, 1, false),
+                                                    new AckMessage(7, -1, true));
+        StreamSnapshotAckReceiver receiver = new StreamSnapshotAckReceiver(mb, new TestMessageFactory(), 4);
+        final List<Integer> acked = new ArrayList<Integer>();
+        receiver.setCallback(7, new StreamSnapshotAckReceiver.AckCallback() {
+            @Override
+            public void receiveAck(int blockIndex) {
+                acked.add(blockIndex);
+            }
+        });
+        InflightWindow window = receiver.getWindow(7);
+        assertEquals(4, window.getSize());
+        assertTrue(window.acquire(0, TimeUnit.MILLISECONDS));
+        assertTrue(window.acquire(0, TimeUnit.MILLISECONDS));
+
+        // returns after the end of stream
+        receiver.run();
+        assertNull(receiver.m_lastException);
+        assertEquals(2, acked.size());
+        assertEquals(0, window.getInflight());
+    }
+}
@@ -0,0 +1,105 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.rejoin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+
+public class TestStreamSnapshotStats {
+
+    // the rows of the source as @Statistics would return them, positioned on the target's row
+    private static VoltTable row(StreamSnapshotStats source, long targetId) {
+        VoltTable table = new VoltTable(source.getColumnSchema().toArray(new ColumnInfo[0]));
+        for (Object[] row : source.getStatsRows(false, System.currentTimeMillis())) {
+            table.addRow(row);
+        }
+        while (table.advanceRow()) {
+            if (table.getLong("TARGET_ID") == targetId) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testTargetRow() throws Exception {
+        StreamSnapshotStats source = new StreamSnapshotStats();
+        long destHSId = CoreUtils.getHSIdFromHostAndSite(2, 5);
+        StreamSnapshotStats.TargetStats stats = StreamSnapshotStats.register(1000, destHSId);
+        stats.m_window = new StreamSnapshotAckReceiver.InflightWindow(8);
+        assertTrue(stats.m_window.acquire(0, TimeUnit.MILLISECONDS));
+
+        stats.blockSent(4000, 1000);
+        stats.blockSent(2000, 1000);
+        stats.blockAcked(100);
+        stats.blockAcked(300);
+
+        VoltTable row = row(source, 1000);
+        assertNotNull(row);
+        assertEquals(CoreUtils.hsIdToString(destHSId), row.getString("DESTINATION"));
+        assertEquals("ACTIVE", row.getString("STATUS"));
+        assertEquals(2, row.getLong("BLOCKS_SENT"));
+        assertEquals(6000, row.getLong("BYTES_UNCOMPRESSED"));
+        assertEquals(2000, row.getLong("BYTES_SENT"));
+        assertEquals(3.0, row.getDouble("COMPRESSION_RATIO"), 0.0001);
+        assertTrue(row.getLong("THROUGHPUT") > 0);
+        assertEquals(1, row.getLong("BLOCKS_IN_FLIGHT"));
+        assertEquals(8, row.getLong("IN_FLIGHT_WINDOW"));
+        assertEquals(200, row.getLong("AVG_ACK_LATENCY"));
+        assertEquals(300, row.getLong("MAX_ACK_LATENCY"));
+
+        stats.finished();
+        assertEquals("COMPLETE", row(source, 1000).getString("STATUS"));
+        StreamSnapshotStats.clearFinished();
+        assertNull(row(source, 1000));
+    }
+
+    @Test
+    public void testIdleTargetRow() {
+        StreamSnapshotStats source = new StreamSnapshotStats();
+        StreamSnapshotStats.register(1001, CoreUtils.getHSIdFromHostAndSite(1, 1));
+
+        // nothing sent yet and no window, no division by zero
+        VoltTable row = row(source, 1001);
+        assertNotNull(row);
+        assertEquals(0, row.getLong("BLOCKS_SENT"));
+        assertEquals(0.0, row.getDouble("COMPRESSION_RATIO"), 0.0);
+        assertEquals(0, row.getLong("BLOCKS_IN_FLIGHT"));
+        assertEquals(0, row.getLong("IN_FLIGHT_WINDOW"));
+        assertEquals(0, row.getLong("AVG_ACK_LATENCY"));
+
+        // active transfers survive the start of a new stream snapshot
+        StreamSnapshotStats.clearFinished();
+        assertNotNull(row(source, 1001));
+    }
+}
@@ -0,0 +1,121 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs;
+
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.voltcore.messaging.HostMessenger;
+import org.voltdb.CatalogContext;
+import org.voltdb.VoltTable;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.compiler.TableStatistics;
+import org.voltdb.compiler.VoltProjectBuilder;
+import org.voltdb.settings.ClusterSettings;
+import org.voltdb.settings.DbSettings;
+import org.voltdb.settings.NodeSettings;
+import org.voltdb.utils.CatalogUtil;
+import org.voltdb.utils.MiscUtils;
+
+import junit.framework.TestCase;
+
+public class TestAnalyzeTable extends TestCase {
+
+    private static TableStatistics statistics(String table, long rows, long ndv) {
+        Map<String, Long> distinctValues = new HashMap<>();
+        distinctValues.put("ID", ndv);
+        return TableStatistics.of(Arrays.asList(new TableStatistics.Table(table, rows, distinctValues, 1000)));
+    }
+
+    private static CatalogContext catalogContext() throws Exception {
+        VoltProjectBuilder builder = new VoltProjectBuilder();
+        builder.addLiteralSchema("CREATE TABLE A (ID INTEGER NOT NULL, PRIMARY KEY (ID));\n" +
+                                 "CREATE TABLE B (ID INTEGER NOT NULL, PRIMARY KEY (ID));");
+        File jar = new File("testanalyzetable.jar");
+        jar.deleteOnExit();
+        assertTrue(builder.compile(jar.getPath()));
+        byte[] bytes = MiscUtils.fileToBytes(jar);
+        String serializedCatalog = CatalogUtil.getSerializedCatalogStringFromJar(
+                CatalogUtil.loadAndUpgradeCatalogFromJar(bytes, false).getFirst());
+        Catalog catalog = new Catalog();
+        catalog.execute(serializedCatalog);
+        DbSettings settings = new DbSettings(ClusterSettings.create().asSupplier(), NodeSettings.create());
+        return new CatalogContext(0, 0, catalog, settings, bytes, null, new byte[] {}, 0, mock(HostMessenger.class));
+    }
+
+    public void testEstimateDistinctValues() {
+        // the whole partition was sampled
+        assertEquals(42, AnalyzeTable.estimateDistinctValues(42, 500, 500));
+        assertEquals(1, AnalyzeTable.estimateDistinctValues(0, 0, 0));
+        // every sampled value was different, e.g. a key
+        assertEquals(1_000_000, AnalyzeTable.estimateDistinctValues(100_000, 100_000, 1_000_000));
+        // a few values repeated over and over
+        assertEquals(10, AnalyzeTable.estimateDistinctValues(10, 100_000, 1_000_000));
+        // in between, more than were seen but fewer than the rows
+        long estimate = AnalyzeTable.estimateDistinctValues(50_000, 100_000, 1_000_000);
+        assertTrue(estimate > 50_000 && estimate < 1_000_000);
+    }
+
+    public void testStoredFormat() throws Exception {
+        TableStatistics stored = statistics("A", 100, 7);
+        String json = stored.toVoltTable().toJSONString();
+        TableStatistics loaded = TableStatistics.fromVoltTable(VoltTable.fromJSONString(json));
+
+        assertEquals(1, loaded.getTableCount());
+        assertEquals(100, loaded.getTable("A").getRowCount());
+        assertEquals(7, loaded.getTable("A").getDistinctValues("ID"));
+        assertEquals(1000, loaded.getTable("A").getAnalyzedAt());
+    }
+
+    public void testStatisticsSurviveCatalogUpdate() throws Exception {
+        CatalogContext context = catalogContext();
+        assertTrue(context.setTableStatistics(1, statistics("A", 100, 7)));
+
+        CatalogContext updated = context.update(1, 1, null, null, "", true, null, mock(HostMessenger.class), false);
+        assertEquals(100, updated.getTableStatistics().getTable("A").getRowCount());
+
+        // statistics installed through the old context while the update was going on
+        assertTrue(context.setTableStatistics(2, statistics("A", 200, 7)));
+        assertEquals(200, updated.getTableStatistics().getTable("A").getRowCount());
+
+        // a late delivery of older statistics is ignored
+        assertFalse(updated.setTableStatistics(1, statistics("A", 100, 7)));
+        assertEquals(200, updated.getTableStatistics().getTable("A").getRowCount());
+    }
+
+    public void testDroppedTablesAreForgotten() throws Exception {
+        CatalogContext context = catalogContext();
+        CatalogContext updated = context.update(1, 1, null, null,
+                "delete /clusters#cluster/databases#database tables B", true, null, mock(HostMessenger.class), false);
+
+        // stored through the old catalog, trimmed to the new one
+        assertTrue(context.setTableStatistics(1, statistics("B", 100, 7).merge(statistics("A", 5, 5))));
+        assertNull(updated.getTableStatistics().getTable("B"));
+        assertEquals(5, updated.getTableStatistics().getTable("A").getRowCount());
+    }
+}
@@ -0,0 +1,146 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.types.TimestampType;
+
+public class TestColumnarChunkCodec extends TestCase {
+
+    private static VoltTable createTable() {
+        return new VoltTable(
+                new ColumnInfo("ID", VoltType.BIGINT),
+                new ColumnInfo("TS", VoltType.TIMESTAMP),
+                new ColumnInfo("RANDOM", VoltType.BIGINT),
+                new ColumnInfo("NAME", VoltType.STRING),
+                new ColumnInfo("SMALL", VoltType.SMALLINT),
+                new ColumnInfo("RATIO", VoltType.FLOAT),
+                new ColumnInfo("AMOUNT", VoltType.DECIMAL),
+                new ColumnInfo("PAYLOAD", VoltType.VARBINARY));
+    }
+
+    /**
+     * The row count and rows of a table, as the EE writes them to a snapshot chunk
+     */
+    private static ByteBuffer getRows(VoltTable table) {
+        ByteBuffer buf = PrivateVoltTableFactory.getTableDataReference(table);
+        // the serialized size includes a length prefix that isn't in the buffer
+        buf.limit(table.getSerializedSize() - 4);
+        buf.position(buf.getInt(0) + 4);
+        return buf.slice();
+    }
+
+    private static ByteBuffer encode(VoltType[] types, ByteBuffer rows) {
+        ByteBuffer encoded = ByteBuffer.allocate(rows.remaining() + ColumnarChunkCodec.MAX_ENCODING_OVERHEAD);
+        ColumnarChunkCodec.encode(types, rows, encoded);
+        encoded.flip();
+        return encoded;
+    }
+
+    private static void assertRoundTrip(VoltTable table) throws IOException {
+        VoltType types[] = ColumnarChunkCodec.getColumnTypes(table);
+        ByteBuffer rows = getRows(table);
+        ByteBuffer encoded = encode(types, rows);
+        assertEquals(0, rows.position());
+
+        ByteBuffer decoded = ByteBuffer.allocate(rows.remaining());
+        ColumnarChunkCodec.decode(types, encoded, decoded);
+        assertFalse(encoded.hasRemaining());
+        assertFalse(decoded.hasRemaining());
+        decoded.flip();
+        assertEquals(rows, decoded);
+    }
+
+    public void testEmpty() throws IOException {
+        assertRoundTrip(createTable());
+    }
+
+    public void testRoundTrip() throws IOException {
+        Random random = new Random(42);
+        VoltTable table = createTable();
+        long now = System.currentTimeMillis() * 1000;
+        for (int i = 0; i < 2000; i++) {
+            boolean nulls = i % 17 == 0;
+            byte payload[] = new byte[random.nextInt(32)];
+            random.nextBytes(payload);
+            table.addRow(i,
+                    nulls ? null : new TimestampType(now + i * 1000 + random.nextInt(100)),
+                    random.nextLong(),
+                    nulls ? null : "name" + (i % 10),
+                    (short) i,
+                    nulls ? null : random.nextDouble(),
+                    nulls ? null : new BigDecimal(random.nextInt(100000)).movePointLeft(4),
+                    nulls ? null : payload);
+        }
+        assertRoundTrip(table);
+    }
+
+    public void testEncodingsChosen() throws IOException {
+        Random random = new Random(7);
+        VoltTable table = new VoltTable(
+                new ColumnInfo("ID", VoltType.BIGINT),
+                new ColumnInfo("RANDOM", VoltType.BIGINT),
+                new ColumnInfo("NAME", VoltType.STRING));
+        for (int i = 0; i < 1000; i++) {
+            table.addRow(1000000L + i, random.nextLong(), "a fairly long repeated value " + (i % 3));
+        }
+        VoltType types[] = ColumnarChunkCodec.getColumnTypes(table);
+        ByteBuffer rows = getRows(table);
+        ByteBuffer encoded = encode(types, rows);
+        assertTrue(encoded.remaining() < rows.remaining() / 2);
+
+        // Walk the column headers
+        assertEquals(1000, encoded.getInt());
+        assertEquals(3, encoded.getShort());
+        byte expected[] = { ColumnarChunkCodec.DELTA, ColumnarChunkCodec.PLAIN, ColumnarChunkCodec.DICTIONARY };
+        for (byte encoding : expected) {
+            assertEquals(encoding, encoded.get());
+            int length = encoded.getInt();
+            encoded.position(encoded.position() + length);
+        }
+        assertFalse(encoded.hasRemaining());
+        assertRoundTrip(table);
+    }
+
+    public void testColumnCountMismatch() {
+        VoltTable table = createTable();
+        table.addRow(1, null, 2, "x", 3, 4.0, null, null);
+        ByteBuffer encoded = encode(ColumnarChunkCodec.getColumnTypes(table), getRows(table));
+        VoltType types[] = { VoltType.BIGINT };
+        try {
+            ColumnarChunkCodec.decode(types, encoded, ByteBuffer.allocate(1024));
+            fail("Expected the decode to fail");
+        } catch (IOException expected) {}
+    }
+}
@@ -0,0 +1,247 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import junit.framework.TestCase;
+
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.DefaultSnapshotDataTarget;
+import org.voltdb.EELibraryLoader;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.utils.VoltFile;
+
+public class TestTableSaveFileChain extends TestCase {
+
+    private File m_dir;
+
+    @Override
+    public void setUp() throws Exception {
+        // Writing chunks checksums them natively
+        EELibraryLoader.loadExecutionEngineLibrary(true);
+        m_dir = File.createTempFile("TestTableSaveFileChain", "");
+        m_dir.delete();
+        m_dir.mkdirs();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        VoltFile.recursivelyDelete(m_dir);
+    }
+
+    /**
+     * A chunk the way the EE streams it for an incremental snapshot: partition id,
+     * block id and row count, then the rows, or the manifest entries for block id -1.
+     */
+    public static class Chunk {
+        final int m_partitionId;
+        final long m_blockId;
+        final long m_values[];
+
+        private Chunk(int partitionId, long blockId, long... values) {
+            m_partitionId = partitionId;
+            m_blockId = blockId;
+            m_values = values;
+        }
+
+        private BBContainer serialize() {
+            BBContainer c = DBBPool.allocateDirect(16 + m_values.length * 12);
+            ByteBuffer b = c.b();
+            b.putInt(m_partitionId).putLong(m_blockId).putInt(m_values.length);
+            for (long value : m_values) {
+                if (m_blockId == TableSaveFile.MANIFEST_BLOCK_ID) {
+                    b.putLong(value);
+                } else {
+                    // one BIGINT column, with the length prefix of the row
+                    b.putInt(8).putLong(value);
+                }
+            }
+            b.flip();
+            return c;
+        }
+    }
+
+    public static Chunk manifest(int partitionId, long... entries) {
+        return new Chunk(partitionId, TableSaveFile.MANIFEST_BLOCK_ID, entries);
+    }
+
+    public static Chunk block(int partitionId, long blockId, long... values) {
+        return new Chunk(partitionId, blockId, values);
+    }
+
+    /**
+     * Write an incremental snapshot file of table T with partitions 0 and 1, named
+     * like the files of a real snapshot with the given nonce.
+     */
+    public static File writeFile(File dir, String nonce, String previousNonce, Chunk... chunks)
+            throws Exception {
+        File file = new File(dir, nonce + "-T-host_0.vpt");
+        DefaultSnapshotDataTarget target = new DefaultSnapshotDataTarget(
+                file, 0, "cluster", "database", "T", 2, Arrays.asList(0, 1),
+                new VoltTable(new ColumnInfo("ID", VoltType.BIGINT)),
+                0, System.currentTimeMillis(), previousNonce);
+        for (final Chunk chunk : chunks) {
+            target.write(new Callable<BBContainer>() {
+                @Override
+                public BBContainer call() {
+                    return chunk.serialize();
+                }
+            }, 0).get();
+        }
+        target.close();
+        return file;
+    }
+
+    private TableSaveFileChain openChain(Integer relevantPartitionIds[], File... files)
+            throws IOException {
+        List<TableSaveFile> saveFiles = new ArrayList<TableSaveFile>();
+        for (File file : files) {
+            saveFiles.add(new TableSaveFile(new FileInputStream(file), 3, relevantPartitionIds));
+        }
+        return new TableSaveFileChain(saveFiles, relevantPartitionIds);
+    }
+
+    /**
+     * Read the chain to the end, the sorted values of each partition
+     */
+    private static Map<Integer, List<Long>> readChain(TableSaveFileChain chain) throws IOException {
+        Map<Integer, List<Long>> values = new HashMap<Integer, List<Long>>();
+        BBContainer c;
+        while ((c = chain.getNextChunk()) != null) {
+            try {
+                int partitionId = ((TableSaveFile.Container) c).partitionId;
+                VoltTable table = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b(), true);
+                List<Long> partitionValues = values.get(partitionId);
+                if (partitionValues == null) {
+                    partitionValues = new ArrayList<Long>();
+                    values.put(partitionId, partitionValues);
+                }
+                while (table.advanceRow()) {
+                    partitionValues.add(table.getLong(0));
+                }
+            } finally {
+                c.discard();
+            }
+        }
+        for (List<Long> partitionValues : values.values()) {
+            Collections.sort(partitionValues);
+        }
+        return values;
+    }
+
+    /*
+     * Partition 0 has blocks 0 to 2. Block 1 changes after the base snapshot, block 2
+     * after the one in the middle. Partition 1 changes in the newest snapshot only.
+     */
+    private File writeBase() throws Exception {
+        return writeFile(m_dir, "base", null,
+                manifest(0, 0, 1, 2),
+                block(0, 0, 1, 2),
+                block(0, 1, 3, 4),
+                block(0, 2, 5),
+                manifest(1, 0),
+                block(1, 0, 100));
+    }
+
+    private File writeMiddle() throws Exception {
+        return writeFile(m_dir, "middle", "base",
+                manifest(0, ~0L, 1, ~2L),
+                block(0, 1, 3, 4, 6),
+                manifest(1, ~0L));
+    }
+
+    private File writeNewest() throws Exception {
+        return writeFile(m_dir, "newest", "middle",
+                manifest(0, ~0L, ~1L, 2),
+                block(0, 2, 5, 7),
+                manifest(1, 0),
+                block(1, 0, 100, 101));
+    }
+
+    public void testBlocksComeFromTheNewestFileThatDumpedThem() throws Exception {
+        File base = writeBase();
+        File middle = writeMiddle();
+        File newest = writeNewest();
+
+        TableSaveFileChain chain = openChain(null, newest, middle, base);
+        try {
+            Map<Integer, List<Long>> values = readChain(chain);
+            // Block 1 comes from the middle file, its older copy in the base file is skipped
+            assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L), values.get(0));
+            assertEquals(Arrays.asList(100L, 101L), values.get(1));
+            assertTrue(chain.getCorruptedPartitionIds().isEmpty());
+        } finally {
+            chain.close();
+        }
+    }
+
+    public void testMissingPredecessor() throws Exception {
+        writeBase();
+        File middle = writeMiddle();
+        File newest = writeNewest();
+
+        // Block 0 of partition 0 is only in the base file
+        TableSaveFileChain chain = openChain(null, newest, middle);
+        try {
+            readChain(chain);
+            fail("Expected the chain to end before all blocks were found");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("ends before all blocks were found"));
+        } finally {
+            chain.close();
+        }
+    }
+
+    public void testRelevantPartitionIds() throws Exception {
+        writeBase();
+        File middle = writeMiddle();
+        File newest = writeNewest();
+
+        // Partition 1 is complete in the newest file, the blocks partition 0 is
+        // missing without the base file don't matter
+        TableSaveFileChain chain = openChain(new Integer[] { 1 }, newest, middle);
+        try {
+            Map<Integer, List<Long>> values = readChain(chain);
+            assertNull(values.get(0));
+            assertEquals(Arrays.asList(100L, 101L), values.get(1));
+        } finally {
+            chain.close();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.supercsv.exception.SuperCsvException;
+import org.supercsv.io.CsvListReader;
+import org.supercsv.io.ICsvListReader;
+import org.supercsv.prefs.CsvPreference;
+import org.supercsv_voltpatches.tokenizer.Tokenizer;
+
+public class TestCSVChunkSplitter extends TestCase {
+
+    private static final CsvPreference PREFERENCE = new CsvPreference.Builder('"', ',', "\n").build();
+
+    private static final String CSV =
+            "1,plain,100\n" +
+            "2,\"quoted, with separator\",200\r\n" +
+            "\n" +
+            "3,\"spans\nthree\r\nlines\",300\n" +
+            "4,\"doubled \"\"quotes\"\"\",400\r" +
+            "5,escaped \\\" quote,500\n" +
+            "   \n" +
+            "6,\"\"\"\n\"\"\",600\n" +
+            "7,\\N,700\n" +
+            "8,last line without terminator,800";
+
+    /**
+     * Tokenize the text, returning each row with the line number the loader
+     * would report for it.
+     */
+    private static List<String> tokenize(String text, long firstLine, long skip) throws Exception {
+        List<String> rows = new ArrayList<String>();
+        ICsvListReader reader = new CsvListReader(
+                new Tokenizer(new StringReader(text), PREFERENCE, false, '\\', 1024, skip), PREFERENCE);
+        while (true) {
+            List<String> row;
+            try {
+                row = reader.read();
+            } catch (SuperCsvException e) {
+                rows.add((firstLine + reader.getLineNumber()) + ": error");
+                continue;
+            }
+            if (row == null) {
+                break;
+            }
+            rows.add((firstLine + reader.getLineNumber()) + ": " + row);
+        }
+        reader.close();
+        return rows;
+    }
+
+    private static List<String> tokenizeChunks(String text, int chunkSize, int maxRowSize, long skip)
+            throws Exception {
+        List<String> rows = new ArrayList<String>();
+        CSVChunkSplitter splitter =
+                new CSVChunkSplitter(new StringReader(text), '"', '\\', chunkSize, maxRowSize, skip);
+        CSVChunkSplitter.Chunk chunk;
+        while ((chunk = splitter.next()) != null) {
+            assertTrue(chunk.text.length() > 0);
+            rows.addAll(tokenize(chunk.text, chunk.firstLine, 0));
+        }
+        return rows;
+    }
+
+    public void testChunksMatchSequentialRead() throws Exception {
+        List<String> expected = tokenize(CSV, 0, 0);
+        assertEquals(8, expected.size());
+        for (int chunkSize = 1; chunkSize <= CSV.length() + 1; chunkSize++) {
+            assertEquals("chunk size " + chunkSize, expected, tokenizeChunks(CSV, chunkSize, 1024, 0));
+        }
+    }
+
+    public void testSkipLines() throws Exception {
+        for (long skip = 0; skip <= 16; skip++) {
+            List<String> expected = tokenize(CSV, 0, skip);
+            for (int chunkSize = 1; chunkSize <= 64; chunkSize += 7) {
+                assertEquals("skip " + skip + " chunk size " + chunkSize,
+                        expected, tokenizeChunks(CSV, chunkSize, 1024, skip));
+            }
+        }
+    }
+
+    public void testLargeFile() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            if (i % 7 == 0) {
+                sb.append(i).append(",\"multi\nline ").append(i).append("\"\n");
+            }
+            else {
+                sb.append(i).append(",value ").append(i).append("\r\n");
+            }
+        }
+        String csv = sb.toString();
+        assertEquals(tokenize(csv, 0, 0), tokenizeChunks(csv, 1000, 4096, 0));
+    }
+
+    public void testUnbalancedQuoteDoesNotBufferTheWholeStream() throws Exception {
+        StringBuilder sb = new StringBuilder("1,\"never closed\n");
+        for (int i = 0; i < 1000; i++) {
+            sb.append(i).append(",row\n");
+        }
+        CSVChunkSplitter splitter =
+                new CSVChunkSplitter(new StringReader(sb.toString()), '"', '\\', 64, 256, 0);
+        CSVChunkSplitter.Chunk chunk;
+        int chunks = 0;
+        long lines = 0;
+        while ((chunk = splitter.next()) != null) {
+            assertTrue(chunk.text.length() < 2048);
+            assertEquals(lines, chunk.firstLine);
+            for (char c : chunk.text.toCharArray()) {
+                if (c == '\n') {
+                    lines++;
+                }
+            }
+            chunks++;
+        }
+        assertTrue(chunks > 1);
+        assertEquals(1001, lines);
+    }
+}
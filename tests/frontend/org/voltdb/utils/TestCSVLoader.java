@@ -33,6 +33,9 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -1293,6 +1296,97 @@ public class TestCSVLoader {
         test_Interface(myOptions, myData, invalidLineCnt, validLineCnt );
     }
 
+    @Test
+    public void testParallelParsersReportSameLines() throws Exception
+    {
+        List<String> myData = new ArrayList<String>();
+        for (int i = 0; i < 60; i++) {
+            String polygon = "\"POLYGON((0 0, " + i + " 0, 0 " + i + ", 0 0))\"";
+            switch (i % 6) {
+            case 0:
+                // quoted value spanning three lines, longer than a chunk
+                myData.add(i + ",1,1,1,\"a\nb\r\nc\",1.10,1.11,\"7777-12-25 14:35:26\",\"POINT(1 1)\"," + polygon);
+                break;
+            case 1:
+                // invalid line: too few columns, after a multi-line value
+                myData.add(i + ",1,\"x\ny\"");
+                break;
+            case 2:
+                // invalid line: not a number, in a row spanning two lines
+                myData.add(i + ",abc,1,1,\"two\nlines\",1.10,1.11,\"7777-12-25 14:35:26\",\"POINT(1 1)\"," + polygon);
+                break;
+            case 3:
+                // invalid line: the string does not fit the column
+                myData.add(i + ",1,1,1,\"far too long\nfor a varchar(20)\",1.10,1.11,NULL,NULL,NULL");
+                break;
+            case 4:
+                myData.add("");
+                myData.add(i + ",1,1,1,plain,1.10,1.11,NULL,NULL,NULL");
+                break;
+            default:
+                // invalid line: not a decimal, rows are inserted in no particular
+                // order so a duplicate key could fail either of its two rows
+                myData.add(i + ",1,1,1,\"bad\ndecimal\",1.1.1,1.11,NULL,NULL,NULL");
+            }
+        }
+        BufferedWriter out_csv = new BufferedWriter(new FileWriter(path_csv));
+        for (String row : myData) {
+            out_csv.write(row + "\n");
+        }
+        out_csv.close();
+
+        List<String> single = loadAndGetErrorLines(1);
+        tearDown();
+        setup();
+        // small chunks make the splitter cut between most rows, and inside none of the quoted values
+        int chunkSize = CSVFileReader.m_chunkSize;
+        CSVFileReader.m_chunkSize = 64;
+        List<String> parallel;
+        try {
+            parallel = loadAndGetErrorLines(4);
+        }
+        finally {
+            CSVFileReader.m_chunkSize = chunkSize;
+        }
+        assertEquals(40, single.size());
+        assertEquals(single, parallel);
+    }
+
+    /**
+     * Load the test file with the given number of parsers.
+     * @return the sorted "Invalid input on line N" prefixes of the error log
+     */
+    private List<String> loadAndGetErrorLines(int parsers) throws Exception
+    {
+        String []myOptions = {
+                "-f" + path_csv,
+                "--reportdir=" + reportDir,
+                "--maxerrors=100",
+                "--user=",
+                "--password=",
+                "--port=",
+                "--separator=,",
+                "--quotechar=\"",
+                "--escape=\\",
+                "--parsers=" + parsers,
+                "BlAh"
+        };
+        CSVLoader.testMode = true;
+        CSVLoader.main(myOptions);
+
+        List<String> errorLines = new ArrayList<String>();
+        BufferedReader log = new BufferedReader(new FileReader(CSVLoader.pathLogfile));
+        String line;
+        while ((line = log.readLine()) != null) {
+            if (line.startsWith("Invalid input on line ")) {
+                errorLines.add(line.substring(0, line.indexOf('.')));
+            }
+        }
+        log.close();
+        Collections.sort(errorLines);
+        return errorLines;
+    }
+
     public void test_Interface(String[] my_options, String[] my_data, int invalidLineCnt,
             int validLineCnt) throws Exception {
         test_Interface(my_options, my_data, invalidLineCnt, validLineCnt, 0, new String[0]);
@@ -0,0 +1,132 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.utils.BinaryDeque.BinaryDequeReader;
+
+/**
+ * Runs the persistent binary deque tests against memory mapped segments.
+ */
+public class TestPersistentBinaryDequeMapped extends TestPersistentBinaryDeque {
+
+    private final static VoltLogger logger = new VoltLogger("EXPORT");
+
+    @BeforeClass
+    public static void useMappedSegments() {
+        PersistentBinaryDeque.s_useMappedSegments = true;
+    }
+
+    @AfterClass
+    public static void useRegularSegments() {
+        PersistentBinaryDeque.s_useMappedSegments = false;
+    }
+
+    @Test
+    public void testPolledObjectsOutliveSegment() throws Exception {
+        PersistentBinaryDeque pbd = new PersistentBinaryDeque("mapped", TEST_DIR, logger);
+        BinaryDequeReader reader = pbd.openForRead("mapped");
+        // Small buffers are not compressed and are handed out as slices of the mapping
+        for (int i = 0; i < 10; i++) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(16);
+            buf.putLong(i).putLong(i);
+            buf.flip();
+            pbd.offer(DBBPool.wrapBB(buf));
+        }
+        BBContainer[] polled = new BBContainer[10];
+        for (int i = 0; i < 10; i++) {
+            polled[i] = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            // consumers can't write through to the file
+            assertTrue(polled[i].b().isReadOnly());
+        }
+        pbd.close();
+
+        // The file is trimmed to what was written once the segment is closed
+        File segment = new File(TEST_DIR, "mapped.0.pbd");
+        assertEquals(PBDSegment.SEGMENT_HEADER_BYTES + 10 * (PBDSegment.OBJECT_HEADER_BYTES + 16), segment.length());
+
+        // and the polled objects are still readable until discarded
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, polled[i].b().getLong(0));
+            assertEquals(i, polled[i].b().getLong(8));
+            polled[i].discard();
+        }
+
+        // A regular segment reads what the mapped segment wrote
+        PersistentBinaryDeque.s_useMappedSegments = false;
+        try {
+            pbd = new PersistentBinaryDeque("mapped", TEST_DIR, logger);
+            reader = pbd.openForRead("mapped");
+            assertEquals(10, reader.getNumObjects());
+            for (int i = 0; i < 10; i++) {
+                BBContainer cont = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+                assertEquals(i, cont.b().getLong(0));
+                cont.discard();
+            }
+            assertTrue(reader.isEmpty());
+            pbd.close();
+        } finally {
+            PersistentBinaryDeque.s_useMappedSegments = true;
+        }
+    }
+
+    @Test
+    public void testRecoverUnclosedSegment() throws Exception {
+        PersistentBinaryDeque crashed = new PersistentBinaryDeque("unclosed", TEST_DIR, logger);
+        for (int i = 0; i < 10; i++) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(16);
+            buf.putLong(i).putLong(i);
+            buf.flip();
+            crashed.offer(DBBPool.wrapBB(buf));
+        }
+        crashed.sync();
+        // Never closed, as if the process died, so the file is still the whole chunk
+        File segment = new File(TEST_DIR, "unclosed.0.pbd");
+        assertEquals(PBDSegment.CHUNK_SIZE, segment.length());
+
+        final long written = PBDSegment.SEGMENT_HEADER_BYTES + 10 * (PBDSegment.OBJECT_HEADER_BYTES + 16);
+        PersistentBinaryDeque pbd = new PersistentBinaryDeque("unclosed", TEST_DIR, logger);
+        assertEquals(written, segment.length());
+        BinaryDequeReader reader = pbd.openForRead("unclosed");
+        assertEquals(10, reader.getNumObjects());
+        for (int i = 0; i < 10; i++) {
+            BBContainer cont = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            assertEquals(i, cont.b().getLong(0));
+            cont.discard();
+        }
+        assertTrue(reader.isEmpty());
+        pbd.close();
+        crashed.close();
+    }
+}
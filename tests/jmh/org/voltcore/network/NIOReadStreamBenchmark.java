@@ -0,0 +1,131 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading length prefixed messages off a socket into pooled buffers and
+ * slicing them back out, as VoltPort does for every request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Thread)
+public class NIOReadStreamBenchmark {
+
+    static final int READ_SIZE = 64 * 1024;
+
+    @Param({"64", "4096"})
+    int messageSize;
+
+    NetworkDBBPool m_pool;
+    NIOReadStream m_stream;
+    ReadableByteChannel m_channel;
+    byte[] m_header = new byte[4];
+
+    /** A channel that always has another batch of messages ready. */
+    static class MessageChannel implements ReadableByteChannel {
+        final ByteBuffer m_data;
+
+        MessageChannel(int messageSize) {
+            m_data = ByteBuffer.allocateDirect(READ_SIZE);
+            while (m_data.remaining() >= messageSize + 4) {
+                m_data.putInt(messageSize);
+                m_data.position(m_data.position() + messageSize);
+            }
+            m_data.flip();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!m_data.hasRemaining()) {
+                m_data.rewind();
+            }
+            int count = Math.min(dst.remaining(), m_data.remaining());
+            ByteBuffer src = m_data.duplicate();
+            src.limit(src.position() + count);
+            dst.put(src);
+            m_data.position(m_data.position() + count);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    @Setup
+    public void setup() {
+        m_pool = new NetworkDBBPool();
+        m_stream = new NIOReadStream();
+        m_channel = new MessageChannel(messageSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        m_stream.shutdown();
+        m_pool.clear();
+    }
+
+    /** Read one socket's worth of data and consume every complete message in it. */
+    @Benchmark
+    public void readAndSlice(Blackhole bh) throws IOException {
+        m_stream.read(m_channel, READ_SIZE, m_pool);
+        while (m_stream.dataAvailable() >= 4) {
+            m_stream.peekBytes(m_header);
+            int length = ByteBuffer.wrap(m_header).getInt();
+            if (m_stream.dataAvailable() < length + 4) {
+                break;
+            }
+            m_stream.getInt();
+            NIOReadStream.Slice slice = m_stream.getSlice(length);
+            bh.consume(slice.bb.readableBytes());
+            slice.markConsumed().discard();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json_voltpatches.JSONArray;
+import org.json_voltpatches.JSONObject;
+
+/**
+ * Compares a JMH JSON result file against a baseline recorded on the same
+ * machine and fails if any benchmark got slower by more than the threshold.
+ * A baseline taken with fewer than {@link #MIN_FORKS} forks, or whose error
+ * is as large as its score, can't show a regression and is rejected.
+ *
+ * Usage: CompareToBaseline baseline.json results.json [threshold percent]
+ */
+public class CompareToBaseline {
+
+    static final int MIN_FORKS = 3;
+
+    static class Score {
+        final double m_score;
+        final double m_error;
+        final String m_unit;
+        final boolean m_higherIsBetter;
+        final int m_forks;
+
+        Score(JSONObject result) throws Exception {
+            JSONObject metric = result.getJSONObject("primaryMetric");
+            m_score = metric.getDouble("score");
+            m_error = metric.optDouble("scoreError", 0.0);
+            m_unit = metric.getString("scoreUnit");
+            m_higherIsBetter = "thrpt".equals(result.getString("mode"));
+            m_forks = result.optInt("forks", 1);
+        }
+
+        /** Null if the score is usable as a baseline, otherwise why not. */
+        String unusableReason() {
+            if (m_forks < MIN_FORKS) {
+                return m_forks + " fork(s), at least " + MIN_FORKS + " are needed";
+            }
+            if (Double.isNaN(m_error) || m_error >= Math.abs(m_score)) {
+                return "error " + m_error + " is not smaller than the score " + m_score;
+            }
+            return null;
+        }
+    }
+
+    /** Benchmark name plus its parameters, the same benchmark in both files. */
+    static Map<String, Score> load(File file) throws Exception {
+        JSONArray results = new JSONArray(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        Map<String, Score> scores = new TreeMap<String, Score>();
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject result = results.getJSONObject(i);
+            StringBuilder key = new StringBuilder(result.getString("benchmark"));
+            JSONObject params = result.optJSONObject("params");
+            if (params != null) {
+                Map<String, String> sorted = new TreeMap<String, String>();
+                Iterator<?> it = params.keys();
+                while (it.hasNext()) {
+                    String name = (String) it.next();
+                    sorted.put(name, params.getString(name));
+                }
+                key.append(sorted);
+            }
+            scores.put(key.toString(), new Score(result));
+        }
+        return scores;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareToBaseline baseline.json results.json [threshold percent]");
+            System.exit(2);
+        }
+        Map<String, Score> baseline = load(new File(args[0]));
+        Map<String, Score> current = load(new File(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) / 100.0 : 0.10;
+
+        int unusable = 0;
+        for (Map.Entry<String, Score> e : baseline.entrySet()) {
+            String reason = e.getValue().unusableReason();
+            if (reason != null) {
+                System.err.println("Baseline for " + e.getKey() + " is too noisy: " + reason);
+                unusable++;
+            }
+        }
+        if (unusable > 0) {
+            System.err.println("Record the baseline again with ant jmh jmh_baseline on an idle machine");
+            System.exit(2);
+        }
+
+        int regressions = 0;
+        System.out.printf("%-90s %14s %14s %8s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (Map.Entry<String, Score> e : current.entrySet()) {
+            Score now = e.getValue();
+            Score then = baseline.get(e.getKey());
+            if (then == null || !then.m_unit.equals(now.m_unit)) {
+                System.out.printf("%-90s %14s %14.3f %8s%n", e.getKey(), "-", now.m_score, "new");
+                continue;
+            }
+            double change = (now.m_score - then.m_score) / then.m_score;
+            // Noise within both error bars is not a regression
+            boolean slower = now.m_higherIsBetter ? change < -threshold : change > threshold;
+            boolean significant = Math.abs(now.m_score - then.m_score) > now.m_error + then.m_error;
+            String flag = slower && significant ? " REGRESSION" : "";
+            if (!flag.isEmpty()) {
+                regressions++;
+            }
+            System.out.printf("%-90s %14.3f %14.3f %+7.1f%%%s%n",
+                    e.getKey(), then.m_score, now.m_score, change * 100, flag);
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed by more than " + (threshold * 100) + "%");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.utils.CompressionService;
+
+/**
+ * Compression of 64k blocks of row-like data, as done for export overflow and snapshots.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Thread)
+public class CompressionServiceBenchmark {
+
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    ByteBuffer m_input;
+    ByteBuffer m_compressed;
+    ByteBuffer m_output;
+
+    @Setup
+    public void setup() throws IOException {
+        m_input = rowLikeData(BLOCK_SIZE);
+        m_compressed = ByteBuffer.allocateDirect(CompressionService.maxCompressedLength(BLOCK_SIZE));
+        m_output = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        compress();
+    }
+
+    /** Small ascending ids, repeating strings and random doubles. */
+    static ByteBuffer rowLikeData(int size) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(size);
+        Random r = new Random(0);
+        long id = 0;
+        while (buf.remaining() >= 32) {
+            buf.putLong(id++);
+            buf.put(("name" + (id % 16) + "    ").substring(0, 8).getBytes());
+            buf.putDouble(r.nextDouble());
+            buf.putLong(r.nextInt(100));
+        }
+        buf.clear();
+        return buf;
+    }
+
+    @Benchmark
+    public int compress() throws IOException {
+        m_input.clear();
+        m_compressed.clear();
+        return CompressionService.compressBuffer(m_input, m_compressed);
+    }
+
+    @Benchmark
+    public int decompress() throws IOException {
+        m_compressed.position(0);
+        m_output.clear();
+        return CompressionService.decompressBuffer(m_compressed, m_output);
+    }
+}
@@ -0,0 +1,111 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltTable;
+import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.messaging.FastSerializer;
+
+/**
+ * Primitive and table serialization through FastSerializer and FastDeserializer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Thread)
+public class FastSerializerBenchmark {
+
+    static final int VALUES = 100;
+
+    FastSerializer m_out;
+    byte[] m_primitives;
+    VoltTable m_table;
+    byte[] m_tableBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        m_out = new FastSerializer();
+        writePrimitives(m_out);
+        m_primitives = m_out.getBytes();
+        m_table = VoltTableBenchmark.build(100);
+        m_out.clear();
+        m_out.writeTable(m_table);
+        m_tableBytes = m_out.getBytes();
+    }
+
+    static void writePrimitives(FastSerializer out) throws IOException {
+        for (int i = 0; i < VALUES; i++) {
+            out.writeLong(i);
+            out.writeInt(i);
+            out.writeString("value");
+        }
+    }
+
+    @Benchmark
+    public FastSerializer writePrimitives() throws IOException {
+        m_out.clear();
+        writePrimitives(m_out);
+        return m_out;
+    }
+
+    @Benchmark
+    public void readPrimitives(Blackhole bh) throws IOException {
+        FastDeserializer in = new FastDeserializer(m_primitives);
+        for (int i = 0; i < VALUES; i++) {
+            bh.consume(in.readLong());
+            bh.consume(in.readInt());
+            bh.consume(in.readString());
+        }
+    }
+
+    @Benchmark
+    public FastSerializer writeTable() throws IOException {
+        m_out.clear();
+        m_out.writeTable(m_table);
+        return m_out;
+    }
+
+    @Benchmark
+    public VoltTable readTable() throws IOException {
+        // reads the length prefix written by writeTable and shares the bytes
+        return PrivateVoltTableFactory.createVoltTableFromSharedBuffer(new FastDeserializer(m_tableBytes).buffer());
+    }
+}
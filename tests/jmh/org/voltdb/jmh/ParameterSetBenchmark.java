@@ -0,0 +1,86 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.ParameterSet;
+
+/**
+ * Packing procedure parameters and flattening them for the wire and the EE.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Thread)
+public class ParameterSetBenchmark {
+
+    Object[] m_params;
+    ParameterSet m_paramSet;
+    ByteBuffer m_buf;
+
+    @Setup
+    public void setup() throws IOException {
+        m_params = new Object[] {
+            42L, 7, "a short string parameter", 3.14, new byte[] {1, 2, 3, 4, 5, 6, 7, 8},
+            new long[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10}
+        };
+        m_paramSet = ParameterSet.fromArrayNoCopy(m_params);
+        m_buf = ByteBuffer.allocate(m_paramSet.getSerializedSize());
+    }
+
+    @Benchmark
+    public ParameterSet fromArrayNoCopy() {
+        return ParameterSet.fromArrayNoCopy(m_params);
+    }
+
+    @Benchmark
+    public ByteBuffer flattenToBuffer() throws IOException {
+        m_buf.clear();
+        ParameterSet.fromArrayNoCopy(m_params).flattenToBuffer(m_buf);
+        return m_buf;
+    }
+
+    @Benchmark
+    public ParameterSet fromByteBuffer() throws IOException {
+        m_buf.clear();
+        m_paramSet.flattenToBuffer(m_buf);
+        m_buf.flip();
+        return ParameterSet.fromByteBuffer(m_buf);
+    }
+}
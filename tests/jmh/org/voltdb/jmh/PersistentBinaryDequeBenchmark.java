@@ -0,0 +1,102 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.utils.BinaryDeque.BinaryDequeReader;
+import org.voltdb.utils.PersistentBinaryDeque;
+import org.voltdb.utils.VoltFile;
+
+/**
+ * Export overflow: offering blocks to a persistent binary deque and draining them.
+ * Needs the native library, the deque loads it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Thread)
+public class PersistentBinaryDequeBenchmark {
+
+    static final int BLOCKS = 64;
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    File m_dir;
+    PersistentBinaryDeque m_pbd;
+    BinaryDequeReader m_reader;
+    ByteBuffer m_block;
+
+    @Setup
+    public void setup() throws IOException {
+        m_dir = File.createTempFile("pbdbench", "");
+        m_dir.delete();
+        m_dir.mkdirs();
+        m_pbd = new PersistentBinaryDeque("bench", m_dir, new VoltLogger("EXPORT"));
+        m_reader = m_pbd.openForRead("bench");
+        m_block = CompressionServiceBenchmark.rowLikeData(BLOCK_SIZE);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        m_pbd.close();
+        VoltFile.recursivelyDelete(m_dir);
+    }
+
+    /** Offer a batch of blocks and poll them back, per block. */
+    @Benchmark
+    @OperationsPerInvocation(BLOCKS)
+    public void offerPoll() throws IOException {
+        for (int i = 0; i < BLOCKS; i++) {
+            ByteBuffer copy = ByteBuffer.allocateDirect(BLOCK_SIZE);
+            m_block.clear();
+            copy.put(m_block);
+            copy.flip();
+            m_pbd.offer(DBBPool.wrapBB(copy));
+        }
+        for (int i = 0; i < BLOCKS; i++) {
+            BBContainer cont = m_reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            cont.discard();
+        }
+    }
+}
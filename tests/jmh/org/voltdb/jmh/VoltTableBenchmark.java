@@ -0,0 +1,109 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2017 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltTableRow;
+import org.voltdb.VoltType;
+
+/**
+ * Building and reading result tables, the work every procedure response does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Thread)
+public class VoltTableBenchmark {
+
+    static final ColumnInfo[] COLUMNS = new ColumnInfo[] {
+        new ColumnInfo("ID", VoltType.BIGINT),
+        new ColumnInfo("COUNT", VoltType.INTEGER),
+        new ColumnInfo("NAME", VoltType.STRING),
+        new ColumnInfo("PRICE", VoltType.FLOAT)
+    };
+
+    @Param({"10", "1000"})
+    int rows;
+
+    VoltTable m_table;
+
+    @Setup
+    public void setup() {
+        m_table = build(rows);
+    }
+
+    static VoltTable build(int rows) {
+        VoltTable table = new VoltTable(COLUMNS);
+        for (int i = 0; i < rows; i++) {
+            table.addRow((long) i, i, "name " + i, i * 1.5);
+        }
+        return table;
+    }
+
+    @Benchmark
+    public VoltTable construct() {
+        return new VoltTable(COLUMNS);
+    }
+
+    @Benchmark
+    public VoltTable addRow() {
+        return build(rows);
+    }
+
+    @Benchmark
+    public void advanceRow(Blackhole bh) {
+        m_table.resetRowPosition();
+        while (m_table.advanceRow()) {
+            bh.consume(m_table.getLong(0));
+            bh.consume(m_table.getString(2));
+            bh.consume(m_table.getDouble(3));
+        }
+    }
+
+    @Benchmark
+    public void fetchRow(Blackhole bh) {
+        for (int i = 0; i < rows; i++) {
+            VoltTableRow row = m_table.fetchRow(i);
+            bh.consume(row.getLong(0));
+            bh.consume(row.getString(2));
+        }
+    }
+}
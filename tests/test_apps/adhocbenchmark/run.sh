@@ -58,6 +58,13 @@ function server() {
     voltdb create --force -H $STARTUPLEADERHOST
 }
 
+# run the server with every ad hoc statement parsed by HSQL, as a baseline
+# for the PLAN TIME figures reported with the native ad hoc parser enabled
+function server-hsql-parser() {
+    VOLTDB_OPTS="$VOLTDB_OPTS -DDISABLE_NATIVE_ADHOC_PARSER=true" \
+        voltdb create --force -H $STARTUPLEADERHOST
+}
+
 # load schema and procedures
 function init() {
     jars-ifneeded
@@ -144,7 +151,7 @@ function benchmark() {
 }
 
 function help() {
-    echo "Usage: ./run.sh {clean|jars|server|init|benchmark|benchmark-help}"
+    echo "Usage: ./run.sh {clean|jars|server|server-hsql-parser|init|benchmark|benchmark-help}"
 }
 
 # Run the targets pass on the command line